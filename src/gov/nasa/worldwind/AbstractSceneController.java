@@ -421,6 +421,11 @@ public abstract class AbstractSceneController extends WWObjectImpl implements Sc
             this.dc.setPerFrameStatistics(WorldWind.getMemoryCacheSet().getPerformanceStatistics());
         }
 
+        if (perfKeys.contains(PerformanceStatistic.RETRIEVAL) || perfKeys.contains(PerformanceStatistic.ALL))
+        {
+            this.dc.setPerFrameStatistics(WorldWind.getRetrievalStatistics().getPerformanceStatistics());
+        }
+
         if (perfKeys.contains(PerformanceStatistic.TEXTURE_CACHE) || perfKeys.contains(PerformanceStatistic.ALL))
         {
             if (dc.getTextureCache() != null)
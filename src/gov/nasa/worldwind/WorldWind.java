@@ -10,7 +10,7 @@ import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.formats.tiff.GeotiffImageReaderSpi;
-import gov.nasa.worldwind.retrieve.RetrievalService;
+import gov.nasa.worldwind.retrieve.*;
 import gov.nasa.worldwind.util.*;
 
 import javax.imageio.spi.IIORegistry;
@@ -53,6 +53,7 @@ public final class WorldWind
     private ScheduledTaskService scheduledTaskService;
     private NetworkStatus networkStatus;
     private SessionCache sessionCache;
+    private RetrievalStatistics retrievalStatistics;
 
     private WorldWind() // Singleton, prevent public instantiation.
     {
@@ -72,6 +73,8 @@ public final class WorldWind
         this.networkStatus = (NetworkStatus) createConfigurationComponent(AVKey.NETWORK_STATUS_CLASS_NAME);
         this.sessionCache = (SessionCache) createConfigurationComponent(AVKey.SESSION_CACHE_CLASS_NAME);
         this.scheduledTaskService = new BasicScheduledTaskService();
+        this.retrievalStatistics = new RetrievalStatistics();
+        this.retrievalStatistics.register();
 
         // Seems like an unlikely place to load the tiff reader, but do it here nonetheless.
         IIORegistry.getDefaultInstance().registerServiceProvider(GeotiffImageReaderSpi.inst());
@@ -91,6 +94,8 @@ public final class WorldWind
             this.sessionCache.clear();
         if (this.scheduledTaskService != null)
             this.scheduledTaskService.shutdown(true);
+        if (this.retrievalStatistics != null)
+            this.retrievalStatistics.unregister();
     }
 
     /**
@@ -122,6 +127,36 @@ public final class WorldWind
         return instance.memoryCacheSet.getCache(key);
     }
 
+    /**
+     * Creates a new memory cache of the class named by the configuration property {@link
+     * AVKey#MEMORY_CACHE_CLASS_NAME}. The class must implement {@link MemoryCache} and provide a public constructor
+     * taking the low water and capacity as <code>long</code> arguments. If no class is configured, or the configured
+     * class cannot be created, this returns a {@link BasicMemoryCache}.
+     *
+     * @param loWater  the low water level of the new cache.
+     * @param capacity the maximum capacity of the new cache.
+     *
+     * @return a new memory cache. The cache is not added to the memory cache set.
+     */
+    public static MemoryCache createMemoryCache(long loWater, long capacity)
+    {
+        String className = Configuration.getStringValue(AVKey.MEMORY_CACHE_CLASS_NAME);
+        if (className != null && className.trim().length() > 0)
+        {
+            try
+            {
+                Class<?> c = Class.forName(className.trim());
+                return (MemoryCache) c.getConstructor(long.class, long.class).newInstance(loWater, capacity);
+            }
+            catch (Exception e)
+            {
+                Logging.logger().log(Level.SEVERE, "WorldWind.ExceptionCreatingComponent", className);
+            }
+        }
+
+        return new BasicMemoryCache(loWater, capacity);
+    }
+
     public static FileStore getDataFileStore()
     {
         return instance.dataFileStore;
@@ -158,6 +193,16 @@ public final class WorldWind
         return instance.scheduledTaskService;
     }
 
+    /**
+     * Get the retrieval statistics, which record the timing and outcome of URL retrievals for each layer and host.
+     *
+     * @return the retrieval statistics.
+     */
+    public static RetrievalStatistics getRetrievalStatistics()
+    {
+        return instance.retrievalStatistics;
+    }
+
     public static NetworkStatus getNetworkStatus()
     {
         return instance.networkStatus;
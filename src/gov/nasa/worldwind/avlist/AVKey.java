@@ -73,6 +73,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String DATA_FILE_STORE_CLASS_NAME = "gov.nasa.worldwind.avkey.DataFileStoreClassName";
     final String DATA_FILE_STORE_CONFIGURATION_FILE_NAME
         = "gov.nasa.worldwind.avkey.DataFileStoreConfigurationFileName";
+    final String DATA_FILE_STORE_QUOTA = "gov.nasa.worldwind.avkey.DataFileStoreQuota";
     final String DATASET_NAME = "gov.nasa.worldwind.avkey.DatasetNameKey";
     final String DATA_RASTER_READER_FACTORY_CLASS_NAME = "gov.nasa.worldwind.avkey.DataRasterReaderFactoryClassName";
     final String DATASET_TYPE = "gov.nasa.worldwind.avkey.DatasetTypeKey";
@@ -120,6 +121,12 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String ELEVATION_MODEL = "gov.nasa.worldwind.avkey.ElevationModel";
     final String ELEVATION_MODEL_FACTORY = "gov.nasa.worldwind.avkey.ElevationModelFactory";
     final String ELEVATION_TILE_CACHE_SIZE = "gov.nasa.worldwind.avkey.ElevationTileCacheSize";
+    /**
+     * The configuration key for the number of bytes of direct memory {@link gov.nasa.worldwind.terrain.BasicElevationModel}
+     * uses to hold elevation tiles outside the Java heap. Off-heap storage is disabled when the value is absent or not
+     * positive.
+     */
+    final String ELEVATION_TILE_OFF_HEAP_CACHE_SIZE = "gov.nasa.worldwind.avkey.ElevationTileOffHeapCacheSize";
     final String ELEVATION_UNIT = "gov.nasa.worldwind.avkey.ElevationUnit";
 
     final String END = "gov.nasa.worldwind.avkey.End";
@@ -156,6 +163,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String GET_COVERAGE_URL = "gov.nasa.worldwind.avkey.GetCoverageURL";
     final String GET_MAP_URL = "gov.nasa.worldwind.avkey.GetMapURL";
     final String GEOGRAPHIC_PROJECTION_CLASS_NAME = "gov.nasa.worldwind.globes.GeographicProjectionClassName";
+    final String GEOTIFF_STREAMING_PIXEL_THRESHOLD = "gov.nasa.worldwind.avkey.GeotiffStreamingPixelThreshold";
     final String GLOBE = "gov.nasa.worldwind.avkey.GlobeObject";
     final String GLOBE_CLASS_NAME = "gov.nasa.worldwind.avkey.GlobeClassName";
     final String GRAYSCALE = "gov.nasa.worldwind.avkey.Grayscale";
@@ -226,6 +234,12 @@ public interface AVKey // TODO: Eliminate unused constants, if any
 
     final String MAX_ACTIVE_ALTITUDE = "gov.nasa.worldwind.avkey.MaxActiveAltitude";
     final String MAX_MESSAGE_REPEAT = "gov.nasa.worldwind.avkey.MaxMessageRepeat";
+    /**
+     * The configuration key for the {@link gov.nasa.worldwind.cache.MemoryCache} implementation World Wind uses for
+     * the memory caches it creates internally. The class must provide a constructor taking the low water and capacity
+     * as <code>long</code> arguments. See {@link gov.nasa.worldwind.WorldWind#createMemoryCache(long, long)}.
+     */
+    final String MEMORY_CACHE_CLASS_NAME = "gov.nasa.worldwind.avkey.MemoryCacheClassName";
     final String MEMORY_CACHE_SET_CLASS_NAME = "gov.nasa.worldwind.avkey.MemoryCacheSetClassName";
     /**
      * Indicates the location that MIL-STD-2525 tactical symbols and tactical point graphics retrieve their icons from.
@@ -243,6 +257,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
      */
     final String MIN_ABSENT_TILE_CHECK_INTERVAL = "gov.nasa.worldwind.avkey.MinAbsentTileCheckInterval";
     final String MIN_ACTIVE_ALTITUDE = "gov.nasa.worldwind.avkey.MinActiveAltitude";
+    final String MIP_LEVEL = "gov.nasa.worldwind.avkey.MipLevel";
 
     // Implementation note: the keys MISSING_DATA_SIGNAL and MISSING_DATA_REPLACEMENT are intentionally different than
     // their actual string values. Legacy code is expecting the string values "MissingDataFlag" and "MissingDataValue",
@@ -361,6 +376,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     /** Does not modify the item size when the window changes size. */
     final String RESIZE_KEEP_FIXED_SIZE = "gov.nasa.worldwind.CompassLayer.ResizeKeepFixedSize";
     final String RETAIN_LEVEL_ZERO_TILES = "gov.nasa.worldwind.avkey.RetainLevelZeroTiles";
+    final String RETRIEVAL_MAX_REQUESTS_PER_HOST = "gov.nasa.worldwind.avkey.RetrievalMaxRequestsPerHost";
     final String RETRIEVAL_POOL_SIZE = "gov.nasa.worldwind.avkey.RetrievalPoolSize";
     final String RETRIEVE_PROPERTIES_FROM_SERVICE = "gov.nasa.worldwind.avkey.RetrievePropertiesFromService";
     final String RETRIEVAL_QUEUE_SIZE = "gov.nasa.worldwind.avkey.RetrievalQueueSize";
@@ -376,6 +392,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String RIGHT_OF_CENTER = "gov.nasa.worldwind.avkey.RightOfCenter";
     final String ROLL = "gov.nasa.worldwind.avkey.Roll";
     final String ROLLOVER_TEXT = "gov.nasa.worldwind.avkey.RolloverText";
+    final String RPF_FRAME_CACHE_SIZE = "gov.nasa.worldwind.avkey.RPFFrameCacheSize";
 
     final String SCHEDULED_TASK_POOL_SIZE = "gov.nasa.worldwind.avkey.ScheduledTaskPoolSize";
     final String SCHEDULED_TASK_SERVICE_CLASS_NAME = "gov.nasa.worldwind.avkey.ScheduledTaskServiceClassName";
@@ -458,6 +475,9 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String TILED_RASTER_PRODUCER_LARGE_DATASET_THRESHOLD =
         "gov.nasa.worldwind.avkey.TiledRasterProducerLargeDatasetThreshold";
     final String TILED_RASTER_PRODUCER_LIMIT_MAX_LEVEL = "gov.nasa.worldwind.avkey.TiledRasterProducer.LimitMaxLevel";
+    final String TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS =
+        "gov.nasa.worldwind.avkey.TiledRasterProducer.MaxInFlightRasters";
+    final String TILED_RASTER_PRODUCER_PARALLELISM = "gov.nasa.worldwind.avkey.TiledRasterProducer.Parallelism";
     final String TILT = "gov.nasa.worldwind.avkey.Tilt";
     final String TITLE = "gov.nasa.worldwind.avkey.Title";
     final String TOP = "gov.nasa.worldwind.avkey.Top";
@@ -519,27 +519,44 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
 
         for (StoreLocation location : this.readLocations)
         {
-            java.io.File dir = location.getFile();
-            if (!dir.exists())
-                continue;
+            java.net.URL url = this.findFileInLocation(location, fileName);
+            if (url != null)
+                return url;
+        }
 
-            java.io.File file = new java.io.File(makeAbsolutePath(dir, fileName));
-            if (file.exists())
+        return null;
+    }
+
+    /**
+     * Looks for a file in one of this file store's locations, and marks the file used if it is found.
+     *
+     * @param location the location to search.
+     * @param fileName the name of the file to find.
+     *
+     * @return a handle to the file if it exists in the location, otherwise null.
+     */
+    protected java.net.URL findFileInLocation(StoreLocation location, String fileName)
+    {
+        java.io.File dir = location.getFile();
+        if (!dir.exists())
+            return null;
+
+        java.io.File file = new java.io.File(makeAbsolutePath(dir, fileName));
+        if (file.exists())
+        {
+            try
             {
-                try
-                {
-                    if (location.isMarkWhenUsed())
-                        markFileUsed(file);
-                    else
-                        markFileUsed(file.getParentFile());
+                if (location.isMarkWhenUsed())
+                    markFileUsed(file);
+                else
+                    markFileUsed(file.getParentFile());
 
-                    return file.toURI().toURL();
-                }
-                catch (java.net.MalformedURLException e)
-                {
-                    Logging.logger().log(Level.SEVERE,
-                        Logging.getMessage("FileStore.ExceptionCreatingURLForFile", file.getPath()), e);
-                }
+                return file.toURI().toURL();
+            }
+            catch (java.net.MalformedURLException e)
+            {
+                Logging.logger().log(Level.SEVERE,
+                    Logging.getMessage("FileStore.ExceptionCreatingURLForFile", file.getPath()), e);
             }
         }
 
@@ -9,15 +9,27 @@ import gov.nasa.worldwind.*;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.retrieve.*;
 import gov.nasa.worldwind.util.*;
+import org.w3c.dom.*;
 
 import java.beans.PropertyChangeEvent;
 import java.io.*;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Basic implementation of {@link FileStore}.
+ * <p/>
+ * The file store keeps a {@link FileStoreIndex} of each of its locations that exists when the store is created or
+ * added, built in the background. Once a location's index is built, lookups answer from the index alone for every
+ * directory it has listed, so finding a cached file, or learning that it is not cached, does not probe the disk, and
+ * lookups do not synchronize on the file store. Files created through {@link #newFile(String)} are added to the index
+ * as they are created. Changes made to a location by other programs are reconciled by refreshing the indices in the
+ * background every {@link #INDEX_REFRESH_INTERVAL} milliseconds; until then, callers that fail to open a file the
+ * store found remove it with {@link #removeFile(java.net.URL)}. The index of the write location is saved in that
+ * location, so the next session lists only the cache directories that have changed.
  *
  * @author Tom Gaskins
  * @version $Id: BasicDataFileStore.java 1950 2014-04-20 18:52:47Z tgaskins $
@@ -38,8 +50,33 @@ public class BasicDataFileStore extends AbstractFileStore
         "image/png"
     );
 
+    /** The minimum interval in milliseconds between saves of the write location's index. */
+    protected static final long INDEX_SAVE_INTERVAL = 60000;
+    /** The interval in milliseconds between refreshes of the indices with changes made by other programs. */
+    protected static final long INDEX_REFRESH_INTERVAL = 300000;
+    /** The minimum interval in milliseconds between marks of a directory as used when its files are found. */
+    protected static final long MARK_USED_INTERVAL = 60000;
+
     /** The map of cached entries. */
-    protected BasicMemoryCache db = new BasicMemoryCache((long) 3e5, (long) 5e5);
+    protected MemoryCache db = new SegmentedMemoryCache((long) 3e5, (long) 5e5);
+    /** The address of each entry in the database whose local file is in the write location, by the file's name. */
+    protected final ConcurrentHashMap<String, String> dbAddresses = new ConcurrentHashMap<String, String>();
+    /** The index of each indexed location, by the location's directory. */
+    protected final ConcurrentHashMap<File, FileStoreIndex> indices = new ConcurrentHashMap<File, FileStoreIndex>();
+    /** The time each directory was last marked as used, by the directory's path. */
+    protected final ConcurrentHashMap<String, Long> markTimes = new ConcurrentHashMap<String, Long>();
+    protected final AtomicBoolean savingIndex = new AtomicBoolean();
+    protected Timer indexRefreshTimer;
+    /** The quota limiting the size of the write location, or null if there is no quota. */
+    protected FileStoreQuota quota;
+    /**
+     * The directories of the write location holding datasets that cannot be retrieved again, such as imported data,
+     * whose files the quota never removes.
+     */
+    protected final Set<String> localDatasetDirectories =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** The configuration documents created through {@link #newFile(String)} and not yet examined for the quota. */
+    protected final ConcurrentLinkedQueue<String> newConfigDocuments = new ConcurrentLinkedQueue<String>();
     /**
      * Absent-resource list to keep track of resources that were requested by requestFile but failed. The default list
      * holds a maximum of 2000 entries, allows 3 attempts separated by 500 milliseconds before marking a resource
@@ -151,6 +188,28 @@ public class BasicDataFileStore extends AbstractFileStore
                     this.cacheContentTypes.add(type);
             }
         }
+
+        this.db.addCacheListener(new MemoryCache.CacheListener()
+        {
+            public void entryRemoved(Object key, Object clientObject)
+            {
+                URL localUrl = clientObject instanceof DBEntry ? ((DBEntry) clientObject).localUrl : null;
+                String name = localUrl != null ? cachedFileNameFor(localUrl) : null;
+                if (name != null)
+                    dbAddresses.remove(name, key);
+            }
+
+            public void removalException(Throwable exception, Object key, Object clientObject)
+            {
+                Logging.logger().finest(exception.getMessage());
+            }
+        });
+
+        this.startIndexing(this.readLocations);
+
+        Long quota = Configuration.getLongValue(AVKey.DATA_FILE_STORE_QUOTA);
+        if (quota != null && quota > 0)
+            this.setQuota(quota);
     }
 
     /**
@@ -198,12 +257,12 @@ public class BasicDataFileStore extends AbstractFileStore
         protected final static int PENDING = 1;
         protected final static int LOCAL = 2;
 
-        protected String name;
-        protected String contentType;
-        protected long expiration;
-        protected URL localUrl;
-        protected long lastUpdateTime;
-        protected int state;
+        protected volatile String name;
+        protected volatile String contentType;
+        protected volatile long expiration;
+        protected volatile URL localUrl;
+        protected volatile long lastUpdateTime;
+        protected volatile int state;
 
         public DBEntry(String name)
         {
@@ -219,7 +278,7 @@ public class BasicDataFileStore extends AbstractFileStore
     }
 
     /** {@inheritDoc} */
-    public synchronized void removeFile(String address)
+    public void removeFile(String address)
     {
         if (address == null)
         {
@@ -240,7 +299,7 @@ public class BasicDataFileStore extends AbstractFileStore
     }
 
     /** {@inheritDoc} */
-    public synchronized URL requestFile(String address)
+    public URL requestFile(String address)
     {
         if (address == null)
         {
@@ -255,7 +314,7 @@ public class BasicDataFileStore extends AbstractFileStore
     }
 
     /** {@inheritDoc} */
-    public synchronized URL requestFile(String address, boolean cacheRemoteFile)
+    public URL requestFile(String address, boolean cacheRemoteFile)
     {
         if (address == null)
         {
@@ -320,7 +379,7 @@ public class BasicDataFileStore extends AbstractFileStore
      *
      * @throws IllegalArgumentException if the specified address is null.
      */
-    protected synchronized URL getLocalFileUrl(String address, URL retrievalUrl, boolean searchLocalCache)
+    protected URL getLocalFileUrl(String address, URL retrievalUrl, boolean searchLocalCache)
     {
         if (address == null)
         {
@@ -402,6 +461,7 @@ public class BasicDataFileStore extends AbstractFileStore
             entry.state = DBEntry.LOCAL;
             entry.contentType = WWIO.makeMimeTypeForSuffix(WWIO.getSuffix(cacheFileUrl.getPath()));
             this.db.add(address, entry);
+            this.recordDBEntryFile(address, cacheFileUrl);
             this.getAbsentResourceList().unmarkResourceAbsent(address);
 
             return cacheFileUrl;
@@ -443,7 +503,7 @@ public class BasicDataFileStore extends AbstractFileStore
      * @param saveInLocalCache <code>true</code> to add the file to the cache, or <code>false</code> to save it in a
      *                         temporary location.
      */
-    protected synchronized void makeLocal(String address, URL url, boolean saveInLocalCache)
+    protected void makeLocal(String address, URL url, boolean saveInLocalCache)
     {
         if (WorldWind.getNetworkStatus().isHostUnavailable(url) || !WorldWind.getRetrievalService().isAvailable())
             return;
@@ -563,7 +623,7 @@ public class BasicDataFileStore extends AbstractFileStore
      * @param expiration   time (in milliseconds since the Epoch) at which this entry expires, or zero to indicate that
      *                     there is no expiration time.
      */
-    protected synchronized void updateEntry(String address, URL localFileUrl, long expiration)
+    protected void updateEntry(String address, URL localFileUrl, long expiration)
     {
         DBEntry entry = (DBEntry) this.db.getObject(address);
         if (entry == null)
@@ -574,6 +634,658 @@ public class BasicDataFileStore extends AbstractFileStore
         entry.contentType = WWIO.makeMimeTypeForSuffix(WWIO.getSuffix(localFileUrl.getPath()));
         entry.expiration = expiration;
         entry.lastUpdateTime = System.currentTimeMillis();
+        this.recordDBEntryFile(address, localFileUrl);
+
+        this.addToIndex(localFileUrl);
+    }
+
+    /**
+     * Associates a database entry with its local file, so that the entry can be removed when the quota removes the
+     * file.
+     *
+     * @param address  the entry's address.
+     * @param localUrl the entry's local file.
+     */
+    protected void recordDBEntryFile(String address, URL localUrl)
+    {
+        String name = this.cachedFileNameFor(localUrl);
+        if (name != null)
+            this.dbAddresses.put(name, address);
+    }
+
+    /**
+     * Removes the database entry whose local file is a specified file of the write location, if there is one.
+     *
+     * @param name the file's name relative to the write location.
+     */
+    protected void removeDBEntryFor(String name)
+    {
+        String address = this.dbAddresses.remove(name);
+        if (address != null)
+            this.db.remove(address);
+    }
+
+    /**
+     * Determines the name relative to the write location of a file identified by a URL.
+     *
+     * @param url the file's URL.
+     *
+     * @return the file's name, or null if the URL does not identify a file in the write location.
+     */
+    protected String cachedFileNameFor(URL url)
+    {
+        File file = this.writeLocation != null ? WWIO.convertURLToFile(url) : null;
+        return file != null ? this.indexNameFor(this.writeLocation.getFile(), file) : null;
+    }
+
+    //**************************************************************//
+    //********************  File Store Index  **********************//
+    //**************************************************************//
+
+    /**
+     * Creates the index of a location. Returns null if the location's directory does not exist, so that locations
+     * that are not present are searched on disk as before.
+     *
+     * @param location the location to index.
+     *
+     * @return the location's index, or null if the location is not to be indexed.
+     */
+    protected FileStoreIndex createIndex(StoreLocation location)
+    {
+        File dir = location.getFile();
+        return dir != null && dir.isDirectory() ? new FileStoreIndex(dir) : null;
+    }
+
+    /**
+     * Creates the indices of locations and builds them on a background thread. The index of the write location is
+     * saved once it is built.
+     *
+     * @param locations the locations to index.
+     */
+    protected void startIndexing(Collection<StoreLocation> locations)
+    {
+        final ArrayList<FileStoreIndex> newIndices = new ArrayList<FileStoreIndex>();
+        for (StoreLocation location : locations)
+        {
+            FileStoreIndex index = this.createIndex(location);
+            if (index != null)
+            {
+                this.indices.put(location.getFile(), index);
+                newIndices.add(index);
+            }
+        }
+
+        if (newIndices.isEmpty())
+            return;
+
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                for (FileStoreIndex index : newIndices)
+                {
+                    index.build();
+                    if (index == getWriteLocationIndex())
+                        index.save();
+                }
+            }
+        });
+        thread.setName("World Wind File Store Indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+
+        this.startIndexRefresh();
+    }
+
+    /**
+     * Starts refreshing the indices of this store's locations every {@link #INDEX_REFRESH_INTERVAL} milliseconds on a
+     * background thread, if that has not already been started.
+     */
+    protected synchronized void startIndexRefresh()
+    {
+        if (this.indexRefreshTimer != null)
+            return;
+
+        this.indexRefreshTimer = new Timer("World Wind File Store Index Refresher", true);
+        this.indexRefreshTimer.schedule(new TimerTask()
+        {
+            public void run()
+            {
+                refreshIndices();
+            }
+        }, INDEX_REFRESH_INTERVAL, INDEX_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Refreshes the built indices of this store's locations with the files added or deleted without going through this
+     * store, then saves the index of the write location if it changed.
+     */
+    protected void refreshIndices()
+    {
+        try
+        {
+            for (FileStoreIndex index : this.indices.values())
+            {
+                if (index.isBuilt())
+                    index.refresh();
+            }
+
+            this.saveIndexIfNeeded();
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(java.util.logging.Level.SEVERE,
+                Logging.getMessage("FileStore.ExceptionRefreshingIndex"), e);
+        }
+    }
+
+    /** @return the index of the write location, or null if the write location is not indexed. */
+    protected FileStoreIndex getWriteLocationIndex()
+    {
+        return this.writeLocation != null ? this.indices.get(this.writeLocation.getFile()) : null;
+    }
+
+    /**
+     * Saves the index of the write location on a background thread if it has changed and was last saved more than
+     * {@link #INDEX_SAVE_INTERVAL} ago.
+     */
+    protected void saveIndexIfNeeded()
+    {
+        final FileStoreIndex index = this.getWriteLocationIndex();
+        if (index == null || !index.isBuilt() || !index.isModified()
+            || System.currentTimeMillis() - index.getLastSaveTime() < INDEX_SAVE_INTERVAL)
+            return;
+
+        if (!this.savingIndex.compareAndSet(false, true))
+            return;
+
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    index.save();
+                }
+                finally
+                {
+                    savingIndex.set(false);
+                }
+            }
+        });
+        thread.setName("World Wind File Store Index Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Looks for a file in a location. An indexed file is assumed to exist. A file the index does not contain is looked
+     * for on disk only while the index is being built or if the index does not know of the file's directory, and a file
+     * found there is added to the index.
+     *
+     * @param location the location to search.
+     * @param fileName the name of the file to find.
+     *
+     * @return a handle to the file if it exists in the location, otherwise null.
+     */
+    @Override
+    protected URL findFileInLocation(StoreLocation location, String fileName)
+    {
+        FileStoreIndex index = this.indices.get(location.getFile());
+        if (index == null)
+        {
+            URL url = super.findFileInLocation(location, fileName);
+            if (url != null)
+                this.recordUse(location, normalizeFileStoreName(fileName));
+            return url;
+        }
+
+        String indexName = normalizeFileStoreName(fileName);
+        File file = new File(makeAbsolutePath(location.getFile(), fileName));
+
+        if (!index.contains(indexName))
+        {
+            if (!this.mustProbe(index, indexName) || !file.exists())
+                return null;
+
+            index.add(indexName);
+            this.saveIndexIfNeeded();
+        }
+
+        this.markUsed(location, index, indexName, file);
+        this.recordUse(location, indexName);
+
+        try
+        {
+            return file.toURI().toURL();
+        }
+        catch (MalformedURLException e)
+        {
+            Logging.logger().log(java.util.logging.Level.SEVERE,
+                Logging.getMessage("FileStore.ExceptionCreatingURLForFile", file.getPath()), e);
+            return null;
+        }
+    }
+
+    /**
+     * Marks a file found in an indexed location as used, as {@link #markFileUsed(java.io.File)} does, but at most once
+     * every {@link #MARK_USED_INTERVAL} for each directory, and without invalidating the directory's saved index.
+     *
+     * @param location  the file's location.
+     * @param index     the location's index.
+     * @param indexName the file's name in the index.
+     * @param file      the file.
+     */
+    protected void markUsed(StoreLocation location, FileStoreIndex index, String indexName, File file)
+    {
+        String dirName = FileStoreIndex.parentOf(indexName);
+        String key = location.getFile().getPath() + "/" + dirName;
+        long now = System.currentTimeMillis();
+
+        Long lastMarked = this.markTimes.get(key);
+        if (lastMarked != null && now - lastMarked < MARK_USED_INTERVAL)
+            return;
+        this.markTimes.put(key, now);
+
+        if (location.isMarkWhenUsed() && file.canWrite())
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(now);
+
+        index.touchDirectory(dirName, now);
+    }
+
+    /**
+     * Adds a file to the index of the location containing it.
+     *
+     * @param fileUrl the file's URL. Files outside this store's indexed locations are ignored.
+     */
+    protected void addToIndex(URL fileUrl)
+    {
+        File file = WWIO.convertURLToFile(fileUrl);
+        if (file == null)
+            return;
+
+        for (Map.Entry<File, FileStoreIndex> entry : this.indices.entrySet())
+        {
+            String name = this.indexNameFor(entry.getKey(), file);
+            if (name != null)
+            {
+                entry.getValue().add(name);
+                this.saveIndexIfNeeded();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes a file from the index of the location containing it.
+     *
+     * @param file the file. Files outside this store's indexed locations are ignored.
+     */
+    protected void removeFromIndex(File file)
+    {
+        for (Map.Entry<File, FileStoreIndex> entry : this.indices.entrySet())
+        {
+            String name = this.indexNameFor(entry.getKey(), file);
+            if (name != null)
+            {
+                entry.getValue().remove(name);
+                this.saveIndexIfNeeded();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Computes the name of a file in the index of a location.
+     *
+     * @param locationDir the location's directory.
+     * @param file        the file.
+     *
+     * @return the file's path relative to the location, or null if the file is not in the location.
+     */
+    protected String indexNameFor(File locationDir, File file)
+    {
+        String locationPath = locationDir.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        if (path.length() <= locationPath.length() + 1 || !path.startsWith(locationPath)
+            || path.charAt(locationPath.length()) != File.separatorChar)
+            return null;
+
+        return normalizeFileStoreName(path.substring(locationPath.length() + 1));
+    }
+
+    /**
+     * Indicates whether a file that an index does not contain must still be looked for on disk, because the index is
+     * being built or has not listed the file's directory.
+     *
+     * @param index     the index.
+     * @param indexName the file's name in the index.
+     *
+     * @return true if the file may exist although the index does not contain it, otherwise false.
+     */
+    protected boolean mustProbe(FileStoreIndex index, String indexName)
+    {
+        return !index.isBuilt() || !index.containsDirectory(FileStoreIndex.parentOf(indexName));
+    }
+
+    /** {@inheritDoc} Answers from the indices of this store's locations where they are authoritative. */
+    @Override
+    public boolean containsFile(String fileName)
+    {
+        if (fileName == null)
+            return false;
+
+        String indexName = normalizeFileStoreName(fileName);
+        for (StoreLocation location : this.readLocations)
+        {
+            FileStoreIndex index = this.indices.get(location.getFile());
+            if (index != null && index.contains(indexName))
+                return true;
+
+            if ((index == null || this.mustProbe(index, indexName))
+                && new File(makeAbsolutePath(location.getFile(), fileName)).exists())
+                return true;
+        }
+
+        return false;
+    }
+
+    /** {@inheritDoc} Also removes the file from the index of the location containing it. */
+    @Override
+    public void removeFile(URL url)
+    {
+        super.removeFile(url);
+
+        File file = WWIO.convertURLToFile(url);
+        if (file != null && !file.exists())
+        {
+            this.removeFromIndex(file);
+
+            FileStoreQuota quota = this.quota;
+            String name = quota != null ? this.indexNameFor(this.writeLocation.getFile(), file) : null;
+            if (name != null)
+                quota.recordRemoval(name);
+        }
+    }
+
+    /** {@inheritDoc} Also indexes the new location. */
+    @Override
+    public void addLocation(int index, String newPath, boolean isInstall)
+    {
+        super.addLocation(index, newPath, isInstall);
+
+        StoreLocation location = this.storeLocationFor(newPath);
+        if (location != null)
+            this.startIndexing(Arrays.asList(location));
+    }
+
+    /** {@inheritDoc} Also discards the location's index. */
+    @Override
+    public void removeLocation(String path)
+    {
+        super.removeLocation(path);
+
+        if (path != null && this.storeLocationFor(path) == null)
+            this.indices.remove(new File(path));
+    }
+
+    /** {@inheritDoc} Does not list the files holding the indices of this store's locations. */
+    @Override
+    protected boolean listFile(StoreLocation location, File file, FileStoreFilter filter, Collection<String> names)
+    {
+        if (file.getName().startsWith(FileStoreIndex.INDEX_FILE_NAME) && location.getFile().equals(
+            file.getParentFile()))
+            return false;
+
+        return super.listFile(location, file, filter, names);
+    }
+
+    //**************************************************************//
+    //********************  Disk Quota  ****************************//
+    //**************************************************************//
+
+    /**
+     * Returns the quota limiting the size of this file store's write location. The quota reports the bytes used by the
+     * write location and the bytes and files evicted to keep it within the quota.
+     *
+     * @return the quota, or null if the write location has no quota.
+     */
+    public FileStoreQuota getQuota()
+    {
+        return this.quota;
+    }
+
+    /**
+     * Limits the size of this file store's write location. When the files in the write location exceed the quota, the
+     * least recently used files are removed on a background thread. Files in other locations are never removed. The
+     * quota may also be specified by the configuration property {@link AVKey#DATA_FILE_STORE_QUOTA}.
+     *
+     * @param bytes the maximum size in bytes of the files in the write location, or 0 for no maximum.
+     *
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public synchronized void setQuota(long bytes)
+    {
+        if (bytes < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", bytes);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.quota != null)
+        {
+            this.quota.setQuota(bytes);
+        }
+        else if (bytes > 0 && this.writeLocation != null)
+        {
+            this.quota = new FileStoreQuota(this, bytes);
+            this.quota.start(FileStoreQuota.DEFAULT_EVICTION_INTERVAL);
+        }
+    }
+
+    /**
+     * {@inheritDoc} Also adds the file to the index of the write location, and tells the quota, if there is one, that
+     * the file is being written.
+     */
+    @Override
+    public File newFile(String fileName)
+    {
+        File file = super.newFile(fileName);
+        if (file == null)
+            return null;
+
+        FileStoreIndex index = this.getWriteLocationIndex();
+        String name = this.indexNameFor(this.writeLocation.getFile(), file);
+        if (index != null && name != null && !index.contains(name))
+        {
+            index.add(name);
+            this.saveIndexIfNeeded();
+        }
+
+        FileStoreQuota quota = this.quota;
+        if (quota != null)
+        {
+            if (name != null && name.toLowerCase().endsWith(".xml"))
+                this.newConfigDocuments.add(name);
+            quota.recordWrite(normalizeFileStoreName(fileName));
+        }
+
+        return file;
+    }
+
+    /**
+     * Tells the quota, if there is one, that a file in the write location was used.
+     *
+     * @param location the location containing the file.
+     * @param name     the file's name relative to the location.
+     */
+    protected void recordUse(StoreLocation location, String name)
+    {
+        FileStoreQuota quota = this.quota;
+        if (quota != null && this.isWriteLocation(location))
+            quota.recordUse(name);
+    }
+
+    protected boolean isWriteLocation(StoreLocation location)
+    {
+        return this.writeLocation != null && location.getFile().equals(this.writeLocation.getFile());
+    }
+
+    /**
+     * Indicates whether the quota may remove a file from the write location. Configuration documents, the files this
+     * file store keeps in the root of the write location, whose names begin with '.', and the files of datasets that
+     * cannot be retrieved again are never removed. A dataset cannot be retrieved again if its directory holds a data
+     * configuration document that names no retrieval service, as the documents of data imported with {@link
+     * gov.nasa.worldwind.data.TiledRasterProducer} do.
+     *
+     * @param name the file's name relative to the write location.
+     *
+     * @return true if the file may be removed, otherwise false.
+     */
+    protected boolean isEvictable(String name)
+    {
+        if (name.startsWith(".") || name.toLowerCase().endsWith(".xml"))
+            return false;
+
+        this.examineNewConfigDocuments();
+
+        for (String dir = FileStoreIndex.parentOf(name); dir.length() > 0; dir = FileStoreIndex.parentOf(dir))
+        {
+            if (this.localDatasetDirectories.contains(dir))
+                return false;
+        }
+
+        return !this.localDatasetDirectories.contains(name);
+    }
+
+    /** Examines the configuration documents created since they were last examined, if they have been written. */
+    protected void examineNewConfigDocuments()
+    {
+        if (this.writeLocation == null)
+            return;
+
+        for (int i = this.newConfigDocuments.size(); i > 0; i--)
+        {
+            String name = this.newConfigDocuments.poll();
+            if (name == null)
+                break;
+
+            File file = new File(this.writeLocation.getFile(), name);
+            if (file.length() > 0)
+                this.examineConfigDocument(name, file);
+            else
+                this.newConfigDocuments.add(name);
+        }
+    }
+
+    /**
+     * Records the directory of a configuration document as that of a dataset that cannot be retrieved again if the
+     * document is a data configuration document naming no retrieval service.
+     *
+     * @param name the document's name relative to the write location.
+     * @param file the document.
+     */
+    protected void examineConfigDocument(String name, File file)
+    {
+        String dir = FileStoreIndex.parentOf(name);
+        if (dir.length() == 0)
+            return;
+
+        try
+        {
+            Document doc = WWXML.openDocument(file);
+            Element element = doc != null ? doc.getDocumentElement() : null;
+            if (element != null && DataConfigurationUtils.isDataConfig(element)
+                && WWXML.getElement(element, ".//Service", null) == null)
+            {
+                this.localDatasetDirectories.add(dir);
+            }
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(java.util.logging.Level.FINE,
+                Logging.getMessage("generic.ExceptionAttemptingToReadFile", file.getPath()), e);
+        }
+    }
+
+    /**
+     * Adds the files of the write location that may be removed to a quota.
+     *
+     * @param quota the quota.
+     */
+    protected void collectCachedFiles(FileStoreQuota quota)
+    {
+        if (this.writeLocation != null)
+            this.collectCachedFiles(quota, this.writeLocation.getFile(), "");
+    }
+
+    protected void collectCachedFiles(FileStoreQuota quota, File dir, String prefix)
+    {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+
+        // Look for the configuration document of a dataset that cannot be retrieved again before adding any files.
+        for (File child : children)
+        {
+            if (child.isFile() && child.getName().toLowerCase().endsWith(".xml"))
+                this.examineConfigDocument(prefix + child.getName(), child);
+        }
+
+        for (File child : children)
+        {
+            String name = prefix + child.getName();
+            if (!this.isEvictable(name))
+                continue;
+
+            if (child.isDirectory())
+                this.collectCachedFiles(quota, child, name + "/");
+            else
+                quota.addFile(name, child.length(), child.lastModified());
+        }
+    }
+
+    /**
+     * Measures a file in the write location.
+     *
+     * @param name the file's name relative to the write location.
+     *
+     * @return the file's size in bytes, or -1 if the file does not exist.
+     */
+    protected long sizeOfCachedFile(String name)
+    {
+        if (this.writeLocation == null)
+            return -1;
+
+        File file = new File(this.writeLocation.getFile(), name);
+        return file.isFile() ? file.length() : -1;
+    }
+
+    /**
+     * Removes a file from the write location to keep the write location within its quota, along with the database
+     * entry whose local file it is.
+     *
+     * @param name the file's name relative to the write location.
+     *
+     * @return true if the file was removed or no longer exists, otherwise false.
+     */
+    protected boolean evictCachedFile(String name)
+    {
+        if (this.writeLocation == null)
+            return false;
+
+        File file = new File(this.writeLocation.getFile(), name);
+        if (file.delete() || !file.exists())
+        {
+            this.removeFromIndex(file);
+            this.removeDBEntryFor(name);
+            return true;
+        }
+
+        return false;
     }
 
     /**
@@ -0,0 +1,753 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+import java.util.logging.Level;
+
+/**
+ * An in-memory index of the files beneath a file store location. The index records a 64-bit hash of each file's path
+ * relative to the location, so it holds a million files in a few tens of megabytes, and {@link #contains(String)}
+ * reads the index without locking. Changes to the index are serialized by a lock.
+ * <p/>
+ * Once built, the index describes the files of every directory it has listed, provided that the files written to
+ * the location are added to the index and the files deleted from it are removed. Files changed without the index being
+ * told, such as files deleted by other programs, are reconciled by {@link #refresh()}, which callers run periodically.
+ * A directory the index does not know of has not been listed, so callers must look for its files on disk, and should
+ * add the files they find.
+ * <p/>
+ * {@link #build()} walks the location and may run while the index is in use. {@link #save()} writes the index, with
+ * the modification time of each directory when it was listed, to a file in the location's root. The next build reads
+ * that file and lists again only the directories whose modification time has changed, so a large location is not
+ * rescanned on every start. Because a directory's modification time changes when files are added to or removed from
+ * it, the saved entries of unchanged directories remain accurate.
+ *
+ * @version $Id$
+ */
+public class FileStoreIndex
+{
+    /** The name of the file, in the root of the indexed location, that holds the saved index. */
+    public static final String INDEX_FILE_NAME = ".worldwind-index";
+
+    protected static final int MAGIC = 0x57574649; // "WWFI"
+    protected static final int VERSION = 1;
+    protected static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /** The files of one directory and the directory's modification time when it was last listed. */
+    protected static class Directory
+    {
+        /** The directory's modification time when listed, or -1 if it has not been listed. */
+        protected long modified = -1;
+        protected final Set<String> subdirectories = new HashSet<String>();
+        protected long[] hashes = new long[4];
+        protected int numHashes;
+
+        protected synchronized void addHash(long hash)
+        {
+            if (this.numHashes == this.hashes.length)
+                this.hashes = Arrays.copyOf(this.hashes, 2 * this.hashes.length);
+
+            this.hashes[this.numHashes++] = hash;
+        }
+
+        protected synchronized void removeHash(long hash)
+        {
+            for (int i = 0; i < this.numHashes; i++)
+            {
+                if (this.hashes[i] == hash)
+                {
+                    this.hashes[i] = this.hashes[--this.numHashes];
+                    return;
+                }
+            }
+        }
+
+        protected synchronized void setModified(long modified)
+        {
+            this.modified = modified;
+        }
+
+        protected synchronized void addSubdirectory(String name)
+        {
+            this.subdirectories.add(name);
+        }
+    }
+
+    /**
+     * A set of 64-bit hashes in an open-addressed table. Lookups read the table without locking; changes must be made
+     * while holding the index's lock. The values 0 and 1 mark empty and removed slots, so hashes never take them.
+     */
+    protected static class HashSet64
+    {
+        protected static final long EMPTY = 0;
+        protected static final long REMOVED = 1;
+
+        protected volatile AtomicLongArray table = new AtomicLongArray(1024);
+        protected int size;
+        protected int numUsed; // entries plus removed slots
+
+        protected boolean contains(long hash)
+        {
+            AtomicLongArray t = this.table;
+            int mask = t.length() - 1;
+            for (int i = (int) mix(hash) & mask; ; i = (i + 1) & mask)
+            {
+                long value = t.get(i);
+                if (value == hash)
+                    return true;
+                if (value == EMPTY)
+                    return false;
+            }
+        }
+
+        protected boolean add(long hash)
+        {
+            if (this.contains(hash))
+                return false;
+
+            if (2 * (this.numUsed + 1) > this.table.length())
+                this.rehash(this.size + 1 > this.table.length() / 4 ? 2 * this.table.length() : this.table.length());
+
+            AtomicLongArray t = this.table;
+            int mask = t.length() - 1;
+            int i = (int) mix(hash) & mask;
+            while (t.get(i) != EMPTY && t.get(i) != REMOVED)
+            {
+                i = (i + 1) & mask;
+            }
+
+            if (t.get(i) == EMPTY)
+                this.numUsed++;
+            t.set(i, hash);
+            this.size++;
+            return true;
+        }
+
+        protected boolean remove(long hash)
+        {
+            AtomicLongArray t = this.table;
+            int mask = t.length() - 1;
+            for (int i = (int) mix(hash) & mask; ; i = (i + 1) & mask)
+            {
+                long value = t.get(i);
+                if (value == EMPTY)
+                    return false;
+                if (value == hash)
+                {
+                    t.set(i, REMOVED);
+                    this.size--;
+                    return true;
+                }
+            }
+        }
+
+        /** Copies the entries to a new table, which replaces the current one once it is complete. */
+        protected void rehash(int capacity)
+        {
+            AtomicLongArray old = this.table;
+            AtomicLongArray t = new AtomicLongArray(capacity);
+            int mask = capacity - 1;
+            for (int j = 0; j < old.length(); j++)
+            {
+                long value = old.get(j);
+                if (value == EMPTY || value == REMOVED)
+                    continue;
+
+                int i = (int) mix(value) & mask;
+                while (t.get(i) != EMPTY)
+                {
+                    i = (i + 1) & mask;
+                }
+                t.set(i, value);
+            }
+
+            this.numUsed = this.size;
+            this.table = t;
+        }
+
+        protected void clear()
+        {
+            this.table = new AtomicLongArray(1024);
+            this.size = 0;
+            this.numUsed = 0;
+        }
+
+        protected static long mix(long hash)
+        {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+
+    protected final File root;
+    protected final Object lock = new Object();
+    protected final HashSet64 hashes = new HashSet64();
+    protected final ConcurrentHashMap<String, Directory> directories = new ConcurrentHashMap<String, Directory>();
+    protected final AtomicBoolean modified = new AtomicBoolean();
+    protected volatile boolean built;
+    protected volatile long lastSaveTime;
+
+    /**
+     * Creates an empty index of a directory. Call {@link #build()} to fill it.
+     *
+     * @param root the directory to index.
+     *
+     * @throws IllegalArgumentException if the directory is null.
+     */
+    public FileStoreIndex(File root)
+    {
+        if (root == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.root = root;
+    }
+
+    /** @return the indexed directory. */
+    public File getRoot()
+    {
+        return this.root;
+    }
+
+    /** @return the file holding the saved index. */
+    public File getIndexFile()
+    {
+        return new File(this.root, INDEX_FILE_NAME);
+    }
+
+    /** @return true if {@link #build()} has completed, otherwise false. */
+    public boolean isBuilt()
+    {
+        return this.built;
+    }
+
+    /** @return true if the index has changed since it was last saved, otherwise false. */
+    public boolean isModified()
+    {
+        return this.modified.get();
+    }
+
+    /** @return the time the index was last saved, in milliseconds since the Epoch, or 0 if it has not been saved. */
+    public long getLastSaveTime()
+    {
+        return this.lastSaveTime;
+    }
+
+    /** @return the number of files in the index. */
+    public int size()
+    {
+        synchronized (this.lock)
+        {
+            return this.hashes.size;
+        }
+    }
+
+    /**
+     * Indicates whether the index contains a file. This does not lock and does not access the file system.
+     *
+     * @param name the file's path relative to the indexed directory, with '/' separating its parts.
+     *
+     * @return true if the index contains the file, otherwise false.
+     */
+    public boolean contains(String name)
+    {
+        return name != null && this.hashes.contains(hash(name));
+    }
+
+    /**
+     * Indicates whether the index knows of a directory, either because the directory was listed or because files of
+     * the directory were added. This does not lock and does not access the file system.
+     *
+     * @param name the directory's path relative to the indexed directory, or the empty string for the indexed
+     *             directory.
+     *
+     * @return true if the index knows of the directory, otherwise false.
+     */
+    public boolean containsDirectory(String name)
+    {
+        return name != null && this.directories.containsKey(name);
+    }
+
+    /**
+     * Adds a file to the index.
+     *
+     * @param name the file's path relative to the indexed directory, with '/' separating its parts.
+     *
+     * @throws IllegalArgumentException if the name is null.
+     */
+    public void add(String name)
+    {
+        if (name == null)
+        {
+            String message = Logging.getMessage("nullValue.FilePathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.addHash(parentOf(name), hash(name));
+    }
+
+    /**
+     * Removes a file from the index.
+     *
+     * @param name the file's path relative to the indexed directory, with '/' separating its parts.
+     *
+     * @throws IllegalArgumentException if the name is null.
+     */
+    public void remove(String name)
+    {
+        if (name == null)
+        {
+            String message = Logging.getMessage("nullValue.FilePathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        long hash = hash(name);
+        boolean removed;
+        synchronized (this.lock)
+        {
+            removed = this.hashes.remove(hash);
+        }
+
+        if (removed)
+        {
+            Directory directory = this.directories.get(parentOf(name));
+            if (directory != null)
+                directory.removeHash(hash);
+            this.modified.set(true);
+        }
+    }
+
+    /**
+     * Sets a directory's modification time, as file stores do to record that the directory's files were used, without
+     * causing the next build to list the directory again. A directory that has changed since it was listed is still
+     * listed again.
+     *
+     * @param name the directory's path relative to the indexed directory, or the empty string for the indexed
+     *             directory.
+     * @param time the new modification time, in milliseconds since the Epoch.
+     *
+     * @return true if the modification time was set, otherwise false.
+     */
+    public boolean touchDirectory(String name, long time)
+    {
+        File dir = name.length() > 0 ? new File(this.root, name) : this.root;
+        long before = dir.lastModified();
+        if (!dir.canWrite() || !dir.setLastModified(time))
+            return false;
+
+        Directory directory = this.directories.get(name);
+        if (directory != null)
+        {
+            synchronized (directory)
+            {
+                if (directory.modified == before)
+                    directory.modified = dir.lastModified();
+            }
+        }
+
+        return true;
+    }
+
+    protected void addHash(String directoryName, long hash)
+    {
+        boolean added;
+        synchronized (this.lock)
+        {
+            added = this.hashes.add(hash);
+        }
+
+        if (added)
+        {
+            this.getDirectory(directoryName).addHash(hash);
+            this.modified.set(true);
+        }
+    }
+
+    protected Directory getDirectory(String name)
+    {
+        Directory directory = this.directories.get(name);
+        if (directory == null)
+        {
+            Directory newDirectory = new Directory();
+            directory = this.directories.putIfAbsent(name, newDirectory);
+            if (directory == null)
+            {
+                directory = newDirectory;
+                // A directory added other than by listing its parent must be found again by the next build.
+                if (name.length() > 0)
+                    this.getDirectory(parentOf(name)).addSubdirectory(nameOf(name));
+            }
+        }
+
+        return directory;
+    }
+
+    /**
+     * Fills the index. Reads the saved index if there is one, keeps its entries for the directories that have not
+     * changed since they were listed, and lists the other directories. The index may be used while it is built.
+     */
+    public void build()
+    {
+        Map<String, Directory> saved = this.load();
+
+        if (this.root.isDirectory())
+            this.buildDirectory(this.root, "", saved);
+
+        this.built = true;
+    }
+
+    /**
+     * Brings the index up to date with changes made to the location without the index being told. Lists again only the
+     * directories whose modification time has changed, adds the files they now contain and removes the files they no
+     * longer contain, and removes directories that no longer exist. The index may be used while it is refreshed.
+     */
+    public void refresh()
+    {
+        if (this.root.isDirectory())
+            this.refreshDirectory(this.root, "");
+    }
+
+    protected void refreshDirectory(File dir, String name)
+    {
+        Directory directory = this.getDirectory(name);
+        long dirModified = dir.lastModified();
+
+        long[] known;
+        synchronized (directory)
+        {
+            known = directory.modified != dirModified ? Arrays.copyOf(directory.hashes, directory.numHashes) : null;
+        }
+
+        if (known != null)
+        {
+            File[] children = dir.listFiles();
+            if (children == null)
+                return;
+
+            Set<Long> listed = new HashSet<Long>();
+            for (File child : children)
+            {
+                if (child.isDirectory())
+                    directory.addSubdirectory(child.getName());
+                else if (name.length() > 0 || !child.getName().startsWith(INDEX_FILE_NAME))
+                    listed.add(hash(childName(name, child.getName())));
+            }
+
+            for (long hash : known)
+            {
+                if (!listed.contains(hash))
+                    this.removeHash(directory, hash);
+            }
+
+            for (long hash : listed)
+            {
+                this.addHash(name, hash);
+            }
+
+            directory.setModified(dirModified);
+            this.modified.set(true);
+        }
+
+        String[] subdirectories;
+        synchronized (directory)
+        {
+            subdirectories = directory.subdirectories.toArray(new String[directory.subdirectories.size()]);
+        }
+
+        for (String child : subdirectories)
+        {
+            File childDir = new File(dir, child);
+            if (childDir.isDirectory())
+            {
+                this.refreshDirectory(childDir, childName(name, child));
+            }
+            else
+            {
+                synchronized (directory)
+                {
+                    directory.subdirectories.remove(child);
+                }
+                this.removeDirectory(childName(name, child));
+            }
+        }
+    }
+
+    /** Removes a directory that no longer exists, with its files and subdirectories, from the index. */
+    protected void removeDirectory(String name)
+    {
+        Directory directory = this.directories.remove(name);
+        if (directory == null)
+            return;
+
+        long[] hashes;
+        String[] subdirectories;
+        synchronized (directory)
+        {
+            hashes = Arrays.copyOf(directory.hashes, directory.numHashes);
+            subdirectories = directory.subdirectories.toArray(new String[directory.subdirectories.size()]);
+        }
+
+        for (long hash : hashes)
+        {
+            this.removeHash(directory, hash);
+        }
+
+        for (String child : subdirectories)
+        {
+            this.removeDirectory(childName(name, child));
+        }
+    }
+
+    protected void removeHash(Directory directory, long hash)
+    {
+        boolean removed;
+        synchronized (this.lock)
+        {
+            removed = this.hashes.remove(hash);
+        }
+
+        directory.removeHash(hash);
+        if (removed)
+            this.modified.set(true);
+    }
+
+    protected void buildDirectory(File dir, String name, Map<String, Directory> saved)
+    {
+        long dirModified = dir.lastModified();
+        Directory savedDirectory = saved != null ? saved.get(name) : null;
+        Directory directory = this.getDirectory(name);
+
+        if (savedDirectory != null && savedDirectory.modified == dirModified && dirModified != 0)
+        {
+            synchronized (this.lock)
+            {
+                for (int i = 0; i < savedDirectory.numHashes; i++)
+                {
+                    if (this.hashes.add(savedDirectory.hashes[i]))
+                        directory.addHash(savedDirectory.hashes[i]);
+                }
+            }
+            directory.setModified(dirModified);
+
+            for (String child : savedDirectory.subdirectories)
+            {
+                File childDir = new File(dir, child);
+                if (childDir.isDirectory())
+                {
+                    directory.addSubdirectory(child);
+                    this.buildDirectory(childDir, childName(name, child), saved);
+                }
+            }
+
+            return;
+        }
+
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+
+        ArrayList<File> subdirectories = new ArrayList<File>();
+        for (File child : children)
+        {
+            if (child.isDirectory())
+            {
+                subdirectories.add(child);
+                directory.addSubdirectory(child.getName());
+            }
+            else if (name.length() > 0 || !child.getName().startsWith(INDEX_FILE_NAME))
+            {
+                this.addHash(name, hash(childName(name, child.getName())));
+            }
+        }
+
+        directory.setModified(dirModified);
+        this.modified.set(true);
+
+        for (File child : subdirectories)
+        {
+            this.buildDirectory(child, childName(name, child.getName()), saved);
+        }
+    }
+
+    /**
+     * Writes the index to the index file in the indexed directory. The index is written to a temporary file that then
+     * replaces the index file, so a failure while writing leaves the previous index intact.
+     *
+     * @return true if the index was saved, otherwise false.
+     */
+    public boolean save()
+    {
+        File indexFile = this.getIndexFile();
+        File tempFile = new File(this.root, INDEX_FILE_NAME + TEMP_FILE_SUFFIX);
+
+        // Clear the modified flag first, so changes made while saving mark the index modified again.
+        this.modified.set(false);
+
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(this.directories.size());
+
+            for (Map.Entry<String, Directory> entry : this.directories.entrySet())
+            {
+                Directory directory = entry.getValue();
+                synchronized (directory)
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(directory.modified);
+                    out.writeInt(directory.subdirectories.size());
+                    for (String child : directory.subdirectories)
+                    {
+                        out.writeUTF(child);
+                    }
+                    out.writeInt(directory.numHashes);
+                    for (int i = 0; i < directory.numHashes; i++)
+                    {
+                        out.writeLong(directory.hashes[i]);
+                    }
+                }
+            }
+
+            out.close();
+            out = null;
+
+            if (indexFile.exists() && !indexFile.delete())
+                throw new IOException(Logging.getMessage("generic.CannotDeleteFile", indexFile));
+            if (!tempFile.renameTo(indexFile))
+                throw new IOException(Logging.getMessage("generic.CannotCreateFile", indexFile));
+
+            this.lastSaveTime = System.currentTimeMillis();
+            return true;
+        }
+        catch (IOException e)
+        {
+            this.modified.set(true);
+            Logging.logger().log(Level.FINE, Logging.getMessage("FileStore.ExceptionWritingIndex", indexFile), e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return false;
+        }
+        finally
+        {
+            WWIO.closeStream(out, tempFile.getPath());
+        }
+    }
+
+    /**
+     * Reads the saved index.
+     *
+     * @return the saved directories by name, or null if there is no saved index or it cannot be read.
+     */
+    protected Map<String, Directory> load()
+    {
+        File indexFile = this.getIndexFile();
+        if (!indexFile.isFile())
+            return null;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            int numDirectories = in.readInt();
+            HashMap<String, Directory> saved = new HashMap<String, Directory>();
+            for (int d = 0; d < numDirectories; d++)
+            {
+                String name = in.readUTF();
+                Directory directory = new Directory();
+                directory.modified = in.readLong();
+                int numSubdirectories = in.readInt();
+                for (int i = 0; i < numSubdirectories; i++)
+                {
+                    directory.subdirectories.add(in.readUTF());
+                }
+                int numHashes = in.readInt();
+                directory.hashes = new long[Math.max(numHashes, 4)];
+                for (int i = 0; i < numHashes; i++)
+                {
+                    directory.hashes[i] = in.readLong();
+                }
+                directory.numHashes = numHashes;
+                saved.put(name, directory);
+            }
+
+            return saved;
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.FINE, Logging.getMessage("FileStore.ExceptionReadingIndex", indexFile), e);
+            return null;
+        }
+        finally
+        {
+            WWIO.closeStream(in, indexFile.getPath());
+        }
+    }
+
+    /** Removes all files from the index. */
+    public void clear()
+    {
+        synchronized (this.lock)
+        {
+            this.hashes.clear();
+            this.directories.clear();
+        }
+        this.modified.set(true);
+    }
+
+    /**
+     * Computes the 64-bit hash the index records for a file name. The hash is never 0 or 1.
+     *
+     * @param name the file name.
+     *
+     * @return the name's hash.
+     */
+    protected static long hash(String name)
+    {
+        // 64-bit FNV-1a over the name's characters.
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++)
+        {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash == HashSet64.EMPTY || hash == HashSet64.REMOVED ? hash + 2 : hash;
+    }
+
+    protected static String parentOf(String name)
+    {
+        int index = name.lastIndexOf('/');
+        return index >= 0 ? name.substring(0, index) : "";
+    }
+
+    protected static String nameOf(String name)
+    {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    protected static String childName(String parent, String child)
+    {
+        return parent.length() > 0 ? parent + "/" + child : child;
+    }
+}
@@ -0,0 +1,622 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+import java.util.logging.Level;
+
+/**
+ * Limits the size of the write location of a {@link BasicDataFileStore} by removing its least recently used files.
+ * Only files that can be retrieved again are removed: files in the file store's other locations, including install
+ * locations, and files the file store reports as not evictable, such as configuration documents and the files of
+ * imported datasets, are neither removed nor counted against the quota.
+ * <p/>
+ * The quota tracks the size and last use of each file in the write location. The file store reports each file it finds
+ * there and each file it creates; recording these touches only the file's entry, so the file store's callers are never
+ * blocked by the quota. A background thread periodically measures the files created since its last run and, when the
+ * files in the write location exceed the quota, removes files in order of least recent use until they are below {@link
+ * #LOW_WATER_FRACTION} of the quota, so that each eviction frees enough space for a while.
+ * <p/>
+ * The times files were last used are saved to the file {@link #ACCESS_FILE_NAME} in the write location, so the order of
+ * use survives between sessions. Each evictor run appends the times of only the files used since the previous run, and
+ * the file is rewritten with one time per file once most of its records are superseded. Files not used since the quota
+ * began tracking them are ordered by their modification time.
+ *
+ * @version $Id$
+ */
+public class FileStoreQuota
+{
+    /** The name of the file, in the root of the write location, that holds the times files were last used. */
+    public static final String ACCESS_FILE_NAME = ".worldwind-access";
+    /** The fraction of the quota eviction reduces the files to. */
+    public static final double LOW_WATER_FRACTION = 0.9;
+    /** The default interval in milliseconds between evictor runs. */
+    public static final long DEFAULT_EVICTION_INTERVAL = 10000;
+
+    protected static final int MAGIC = 0x57574151; // "WWAQ"
+    protected static final int VERSION = 2;
+    protected static final String TEMP_FILE_SUFFIX = ".tmp";
+    /** The time in milliseconds a file created by the file store may take to appear before it is forgotten. */
+    protected static final long PENDING_TIMEOUT = 300000;
+    /** The number of records the access file may hold beyond twice the number of files before it is rewritten. */
+    protected static final int ACCESS_FILE_SLACK = 4096;
+
+    /** The size and last use of a file. */
+    protected static class Entry
+    {
+        protected final long size;
+        protected volatile long lastUsed;
+        /** True if the file's last use was recorded, rather than taken from its modification time. */
+        protected volatile boolean used;
+        /** True if the file's last use has not been saved to the access file. */
+        protected volatile boolean modified;
+
+        public Entry(long size, long lastUsed, boolean used)
+        {
+            this.size = size;
+            this.lastUsed = lastUsed;
+            this.used = used;
+        }
+    }
+
+    /** A file and its last use, captured when eviction begins. */
+    protected static class Candidate implements Comparable<Candidate>
+    {
+        protected final String name;
+        protected final Entry entry;
+        protected final long lastUsed;
+
+        public Candidate(String name, Entry entry)
+        {
+            this.name = name;
+            this.entry = entry;
+            this.lastUsed = entry.lastUsed;
+        }
+
+        public int compareTo(Candidate that)
+        {
+            return this.lastUsed < that.lastUsed ? -1 : this.lastUsed > that.lastUsed ? 1 : 0;
+        }
+    }
+
+    protected final BasicDataFileStore fileStore;
+    protected volatile long quota;
+    protected final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    /** The files the file store has created and the evictor has not yet measured, with the times they were created. */
+    protected final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<String, Long>();
+    protected final AtomicLong bytesUsed = new AtomicLong();
+    protected final AtomicLong bytesEvicted = new AtomicLong();
+    protected final AtomicLong filesEvicted = new AtomicLong();
+    /** The names of the files whose last use has not been saved to the access file. */
+    protected final Set<String> modifiedNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** The number of records in the access file, or -1 if the file must be rewritten before records are appended. */
+    protected int accessRecordCount = -1;
+    protected final Object evictionLock = new Object();
+    protected volatile boolean scanned;
+    protected Timer timer;
+
+    /**
+     * Creates a quota for the write location of a file store. Call {@link #start(long)} to begin enforcing it.
+     *
+     * @param fileStore the file store.
+     * @param quota     the maximum size in bytes of the files in the write location, or 0 for no maximum.
+     *
+     * @throws IllegalArgumentException if the file store is null or the quota is negative.
+     */
+    public FileStoreQuota(BasicDataFileStore fileStore, long quota)
+    {
+        if (fileStore == null)
+        {
+            String message = Logging.getMessage("nullValue.FileStoreIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (quota < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", quota);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.fileStore = fileStore;
+        this.quota = quota;
+    }
+
+    /** @return the maximum size in bytes of the files in the write location, or 0 if there is no maximum. */
+    public long getQuota()
+    {
+        return this.quota;
+    }
+
+    /**
+     * Specifies the maximum size of the files in the write location. The next evictor run enforces the new quota.
+     *
+     * @param quota the maximum size in bytes, or 0 for no maximum.
+     *
+     * @throws IllegalArgumentException if the quota is negative.
+     */
+    public void setQuota(long quota)
+    {
+        if (quota < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", quota);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.quota = quota;
+    }
+
+    /** @return the number of bytes used by the files in the write location, as last measured. */
+    public long getBytesUsed()
+    {
+        return this.bytesUsed.get();
+    }
+
+    /** @return the number of bytes freed by removing files since the quota was created. */
+    public long getBytesEvicted()
+    {
+        return this.bytesEvicted.get();
+    }
+
+    /** @return the number of files removed since the quota was created. */
+    public long getFilesEvicted()
+    {
+        return this.filesEvicted.get();
+    }
+
+    /** @return the number of files tracked in the write location. */
+    public int getFileCount()
+    {
+        return this.entries.size();
+    }
+
+    /** @return true if the files in the write location have been measured, otherwise false. */
+    public boolean isScanned()
+    {
+        return this.scanned;
+    }
+
+    /**
+     * Records that a file in the write location was used.
+     *
+     * @param name the file's name relative to the write location.
+     */
+    public void recordUse(String name)
+    {
+        Entry entry = name != null ? this.entries.get(name) : null;
+        if (entry != null)
+        {
+            entry.lastUsed = System.currentTimeMillis();
+            entry.used = true;
+            this.markModified(name, entry);
+        }
+    }
+
+    /**
+     * Records that a file in the write location is being written. The evictor measures the file on its next run.
+     *
+     * @param name the file's name relative to the write location.
+     */
+    public void recordWrite(String name)
+    {
+        if (name != null)
+            this.pending.put(name, System.currentTimeMillis());
+    }
+
+    /**
+     * Records that a file in the write location was removed.
+     *
+     * @param name the file's name relative to the write location.
+     */
+    public void recordRemoval(String name)
+    {
+        Entry entry = name != null ? this.entries.remove(name) : null;
+        if (entry != null)
+            this.bytesUsed.addAndGet(-entry.size);
+    }
+
+    /**
+     * Adds a file to the files tracked, replacing any entry for it. Called by the file store while the quota scans the
+     * write location.
+     *
+     * @param name     the file's name relative to the write location.
+     * @param size     the file's size in bytes.
+     * @param lastUsed the time the file was last used, in milliseconds since the Epoch.
+     */
+    public void addFile(String name, long size, long lastUsed)
+    {
+        this.putEntry(name, new Entry(size, lastUsed, false));
+    }
+
+    /** Notes that a file's last use must be saved to the access file. */
+    protected void markModified(String name, Entry entry)
+    {
+        if (!entry.modified)
+        {
+            entry.modified = true;
+            this.modifiedNames.add(name);
+        }
+    }
+
+    protected void putEntry(String name, Entry entry)
+    {
+        Entry old = this.entries.put(name, entry);
+        this.bytesUsed.addAndGet(entry.size - (old != null ? old.size : 0));
+    }
+
+    /**
+     * Starts enforcing the quota on a background thread, first running after the interval. The first run measures the
+     * files in the write location.
+     *
+     * @param interval the interval between evictor runs, in milliseconds.
+     *
+     * @throws IllegalArgumentException if the interval is less than 1.
+     */
+    public synchronized void start(long interval)
+    {
+        if (interval < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", interval);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.stop();
+
+        this.timer = new Timer("World Wind File Store Evictor", true);
+        this.timer.schedule(new TimerTask()
+        {
+            public void run()
+            {
+                try
+                {
+                    evict();
+                }
+                catch (Exception e)
+                {
+                    Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStoreQuota.ExceptionEvicting"), e);
+                }
+            }
+        }, interval, interval);
+    }
+
+    /** Stops the evictor and saves the times files were last used. */
+    public synchronized void stop()
+    {
+        if (this.timer == null)
+            return;
+
+        this.timer.cancel();
+        this.timer = null;
+
+        synchronized (this.evictionLock)
+        {
+            if (this.scanned && !this.modifiedNames.isEmpty())
+                this.saveAccessTimes();
+        }
+    }
+
+    /**
+     * Runs the evictor once: measures the write location if it has not been measured, measures the files created since
+     * the last run, and removes the least recently used files if the files exceed the quota.
+     *
+     * @return the number of files removed.
+     */
+    public int evict()
+    {
+        synchronized (this.evictionLock)
+        {
+            if (!this.scanned)
+                this.scan();
+
+            this.measurePending();
+
+            int count = 0;
+            long limit = this.quota;
+            if (limit > 0 && this.bytesUsed.get() > limit)
+                count = this.evictTo((long) (LOW_WATER_FRACTION * limit));
+
+            if (!this.modifiedNames.isEmpty())
+                this.saveAccessTimes();
+
+            return count;
+        }
+    }
+
+    /** Measures the files in the write location and reads the times they were last used. */
+    protected void scan()
+    {
+        this.fileStore.collectCachedFiles(this);
+
+        Map<String, Long> accessTimes = this.loadAccessTimes();
+        if (accessTimes != null)
+        {
+            for (Map.Entry<String, Long> accessTime : accessTimes.entrySet())
+            {
+                Entry entry = this.entries.get(accessTime.getKey());
+                if (entry != null && accessTime.getValue() > entry.lastUsed)
+                {
+                    entry.lastUsed = accessTime.getValue();
+                    entry.used = true;
+                }
+            }
+        }
+
+        this.scanned = true;
+    }
+
+    protected void measurePending()
+    {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> pendingFile : this.pending.entrySet())
+        {
+            String name = pendingFile.getKey();
+            if (!this.fileStore.isEvictable(name))
+            {
+                this.pending.remove(name, pendingFile.getValue());
+                continue;
+            }
+
+            long size = this.fileStore.sizeOfCachedFile(name);
+            if (size >= 0)
+            {
+                this.pending.remove(name, pendingFile.getValue());
+                Entry entry = new Entry(size, now, true);
+                this.putEntry(name, entry);
+                this.markModified(name, entry);
+            }
+            else if (now - pendingFile.getValue() > PENDING_TIMEOUT)
+            {
+                this.pending.remove(name, pendingFile.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes files in order of least recent use until the files in the write location use no more than a number of
+     * bytes. Files used since eviction began are kept.
+     *
+     * @param target the number of bytes to reduce the files to.
+     *
+     * @return the number of files removed.
+     */
+    protected int evictTo(long target)
+    {
+        ArrayList<Candidate> candidates = new ArrayList<Candidate>(this.entries.size());
+        for (Map.Entry<String, Entry> entry : this.entries.entrySet())
+        {
+            candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(candidates);
+
+        int count = 0;
+        for (Candidate candidate : candidates)
+        {
+            if (this.bytesUsed.get() <= target)
+                break;
+
+            if (candidate.entry.lastUsed != candidate.lastUsed || this.entries.get(candidate.name) != candidate.entry)
+                continue;
+
+            // Stop tracking files found to belong to a dataset that cannot be retrieved again since they were added.
+            if (!this.fileStore.isEvictable(candidate.name))
+            {
+                if (this.entries.remove(candidate.name, candidate.entry))
+                    this.bytesUsed.addAndGet(-candidate.entry.size);
+                continue;
+            }
+
+            if (this.fileStore.evictCachedFile(candidate.name))
+            {
+                if (this.entries.remove(candidate.name, candidate.entry))
+                    this.bytesUsed.addAndGet(-candidate.entry.size);
+                this.bytesEvicted.addAndGet(candidate.entry.size);
+                this.filesEvicted.incrementAndGet();
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    //**************************************************************//
+    //********************  Access Times  **************************//
+    //**************************************************************//
+
+    /** @return the file holding the times files were last used. */
+    public File getAccessFile()
+    {
+        return new File(this.fileStore.getWriteLocation(), ACCESS_FILE_NAME);
+    }
+
+    /**
+     * Saves the times files were last used to the access file. The times of the files used since the last save are
+     * appended to the access file. The access file is instead rewritten with the times of all used files if it has not
+     * been written in this session, or if it would hold many more records than there are files. Must be called while
+     * holding the eviction lock.
+     *
+     * @return true if the times were saved, otherwise false.
+     */
+    protected boolean saveAccessTimes()
+    {
+        ArrayList<String> names = new ArrayList<String>(this.modifiedNames.size());
+        ArrayList<Long> times = new ArrayList<Long>(this.modifiedNames.size());
+        for (String name : this.modifiedNames)
+        {
+            this.modifiedNames.remove(name);
+
+            Entry entry = this.entries.get(name);
+            if (entry != null)
+            {
+                entry.modified = false;
+                if (entry.used)
+                {
+                    names.add(name);
+                    times.add(entry.lastUsed);
+                }
+            }
+        }
+
+        if (this.accessRecordCount >= 0
+            && this.accessRecordCount + names.size() <= 2 * this.entries.size() + ACCESS_FILE_SLACK)
+        {
+            if (this.appendAccessTimes(names, times))
+                return true;
+        }
+
+        return this.writeAccessTimes();
+    }
+
+    /**
+     * Appends times files were last used to the access file.
+     *
+     * @param names the files' names.
+     * @param times the times the files were last used.
+     *
+     * @return true if the times were appended, otherwise false.
+     */
+    protected boolean appendAccessTimes(List<String> names, List<Long> times)
+    {
+        File accessFile = this.getAccessFile();
+
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(accessFile, true), 1 << 16));
+            for (int i = 0; i < names.size(); i++)
+            {
+                out.writeUTF(names.get(i));
+                out.writeLong(times.get(i));
+            }
+
+            out.close();
+            out = null;
+
+            this.accessRecordCount += names.size();
+            return true;
+        }
+        catch (IOException e)
+        {
+            // The access file may end with a partial record, so rewrite it on the next save.
+            this.accessRecordCount = -1;
+            Logging.logger().log(Level.FINE, Logging.getMessage("FileStoreQuota.ExceptionWritingAccessTimes",
+                accessFile), e);
+            return false;
+        }
+        finally
+        {
+            WWIO.closeStream(out, accessFile.getPath());
+        }
+    }
+
+    /**
+     * Writes the times of all files whose use was recorded to the access file. The times are written to a temporary
+     * file that then replaces the access file.
+     *
+     * @return true if the times were written, otherwise false.
+     */
+    protected boolean writeAccessTimes()
+    {
+        File accessFile = this.getAccessFile();
+        File tempFile = new File(accessFile.getPath() + TEMP_FILE_SUFFIX);
+
+        this.accessRecordCount = -1;
+
+        DataOutputStream out = null;
+        try
+        {
+            int count = 0;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet())
+            {
+                if (entry.getValue().used)
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().lastUsed);
+                    count++;
+                }
+            }
+
+            out.close();
+            out = null;
+
+            if (accessFile.exists() && !accessFile.delete())
+                throw new IOException(Logging.getMessage("generic.CannotDeleteFile", accessFile));
+            if (!tempFile.renameTo(accessFile))
+                throw new IOException(Logging.getMessage("generic.CannotCreateFile", accessFile));
+
+            this.accessRecordCount = count;
+            return true;
+        }
+        catch (IOException e)
+        {
+            Logging.logger().log(Level.FINE, Logging.getMessage("FileStoreQuota.ExceptionWritingAccessTimes",
+                accessFile), e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return false;
+        }
+        finally
+        {
+            WWIO.closeStream(out, tempFile.getPath());
+        }
+    }
+
+    /**
+     * Reads the times files were last used from the access file. A file may have several records, of which the last is
+     * its most recent use. A partial record at the end of the file, left by an interrupted save, is ignored.
+     *
+     * @return the times by file name, or null if there is no access file or it cannot be read.
+     */
+    protected Map<String, Long> loadAccessTimes()
+    {
+        File accessFile = this.getAccessFile();
+        if (!accessFile.isFile())
+            return null;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(accessFile), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            HashMap<String, Long> times = new HashMap<String, Long>();
+            try
+            {
+                //noinspection InfiniteLoopStatement
+                while (true)
+                {
+                    String name = in.readUTF();
+                    times.put(name, in.readLong());
+                }
+            }
+            catch (EOFException e)
+            {
+                return times;
+            }
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.FINE, Logging.getMessage("FileStoreQuota.ExceptionReadingAccessTimes",
+                accessFile), e);
+            return null;
+        }
+        finally
+        {
+            WWIO.closeStream(in, accessFile.getPath());
+        }
+    }
+}
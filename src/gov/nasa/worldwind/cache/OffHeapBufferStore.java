@@ -0,0 +1,718 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.util.*;
+
+import java.lang.ref.WeakReference;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the contents of {@link BufferWrapper}s outside the Java heap. Each stored buffer is copied into a chunk of a
+ * direct memory slab, and the store returns a new BufferWrapper of the same primitive type that views the chunk. The
+ * heap then holds only the small wrapper, while the data itself lives in native memory and does not contribute to
+ * garbage collection work.
+ * <p/>
+ * Slabs are allocated on demand up to the store's capacity, and each slab is divided into equal chunks of one size
+ * class. Buffers of a single size, such as the tiles of an elevation model, therefore pack without fragmentation.
+ * <p/>
+ * A removed or evicted wrapper remains valid for as long as clients reference it. The store tracks each wrapper weakly
+ * and reuses its chunk only after the wrapper has been garbage collected, so a client that still holds a wrapper never
+ * observes another buffer's contents. Clients that keep a wrapper's backing buffer must therefore also keep the
+ * wrapper. Removal of entries, either explicit or by eviction, is reported to registered {@link
+ * MemoryCache.CacheListener}s, which should drop their references to the removed wrapper, for example by replacing it
+ * with a heap copy, so that its chunk can be reclaimed.
+ * <p/>
+ * When {@link #put(Object, BufferWrapper)} finds no reclaimable chunk and no room for a new slab, it evicts the least
+ * recently used entry, or the whole slab of that entry if the entry has another size class, and returns null. The
+ * caller then keeps its heap copy of the data, and later calls reuse the evicted chunks once their wrappers are
+ * collected. Slabs whose chunks are all free are released when another size class needs the memory.
+ *
+ * @version $Id$
+ */
+public class OffHeapBufferStore
+{
+    /** The default size in bytes of the direct memory slabs allocated by the store. */
+    protected static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+    /** Chunk sizes are rounded up to a multiple of this value, which keeps all primitive types aligned. */
+    protected static final int CHUNK_ALIGNMENT = 64;
+
+    protected static class SizeClass
+    {
+        protected final int chunkSize;
+        protected final ArrayDeque<Chunk> freeChunks = new ArrayDeque<Chunk>();
+        protected final List<Slab> slabs = new ArrayList<Slab>();
+
+        protected SizeClass(int chunkSize)
+        {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    protected static class Slab
+    {
+        protected final SizeClass sizeClass;
+        protected final int numBytes;
+        protected int numUsedChunks;
+
+        protected Slab(SizeClass sizeClass, int numBytes)
+        {
+            this.sizeClass = sizeClass;
+            this.numBytes = numBytes;
+        }
+    }
+
+    protected static class Chunk
+    {
+        protected final Slab slab;
+        protected final ByteBuffer buffer;
+        /** The wrapper viewing this chunk. The chunk is free once the wrapper is removed and garbage collected. */
+        protected WeakReference<BufferWrapper> wrapper;
+
+        protected Chunk(Slab slab, ByteBuffer buffer)
+        {
+            this.slab = slab;
+            this.buffer = buffer;
+        }
+    }
+
+    protected static class Entry
+    {
+        protected final Object key;
+        protected final BufferWrapper wrapper;
+        protected final Chunk chunk;
+
+        protected Entry(Object key, BufferWrapper wrapper, Chunk chunk)
+        {
+            this.key = key;
+            this.wrapper = wrapper;
+            this.chunk = chunk;
+        }
+    }
+
+    protected final long capacity;
+    protected final int slabSize;
+    protected final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+    protected final HashMap<Integer, SizeClass> sizeClasses = new HashMap<Integer, SizeClass>();
+    /** Chunks of removed entries whose wrappers may still be referenced by clients. */
+    protected final List<Chunk> pendingChunks = new ArrayList<Chunk>();
+    protected final CopyOnWriteArrayList<MemoryCache.CacheListener> listeners =
+        new CopyOnWriteArrayList<MemoryCache.CacheListener>();
+    protected String name = "";
+    // Statistics, guarded by this store's monitor.
+    protected long allocatedBytes;
+    protected long residentBytes;
+    protected long pendingBytes;
+    protected long hitCount;
+    protected long missCount;
+    protected long evictionCount;
+    protected long rejectedCount;
+
+    /**
+     * Constructs a store that allocates at most <code>capacity</code> bytes of direct memory, in slabs of a default
+     * size.
+     *
+     * @param capacity the maximum number of bytes of direct memory the store allocates.
+     *
+     * @throws IllegalArgumentException if the capacity is less than 1.
+     */
+    public OffHeapBufferStore(long capacity)
+    {
+        this(capacity, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Constructs a store that allocates at most <code>capacity</code> bytes of direct memory, in slabs of
+     * <code>slabSize</code> bytes. Buffers larger than a slab are stored in a slab of their own.
+     *
+     * @param capacity the maximum number of bytes of direct memory the store allocates.
+     * @param slabSize the size in bytes of each direct memory allocation.
+     *
+     * @throws IllegalArgumentException if either the capacity or the slab size is less than 1.
+     */
+    public OffHeapBufferStore(long capacity, int slabSize)
+    {
+        if (capacity < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "capacity < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (slabSize < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "slabSize < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.capacity = capacity;
+        this.slabSize = slabSize;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name != null ? name : "";
+    }
+
+    public void addCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerAdded");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.listeners.add(listener);
+    }
+
+    public void removeCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerRemoved");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Copies the contents of a buffer into direct memory and associates the copy with a key, replacing any buffer
+     * previously associated with the key. Only the standard BufferWrapper types are supported.
+     *
+     * @param key    the key identifying the buffer.
+     * @param buffer the buffer to copy.
+     *
+     * @return a wrapper of the same primitive type as <code>buffer</code> that views the direct memory copy, or null if
+     *         the buffer type is not supported or no direct memory is available.
+     *
+     * @throws IllegalArgumentException if either the key or the buffer is null.
+     */
+    public BufferWrapper put(Object key, BufferWrapper buffer)
+    {
+        if (key == null)
+        {
+            String message = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        String dataType = dataTypeOf(buffer);
+        if (dataType == null || buffer.length() == 0)
+            return null;
+
+        long numBytes = buffer.getSizeInBytes();
+        if (numBytes > Integer.MAX_VALUE - CHUNK_ALIGNMENT || numBytes > this.capacity)
+            return null;
+
+        List<Entry> removed = new ArrayList<Entry>();
+        BufferWrapper wrapper = null;
+
+        synchronized (this)
+        {
+            Entry existing = this.entries.remove(key);
+            if (existing != null)
+            {
+                this.release(existing);
+                removed.add(existing);
+            }
+
+            SizeClass sizeClass = this.getSizeClass((int) numBytes);
+            Chunk chunk = this.allocateChunk(sizeClass, removed);
+            if (chunk != null)
+            {
+                ByteBuffer view = chunk.buffer.duplicate().order(ByteOrder.nativeOrder());
+                view.limit((int) numBytes);
+                wrapper = BufferWrapper.wrap(view.slice().order(ByteOrder.nativeOrder()), dataType);
+                wrapper.putSubBuffer(0, buffer);
+                chunk.wrapper = new WeakReference<BufferWrapper>(wrapper);
+
+                this.entries.put(key, new Entry(key, wrapper, chunk));
+            }
+            else
+            {
+                this.rejectedCount++;
+            }
+        }
+
+        this.notifyRemoved(removed);
+
+        return wrapper;
+    }
+
+    /**
+     * Returns the direct memory wrapper associated with a key, and marks it as recently used.
+     *
+     * @param key the key identifying the buffer.
+     *
+     * @return the wrapper associated with the key, or null if the store has no buffer for the key.
+     */
+    public synchronized BufferWrapper get(Object key)
+    {
+        if (key == null)
+            return null;
+
+        Entry entry = this.entries.get(key);
+        if (entry == null)
+        {
+            this.missCount++;
+            return null;
+        }
+
+        this.hitCount++;
+        return entry.wrapper;
+    }
+
+    /**
+     * Records a lookup of a buffer that the caller already holds. If the key is still associated with the specified
+     * wrapper, the buffer is marked as recently used and the lookup counts as a hit. Otherwise the lookup counts as a
+     * miss, so that lookups served from other memory are reflected in the store's statistics.
+     *
+     * @param key     the key identifying the buffer.
+     * @param wrapper the wrapper the caller holds for the key, or null if the caller has no buffer for the key.
+     *
+     * @return true if the lookup is a hit, otherwise false.
+     */
+    public synchronized boolean access(Object key, BufferWrapper wrapper)
+    {
+        Entry entry = key != null && wrapper != null ? this.entries.get(key) : null;
+        if (entry == null || entry.wrapper != wrapper)
+        {
+            this.missCount++;
+            return false;
+        }
+
+        this.hitCount++;
+        return true;
+    }
+
+    /**
+     * Indicates whether the store has a buffer for a key. This does not mark the buffer as used.
+     *
+     * @param key the key identifying the buffer.
+     *
+     * @return true if the store has a buffer for the key, otherwise false.
+     */
+    public synchronized boolean contains(Object key)
+    {
+        return key != null && this.entries.containsKey(key);
+    }
+
+    /**
+     * Removes the buffer associated with a key. The buffer's direct memory is reused once its wrapper is no longer
+     * referenced.
+     *
+     * @param key the key identifying the buffer.
+     */
+    public void remove(Object key)
+    {
+        this.remove(key, null);
+    }
+
+    /**
+     * Removes the buffer associated with a key if the key is still associated with a specified wrapper. This lets the
+     * owner of a wrapper release it without releasing a newer buffer stored under the same key.
+     *
+     * @param key     the key identifying the buffer.
+     * @param wrapper the wrapper the key must be associated with, or null to remove the buffer unconditionally.
+     */
+    public void remove(Object key, BufferWrapper wrapper)
+    {
+        if (key == null)
+            return;
+
+        Entry entry;
+        synchronized (this)
+        {
+            entry = this.entries.get(key);
+            if (entry == null || (wrapper != null && entry.wrapper != wrapper))
+                return;
+
+            this.entries.remove(key);
+            this.release(entry);
+        }
+
+        this.notifyRemoved(Arrays.asList(entry));
+    }
+
+    /**
+     * Removes all buffers from the store. Direct memory already allocated is retained, and reused once the removed
+     * wrappers are no longer referenced.
+     */
+    public void clear()
+    {
+        List<Entry> removed;
+        synchronized (this)
+        {
+            removed = new ArrayList<Entry>(this.entries.values());
+            this.entries.clear();
+            for (Entry entry : removed)
+            {
+                this.release(entry);
+            }
+        }
+
+        this.notifyRemoved(removed);
+    }
+
+    /** @return the maximum number of bytes of direct memory the store allocates. */
+    public long getCapacity()
+    {
+        return this.capacity;
+    }
+
+    /** @return the number of buffers currently in the store. */
+    public synchronized int getNumEntries()
+    {
+        return this.entries.size();
+    }
+
+    /** @return the number of bytes of direct memory allocated by the store, whether in use or not. */
+    public synchronized long getAllocatedBytes()
+    {
+        return this.allocatedBytes;
+    }
+
+    /** @return the number of bytes of direct memory holding buffers currently in the store. */
+    public synchronized long getResidentBytes()
+    {
+        return this.residentBytes;
+    }
+
+    /**
+     * @return the number of bytes of direct memory held by removed buffers whose wrappers have not yet been found to be
+     *         garbage collected.
+     */
+    public synchronized long getPendingBytes()
+    {
+        return this.pendingBytes;
+    }
+
+    /** @return the number of lookups that found a buffer. */
+    public synchronized long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    /** @return the number of lookups that did not find a buffer. */
+    public synchronized long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /** @return the number of buffers evicted to make room for new buffers. */
+    public synchronized long getEvictionCount()
+    {
+        return this.evictionCount;
+    }
+
+    /** @return the number of calls to {@link #put(Object, BufferWrapper)} that found no direct memory available. */
+    public synchronized long getRejectedCount()
+    {
+        return this.rejectedCount;
+    }
+
+    /**
+     * Returns this store's statistics in the form displayed by {@link gov.nasa.worldwind.util.StatisticsPanel}.
+     *
+     * @return the store's statistics.
+     */
+    public synchronized Collection<PerformanceStatistic> getPerformanceStatistics()
+    {
+        ArrayList<PerformanceStatistic> stats = new ArrayList<PerformanceStatistic>();
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE,
+            "Off-heap Resident (Kb): " + this.name, this.residentBytes / 1000));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE,
+            "Off-heap Pending (Kb): " + this.name, this.pendingBytes / 1000));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE,
+            "Off-heap Allocated (Kb): " + this.name, this.allocatedBytes / 1000));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE,
+            "Off-heap Hits/Misses/Evictions: " + this.name,
+            this.hitCount + "/" + this.missCount + "/" + this.evictionCount));
+
+        return stats;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "OffHeapBufferStore " + this.name + " capacity = " + this.capacity + " allocated = "
+            + this.allocatedBytes + " resident = " + this.residentBytes + " entries = " + this.entries.size();
+    }
+
+    /**
+     * Copies a buffer into a new buffer on the Java heap. Clients use this to keep the contents of a wrapper whose
+     * removal from the store is reported, so that the wrapper's chunk can be reused.
+     *
+     * @param buffer the buffer to copy.
+     *
+     * @return a heap copy of the buffer, with the same primitive type.
+     *
+     * @throws IllegalArgumentException if the buffer is null or its type is not supported.
+     */
+    public static BufferWrapper heapCopyOf(BufferWrapper buffer)
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        String dataType = dataTypeOf(buffer);
+        if (dataType == null)
+        {
+            String message = Logging.getMessage("generic.UnrecognizedDataType", buffer.getClass().getName());
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate((int) buffer.getSizeInBytes()).order(ByteOrder.nativeOrder());
+        BufferWrapper copy = BufferWrapper.wrap(byteBuffer, dataType);
+        copy.putSubBuffer(0, buffer);
+        return copy;
+    }
+
+    protected static String dataTypeOf(BufferWrapper buffer)
+    {
+        if (buffer instanceof BufferWrapper.ByteBufferWrapper)
+            return AVKey.INT8;
+        else if (buffer instanceof BufferWrapper.ShortBufferWrapper)
+            return AVKey.INT16;
+        else if (buffer instanceof BufferWrapper.IntBufferWrapper)
+            return AVKey.INT32;
+        else if (buffer instanceof BufferWrapper.FloatBufferWrapper)
+            return AVKey.FLOAT32;
+        else if (buffer instanceof BufferWrapper.DoubleBufferWrapper)
+            return AVKey.FLOAT64;
+
+        return null;
+    }
+
+    protected SizeClass getSizeClass(int numBytes)
+    {
+        int chunkSize = ((numBytes + CHUNK_ALIGNMENT - 1) / CHUNK_ALIGNMENT) * CHUNK_ALIGNMENT;
+
+        SizeClass sizeClass = this.sizeClasses.get(chunkSize);
+        if (sizeClass == null)
+        {
+            sizeClass = new SizeClass(chunkSize);
+            this.sizeClasses.put(chunkSize, sizeClass);
+        }
+
+        return sizeClass;
+    }
+
+    /**
+     * Returns a free chunk of the specified size class. If the size class has no free chunk, this first reclaims the
+     * chunks of removed entries whose wrappers have been garbage collected, and then allocates a slab for the size
+     * class, releasing unused slabs of other size classes if that is necessary to stay within the store's capacity. If
+     * neither provides a chunk, this evicts the least recently used entry, or every entry of that entry's slab if the
+     * entry has another size class, and returns null. The evicted chunks become available once their wrappers are
+     * collected. Nothing is evicted while a slab's worth of chunks is already waiting to be reclaimed. Must be called
+     * while holding this store's monitor.
+     *
+     * @param sizeClass the size class of the chunk.
+     * @param evicted   a list to receive the evicted entries.
+     *
+     * @return a free chunk, or null if none is available.
+     */
+    protected Chunk allocateChunk(SizeClass sizeClass, List<Entry> evicted)
+    {
+        if (sizeClass.freeChunks.isEmpty())
+            this.reclaimPendingChunks();
+        if (!sizeClass.freeChunks.isEmpty())
+            return this.takeChunk(sizeClass);
+
+        int slabBytes = Math.max(this.slabSize - this.slabSize % sizeClass.chunkSize, sizeClass.chunkSize);
+        if (this.allocatedBytes + slabBytes > this.capacity)
+            this.releaseUnusedSlabs(sizeClass, slabBytes);
+        if (this.allocatedBytes + slabBytes <= this.capacity && this.allocateSlab(sizeClass, slabBytes))
+            return this.takeChunk(sizeClass);
+
+        // Evict only while less than a slab of memory waits to be reclaimed, so that repeated puts do not empty the
+        // store before the garbage collector runs.
+        if (!this.entries.isEmpty() && this.pendingBytes < slabBytes)
+        {
+            Entry eldest = this.entries.values().iterator().next();
+            if (eldest.chunk.slab.sizeClass == sizeClass)
+                this.evict(eldest, evicted);
+            else
+                this.evictSlab(eldest.chunk.slab, evicted);
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the chunks of removed entries whose wrappers have been garbage collected to their free lists. Must hold
+     * this store's monitor.
+     */
+    protected void reclaimPendingChunks()
+    {
+        Iterator<Chunk> iter = this.pendingChunks.iterator();
+        while (iter.hasNext())
+        {
+            Chunk chunk = iter.next();
+            if (chunk.wrapper.get() != null)
+                continue;
+
+            iter.remove();
+            chunk.wrapper = null;
+            chunk.slab.numUsedChunks--;
+            chunk.slab.sizeClass.freeChunks.push(chunk);
+            this.pendingBytes -= chunk.slab.sizeClass.chunkSize;
+        }
+    }
+
+    protected boolean allocateSlab(SizeClass sizeClass, int slabBytes)
+    {
+        ByteBuffer buffer;
+        try
+        {
+            buffer = ByteBuffer.allocateDirect(slabBytes);
+        }
+        catch (OutOfMemoryError e)
+        {
+            Logging.logger().warning(Logging.getMessage("OffHeapBufferStore.CannotAllocateSlab", slabBytes, this.name));
+            return false;
+        }
+
+        Slab slab = new Slab(sizeClass, slabBytes);
+        for (int offset = 0; offset + sizeClass.chunkSize <= slabBytes; offset += sizeClass.chunkSize)
+        {
+            buffer.limit(offset + sizeClass.chunkSize);
+            buffer.position(offset);
+            sizeClass.freeChunks.push(new Chunk(slab, buffer.slice()));
+        }
+
+        sizeClass.slabs.add(slab);
+        this.allocatedBytes += slabBytes;
+        return true;
+    }
+
+    /**
+     * Releases slabs of size classes other than the specified one whose chunks are all free, until a slab of the
+     * specified size fits within the store's capacity. Must hold this store's monitor.
+     *
+     * @param sizeClass the size class that needs a slab.
+     * @param slabBytes the size in bytes of the needed slab.
+     */
+    protected void releaseUnusedSlabs(SizeClass sizeClass, int slabBytes)
+    {
+        for (SizeClass other : this.sizeClasses.values())
+        {
+            if (other == sizeClass)
+                continue;
+
+            for (Slab slab : new ArrayList<Slab>(other.slabs))
+            {
+                if (this.allocatedBytes + slabBytes <= this.capacity)
+                    return;
+
+                if (slab.numUsedChunks == 0)
+                    this.releaseSlab(slab);
+            }
+        }
+    }
+
+    /**
+     * Returns a slab's chunks to the Java heap so that the slab's direct memory is released when the slab is garbage
+     * collected. The slab's chunks must all be free. Must hold this store's monitor.
+     *
+     * @param slab the slab to release.
+     */
+    protected void releaseSlab(Slab slab)
+    {
+        Iterator<Chunk> iter = slab.sizeClass.freeChunks.iterator();
+        while (iter.hasNext())
+        {
+            if (iter.next().slab == slab)
+                iter.remove();
+        }
+
+        slab.sizeClass.slabs.remove(slab);
+        this.allocatedBytes -= slab.numBytes;
+    }
+
+    /**
+     * Evicts every entry held by a slab. The slab is released by a later allocation once its chunks are reclaimed. Must
+     * hold this store's monitor.
+     */
+    protected void evictSlab(Slab slab, List<Entry> evicted)
+    {
+        for (Entry entry : new ArrayList<Entry>(this.entries.values()))
+        {
+            if (entry.chunk.slab == slab)
+                this.evict(entry, evicted);
+        }
+    }
+
+    /** Removes an entry from the map and releases its chunk. Must hold this store's monitor. */
+    protected void evict(Entry entry, List<Entry> evicted)
+    {
+        this.entries.remove(entry.key);
+        this.release(entry);
+        this.evictionCount++;
+        evicted.add(entry);
+    }
+
+    /** Takes a chunk from a size class's free list, which must not be empty. Must hold this store's monitor. */
+    protected Chunk takeChunk(SizeClass sizeClass)
+    {
+        Chunk chunk = sizeClass.freeChunks.pop();
+        chunk.slab.numUsedChunks++;
+        this.residentBytes += sizeClass.chunkSize;
+        return chunk;
+    }
+
+    /**
+     * Marks the chunk of an entry no longer in the map as pending until the entry's wrapper is garbage collected. Must
+     * hold this store's monitor.
+     */
+    protected void release(Entry entry)
+    {
+        this.pendingChunks.add(entry.chunk);
+        this.residentBytes -= entry.chunk.slab.sizeClass.chunkSize;
+        this.pendingBytes += entry.chunk.slab.sizeClass.chunkSize;
+    }
+
+    protected void notifyRemoved(List<Entry> removed)
+    {
+        for (Entry entry : removed)
+        {
+            for (MemoryCache.CacheListener listener : this.listeners)
+            {
+                try
+                {
+                    listener.entryRemoved(entry.key, entry.wrapper);
+                }
+                catch (Exception e)
+                {
+                    listener.removalException(e, entry.key, entry.wrapper);
+                }
+            }
+        }
+    }
+}
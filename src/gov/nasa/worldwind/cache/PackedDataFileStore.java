@@ -0,0 +1,812 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * A {@link BasicDataFileStore} that packs the tiles in its write location into a {@link PackedTileStore} rather than
+ * keeping one file per tile. To use it in place of the default file store, set the configuration property
+ * <code>gov.nasa.worldwind.avkey.DataFileStoreClassName</code> to this class's name. Layers and elevation models need
+ * no other changes.
+ * <p/>
+ * Tiles are written as before, to the files returned by {@link #newFile(String)}. A background task moves the tiles
+ * written this way into the packed store every {@link #PACK_INTERVAL} milliseconds, once they are {@link #PACK_DELAY}
+ * milliseconds old, and its first run also packs the tiles left as files by earlier sessions. {@link #findFile(String,
+ * boolean)} packs a tile file it finds in the write location if the task has not yet done so, and returns a URL with
+ * the protocol {@link #PROTOCOL} that reads the tile from the packed store. Files that are not tiles, such as
+ * configuration documents, and files in other locations are left as they are. {@link #importDirectory(java.io.File,
+ * boolean)} packs a cache laid out as one file per tile.
+ * <p/>
+ * A tile is renamed aside before it is read into the packed store, and only the renamed copy is deleted, so a tile
+ * written again while it is being packed is kept. A tile that is being written again, from the time {@link
+ * #newFile(String)} returns its file until the new file is packed, is read from the file rather than the packed
+ * store.
+ * <p/>
+ * The packed store is kept in the {@link #PACK_DIRECTORY_NAME} directory of the write location.
+ *
+ * @version $Id$
+ */
+public class PackedDataFileStore extends BasicDataFileStore
+{
+    /** The protocol of the URLs of packed files. */
+    public static final String PROTOCOL = "wwpack";
+    /** The name of the directory, in the write location, holding the packed store. */
+    public static final String PACK_DIRECTORY_NAME = ".wwpack";
+    /** The suffixes of the files that are packed. */
+    public static final String[] DEFAULT_PACKED_SUFFIXES = new String[] {"dds", "png", "jpg", "jpeg", "gif", "bil"};
+    /** The interval in milliseconds between compactions and index saves of the packed store. */
+    protected static final long MAINTENANCE_INTERVAL = 60000;
+    /** The age in milliseconds a file must reach before it is packed, so that files being written are not packed. */
+    protected static final long PACK_DELAY = 2000;
+    /** The interval in milliseconds between runs of the task packing newly written tiles. */
+    protected static final long PACK_INTERVAL = 10000;
+    /** The time in milliseconds after which a tile file that was requested but never written is forgotten. */
+    protected static final long WRITE_TIMEOUT = 600000;
+    /** The suffix appended to the name of a tile file while it is being packed. */
+    protected static final String PACKING_SUFFIX = ".packing";
+
+    /** Opens the packed files of a {@link PackedDataFileStore}. */
+    protected static class PackedURLStreamHandler extends URLStreamHandler
+    {
+        protected final PackedTileStore tileStore;
+
+        public PackedURLStreamHandler(PackedTileStore tileStore)
+        {
+            this.tileStore = tileStore;
+        }
+
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException
+        {
+            return new PackedURLConnection(url, this.tileStore);
+        }
+    }
+
+    /** A connection to a packed file. */
+    protected static class PackedURLConnection extends URLConnection
+    {
+        protected final PackedTileStore tileStore;
+        protected final String name;
+        protected ByteBuffer buffer;
+
+        public PackedURLConnection(URL url, PackedTileStore tileStore)
+        {
+            super(url);
+            this.tileStore = tileStore;
+            this.name = nameForURL(url);
+        }
+
+        @Override
+        public void connect() throws IOException
+        {
+            if (this.connected)
+                return;
+
+            this.buffer = this.name != null ? this.tileStore.get(this.name) : null;
+            if (this.buffer == null)
+                throw new FileNotFoundException(this.url.toString());
+
+            this.connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            this.connect();
+            return new BufferInputStream(this.buffer.duplicate());
+        }
+
+        @Override
+        public long getLastModified()
+        {
+            return this.tileStore.getTime(this.name);
+        }
+
+        @Override
+        public int getContentLength()
+        {
+            return this.tileStore.getLength(this.name);
+        }
+
+        @Override
+        public String getContentType()
+        {
+            String suffix = WWIO.getSuffix(this.name);
+            return suffix != null ? WWIO.makeMimeTypeForSuffix(suffix) : null;
+        }
+    }
+
+    /** An input stream reading a buffer, which may be a memory mapping, without copying it. */
+    protected static class BufferInputStream extends InputStream
+    {
+        protected final ByteBuffer buffer;
+
+        public BufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+                return 0;
+            if (!this.buffer.hasRemaining())
+                return -1;
+
+            length = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int count = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+            this.buffer.position(this.buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return this.buffer.remaining();
+        }
+    }
+
+    protected PackedTileStore tileStore;
+    protected URLStreamHandler urlHandler;
+    protected Set<String> packedSuffixes;
+    /** The tiles being written through {@link #newFile(String)} and not yet packed, with the time of the request. */
+    protected final ConcurrentHashMap<String, Long> pendingWrites = new ConcurrentHashMap<String, Long>();
+    /** The paths of the tile files being packed, which are renamed aside while they are read. */
+    protected final Set<String> packingFiles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** Serializes the requests for tile files with the start and end of each packing of a tile. */
+    protected final Object packLock = new Object();
+    protected Timer packTimer;
+
+    /**
+     * Creates a file store configured as {@link BasicDataFileStore#BasicDataFileStore()} configures it, and opens the
+     * packed store in its write location.
+     *
+     * @throws IllegalStateException if the configuration file name cannot be determined from {@link
+     *                               gov.nasa.worldwind.Configuration} or the configuration file cannot be found.
+     */
+    public PackedDataFileStore()
+    {
+        this.openTileStore();
+    }
+
+    /**
+     * Creates a file store to manage a specified directory, and opens the packed store in that directory.
+     *
+     * @param directoryPath the directory to manage as a file store.
+     */
+    public PackedDataFileStore(File directoryPath)
+    {
+        super(directoryPath);
+        this.openTileStore();
+    }
+
+    protected void openTileStore()
+    {
+        this.packedSuffixes = new HashSet<String>(Arrays.asList(DEFAULT_PACKED_SUFFIXES));
+
+        if (this.writeLocation == null)
+            return;
+
+        PackedTileStore store = new PackedTileStore(new File(this.writeLocation.getFile(), PACK_DIRECTORY_NAME));
+        try
+        {
+            store.open();
+            store.startMaintenance(MAINTENANCE_INTERVAL);
+            this.urlHandler = new PackedURLStreamHandler(store);
+            this.tileStore = store;
+            this.startPacking();
+        }
+        catch (IOException e)
+        {
+            // Continue with one file per tile.
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("PackedTileStore.ExceptionOpening",
+                store.getDirectory()), e);
+        }
+    }
+
+    /** @return the packed store, or null if this file store has no write location or the packed store cannot be opened. */
+    public PackedTileStore getTileStore()
+    {
+        return this.tileStore;
+    }
+
+    /** Closes the packed store. Tiles are then kept as files. */
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (this.packTimer != null)
+            {
+                this.packTimer.cancel();
+                this.packTimer = null;
+            }
+        }
+
+        PackedTileStore store = this.tileStore;
+        this.tileStore = null;
+        if (store != null)
+            store.close();
+    }
+
+    /**
+     * Starts the background task that packs newly written tiles. The first run also packs the tiles that earlier
+     * sessions left as files in the write location.
+     */
+    protected synchronized void startPacking()
+    {
+        this.packTimer = new Timer("World Wind Packed File Store Packer", true);
+        this.packTimer.schedule(new TimerTask()
+        {
+            protected boolean swept;
+
+            public void run()
+            {
+                try
+                {
+                    if (!this.swept)
+                    {
+                        this.swept = true;
+                        packDirectory(writeLocation.getFile(), "");
+                    }
+
+                    packNewFiles();
+                }
+                catch (Exception e)
+                {
+                    Logging.logger().log(Level.SEVERE, Logging.getMessage("PackedTileStore.ExceptionPackingFiles"), e);
+                }
+            }
+        }, PACK_INTERVAL, PACK_INTERVAL);
+    }
+
+    /** Packs the tiles written through {@link #newFile(String)} that are old enough to have been written completely. */
+    protected void packNewFiles()
+    {
+        PackedTileStore store = this.tileStore;
+        if (store == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> entry : this.pendingWrites.entrySet())
+        {
+            File file = new File(this.writeLocation.getFile(), entry.getKey());
+            if (file.exists())
+                this.packIfReady(store, entry.getKey(), file);
+            else if (now - entry.getValue() > WRITE_TIMEOUT)
+                this.pendingWrites.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Packs the tile files beneath a directory of the write location. Directories whose names begin with '.', such as
+     * the one holding the packed store, are skipped.
+     *
+     * @param dir  the directory.
+     * @param name the directory's name relative to the write location, or the empty string for the write location.
+     */
+    protected void packDirectory(File dir, String name)
+    {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+
+        for (File child : children)
+        {
+            PackedTileStore store = this.tileStore;
+            if (store == null)
+                return;
+
+            String childName = name.length() > 0 ? name + "/" + child.getName() : child.getName();
+            if (child.getName().startsWith("."))
+                continue;
+
+            if (child.isDirectory())
+                this.packDirectory(child, childName);
+            else if (childName.endsWith(PACKING_SUFFIX))
+                this.recoverPacking(child);
+            else if (this.isPacked(childName))
+                this.packIfReady(store, childName, child);
+        }
+    }
+
+    /**
+     * Indicates whether a file is packed when it is found in the write location.
+     *
+     * @param fileName the file's name.
+     *
+     * @return true if the file is packed, otherwise false.
+     */
+    protected boolean isPacked(String fileName)
+    {
+        String suffix = WWIO.getSuffix(fileName);
+        return suffix != null && this.packedSuffixes.contains(suffix.toLowerCase());
+    }
+
+    /**
+     * Makes the URL of a packed file.
+     *
+     * @param name the file's name in the packed store.
+     *
+     * @return the file's URL, or null if the URL cannot be created.
+     */
+    protected URL makePackedURL(String name)
+    {
+        try
+        {
+            return new URL(null, new URI(PROTOCOL, name, null).toASCIIString(), this.urlHandler);
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionCreatingURLForFile", name), e);
+            return null;
+        }
+    }
+
+    /**
+     * Determines the name of a packed file from its URL.
+     *
+     * @param url the file's URL.
+     *
+     * @return the file's name in the packed store, or null if the URL is not that of a packed file.
+     */
+    protected static String nameForURL(URL url)
+    {
+        if (!PROTOCOL.equals(url.getProtocol()))
+            return null;
+
+        try
+        {
+            return url.toURI().getSchemeSpecificPart();
+        }
+        catch (URISyntaxException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Restores a tile file that an earlier session renamed aside to pack but did not finish packing, unless the tile
+     * has since been written again.
+     *
+     * @param packing the renamed file.
+     */
+    protected void recoverPacking(File packing)
+    {
+        String path = packing.getPath();
+        File file = new File(path.substring(0, path.length() - PACKING_SUFFIX.length()));
+        synchronized (this.packLock)
+        {
+            if (this.packingFiles.contains(file.getPath()))
+                return;
+
+            if (file.exists() || !packing.renameTo(file))
+                //noinspection ResultOfMethodCallIgnored
+                packing.delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc} Looks in the packed store for tiles in the write location, and packs tiles found as files. Tiles
+     * being written again are read from their files.
+     */
+    @Override
+    protected URL findFileInLocation(StoreLocation location, String fileName)
+    {
+        PackedTileStore store = this.tileStore;
+        if (store == null || !this.isWriteLocation(location) || !this.isPacked(fileName))
+            return super.findFileInLocation(location, fileName);
+
+        String name = normalizeFileStoreName(fileName);
+        if (!this.pendingWrites.containsKey(name) && store.contains(name))
+        {
+            this.recordUse(location, name);
+            return this.makePackedURL(name);
+        }
+
+        URL url = super.findFileInLocation(location, fileName);
+        if (url == null)
+            return null;
+
+        URL packedUrl = this.packIfReady(store, name, WWIO.convertURLToFile(url));
+        return packedUrl != null ? packedUrl : url;
+    }
+
+    /**
+     * {@inheritDoc} Also removes a packed tile of the same name, which the new file replaces, and queues the new file
+     * to be packed.
+     */
+    @Override
+    public File newFile(String fileName)
+    {
+        PackedTileStore store = this.tileStore;
+        if (store == null || fileName == null || !this.isPacked(fileName))
+            return super.newFile(fileName);
+
+        String name = normalizeFileStoreName(fileName);
+        synchronized (this.packLock)
+        {
+            this.pendingWrites.put(name, System.currentTimeMillis());
+            try
+            {
+                store.remove(name);
+            }
+            catch (IOException e)
+            {
+                Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionRemovingFile", name), e);
+            }
+        }
+
+        return super.newFile(fileName);
+    }
+
+    /**
+     * Moves a file into the packed store if it was last written more than {@link #PACK_DELAY} milliseconds ago. Newer
+     * files are not moved, because they may still be being written.
+     *
+     * @param store the packed store.
+     * @param name  the file's name in the packed store.
+     * @param file  the file.
+     *
+     * @return the URL of the packed file, or null if the file was not packed.
+     */
+    protected URL packIfReady(PackedTileStore store, String name, File file)
+    {
+        if (file == null)
+            return null;
+
+        long lastModified = file.lastModified();
+        if (lastModified == 0 || System.currentTimeMillis() - lastModified < PACK_DELAY)
+            return null;
+
+        return this.pack(store, name, file, lastModified);
+    }
+
+    /**
+     * Moves a file into the packed store. The file is first renamed aside, and only the renamed copy is deleted. If the
+     * file is requested again through {@link #newFile(String)} while it is being packed, the packed copy is discarded
+     * and the new file is packed later.
+     *
+     * @param store        the packed store.
+     * @param name         the file's name in the packed store.
+     * @param file         the file.
+     * @param lastModified the file's modification time.
+     *
+     * @return the URL of the packed file, or null if the file was not packed.
+     */
+    protected URL pack(PackedTileStore store, String name, File file, long lastModified)
+    {
+        File packing = new File(file.getPath() + PACKING_SUFFIX);
+
+        Long request;
+        synchronized (this.packLock)
+        {
+            if (!this.packingFiles.add(file.getPath()))
+                return null;
+
+            request = this.pendingWrites.get(name);
+            if (!file.renameTo(packing))
+            {
+                this.packingFiles.remove(file.getPath());
+                return null;
+            }
+        }
+
+        boolean packed = false;
+        try
+        {
+            ByteBuffer data = WWIO.readFileToBuffer(packing);
+            synchronized (this.packLock)
+            {
+                // Keep the packed copy only if the file has not been requested again since it was renamed.
+                Long current = this.pendingWrites.get(name);
+                if (current == null ? request == null : current.equals(request))
+                {
+                    store.put(name, data, lastModified);
+                    this.pendingWrites.remove(name);
+                    this.removeFromIndex(file);
+                    packed = true;
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("PackedTileStore.ExceptionPacking", file), e);
+        }
+        finally
+        {
+            if (packed || file.exists() || !packing.renameTo(file))
+                //noinspection ResultOfMethodCallIgnored
+                packing.delete();
+            this.packingFiles.remove(file.getPath());
+        }
+
+        return packed ? this.makePackedURL(name) : null;
+    }
+
+    /** {@inheritDoc} Also looks in the packed store. */
+    @Override
+    public boolean containsFile(String fileName)
+    {
+        if (fileName == null)
+            return false;
+
+        PackedTileStore store = this.tileStore;
+        if (store != null && store.contains(normalizeFileStoreName(fileName)))
+            return true;
+
+        return super.containsFile(fileName);
+    }
+
+    /** {@inheritDoc} Also removes packed files. */
+    @Override
+    public void removeFile(URL url)
+    {
+        if (url == null)
+        {
+            String msg = Logging.getMessage("nullValue.URLIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        String name = nameForURL(url);
+        if (name == null)
+        {
+            super.removeFile(url);
+            return;
+        }
+
+        PackedTileStore store = this.tileStore;
+        if (store == null)
+            return;
+
+        try
+        {
+            if (store.remove(name) && this.quota != null)
+                this.quota.recordRemoval(name);
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionRemovingFile", url), e);
+        }
+    }
+
+    /** {@inheritDoc} Lists packed files as well as files, but not the files of the packed store. */
+    @Override
+    protected String[] doListFileNames(String pathName, FileStoreFilter filter, boolean recurse,
+        boolean exitBranchOnFirstMatch)
+    {
+        String[] fileNames = super.doListFileNames(pathName, filter, recurse, exitBranchOnFirstMatch);
+
+        PackedTileStore store = this.tileStore;
+        if (store == null || store.size() == 0)
+            return fileNames;
+
+        String prefix = pathName != null ? normalizeFileStoreName(pathName) : "";
+        if (prefix.length() > 0)
+            prefix += "/";
+
+        // Visit candidates nearest the search root first, so that a branch is closed by its nearest match when
+        // exitBranchOnFirstMatch is true.
+        ArrayList<String> candidates = new ArrayList<String>();
+        for (String name : store.getNames())
+        {
+            if (name.startsWith(prefix) && (recurse || name.indexOf('/', prefix.length()) < 0))
+                candidates.add(name);
+        }
+        Collections.sort(candidates, new Comparator<String>()
+        {
+            public int compare(String a, String b)
+            {
+                int depthA = countSeparators(a);
+                int depthB = countSeparators(b);
+                return depthA < depthB ? -1 : depthA > depthB ? 1 : a.compareTo(b);
+            }
+        });
+
+        LinkedHashSet<String> names = new LinkedHashSet<String>();
+        HashSet<String> closedBranches = new HashSet<String>();
+        if (fileNames != null)
+        {
+            for (String fileName : fileNames)
+            {
+                names.add(fileName);
+                closedBranches.add(FileStoreIndex.parentOf(fileName));
+            }
+        }
+
+        for (String name : candidates)
+        {
+            if (exitBranchOnFirstMatch && isInBranch(name, prefix, closedBranches))
+                continue;
+
+            if (!filter.accept(this, name))
+                continue;
+
+            names.add(name);
+            closedBranches.add(FileStoreIndex.parentOf(name));
+        }
+
+        return names.toArray(new String[names.size()]);
+    }
+
+    protected static int countSeparators(String name)
+    {
+        int count = 0;
+        for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1))
+        {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Indicates whether a file lies beneath any of a set of directories.
+     *
+     * @param name        the file's name.
+     * @param prefix      the search root, ending in '/', or the empty string.
+     * @param directories the directories.
+     *
+     * @return true if the file's directory or one of its ancestors beneath the search root is in the set.
+     */
+    protected static boolean isInBranch(String name, String prefix, Set<String> directories)
+    {
+        for (String dir = FileStoreIndex.parentOf(name); dir.length() + 1 >= prefix.length();
+            dir = FileStoreIndex.parentOf(dir))
+        {
+            if (directories.contains(dir))
+                return true;
+            if (dir.length() == 0)
+                break;
+        }
+
+        return false;
+    }
+
+    /** {@inheritDoc} Does not list the files of the packed store. */
+    @Override
+    protected boolean listFile(StoreLocation location, File file, FileStoreFilter filter, Collection<String> names)
+    {
+        PackedTileStore store = this.tileStore;
+        if (store != null && store.getDirectory().equals(file.getParentFile()))
+            return false;
+
+        return super.listFile(location, file, filter, names);
+    }
+
+    /** {@inheritDoc} Measures packed files as well as files. */
+    @Override
+    protected long sizeOfCachedFile(String name)
+    {
+        PackedTileStore store = this.tileStore;
+        int length = store != null ? store.getLength(name) : -1;
+        return length >= 0 ? length : super.sizeOfCachedFile(name);
+    }
+
+    /** {@inheritDoc} Removes packed files as well as files. */
+    @Override
+    protected boolean evictCachedFile(String name)
+    {
+        PackedTileStore store = this.tileStore;
+        if (store != null && store.contains(name))
+        {
+            try
+            {
+                store.remove(name);
+                this.removeDBEntryFor(name);
+                return true;
+            }
+            catch (IOException e)
+            {
+                Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionRemovingFile", name), e);
+                return false;
+            }
+        }
+
+        return super.evictCachedFile(name);
+    }
+
+    /** {@inheritDoc} Also determines the names of packed files. */
+    @Override
+    protected String cachedFileNameFor(URL url)
+    {
+        String name = nameForURL(url);
+        return name != null ? name : super.cachedFileNameFor(url);
+    }
+
+    /** {@inheritDoc} Also adds the packed files. */
+    @Override
+    protected void collectCachedFiles(FileStoreQuota quota)
+    {
+        super.collectCachedFiles(quota);
+
+        PackedTileStore store = this.tileStore;
+        if (store == null)
+            return;
+
+        for (String name : store.getNames())
+        {
+            int length = store.getLength(name);
+            if (length >= 0 && this.isEvictable(name))
+                quota.addFile(name, length, store.getTime(name));
+        }
+    }
+
+    /**
+     * Packs the tiles of a cache laid out as one file per tile, such as an existing cache directory or this file
+     * store's write location. Each tile is named by its path relative to the directory.
+     *
+     * @param dir           the cache directory.
+     * @param deleteSources true to delete each tile file once it is packed, otherwise false.
+     *
+     * @return the number of tiles packed.
+     *
+     * @throws IllegalArgumentException if the directory is null.
+     * @throws IllegalStateException    if this file store has no packed store.
+     * @throws IOException              if a tile cannot be packed.
+     */
+    public int importDirectory(File dir, boolean deleteSources) throws IOException
+    {
+        if (dir == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        PackedTileStore store = this.tileStore;
+        if (store == null)
+        {
+            String message = Logging.getMessage("PackedTileStore.StoreNotOpen", dir);
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        int count = store.importDirectory(dir, new FileFilter()
+        {
+            public boolean accept(File file)
+            {
+                return isPacked(file.getName());
+            }
+        }, deleteSources);
+
+        if (deleteSources && this.writeLocation != null && dir.equals(this.writeLocation.getFile()))
+        {
+            FileStoreIndex index = this.getWriteLocationIndex();
+            if (index != null)
+            {
+                for (String name : store.getNames())
+                {
+                    index.remove(name);
+                }
+            }
+        }
+
+        store.saveIndex();
+        return count;
+    }
+}
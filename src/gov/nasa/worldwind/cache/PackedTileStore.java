@@ -0,0 +1,1079 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+import java.util.logging.Level;
+
+/**
+ * A store of many small files, such as the tiles of imagery and elevation layers, packed into a few large container
+ * files. Storing tiles this way uses a handful of inodes rather than one per tile, makes the cache quick to copy or back
+ * up, and finds a tile with a hash map lookup rather than a file system probe.
+ * <p/>
+ * Each container is an append-only sequence of records. A record holds a file's name, its data and the time it was
+ * written; replacing a file appends a new record, and removing a file appends a removal record. Containers are read by
+ * memory mapping them, so reading a file copies no data. The store keeps an index of the newest record of each file in
+ * memory and saves it to an index file with the length of each container it covers. Opening the store reads the index
+ * and then scans only the records appended after it was saved, so records written after the last save, including those
+ * of a session that ended abnormally, are not lost. A record cut short by a crash is discarded.
+ * <p/>
+ * Replaced and removed records remain in their containers until {@link #compact()} copies the live records of the
+ * containers that are mostly dead to the end of the newest container and deletes the old containers. {@link
+ * #startMaintenance(long)} compacts the store and saves its index periodically on a background thread.
+ * <p/>
+ * Reads, writes and compaction may run concurrently. Reads do not lock; writes are serialized.
+ *
+ * @version $Id$
+ */
+public class PackedTileStore
+{
+    /** The prefix of the names of container files. */
+    public static final String CONTAINER_PREFIX = "tiles-";
+    /** The suffix of the names of container files. */
+    public static final String CONTAINER_SUFFIX = ".wwpack";
+    /** The name of the file holding the saved index. */
+    public static final String INDEX_FILE_NAME = "tiles.wwpackidx";
+    /** The default size in bytes at which a container is closed and a new one begun. */
+    public static final long DEFAULT_MAX_CONTAINER_SIZE = 1L << 30;
+    /** The default fraction of a container's bytes that must be dead before the container is compacted. */
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    protected static final int RECORD_MAGIC = 0x57575452; // "WWTR"
+    protected static final int INDEX_MAGIC = 0x57575849; // "WWXI"
+    protected static final int INDEX_VERSION = 1;
+    /** The size of a record's header: the magic number, name length, data length and time. */
+    protected static final int RECORD_HEADER_SIZE = 20;
+    /** The data length of a record that removes a file. */
+    protected static final int REMOVED_LENGTH = -1;
+    /** The number of bytes a container may grow beyond its mapping before reads of its new records remap it. */
+    protected static final long REMAP_INCREMENT = 1 << 24;
+    protected static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /** The location of a file's newest record. */
+    protected static class Entry
+    {
+        protected final int container;
+        /** The offset of the file's data within the container. */
+        protected final long offset;
+        /** The size of the record's header and name, which precede the data. */
+        protected final int headerLength;
+        protected final int length;
+        protected final long time;
+
+        public Entry(int container, long offset, int headerLength, int length, long time)
+        {
+            this.container = container;
+            this.offset = offset;
+            this.headerLength = headerLength;
+            this.length = length;
+            this.time = time;
+        }
+
+        protected long getRecordSize()
+        {
+            return this.headerLength + this.length;
+        }
+    }
+
+    /** A container file and its memory mapping. */
+    protected static class Container
+    {
+        protected final int id;
+        protected final File file;
+        protected final RandomAccessFile raf;
+        protected final FileChannel channel;
+        protected volatile long size;
+        protected final AtomicLong deadBytes = new AtomicLong();
+        protected volatile MappedByteBuffer mapping;
+
+        public Container(int id, File file) throws IOException
+        {
+            this.id = id;
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = this.raf.getChannel();
+            this.size = this.channel.size();
+        }
+
+        /**
+         * Reads part of the container. The part is read from the container's mapping, which is extended if the part
+         * lies well beyond it. Parts recently appended and not yet mapped are read from the file.
+         *
+         * @param offset the offset of the part to read.
+         * @param length the length of the part to read.
+         *
+         * @return a buffer holding the part, positioned at its start.
+         *
+         * @throws IOException if the part cannot be read.
+         */
+        protected ByteBuffer read(long offset, int length) throws IOException
+        {
+            MappedByteBuffer m = this.mapping;
+            if (m == null || offset + length > m.capacity())
+            {
+                if (m != null && this.size - m.capacity() < REMAP_INCREMENT)
+                {
+                    ByteBuffer buffer = ByteBuffer.allocate(length);
+                    while (buffer.hasRemaining())
+                    {
+                        if (this.channel.read(buffer, offset + buffer.position()) < 0)
+                            throw new EOFException(this.file.getPath());
+                    }
+                    buffer.flip();
+                    return buffer;
+                }
+
+                m = this.map(offset + length);
+            }
+
+            ByteBuffer buffer = m.duplicate();
+            buffer.limit((int) (offset + length));
+            buffer.position((int) offset);
+            return buffer.slice();
+        }
+
+        protected synchronized MappedByteBuffer map(long requiredSize) throws IOException
+        {
+            MappedByteBuffer m = this.mapping;
+            if (m != null && m.capacity() >= requiredSize)
+                return m;
+
+            long fileSize = this.channel.size();
+            if (fileSize < requiredSize)
+                throw new EOFException(this.file.getPath());
+
+            this.mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            return this.mapping;
+        }
+
+        protected void close()
+        {
+            this.mapping = null;
+            WWIO.closeStream(this.raf, this.file.getPath());
+        }
+    }
+
+    protected final File directory;
+    protected long maxContainerSize = DEFAULT_MAX_CONTAINER_SIZE;
+    protected double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    protected final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    protected final ConcurrentHashMap<Integer, Container> containers = new ConcurrentHashMap<Integer, Container>();
+    /** Serializes appends to the store. */
+    protected final Object writeLock = new Object();
+    /** Serializes compactions and index saves. */
+    protected final Object maintenanceLock = new Object();
+    protected Container activeContainer;
+    protected final AtomicBoolean modified = new AtomicBoolean();
+    protected volatile boolean open;
+    protected Timer maintenanceTimer;
+
+    /**
+     * Creates a store in a directory. Call {@link #open()} before using the store.
+     *
+     * @param directory the directory holding the store's files. It is created when the store is opened.
+     *
+     * @throws IllegalArgumentException if the directory is null.
+     */
+    public PackedTileStore(File directory)
+    {
+        if (directory == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.directory = directory;
+    }
+
+    /** @return the directory holding the store's files. */
+    public File getDirectory()
+    {
+        return this.directory;
+    }
+
+    /** @return the size in bytes at which a container is closed and a new one begun. */
+    public long getMaxContainerSize()
+    {
+        return this.maxContainerSize;
+    }
+
+    /**
+     * Specifies the size at which a container is closed and a new one begun. A container holding a single file may
+     * exceed this size.
+     *
+     * @param maxContainerSize the maximum container size in bytes, no more than <code>Integer.MAX_VALUE</code> so that
+     *                         containers can be mapped.
+     *
+     * @throws IllegalArgumentException if the size is less than 1 or greater than <code>Integer.MAX_VALUE</code>.
+     */
+    public void setMaxContainerSize(long maxContainerSize)
+    {
+        if (maxContainerSize < 1 || maxContainerSize > Integer.MAX_VALUE)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", maxContainerSize);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.maxContainerSize = maxContainerSize;
+    }
+
+    /** @return the fraction of a container's bytes that must be dead before the container is compacted. */
+    public double getCompactionThreshold()
+    {
+        return this.compactionThreshold;
+    }
+
+    /**
+     * Specifies the fraction of a container's bytes that must belong to replaced or removed files before {@link
+     * #compact()} compacts the container.
+     *
+     * @param compactionThreshold the fraction, in the range (0, 1].
+     *
+     * @throws IllegalArgumentException if the fraction is not in the range (0, 1].
+     */
+    public void setCompactionThreshold(double compactionThreshold)
+    {
+        if (compactionThreshold <= 0 || compactionThreshold > 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", compactionThreshold);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /** @return true if the store is open, otherwise false. */
+    public boolean isOpen()
+    {
+        return this.open;
+    }
+
+    /**
+     * Opens the store, creating its directory if necessary, and reads the index of its files.
+     *
+     * @throws IOException if the directory cannot be created or a container cannot be opened.
+     */
+    public void open() throws IOException
+    {
+        synchronized (this.maintenanceLock)
+        {
+            synchronized (this.writeLock)
+            {
+                if (this.open)
+                    return;
+
+                if (!this.directory.isDirectory() && !this.directory.mkdirs())
+                    throw new IOException(Logging.getMessage("generic.CannotCreateFile", this.directory));
+
+                TreeMap<Integer, File> files = new TreeMap<Integer, File>();
+                File[] children = this.directory.listFiles();
+                if (children != null)
+                {
+                    for (File child : children)
+                    {
+                        int id = containerIdFor(child.getName());
+                        if (id >= 0)
+                            files.put(id, child);
+                    }
+                }
+
+                try
+                {
+                    for (Map.Entry<Integer, File> file : files.entrySet())
+                    {
+                        this.containers.put(file.getKey(), new Container(file.getKey(), file.getValue()));
+                    }
+
+                    Map<Integer, Long> scanned = this.loadIndex();
+                    for (Container container : new TreeMap<Integer, Container>(this.containers).values())
+                    {
+                        Long scannedSize = scanned != null ? scanned.get(container.id) : null;
+                        this.scan(container, scannedSize != null ? scannedSize : 0);
+                    }
+                    this.computeDeadBytes();
+
+                    if (!files.isEmpty())
+                        this.activeContainer = this.containers.get(files.lastKey());
+                }
+                catch (IOException e)
+                {
+                    this.closeContainers();
+                    throw e;
+                }
+
+                this.open = true;
+            }
+        }
+    }
+
+    /** Stops maintenance, saves the index and closes the store's files. */
+    public void close()
+    {
+        this.stopMaintenance();
+
+        synchronized (this.maintenanceLock)
+        {
+            if (!this.open)
+                return;
+
+            if (this.modified.get())
+                this.saveIndex();
+
+            synchronized (this.writeLock)
+            {
+                this.open = false;
+                this.closeContainers();
+                this.activeContainer = null;
+            }
+        }
+    }
+
+    protected void closeContainers()
+    {
+        for (Container container : this.containers.values())
+        {
+            container.close();
+        }
+        this.containers.clear();
+        this.entries.clear();
+    }
+
+    /** @return the number of files in the store. */
+    public int size()
+    {
+        return this.entries.size();
+    }
+
+    /** @return the names of the files in the store. The set reflects later changes to the store. */
+    public Set<String> getNames()
+    {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
+    /**
+     * Indicates whether the store contains a file.
+     *
+     * @param name the file's name.
+     *
+     * @return true if the store contains the file, otherwise false.
+     */
+    public boolean contains(String name)
+    {
+        return name != null && this.entries.containsKey(name);
+    }
+
+    /**
+     * Returns the time a file was written to the store.
+     *
+     * @param name the file's name.
+     *
+     * @return the time the file was written, in milliseconds since the Epoch, or -1 if the store does not contain the
+     *         file.
+     */
+    public long getTime(String name)
+    {
+        Entry entry = name != null ? this.entries.get(name) : null;
+        return entry != null ? entry.time : -1;
+    }
+
+    /**
+     * Returns the size of a file in the store.
+     *
+     * @param name the file's name.
+     *
+     * @return the file's size in bytes, or -1 if the store does not contain the file.
+     */
+    public int getLength(String name)
+    {
+        Entry entry = name != null ? this.entries.get(name) : null;
+        return entry != null ? entry.length : -1;
+    }
+
+    /**
+     * Reads a file from the store. The returned buffer usually shares the memory mapping of the file's container, and
+     * must not be modified.
+     *
+     * @param name the file's name.
+     *
+     * @return a buffer holding the file's data, or null if the store does not contain the file.
+     *
+     * @throws IllegalArgumentException if the name is null.
+     * @throws IOException              if the file cannot be read.
+     */
+    public ByteBuffer get(String name) throws IOException
+    {
+        if (name == null)
+        {
+            String message = Logging.getMessage("nullValue.FilePathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        // A compaction may move the file and delete its container between finding its entry and reading it. Find the
+        // entry again in that case.
+        for (int attempt = 0; attempt < 2; attempt++)
+        {
+            Entry entry = this.entries.get(name);
+            if (entry == null)
+                return null;
+
+            Container container = this.containers.get(entry.container);
+            if (container == null)
+                continue;
+
+            try
+            {
+                return container.read(entry.offset, entry.length);
+            }
+            catch (IOException e)
+            {
+                if (this.containers.get(entry.container) == container)
+                    throw e;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes a file to the store, replacing any file of the same name.
+     *
+     * @param name the file's name.
+     * @param data the file's data, from its position to its limit. The buffer's position is not changed.
+     * @param time the time the file was written, in milliseconds since the Epoch.
+     *
+     * @throws IllegalArgumentException if the name or data is null.
+     * @throws IllegalStateException    if the store is not open.
+     * @throws IOException              if the file cannot be written.
+     */
+    public void put(String name, ByteBuffer data, long time) throws IOException
+    {
+        if (name == null)
+        {
+            String message = Logging.getMessage("nullValue.FilePathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (data == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.append(name, data, time, null);
+    }
+
+    /**
+     * Removes a file from the store.
+     *
+     * @param name the file's name.
+     *
+     * @return true if the store contained the file, otherwise false.
+     *
+     * @throws IllegalStateException if the store is not open.
+     * @throws IOException           if the removal cannot be recorded.
+     */
+    public boolean remove(String name) throws IOException
+    {
+        if (name == null)
+            return false;
+
+        synchronized (this.writeLock)
+        {
+            this.checkOpen();
+
+            if (!this.entries.containsKey(name))
+                return false;
+
+            // The removal record is needed only until the index is saved, so it is dead from the start.
+            Entry removal = this.writeRecord(name, null, System.currentTimeMillis());
+            this.containers.get(removal.container).deadBytes.addAndGet(removal.getRecordSize());
+            this.markDead(this.entries.remove(name));
+            this.modified.set(true);
+            return true;
+        }
+    }
+
+    /**
+     * Appends a record to the store.
+     *
+     * @param name     the file's name.
+     * @param data     the file's data.
+     * @param time     the time the file was written.
+     * @param expected the entry the file must have for the record to be appended, or null to append it
+     *                 unconditionally. Compaction uses this to avoid overwriting files written while it copies them.
+     *
+     * @return true if the record was appended, otherwise false.
+     *
+     * @throws IOException if the record cannot be written.
+     */
+    protected boolean append(String name, ByteBuffer data, long time, Entry expected) throws IOException
+    {
+        synchronized (this.writeLock)
+        {
+            this.checkOpen();
+
+            if (expected != null && this.entries.get(name) != expected)
+                return false;
+
+            Entry entry = this.writeRecord(name, data, time);
+            this.markDead(this.entries.put(name, entry));
+            this.modified.set(true);
+            return true;
+        }
+    }
+
+    /**
+     * Writes a record to the end of the active container, beginning a new container if the record does not fit. Must
+     * be called while holding the write lock.
+     *
+     * @param name the file's name.
+     * @param data the file's data, or null to write a removal record.
+     * @param time the record's time.
+     *
+     * @return the entry locating the record.
+     *
+     * @throws IOException if the record cannot be written.
+     */
+    protected Entry writeRecord(String name, ByteBuffer data, long time) throws IOException
+    {
+        byte[] nameBytes = name.getBytes("UTF-8");
+        int length = data != null ? data.remaining() : 0;
+        int headerLength = RECORD_HEADER_SIZE + nameBytes.length;
+
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        header.putInt(RECORD_MAGIC);
+        header.putInt(nameBytes.length);
+        header.putInt(data != null ? length : REMOVED_LENGTH);
+        header.putLong(time);
+        header.put(nameBytes);
+        header.flip();
+
+        Container container = this.activeContainer;
+        if (container == null || (container.size > 0 && container.size + headerLength + length > this.maxContainerSize))
+            container = this.beginContainer();
+
+        long position = container.size;
+        try
+        {
+            writeFully(container.channel, header, position);
+            if (data != null)
+                writeFully(container.channel, data.duplicate(), position + headerLength);
+        }
+        catch (IOException e)
+        {
+            // Discard any part of the record that was written, so the container ends with a complete record.
+            container.channel.truncate(position);
+            throw e;
+        }
+
+        container.size = position + headerLength + length;
+        return new Entry(container.id, position + headerLength, headerLength, length, time);
+    }
+
+    protected static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        long offset = position;
+        while (buffer.hasRemaining())
+        {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    protected Container beginContainer() throws IOException
+    {
+        int id = this.containers.isEmpty() ? 1 : Collections.max(this.containers.keySet()) + 1;
+        Container container = new Container(id, new File(this.directory, containerNameFor(id)));
+        this.containers.put(id, container);
+        this.activeContainer = container;
+        return container;
+    }
+
+    protected void markDead(Entry entry)
+    {
+        if (entry == null)
+            return;
+
+        Container container = this.containers.get(entry.container);
+        if (container != null)
+            container.deadBytes.addAndGet(entry.getRecordSize());
+    }
+
+    protected void checkOpen()
+    {
+        if (!this.open)
+        {
+            String message = Logging.getMessage("PackedTileStore.StoreNotOpen", this.directory);
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Reads the records of a container from an offset to the container's end, updating the index. A truncated or
+     * invalid record ends the scan and is removed from the container, along with everything after it.
+     *
+     * @param container the container to scan.
+     * @param start     the offset of the first record to read.
+     *
+     * @throws IOException if the container cannot be read.
+     */
+    protected void scan(Container container, long start) throws IOException
+    {
+        long size = container.channel.size();
+        if (start >= size)
+            return;
+
+        MappedByteBuffer buffer = container.map(size);
+        long position = start;
+        while (position < size)
+        {
+            if (size - position < RECORD_HEADER_SIZE || buffer.getInt((int) position) != RECORD_MAGIC)
+                break;
+
+            int nameLength = buffer.getInt((int) position + 4);
+            int length = buffer.getInt((int) position + 8);
+            long time = buffer.getLong((int) position + 12);
+            int headerLength = RECORD_HEADER_SIZE + nameLength;
+            long recordSize = (long) headerLength + Math.max(length, 0);
+            if (nameLength < 0 || length < REMOVED_LENGTH || position + recordSize > size)
+                break;
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = buffer.duplicate();
+            nameBuffer.position((int) position + RECORD_HEADER_SIZE);
+            nameBuffer.get(nameBytes);
+            String name = new String(nameBytes, "UTF-8");
+
+            // Records are applied only over older records, so a container left behind by an interrupted compaction
+            // does not replace the copies of its files.
+            Entry existing = this.entries.get(name);
+            if (existing == null || isAfter(container.id, position, existing))
+            {
+                if (length == REMOVED_LENGTH)
+                    this.entries.remove(name);
+                else
+                    this.entries.put(name, new Entry(container.id, position + headerLength, headerLength, length,
+                        time));
+            }
+
+            position += recordSize;
+        }
+
+        if (position < size)
+        {
+            Logging.logger().warning(Logging.getMessage("PackedTileStore.TruncatingContainer", container.file,
+                position));
+            container.mapping = null;
+            container.channel.truncate(position);
+        }
+
+        container.size = position;
+        this.modified.set(true);
+    }
+
+    /**
+     * Indicates whether a record was written after the record of an entry. Records are written in order of container
+     * and then offset.
+     *
+     * @param container the record's container.
+     * @param position  the record's offset.
+     * @param entry     the entry.
+     *
+     * @return true if the record is newer than the entry's record, otherwise false.
+     */
+    protected static boolean isAfter(int container, long position, Entry entry)
+    {
+        return container > entry.container || (container == entry.container && position > entry.offset);
+    }
+
+    /** Computes the dead bytes of each container as the bytes not held by live records. */
+    protected void computeDeadBytes()
+    {
+        HashMap<Integer, Long> liveBytes = new HashMap<Integer, Long>();
+        for (Entry entry : this.entries.values())
+        {
+            Long live = liveBytes.get(entry.container);
+            liveBytes.put(entry.container, (live != null ? live : 0) + entry.getRecordSize());
+        }
+
+        for (Container container : this.containers.values())
+        {
+            Long live = liveBytes.get(container.id);
+            container.deadBytes.set(container.size - (live != null ? live : 0));
+        }
+    }
+
+    //**************************************************************//
+    //********************  Index  *********************************//
+    //**************************************************************//
+
+    /** @return the file holding the saved index. */
+    public File getIndexFile()
+    {
+        return new File(this.directory, INDEX_FILE_NAME);
+    }
+
+    /**
+     * Writes the index to the index file. The index is written to a temporary file that then replaces the index file,
+     * so a failure while writing leaves the previous index intact.
+     *
+     * @return true if the index was saved, otherwise false.
+     */
+    public boolean saveIndex()
+    {
+        synchronized (this.maintenanceLock)
+        {
+            if (!this.open)
+                return false;
+
+            // Copy the index and the container sizes it covers together, so that records appended while the copy is
+            // written are beyond the sizes recorded and are found by the next open.
+            Map<Integer, Long> sizes = new TreeMap<Integer, Long>();
+            List<Map.Entry<String, Entry>> snapshot;
+            synchronized (this.writeLock)
+            {
+                for (Container container : this.containers.values())
+                {
+                    sizes.put(container.id, container.size);
+                }
+                snapshot = new ArrayList<Map.Entry<String, Entry>>(this.entries.entrySet());
+                this.modified.set(false);
+            }
+
+            File indexFile = this.getIndexFile();
+            File tempFile = new File(this.directory, INDEX_FILE_NAME + TEMP_FILE_SUFFIX);
+            DataOutputStream out = null;
+            try
+            {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(sizes.size());
+                for (Map.Entry<Integer, Long> size : sizes.entrySet())
+                {
+                    out.writeInt(size.getKey());
+                    out.writeLong(size.getValue());
+                }
+
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> mapEntry : snapshot)
+                {
+                    Entry entry = mapEntry.getValue();
+                    out.writeUTF(mapEntry.getKey());
+                    out.writeInt(entry.container);
+                    out.writeLong(entry.offset);
+                    out.writeInt(entry.headerLength);
+                    out.writeInt(entry.length);
+                    out.writeLong(entry.time);
+                }
+
+                out.close();
+                out = null;
+
+                if (indexFile.exists() && !indexFile.delete())
+                    throw new IOException(Logging.getMessage("generic.CannotDeleteFile", indexFile));
+                if (!tempFile.renameTo(indexFile))
+                    throw new IOException(Logging.getMessage("generic.CannotCreateFile", indexFile));
+
+                return true;
+            }
+            catch (IOException e)
+            {
+                this.modified.set(true);
+                Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionWritingIndex", indexFile),
+                    e);
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+                return false;
+            }
+            finally
+            {
+                WWIO.closeStream(out, tempFile.getPath());
+            }
+        }
+    }
+
+    /**
+     * Reads the saved index into the index of this store. The saved index is used only if every container it covers
+     * still exists and is at least as long as when the index was saved.
+     *
+     * @return the size of each container covered by the saved index, by container, or null if there is no usable saved
+     *         index.
+     */
+    protected Map<Integer, Long> loadIndex()
+    {
+        File indexFile = this.getIndexFile();
+        if (!indexFile.isFile())
+            return null;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION)
+                return null;
+
+            HashMap<Integer, Long> sizes = new HashMap<Integer, Long>();
+            int numContainers = in.readInt();
+            for (int i = 0; i < numContainers; i++)
+            {
+                int id = in.readInt();
+                long size = in.readLong();
+                Container container = this.containers.get(id);
+                if (container == null || container.channel.size() < size)
+                    return null;
+                sizes.put(id, size);
+            }
+
+            HashMap<String, Entry> saved = new HashMap<String, Entry>();
+            int numEntries = in.readInt();
+            for (int i = 0; i < numEntries; i++)
+            {
+                String name = in.readUTF();
+                Entry entry = new Entry(in.readInt(), in.readLong(), in.readInt(), in.readInt(), in.readLong());
+                if (!sizes.containsKey(entry.container))
+                    return null;
+                saved.put(name, entry);
+            }
+
+            this.entries.putAll(saved);
+            return sizes;
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.FINE, Logging.getMessage("FileStore.ExceptionReadingIndex", indexFile), e);
+            return null;
+        }
+        finally
+        {
+            WWIO.closeStream(in, indexFile.getPath());
+        }
+    }
+
+    //**************************************************************//
+    //********************  Compaction  ****************************//
+    //**************************************************************//
+
+    /**
+     * Compacts the containers whose fraction of dead bytes is at least the compaction threshold. The live files of each
+     * such container are copied to the end of the store, the index is saved, and the container is deleted. The active
+     * container is not compacted.
+     *
+     * @return the number of containers compacted.
+     *
+     * @throws IOException if a file cannot be copied.
+     */
+    public int compact() throws IOException
+    {
+        synchronized (this.maintenanceLock)
+        {
+            if (!this.open)
+                return 0;
+
+            List<Container> candidates = new ArrayList<Container>();
+            synchronized (this.writeLock)
+            {
+                for (Container container : this.containers.values())
+                {
+                    if (container != this.activeContainer && container.size > 0
+                        && container.deadBytes.get() >= this.compactionThreshold * container.size)
+                        candidates.add(container);
+                }
+            }
+
+            if (candidates.isEmpty())
+                return 0;
+
+            for (Container container : candidates)
+            {
+                for (Map.Entry<String, Entry> mapEntry : this.entries.entrySet())
+                {
+                    Entry entry = mapEntry.getValue();
+                    if (entry.container == container.id)
+                    {
+                        ByteBuffer data = container.read(entry.offset, entry.length);
+                        this.append(mapEntry.getKey(), data, entry.time, entry);
+                    }
+                }
+            }
+
+            // Save the index before deleting the containers, so the saved index never refers to a deleted container.
+            this.saveIndex();
+
+            for (Container container : candidates)
+            {
+                this.containers.remove(container.id);
+                container.close();
+                if (!container.file.delete())
+                    Logging.logger().warning(Logging.getMessage("generic.CannotDeleteFile", container.file));
+            }
+
+            return candidates.size();
+        }
+    }
+
+    /**
+     * Starts compacting the store and saving its index periodically on a background thread. The index is saved only if
+     * it has changed.
+     *
+     * @param interval the interval between maintenance runs, in milliseconds.
+     *
+     * @throws IllegalArgumentException if the interval is less than 1.
+     */
+    public void startMaintenance(long interval)
+    {
+        if (interval < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", interval);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        synchronized (this.maintenanceLock)
+        {
+            this.stopMaintenance();
+
+            this.maintenanceTimer = new Timer("World Wind Packed Tile Store Maintenance", true);
+            this.maintenanceTimer.schedule(new TimerTask()
+            {
+                public void run()
+                {
+                    maintain();
+                }
+            }, interval, interval);
+        }
+    }
+
+    /** Stops the periodic maintenance started by {@link #startMaintenance(long)}. */
+    public void stopMaintenance()
+    {
+        synchronized (this.maintenanceLock)
+        {
+            if (this.maintenanceTimer != null)
+            {
+                this.maintenanceTimer.cancel();
+                this.maintenanceTimer = null;
+            }
+        }
+    }
+
+    protected void maintain()
+    {
+        try
+        {
+            this.compact();
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("PackedTileStore.ExceptionCompacting",
+                this.directory), e);
+        }
+
+        if (this.modified.get())
+            this.saveIndex();
+    }
+
+    //**************************************************************//
+    //********************  Import  ********************************//
+    //**************************************************************//
+
+    /**
+     * Copies the files beneath a directory to the store, naming each by its path relative to the directory with '/'
+     * separating its parts. This imports a cache laid out as one file per tile.
+     *
+     * @param dir           the directory to import.
+     * @param filter        selects the files to import, or null to import all files. Directories are always
+     *                      searched.
+     * @param deleteSources true to delete each file once it is imported, otherwise false.
+     *
+     * @return the number of files imported.
+     *
+     * @throws IllegalArgumentException if the directory is null.
+     * @throws IOException              if a file cannot be imported.
+     */
+    public int importDirectory(File dir, FileFilter filter, boolean deleteSources) throws IOException
+    {
+        if (dir == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return this.importDirectory(dir, "", filter, deleteSources);
+    }
+
+    protected int importDirectory(File dir, String prefix, FileFilter filter, boolean deleteSources)
+        throws IOException
+    {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return 0;
+
+        int count = 0;
+        for (File child : children)
+        {
+            if (child.equals(this.directory))
+                continue;
+
+            String name = prefix + child.getName();
+            if (child.isDirectory())
+            {
+                count += this.importDirectory(child, name + "/", filter, deleteSources);
+            }
+            else if (filter == null || filter.accept(child))
+            {
+                this.put(name, WWIO.readFileToBuffer(child), child.lastModified());
+                if (deleteSources && !child.delete())
+                    Logging.logger().warning(Logging.getMessage("generic.CannotDeleteFile", child));
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    protected static String containerNameFor(int id)
+    {
+        return String.format("%s%06d%s", CONTAINER_PREFIX, id, CONTAINER_SUFFIX);
+    }
+
+    /**
+     * Parses a container's id from its file name.
+     *
+     * @param fileName the file name.
+     *
+     * @return the container's id, or -1 if the name is not that of a container.
+     */
+    protected static int containerIdFor(String fileName)
+    {
+        if (!fileName.startsWith(CONTAINER_PREFIX) || !fileName.endsWith(CONTAINER_SUFFIX))
+            return -1;
+
+        try
+        {
+            return Integer.parseInt(fileName.substring(CONTAINER_PREFIX.length(),
+                fileName.length() - CONTAINER_SUFFIX.length()));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,581 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MemoryCache} that partitions its entries into independently locked segments. Each segment keeps its entries
+ * in an access-ordered doubly linked list, so marking an entry as used and evicting the least recently used entry are
+ * both constant time operations. Threads operating on keys that hash to different segments never contend with each
+ * other.
+ * <p/>
+ * Capacity and low water are tracked for the cache as a whole, exactly as in {@link BasicMemoryCache}. When an add
+ * would exceed the capacity, entries are evicted until the requested space is free and the used capacity is at or
+ * below the low water level. Each eviction removes the tail of the segment whose least recently used entry is the
+ * oldest, which approximates a global LRU order while only ever holding one segment lock at a time. Cache listeners are
+ * notified after the segment lock is released, so listeners may safely call back into the cache.
+ * <p/>
+ * To use this cache for the caches World Wind creates internally, set the configuration property {@link
+ * gov.nasa.worldwind.avlist.AVKey#MEMORY_CACHE_CLASS_NAME} to this class name.
+ *
+ * @version $Id$
+ * @see BasicMemoryCache
+ */
+public class SegmentedMemoryCache implements MemoryCache
+{
+    /** The default number of segments, chosen to exceed the number of threads that typically access a cache. */
+    protected static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    protected static class CacheEntry
+    {
+        protected final Object key;
+        protected final Object clientObject;
+        protected final long clientObjectSize;
+        protected volatile long lastUsed;
+        protected CacheEntry prev;
+        protected CacheEntry next;
+
+        protected CacheEntry(Object key, Object clientObject, long clientObjectSize)
+        {
+            this.key = key;
+            this.clientObject = clientObject;
+            this.clientObjectSize = clientObjectSize;
+            this.lastUsed = System.nanoTime();
+        }
+
+        public String toString()
+        {
+            return key + " " + clientObject + " " + lastUsed + " " + clientObjectSize;
+        }
+    }
+
+    /**
+     * A partition of the cache. All fields are guarded by the segment's monitor. The list is circular around the
+     * <code>head</code> sentinel; <code>head.next</code> is the most recently used entry and <code>head.prev</code> is
+     * the least recently used entry.
+     */
+    protected static class Segment
+    {
+        protected final HashMap<Object, CacheEntry> entries = new HashMap<Object, CacheEntry>();
+        protected final CacheEntry head = new CacheEntry(null, null, 0);
+
+        protected Segment()
+        {
+            this.head.prev = this.head;
+            this.head.next = this.head;
+        }
+
+        protected void linkFirst(CacheEntry entry)
+        {
+            entry.prev = this.head;
+            entry.next = this.head.next;
+            this.head.next.prev = entry;
+            this.head.next = entry;
+        }
+
+        protected void unlink(CacheEntry entry)
+        {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+        }
+
+        protected CacheEntry getEldest()
+        {
+            return this.head.prev != this.head ? this.head.prev : null;
+        }
+    }
+
+    protected final Segment[] segments;
+    protected final int segmentMask;
+    protected final CopyOnWriteArrayList<MemoryCache.CacheListener> listeners =
+        new CopyOnWriteArrayList<MemoryCache.CacheListener>();
+    protected final AtomicLong capacity = new AtomicLong();
+    protected final AtomicLong currentUsedCapacity = new AtomicLong();
+    protected volatile long lowWater;
+    protected String name = "";
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, and <code>loWater</code> for the low water.
+     * The cache is partitioned into a default number of segments.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     */
+    public SegmentedMemoryCache(long loWater, long capacity)
+    {
+        this(loWater, capacity, DEFAULT_SEGMENT_COUNT);
+    }
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, and <code>loWater</code> for the low water.
+     * The cache is partitioned into at least <code>segmentCount</code> segments, rounded up to a power of two.
+     *
+     * @param loWater      the low water level.
+     * @param capacity     the maximum capacity.
+     * @param segmentCount the minimum number of independently locked segments.
+     *
+     * @throws IllegalArgumentException if <code>segmentCount</code> is less than 1.
+     */
+    public SegmentedMemoryCache(long loWater, long capacity, int segmentCount)
+    {
+        if (segmentCount < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "segmentCount < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int count = 1;
+        while (count < segmentCount)
+        {
+            count <<= 1;
+        }
+
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++)
+        {
+            this.segments[i] = new Segment();
+        }
+
+        this.segmentMask = count - 1;
+        this.capacity.set(capacity);
+        this.lowWater = loWater;
+    }
+
+    /** @return the number of segments this cache is partitioned into. */
+    public int getSegmentCount()
+    {
+        return this.segments.length;
+    }
+
+    /** @return the number of objects currently stored in this cache. */
+    public int getNumObjects()
+    {
+        int count = 0;
+
+        for (Segment segment : this.segments)
+        {
+            synchronized (segment)
+            {
+                count += segment.entries.size();
+            }
+        }
+
+        return count;
+    }
+
+    /** @return the capacity of the cache. */
+    public long getCapacity()
+    {
+        return this.capacity.get();
+    }
+
+    /** @return the number of cache units that the cache currently holds. */
+    public long getUsedCapacity()
+    {
+        return this.currentUsedCapacity.get();
+    }
+
+    /** @return the amount of free space left in the cache (in cache units). */
+    public long getFreeCapacity()
+    {
+        return Math.max(this.capacity.get() - this.currentUsedCapacity.get(), 0);
+    }
+
+    public void setName(String name)
+    {
+        this.name = name != null ? name : "";
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * Adds a cache listener, MemoryCache listeners are used to notify classes when an item is removed from the cache.
+     *
+     * @param listener The new <code>CacheListener</code>.
+     *
+     * @throws IllegalArgumentException is <code>listener</code> is null.
+     */
+    public void addCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerAdded");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a cache listener, objects using this listener will no longer receive notification of cache events.
+     *
+     * @param listener The <code>CacheListener</code> to remove.
+     *
+     * @throws IllegalArgumentException if <code>listener</code> is null.
+     */
+    public void removeCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerRemoved");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Sets the new capacity for the cache. As with {@link BasicMemoryCache#setCapacity(long)}, existing entries are
+     * not removed until the next add requires space.
+     *
+     * @param newCapacity the new capacity of the cache.
+     */
+    public void setCapacity(long newCapacity)
+    {
+        this.capacity.set(newCapacity);
+    }
+
+    /**
+     * Sets the new low water level in cache units, which controls how aggressively the cache discards items. The value
+     * is ignored if it is negative or not less than the current capacity.
+     *
+     * @param loWater the new low water level.
+     */
+    public void setLowWater(long loWater)
+    {
+        if (loWater < this.capacity.get() && loWater >= 0)
+        {
+            this.lowWater = loWater;
+        }
+    }
+
+    /**
+     * Returns the low water level in cache units. When the cache fills, it removes items until it reaches the low water
+     * level.
+     *
+     * @return the low water level.
+     */
+    public long getLowWater()
+    {
+        return this.lowWater;
+    }
+
+    /**
+     * Returns true if the cache contains the item referenced by key. This does not mark the item as accessed.
+     *
+     * @param key The key of a specific object.
+     *
+     * @return true if the cache holds the item referenced by key.
+     *
+     * @throws IllegalArgumentException if <code>key</code> is null.
+     */
+    public boolean contains(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        Segment segment = this.segmentFor(key);
+        synchronized (segment)
+        {
+            return segment.entries.containsKey(key);
+        }
+    }
+
+    /**
+     * Adds an object to the cache. The add fails if the object or key is null, or if the size is zero, negative or
+     * greater than the maximum capacity.
+     *
+     * @param key              The unique reference key that identifies this object.
+     * @param clientObject     The actual object to be cached.
+     * @param clientObjectSize The size of the object in cache units.
+     *
+     * @return returns true if clientObject was added, false otherwise.
+     */
+    public boolean add(Object key, Object clientObject, long clientObjectSize)
+    {
+        long cap = this.capacity.get();
+
+        if (key == null || clientObject == null || clientObjectSize <= 0 || clientObjectSize > cap)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.CacheItemNotAdded");
+
+            if (clientObjectSize > cap)
+            {
+                message += " - " + Logging.getMessage("BasicMemoryCache.ItemTooLargeForCache");
+            }
+
+            Logging.logger().warning(message);
+
+            return false;
+        }
+
+        // Remove any entry being replaced first, so that its space is available to the new entry.
+        this.remove(key);
+
+        if (this.currentUsedCapacity.get() + clientObjectSize > cap)
+        {
+            this.makeSpace(clientObjectSize);
+        }
+
+        CacheEntry entry = new CacheEntry(key, clientObject, clientObjectSize);
+        CacheEntry replaced;
+
+        Segment segment = this.segmentFor(key);
+        synchronized (segment)
+        {
+            // Another thread may have added the same key since it was removed above.
+            replaced = segment.entries.put(key, entry);
+            if (replaced != null)
+            {
+                segment.unlink(replaced);
+                this.currentUsedCapacity.addAndGet(-replaced.clientObjectSize);
+            }
+
+            segment.linkFirst(entry);
+            this.currentUsedCapacity.addAndGet(clientObjectSize);
+        }
+
+        if (replaced != null)
+        {
+            this.notifyRemoved(replaced);
+        }
+
+        // Concurrent adds to other segments may have pushed the cache over capacity after the check above.
+        if (this.currentUsedCapacity.get() > cap)
+        {
+            this.makeSpace(0);
+        }
+
+        return true;
+    }
+
+    public boolean add(Object key, Cacheable clientObject)
+    {
+        return this.add(key, clientObject, clientObject.getSizeInBytes());
+    }
+
+    /**
+     * Remove the object reference by key from the cache. If no object with the corresponding key is found, this method
+     * returns immediately.
+     *
+     * @param key the key of the object to be removed.
+     */
+    public void remove(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return;
+        }
+
+        CacheEntry entry;
+
+        Segment segment = this.segmentFor(key);
+        synchronized (segment)
+        {
+            entry = segment.entries.remove(key);
+            if (entry != null)
+            {
+                segment.unlink(entry);
+                this.currentUsedCapacity.addAndGet(-entry.clientObjectSize);
+            }
+        }
+
+        if (entry != null)
+        {
+            this.notifyRemoved(entry);
+        }
+    }
+
+    /**
+     * Obtain the object referenced by key without removing it. Apart from adding an object, this is the only way to
+     * mark an object as recently used.
+     *
+     * @param key The key for the object to be found.
+     *
+     * @return the object referenced by key if it is present, null otherwise.
+     */
+    public Object getObject(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return null;
+        }
+
+        Segment segment = this.segmentFor(key);
+        synchronized (segment)
+        {
+            CacheEntry entry = segment.entries.get(key);
+            if (entry == null)
+                return null;
+
+            if (segment.head.next != entry)
+            {
+                segment.unlink(entry);
+                segment.linkFirst(entry);
+            }
+
+            entry.lastUsed = System.nanoTime();
+
+            return entry.clientObject;
+        }
+    }
+
+    /** Empties the cache. */
+    public void clear()
+    {
+        for (Segment segment : this.segments)
+        {
+            List<CacheEntry> removed;
+
+            synchronized (segment)
+            {
+                removed = new ArrayList<CacheEntry>(segment.entries.values());
+                for (CacheEntry entry : removed)
+                {
+                    this.currentUsedCapacity.addAndGet(-entry.clientObjectSize);
+                }
+
+                segment.entries.clear();
+                segment.head.prev = segment.head;
+                segment.head.next = segment.head;
+            }
+
+            for (CacheEntry entry : removed)
+            {
+                this.notifyRemoved(entry);
+            }
+        }
+    }
+
+    protected Segment segmentFor(Object key)
+    {
+        // Spread the hash so that keys differing only in their high bits land in different segments.
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+
+        return this.segments[h & this.segmentMask];
+    }
+
+    /**
+     * Makes at least <code>spaceRequired</code> space in the cache. If spaceRequired is less than (capacity-lowWater),
+     * makes more space. Does nothing if capacity is less than spaceRequired. Each step evicts the least recently used
+     * entry of the segment holding the oldest eviction candidate.
+     *
+     * @param spaceRequired the amount of space required.
+     */
+    protected void makeSpace(long spaceRequired)
+    {
+        if (spaceRequired > this.capacity.get() || spaceRequired < 0)
+            return;
+
+        while (this.getFreeCapacity() < spaceRequired || this.getUsedCapacity() > this.lowWater)
+        {
+            CacheEntry evicted = this.evictEldest();
+            if (evicted == null)
+                break; // The cache is empty, or other threads have emptied it concurrently.
+
+            this.notifyRemoved(evicted);
+        }
+    }
+
+    /**
+     * Removes the least recently used entry of the segment whose least recently used entry is oldest.
+     *
+     * @return the removed entry, or null if the cache has no entries.
+     */
+    protected CacheEntry evictEldest()
+    {
+        // Repeat the selection if the candidate is used or removed by another thread before its segment is locked.
+        for (int attempt = 0; attempt < this.segments.length; attempt++)
+        {
+            Segment victim = null;
+            long victimTime = Long.MAX_VALUE;
+
+            for (Segment segment : this.segments)
+            {
+                CacheEntry eldest;
+                synchronized (segment)
+                {
+                    eldest = segment.getEldest();
+                }
+
+                if (eldest != null && (victim == null || eldest.lastUsed - victimTime < 0))
+                {
+                    victim = segment;
+                    victimTime = eldest.lastUsed;
+                }
+            }
+
+            if (victim == null)
+                return null;
+
+            synchronized (victim)
+            {
+                CacheEntry eldest = victim.getEldest();
+                if (eldest != null && (eldest.lastUsed == victimTime || attempt == this.segments.length - 1))
+                {
+                    victim.entries.remove(eldest.key);
+                    victim.unlink(eldest);
+                    this.currentUsedCapacity.addAndGet(-eldest.clientObjectSize);
+                    return eldest;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    protected void notifyRemoved(CacheEntry entry)
+    {
+        for (MemoryCache.CacheListener listener : this.listeners)
+        {
+            try
+            {
+                listener.entryRemoved(entry.key, entry.clientObject);
+            }
+            catch (Exception e)
+            {
+                listener.removalException(e, entry.key, entry.clientObject);
+            }
+        }
+    }
+
+    /**
+     * a <code>String</code> representation of this object is returned.&nbsp; This representation consists of maximum
+     * size, current used capacity and number of currently cached items.
+     *
+     * @return a <code>String</code> representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "MemoryCache " + this.name + " max size = " + this.getCapacity() + " current size = "
+            + this.currentUsedCapacity.get() + " number of items: " + this.getNumObjects();
+    }
+}
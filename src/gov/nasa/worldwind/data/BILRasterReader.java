@@ -24,7 +24,7 @@ public class BILRasterReader extends AbstractDataRasterReader
     private static final String[] bilSuffixes = new String[]
         {"bil", "bil16", "bil32", "bil.gz", "bil16.gz", "bil32.gz"};
 
-    private boolean mapLargeFiles = false;
+    private boolean mapLargeFiles = true;
     private long largeFileThreshold = 16777216L; // 16 megabytes
 
     public BILRasterReader()
@@ -32,11 +32,23 @@ public class BILRasterReader extends AbstractDataRasterReader
         super(bilMimeTypes, bilSuffixes);
     }
 
+    /**
+     * Indicates whether BIL files at least as large as the large file threshold are memory-mapped rather than read onto
+     * the heap. Rasters read from mapped files access their elevations directly from the file, and are read-only.
+     *
+     * @return true if large files are memory-mapped, otherwise false. The default is true.
+     */
     public boolean isMapLargeFiles()
     {
         return this.mapLargeFiles;
     }
 
+    /**
+     * Specifies whether BIL files at least as large as the large file threshold are memory-mapped rather than read onto
+     * the heap.
+     *
+     * @param mapLargeFiles true to memory-map large files, otherwise false.
+     */
     public void setMapLargeFiles(boolean mapLargeFiles)
     {
         this.mapLargeFiles = mapLargeFiles;
@@ -112,6 +124,14 @@ public class BILRasterReader extends AbstractDataRasterReader
             params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
         }
 
+        // Rectifying elevations in feet converts them to meters in place, which a read-only mapped buffer can't hold.
+        if (byteBuffer.isReadOnly() && AVKey.UNIT_FOOT.equalsIgnoreCase(params.getStringValue(AVKey.ELEVATION_UNIT)))
+        {
+            java.nio.ByteBuffer copy = java.nio.ByteBuffer.allocate(byteBuffer.remaining());
+            copy.put(byteBuffer.duplicate()).rewind();
+            byteBuffer = copy;
+        }
+
         ByteBufferRaster raster = new ByteBufferRaster(width, height, sector, byteBuffer, params);
         ElevationsUtil.rectify(raster);
         return new DataRaster[] { raster };
@@ -87,6 +87,27 @@ public class ByteBufferRaster extends BufferWrapperRaster
     }
 
     public static DataRaster createGeoreferencedRaster(AVList params)
+    {
+        validateGeoreferencedParams(params);
+
+        int width = (Integer) params.getValue(AVKey.WIDTH);
+        int height = (Integer) params.getValue(AVKey.HEIGHT);
+        Sector sector = (Sector) params.getValue(AVKey.SECTOR);
+
+        return new ByteBufferRaster(width, height, sector, params);
+    }
+
+    /**
+     * Validates the parameters of a georeferenced raster, and adds default values for the coordinate system,
+     * projection, pixel size, origin, date and version if they are not specified. Called by {@link
+     * #createGeoreferencedRaster(gov.nasa.worldwind.avlist.AVList)}, and by readers that create other kinds of
+     * georeferenced rasters from the same parameters.
+     *
+     * @param params the raster parameters.
+     *
+     * @throws IllegalArgumentException if the parameters are null, or a required parameter is missing or invalid.
+     */
+    public static void validateGeoreferencedParams(AVList params)
     {
         if (null == params)
         {
@@ -259,7 +280,5 @@ public class ByteBufferRaster extends BufferWrapperRaster
         {
             params.setValue(AVKey.VERSION, Version.getVersion());
         }
-
-        return new ByteBufferRaster(width, height, sector, params);
     }
 }
@@ -29,11 +29,35 @@ public class DTEDRasterReader extends AbstractDataRasterReader
     protected static final String[] dtedSuffixes = new String[]
         {"dt0", "dt1", "dt2"};
 
+    protected boolean mapFiles = true;
+
     public DTEDRasterReader()
     {
         super(dtedMimeTypes, dtedSuffixes);
     }
 
+    /**
+     * Indicates whether DTED files are memory-mapped rather than read onto the heap. Rasters read from mapped files
+     * decode elevations from the file as they are accessed, verify each data record's checksum on first access, and
+     * are read-only. See {@link DTED#map(java.io.File, gov.nasa.worldwind.avlist.AVList)}.
+     *
+     * @return true if files are memory-mapped, otherwise false. The default is true.
+     */
+    public boolean isMapFiles()
+    {
+        return this.mapFiles;
+    }
+
+    /**
+     * Specifies whether DTED files are memory-mapped rather than read onto the heap.
+     *
+     * @param mapFiles true to memory-map files, otherwise false.
+     */
+    public void setMapFiles(boolean mapFiles)
+    {
+        this.mapFiles = mapFiles;
+    }
+
     @Override
     protected boolean doCanRead(Object source, AVList params)
     {
@@ -92,7 +116,10 @@ public class DTEDRasterReader extends AbstractDataRasterReader
 
         // This may be the first time the file has been opened, so pass the metadata list to the read method
         // in order to update that list with the file's metadata.
-        DataRaster raster = DTED.read(file, params);
+        if (params == null)
+            params = new AVListImpl();
+
+        DataRaster raster = this.isMapFiles() ? DTED.map(file, params) : DTED.read(file, params);
         if (raster instanceof ByteBufferRaster)
             ElevationsUtil.rectify((ByteBufferRaster) raster);
 
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.Cacheable;
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.formats.tiff.GeotiffReader;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.*;
+
+import java.awt.*;
+import java.io.IOException;
+
+/**
+ * A data raster backed by one image of an open GeoTIFF file. The image's pixels are not held in memory: each time the
+ * raster is drawn, only the strips or tiles of the image that intersect the destination are read, using {@link
+ * GeotiffReader#readRegion(int, java.awt.Rectangle)}. This makes it possible to draw GeoTIFF images much larger than
+ * the heap, a piece at a time, as {@link TiledRasterProducer} does when it creates each tile of a pyramid.
+ * <p/>
+ * The raster owns its reader, and closes the file when it is disposed. The reader may be used by several threads at
+ * once.
+ *
+ * @version $Id$
+ */
+public class GeotiffDataRaster extends AbstractDataRaster implements Cacheable
+{
+    protected GeotiffReader reader;
+    protected int imageIndex;
+
+    /**
+     * Creates a raster backed by an image of a GeoTIFF file.
+     *
+     * @param reader     the reader of the file. The raster takes ownership of the reader.
+     * @param imageIndex the index of the image in the file.
+     * @param params     metadata to add to the image's metadata. May be null.
+     *
+     * @throws IllegalArgumentException if the reader is null, or the image does not have a sector.
+     * @throws IOException              if the image index is invalid.
+     */
+    public GeotiffDataRaster(GeotiffReader reader, int imageIndex, AVList params) throws IOException
+    {
+        super(reader != null ? reader.getWidth(imageIndex) : 0, reader != null ? reader.getHeight(imageIndex) : 0,
+            null, reader != null ? reader.copyMetadataTo(imageIndex, null) : null);
+
+        if (reader == null)
+        {
+            String message = Logging.getMessage("nullValue.ReaderIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (params != null)
+            this.setValues(params);
+
+        if (this.getSector() == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.reader = reader;
+        this.imageIndex = imageIndex;
+    }
+
+    public GeotiffReader getReader()
+    {
+        return this.reader;
+    }
+
+    public int getImageIndex()
+    {
+        return this.imageIndex;
+    }
+
+    public void drawOnTo(DataRaster canvas)
+    {
+        if (canvas == null)
+        {
+            String message = Logging.getMessage("nullValue.DestinationIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (canvas.getSector() == null || !this.getSector().intersects(canvas.getSector()))
+            return;
+
+        DataRaster region = null;
+        try
+        {
+            region = this.readRegion(canvas.getSector());
+            if (region != null)
+                region.drawOnTo(canvas);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("DataRaster.CannotRead", this.reader);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+        }
+        finally
+        {
+            if (region != null)
+                region.dispose();
+        }
+    }
+
+    @Override
+    public DataRaster getSubRaster(AVList params)
+    {
+        // copy parent raster keys/values; only those key/value will be copied that do exist in the parent raster
+        // AND does NOT exist in the requested raster
+        String[] keysToCopy = new String[] {
+            AVKey.DATA_TYPE, AVKey.MISSING_DATA_SIGNAL, AVKey.BYTE_ORDER, AVKey.PIXEL_FORMAT, AVKey.ELEVATION_UNIT
+        };
+        WWUtil.copyValues(this, params, keysToCopy, false);
+
+        return super.getSubRaster(params);
+    }
+
+    DataRaster doGetSubRaster(int roiWidth, int roiHeight, Sector roiSector, AVList roiParams)
+    {
+        DataRaster region = null;
+        try
+        {
+            region = this.readRegion(roiSector);
+            if (region == null)
+            {
+                String message = Logging.getMessage("generic.SectorRequestedOutsideCoverageArea", roiSector,
+                    this.getSector());
+                Logging.logger().severe(message);
+                throw new WWRuntimeException(message);
+            }
+
+            return region.getSubRaster(roiWidth, roiHeight, roiSector, roiParams);
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("DataRaster.CannotRead", this.reader);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            throw new WWRuntimeException(message, e);
+        }
+        finally
+        {
+            if (region != null)
+                region.dispose();
+        }
+    }
+
+    /**
+     * Reads the pixels of the image that cover a sector, plus a margin of one pixel on each side so that the pixels at
+     * the edges of the sector can be interpolated.
+     *
+     * @param sector the sector to read.
+     *
+     * @return a raster covering the sector, or null if the sector does not intersect the image.
+     *
+     * @throws IOException if the image cannot be read.
+     */
+    protected DataRaster readRegion(Sector sector) throws IOException
+    {
+        Rectangle region = this.reader.computeRegion(this.imageIndex, sector);
+        if (region == null)
+            return null;
+
+        region.grow(1, 1);
+        region = region.intersection(new Rectangle(0, 0, this.getWidth(), this.getHeight()));
+
+        return this.reader.readRegion(this.imageIndex, region);
+    }
+
+    public void dispose()
+    {
+        this.reader.dispose();
+    }
+
+    public long getSizeInBytes()
+    {
+        // The image's pixels are read when they are drawn, and are not held. Provide a non-zero length to make sure
+        // the raster is added to a memory cache.
+        return 2048L;
+    }
+
+    public String toString()
+    {
+        return "GeotiffDataRaster " + this.getValue(AVKey.FILE_NAME);
+    }
+}
@@ -5,6 +5,7 @@
  */
 package gov.nasa.worldwind.data;
 
+import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.formats.tiff.GeotiffReader;
 import gov.nasa.worldwind.formats.worldfile.WorldFile;
@@ -19,6 +20,7 @@ public class GeotiffRasterReader extends AbstractDataRasterReader
 {
     private static final String[] geotiffMimeTypes = {"image/tiff", "image/geotiff"};
     private static final String[] geotiffSuffixes = {"tif", "tiff", "gtif", "tif.zip", "tiff.zip", "tif.gz", "tiff.gz"};
+    private static final long DEFAULT_STREAMING_PIXEL_THRESHOLD = 64L * 1024L * 1024L; // 64 megapixels
 
     public GeotiffRasterReader()
     {
@@ -81,7 +83,16 @@ public class GeotiffRasterReader extends AbstractDataRasterReader
             reader = new GeotiffReader(path);
             reader.copyMetadataTo(metadata);
 
-            rasters = reader.readDataRaster();
+            if (this.isStreamingRead(reader, metadata))
+            {
+                // The raster reads the image's pixels as it is drawn, and owns the reader.
+                rasters = new DataRaster[] {new GeotiffDataRaster(reader, 0, null)};
+                reader = null;
+            }
+            else
+            {
+                rasters = reader.readDataRaster();
+            }
 
             if (null != rasters)
             {
@@ -102,6 +113,31 @@ public class GeotiffRasterReader extends AbstractDataRasterReader
         return rasters;
     }
 
+    /**
+     * Indicates whether a GeoTIFF file's first image is read as a {@link GeotiffDataRaster}, which reads the image's
+     * pixels as it is drawn, rather than read into memory. Geographic images with more pixels than the threshold
+     * specified by the configuration property AVKey.GEOTIFF_STREAMING_PIXEL_THRESHOLD are streamed.
+     *
+     * @param reader   the reader of the GeoTIFF file.
+     * @param metadata the metadata of the file's first image.
+     *
+     * @return true if the image is streamed, otherwise false.
+     *
+     * @throws java.io.IOException if the file's images cannot be read.
+     */
+    protected boolean isStreamingRead(GeotiffReader reader, AVList metadata) throws java.io.IOException
+    {
+        if (!AVKey.COORDINATE_SYSTEM_GEOGRAPHIC.equals(metadata.getValue(AVKey.COORDINATE_SYSTEM))
+            || !(metadata.getValue(AVKey.SECTOR) instanceof Sector))
+        {
+            return false;
+        }
+
+        long threshold = Configuration.getLongValue(AVKey.GEOTIFF_STREAMING_PIXEL_THRESHOLD,
+            DEFAULT_STREAMING_PIXEL_THRESHOLD);
+        return (long) reader.getWidth(0) * (long) reader.getHeight(0) > threshold;
+    }
+
     protected void doReadMetadata(Object source, AVList params) throws java.io.IOException
     {
         String path = WWIO.getSourcePath(source);
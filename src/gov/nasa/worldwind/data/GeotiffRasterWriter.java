@@ -26,7 +26,8 @@ public class GeotiffRasterWriter extends AbstractDataRasterWriter
 
     protected boolean doCanWrite(DataRaster raster, String formatSuffix, File file)
     {
-        return (raster != null) && (raster instanceof BufferedImageRaster || raster instanceof BufferWrapperRaster);
+        // GeotiffWriter reads rasters other than BufferedImageRaster and BufferWrapperRaster a band at a time.
+        return raster != null;
     }
 
     protected void doWrite(DataRaster raster, String formatSuffix, File file) throws IOException
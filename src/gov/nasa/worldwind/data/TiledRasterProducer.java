@@ -26,6 +26,7 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     private static final long DEFAULT_TILED_RASTER_PRODUCER_CACHE_SIZE = 300000000L; // ~300 megabytes
     private static final int DEFAULT_TILED_RASTER_PRODUCER_LARGE_DATASET_THRESHOLD = 3000; // 3000 pixels
     private static final int DEFAULT_WRITE_THREAD_POOL_SIZE = 2;
+    private static final int DEFAULT_IN_FLIGHT_RASTERS_PER_THREAD = 16;
     private static final int DEFAULT_TILE_WIDTH_AND_HEIGHT = 512;
     private static final int DEFAULT_SINGLE_LEVEL_TILE_WIDTH_AND_HEIGHT = 512;
     private static final double DEFAULT_LEVEL_ZERO_TILE_DELTA = 36d;
@@ -38,6 +39,10 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     private final java.util.concurrent.ExecutorService tileWriteService;
     private final java.util.concurrent.Semaphore tileWriteSemaphore;
     private final Object fileLock = new Object();
+    // Parallel pyramid construction state.
+    private final java.util.concurrent.atomic.AtomicInteger inFlightRasters =
+        new java.util.concurrent.atomic.AtomicInteger();
+    private int maxInFlightRasters;
     // Progress counters.
     private int tile;
     private int tileCount;
@@ -486,7 +491,7 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     {
         long cacheSize = Configuration.getLongValue(AVKey.TILED_RASTER_PRODUCER_CACHE_SIZE,
             DEFAULT_TILED_RASTER_PRODUCER_CACHE_SIZE);
-        return new BasicMemoryCache((long) (0.8 * cacheSize), cacheSize);
+        return WorldWind.createMemoryCache((long) (0.8 * cacheSize), cacheSize);
     }
 
     //**************************************************************//
@@ -503,6 +508,33 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         this.calculateTileCount(levelSet, params);
         this.startProgress();
 
+        java.util.List<Tile> topLevelTiles = this.createTopLevelTiles(levelSet);
+
+        // If the caller has asked for more than one production thread, then build independent sub-trees of the
+        // pyramid concurrently.
+        int parallelism = this.extractParallelism(params);
+        if (parallelism > 1)
+        {
+            this.installLevelSetInParallel(levelSet, topLevelTiles, params, parallelism);
+            return;
+        }
+
+        for (Tile tile : topLevelTiles)
+        {
+            // Exit if the caller has instructed us to stop production.
+            Thread.yield();
+            if (this.isStopped())
+                break;
+
+            DataRaster tileRaster = this.createTileRaster(levelSet, tile, params);
+            // Write the top-level tile raster to disk.
+            if (tileRaster != null)
+                this.installTileRasterLater(levelSet, tile, tileRaster, params);
+        }
+    }
+
+    protected java.util.List<Tile> createTopLevelTiles(LevelSet levelSet)
+    {
         Sector sector = levelSet.getSector();
         Level level = levelSet.getFirstLevel();
 
@@ -515,33 +547,22 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         int lastRow = Tile.computeRow(dLat, sector.getMaxLatitude(), latOrigin);
         int lastCol = Tile.computeColumn(dLon, sector.getMaxLongitude(), lonOrigin);
 
-        buildLoop:
+        java.util.List<Tile> tiles = new java.util.ArrayList<Tile>();
+        Angle p1 = Tile.computeRowLatitude(firstRow, dLat, latOrigin);
+        for (int row = firstRow; row <= lastRow; row++)
         {
-            Angle p1 = Tile.computeRowLatitude(firstRow, dLat, latOrigin);
-            for (int row = firstRow; row <= lastRow; row++)
+            Angle p2 = p1.add(dLat);
+            Angle t1 = Tile.computeColumnLongitude(firstCol, dLon, lonOrigin);
+            for (int col = firstCol; col <= lastCol; col++)
             {
-                Angle p2 = p1.add(dLat);
-                Angle t1 = Tile.computeColumnLongitude(firstCol, dLon, lonOrigin);
-                for (int col = firstCol; col <= lastCol; col++)
-                {
-                    // Exit if the caller has instructed us to stop production.
-                    Thread.yield();
-                    if (this.isStopped())
-                        break buildLoop;
-
-                    Angle t2 = t1.add(dLon);
-
-                    Tile tile = new Tile(new Sector(p1, p2, t1, t2), level, row, col);
-                    DataRaster tileRaster = this.createTileRaster(levelSet, tile, params);
-                    // Write the top-level tile raster to disk.
-                    if (tileRaster != null)
-                        this.installTileRasterLater(levelSet, tile, tileRaster, params);
-
-                    t1 = t2;
-                }
-                p1 = p2;
+                Angle t2 = t1.add(dLon);
+                tiles.add(new Tile(new Sector(p1, p2, t1, t2), level, row, col));
+                t1 = t2;
             }
+            p1 = p2;
         }
+
+        return tiles;
     }
 
     protected DataRaster createTileRaster(LevelSet levelSet, Tile tile, AVList params) throws java.io.IOException
@@ -563,7 +584,7 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
             tileRaster = this.drawDescendants(levelSet, tile, params);
         }
 
-        this.updateProgress();
+        this.tileRasterCreated(tileRaster);
 
         return tileRaster;
     }
@@ -588,10 +609,22 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
             // Create the tile raster to render into.
             tileRaster = this.createDataRaster(tile.getLevel().getTileWidth(), tile.getLevel().getTileHeight(),
                 tile.getSector(), params);
-            // Render each data source raster into the tile raster.
+            // Render each data source raster into the tile raster. Data source rasters are shared by tiles created
+            // concurrently, so their use is serialized. Cached data rasters serialize their own use.
             for (DataRaster raster : intersectingRasters)
             {
-                raster.drawOnTo(tileRaster);
+                if (raster instanceof CachedDataRaster)
+                {
+                    raster.drawOnTo(tileRaster);
+                }
+                else
+                {
+                    //noinspection SynchronizationOnLocalVariableOrMethodParameter
+                    synchronized (raster)
+                    {
+                        raster.drawOnTo(tileRaster);
+                    }
+                }
             }
         }
 
@@ -605,9 +638,6 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
 
     protected DataRaster drawDescendants(LevelSet levelSet, Tile tile, AVList params) throws java.io.IOException
     {
-        DataRaster tileRaster = null;
-        boolean hasDescendants = false;
-
         // Recursively create sub-tile rasters.
         Tile[] subTiles = this.createSubTiles(tile, levelSet.getLevel(tile.getLevelNumber() + 1));
         DataRaster[] subRasters = new DataRaster[subTiles.length];
@@ -616,17 +646,40 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
             // If the sub-tile does not intersect the level set, then skip that sub-tile.
             if (subTiles[index].getSector().intersects(levelSet.getSector()))
             {
-                // Recursively create the sub-tile raster.
-                DataRaster subRaster = this.createTileRaster(levelSet, subTiles[index], params);
-                // If creating the sub-tile raster fails, then skip that sub-tile.
-                if (subRaster != null)
-                {
-                    subRasters[index] = subRaster;
-                    hasDescendants = true;
-                }
+                // Recursively create the sub-tile raster. If creating the sub-tile raster fails, then the sub-tile is
+                // skipped.
+                subRasters[index] = this.createTileRaster(levelSet, subTiles[index], params);
             }
         }
 
+        return this.drawSubRasters(levelSet, tile, subTiles, subRasters, params);
+    }
+
+    /**
+     * Creates a tile's raster from the rasters of its four sub-tiles, then writes the sub-tile rasters to disk. Sub-tile
+     * rasters may be <code>null</code>, indicating that the sub-tile has no data.
+     *
+     * @param levelSet   the level set being installed.
+     * @param tile       the tile to create a raster for.
+     * @param subTiles   the tile's sub-tiles.
+     * @param subRasters the sub-tile rasters, in the same order as <code>subTiles</code>.
+     * @param params     the installation parameters.
+     *
+     * @return the tile's raster, or <code>null</code> if none of the sub-tiles has a raster, the tile's level is empty,
+     *         or production has been stopped.
+     */
+    protected DataRaster drawSubRasters(LevelSet levelSet, Tile tile, Tile[] subTiles, DataRaster[] subRasters,
+        AVList params)
+    {
+        DataRaster tileRaster = null;
+        boolean hasDescendants = false;
+
+        for (DataRaster subRaster : subRasters)
+        {
+            if (subRaster != null)
+                hasDescendants = true;
+        }
+
         // Exit if the caller has instructed us to stop production.
         if (this.isStopped())
             return null;
@@ -769,6 +822,232 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         return maxNumOfLevels;
     }
 
+    //**************************************************************//
+    //********************  Parallel Installation  *****************//
+    //**************************************************************//
+
+    /**
+     * Extracts the number of threads used to build the tile pyramid from the AVList if the AVList contains
+     * AVKey.TILED_RASTER_PRODUCER_PARALLELISM. The value may be an Integer, a numeric String, or "Auto" to use one thread
+     * per available processor. If the AVList does not contain the key, or its value is not recognized, this returns 1
+     * and the pyramid is built on the calling thread.
+     *
+     * @param params AVList that may contain AVKey.TILED_RASTER_PRODUCER_PARALLELISM property
+     *
+     * @return the number of threads used to build the tile pyramid, always 1 or greater.
+     */
+    protected int extractParallelism(AVList params)
+    {
+        if (null != params && params.hasKey(AVKey.TILED_RASTER_PRODUCER_PARALLELISM))
+        {
+            Object o = params.getValue(AVKey.TILED_RASTER_PRODUCER_PARALLELISM);
+            if (o instanceof String && "Auto".equalsIgnoreCase((String) o))
+                return Runtime.getRuntime().availableProcessors();
+
+            Integer parallelism = WWUtil.makeInteger(o != null ? o.toString() : null);
+            if (parallelism != null && parallelism > 1)
+                return parallelism;
+        }
+
+        return 1;
+    }
+
+    /**
+     * Extracts the number of tile rasters allowed in memory while the pyramid is built in parallel from the AVList if
+     * the AVList contains AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS. Otherwise this returns a default computed
+     * from <code>parallelism</code>.
+     *
+     * @param params      AVList that may contain AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS property
+     * @param parallelism the number of threads building the pyramid.
+     *
+     * @return the number of tile rasters allowed in memory.
+     */
+    protected int extractMaxInFlightRasters(AVList params, int parallelism)
+    {
+        if (null != params && params.hasKey(AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS))
+        {
+            Object o = params.getValue(AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS);
+            Integer max = WWUtil.makeInteger(o != null ? o.toString() : null);
+            if (max != null && max > 0)
+                return max;
+        }
+
+        return DEFAULT_IN_FLIGHT_RASTERS_PER_THREAD * parallelism;
+    }
+
+    /**
+     * Builds the tile pyramid on a fork/join pool of <code>parallelism</code> threads. Each top-level tile's sub-tree is
+     * built by a separate task, and a task building a tile above the final level forks its sub-tiles into separate
+     * tasks. A tile's raster is drawn from its sub-tile rasters once they are all complete, so the pyramid is built
+     * bottom-up exactly as it is when built on one thread.
+     * <p/>
+     * Sub-tiles are forked only while the number of tile rasters in memory is below the limit specified by
+     * AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS. Once the limit is reached, a task builds its sub-tree
+     * depth-first on its own thread, which holds at most three sibling rasters per level in memory.
+     *
+     * @param levelSet      the level set to install.
+     * @param topLevelTiles the level set's top-level tiles.
+     * @param params        the installation parameters.
+     * @param parallelism   the number of threads building the pyramid.
+     *
+     * @throws java.io.IOException if a tile raster cannot be created.
+     */
+    protected void installLevelSetInParallel(final LevelSet levelSet, java.util.List<Tile> topLevelTiles,
+        final AVList params, int parallelism) throws java.io.IOException
+    {
+        this.maxInFlightRasters = this.extractMaxInFlightRasters(params, parallelism);
+
+        final java.util.List<TileRasterTask> tasks = new java.util.ArrayList<TileRasterTask>();
+        for (Tile tile : topLevelTiles)
+        {
+            tasks.add(new TileRasterTask(levelSet, tile, params));
+        }
+
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(parallelism);
+        try
+        {
+            pool.invoke(new java.util.concurrent.RecursiveAction()
+            {
+                protected void compute()
+                {
+                    for (TileRasterTask task : tasks)
+                    {
+                        task.fork();
+                    }
+
+                    // Write each top-level tile raster to disk as its sub-tree completes.
+                    for (TileRasterTask task : tasks)
+                    {
+                        DataRaster tileRaster = task.join();
+                        if (tileRaster != null)
+                            installTileRasterLater(levelSet, task.tile, tileRaster, params);
+                    }
+                }
+            });
+        }
+        catch (TileRasterException e)
+        {
+            throw e.getCause();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Creates a tile raster on a fork/join pool thread. This is the concurrent counterpart of {@link
+     * #createTileRaster(gov.nasa.worldwind.util.LevelSet, gov.nasa.worldwind.util.Tile, gov.nasa.worldwind.avlist.AVList)}.
+     *
+     * @param levelSet the level set being installed.
+     * @param tile     the tile to create a raster for.
+     * @param params   the installation parameters.
+     *
+     * @return the tile's raster, or <code>null</code> if the tile has no data or production has been stopped.
+     *
+     * @throws java.io.IOException if a tile raster cannot be created.
+     */
+    protected DataRaster createTileRasterInParallel(LevelSet levelSet, Tile tile, AVList params)
+        throws java.io.IOException
+    {
+        // Exit if the caller has instructed us to stop production.
+        if (this.isStopped())
+            return null;
+
+        // Final level tiles are drawn from the data sources, and when too many rasters are in memory the sub-tree is
+        // built depth-first on this thread.
+        if (this.isFinalLevel(levelSet, tile.getLevelNumber(), params)
+            || this.inFlightRasters.get() >= this.maxInFlightRasters)
+        {
+            return this.createTileRaster(levelSet, tile, params);
+        }
+
+        Tile[] subTiles = this.createSubTiles(tile, levelSet.getLevel(tile.getLevelNumber() + 1));
+        TileRasterTask[] subTasks = new TileRasterTask[subTiles.length];
+        java.util.List<TileRasterTask> forkedTasks = new java.util.ArrayList<TileRasterTask>(subTiles.length);
+        for (int index = 0; index < subTiles.length; index++)
+        {
+            // If the sub-tile does not intersect the level set, then skip that sub-tile.
+            if (subTiles[index].getSector().intersects(levelSet.getSector()))
+            {
+                subTasks[index] = new TileRasterTask(levelSet, subTiles[index], params);
+                forkedTasks.add(subTasks[index]);
+            }
+        }
+
+        java.util.concurrent.ForkJoinTask.invokeAll(forkedTasks);
+
+        DataRaster[] subRasters = new DataRaster[subTiles.length];
+        for (int index = 0; index < subTiles.length; index++)
+        {
+            if (subTasks[index] != null)
+                subRasters[index] = subTasks[index].join();
+        }
+
+        DataRaster tileRaster = this.drawSubRasters(levelSet, tile, subTiles, subRasters, params);
+        this.tileRasterCreated(tileRaster);
+
+        return tileRaster;
+    }
+
+    /**
+     * Returns the number of tile rasters that have been created and not yet written to disk.
+     *
+     * @return the number of tile rasters in memory.
+     */
+    protected int getInFlightRasterCount()
+    {
+        return this.inFlightRasters.get();
+    }
+
+    protected void tileRasterCreated(DataRaster tileRaster)
+    {
+        if (tileRaster != null)
+            this.inFlightRasters.incrementAndGet();
+
+        this.updateProgress();
+    }
+
+    protected class TileRasterTask extends java.util.concurrent.RecursiveTask<DataRaster>
+    {
+        protected final LevelSet levelSet;
+        protected final Tile tile;
+        protected final AVList params;
+
+        public TileRasterTask(LevelSet levelSet, Tile tile, AVList params)
+        {
+            this.levelSet = levelSet;
+            this.tile = tile;
+            this.params = params;
+        }
+
+        protected DataRaster compute()
+        {
+            try
+            {
+                return createTileRasterInParallel(this.levelSet, this.tile, this.params);
+            }
+            catch (java.io.IOException e)
+            {
+                throw new TileRasterException(e);
+            }
+        }
+    }
+
+    /** Carries an IOException thrown by a {@link TileRasterTask} out of the fork/join pool. */
+    protected static class TileRasterException extends RuntimeException
+    {
+        public TileRasterException(java.io.IOException cause)
+        {
+            super(cause);
+        }
+
+        public java.io.IOException getCause()
+        {
+            return (java.io.IOException) super.getCause();
+        }
+    }
+
     //**************************************************************//
     //********************  Tile Installation  *********************//
     //**************************************************************//
@@ -818,6 +1097,10 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
                     String message = Logging.getMessage("generic.ExceptionWhileWriting", tile);
                     Logging.logger().log(java.util.logging.Level.SEVERE, message, t);
                 }
+                finally
+                {
+                    inFlightRasters.decrementAndGet();
+                }
             }
         });
     }
@@ -1225,13 +1508,13 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         }
     }
 
-    protected void startProgress()
+    protected synchronized void startProgress()
     {
         this.tile = 0;
         this.firePropertyChange(AVKey.PROGRESS, null, 0d);
     }
 
-    protected void updateProgress()
+    protected synchronized void updateProgress()
     {
         double oldProgress = this.tile / (double) this.tileCount;
         double newProgress = ++this.tile / (double) this.tileCount;
@@ -16,6 +16,7 @@ import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.WWIO;
 import gov.nasa.worldwind.util.WWMath;
+import gov.nasa.worldwind.util.WWUtil;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -32,15 +33,50 @@ import java.util.ArrayList;
 
 public class DDSDecompressor
 {
+    protected int threadCount = 1;
+
     public DDSDecompressor()
     {
 
     }
 
+    /**
+     * Returns the number of threads that decompress each image or mipmap level.
+     *
+     * @return the number of decompression threads.
+     */
+    public int getThreadCount()
+    {
+        return this.threadCount;
+    }
+
+    /**
+     * Specifies the number of threads that decompress each image or mipmap level. The default is 1, which decompresses
+     * images on the calling thread.
+     *
+     * @param threadCount the number of decompression threads.
+     *
+     * @throws IllegalArgumentException if <code>threadCount</code> is less than 1.
+     */
+    public void setThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "threadCount < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.threadCount = threadCount;
+    }
+
     /**
      * Reconstructs image raster from a DDS source. The source type may be one of the following: <ul><li>{@link java.net.URL}</li> <li>{@link
      * java.net.URI}</li> <li>{@link java.io.File}</li> <li>{@link String} containing a valid URL description, a valid
      * URI description, or a valid path to a local file.</li> </ul>
+     * <p/>
+     * If the parameters contain {@link AVKey#MIP_LEVEL}, only that mipmap level is decompressed and returned as a
+     * BufferedImageRaster. Level 0 is the full resolution image.
      *
      * @param source the source to convert to local file path.
      * @param params The AVList is a required parameter, Cannot be null. Requires AVK.Sector to be present.
@@ -124,11 +160,15 @@ public class DDSDecompressor
             int dxtFormat = pixelFormat.getFourCC();
             if (dxtFormat == DDSConstants.D3DFMT_DXT3)
             {
-                decompressor = new DXT3Decompressor();
+                DXT3Decompressor dxt3 = new DXT3Decompressor();
+                dxt3.setThreadCount(this.threadCount);
+                decompressor = dxt3;
             }
             else if (dxtFormat == DDSConstants.D3DFMT_DXT1)
             {
-                decompressor = new DXT1Decompressor();
+                DXT1Decompressor dxt1 = new DXT1Decompressor();
+                dxt1.setThreadCount(this.threadCount);
+                decompressor = dxt1;
             }
 
             if (null == decompressor)
@@ -141,7 +181,24 @@ public class DDSDecompressor
             Sector sector = (Sector) params.getValue(AVKey.SECTOR);
             params.setValue(AVKey.PIXEL_FORMAT, AVKey.IMAGE);
 
-            if (mipMapCount == 0)
+            if (params.hasKey(AVKey.MIP_LEVEL))
+            {
+                int level = this.getMipLevel(params, mipMapCount, width, height);
+
+                // Skip the larger levels; each level is a quarter the size of the previous level.
+                int mmLength = header.getLinearSize();
+                int mmOffset = DDSConstants.DDS_DATA_OFFSET;
+                for (int i = 0; i < level; i++)
+                {
+                    mmOffset += mmLength;
+                    mmLength /= 4;
+                }
+
+                buffer.position(mmOffset);
+                BufferedImage image = decompressor.decompress(buffer, width >> level, height >> level);
+                raster = new BufferedImageRaster(sector, image, params);
+            }
+            else if (mipMapCount == 0)
             {
                 // read max resolution raster
                 buffer.position(DDSConstants.DDS_DATA_OFFSET);
@@ -191,6 +248,37 @@ public class DDSDecompressor
         }
     }
 
+    /**
+     * Returns the mipmap level specified by {@link AVKey#MIP_LEVEL}, verifying that the DDS source contains that level
+     * and that the level is no smaller than one DXT block.
+     *
+     * @param params      the decompression parameters.
+     * @param mipMapCount the number of mipmap levels in the DDS source, or 0 if it contains only the full image.
+     * @param width       the width of the full resolution image.
+     * @param height      the height of the full resolution image.
+     *
+     * @return the requested mipmap level.
+     *
+     * @throws WWRuntimeException if the level is not an integer, is not present in the DDS source, or is smaller than
+     *                            one DXT block.
+     */
+    protected int getMipLevel(AVList params, int mipMapCount, int width, int height)
+    {
+        Object o = params.getValue(AVKey.MIP_LEVEL);
+        Integer level = (o instanceof Number) ? Integer.valueOf(((Number) o).intValue())
+            : WWUtil.convertStringToInteger(o != null ? o.toString() : null);
+
+        int maxLevel = Math.max(mipMapCount - 1, 0);
+        if (level == null || level < 0 || level > maxLevel || (width >> level) < 4 || (height >> level) < 4)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", AVKey.MIP_LEVEL + "=" + o);
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
+        }
+
+        return level;
+    }
+
     protected java.nio.MappedByteBuffer mapFile(FileChannel channel, long offset, long length) throws Exception
     {
         if (null == channel || !channel.isOpen())
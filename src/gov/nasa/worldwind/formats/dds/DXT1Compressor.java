@@ -67,11 +67,20 @@ public class DXT1Compressor implements DXTCompressor
             throw new IllegalArgumentException(message);
         }
 
+        ColorBlockExtractor colorBlockExtractor = this.getColorBlockExtractor(image);
+
+        // Images read through the basic color block extractor are compressed by the faster block encoder, which
+        // produces identical blocks.
+        if (colorBlockExtractor.getClass() == BasicColorBlockExtractor.class && DXTBlockEncoder.isSupported(attributes))
+        {
+            DXTBlockEncoder.encodeImage(this.getDXTFormat(), image, attributes, buffer);
+            return;
+        }
+
         // If it is determined that the image and block have no alpha component, then we compress with DXT1 using a
         // four color palette. Otherwise, we use the three color palette (with the fourth color as transparent black).
 
         ColorBlock4x4 colorBlock = new ColorBlock4x4();
-        ColorBlockExtractor colorBlockExtractor = this.getColorBlockExtractor(image);
 
         BlockDXT1 dxt1Block = new BlockDXT1();
         BlockDXT1Compressor dxt1Compressor = new BlockDXT1Compressor();
@@ -11,7 +11,6 @@ import gov.nasa.worldwind.util.Logging;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.logging.Level;
 
 /**
@@ -23,11 +22,43 @@ public class DXT1Decompressor implements DXTDecompressor
 {
     public static final int DXT1_BLOCK_SIZE = 4;
 
+    protected int threadCount = 1;
+
     public DXT1Decompressor()
     {
 
     }
 
+    /**
+     * Returns the number of threads that decompress each image.
+     *
+     * @return the number of decompression threads.
+     */
+    public int getThreadCount()
+    {
+        return this.threadCount;
+    }
+
+    /**
+     * Specifies the number of threads that decompress each image. Rows of blocks are divided into this many bands,
+     * which are decompressed concurrently. The default is 1, which decompresses images on the calling thread.
+     *
+     * @param threadCount the number of decompression threads.
+     *
+     * @throws IllegalArgumentException if <code>threadCount</code> is less than 1.
+     */
+    public void setThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "threadCount < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.threadCount = threadCount;
+    }
+
     public BufferedImage decompress(ByteBuffer buffer, int width, int height) throws IOException, IllegalArgumentException
     {
         if (null == buffer)
@@ -68,43 +99,7 @@ public class DXT1Decompressor implements DXTDecompressor
 
         try
         {
-            if (buffer.order() != ByteOrder.LITTLE_ENDIAN)
-            {
-                buffer.order(ByteOrder.LITTLE_ENDIAN);
-            }
-
-            int numTilesWide = width / DXT1_BLOCK_SIZE;
-            int numTilesHigh = height / DXT1_BLOCK_SIZE;
-
-            // 8 bit per color RGB packed in to an integer as r8g8b8
-            int[] pixels = new int[DXT1_BLOCK_SIZE * width];
-
-            BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-            for (int row = 0; row < numTilesHigh; row++)
-            {
-                for (int col = 0; col < numTilesWide; col++)
-                {
-                    short minColor = buffer.getShort();
-                    short maxColor = buffer.getShort();
-                    int colorIndexMask = buffer.getInt();
-
-                    Color24[] lookupTable = Color24.expandLookupTable(minColor, maxColor);
-
-                    for (int k = DXT1_BLOCK_SIZE * DXT1_BLOCK_SIZE - 1; k >= 0; k--)
-                    {
-                        int h = k / DXT1_BLOCK_SIZE, w = k % DXT1_BLOCK_SIZE;
-                        int pixelIndex = h * width + (col * DXT1_BLOCK_SIZE + w);
-
-                        int colorIndex = (colorIndexMask >>> k * 2) & 0x03;
-
-                        pixels[pixelIndex] = lookupTable[colorIndex].getPixel888();
-                    }
-                }
-
-                result.setRGB(0, row * DXT1_BLOCK_SIZE, width, DXT1_BLOCK_SIZE, pixels, 0, width);
-            }
-            return result;
+            return DXTBlockDecoder.decodeImage(DDSConstants.D3DFMT_DXT1, buffer, width, height, this.threadCount);
         }
         catch (Throwable t)
         {
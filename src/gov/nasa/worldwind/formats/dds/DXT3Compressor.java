@@ -67,9 +67,18 @@ public class DXT3Compressor implements DXTCompressor
             throw new IllegalArgumentException(message);
         }
 
-        ColorBlock4x4 colorBlock = new ColorBlock4x4();
         ColorBlockExtractor colorBlockExtractor = this.getColorBlockExtractor(image);
 
+        // Images read through the basic color block extractor are compressed by the faster block encoder, which
+        // produces identical blocks.
+        if (colorBlockExtractor.getClass() == BasicColorBlockExtractor.class && DXTBlockEncoder.isSupported(attributes))
+        {
+            DXTBlockEncoder.encodeImage(this.getDXTFormat(), image, attributes, buffer);
+            return;
+        }
+
+        ColorBlock4x4 colorBlock = new ColorBlock4x4();
+
         BlockDXT3 dxt3Block = new BlockDXT3();
         BlockDXT3Compressor dxt3Compressor = new BlockDXT3Compressor();
 
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.dds;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.awt.image.*;
+import java.nio.*;
+
+/**
+ * Decodes DXT1 and DXT3 blocks into the pixels of a <code>BufferedImage</code>. The decoded images are identical to
+ * those created by {@link DXT1Decompressor} and {@link DXT3Decompressor} before they used this decoder: DXT1 blocks are
+ * always expanded with a four color palette into a <code>TYPE_INT_RGB</code> image, and DXT3 blocks into a
+ * <code>TYPE_INT_ARGB_PRE</code> image whose colors are premultiplied by the block's alpha. Rather than converting each
+ * row of blocks through <code>BufferedImage.setRGB()</code>, the decoder writes pixels directly into the image's
+ * integer backing store, and can decode bands of block rows concurrently on the common fork/join pool.
+ *
+ * @version $Id$
+ */
+public class DXTBlockDecoder
+{
+    protected static final int BLOCK_SIZE = 4;
+
+    /**
+     * Premultiplied color components for each 4 bit DXT3 alpha value, indexed by <code>(alpha4 << 8) |
+     * component</code>. Computed with the color model of <code>TYPE_INT_ARGB_PRE</code> images, so that decoded pixels
+     * match those that <code>BufferedImage.setRGB()</code> stores.
+     */
+    protected static int[] premultipliedComponents;
+
+    /**
+     * Decodes an image of DXT1 or DXT3 blocks, starting at the buffer's position and advancing its position past the
+     * last block. The buffer is read in little endian byte order.
+     *
+     * @param dxtFormat   the DXT format of the blocks, either {@link DDSConstants#D3DFMT_DXT1} or {@link
+     *                    DDSConstants#D3DFMT_DXT3}.
+     * @param buffer      the buffer containing the blocks.
+     * @param width       the image width, a multiple of four.
+     * @param height      the image height, a multiple of four.
+     * @param threadCount the number of threads that decode the image. Rows of blocks are divided into this many
+     *                    bands.
+     *
+     * @return the decoded image.
+     *
+     * @throws IllegalArgumentException if the buffer is null, the format is not DXT1 or DXT3, the dimensions are
+     *                                  smaller than a block, or the buffer does not contain the image's blocks.
+     */
+    public static BufferedImage decodeImage(final int dxtFormat, ByteBuffer buffer, final int width, int height,
+        int threadCount)
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (width < BLOCK_SIZE || height < BLOCK_SIZE)
+        {
+            String message = Logging.getMessage("generic.InvalidImageSize", width, height);
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (dxtFormat != DDSConstants.D3DFMT_DXT1 && dxtFormat != DDSConstants.D3DFMT_DXT3)
+        {
+            String message = Logging.getMessage("generic.UnsupportedCodec", dxtFormat);
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        final int blockSize = (dxtFormat == DDSConstants.D3DFMT_DXT1) ? 8 : 16;
+        final int blocksAcross = width / BLOCK_SIZE;
+        int blockRows = height / BLOCK_SIZE;
+        int length = blocksAcross * blockRows * blockSize;
+        if (buffer.remaining() < length)
+        {
+            String message = Logging.getMessage("generic.LengthIsInvalid", buffer.remaining() + " < " + length);
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        // Decode from a little endian view of the blocks, leaving the caller's buffer order unchanged.
+        final ByteBuffer blocks = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(buffer.position() + length);
+
+        final BufferedImage image = new BufferedImage(width, height,
+            (dxtFormat == DDSConstants.D3DFMT_DXT1) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        int bands = Math.max(1, Math.min(threadCount, blockRows));
+        if (bands == 1)
+        {
+            decodeBlockRows(dxtFormat, blocks, blocksAcross, 0, blockRows - 1, pixels, width);
+        }
+        else
+        {
+            java.util.List<java.util.concurrent.RecursiveAction> tasks =
+                new java.util.ArrayList<java.util.concurrent.RecursiveAction>(bands);
+            for (int band = 0; band < bands; band++)
+            {
+                final int firstBlockRow = band * blockRows / bands;
+                final int lastBlockRow = (band + 1) * blockRows / bands - 1;
+                tasks.add(new java.util.concurrent.RecursiveAction()
+                {
+                    protected void compute()
+                    {
+                        decodeBlockRows(dxtFormat, blocks, blocksAcross, firstBlockRow, lastBlockRow, pixels, width);
+                    }
+                });
+            }
+
+            java.util.concurrent.ForkJoinTask.invokeAll(tasks);
+        }
+
+        return image;
+    }
+
+    /**
+     * Decodes a range of block rows into an image's pixels. Reads the blocks with absolute gets, so several threads
+     * may decode different rows from the same buffer.
+     *
+     * @param dxtFormat     the DXT format of the blocks.
+     * @param blocks        the image's blocks, in little endian byte order, starting at index 0.
+     * @param blocksAcross  the number of blocks in each row.
+     * @param firstBlockRow the first row of blocks to decode.
+     * @param lastBlockRow  the last row of blocks to decode, inclusive.
+     * @param pixels        the image's packed integer pixels.
+     * @param width         the image width, which is the scan length of <code>pixels</code>.
+     */
+    protected static void decodeBlockRows(int dxtFormat, ByteBuffer blocks, int blocksAcross, int firstBlockRow,
+        int lastBlockRow, int[] pixels, int width)
+    {
+        boolean dxt1 = (dxtFormat == DDSConstants.D3DFMT_DXT1);
+        int blockSize = dxt1 ? 8 : 16;
+        int[] premultiplied = dxt1 ? null : getPremultipliedComponents();
+        int[] palette = new int[4];
+
+        for (int row = firstBlockRow; row <= lastBlockRow; row++)
+        {
+            int pos = row * blocksAcross * blockSize;
+            int rowStart = row * BLOCK_SIZE * width;
+
+            for (int col = 0; col < blocksAcross; col++, pos += blockSize)
+            {
+                // A DXT3 block is an alpha block followed by a DXT1 color block.
+                long alphaData = dxt1 ? 0L : blocks.getLong(pos);
+                int colorPos = dxt1 ? pos : pos + 8;
+                expandPalette(blocks.getShort(colorPos), blocks.getShort(colorPos + 2), palette);
+                int colorIndexMask = blocks.getInt(colorPos + 4);
+
+                int blockStart = rowStart + col * BLOCK_SIZE;
+                for (int k = 0; k < 16; k++)
+                {
+                    int color = palette[(colorIndexMask >>> (k * 2)) & 0x03];
+                    int pixelIndex = blockStart + (k >> 2) * width + (k & 3);
+
+                    if (dxt1)
+                    {
+                        pixels[pixelIndex] = color;
+                    }
+                    else
+                    {
+                        int alpha4 = (int) (alphaData >>> (k * 4)) & 0xF;
+                        int offset = alpha4 << 8;
+                        pixels[pixelIndex] = (alpha4 << 28)
+                            | (premultiplied[offset | ((color >> 16) & 0xFF)] << 16)
+                            | (premultiplied[offset | ((color >> 8) & 0xFF)] << 8)
+                            | premultiplied[offset | (color & 0xFF)];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Expands two 565 colors into a four color palette of packed 888 RGB ints, as {@link
+     * Color24#expandLookupTable(short, short)} does.
+     *
+     * @param minColor the first 565 color.
+     * @param maxColor the second 565 color.
+     * @param palette  the array that receives the four palette colors.
+     */
+    protected static void expandPalette(short minColor, short maxColor, int[] palette)
+    {
+        int r0 = (minColor & 0xf800) >>> 8;
+        int g0 = (minColor & 0x07e0) >>> 3;
+        int b0 = (minColor & 0x001f) << 3;
+        int r1 = (maxColor & 0xf800) >>> 8;
+        int g1 = (maxColor & 0x07e0) >>> 3;
+        int b1 = (maxColor & 0x001f) << 3;
+
+        palette[0] = (r0 << 16) | (g0 << 8) | b0;
+        palette[1] = (r1 << 16) | (g1 << 8) | b1;
+        palette[2] = (((2 * r0 + r1 + 1) / 3) << 16) | (((2 * g0 + g1 + 1) / 3) << 8) | ((2 * b0 + b1 + 1) / 3);
+        palette[3] = (((r0 + 2 * r1 + 1) / 3) << 16) | (((g0 + 2 * g1 + 1) / 3) << 8) | ((b0 + 2 * b1 + 1) / 3);
+    }
+
+    protected static synchronized int[] getPremultipliedComponents()
+    {
+        if (premultipliedComponents == null)
+        {
+            ColorModel colorModel = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE).getColorModel();
+            int[] components = new int[16 * 256];
+            int[] pixel = new int[1];
+            for (int alpha4 = 0; alpha4 < 16; alpha4++)
+            {
+                for (int c = 0; c < 256; c++)
+                {
+                    colorModel.getDataElements((alpha4 << 28) | (c << 16), pixel);
+                    components[(alpha4 << 8) | c] = (pixel[0] >> 16) & 0xFF;
+                }
+            }
+
+            premultipliedComponents = components;
+        }
+
+        return premultipliedComponents;
+    }
+}
@@ -0,0 +1,676 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.dds;
+
+import gov.nasa.worldwind.util.Logging;
+
+/**
+ * Encodes rows of 4x4 pixel blocks into DXT1 or DXT3 blocks. This encoder produces exactly the same blocks as {@link
+ * BasicColorBlockExtractor}, {@link BlockDXT1Compressor} and {@link BlockDXT3Compressor}, but it keeps each block's
+ * colors in primitive arrays rather than in {@link Color32} instances, reads the pixels of a whole row of blocks at
+ * once, and writes each compressed block directly to its position in the output buffer. Rows of blocks are
+ * independent, so several encoders may compress different rows of the same image concurrently.
+ * <p/>
+ * This class is not thread safe. Each thread compressing blocks must use its own encoder.
+ *
+ * @version $Id$
+ */
+public class DXTBlockEncoder
+{
+    protected static final int COLOR_BLOCK_BBOX = 0;
+    protected static final int COLOR_BLOCK_EUCLIDEAN_DISTANCE = 1;
+    protected static final int COLOR_BLOCK_LUMINANCE_DISTANCE = 2;
+
+    protected static final int[] REMAINDER =
+        {
+            0, 0, 0, 0,
+            0, 1, 0, 1,
+            0, 1, 2, 0,
+            0, 1, 2, 3,
+        };
+
+    protected final int dxtFormat;
+    protected final int colorBlockMode;
+    protected final boolean premultiplyAlpha;
+    protected final boolean enableDXT1Alpha;
+    protected final int alphaThreshold;
+
+    // Per-block working storage, reused for each block to avoid generating garbage.
+    protected int[] pixels = new int[0];
+    protected final int[] a = new int[16];
+    protected final int[] r = new int[16];
+    protected final int[] g = new int[16];
+    protected final int[] b = new int[16];
+    protected final int[] palette = new int[12];
+    protected int minR, minG, minB;
+    protected int maxR, maxG, maxB;
+
+    /**
+     * Creates an encoder for the specified DXT format and compression attributes.
+     *
+     * @param dxtFormat  the DXT format to encode, either {@link DDSConstants#D3DFMT_DXT1} or {@link
+     *                   DDSConstants#D3DFMT_DXT3}.
+     * @param attributes the attributes that control the compression.
+     *
+     * @throws IllegalArgumentException if <code>attributes</code> is null, if the format is not DXT1 or DXT3, or if
+     *                                  the attributes specify an unknown color block compression type.
+     * @see #isSupported(DXTCompressionAttributes)
+     */
+    public DXTBlockEncoder(int dxtFormat, DXTCompressionAttributes attributes)
+    {
+        if (attributes == null)
+        {
+            String message = Logging.getMessage("nullValue.AttributesIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (dxtFormat != DDSConstants.D3DFMT_DXT1 && dxtFormat != DDSConstants.D3DFMT_DXT3)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "dxtFormat=" + dxtFormat);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!isSupported(attributes))
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange",
+                "colorBlockCompressionType=" + attributes.getColorBlockCompressionType());
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.dxtFormat = dxtFormat;
+        this.colorBlockMode = colorBlockMode(attributes);
+        this.premultiplyAlpha = attributes.isPremultiplyAlpha();
+        this.enableDXT1Alpha = attributes.isEnableDXT1Alpha();
+        this.alphaThreshold = attributes.getDXT1AlphaThreshold();
+    }
+
+    /**
+     * Indicates whether this encoder supports the specified compression attributes. It supports each of the color
+     * block compression types defined by {@link DXTCompressionAttributes}.
+     *
+     * @param attributes the attributes to test.
+     *
+     * @return true if blocks compressed with the attributes can be encoded, otherwise false.
+     */
+    public static boolean isSupported(DXTCompressionAttributes attributes)
+    {
+        return attributes != null && colorBlockMode(attributes) >= 0;
+    }
+
+    protected static int colorBlockMode(DXTCompressionAttributes attributes)
+    {
+        // Compare compression types by reference, as BlockDXT1Compressor does.
+        String type = attributes.getColorBlockCompressionType();
+        //noinspection StringEquality
+        if (type == DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_BBOX)
+            return COLOR_BLOCK_BBOX;
+        //noinspection StringEquality
+        if (type == DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE)
+            return COLOR_BLOCK_EUCLIDEAN_DISTANCE;
+        //noinspection StringEquality
+        if (type == DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_LUMINANCE_DISTANCE)
+            return COLOR_BLOCK_LUMINANCE_DISTANCE;
+
+        return -1;
+    }
+
+    /**
+     * Compresses an image into DXT1 or DXT3 blocks and writes them to a buffer, starting at the buffer's position and
+     * advancing its position past the last block. When the attributes specify more than one compression thread, the
+     * image's rows of blocks are divided into that many contiguous bands, which are compressed concurrently on the
+     * common fork/join pool. The output does not depend on the number of threads.
+     *
+     * @param dxtFormat  the DXT format to encode, either {@link DDSConstants#D3DFMT_DXT1} or {@link
+     *                   DDSConstants#D3DFMT_DXT3}.
+     * @param image      the image to compress.
+     * @param attributes the attributes that control the compression.
+     * @param buffer     the buffer that receives the compressed blocks.
+     *
+     * @throws IllegalArgumentException if any argument is null, or if the format or attributes are not supported.
+     */
+    public static void encodeImage(final int dxtFormat, final java.awt.image.BufferedImage image,
+        final DXTCompressionAttributes attributes, final java.nio.ByteBuffer buffer)
+    {
+        if (image == null)
+        {
+            String message = Logging.getMessage("nullValue.ImageIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        DXTBlockEncoder encoder = new DXTBlockEncoder(dxtFormat, attributes);
+        final int offset = buffer.position();
+        int blockRows = (image.getHeight() + 3) / 4;
+        int blocksAcross = (image.getWidth() + 3) / 4;
+        int bands = Math.max(1, Math.min(attributes.getCompressionThreadCount(), blockRows));
+
+        if (bands == 1)
+        {
+            encoder.encodeBlockRows(image, 0, blockRows - 1, buffer, offset);
+        }
+        else
+        {
+            java.util.List<java.util.concurrent.RecursiveAction> tasks =
+                new java.util.ArrayList<java.util.concurrent.RecursiveAction>(bands);
+            for (int band = 0; band < bands; band++)
+            {
+                final int firstBlockRow = band * blockRows / bands;
+                final int lastBlockRow = (band + 1) * blockRows / bands - 1;
+                tasks.add(new java.util.concurrent.RecursiveAction()
+                {
+                    protected void compute()
+                    {
+                        new DXTBlockEncoder(dxtFormat, attributes).encodeBlockRows(image, firstBlockRow,
+                            lastBlockRow, buffer, offset);
+                    }
+                });
+            }
+
+            java.util.concurrent.ForkJoinTask.invokeAll(tasks);
+        }
+
+        buffer.position(offset + blockRows * blocksAcross * encoder.getBlockSize());
+    }
+
+    /**
+     * Returns the size in bytes of one compressed block.
+     *
+     * @return 8 for DXT1 blocks, or 16 for DXT3 blocks.
+     */
+    public int getBlockSize()
+    {
+        return (this.dxtFormat == DDSConstants.D3DFMT_DXT1) ? 8 : 16;
+    }
+
+    /**
+     * Compresses a range of block rows of an image, writing each block to its position in the buffer. The buffer's
+     * position is not changed; block <code>(i, j)</code> of the image is written at <code>offset + (j * blocksAcross
+     * + i) * blockSize</code>.
+     *
+     * @param image         the image to compress.
+     * @param firstBlockRow the first row of blocks to compress.
+     * @param lastBlockRow  the last row of blocks to compress, inclusive.
+     * @param buffer        the buffer that receives the compressed blocks, in its current byte order.
+     * @param offset        the buffer index of the image's first block.
+     */
+    public void encodeBlockRows(java.awt.image.BufferedImage image, int firstBlockRow, int lastBlockRow,
+        java.nio.ByteBuffer buffer, int offset)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int blocksAcross = (width + 3) / 4;
+        int blockSize = this.getBlockSize();
+        boolean imageHasAlpha = image.getColorModel().hasAlpha();
+
+        if (this.pixels.length < 4 * width)
+            this.pixels = new int[4 * width];
+
+        for (int blockRow = firstBlockRow; blockRow <= lastBlockRow; blockRow++)
+        {
+            int y = 4 * blockRow;
+            int bh = Math.min(height - y, 4);
+            this.readPixels(image, y, width, bh);
+
+            int pos = offset + blockRow * blocksAcross * blockSize;
+            for (int x = 0; x < width; x += 4, pos += blockSize)
+            {
+                this.extractBlock(x, Math.min(width - x, 4), bh, width);
+
+                if (this.dxtFormat == DDSConstants.D3DFMT_DXT1)
+                {
+                    if (this.enableDXT1Alpha && imageHasAlpha && this.blockHasDXT1Alpha())
+                        this.putColorBlock(buffer, pos, this.encodeColorBlock3());
+                    else
+                        this.putColorBlock(buffer, pos, this.encodeColorBlock4());
+                }
+                else
+                {
+                    buffer.putLong(pos, this.encodeAlphaBlock());
+                    this.putColorBlock(buffer, pos + 8, this.encodeColorBlock4());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads rows of an image as packed, non-premultiplied 8888 ARGB ints, the format returned by
+     * <code>BufferedImage.getRGB()</code>. The pixels of integer ARGB and RGB images already have this format, so they
+     * are copied from the image's raster without color conversion.
+     *
+     * @param image  the image to read.
+     * @param y      the first row to read.
+     * @param width  the image width.
+     * @param height the number of rows to read.
+     */
+    protected void readPixels(java.awt.image.BufferedImage image, int y, int width, int height)
+    {
+        int type = image.getType();
+        if (type == java.awt.image.BufferedImage.TYPE_INT_ARGB || type == java.awt.image.BufferedImage.TYPE_INT_RGB)
+        {
+            image.getRaster().getDataElements(0, y, width, height, this.pixels);
+
+            if (type == java.awt.image.BufferedImage.TYPE_INT_RGB)
+            {
+                for (int i = 0; i < width * height; i++)
+                {
+                    this.pixels[i] |= 0xFF000000;
+                }
+            }
+        }
+        else
+        {
+            image.getRGB(0, y, width, height, this.pixels, 0, width);
+        }
+    }
+
+    protected void putColorBlock(java.nio.ByteBuffer buffer, int pos, long block)
+    {
+        buffer.putShort(pos, (short) block);
+        buffer.putShort(pos + 2, (short) (block >>> 16));
+        buffer.putInt(pos + 4, (int) (block >>> 32));
+    }
+
+    /**
+     * Copies the block at column <code>x</code> of the current row of pixels into the block's color arrays. Blocks
+     * that extend past the image repeat the pixels that are inside it, as {@link BasicColorBlockExtractor} does.
+     *
+     * @param x     the block's first column.
+     * @param bw    the number of the block's columns inside the image.
+     * @param bh    the number of the block's rows inside the image.
+     * @param width the image width, which is the scan length of the row of pixels.
+     */
+    protected void extractBlock(int x, int bw, int bh, int width)
+    {
+        int bxOffset = 4 * (bw - 1);
+        int byOffset = 4 * (bh - 1);
+
+        int i = 0;
+        for (int j = 0; j < 4; j++)
+        {
+            int rowStart = x + REMAINDER[byOffset + j] * width;
+            for (int k = 0; k < 4; k++, i++)
+            {
+                int argb = this.pixels[rowStart + REMAINDER[bxOffset + k]];
+                int alpha = 0xFF & (argb >> 24);
+                this.a[i] = alpha;
+
+                if (this.premultiplyAlpha)
+                {
+                    this.r[i] = div255((0xFF & (argb >> 16)) * alpha);
+                    this.g[i] = div255((0xFF & (argb >> 8)) * alpha);
+                    this.b[i] = div255((0xFF & argb) * alpha);
+                }
+                else
+                {
+                    this.r[i] = 0xFF & (argb >> 16);
+                    this.g[i] = 0xFF & (argb >> 8);
+                    this.b[i] = 0xFF & argb;
+                }
+            }
+        }
+    }
+
+    protected boolean blockHasDXT1Alpha()
+    {
+        for (int i = 0; i < 16; i++)
+        {
+            if (this.a[i] < this.alphaThreshold)
+                return true;
+        }
+
+        return false;
+    }
+
+    //**************************************************************//
+    //********************  Block Encoding  ************************//
+    //**************************************************************//
+
+    /**
+     * Encodes the current block as a four color DXT1 block.
+     *
+     * @return the block's first color in bits 0-15, its second color in bits 16-31, and its color indices in bits
+     *         32-63.
+     */
+    protected long encodeColorBlock4()
+    {
+        this.chooseMinMaxColors();
+        int color0 = short565(this.maxR, this.maxG, this.maxB);
+        int color1 = short565(this.minR, this.minG, this.minB);
+
+        if (color0 < color1)
+        {
+            int tmp = color0;
+            color0 = color1;
+            color1 = tmp;
+        }
+
+        this.computeColorPalette4(color0, color1);
+        long indices = this.computePaletteIndices4();
+
+        return color0 | ((long) color1 << 16) | (indices << 32);
+    }
+
+    /**
+     * Encodes the current block as a three color DXT1 block, with transparent black as the fourth color.
+     *
+     * @return the block's first color in bits 0-15, its second color in bits 16-31, and its color indices in bits
+     *         32-63.
+     */
+    protected long encodeColorBlock3()
+    {
+        this.chooseMinMaxColors();
+        int color0 = short565(this.maxR, this.maxG, this.maxB);
+        int color1 = short565(this.minR, this.minG, this.minB);
+
+        if (color0 < color1)
+        {
+            int tmp = color0;
+            color0 = color1;
+            color1 = tmp;
+        }
+
+        // To get a three color palette with alpha, the first color must be less than the second color.
+        this.computeColorPalette3(color1, color0);
+        long indices = this.computePaletteIndices3();
+
+        return color1 | ((long) color0 << 16) | (indices << 32);
+    }
+
+    protected long encodeAlphaBlock()
+    {
+        long bitmask = 0L;
+        for (int i = 0; i < 8; i++)
+        {
+            int a0 = 0xF & BlockDXT3Compressor.alpha4FromAlpha8(this.a[2 * i]);
+            int a1 = 0xF & BlockDXT3Compressor.alpha4FromAlpha8(this.a[2 * i + 1]);
+            long mask10 = (a1 << 4) | a0;
+            bitmask |= (mask10 << (8 * i));
+        }
+
+        return bitmask;
+    }
+
+    protected void chooseMinMaxColors()
+    {
+        if (this.colorBlockMode == COLOR_BLOCK_BBOX)
+        {
+            this.findMinMaxColorsBox();
+            this.selectDiagonal();
+            this.insetBox();
+        }
+        else if (this.colorBlockMode == COLOR_BLOCK_EUCLIDEAN_DISTANCE)
+        {
+            this.findMinMaxColorsEuclideanDistance();
+        }
+        else
+        {
+            this.findMinMaxColorsLuminanceDistance();
+        }
+    }
+
+    protected void findMinMaxColorsBox()
+    {
+        int minR = 255, minG = 255, minB = 255;
+        int maxR = 0, maxG = 0, maxB = 0;
+
+        for (int i = 0; i < 16; i++)
+        {
+            minR = Math.min(minR, this.r[i]);
+            minG = Math.min(minG, this.g[i]);
+            minB = Math.min(minB, this.b[i]);
+            maxR = Math.max(maxR, this.r[i]);
+            maxG = Math.max(maxG, this.g[i]);
+            maxB = Math.max(maxB, this.b[i]);
+        }
+
+        this.minR = minR;
+        this.minG = minG;
+        this.minB = minB;
+        this.maxR = maxR;
+        this.maxG = maxG;
+        this.maxB = maxB;
+    }
+
+    protected void selectDiagonal()
+    {
+        int centerR = (this.minR + this.maxR) / 2;
+        int centerG = (this.minG + this.maxG) / 2;
+        int centerB = (this.minB + this.maxB) / 2;
+
+        int cvx = 0;
+        int cvy = 0;
+        for (int i = 0; i < 16; i++)
+        {
+            int tz = this.b[i] - centerB;
+            cvx += (this.r[i] - centerR) * tz;
+            cvy += (this.g[i] - centerG) * tz;
+        }
+
+        if (cvx < 0)
+        {
+            int tmp = this.minR;
+            this.minR = this.maxR;
+            this.maxR = tmp;
+        }
+
+        if (cvy < 0)
+        {
+            int tmp = this.minG;
+            this.minG = this.maxG;
+            this.maxG = tmp;
+        }
+    }
+
+    protected void insetBox()
+    {
+        int insetR = (this.maxR - this.minR) >> 4;
+        int insetG = (this.maxG - this.minG) >> 4;
+        int insetB = (this.maxB - this.minB) >> 4;
+
+        this.minR = (this.minR + insetR < 255) ? (this.minR + insetR) : 255;
+        this.minG = (this.minG + insetG < 255) ? (this.minG + insetG) : 255;
+        this.minB = (this.minB + insetB < 255) ? (this.minB + insetB) : 255;
+
+        this.maxR = (this.maxR > insetR) ? (this.maxR - insetR) : 0;
+        this.maxG = (this.maxG > insetG) ? (this.maxG - insetG) : 0;
+        this.maxB = (this.maxB > insetB) ? (this.maxB - insetB) : 0;
+    }
+
+    protected void findMinMaxColorsEuclideanDistance()
+    {
+        int maxDistance = -1;
+        int minIndex = 0;
+        int maxIndex = 0;
+
+        for (int i = 0; i < 15; i++)
+        {
+            for (int j = i + 1; j < 16; j++)
+            {
+                int dr = this.r[i] - this.r[j];
+                int dg = this.g[i] - this.g[j];
+                int db = this.b[i] - this.b[j];
+                int d = dr * dr + dg * dg + db * db;
+                if (d > maxDistance)
+                {
+                    minIndex = i;
+                    maxIndex = j;
+                    maxDistance = d;
+                }
+            }
+        }
+
+        this.setMinMaxColors(minIndex, maxIndex);
+    }
+
+    protected void findMinMaxColorsLuminanceDistance()
+    {
+        int minLuminance = Integer.MAX_VALUE;
+        int maxLuminance = -1;
+        int minIndex = 0;
+        int maxIndex = 0;
+
+        for (int i = 0; i < 16; i++)
+        {
+            int luminance = this.r[i] + this.g[i] + 2 * this.b[i];
+            if (luminance < minLuminance)
+            {
+                minIndex = i;
+                minLuminance = luminance;
+            }
+            if (luminance > maxLuminance)
+            {
+                maxIndex = i;
+                maxLuminance = luminance;
+            }
+        }
+
+        this.setMinMaxColors(minIndex, maxIndex);
+    }
+
+    protected void setMinMaxColors(int minIndex, int maxIndex)
+    {
+        this.minR = this.r[minIndex];
+        this.minG = this.g[minIndex];
+        this.minB = this.b[minIndex];
+        this.maxR = this.r[maxIndex];
+        this.maxG = this.g[maxIndex];
+        this.maxB = this.b[maxIndex];
+    }
+
+    //**************************************************************//
+    //********************  Color Block Palette Assembly  **********//
+    //**************************************************************//
+
+    protected void computeColorPalette3(int color0, int color1)
+    {
+        short565ToRGB(color0, this.palette, 0);
+        short565ToRGB(color1, this.palette, 3);
+
+        this.palette[6] = (this.palette[0] + this.palette[3]) / 2;
+        this.palette[7] = (this.palette[1] + this.palette[4]) / 2;
+        this.palette[8] = (this.palette[2] + this.palette[5]) / 2;
+
+        this.palette[9] = 0;
+        this.palette[10] = 0;
+        this.palette[11] = 0;
+    }
+
+    protected void computeColorPalette4(int color0, int color1)
+    {
+        short565ToRGB(color0, this.palette, 0);
+        short565ToRGB(color1, this.palette, 3);
+
+        this.palette[6] = (2 * this.palette[0] + this.palette[3]) / 3;
+        this.palette[7] = (2 * this.palette[1] + this.palette[4]) / 3;
+        this.palette[8] = (2 * this.palette[2] + this.palette[5]) / 3;
+
+        this.palette[9] = (this.palette[0] + 2 * this.palette[3]) / 3;
+        this.palette[10] = (this.palette[1] + 2 * this.palette[4]) / 3;
+        this.palette[11] = (this.palette[2] + 2 * this.palette[5]) / 3;
+    }
+
+    protected long computePaletteIndices3()
+    {
+        long mask = 0L;
+        long index;
+
+        for (int i = 0; i < 16; i++)
+        {
+            int d0 = this.paletteDistanceSquared(0, i);
+            int d1 = this.paletteDistanceSquared(3, i);
+            int d2 = this.paletteDistanceSquared(6, i);
+
+            if (this.a[i] < this.alphaThreshold)
+                index = 3;
+            else if (d0 < d1 && d0 < d2)
+                index = 0;
+            else if (d1 < d2)
+                index = 1;
+            else
+                index = 2;
+
+            mask |= (index << (i << 1));
+        }
+
+        return mask;
+    }
+
+    protected long computePaletteIndices4()
+    {
+        long mask = 0L;
+
+        for (int i = 0; i < 16; i++)
+        {
+            int d0 = this.paletteDistanceSquared(0, i);
+            int d1 = this.paletteDistanceSquared(3, i);
+            int d2 = this.paletteDistanceSquared(6, i);
+            int d3 = this.paletteDistanceSquared(9, i);
+
+            int b0 = (d3 - d0) >>> 31;
+            int b1 = (d2 - d1) >>> 31;
+            int b2 = (d2 - d0) >>> 31;
+            int b3 = (d3 - d1) >>> 31;
+            int b4 = (d3 - d2) >>> 31;
+
+            int x0 = b1 & b2;
+            int x1 = b0 & b3;
+            int x2 = b0 & b4;
+
+            long index = (x2 | ((x0 | x1) << 1));
+            mask |= (index << (i << 1));
+        }
+
+        return mask;
+    }
+
+    protected int paletteDistanceSquared(int paletteIndex, int colorIndex)
+    {
+        int dr = this.palette[paletteIndex] - this.r[colorIndex];
+        int dg = this.palette[paletteIndex + 1] - this.g[colorIndex];
+        int db = this.palette[paletteIndex + 2] - this.b[colorIndex];
+        return dr * dr + dg * dg + db * db;
+    }
+
+    //**************************************************************//
+    //********************  Color Arithmetic  **********************//
+    //**************************************************************//
+
+    protected static int short565(int r, int g, int b)
+    {
+        return (mul8bit(r, 31) << 11) + (mul8bit(g, 63) << 5) + (mul8bit(b, 31));
+    }
+
+    protected static void short565ToRGB(int color16, int[] rgb, int offset)
+    {
+        int r = (color16 & 0xf800) >> 11;
+        int g = (color16 & 0x07e0) >> 5;
+        int b = (color16 & 0x001f);
+
+        rgb[offset] = (r << 3) | (r >> 2);
+        rgb[offset + 1] = (g << 2) | (g >> 4);
+        rgb[offset + 2] = (b << 3) | (b >> 2);
+    }
+
+    private static int mul8bit(int a, int b)
+    {
+        int t = a * b + 128;
+        return (t + (t >> 8)) >> 8;
+    }
+
+    private static int div255(int a)
+    {
+        return (a + (a >> 8) + 128) >> 8;
+    }
+}
@@ -5,6 +5,8 @@
  */
 package gov.nasa.worldwind.formats.dds;
 
+import gov.nasa.worldwind.util.Logging;
+
 /**
  * @author dcollins
  * @version $Id: DXTCompressionAttributes.java 1171 2013-02-11 21:45:02Z dcollins $
@@ -21,6 +23,7 @@ public class DXTCompressionAttributes
     private boolean enableDXT1Alpha;
     private int dxt1AlphaThreshold;
     private String colorBlockCompressionType;
+    private int compressionThreadCount;
 
     protected static final int DEFAULT_DXT1_TRANSPARENCY_THRESHOLD = 128;
 
@@ -32,6 +35,7 @@ public class DXTCompressionAttributes
         this.enableDXT1Alpha = false;
         this.dxt1AlphaThreshold = DEFAULT_DXT1_TRANSPARENCY_THRESHOLD;
         this.colorBlockCompressionType = COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE;
+        this.compressionThreadCount = 1;
     }
 
     public boolean isBuildMipmaps()
@@ -93,4 +97,36 @@ public class DXTCompressionAttributes
     {
         this.colorBlockCompressionType = compressionType;
     }
+
+    /**
+     * Returns the number of threads that compress each image. See {@link #setCompressionThreadCount(int)}.
+     *
+     * @return the number of compression threads.
+     */
+    public int getCompressionThreadCount()
+    {
+        return this.compressionThreadCount;
+    }
+
+    /**
+     * Specifies the number of threads that compress each image. Images are divided into bands of 4x4 blocks, which are
+     * compressed concurrently. The compressed output does not depend on the number of threads. The default is 1, which
+     * compresses images on the calling thread. Use a larger count when a few large images are compressed at a time,
+     * rather than many small images on many threads.
+     *
+     * @param threadCount the number of compression threads.
+     *
+     * @throws IllegalArgumentException if <code>threadCount</code> is less than 1.
+     */
+    public void setCompressionThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "threadCount < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.compressionThreadCount = threadCount;
+    }
 }
@@ -134,6 +134,63 @@ public class DTED
         return raster;
     }
 
+    /**
+     * Reads a DTED file's metadata and memory-maps its data records, returning a raster that decodes elevations
+     * directly from the mapped file as they are accessed. Unlike {@link #read(java.io.File,
+     * gov.nasa.worldwind.avlist.AVList)}, this does not read or verify the data records up front: each record's
+     * checksum is verified the first time one of its elevations is accessed. The returned raster is read-only, and
+     * does not specify the metadata values <code>AVKey.ELEVATION_MIN</code> and <code>AVKey.ELEVATION_MAX</code>; use
+     * {@link BufferWrapperRaster#getExtremes()} to compute them.
+     *
+     * @param file     the DTED file.
+     * @param metadata the list that receives the file's metadata.
+     *
+     * @return a raster backed by a {@link DTEDElevationBuffer}.
+     *
+     * @throws IOException if the file cannot be read, is not a DTED file, or is too short to contain its data
+     *                     records.
+     */
+    public static DataRaster map(File file, AVList metadata) throws IOException
+    {
+        RandomAccessFile sourceFile = null;
+
+        try
+        {
+            sourceFile = open(file);
+
+            FileChannel channel = sourceFile.getChannel();
+
+            readUHL(channel, DTED_UHL_OFFSET, metadata);
+            readDSI(channel, DTED_DSI_OFFSET, metadata);
+            readACC(channel, DTED_ACC_OFFSET, metadata);
+
+            int width = (Integer) metadata.getValue(AVKey.WIDTH);
+            int height = (Integer) metadata.getValue(AVKey.HEIGHT);
+
+            long length = (long) width * computeRecordSize(height);
+            if (channel.size() < DTED_DATA_OFFSET + length)
+            {
+                String reason = channel.size() + " < " + (DTED_DATA_OFFSET + length);
+                String message = Logging.getMessage("generic.LengthIsInvalid", reason);
+                Logging.logger().severe(message);
+                throw new IOException(message);
+            }
+
+            // The mapping remains valid after the file is closed.
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, DTED_DATA_OFFSET, length);
+
+            // Complete the raster's metadata the same way as the heap raster created by read().
+            ByteBufferRaster.validateGeoreferencedParams(metadata);
+
+            return new BufferWrapperRaster(width, height, (Sector) metadata.getValue(AVKey.SECTOR),
+                new DTEDElevationBuffer(records, width, height), metadata);
+        }
+        finally
+        {
+            close(sourceFile);
+        }
+    }
+
     protected static DataRaster readElevations(FileChannel theChannel, long offset, AVList metadata) throws IOException
     {
         if (null == theChannel)
@@ -146,7 +203,7 @@ public class DTED
         int width = (Integer) metadata.getValue(AVKey.WIDTH);
         int height = (Integer) metadata.getValue(AVKey.HEIGHT);
 
-        int recordSize = REC_HEADER_SIZE + height * Short.SIZE / Byte.SIZE + REC_CHKSUM_SIZE;
+        int recordSize = computeRecordSize(height);
 
         double min = +Double.MAX_VALUE;
         double max = -Double.MAX_VALUE;
@@ -157,31 +214,21 @@ public class DTED
             theChannel.read(bb);
             bb.flip();
 
-            int dataChkSum = 0;
-            for (int i = 0; i < recordSize - REC_CHKSUM_SIZE;
-                i++) // include header and elevations, exclude checksum itself
-            {
-                dataChkSum += 0xFF & bb.get(i);
-            }
+            // include header and elevations, exclude checksum itself
+            int dataChkSum = computeChecksum(bb, 0, recordSize - REC_CHKSUM_SIZE);
 
             ShortBuffer data = bb.asShortBuffer();
             for (int i = 0; i < height; i++)
             {
-                double elev = (double) data.get(i + 4); // skip 4 shorts of header
+                double elev = decodeElevation(data.get(i + 4)); // skip 4 shorts of header
                 int y = height - i - 1;
 
-                if (elev != DTED_NODATA_VALUE && elev >= DTED_MIN_VALUE && elev <= DTED_MAX_VALUE)
+                raster.setDoubleAtPosition(y, x, elev);
+                if (elev != DTED_NODATA_VALUE)
                 {
-                    raster.setDoubleAtPosition(y, x, elev);
                     min = (elev < min) ? elev : min;
                     max = (elev > max) ? elev : max;
                 }
-                else
-                {
-                    // Interpret null DTED values and values outside the practical range of [-12000,+9000] as missing
-                    // data. See MIL-PRF-89020B sections 3.11.2 and 3.11.3.
-                    raster.setDoubleAtPosition(y, x, DTED_NODATA_VALUE);
-                }
             }
 
             short hi = data.get(height + REC_CHKSUM_SIZE);
@@ -203,6 +250,50 @@ public class DTED
         return raster;
     }
 
+    /**
+     * Decodes a DTED elevation. DTED elevations are signed-magnitude 16 bit integers: the high bit is the sign and the
+     * remaining 15 bits are the magnitude. Null DTED values and values outside the practical range of [-12000,+9000]
+     * are interpreted as missing data, and returned as the DTED missing data value. See MIL-PRF-89020B sections 3.11.2
+     * and 3.11.3.
+     *
+     * @param encoded the encoded elevation.
+     *
+     * @return the elevation in meters, or -32767 if the elevation is missing.
+     */
+    public static int decodeElevation(short encoded)
+    {
+        int elev = ((encoded & 0x8000) != 0) ? -(encoded & 0x7FFF) : encoded;
+        if (elev < DTED_MIN_VALUE || elev > DTED_MAX_VALUE)
+            return DTED_NODATA_VALUE;
+
+        return elev;
+    }
+
+    protected static int computeRecordSize(int height)
+    {
+        return REC_HEADER_SIZE + height * Short.SIZE / Byte.SIZE + REC_CHKSUM_SIZE;
+    }
+
+    /**
+     * Computes a data record checksum: the sum of the record's bytes, treated as unsigned values.
+     *
+     * @param buffer   the buffer containing the record.
+     * @param position the byte position of the record's first byte.
+     * @param length   the number of bytes to sum, excluding the checksum itself.
+     *
+     * @return the checksum.
+     */
+    protected static int computeChecksum(ByteBuffer buffer, int position, int length)
+    {
+        int chkSum = 0;
+        for (int i = position; i < position + length; i++)
+        {
+            chkSum += 0xFF & buffer.get(i);
+        }
+
+        return chkSum;
+    }
+
     protected static Angle readAngle(String angle) throws IOException
     {
         if (null == angle)
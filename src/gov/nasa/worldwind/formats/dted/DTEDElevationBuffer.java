@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.dted;
+
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.util.*;
+
+import javax.media.opengl.GL;
+import java.nio.*;
+
+/**
+ * A read-only {@link BufferWrapper} that presents the elevations of a DTED file in raster order, decoding them directly
+ * from the file's data records. DTED stores elevations as columns of signed-magnitude 16 bit integers running from
+ * south to north, each column in a data record with its own checksum. This buffer maps raster index <code>x + y *
+ * width</code> to the elevation at column <code>x</code>, row <code>height - y - 1</code>, so its rows run from north
+ * to south as World Wind rasters expect.
+ * <p/>
+ * Elevations are decoded on each access: null elevations and elevations outside the practical range of [-12000,+9000]
+ * meters are returned as the DTED missing data value, -32767. Each data record's checksum is verified the first time
+ * one of its elevations is accessed, and a {@link WWRuntimeException} is thrown if the checksum does not match.
+ * <p/>
+ * The buffer is typically backed by a memory-mapped file, in which case elevations are never copied onto the heap.
+ * Methods that modify the buffer throw <code>UnsupportedOperationException</code>; use {@link #copyOf(int)} to obtain a
+ * writable copy.
+ *
+ * @version $Id$
+ */
+public class DTEDElevationBuffer extends BufferWrapper
+{
+    protected final ByteBuffer records;
+    protected final int width;
+    protected final int height;
+    protected final int recordSize;
+    /** Indicates which data records have had their checksums verified. */
+    protected final boolean[] verified;
+
+    /**
+     * Creates a buffer that decodes elevations from the specified DTED data records.
+     *
+     * @param records the DTED data records, starting with the first record at index 0.
+     * @param width   the number of data records, which is the raster width.
+     * @param height  the number of elevations in each data record, which is the raster height.
+     *
+     * @throws IllegalArgumentException if the records buffer is null, either dimension is less than 1, or the buffer
+     *                                  is smaller than the data records.
+     */
+    public DTEDElevationBuffer(ByteBuffer records, int width, int height)
+    {
+        if (records == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (width < 1 || height < 1)
+        {
+            String message = Logging.getMessage("generic.InvalidImageSize", width, height);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int recordSize = DTED.computeRecordSize(height);
+        if (records.capacity() < (long) width * recordSize)
+        {
+            String message = Logging.getMessage("generic.LengthIsInvalid", records.capacity());
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.records = records.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.width = width;
+        this.height = height;
+        this.recordSize = recordSize;
+        this.verified = new boolean[width];
+    }
+
+    public int length()
+    {
+        return this.width * this.height;
+    }
+
+    public int getGLDataType()
+    {
+        return GL.GL_SHORT;
+    }
+
+    public long getSizeInBytes()
+    {
+        return WWBufferUtil.SIZEOF_SHORT * (long) this.length();
+    }
+
+    public byte getByte(int index)
+    {
+        return (byte) this.getShort(index);
+    }
+
+    public short getShort(int index)
+    {
+        int x = index % this.width;
+        int y = index / this.width;
+
+        return this.getElevation(this.verifyRecord(x) + DTED.REC_HEADER_SIZE + 2 * (this.height - y - 1));
+    }
+
+    public int getInt(int index)
+    {
+        return this.getShort(index);
+    }
+
+    public float getFloat(int index)
+    {
+        return this.getShort(index);
+    }
+
+    public double getDouble(int index)
+    {
+        return this.getShort(index);
+    }
+
+    public void getByte(int index, byte[] array, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            array[offset + i] = (byte) this.getShort(index + i);
+        }
+    }
+
+    public void getShort(int index, short[] array, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            array[offset + i] = this.getShort(index + i);
+        }
+    }
+
+    public void getInt(int index, int[] array, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            array[offset + i] = this.getShort(index + i);
+        }
+    }
+
+    public void getFloat(int index, float[] array, int offset, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            array[offset + i] = this.getShort(index + i);
+        }
+    }
+
+    public void getDouble(int index, double[] array, int offset, int length)
+    {
+        // Consecutive elevations in a raster row come from consecutive data records, at the same offset within each
+        // record. Step from record to record until the run crosses into the next raster row.
+        int i = 0;
+        while (i < length)
+        {
+            int x = (index + i) % this.width;
+            int y = (index + i) / this.width;
+            int rowOffset = DTED.REC_HEADER_SIZE + 2 * (this.height - y - 1);
+
+            for (; x < this.width && i < length; x++, i++)
+            {
+                array[offset + i] = this.getElevation(this.verifyRecord(x) + rowOffset);
+            }
+        }
+    }
+
+    public void putByte(int index, byte value)
+    {
+        throw this.createReadOnlyException("putByte");
+    }
+
+    public void putShort(int index, short value)
+    {
+        throw this.createReadOnlyException("putShort");
+    }
+
+    public void putInt(int index, int value)
+    {
+        throw this.createReadOnlyException("putInt");
+    }
+
+    public void putFloat(int index, float value)
+    {
+        throw this.createReadOnlyException("putFloat");
+    }
+
+    public void putDouble(int index, double value)
+    {
+        throw this.createReadOnlyException("putDouble");
+    }
+
+    public void putByte(int index, byte[] array, int offset, int length)
+    {
+        throw this.createReadOnlyException("putByte");
+    }
+
+    public void putShort(int index, short[] array, int offset, int length)
+    {
+        throw this.createReadOnlyException("putShort");
+    }
+
+    public void putInt(int index, int[] array, int offset, int length)
+    {
+        throw this.createReadOnlyException("putInt");
+    }
+
+    public void putFloat(int index, float[] array, int offset, int length)
+    {
+        throw this.createReadOnlyException("putFloat");
+    }
+
+    public void putDouble(int index, double[] array, int offset, int length)
+    {
+        throw this.createReadOnlyException("putDouble");
+    }
+
+    /**
+     * Returns a writable copy of a range of this buffer's decoded elevations.
+     *
+     * @param index  the index of the first elevation.
+     * @param length the number of elevations.
+     *
+     * @return a new buffer containing the elevations.
+     */
+    public BufferWrapper getSubBuffer(int index, int length)
+    {
+        short[] array = new short[length];
+        this.getShort(index, array, 0, length);
+        return new BufferWrapper.ShortBufferWrapper(ShortBuffer.wrap(array));
+    }
+
+    public void putSubBuffer(int index, BufferWrapper buffer)
+    {
+        throw this.createReadOnlyException("putSubBuffer");
+    }
+
+    public void putSubBuffer(int index, BufferWrapper buffer, int offset, int length)
+    {
+        throw this.createReadOnlyException("putSubBuffer");
+    }
+
+    /**
+     * Returns a writable, heap-backed copy of this buffer's decoded elevations. If the new size is larger than this
+     * buffer's length, the additional elevations are zero.
+     *
+     * @param newSize the length of the copy.
+     *
+     * @return a new buffer containing the elevations.
+     */
+    public BufferWrapper copyOf(int newSize)
+    {
+        short[] array = new short[newSize];
+        this.getShort(0, array, 0, Math.min(newSize, this.length()));
+        return new BufferWrapper.ShortBufferWrapper(ShortBuffer.wrap(array));
+    }
+
+    /**
+     * Returns the DTED data records backing this buffer. The records contain encoded elevations and checksums, not the
+     * values returned by this buffer's accessors.
+     *
+     * @return the DTED data records.
+     */
+    public Buffer getBackingBuffer()
+    {
+        return this.records;
+    }
+
+    /**
+     * Decodes the signed-magnitude elevation at the specified byte position, replacing null and out of range values
+     * with the DTED missing data value.
+     *
+     * @param position the elevation's byte position in the records buffer.
+     *
+     * @return the decoded elevation.
+     */
+    protected short getElevation(int position)
+    {
+        return (short) DTED.decodeElevation(this.records.getShort(position));
+    }
+
+    /**
+     * Verifies the checksum of a data record the first time the record is accessed, and returns the record's byte
+     * position.
+     *
+     * @param x the data record's index.
+     *
+     * @return the record's byte position in the records buffer.
+     *
+     * @throws WWRuntimeException if the record's checksum does not match its contents.
+     */
+    protected int verifyRecord(int x)
+    {
+        int position = x * this.recordSize;
+        if (!this.verified[x])
+        {
+            // Verification is idempotent, so concurrent readers may verify the same record without synchronization.
+            int expectedChkSum = this.records.getInt(position + this.recordSize - DTED.REC_CHKSUM_SIZE);
+            int dataChkSum = DTED.computeChecksum(this.records, position, this.recordSize - DTED.REC_CHKSUM_SIZE);
+            if (expectedChkSum != dataChkSum)
+            {
+                String message = Logging.getMessage("DTED.DataRecordChecksumError", expectedChkSum, dataChkSum);
+                Logging.logger().severe(message);
+                throw new WWRuntimeException(message);
+            }
+
+            this.verified[x] = true;
+        }
+
+        return position;
+    }
+
+    protected UnsupportedOperationException createReadOnlyException(String operation)
+    {
+        String message = Logging.getMessage("generic.UnsupportedOperation", operation);
+        Logging.logger().severe(message);
+        return new UnsupportedOperationException(message);
+    }
+}
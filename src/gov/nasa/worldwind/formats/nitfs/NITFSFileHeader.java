@@ -16,7 +16,7 @@ public class NITFSFileHeader
     private String  version;
     private String  specialType;
     private int     headerLength;
-    private int     fileLength;
+    private long    fileLength;
     private boolean isVersion0210;
     private short   complexityLevel ;
     private String  originationStationId;
@@ -96,7 +96,7 @@ public class NITFSFileHeader
         this.ONAME  = NITFSUtil.getString(buffer, isVersion0210 ? 24 : 27);                     // offset 300/297(+40)
         this.OPHONE = NITFSUtil.getString(buffer, 18);                                          // offset 324(+40)
 
-        this.fileLength = NITFSUtil.getNumeric(buffer, 12);                                   // offset 342(+40)
+        this.fileLength = NITFSUtil.getLongNumeric(buffer, 12);                               // offset 342(+40)
         this.headerLength = NITFSUtil.getNumeric(buffer, 6);                                  // offset 352(+40)
    }
     
@@ -265,7 +265,7 @@ public class NITFSFileHeader
         return this.OPHONE;
     }
 
-    public int getFileLength()
+    public long getFileLength()
     {
         return this.fileLength;
     }
@@ -19,7 +19,8 @@ class NITFSImageBand
     private short numOfLookupTables;
     private short numOfLookupTableEntries;
     // public int[]  lookupTablesOffset; // one byte per entry per band
-    private byte[][] lut;
+    // a view of the lookup tables in the image subheader, one table after another
+    private java.nio.ByteBuffer lut;
 
     private boolean isGrayImage;
     private boolean hasTransparentEntry;
@@ -59,17 +60,35 @@ class NITFSImageBand
         this.numOfLookupTableEntries = NITFSUtil.getShortNumeric(buffer, 5);
         if (0 < this.numOfLookupTables && 0 < this.numOfLookupTableEntries)
         {
-            this.lut = new byte[this.numOfLookupTables][this.numOfLookupTableEntries];
-            for (int j = 0; j < this.numOfLookupTables; j++)
-            {
-                buffer.get(this.lut[j], 0, this.numOfLookupTableEntries);
-            }
+            int lutLength = this.numOfLookupTables * this.numOfLookupTableEntries;
+            this.lut = buffer.slice();
+            this.lut.limit(lutLength);
+            buffer.position(buffer.position() + lutLength);
         }
 
         this.isGrayImage = (1 == this.numOfLookupTables);
         this.hasTransparentEntry = (217 == this.numOfLookupTableEntries);
     }
 
+    /**
+     * Returns a read only view of one of this band's lookup tables. The view shares the image subheader's buffer, so the
+     * table is not copied.
+     *
+     * @param table the index of the lookup table.
+     *
+     * @return the lookup table's entries, or null if the band has no lookup tables.
+     */
+    public java.nio.ByteBuffer getLookupTable(int table)
+    {
+        if (null == this.lut)
+            return null;
+
+        java.nio.ByteBuffer view = this.lut.asReadOnlyBuffer();
+        view.limit((table + 1) * this.numOfLookupTableEntries);
+        view.position(table * this.numOfLookupTableEntries);
+        return view.slice();
+    }
+
     /**
      * Returns if the specified color code is reserved for overlays generated by application software.
      *
@@ -83,18 +102,23 @@ class NITFSImageBand
         return colorIndex >= this.numOfLookupTableEntries;
     }
 
+    private int lookup(int table, int colorIndex)
+    {
+        return this.lut.get(table * this.numOfLookupTableEntries + colorIndex);
+    }
+
     public final int lookupR5G6B5(int colorIndex)
     {
         int r, g, b;
         if (3 == this.numOfLookupTables)
         {
-            r = (0x00FF & this.lut[0][colorIndex]) >> 3;
-            g = (0x00FF & this.lut[1][colorIndex]) >> 2;
-            b = (0x00FF & this.lut[2][colorIndex]) >> 3;
+            r = (0x00FF & this.lookup(0, colorIndex)) >> 3;
+            g = (0x00FF & this.lookup(1, colorIndex)) >> 2;
+            b = (0x00FF & this.lookup(2, colorIndex)) >> 3;
         }
         else
         {
-            int gray = 0x00FF & this.lut[0][ colorIndex ];
+            int gray = 0x00FF & this.lookup(0, colorIndex);
             r = gray >> 3;
             g = gray >> 2;
             b = gray >> 3;
@@ -108,13 +132,13 @@ class NITFSImageBand
         int r, g, b;
         if (3 == this.numOfLookupTables)
         {
-            r = (0x00FF & this.lut[0][colorIndex]);
-            g = (0x00FF & this.lut[1][colorIndex]);
-            b = (0x00FF & this.lut[2][colorIndex]);
+            r = (0x00FF & this.lookup(0, colorIndex));
+            g = (0x00FF & this.lookup(1, colorIndex));
+            b = (0x00FF & this.lookup(2, colorIndex));
         }
         else
         {
-            r = g = b = 0x00FF & this.lut[0][ colorIndex ];
+            r = g = b = 0x00FF & this.lookup(0, colorIndex);
         }
         return (int) (0x00FFFFFFL & (long)((r << 16) | (g << 8) | b ));
     }
@@ -124,15 +148,15 @@ class NITFSImageBand
 
         if (3 == this.numOfLookupTables)
         {
-            int r = (0x00FF & this.lut[0][colorIndex]);
-            int g = (0x00FF & this.lut[1][colorIndex]);
-            int b = (0x00FF & this.lut[2][colorIndex]);
+            int r = (0x00FF & this.lookup(0, colorIndex));
+            int g = (0x00FF & this.lookup(1, colorIndex));
+            int b = (0x00FF & this.lookup(2, colorIndex));
 
             return (30 * r + 59 * g + 11 * b)/100;
         }
         else
         {
-            return (0x00FF & this.lut[0][colorIndex]);
+            return (0x00FF & this.lookup(0, colorIndex));
         }
     }
 }
\ No newline at end of file
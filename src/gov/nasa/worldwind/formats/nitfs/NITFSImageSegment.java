@@ -7,6 +7,7 @@ package gov.nasa.worldwind.formats.nitfs;
 
 import gov.nasa.worldwind.formats.rpf.*;
 import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.util.Logging;
 
 import java.nio.*;
 
@@ -147,12 +148,28 @@ public class NITFSImageSegment extends NITFSSegment
         buffer.position(saveOffset); // last line - restore buffer's position
     }
 
-    private void decompressBlock4x4(byte[][] block4x4, short code)
+    /** The image code of a kernel whose pixels are all transparent. */
+    private static final int TRANSPARENT_KERNEL_CODE = 4095;
+    /** The mask of a kernel whose 16 pixels are all written. */
+    private static final int OPAQUE_KERNEL_MASK = 0xFFFF;
+
+    /**
+     * The decoded compression codebook of one image: the 16 output pixels of each 4x4 kernel in row major order, and a
+     * mask for each kernel whose bits mark the pixels that are written. Transparent pixels and pixels with an
+     * application reserved color code are not written, and keep the destination's value.
+     */
+    private static class KernelTable
     {
-        this.compressionLUTS[0].copyValues(block4x4[0], 0, code, 4);
-        this.compressionLUTS[1].copyValues(block4x4[1], 0, code, 4);
-        this.compressionLUTS[2].copyValues(block4x4[2], 0, code, 4);
-        this.compressionLUTS[3].copyValues(block4x4[3], 0, code, 4);
+        public final int numKernels;
+        public final int[] pixels;
+        public final int[] masks;
+
+        public KernelTable(int numKernels)
+        {
+            this.numKernels = numKernels;
+            this.pixels = new int[16 * numKernels];
+            this.masks = new int[numKernels];
+        }
     }
 
     private void decompressBlock16(byte[] block16, short code)
@@ -163,124 +180,255 @@ public class NITFSImageSegment extends NITFSSegment
         this.compressionLUTS[3].copyValues(block16, 12, code, 4);
     }
 
-    public int[] getImagePixelsAsArray(int[] pixels, RPFImageType imageType) throws NITFSRuntimeException {
-        RPFFrameFileComponents rpfComponents = this.getRPFFrameFileComponents();
-        RPFLocationSection componentLocationTable = rpfComponents.componentLocationTable;
+    public int[] getImagePixelsAsArray(int[] pixels, RPFImageType imageType) throws NITFSRuntimeException
+    {
+        return this.getImagePixelsAsArray(pixels, imageType, 1);
+    }
 
-        int spatialDataSubsectionLocation = componentLocationTable.getSpatialDataSubsectionLocation();
-        super.buffer.position( spatialDataSubsectionLocation );
+    /**
+     * Decodes the image's pixels into an array of packed pixels, one row of the image after another. The color lookup
+     * table and the compression codebook are first expanded into the output pixels of every kernel, so each image
+     * code is decoded by copying its kernel's pixels. Subframes are read from a duplicate of the segment's buffer, and
+     * are divided among <code>threadCount</code> tasks on the common fork/join pool when more than one thread is
+     * requested.
+     *
+     * @param pixels      the array receiving the pixels, at least as large as the image.
+     * @param imageType   the packing of the output pixels.
+     * @param threadCount the number of threads that decode the image's subframes.
+     *
+     * @return the array of pixels.
+     *
+     * @throws NITFSRuntimeException if the image's codebook is invalid or an image code is outside the codebook.
+     */
+    public int[] getImagePixelsAsArray(final int[] pixels, RPFImageType imageType, int threadCount)
+        throws NITFSRuntimeException
+    {
+        final KernelTable kernels = this.createKernelTable(imageType);
 
+        final int numSubframes = this.numOfBlocksPerRow * this.numOfBlocksPerCol;
+        int bands = Math.max(1, Math.min(threadCount, numSubframes));
+        if (bands == 1)
+        {
+            this.decodeSubframes(kernels, 0, numSubframes, pixels);
+        }
+        else
+        {
+            java.util.List<java.util.concurrent.RecursiveAction> tasks =
+                new java.util.ArrayList<java.util.concurrent.RecursiveAction>(bands);
+            for (int band = 0; band < bands; band++)
+            {
+                final int firstSubframe = band * numSubframes / bands;
+                final int endSubframe = (band + 1) * numSubframes / bands;
+                tasks.add(new java.util.concurrent.RecursiveAction()
+                {
+                    protected void compute()
+                    {
+                        decodeSubframes(kernels, firstSubframe, endSubframe, pixels);
+                    }
+                });
+            }
+
+            java.util.concurrent.ForkJoinTask.invokeAll(tasks);
+        }
+
+        return pixels;
+    }
+
+    public int getNumSubframes()
+    {
+        return this.numOfBlocksPerRow * this.numOfBlocksPerCol;
+    }
+
+    /**
+     * Returns a read only view of the image codes of one subframe, the rows of packed 12-bit codes of the subframe's
+     * kernels. The view shares the segment's buffer, so the codes are not copied, and the codes of a lazily loaded
+     * segment are read from its mapped file as the view is accessed.
+     *
+     * @param subframeIndex the subframe's index, in row major order.
+     *
+     * @return the subframe's image codes, or null if the subframe is masked.
+     *
+     * @throws IllegalArgumentException if the index is not the index of a subframe.
+     */
+    public ByteBuffer getSubframeData(int subframeIndex)
+    {
+        if (subframeIndex < 0 || subframeIndex >= this.getNumSubframes())
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", subframeIndex);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int subFrameOffset = this.getSubframeOffset(subframeIndex);
+        if (-1 == subFrameOffset)
+            return null;
+
+        int start = this.getRPFFrameFileComponents().componentLocationTable.getSpatialDataSubsectionLocation()
+            + subFrameOffset;
+        ByteBuffer data = super.buffer.asReadOnlyBuffer();
+        data.limit(start + this.getSubframeSize());
+        data.position(start);
+        return data.slice();
+    }
+
+    private int getSubframeSize()
+    {
+        int rowSize = (short) ((this.numOfImageCodesPerRow * this.imageCodeBitLength) / 8L);
+        return (int) this.numOfImageRows * rowSize;
+    }
+
+    /** Returns the offset of a subframe in the spatial data subsection, or -1 if the subframe is masked. */
+    private int getSubframeOffset(int subFrameIdx)
+    {
+        // Subframes are stored in sequence, unless the mask table gives their offsets.
+        return hasMaskedSubframes ? this.subFrameOffsets[subFrameIdx] : subFrameIdx * this.getSubframeSize();
+    }
+
+    private KernelTable createKernelTable(RPFImageType imageType) throws NITFSRuntimeException
+    {
         int band = 0; // for(int band = 0; band < rpfComponents.numOfSpectralBandTables;  band++)
         NITFSImageBand imageBand = this.imageBands[band];
 
-        int rgbColor, colorCode;
-        short aa, ab, bb;
-        short[] codes = new short[(int) this.numOfImageCodesPerRow];
-        byte[][] block4x4 = new byte[4][4];
+        // Output pixel of each 8-bit color code, and whether pixels of that color are written.
+        int[] colors = new int[256];
+        boolean[] opaque = new boolean[256];
+        for (int colorCode = 0; colorCode < 256; colorCode++)
+        {
+            if (hasTransparentPixels && this.transparentOutputPixelCode == colorCode)
+            {   // this is a transparent pixel
+                continue;
+            }
+
+            if (imageBand.isReservedApplicationCode(colorCode))
+            {
+                // This is a reserved color code used to define an application-specific overlay. We don't know the
+                // meaning of application overlay codes, therefore we treat them as transparent or background pixels.
+                continue;
+            }
+
+            int rgbColor = imageBand.lookupRGB(colorCode);
+            switch (imageType)
+            {
+                case IMAGE_TYPE_ALPHA_RGB:
+                    rgbColor = 0xFF000000 + rgbColor;
+                    break;
+                case IMAGE_TYPE_GRAY_ALPHA:
+                    rgbColor = (rgbColor << 8) + 0xFF;
+                    break;
+                case IMAGE_TYPE_RGB_ALPHA:
+                    rgbColor = (rgbColor << 8) + 0xFF;
+                    break;
+            }
+            colors[colorCode] = rgbColor;
+            opaque[colorCode] = true;
+        }
+
+        int numKernels = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++)
+        {
+            numKernels = Math.min(numKernels, this.compressionLUTS[i].getNumOfRecords());
+        }
+
+        KernelTable kernels = new KernelTable(numKernels);
+        byte[] block16 = new byte[16];
+        for (int code = 0; code < numKernels; code++)
+        {
+            this.decompressBlock16(block16, (short) code);
+
+            int mask = 0;
+            for (int i = 0; i < 16; i++)
+            {
+                int colorCode = 0x00FF & block16[i];
+                if (opaque[colorCode])
+                {
+                    kernels.pixels[16 * code + i] = colors[colorCode];
+                    mask |= 1 << i;
+                }
+            }
+            kernels.masks[code] = mask;
+        }
+
+        return kernels;
+    }
+
+    private void decodeSubframes(KernelTable kernels, int firstSubframe, int endSubframe, int[] pixels)
+        throws NITFSRuntimeException
+    {
+        RPFFrameFileComponents rpfComponents = this.getRPFFrameFileComponents();
+        int spatialDataSubsectionLocation = rpfComponents.componentLocationTable.getSpatialDataSubsectionLocation();
+
+        // Read from a duplicate, so that concurrent decoding neither shares nor moves the segment buffer's position.
+        ByteBuffer data = super.buffer.duplicate();
+
+        int numCodes = (int) this.numOfImageCodesPerRow;
         int rowSize = (short) ((this.numOfImageCodesPerRow * this.imageCodeBitLength) / 8L);
+        int width = this.numSignificantCols;
+        int[] kernelPixels = kernels.pixels;
+        int[] codes = new int[numCodes];
         byte[] rowBytes = new byte[rowSize];
-        int subFrameOffset;
-        short subFrameIdx = 0;
 
-        for (int subFrameH = 0; subFrameH < this.numOfBlocksPerCol; subFrameH++)
+        for (int subFrameIdx = firstSubframe; subFrameIdx < endSubframe; subFrameIdx++)
         {
-            for (int subFrameW = 0; subFrameW < this.numOfBlocksPerRow; subFrameW++, subFrameIdx++ )
+            int subFrameOffset = this.getSubframeOffset(subFrameIdx);
+            if (-1 == subFrameOffset)
+            {   // this is a masked / empty subframe
+                continue;
+            }
+            data.position(spatialDataSubsectionLocation + subFrameOffset);
+
+            int blockY = (int) ((subFrameIdx / this.numOfBlocksPerRow) * rpfComponents.numOfOutputRowsPerSubframe);
+            int blockX = (int) ((subFrameIdx % this.numOfBlocksPerRow) * rpfComponents.numOfOutputColumnsPerSubframe);
+
+            for (int row = 0; row < this.numOfImageRows; row++)
             {
-                int blockY = (int) (subFrameH * rpfComponents.numOfOutputRowsPerSubframe);
-                int blockX = (int) (subFrameW * rpfComponents.numOfOutputColumnsPerSubframe);
+                data.get(rowBytes, 0, rowSize);
 
-                if(hasMaskedSubframes)
+                // Unpack pairs of 12-bit codes from each three bytes.
+                for (int i = 0, cidx = 0, bidx = 0; i < numCodes / 2; i++)
                 {
-                    subFrameOffset = this.subFrameOffsets[subFrameIdx];
-                    if( -1 == subFrameOffset)
-                    {   // this is a masked / empty subframe
-                        continue;
-                    }
-                    else
-                    {
-                        super.buffer.position( spatialDataSubsectionLocation + subFrameOffset );
-                    }
+                    int aa = (0x00FF & rowBytes[bidx++]) << 4;
+                    int ab = 0x00FF & rowBytes[bidx++];
+                    int bb = 0x00FF & rowBytes[bidx++];
+
+                    codes[cidx++] = aa | ((0x00F0 & ab) >> 4);
+                    codes[cidx++] = bb | ((0x000F & ab) << 8);
                 }
 
-                for (int row = 0; row < this.numOfImageRows; row++)
+                int rowOffset = (blockY + row * 4) * width + blockX;
+                for (int col = 0; col < numCodes; col++)
                 {
-                    int qy = blockY + row * 4;
-
-                    super.buffer.get(rowBytes, 0, rowSize);
-
-                    // short[] codes = new short[(int) this.numOfImageCodesPerRow];
-                    for (int i = 0, cidx = 0, bidx = 0; i < (int) this.numOfImageCodesPerRow / 2; i++)
-                    {
-                        aa = (short) ((0x00FF & (short) rowBytes[bidx++]) << 4);
-                        ab = (short) (0x00FF & (short)  rowBytes[bidx++]);
-                        bb = (short) (0x00FF & (short)  rowBytes[bidx++]);
-
-                        codes[cidx++] = (short) (aa | ((0x00F0 & ab) >> 4));
-                        codes[cidx++] = (short) (bb | ((0x000F & ab) << 8));
+                    int code = codes[col];
+                    if (hasTransparentPixels && TRANSPARENT_KERNEL_CODE == code)
+                    {   // this is a transparent kernel
+                        continue;
                     }
+                    if (code >= kernels.numKernels)
+                        throw new NITFSRuntimeException("NITFSReader.AttemptToCopyOutOfBoundsAtSource");
 
-                    for (int col = 0; col < this.numOfImageCodesPerRow; col++)
+                    int mask = kernels.masks[code];
+                    int src = 16 * code;
+                    int dest = rowOffset + col * 4;
+                    if (OPAQUE_KERNEL_MASK == mask)
                     {
-                        if (hasTransparentPixels)
+                        for (int h = 0; h < 4; h++, src += 4, dest += width)
                         {
-                            if (4095 == codes[col])
-                            {   // this is a transparent kernel
-                                continue;                          
-                            }
+                            pixels[dest] = kernelPixels[src];
+                            pixels[dest + 1] = kernelPixels[src + 1];
+                            pixels[dest + 2] = kernelPixels[src + 2];
+                            pixels[dest + 3] = kernelPixels[src + 3];
                         }
-
-                        this.decompressBlock4x4( block4x4, codes[col] );
-
-                        int qx = blockX + col * 4;
-
-                        for (int h = 0; h < 4; h++)
+                    }
+                    else if (0 != mask)
+                    {
+                        for (int i = 0; i < 16; i++)
                         {
-                            for (int w = 0; w < 4; w++)
-                            {
-                                colorCode = 0x00FF & block4x4[h][w];
-
-                                if (hasTransparentPixels)
-                                {
-                                    if (this.transparentOutputPixelCode == colorCode)
-                                    {   // this is a transparent pixel
-                                        continue;
-                                    }
-                                }
-
-                                if (imageBand.isReservedApplicationCode(colorCode))
-                                {
-                                    // This is a reserved color code used to define an application-specific overlay. We
-                                    // don't know the meaning of application overlay codes, therefore we treat them as
-                                    // transparent or background pixels.
-                                    continue;
-                                }
-
-                                rgbColor = imageBand.lookupRGB(colorCode);
-                                switch (imageType)
-                                {
-                                    case IMAGE_TYPE_ALPHA_RGB:
-                                        rgbColor = 0xFF000000 + rgbColor;
-                                        break;
-                                  //case IMAGE_TYPE_GRAY:
-                                  //    break;
-                                  //case IMAGE_TYPE_RGB:
-                                  //    break;
-                                    case IMAGE_TYPE_GRAY_ALPHA:
-                                        rgbColor = (rgbColor << 8) + 0xFF;
-                                        break;
-                                    case IMAGE_TYPE_RGB_ALPHA:
-                                        rgbColor = (rgbColor << 8) + 0xFF;
-                                        break;
-                                }
-                                pixels[(qy + h) * this.numSignificantCols + (qx + w)] = rgbColor;
-                            }
+                            if (0 != (mask & (1 << i)))
+                                pixels[dest + (i >> 2) * width + (i & 3)] = kernelPixels[src + i];
                         }
-                    } // end of column loop
-                } // end of row loop
-            } // end of subFrameW loop
-        } // end of subFrameH loop
-
-        return pixels;
+                    }
+                } // end of column loop
+            } // end of row loop
+        } // end of subframe loop
     }
 
     private void validateImage() throws NITFSRuntimeException {
@@ -12,6 +12,17 @@ import gov.nasa.worldwind.util.Logging;
 import java.io.IOException;
 
 /**
+ * A NITF or NSIF file: its file header and its segments. A message is either read entirely into memory and has all its
+ * segments parsed when it's loaded, or is loaded lazily: the file is memory mapped, only the file header and the
+ * segment length tables are parsed when it's loaded, and each segment is parsed the first time it's requested. Segments
+ * of a lazily loaded message read their data from the mapped file, so opening a large multi-segment file and reading
+ * one of its segments reads only that segment's pages from disk, and keeps none of the file's data in the Java heap.
+ * <p/>
+ * A Java buffer holds at most 2 GB. When a lazily loaded file is larger than that, its first 2 GB are mapped when it's
+ * loaded, and each segment that ends beyond them is mapped separately when it's parsed, with offsets relative to the
+ * start of its header. Segments whose contents are located by file offsets, such as RPF image segments, can therefore
+ * be parsed only if they lie within the first 2 GB of the file.
+ *
  * @author Lado Garakanidze
  * @version $Id: NITFSMessage.java 1171 2013-02-11 21:45:02Z dcollins $
  */
@@ -19,37 +30,119 @@ public class NITFSMessage
 {
     private     java.nio.ByteBuffer     buffer;
     private NITFSFileHeader fileHeader;
-    private     java.util.ArrayList<NITFSSegment> segments = new java.util.ArrayList<NITFSSegment>();
+    private     java.util.ArrayList<SegmentEntry> segments = new java.util.ArrayList<SegmentEntry>();
+    /** The file a lazily loaded message maps segments from, or null if the message was read into memory. */
+    private     java.io.File            file;
 
+    /**
+     * The location of one segment in the file, and the segment once it has been parsed. The table position is the
+     * position of the buffer when the segment's parsing begins, which is the end of its entry in the file header.
+     */
+    private static class SegmentEntry
+    {
+        private final NITFSSegmentType segmentType;
+        private final int tablePosition;
+        private final long headerStartOffset;
+        private final long headerLength;
+        private final long dataLength;
+        private NITFSSegment segment;
+
+        public SegmentEntry(NITFSSegmentType segmentType, int tablePosition, long headerStartOffset, long headerLength,
+            long dataLength)
+        {
+            this.segmentType = segmentType;
+            this.tablePosition = tablePosition;
+            this.headerStartOffset = headerStartOffset;
+            this.headerLength = headerLength;
+            this.dataLength = dataLength;
+        }
+
+        public long getEndOffset()
+        {
+            return this.headerStartOffset + this.headerLength + this.dataLength;
+        }
+    }
 
     public NITFSSegment getSegment( NITFSSegmentType segmentType )
     {
-        for(NITFSSegment seg : segments)
+        return this.getSegment(segmentType, 0);
+    }
+
+    /**
+     * Returns one of the segments of a specified type, in the order they appear in the file. A lazily loaded message
+     * parses the segment the first time it's requested.
+     *
+     * @param segmentType the segment type.
+     * @param index       the index of the segment among the segments of that type.
+     *
+     * @return the segment, or null if the file has no such segment.
+     *
+     * @throws NITFSRuntimeException if the segment cannot be parsed.
+     */
+    public NITFSSegment getSegment(NITFSSegmentType segmentType, int index)
+    {
+        for (SegmentEntry entry : this.segments)
         {
-            if(null != seg && seg.segmentType.equals(segmentType))
-                return seg;
+            if (entry.segmentType.equals(segmentType) && 0 == index--)
+                return this.getSegment(entry);
         }
         return null;
     }
 
+    /**
+     * Returns the number of segments of a specified type, without parsing them.
+     *
+     * @param segmentType the segment type.
+     *
+     * @return the number of segments of that type.
+     */
+    public int getNumSegments(NITFSSegmentType segmentType)
+    {
+        int count = 0;
+        for (SegmentEntry entry : this.segments)
+        {
+            if (entry.segmentType.equals(segmentType))
+                count++;
+        }
+        return count;
+    }
+
     public NITFSFileHeader getNITFSFileHeader()
     {
         return this.fileHeader;
     }
 
-    private NITFSMessage(java.nio.ByteBuffer buffer)
+    /**
+     * Indicates whether this message was loaded lazily, from a memory mapped file.
+     *
+     * @return true if the message parses its segments on demand, and false if it parsed them when it was loaded.
+     */
+    public boolean isLazy()
+    {
+        return null != this.file;
+    }
+
+    private NITFSMessage(java.nio.ByteBuffer buffer, java.io.File file)
     {
         this.buffer = buffer;
+        this.file = file;
         this.fileHeader = new NITFSFileHeader(buffer);
 
-        // read ALL description groups and segments
+        // read ALL description groups
         this.readSegments();
+
+        if (!this.isLazy())
+        {
+            for (SegmentEntry entry : this.segments)
+            {
+                this.getSegment(entry);
+            }
+        }
     }
 
     private void readSegments()
     {
-        int saveOffset = this.buffer.position();
-        int nextSegmentOffset = this.fileHeader.getHeaderLength();
+        long nextSegmentOffset = this.fileHeader.getHeaderLength();
 
         // parse Image Description Group
         nextSegmentOffset = parseSegment(NITFSSegmentType.IMAGE_SEGMENT, nextSegmentOffset);
@@ -63,24 +156,27 @@ public class NITFSMessage
         nextSegmentOffset = parseSegment(NITFSSegmentType.DATA_EXTENSION_SEGMENT, nextSegmentOffset);
         // parse Reserved Extension Description Group
         nextSegmentOffset = parseSegment(NITFSSegmentType.RESERVED_EXTENSION_SEGMENT, nextSegmentOffset);
-        // parse User Defined Header Description (UDHD) Group
-        NITFSUserDefinedHeaderSegment userHeaderSeg = new RPFUserDefinedHeaderSegment(this.buffer);
-        this.segments.add( userHeaderSeg );
-        nextSegmentOffset += userHeaderSeg.headerLength + userHeaderSeg.dataLength;
-        // parse Extended Header Description Group
-        nextSegmentOffset = parseSegment(NITFSSegmentType.EXTENDED_HEADER_SEGMENT, nextSegmentOffset);
-
-        // let's read each header
-        for(NITFSSegment segment : segments)
+        // parse User Defined Header Description (UDHD) Group, which is parsed from the buffer's current position
+        int userHeaderPosition = this.buffer.position();
+        int userHeaderLength = Integer.parseInt(NITFSUtil.getString(this.buffer, 5));
+        int userDataLength = 0;
+        if (0 < userHeaderLength)
         {
-
-//
-//            String segId = NITFSUtil.getString(buffer, segment.headerStartOffset, 2);
-//            System.out.println("Segment type=" + segment.segmentType + ", id=" + segId);
+            this.buffer.position(userHeaderPosition + 14); // skip the overflow and the data tag
+            userDataLength = Integer.parseInt(NITFSUtil.getString(this.buffer, 5));
         }
+        this.buffer.position(userHeaderPosition);
+        if (0 < userHeaderLength || !this.isLazy()) // a lazily loaded file needs no user defined header
+        {
+            this.segments.add(new SegmentEntry(NITFSSegmentType.USER_DEFINED_HEADER_SEGMENT, userHeaderPosition, 0,
+                userHeaderLength, userDataLength));
+        }
+        nextSegmentOffset += userHeaderLength + userDataLength;
+        // parse Extended Header Description Group
+        parseSegment(NITFSSegmentType.EXTENDED_HEADER_SEGMENT, nextSegmentOffset);
     }
 
-    private int parseSegment(NITFSSegmentType segType, int nextSegmentOffset)
+    private long parseSegment(NITFSSegmentType segType, long nextSegmentOffset)
     {
         int headerLengthSize = segType.getHeaderLengthSize();
         int dataLengthSize = segType.getDataLengthSize();
@@ -88,62 +184,120 @@ public class NITFSMessage
         int numOfSegments = Integer.parseInt(NITFSUtil.getString(this.buffer, 3));
         for (int i = 0; i < numOfSegments; i++)
         {
-            int segHeaderLength = Integer.parseInt(NITFSUtil.getString(this.buffer, headerLengthSize));
-            int seqDataLength = Integer.parseInt(NITFSUtil.getString(this.buffer, dataLengthSize));
+            long segHeaderLength = Long.parseLong(NITFSUtil.getString(this.buffer, headerLengthSize));
+            long seqDataLength = Long.parseLong(NITFSUtil.getString(this.buffer, dataLengthSize));
 
-            int saveOffset = this.buffer.position(); // pass buffer to NITFSSegment to parse their headers' contents
-            NITFSSegment segment;
-            switch (segType)
-            {
-                case IMAGE_SEGMENT:
-                    segment = new NITFSImageSegment(this.buffer, nextSegmentOffset, segHeaderLength,
-                                        nextSegmentOffset + segHeaderLength, seqDataLength);
-                    break;
-                case SYMBOL_SEGMENT:
-                    segment = new NITFSSymbolSegment(this.buffer, nextSegmentOffset, segHeaderLength,
-                                        nextSegmentOffset + segHeaderLength, seqDataLength);
-                    break;
-                case LABEL_SEGMENT:
-                    segment = new NITFSLabelSegment(this.buffer, nextSegmentOffset, segHeaderLength,
-                                        nextSegmentOffset + segHeaderLength, seqDataLength);
-                    break;
-                case TEXT_SEGMENT:
-                    segment = new NITFSTextSegment(this.buffer, nextSegmentOffset, segHeaderLength,
-                                        nextSegmentOffset + segHeaderLength, seqDataLength);
-                    break;
-                case DATA_EXTENSION_SEGMENT:
-                    segment = new NITFSDataExtensionSegment(this.buffer, nextSegmentOffset, segHeaderLength,
-                                        nextSegmentOffset + segHeaderLength, seqDataLength);
-                    break;
-                case RESERVED_EXTENSION_SEGMENT:
-                    segment = new NITFSReservedExtensionSegment(this.buffer, nextSegmentOffset, segHeaderLength,
-                                        nextSegmentOffset + segHeaderLength, seqDataLength);
-                    break;
-                case USER_DEFINED_HEADER_SEGMENT:
-                    segment = new RPFUserDefinedHeaderSegment(this.buffer);
-                    break;
-                case EXTENDED_HEADER_SEGMENT:    // // throw exception - wrong parser for EXTENDED_HEADER_SEGMENT
-                    segment = new NITFSExtendedHeaderSegment(this.buffer, nextSegmentOffset, segHeaderLength,
-                                        nextSegmentOffset + segHeaderLength, seqDataLength);
-                    break;
-
-                default:
-                    throw new NITFSRuntimeException("NITFSReader.UnknownOrUnsupportedSegment", segType.toString());
-
-            }
-            this.segments.add(segment);
+            this.segments.add(new SegmentEntry(segType, this.buffer.position(), nextSegmentOffset, segHeaderLength,
+                seqDataLength));
 
             nextSegmentOffset += segHeaderLength + seqDataLength;
-            buffer.position(saveOffset); // restore offset
         }
         return nextSegmentOffset;
     }
 
+    private synchronized NITFSSegment getSegment(SegmentEntry entry)
+    {
+        if (null == entry.segment)
+            entry.segment = this.createSegment(entry);
+        return entry.segment;
+    }
+
+    private NITFSSegment createSegment(SegmentEntry entry)
+    {
+        // Pass each segment its own view of the buffer to parse its header's contents, so parsing one segment
+        // neither depends on nor moves the position of another.
+        java.nio.ByteBuffer segmentBuffer;
+        long bufferOrigin;
+        if (entry.getEndOffset() <= this.buffer.capacity())
+        {
+            segmentBuffer = this.buffer.duplicate();
+            segmentBuffer.position(entry.tablePosition);
+            bufferOrigin = 0;
+        }
+        else
+        {
+            segmentBuffer = this.mapSegment(entry);
+            bufferOrigin = entry.headerStartOffset;
+        }
+
+        int headerStartOffset = (int) (entry.headerStartOffset - bufferOrigin);
+        int headerLength = (int) entry.headerLength;
+        int dataStartOffset = headerStartOffset + headerLength;
+        int dataLength = (int) entry.dataLength;
+
+        switch (entry.segmentType)
+        {
+            case IMAGE_SEGMENT:
+                return new NITFSImageSegment(segmentBuffer, headerStartOffset, headerLength, dataStartOffset,
+                    dataLength);
+            case SYMBOL_SEGMENT:
+                return new NITFSSymbolSegment(segmentBuffer, headerStartOffset, headerLength, dataStartOffset,
+                    dataLength);
+            case LABEL_SEGMENT:
+                return new NITFSLabelSegment(segmentBuffer, headerStartOffset, headerLength, dataStartOffset,
+                    dataLength);
+            case TEXT_SEGMENT:
+                return new NITFSTextSegment(segmentBuffer, headerStartOffset, headerLength, dataStartOffset,
+                    dataLength);
+            case DATA_EXTENSION_SEGMENT:
+                return new NITFSDataExtensionSegment(segmentBuffer, headerStartOffset, headerLength, dataStartOffset,
+                    dataLength);
+            case RESERVED_EXTENSION_SEGMENT:
+                return new NITFSReservedExtensionSegment(segmentBuffer, headerStartOffset, headerLength,
+                    dataStartOffset, dataLength);
+            case USER_DEFINED_HEADER_SEGMENT:
+                return new RPFUserDefinedHeaderSegment(segmentBuffer);
+            case EXTENDED_HEADER_SEGMENT:    // // throw exception - wrong parser for EXTENDED_HEADER_SEGMENT
+                return new NITFSExtendedHeaderSegment(segmentBuffer, headerStartOffset, headerLength,
+                    dataStartOffset, dataLength);
+
+            default:
+                throw new NITFSRuntimeException("NITFSReader.UnknownOrUnsupportedSegment",
+                    entry.segmentType.toString());
+        }
+    }
+
+    private java.nio.ByteBuffer mapSegment(SegmentEntry entry)
+    {
+        long length = entry.getEndOffset() - entry.headerStartOffset;
+        if (length > Integer.MAX_VALUE)
+            throw new NITFSRuntimeException("NITFSReader.SegmentTooLargeToMap", entry.segmentType.toString());
+
+        try
+        {
+            return NITFSUtil.mapFileRegion(this.file, entry.headerStartOffset, length);
+        }
+        catch (IOException e)
+        {
+            throw new NITFSRuntimeException("NITFSReader.CannotMapSegment", entry.segmentType.toString(), e);
+        }
+    }
+
     public static NITFSMessage load(java.io.File file) throws java.io.IOException
+    {
+        return load(file, false);
+    }
+
+    /**
+     * Loads a NITF or NSIF file, either by reading it into memory and parsing all its segments, or lazily, by mapping it
+     * into memory and parsing its segments when they're requested.
+     *
+     * @param file the file to load.
+     * @param lazy true to map the file and parse its segments on demand, false to read the file and parse every segment.
+     *
+     * @return the file's message.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws NITFSRuntimeException    if the file cannot be read, or is not a NITF or NSIF file.
+     * @throws java.io.IOException      if an error occurs reading or mapping the file.
+     */
+    public static NITFSMessage load(java.io.File file, boolean lazy) throws java.io.IOException
     {
         validateImageFile(file);
 
-        java.nio.ByteBuffer roBuffer = NITFSUtil.readEntireFile(file).asReadOnlyBuffer();
+        java.nio.ByteBuffer roBuffer = lazy
+            ? NITFSUtil.mapFileRegion(file, 0, Math.min(file.length(), Integer.MAX_VALUE))
+            : NITFSUtil.readEntireFile(file).asReadOnlyBuffer();
 
         // check if it is a NITFS format file (NITF or NSIF - for NATO Secondary Imagery Format)
         String fmtId = NITFSUtil.getString(roBuffer, 0, 4);
@@ -152,7 +306,7 @@ public class NITFSMessage
             throw new NITFSRuntimeException("NITFSReader.UnknownOrUnsupportedNITFSFormat", file.getCanonicalPath());
         }
 
-        return new NITFSMessage(roBuffer);
+        return new NITFSMessage(roBuffer, lazy ? file : null);
     }
 
     private static void validateImageFile(java.io.File file)
@@ -32,6 +32,35 @@ public class NITFSSegment
         this.savedBufferOffset = buffer.position();
     }
 
+    public NITFSSegmentType getSegmentType()
+    {
+        return this.segmentType;
+    }
+
+    public int getHeaderLength()
+    {
+        return this.headerLength;
+    }
+
+    public int getDataLength()
+    {
+        return this.dataLength;
+    }
+
+    /**
+     * Returns a read only view of this segment's data. The view shares the buffer the segment was parsed from, so no
+     * data is copied, and the data of a lazily loaded segment is read from its mapped file as the view is accessed.
+     *
+     * @return a view of the segment's data, whose position 0 is the data's first byte.
+     */
+    public java.nio.ByteBuffer getData()
+    {
+        java.nio.ByteBuffer data = this.buffer.asReadOnlyBuffer();
+        data.limit(this.dataStartOffset + this.dataLength);
+        data.position(this.dataStartOffset);
+        return data.slice();
+    }
+
     protected void restoreBufferPosition()
     {
         this.buffer.position(this.savedBufferOffset);
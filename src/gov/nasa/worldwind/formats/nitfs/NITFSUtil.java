@@ -53,6 +53,18 @@ public class NITFSUtil
         return Integer.parseInt(s);
     }
 
+    public static long getLongNumeric(java.nio.ByteBuffer buffer, int len)
+    {
+        String s = "";
+        if (null != buffer && buffer.remaining() >= len)
+        {
+            byte[] dest = new byte[len];
+            buffer.get(dest, 0, len);
+            s = new String(dest);
+        }
+        return Long.parseLong(s);
+    }
+
     public static short getShortNumeric(java.nio.ByteBuffer buffer, int len)
     {
         String s = "";
@@ -137,6 +149,33 @@ public class NITFSUtil
         }
     }
 
+    /**
+     * Maps a region of a file into memory, read only. The region's pages are read from the file as they're accessed,
+     * so mapping a region neither reads it nor occupies the Java heap.
+     *
+     * @param file     the file to map.
+     * @param position the offset in the file of the region's first byte.
+     * @param length   the number of bytes in the region, at most {@link Integer#MAX_VALUE}.
+     *
+     * @return a read only buffer whose position 0 is the region's first byte.
+     *
+     * @throws java.io.IOException if the file cannot be opened or mapped.
+     */
+    public static java.nio.ByteBuffer mapFileRegion(java.io.File file, long position, long length)
+        throws java.io.IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            // The mapping stays valid after the channel is closed.
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
     @SuppressWarnings({"UnusedDeclaration"})
     private static java.nio.ByteBuffer readFile(java.io.File file) throws java.io.IOException
     {
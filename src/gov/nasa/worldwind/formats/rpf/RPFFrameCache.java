@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.rpf;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.cache.MemoryCache;
+import gov.nasa.worldwind.util.Logging;
+
+import java.awt.image.*;
+import java.io.*;
+
+/**
+ * Decodes RPF frame files into deprojected images, and keeps the most recently used images in a size bounded memory
+ * cache keyed by frame file. Components that read frames on demand, such as the RPF tiled image generator, decode
+ * each frame once for all the tiles that overlap it rather than once per tile. Frame caches created with the default
+ * constructor share one memory cache in the World Wind memory cache set, whose capacity is given by the configuration
+ * property {@link AVKey#RPF_FRAME_CACHE_SIZE}.
+ * <p/>
+ * A cached frame is decoded again if its file is modified. Concurrent requests for the same frame decode it once; the
+ * other requests wait for and share its image. Decoded images are shared by all requests for the frame, so they must
+ * not be modified.
+ *
+ * @version $Id$
+ */
+public class RPFFrameCache
+{
+    protected static final long DEFAULT_CAPACITY = 200000000L;
+    protected static final int NUM_LOCKS = 64;
+
+    /** Locks serializing the decoding of each frame, striped by frame file and shared by all frame caches. */
+    protected static final Object[] LOCKS = new Object[NUM_LOCKS];
+
+    static
+    {
+        for (int i = 0; i < NUM_LOCKS; i++)
+        {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    protected static class Entry
+    {
+        public final long lastModified;
+        public final RPFFrameTransform.RPFImage[] images;
+
+        public Entry(long lastModified, RPFFrameTransform.RPFImage[] images)
+        {
+            this.lastModified = lastModified;
+            this.images = images;
+        }
+    }
+
+    protected final MemoryCache memoryCache;
+    protected int threadCount = 1;
+
+    /**
+     * Returns the memory cache shared by frame caches created with the default constructor, initializing the cache if
+     * it doesn't yet exist.
+     *
+     * @return the shared memory cache of decoded frames.
+     */
+    public static synchronized MemoryCache getSharedMemoryCache()
+    {
+        if (!WorldWind.getMemoryCacheSet().containsCache(RPFFrameCache.class.getName()))
+        {
+            long size = Configuration.getLongValue(AVKey.RPF_FRAME_CACHE_SIZE, DEFAULT_CAPACITY);
+            MemoryCache cache = WorldWind.createMemoryCache((long) (0.85 * size), size);
+            cache.setName("RPF Frames");
+            WorldWind.getMemoryCacheSet().addCache(RPFFrameCache.class.getName(), cache);
+        }
+
+        return WorldWind.getMemoryCacheSet().getCache(RPFFrameCache.class.getName());
+    }
+
+    /** Creates a frame cache that uses the shared memory cache of decoded frames. */
+    public RPFFrameCache()
+    {
+        this(getSharedMemoryCache());
+    }
+
+    /**
+     * Creates a frame cache that keeps decoded frames in the specified memory cache.
+     *
+     * @param memoryCache the memory cache of decoded frames.
+     *
+     * @throws IllegalArgumentException if the memory cache is null.
+     */
+    public RPFFrameCache(MemoryCache memoryCache)
+    {
+        if (memoryCache == null)
+        {
+            String message = Logging.getMessage("nullValue.CacheIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.memoryCache = memoryCache;
+    }
+
+    /**
+     * Returns the memory cache of decoded frames.
+     *
+     * @return the memory cache of decoded frames.
+     */
+    public MemoryCache getMemoryCache()
+    {
+        return this.memoryCache;
+    }
+
+    /**
+     * Returns the number of threads that decode each frame. See {@link #setThreadCount(int)}.
+     *
+     * @return the number of decoding threads.
+     */
+    public int getThreadCount()
+    {
+        return this.threadCount;
+    }
+
+    /**
+     * Specifies the number of threads that decode each frame. A frame's subframes are divided among this many tasks on
+     * the common fork/join pool. The default is 1, which decodes frames on the calling thread.
+     *
+     * @param threadCount the number of decoding threads.
+     *
+     * @throws IllegalArgumentException if <code>threadCount</code> is less than 1.
+     */
+    public void setThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "threadCount < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the deprojected images of a frame file, decoding the frame if it's not in the cache. A non-polar frame
+     * has one image; a polar frame is deprojected into one or two images in geographic coordinates. The frame's data
+     * series, zone and frame number are taken from its file name.
+     *
+     * @param file the frame file.
+     *
+     * @return the frame's images and their sectors.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the frame file cannot be read.
+     */
+    public RPFFrameTransform.RPFImage[] getFrameImages(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        File key = file.getAbsoluteFile();
+        long lastModified = key.lastModified();
+
+        Entry entry = (Entry) this.memoryCache.getObject(key);
+        if (entry != null && entry.lastModified == lastModified)
+            return entry.images;
+
+        synchronized (LOCKS[(key.hashCode() & 0x7FFFFFFF) % NUM_LOCKS])
+        {
+            // Another thread may have decoded the frame while this thread waited for the lock.
+            entry = (Entry) this.memoryCache.getObject(key);
+            if (entry != null && entry.lastModified == lastModified)
+                return entry.images;
+
+            RPFFrameTransform.RPFImage[] images = this.decodeFrame(key);
+            this.memoryCache.add(key, new Entry(lastModified, images), computeSize(images));
+            return images;
+        }
+    }
+
+    /**
+     * Decodes and deprojects a frame file.
+     *
+     * @param file the frame file.
+     *
+     * @return the frame's images and their sectors.
+     *
+     * @throws IOException if the frame file cannot be read.
+     */
+    protected RPFFrameTransform.RPFImage[] decodeFrame(File file) throws IOException
+    {
+        BufferedImage image = RPFImageFile.load(file).getBufferedImage(this.threadCount);
+
+        RPFFrameFilename filename = RPFFrameFilename.parseFilename(file.getName().toUpperCase());
+        RPFDataSeries dataSeries = RPFDataSeries.dataSeriesFor(filename.getDataSeriesCode());
+        RPFFrameTransform transform = RPFFrameTransform.createFrameTransform(filename.getZoneCode(),
+            dataSeries.rpfDataType, dataSeries.scaleOrGSD);
+
+        return transform.deproject(filename.getFrameNumber(), image);
+    }
+
+    protected static long computeSize(RPFFrameTransform.RPFImage[] images)
+    {
+        long size = 0;
+        for (RPFFrameTransform.RPFImage image : images)
+        {
+            if (image.getImage() != null)
+            {
+                DataBuffer dataBuffer = image.getImage().getRaster().getDataBuffer();
+                size += (long) dataBuffer.getSize() * dataBuffer.getNumBanks()
+                    * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+            }
+        }
+
+        return Math.max(1, size);
+    }
+}
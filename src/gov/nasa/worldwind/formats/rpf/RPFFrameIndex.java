@@ -0,0 +1,1049 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.rpf;
+
+import gov.nasa.worldwind.formats.nitfs.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * A compact binary index of the RPF frame files beneath a root directory. The index records each frame's sector, data
+ * series, zone, file path and last modified time, and divides the frames' bounding sector into a uniform grid of cells
+ * so that the frames intersecting a sector are found without testing every frame.
+ * <p/>
+ * An index is persisted as a single file whose sections are read in place: an index loaded with {@link #load(File)}
+ * maps the file into memory and reads records only when they're requested, so opening an index of hundreds of
+ * thousands of frames takes about as long as opening an empty one. An index is created by walking the root directory
+ * with {@link #createIndex(File, RPFFrameIndex)}. Given a previous index of the same root directory, the walk lists only
+ * the directories modified since that index was created, and takes the frames and subdirectories of every other
+ * directory from the previous index. Adding, removing or renaming a file changes the modification time of its
+ * directory, so the refreshed index reflects such changes. A frame file rewritten in place does not, and keeps the last
+ * modified time recorded by the previous index; its sector is unaffected, because a frame's sector is determined by its
+ * file name.
+ * <p/>
+ * An index may also be assembled from a list of frame files and their sectors with a {@link Builder}. Frames are
+ * numbered in the order they're added to the builder.
+ * <p/>
+ * Indexes are immutable and may be read by multiple threads.
+ *
+ * @version $Id$
+ */
+public class RPFFrameIndex
+{
+    protected static final String FILE_ID = "RPF_FRAME_INDEX";
+    protected static final int FILE_ID_LENGTH = 16;
+    protected static final int VERSION = 1;
+    protected static final String CHARACTER_ENCODING = "UTF-8";
+
+    // Header field locations.
+    protected static final int VERSION_LOCATION = 16;
+    protected static final int NUM_FRAMES_LOCATION = 20;
+    protected static final int NUM_DIRECTORIES_LOCATION = 24;
+    protected static final int GRID_ROWS_LOCATION = 28;
+    protected static final int GRID_COLUMNS_LOCATION = 32;
+    protected static final int FRAME_TABLE_LOCATION = 36;
+    protected static final int DIRECTORY_TABLE_LOCATION = 40;
+    protected static final int CELL_TABLE_LOCATION = 44;
+    protected static final int CELL_FRAMES_LOCATION = 48;
+    protected static final int ROOT_PATH_LOCATION = 52;
+    protected static final int ROOT_PATH_LENGTH_LOCATION = 56;
+    protected static final int BOUNDS_LOCATION = 64;
+    protected static final int HEADER_LENGTH = 96;
+
+    // Frame records: min-latitude, max-latitude, min-longitude, max-longitude, last modified time, directory, file
+    // name, data series code and zone code.
+    protected static final int FRAME_RECORD_LENGTH = 64;
+    protected static final int FRAME_LAST_MODIFIED_OFFSET = 32;
+    protected static final int FRAME_DIRECTORY_OFFSET = 40;
+    protected static final int FRAME_FILENAME_OFFSET = 44;
+    protected static final int FRAME_FILENAME_LENGTH = 16;
+    protected static final int FRAME_DATA_SERIES_OFFSET = 60;
+    protected static final int FRAME_ZONE_OFFSET = 62;
+
+    // Directory records: last modified time, parent directory, first frame, number of frames, and the location and
+    // length of the directory's path relative to the root directory.
+    protected static final int DIRECTORY_RECORD_LENGTH = 32;
+    protected static final int DIRECTORY_PARENT_OFFSET = 8;
+    protected static final int DIRECTORY_FIRST_FRAME_OFFSET = 12;
+    protected static final int DIRECTORY_NUM_FRAMES_OFFSET = 16;
+    protected static final int DIRECTORY_PATH_OFFSET = 20;
+    protected static final int DIRECTORY_PATH_LENGTH_OFFSET = 24;
+
+    /** The largest number of grid rows or columns. */
+    protected static final int MAX_GRID_SIZE = 2048;
+
+    protected final ByteBuffer buffer;
+    protected final File rootDirectory;
+    protected final int numFrames;
+    protected final int numDirectories;
+    protected final int gridRows;
+    protected final int gridColumns;
+    protected final int frameTableLocation;
+    protected final int directoryTableLocation;
+    protected final int cellTableLocation;
+    protected final int cellFramesLocation;
+    protected final double minLatitude;
+    protected final double maxLatitude;
+    protected final double minLongitude;
+    protected final double maxLongitude;
+
+    /**
+     * Creates an index from its binary representation.
+     *
+     * @param buffer the index's binary representation, as written by {@link #save(File)}.
+     *
+     * @throws IllegalArgumentException if the buffer is null.
+     * @throws IOException              if the buffer does not contain an RPF frame index.
+     */
+    protected RPFFrameIndex(ByteBuffer buffer) throws IOException
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (buffer.limit() < HEADER_LENGTH || !FILE_ID.equals(getString(buffer, 0, FILE_ID_LENGTH))
+            || buffer.getInt(VERSION_LOCATION) != VERSION)
+        {
+            throw new IOException(Logging.getMessage("RPFFrameIndex.NotAFrameIndex"));
+        }
+
+        this.buffer = buffer;
+        this.numFrames = buffer.getInt(NUM_FRAMES_LOCATION);
+        this.numDirectories = buffer.getInt(NUM_DIRECTORIES_LOCATION);
+        this.gridRows = buffer.getInt(GRID_ROWS_LOCATION);
+        this.gridColumns = buffer.getInt(GRID_COLUMNS_LOCATION);
+        this.frameTableLocation = buffer.getInt(FRAME_TABLE_LOCATION);
+        this.directoryTableLocation = buffer.getInt(DIRECTORY_TABLE_LOCATION);
+        this.cellTableLocation = buffer.getInt(CELL_TABLE_LOCATION);
+        this.cellFramesLocation = buffer.getInt(CELL_FRAMES_LOCATION);
+        this.rootDirectory = new File(getString(buffer, buffer.getInt(ROOT_PATH_LOCATION),
+            buffer.getInt(ROOT_PATH_LENGTH_LOCATION)));
+        this.minLatitude = buffer.getDouble(BOUNDS_LOCATION);
+        this.maxLatitude = buffer.getDouble(BOUNDS_LOCATION + 8);
+        this.minLongitude = buffer.getDouble(BOUNDS_LOCATION + 16);
+        this.maxLongitude = buffer.getDouble(BOUNDS_LOCATION + 24);
+    }
+
+    /**
+     * Opens an index file by mapping it into memory. The index's records are read from the mapped file as they're
+     * requested.
+     *
+     * @param file the index file.
+     *
+     * @return the index.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the file cannot be read or does not contain an RPF frame index.
+     */
+    public static RPFFrameIndex load(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return new RPFFrameIndex(WWIO.mapFile(file));
+    }
+
+    /**
+     * Writes this index to a file. The index is written to a temporary file that then replaces the specified file, so
+     * indexes mapped from a previous version of the file remain readable.
+     *
+     * @param file the index file.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the file cannot be written.
+     */
+    public void save(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs())
+            throw new IOException(Logging.getMessage("generic.CannotCreateFile", dir));
+
+        File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+        try
+        {
+            if (!WWIO.saveBuffer(this.buffer.duplicate(), tempFile))
+                throw new IOException(Logging.getMessage("generic.ExceptionAttemptingToWriteTo", file));
+
+            // Renaming over an existing file fails on some platforms.
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file)))
+                throw new IOException(Logging.getMessage("generic.ExceptionAttemptingToWriteTo", file));
+        }
+        finally
+        {
+            if (tempFile.exists())
+                tempFile.delete();
+        }
+    }
+
+    /**
+     * Opens the index of a root directory's frames, bringing it up to date with the directory. The index file is
+     * loaded if it exists and indexes the same root directory, and is then refreshed as described by {@link
+     * #createIndex(File, RPFFrameIndex)}. The index file is written only if the index changed.
+     *
+     * @param rootDirectory the directory containing the frame files.
+     * @param indexFile     the index file.
+     *
+     * @return the up to date index.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     * @throws IOException              if the index file cannot be written.
+     */
+    public static RPFFrameIndex open(File rootDirectory, File indexFile) throws IOException
+    {
+        if (rootDirectory == null || indexFile == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        RPFFrameIndex previous = null;
+        if (indexFile.exists())
+        {
+            try
+            {
+                previous = load(indexFile);
+            }
+            catch (IOException e)
+            {
+                // Rebuild the index if the existing file is unreadable.
+                String message = Logging.getMessage("generic.ExceptionAttemptingToReadFile", indexFile);
+                Logging.logger().log(Level.WARNING, message, e);
+            }
+        }
+
+        RPFFrameIndex index = createIndex(rootDirectory, previous);
+        if (index != previous)
+            index.save(indexFile);
+
+        return index;
+    }
+
+    /**
+     * Creates an index of the RPF frame files beneath a root directory. Frame files are recognized by their names, as
+     * they are by {@link RPFCrawler}, and frames whose sector cannot be determined are omitted. If a previous index of
+     * the same root directory is specified, the frames and subdirectories of each directory whose modification time
+     * matches the previous index are taken from that index rather than listed again, and if no directory changed the
+     * previous index itself is returned.
+     *
+     * @param rootDirectory the directory containing the frame files.
+     * @param previous      a previous index of the root directory. May be null.
+     *
+     * @return the index of the root directory's frames.
+     *
+     * @throws IllegalArgumentException if the root directory is null or is not a directory.
+     */
+    public static RPFFrameIndex createIndex(File rootDirectory, RPFFrameIndex previous)
+    {
+        if (rootDirectory == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!rootDirectory.isDirectory())
+        {
+            String message = Logging.getMessage("generic.FolderDoesNotExist", rootDirectory);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        Builder builder = new Builder(rootDirectory);
+        if (previous != null && !previous.getRootDirectory().equals(builder.rootDirectory))
+            previous = null;
+
+        // A directory's subdirectories change only when the directory itself changes, so if none of the previously
+        // indexed directories changed, neither did the tree.
+        if (previous != null && previous.isUpToDate())
+            return previous;
+
+        // Map the previous index's directory paths to their records, and its directories to their subdirectories.
+        Map<String, Integer> previousDirectories = new HashMap<String, Integer>();
+        List<List<Integer>> previousChildren = new ArrayList<List<Integer>>();
+        if (previous != null)
+        {
+            for (int i = 0; i < previous.numDirectories; i++)
+            {
+                previousDirectories.put(previous.getDirectoryPath(i), i);
+                previousChildren.add(new ArrayList<Integer>());
+            }
+
+            for (int i = 0; i < previous.numDirectories; i++)
+            {
+                int parent = previous.getDirectoryParent(i);
+                if (parent >= 0)
+                    previousChildren.get(parent).add(i);
+            }
+        }
+
+        addDirectory(builder, builder.rootDirectory, "", -1, previous, previousDirectories, previousChildren);
+        return builder.build();
+    }
+
+    /**
+     * Adds a directory, its frames and its subdirectories to a builder. The directory is listed only if it's not
+     * recorded by the previous index or has changed since.
+     */
+    protected static void addDirectory(Builder builder, File dir, String path, int parent, RPFFrameIndex previous,
+        Map<String, Integer> previousDirectories, List<List<Integer>> previousChildren)
+    {
+        long lastModified = dir.lastModified();
+
+        Integer previousDir = previousDirectories.get(path);
+        if (previousDir != null && lastModified != 0
+            && previous.getDirectoryLastModified(previousDir) == lastModified)
+        {
+            // The directory is unchanged: copy its frames and visit its subdirectories without listing it.
+            int dirIndex = builder.addDirectory(path, lastModified, parent);
+            int first = previous.getDirectoryFirstFrame(previousDir);
+            int end = first + previous.getDirectoryNumFrames(previousDir);
+            for (int i = first; i < end; i++)
+            {
+                builder.copyFrame(previous, i);
+            }
+
+            for (int child : previousChildren.get(previousDir))
+            {
+                String childPath = previous.getDirectoryPath(child);
+                addDirectory(builder, previous.getDirectory(child), childPath, dirIndex, previous,
+                    previousDirectories, previousChildren);
+            }
+
+            return;
+        }
+
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        Arrays.sort(files);
+        int dirIndex = builder.addDirectory(path, lastModified, parent);
+        List<File> subdirectories = new ArrayList<File>();
+        for (File file : files)
+        {
+            if (RPFFrameFilename.isFilename(file.getName().toUpperCase()))
+            {
+                Sector sector = computeFrameSector(file);
+                if (sector != null)
+                    builder.addFrame(file.getName(), sector, file.lastModified());
+            }
+            else if (file.isDirectory())
+            {
+                subdirectories.add(file);
+            }
+        }
+
+        for (File subdirectory : subdirectories)
+        {
+            String childPath = path.length() == 0 ? subdirectory.getName()
+                : path + File.separator + subdirectory.getName();
+            addDirectory(builder, subdirectory, childPath, dirIndex, previous, previousDirectories, previousChildren);
+        }
+    }
+
+    /**
+     * Computes the sector covered by a frame file. The sector is computed from the file name using the conventions for
+     * CADRG and CIB file names. If that fails, the sector is read from the coverage section of the frame file. Coverage
+     * information in polar frame files in particular is sometimes unreliable, so the file name takes precedence.
+     *
+     * @param file the frame file.
+     *
+     * @return the frame's sector, or null if it cannot be determined.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     */
+    public static Sector computeFrameSector(File file)
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        Sector sector = sectorFromFilename(file);
+        if (sector == null)
+            sector = sectorFromHeader(file);
+
+        return sector;
+    }
+
+    protected static Sector sectorFromFilename(File file)
+    {
+        try
+        {
+            RPFFrameFilename filename = RPFFrameFilename.parseFilename(file.getName().toUpperCase());
+            RPFDataSeries dataSeries = RPFDataSeries.dataSeriesFor(filename.getDataSeriesCode());
+            RPFFrameTransform transform = RPFFrameTransform.createFrameTransform(filename.getZoneCode(),
+                dataSeries.rpfDataType, dataSeries.scaleOrGSD);
+            return transform.computeFrameCoverage(filename.getFrameNumber());
+        }
+        catch (Exception e)
+        {
+            String message = String.format("Exception while computing file sector: %s", file);
+            Logging.logger().log(Level.SEVERE, message, e);
+            return null;
+        }
+    }
+
+    protected static Sector sectorFromHeader(File file)
+    {
+        try
+        {
+            RPFFile rpfFile = RPFImageFile.load(file);
+            NITFSImageSegment imageSegment = (NITFSImageSegment) rpfFile.getNITFSSegment(
+                NITFSSegmentType.IMAGE_SEGMENT);
+            RPFFrameFileComponents comps = imageSegment.getUserDefinedImageSubheader().getRPFFrameFileComponents();
+            Angle minLat = comps.swLowerleft.getLatitude();
+            Angle maxLat = comps.neUpperRight.getLatitude();
+            Angle minLon = comps.swLowerleft.getLongitude();
+            Angle maxLon = comps.neUpperRight.getLongitude();
+            // This sector spans the longitude boundary. In order to render this sector, we must adjust the longitudes
+            // such that minLon<maxLon.
+            if (Angle.crossesLongitudeBoundary(minLon, maxLon) && minLon.compareTo(maxLon) > 0)
+                maxLon = Angle.fromDegrees(360 + maxLon.degrees);
+
+            return new Sector(minLat, maxLat, minLon, maxLon);
+        }
+        catch (Exception e)
+        {
+            String message = String.format("Exception while getting file sector: %s", file);
+            Logging.logger().log(Level.SEVERE, message, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the directory containing the indexed frames. Frame file paths are stored relative to this directory.
+     *
+     * @return the root directory.
+     */
+    public File getRootDirectory()
+    {
+        return this.rootDirectory;
+    }
+
+    /**
+     * Returns the number of indexed frames. Frames are identified by their number, from 0 to one less than this
+     * number.
+     *
+     * @return the number of frames.
+     */
+    public int getNumFrames()
+    {
+        return this.numFrames;
+    }
+
+    /**
+     * Returns the union of the indexed frames' sectors.
+     *
+     * @return the frames' bounding sector, or null if the index contains no frames.
+     */
+    public Sector getBoundingSector()
+    {
+        return this.numFrames > 0 ? Sector.fromDegrees(this.minLatitude, this.maxLatitude, this.minLongitude,
+            this.maxLongitude) : null;
+    }
+
+    /**
+     * Returns a frame's file.
+     *
+     * @param frame the frame number.
+     *
+     * @return the frame's file.
+     *
+     * @throws IllegalArgumentException if the frame number is out of range.
+     */
+    public File getFrameFile(int frame)
+    {
+        int location = this.frameLocation(frame);
+        String filename = getString(this.buffer, location + FRAME_FILENAME_OFFSET, FRAME_FILENAME_LENGTH);
+        return new File(this.getDirectory(this.buffer.getInt(location + FRAME_DIRECTORY_OFFSET)), filename);
+    }
+
+    /**
+     * Returns the sector covered by a frame.
+     *
+     * @param frame the frame number.
+     *
+     * @return the frame's sector.
+     *
+     * @throws IllegalArgumentException if the frame number is out of range.
+     */
+    public Sector getFrameSector(int frame)
+    {
+        int location = this.frameLocation(frame);
+        return Sector.fromDegrees(this.buffer.getDouble(location), this.buffer.getDouble(location + 8),
+            this.buffer.getDouble(location + 16), this.buffer.getDouble(location + 24));
+    }
+
+    /**
+     * Returns the last modified time of a frame's file when it was indexed.
+     *
+     * @param frame the frame number.
+     *
+     * @return the frame file's last modified time, or 0 if it's unknown.
+     *
+     * @throws IllegalArgumentException if the frame number is out of range.
+     */
+    public long getFrameLastModified(int frame)
+    {
+        return this.buffer.getLong(this.frameLocation(frame) + FRAME_LAST_MODIFIED_OFFSET);
+    }
+
+    /**
+     * Returns the two character data series code of a frame. See {@link RPFDataSeries}.
+     *
+     * @param frame the frame number.
+     *
+     * @return the frame's data series code, or null if the frame's file name does not follow the CADRG and CIB naming
+     *         conventions.
+     *
+     * @throws IllegalArgumentException if the frame number is out of range.
+     */
+    public String getFrameDataSeriesCode(int frame)
+    {
+        String code = getString(this.buffer, this.frameLocation(frame) + FRAME_DATA_SERIES_OFFSET, 2);
+        return code.length() > 0 ? code : null;
+    }
+
+    /**
+     * Returns the zone code of a frame. See {@link RPFZone}.
+     *
+     * @param frame the frame number.
+     *
+     * @return the frame's zone code, or 0 if the frame's file name does not follow the CADRG and CIB naming
+     *         conventions.
+     *
+     * @throws IllegalArgumentException if the frame number is out of range.
+     */
+    public char getFrameZoneCode(int frame)
+    {
+        return (char) this.buffer.get(this.frameLocation(frame) + FRAME_ZONE_OFFSET);
+    }
+
+    /**
+     * Finds the frames whose sectors intersect a specified sector, as determined by {@link Sector#intersects(Sector)}.
+     *
+     * @param sector the sector of interest.
+     *
+     * @return the numbers of the intersecting frames, in ascending order.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     */
+    public int[] findFrames(Sector sector)
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        double qMinLat = sector.getMinLatitude().degrees;
+        double qMaxLat = sector.getMaxLatitude().degrees;
+        double qMinLon = sector.getMinLongitude().degrees;
+        double qMaxLon = sector.getMaxLongitude().degrees;
+
+        if (this.numFrames == 0 || qMaxLat < this.minLatitude || qMinLat > this.maxLatitude
+            || qMaxLon < this.minLongitude || qMinLon > this.maxLongitude)
+        {
+            return new int[0];
+        }
+
+        int minRow = this.rowFor(qMinLat);
+        int maxRow = this.rowFor(qMaxLat);
+        int minCol = this.columnFor(qMinLon);
+        int maxCol = this.columnFor(qMaxLon);
+
+        int[] frames = new int[16];
+        int count = 0;
+        for (int row = minRow; row <= maxRow; row++)
+        {
+            for (int col = minCol; col <= maxCol; col++)
+            {
+                int cell = row * this.gridColumns + col;
+                int start = this.buffer.getInt(this.cellTableLocation + 4 * cell);
+                int end = this.buffer.getInt(this.cellTableLocation + 4 * cell + 4);
+                for (int i = start; i < end; i++)
+                {
+                    int frame = this.buffer.getInt(this.cellFramesLocation + 4 * i);
+                    int location = this.frameTableLocation + frame * FRAME_RECORD_LENGTH;
+                    double fMinLat = this.buffer.getDouble(location);
+                    double fMaxLat = this.buffer.getDouble(location + 8);
+                    double fMinLon = this.buffer.getDouble(location + 16);
+                    double fMaxLon = this.buffer.getDouble(location + 24);
+                    if (fMaxLat < qMinLat || fMinLat > qMaxLat || fMaxLon < qMinLon || fMinLon > qMaxLon)
+                        continue;
+
+                    // A frame spanning several cells is listed in each of them. Report it only from the first cell it
+                    // shares with the query.
+                    if (row != Math.max(minRow, this.rowFor(fMinLat))
+                        || col != Math.max(minCol, this.columnFor(fMinLon)))
+                    {
+                        continue;
+                    }
+
+                    if (count == frames.length)
+                        frames = Arrays.copyOf(frames, 2 * count);
+                    frames[count++] = frame;
+                }
+            }
+        }
+
+        frames = Arrays.copyOf(frames, count);
+        Arrays.sort(frames);
+        return frames;
+    }
+
+    protected int frameLocation(int frame)
+    {
+        if (frame < 0 || frame >= this.numFrames)
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", frame);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return this.frameTableLocation + frame * FRAME_RECORD_LENGTH;
+    }
+
+    protected int rowFor(double latitude)
+    {
+        return cellFor(latitude, this.minLatitude, this.maxLatitude, this.gridRows);
+    }
+
+    protected int columnFor(double longitude)
+    {
+        return cellFor(longitude, this.minLongitude, this.maxLongitude, this.gridColumns);
+    }
+
+    protected static int cellFor(double value, double min, double max, int numCells)
+    {
+        int cell = max > min ? (int) ((value - min) / (max - min) * numCells) : 0;
+        return cell < 0 ? 0 : cell >= numCells ? numCells - 1 : cell;
+    }
+
+    /**
+     * Indicates whether the modification time of every indexed directory matches the time recorded by this index.
+     *
+     * @return true if no indexed directory has changed, otherwise false.
+     */
+    protected boolean isUpToDate()
+    {
+        for (int i = 0; i < this.numDirectories; i++)
+        {
+            long lastModified = this.getDirectory(i).lastModified();
+            if (lastModified == 0 || lastModified != this.getDirectoryLastModified(i))
+                return false;
+        }
+
+        return this.numDirectories > 0;
+    }
+
+    protected long getDirectoryLastModified(int dir)
+    {
+        return this.buffer.getLong(this.directoryTableLocation + dir * DIRECTORY_RECORD_LENGTH);
+    }
+
+    protected int getDirectoryParent(int dir)
+    {
+        return this.buffer.getInt(this.directoryTableLocation + dir * DIRECTORY_RECORD_LENGTH
+            + DIRECTORY_PARENT_OFFSET);
+    }
+
+    protected int getDirectoryFirstFrame(int dir)
+    {
+        return this.buffer.getInt(this.directoryTableLocation + dir * DIRECTORY_RECORD_LENGTH
+            + DIRECTORY_FIRST_FRAME_OFFSET);
+    }
+
+    protected int getDirectoryNumFrames(int dir)
+    {
+        return this.buffer.getInt(this.directoryTableLocation + dir * DIRECTORY_RECORD_LENGTH
+            + DIRECTORY_NUM_FRAMES_OFFSET);
+    }
+
+    protected File getDirectory(int dir)
+    {
+        // Directories outside the root directory are recorded by their absolute paths.
+        String path = this.getDirectoryPath(dir);
+        if (path.length() == 0)
+            return this.rootDirectory;
+
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(this.rootDirectory, path);
+    }
+
+    protected String getDirectoryPath(int dir)
+    {
+        int location = this.directoryTableLocation + dir * DIRECTORY_RECORD_LENGTH;
+        return getString(this.buffer, this.buffer.getInt(location + DIRECTORY_PATH_OFFSET),
+            this.buffer.getInt(location + DIRECTORY_PATH_LENGTH_OFFSET));
+    }
+
+    protected static String getString(ByteBuffer buffer, int location, int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = buffer.get(location + i);
+        }
+
+        try
+        {
+            return new String(bytes, CHARACTER_ENCODING).trim();
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected static byte[] getBytes(String s)
+    {
+        try
+        {
+            return s.getBytes(CHARACTER_ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Assembles an index from frame files and their sectors. Frames are grouped by directory in the order they're
+     * added: a frame in a different directory than the frame added before it begins a new directory record.
+     */
+    public static class Builder
+    {
+        protected static class Frame
+        {
+            public double minLatitude;
+            public double maxLatitude;
+            public double minLongitude;
+            public double maxLongitude;
+            public long lastModified;
+            public int directory;
+            public String filename;
+            public String dataSeriesCode;
+            public char zoneCode;
+        }
+
+        protected static class Directory
+        {
+            public String path;
+            public long lastModified;
+            public int parent;
+            public int firstFrame;
+            public int numFrames;
+        }
+
+        protected final File rootDirectory;
+        protected final List<Frame> frames = new ArrayList<Frame>();
+        protected final List<Directory> directories = new ArrayList<Directory>();
+        protected File currentDirectory;
+
+        /**
+         * Creates a builder for an index of frames beneath a root directory.
+         *
+         * @param rootDirectory the directory containing the frame files.
+         *
+         * @throws IllegalArgumentException if the root directory is null.
+         */
+        public Builder(File rootDirectory)
+        {
+            if (rootDirectory == null)
+            {
+                String message = Logging.getMessage("nullValue.FileIsNull");
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            this.rootDirectory = rootDirectory.getAbsoluteFile();
+        }
+
+        /**
+         * Adds a frame to the index.
+         *
+         * @param file         the frame file.
+         * @param sector       the frame's sector.
+         * @param lastModified the frame file's last modified time, or 0 if it's unknown.
+         *
+         * @throws IllegalArgumentException if the file or the sector is null.
+         */
+        public void addFrame(File file, Sector sector, long lastModified)
+        {
+            if (file == null)
+            {
+                String message = Logging.getMessage("nullValue.FileIsNull");
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            if (sector == null)
+            {
+                String message = Logging.getMessage("nullValue.SectorIsNull");
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (this.directories.isEmpty() || !dir.equals(this.currentDirectory))
+            {
+                this.addDirectory(this.relativePath(dir), 0, -1);
+                this.currentDirectory = dir;
+            }
+
+            this.addFrame(file.getName(), sector, lastModified);
+        }
+
+        /**
+         * Creates the index of the added frames.
+         *
+         * @return the index.
+         */
+        public RPFFrameIndex build()
+        {
+            int numFrames = this.frames.size();
+            double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+            double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+            for (Frame frame : this.frames)
+            {
+                minLat = Math.min(minLat, frame.minLatitude);
+                maxLat = Math.max(maxLat, frame.maxLatitude);
+                minLon = Math.min(minLon, frame.minLongitude);
+                maxLon = Math.max(maxLon, frame.maxLongitude);
+            }
+
+            // Size the grid to about one cell per frame, with cells about as tall as they are wide.
+            int rows = 1, cols = 1;
+            if (numFrames > 0 && maxLat > minLat && maxLon > minLon)
+            {
+                double aspect = (maxLat - minLat) / (maxLon - minLon);
+                rows = (int) Math.round(Math.sqrt(numFrames * aspect));
+                rows = Math.max(1, Math.min(MAX_GRID_SIZE, rows));
+                cols = Math.max(1, Math.min(MAX_GRID_SIZE, (int) Math.round((double) numFrames / rows)));
+            }
+
+            // Count each cell's frames, then list each cell's frames contiguously.
+            int[] cellStarts = new int[rows * cols + 1];
+            int[][] frameCells = new int[numFrames][];
+            for (int i = 0; i < numFrames; i++)
+            {
+                Frame frame = this.frames.get(i);
+                frameCells[i] = new int[] {
+                    cellFor(frame.minLatitude, minLat, maxLat, rows), cellFor(frame.maxLatitude, minLat, maxLat, rows),
+                    cellFor(frame.minLongitude, minLon, maxLon, cols), cellFor(frame.maxLongitude, minLon, maxLon, cols)};
+                for (int row = frameCells[i][0]; row <= frameCells[i][1]; row++)
+                {
+                    for (int col = frameCells[i][2]; col <= frameCells[i][3]; col++)
+                    {
+                        cellStarts[row * cols + col + 1]++;
+                    }
+                }
+            }
+            for (int cell = 0; cell < rows * cols; cell++)
+            {
+                cellStarts[cell + 1] += cellStarts[cell];
+            }
+            int[] cellFrames = new int[cellStarts[rows * cols]];
+            int[] cellEnds = Arrays.copyOf(cellStarts, rows * cols);
+            for (int i = 0; i < numFrames; i++)
+            {
+                for (int row = frameCells[i][0]; row <= frameCells[i][1]; row++)
+                {
+                    for (int col = frameCells[i][2]; col <= frameCells[i][3]; col++)
+                    {
+                        cellFrames[cellEnds[row * cols + col]++] = i;
+                    }
+                }
+            }
+
+            byte[] rootPath = getBytes(this.rootDirectory.getPath());
+            byte[][] dirPaths = new byte[this.directories.size()][];
+            int stringsLength = rootPath.length;
+            for (int i = 0; i < dirPaths.length; i++)
+            {
+                dirPaths[i] = getBytes(this.directories.get(i).path);
+                stringsLength += dirPaths[i].length;
+            }
+
+            int frameTableLocation = HEADER_LENGTH;
+            int directoryTableLocation = frameTableLocation + numFrames * FRAME_RECORD_LENGTH;
+            int cellTableLocation = directoryTableLocation + this.directories.size() * DIRECTORY_RECORD_LENGTH;
+            int cellFramesLocation = cellTableLocation + 4 * cellStarts.length;
+            int stringsLocation = cellFramesLocation + 4 * cellFrames.length;
+            ByteBuffer buffer = ByteBuffer.allocate(stringsLocation + stringsLength);
+
+            buffer.put(getBytes(FILE_ID));
+            buffer.putInt(VERSION_LOCATION, VERSION);
+            buffer.putInt(NUM_FRAMES_LOCATION, numFrames);
+            buffer.putInt(NUM_DIRECTORIES_LOCATION, this.directories.size());
+            buffer.putInt(GRID_ROWS_LOCATION, rows);
+            buffer.putInt(GRID_COLUMNS_LOCATION, cols);
+            buffer.putInt(FRAME_TABLE_LOCATION, frameTableLocation);
+            buffer.putInt(DIRECTORY_TABLE_LOCATION, directoryTableLocation);
+            buffer.putInt(CELL_TABLE_LOCATION, cellTableLocation);
+            buffer.putInt(CELL_FRAMES_LOCATION, cellFramesLocation);
+            buffer.putInt(ROOT_PATH_LOCATION, stringsLocation);
+            buffer.putInt(ROOT_PATH_LENGTH_LOCATION, rootPath.length);
+            buffer.putDouble(BOUNDS_LOCATION, minLat);
+            buffer.putDouble(BOUNDS_LOCATION + 8, maxLat);
+            buffer.putDouble(BOUNDS_LOCATION + 16, minLon);
+            buffer.putDouble(BOUNDS_LOCATION + 24, maxLon);
+
+            buffer.position(frameTableLocation);
+            for (Frame frame : this.frames)
+            {
+                buffer.putDouble(frame.minLatitude).putDouble(frame.maxLatitude);
+                buffer.putDouble(frame.minLongitude).putDouble(frame.maxLongitude);
+                buffer.putLong(frame.lastModified).putInt(frame.directory);
+                buffer.put(Arrays.copyOf(getBytes(frame.filename), FRAME_FILENAME_LENGTH));
+                buffer.put(Arrays.copyOf(getBytes(frame.dataSeriesCode), 2));
+                buffer.put((byte) frame.zoneCode).put((byte) 0);
+            }
+
+            int stringLocation = stringsLocation + rootPath.length;
+            for (int i = 0; i < dirPaths.length; i++)
+            {
+                Directory dir = this.directories.get(i);
+                buffer.putLong(dir.lastModified).putInt(dir.parent).putInt(dir.firstFrame).putInt(dir.numFrames);
+                buffer.putInt(stringLocation).putInt(dirPaths[i].length).putInt(0);
+                stringLocation += dirPaths[i].length;
+            }
+
+            for (int cellStart : cellStarts)
+            {
+                buffer.putInt(cellStart);
+            }
+            for (int frame : cellFrames)
+            {
+                buffer.putInt(frame);
+            }
+
+            buffer.put(rootPath);
+            for (byte[] path : dirPaths)
+            {
+                buffer.put(path);
+            }
+
+            buffer.rewind();
+            try
+            {
+                return new RPFFrameIndex(buffer);
+            }
+            catch (IOException e)
+            {
+                // The buffer was just written and is always a valid index.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        protected int addDirectory(String path, long lastModified, int parent)
+        {
+            Directory dir = new Directory();
+            dir.path = path;
+            dir.lastModified = lastModified;
+            dir.parent = parent;
+            dir.firstFrame = this.frames.size();
+            this.directories.add(dir);
+            return this.directories.size() - 1;
+        }
+
+        protected void addFrame(String filename, Sector sector, long lastModified)
+        {
+            Frame frame = new Frame();
+            frame.minLatitude = sector.getMinLatitude().degrees;
+            frame.maxLatitude = sector.getMaxLatitude().degrees;
+            frame.minLongitude = sector.getMinLongitude().degrees;
+            frame.maxLongitude = sector.getMaxLongitude().degrees;
+            frame.lastModified = lastModified;
+            frame.filename = filename;
+            frame.dataSeriesCode = "";
+
+            if (RPFFrameFilename.isFilename(filename.toUpperCase()))
+            {
+                try
+                {
+                    RPFFrameFilename rpfFilename = RPFFrameFilename.parseFilename(filename.toUpperCase());
+                    frame.dataSeriesCode = rpfFilename.getDataSeriesCode();
+                    frame.zoneCode = rpfFilename.getZoneCode();
+                }
+                catch (Exception e)
+                {
+                    String message = Logging.getMessage("RPFCrawler.ExceptionParsingFilename", filename);
+                    Logging.logger().log(Level.FINE, message, e);
+                }
+            }
+
+            this.addFrame(frame);
+        }
+
+        protected void copyFrame(RPFFrameIndex index, int frameNumber)
+        {
+            int location = index.frameLocation(frameNumber);
+            Frame frame = new Frame();
+            frame.minLatitude = index.buffer.getDouble(location);
+            frame.maxLatitude = index.buffer.getDouble(location + 8);
+            frame.minLongitude = index.buffer.getDouble(location + 16);
+            frame.maxLongitude = index.buffer.getDouble(location + 24);
+            frame.lastModified = index.getFrameLastModified(frameNumber);
+            frame.filename = getString(index.buffer, location + FRAME_FILENAME_OFFSET, FRAME_FILENAME_LENGTH);
+            frame.dataSeriesCode = getString(index.buffer, location + FRAME_DATA_SERIES_OFFSET, 2);
+            frame.zoneCode = index.getFrameZoneCode(frameNumber);
+            this.addFrame(frame);
+        }
+
+        protected void addFrame(Frame frame)
+        {
+            if (getBytes(frame.filename).length > FRAME_FILENAME_LENGTH)
+            {
+                String message = Logging.getMessage("RPFFrameFilename.BadFilenameLength", frame.filename.length());
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            frame.directory = this.directories.size() - 1;
+            this.directories.get(frame.directory).numFrames++;
+            this.frames.add(frame);
+        }
+
+        protected String relativePath(File dir)
+        {
+            String rootPath = this.rootDirectory.getPath();
+            String path = dir.getPath();
+            if (path.equals(rootPath))
+                return "";
+            else if (path.startsWith(rootPath + File.separator))
+                return path.substring(rootPath.length() + 1);
+            else
+                return path;
+        }
+    }
+}
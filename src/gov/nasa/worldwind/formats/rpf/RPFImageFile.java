@@ -77,6 +77,19 @@ public class RPFImageFile extends RPFFile
     //}
 
     public BufferedImage getBufferedImage()
+    {
+        return this.getBufferedImage(1);
+    }
+
+    /**
+     * Decodes the frame into a <code>TYPE_INT_ARGB</code> image, dividing the frame's subframes among the specified
+     * number of threads.
+     *
+     * @param threadCount the number of threads that decode the frame.
+     *
+     * @return the decoded image, or null if the file has no image segment.
+     */
+    public BufferedImage getBufferedImage(int threadCount)
     {
         if (null == this.imageSegment)
             return null;
@@ -91,7 +104,7 @@ public class RPFImageFile extends RPFFile
 
 //        IntBuffer buffer = IntBuffer.wrap(dataBuffer.getData());
         int[] buffer = dataBuffer.getData();
-        this.getImageSegment().getImagePixelsAsArray(buffer, RPFImageType.IMAGE_TYPE_ALPHA_RGB);
+        this.getImageSegment().getImagePixelsAsArray(buffer, RPFImageType.IMAGE_TYPE_ALPHA_RGB, threadCount);
         return bimage;
     }
 
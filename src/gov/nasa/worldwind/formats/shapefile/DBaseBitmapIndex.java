@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A bitmap index of one field of a DBase file: the distinct values of the field, and for each value a bitmap of the
+ * records holding it. A query of an indexed field tests each distinct value once, then combines the bitmaps of the
+ * matching values, instead of reading the field of every record. Bitmap indexes suit fields with few distinct values,
+ * such as classifications and codes; each value's bitmap occupies one bit per record.
+ * <p/>
+ * An index is persisted as a single file that is read in place: an index loaded with {@link #load(File)} maps the file
+ * into memory. Values are stored as strings with leading and trailing whitespace removed, as returned by {@link
+ * DBaseTable#getString(int, int)}. Null values are not indexed. Deleted records are indexed by their values.
+ * <p/>
+ * Indexes are immutable and may be read by multiple threads.
+ *
+ * @version $Id$
+ * @see DBaseFile#loadBitmapIndex(String, int)
+ * @see DBaseQuery
+ */
+public class DBaseBitmapIndex
+{
+    /** The maximum number of distinct values indexed by default. */
+    public static final int DEFAULT_MAX_CARDINALITY = 256;
+
+    protected static final String FILE_ID = "DBF_BITMAP_IDX";
+    protected static final int VERSION = 1;
+    protected static final String CHARACTER_ENCODING = "UTF-8";
+
+    // Header field locations.
+    protected static final int VERSION_LOCATION = 16;
+    protected static final int NUM_RECORDS_LOCATION = 20;
+    protected static final int NUM_VALUES_LOCATION = 24;
+    protected static final int BITMAPS_LOCATION_LOCATION = 28;
+    protected static final int DBASE_LENGTH_LOCATION = 32;
+    protected static final int FIELD_NAME_LOCATION = 40;
+    protected static final int FIELD_NAME_LENGTH = 16;
+    protected static final int HEADER_LENGTH = FIELD_NAME_LOCATION + FIELD_NAME_LENGTH;
+
+    protected final ByteBuffer buffer;
+    protected final String fieldName;
+    protected final int numRecords;
+    protected final String[] values;
+    protected final int numWords;
+    protected final int bitmapsLocation;
+
+    /**
+     * Creates an index from its binary representation.
+     *
+     * @param buffer the index's binary representation, as written by {@link #save(File)}.
+     *
+     * @throws IllegalArgumentException if the buffer is null.
+     * @throws IOException              if the buffer does not contain a bitmap index.
+     */
+    protected DBaseBitmapIndex(ByteBuffer buffer) throws IOException
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < HEADER_LENGTH
+            || !FILE_ID.equals(getString(buffer, 0, ShapefileSpatialIndex.FILE_ID_LENGTH))
+            || buffer.getInt(VERSION_LOCATION) != VERSION)
+        {
+            throw new IOException(Logging.getMessage("SHP.NotABitmapIndex"));
+        }
+
+        this.buffer = buffer;
+        this.fieldName = getString(buffer, FIELD_NAME_LOCATION, FIELD_NAME_LENGTH);
+        this.numRecords = buffer.getInt(NUM_RECORDS_LOCATION);
+        this.numWords = (this.numRecords + 63) / 64;
+        this.bitmapsLocation = buffer.getInt(BITMAPS_LOCATION_LOCATION);
+
+        int numValues = buffer.getInt(NUM_VALUES_LOCATION);
+        if (this.numRecords < 0 || numValues < 0
+            || (long) this.bitmapsLocation + 8L * numValues * this.numWords > buffer.limit())
+        {
+            throw new IOException(Logging.getMessage("SHP.NotABitmapIndex"));
+        }
+
+        // Each value is stored as its length in bytes followed by its UTF-8 bytes.
+        this.values = new String[numValues];
+        int location = HEADER_LENGTH;
+        for (int i = 0; i < numValues; i++)
+        {
+            int length = buffer.getInt(location);
+            if (length < 0 || location + 4 + length > this.bitmapsLocation)
+                throw new IOException(Logging.getMessage("SHP.NotABitmapIndex"));
+
+            this.values[i] = getString(buffer, location + 4, length);
+            location += 4 + length;
+        }
+    }
+
+    /**
+     * Opens an index file by mapping it into memory.
+     *
+     * @param file the index file.
+     *
+     * @return the index.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the file cannot be read or does not contain a bitmap index.
+     */
+    public static DBaseBitmapIndex load(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return new DBaseBitmapIndex(WWIO.mapFile(file));
+    }
+
+    /**
+     * Writes this index to a file. The index is written to a temporary file that then replaces the specified file, so
+     * indexes mapped from a previous version of the file remain readable.
+     *
+     * @param file the index file.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the file cannot be written.
+     */
+    public void save(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        ShapefileSpatialIndex.saveBuffer(this.buffer, file);
+    }
+
+    /**
+     * Creates a bitmap index of a field of a table, unless the field has more distinct values than a specified limit.
+     * Creating the index reads the field of every record.
+     *
+     * @param table          the table to index.
+     * @param fieldName      the name of the field to index.
+     * @param maxCardinality the maximum number of distinct values to index.
+     *
+     * @return the index of the field, or null if the field has more than <code>maxCardinality</code> distinct values.
+     *
+     * @throws IllegalArgumentException if the table or field name is null, if the table has no field with the name, or
+     *                                  if the maximum number of values is less than 1.
+     */
+    public static DBaseBitmapIndex createIndex(DBaseTable table, String fieldName, int maxCardinality)
+    {
+        if (table == null)
+        {
+            String message = Logging.getMessage("nullValue.TableIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (fieldName == null)
+        {
+            String message = Logging.getMessage("nullValue.NameIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int field = table.getFieldIndex(fieldName);
+        if (field < 0)
+        {
+            String message = Logging.getMessage("SHP.DBaseFieldNotFound", fieldName);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (maxCardinality < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", maxCardinality);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        // Assign each distinct value a code in the order the values first appear, and record each record's code.
+        int numRecords = table.getNumberOfRecords();
+        int[] codes = new int[numRecords];
+        HashMap<String, Integer> valueCodes = new HashMap<String, Integer>();
+        ArrayList<byte[]> values = new ArrayList<byte[]>();
+        int valuesLength = 0;
+
+        for (int i = 0; i < numRecords; i++)
+        {
+            String value = table.getString(i, field);
+            if (value == null)
+            {
+                codes[i] = -1;
+                continue;
+            }
+
+            Integer code = valueCodes.get(value);
+            if (code == null)
+            {
+                if (values.size() == maxCardinality)
+                    return null;
+
+                code = values.size();
+                valueCodes.put(value, code);
+                values.add(getBytes(value));
+                valuesLength += 4 + values.get(code).length;
+            }
+
+            codes[i] = code;
+        }
+
+        int numWords = (numRecords + 63) / 64;
+        int bitmapsLocation = (HEADER_LENGTH + valuesLength + 7) & ~7; // align the bitmaps to 8 bytes
+        ByteBuffer buffer = ByteBuffer.allocate(bitmapsLocation + 8 * values.size() * numWords);
+        buffer.put(ShapefileSpatialIndex.getFileIdBytes(FILE_ID));
+        buffer.putInt(VERSION_LOCATION, VERSION);
+        buffer.putInt(NUM_RECORDS_LOCATION, numRecords);
+        buffer.putInt(NUM_VALUES_LOCATION, values.size());
+        buffer.putInt(BITMAPS_LOCATION_LOCATION, bitmapsLocation);
+        buffer.putLong(DBASE_LENGTH_LOCATION, table.buffer.limit());
+        buffer.position(FIELD_NAME_LOCATION);
+        buffer.put(Arrays.copyOf(getBytes(fieldName), FIELD_NAME_LENGTH));
+
+        buffer.position(HEADER_LENGTH);
+        for (byte[] value : values)
+        {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+        buffer.clear();
+
+        // Set each record's bit in the bitmap of its value. Bit n of a bitmap is bit n % 64 of its word n / 64, as in
+        // BitSet.valueOf.
+        for (int i = 0; i < numRecords; i++)
+        {
+            if (codes[i] < 0)
+                continue;
+
+            int location = bitmapsLocation + 8 * (codes[i] * numWords + i / 64);
+            buffer.putLong(location, buffer.getLong(location) | (1L << (i % 64)));
+        }
+
+        try
+        {
+            return new DBaseBitmapIndex(buffer);
+        }
+        catch (IOException e)
+        {
+            // The buffer is always a valid index.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Indicates whether this index was created from a table with the same number of records and file length as a
+     * specified table, and whether that table has the indexed field. An index file that doesn't match its table is out
+     * of date.
+     *
+     * @param table the table to compare.
+     *
+     * @return true if the index matches the table, otherwise false.
+     *
+     * @throws IllegalArgumentException if the table is null.
+     */
+    public boolean matches(DBaseTable table)
+    {
+        if (table == null)
+        {
+            String message = Logging.getMessage("nullValue.TableIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return this.numRecords == table.getNumberOfRecords()
+            && this.buffer.getLong(DBASE_LENGTH_LOCATION) == table.buffer.limit()
+            && table.getFieldIndex(this.fieldName) >= 0;
+    }
+
+    public String getFieldName()
+    {
+        return this.fieldName;
+    }
+
+    public int getNumRecords()
+    {
+        return this.numRecords;
+    }
+
+    /**
+     * Returns the number of distinct values of the indexed field.
+     *
+     * @return the number of distinct values.
+     */
+    public int getNumValues()
+    {
+        return this.values.length;
+    }
+
+    /**
+     * Returns a distinct value of the indexed field.
+     *
+     * @param index the value's index, from 0 to one less than the number of values.
+     *
+     * @return the value, with leading and trailing whitespace removed.
+     *
+     * @throws IllegalArgumentException if the index is out of range.
+     */
+    public String getValue(int index)
+    {
+        this.checkValue(index);
+        return this.values[index];
+    }
+
+    /**
+     * Returns the ordinals of the records holding a distinct value of the indexed field.
+     *
+     * @param index the value's index, from 0 to one less than the number of values.
+     *
+     * @return a new bit set with a bit set for each record holding the value.
+     *
+     * @throws IllegalArgumentException if the index is out of range.
+     */
+    public BitSet getRecords(int index)
+    {
+        this.checkValue(index);
+
+        ByteBuffer bitmap = this.buffer.duplicate();
+        bitmap.order(ByteOrder.BIG_ENDIAN);
+        bitmap.position(this.bitmapsLocation + 8 * index * this.numWords);
+        bitmap.limit(bitmap.position() + 8 * this.numWords);
+
+        return BitSet.valueOf(bitmap.slice().asLongBuffer());
+    }
+
+    protected void checkValue(int index)
+    {
+        if (index < 0 || index >= this.values.length)
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", index);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    protected static byte[] getBytes(String s)
+    {
+        try
+        {
+            return s.getBytes(CHARACTER_ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Decodes a string from a buffer, ending at the first zero byte. */
+    protected static String getString(ByteBuffer buffer, int location, int maxLength)
+    {
+        byte[] bytes = new byte[maxLength];
+        int length = 0;
+        while (length < maxLength && buffer.get(location + length) != 0)
+        {
+            bytes[length] = buffer.get(location + length);
+            length++;
+        }
+
+        try
+        {
+            return new String(bytes, 0, length, CHARACTER_ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+}
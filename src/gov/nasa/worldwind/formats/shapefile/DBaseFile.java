@@ -23,6 +23,7 @@ public class DBaseFile extends AVListImpl
 {
     protected static final int FIXED_HEADER_LENGTH = 32;
     protected static final int FIELD_DESCRIPTOR_LENGTH = 32;
+    protected static final String BITMAP_INDEX_FILE_SUFFIX = ".wwb";
     protected static String[] DBASE_CONTENT_TYPES =
         {
             "application/dbase",
@@ -47,6 +48,12 @@ public class DBaseFile extends AVListImpl
     protected boolean open;
     protected int numRecordsRead;
     protected ByteBuffer recordBuffer;
+    // Random access data.
+    protected File file;
+    protected FileChannel randomAccessChannel;
+    protected DBaseTable table;
+    protected boolean tableUnavailable;
+    protected HashMap<String, DBaseBitmapIndex> bitmapIndexes = new HashMap<String, DBaseBitmapIndex>();
 
     public DBaseFile(Object source)
     {
@@ -172,6 +179,189 @@ public class DBaseFile extends AVListImpl
         }
     }
 
+    /**
+     * Indicates whether this DBase file can read records in any order. Random access is available while the file is
+     * open if it was opened from a local file.
+     *
+     * @return <code>true</code> if {@link #readRecord(int)} is available; <code>false</code> otherwise.
+     */
+    public boolean isRandomAccess()
+    {
+        return this.open && this.file != null;
+    }
+
+    /**
+     * Reads the record at a specified ordinal position without reading the records before it. Random access does not
+     * affect sequential reading with {@link #nextRecord()}.
+     *
+     * @param ordinal the record's zero-origin ordinal position.
+     *
+     * @return the record. Its record number is <code>ordinal + 1</code>, as it would be if read by {@link
+     *         #nextRecord()}.
+     *
+     * @throws IllegalArgumentException if the ordinal is less than 0 or not less than the number of records.
+     * @throws IllegalStateException    if this file does not support random access.
+     * @throws WWRuntimeException       if an exception occurs while reading the record.
+     */
+    public synchronized DBaseRecord readRecord(int ordinal)
+    {
+        if (!this.isRandomAccess())
+        {
+            String message = Logging.getMessage("SHP.RandomAccessUnavailable", this.getStringValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        if (ordinal < 0 || ordinal >= this.getNumberOfRecords())
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", ordinal);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        try
+        {
+            // Decode the record from the mapped file when it's available.
+            DBaseTable table = this.getTable();
+            if (table != null && ordinal < table.getNumberOfRecords())
+                return table.readRecord(ordinal);
+
+            if (this.randomAccessChannel == null)
+                this.randomAccessChannel = new RandomAccessFile(this.file, "r").getChannel();
+
+            ByteBuffer buffer = ByteBuffer.allocate(this.getRecordLength());
+            long pos = this.getHeaderLength() + (long) ordinal * this.getRecordLength();
+            while (buffer.hasRemaining())
+            {
+                if (this.randomAccessChannel.read(buffer, pos + buffer.position()) < 0)
+                    throw new EOFException();
+            }
+            buffer.flip();
+
+            return this.readRecordFromBuffer(buffer, ordinal + 1);
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("SHP.ExceptionAttemptingToReadDBaseRecord",
+                this.getStringValue(AVKey.DISPLAY_NAME));
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            throw new WWRuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Returns a columnar view of this file's records that decodes attribute values on demand, without creating a {@link
+     * DBaseRecord} for each record. The table is created the first time this is called by mapping the file into
+     * memory, and remains readable after this file is closed.
+     *
+     * @return this file's records as a table, or null if this file was not opened from a local file or cannot be mapped
+     *         into memory.
+     */
+    public synchronized DBaseTable getTable()
+    {
+        if (this.table != null || this.tableUnavailable || this.file == null)
+            return this.table;
+
+        try
+        {
+            this.table = new DBaseTable(this, WWIO.mapFile(this.file));
+        }
+        catch (IOException e)
+        {
+            this.tableUnavailable = true; // read records sequentially or with readRecord instead
+            String message = Logging.getMessage("SHP.ExceptionAttemptingToMemoryMap", this.file.getPath());
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+        }
+
+        return this.table;
+    }
+
+    /**
+     * Returns the bitmap index of a field loaded by {@link #loadBitmapIndex(String, int)}. Queries of this file's table
+     * evaluate the field with the index.
+     *
+     * @param fieldName the field's name.
+     *
+     * @return the field's bitmap index, or null if none has been loaded.
+     */
+    public synchronized DBaseBitmapIndex getBitmapIndex(String fieldName)
+    {
+        return this.bitmapIndexes.get(fieldName);
+    }
+
+    /**
+     * Loads or creates the bitmap index of a field, and evaluates subsequent queries of the field with the index. This
+     * maps the index file beside this DBase file if it exists, is newer than this file and matches it. Otherwise it
+     * creates the index by reading the field of every record, and attempts to save it beside this file. An index that
+     * cannot be saved is kept in memory.
+     * <p/>
+     * Bitmap indexes suit fields with few distinct values. No index is created for a field with more distinct values
+     * than the specified maximum.
+     *
+     * @param fieldName      the name of the field to index.
+     * @param maxCardinality the maximum number of distinct values to index. {@link
+     *                       DBaseBitmapIndex#DEFAULT_MAX_CARDINALITY} suits most fields.
+     *
+     * @return the field's bitmap index, or null if the field has too many distinct values or if this file has no table;
+     *         see {@link #getTable()}.
+     *
+     * @throws IllegalArgumentException if the field name is null, if this file has no field with the name, or if the
+     *                                  maximum number of values is less than 1.
+     */
+    public synchronized DBaseBitmapIndex loadBitmapIndex(String fieldName, int maxCardinality)
+    {
+        if (fieldName == null)
+        {
+            String message = Logging.getMessage("nullValue.NameIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        DBaseBitmapIndex index = this.bitmapIndexes.get(fieldName);
+        DBaseTable table = this.getTable();
+        if (index != null || table == null)
+            return index;
+
+        File indexFile = new File(WWIO.replaceSuffix(this.file.getPath(),
+            "." + WWIO.replaceIllegalFileNameCharacters(fieldName) + BITMAP_INDEX_FILE_SUFFIX));
+        if (indexFile.exists() && indexFile.lastModified() >= this.file.lastModified())
+        {
+            try
+            {
+                index = DBaseBitmapIndex.load(indexFile);
+                if (!index.matches(table) || !fieldName.equals(index.getFieldName()))
+                    index = null;
+            }
+            catch (IOException e)
+            {
+                // Create the index again if the existing file is unreadable.
+                String message = Logging.getMessage("generic.ExceptionAttemptingToReadFile", indexFile);
+                Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+            }
+        }
+
+        if (index == null)
+        {
+            index = DBaseBitmapIndex.createIndex(table, fieldName, maxCardinality);
+            if (index == null) // the field has too many distinct values
+                return null;
+
+            try
+            {
+                index.save(indexFile);
+            }
+            catch (IOException e)
+            {
+                // The index is still usable. It's created again the next time it's loaded.
+                String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", indexFile);
+                Logging.logger().log(java.util.logging.Level.FINE, message, e);
+            }
+        }
+
+        this.bitmapIndexes.put(fieldName, index);
+        return index;
+    }
+
     public void close()
     {
         if (this.channel != null)
@@ -180,6 +370,12 @@ public class DBaseFile extends AVListImpl
             this.channel = null;
         }
 
+        if (this.randomAccessChannel != null)
+        {
+            WWIO.closeStream(this.randomAccessChannel, null);
+            this.randomAccessChannel = null;
+        }
+
         this.open = false;
         this.recordBuffer = null;
     }
@@ -199,6 +395,7 @@ public class DBaseFile extends AVListImpl
 
         // DBase record reading performs about 200% better when the FileInputStream is wrapped in a BufferedInputStream.
         this.channel = Channels.newChannel(WWIO.getBufferedInputStream(new FileInputStream(file)));
+        this.file = file;
         this.initialize();
     }
 
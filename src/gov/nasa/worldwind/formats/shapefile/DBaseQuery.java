@@ -0,0 +1,1149 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * A predicate on the attributes of DBase records, evaluated against the bytes of a {@link DBaseTable}. Queries compare
+ * a field with a value, a range of values, a list of values or a string prefix, and are combined with {@link
+ * #and(DBaseQuery...)}, {@link #or(DBaseQuery...)} and {@link #not(DBaseQuery)}:
+ * <pre>
+ * DBaseQuery query = DBaseQuery.and(
+ *     DBaseQuery.in("CLASS", 1, 2),
+ *     DBaseQuery.greaterThan("POP", 100000));
+ * int[] ordinals = query.findRecords(shapefile.getAttributeTable());
+ * </pre>
+ * A query is compiled against a table before it's evaluated; see {@link #compile(DBaseTable)}. Compiling resolves field
+ * names to field positions and converts query values to the type of their field's values, so evaluating a record reads
+ * only the bytes of the fields the query refers to, without decoding strings or creating objects. Numeric fields are
+ * compared as numbers, logical fields as booleans, where false is less than true, and character and date fields as
+ * strings. Dates are compared as strings of the form yyyyMMdd, which order as the dates they represent.
+ * <p/>
+ * Comparisons never match a null value; use {@link #isNull(String)} to find null values. {@link #not(DBaseQuery)}
+ * matches every record its query doesn't match, including records whose values are null. Deleted records never match.
+ * <p/>
+ * Fields with a {@link DBaseBitmapIndex} loaded by the table's DBase file are evaluated with the index: each of the
+ * field's distinct values is tested once, and the bitmaps of the matching values are combined. Indexed terms of a
+ * conjunction are evaluated first, so the remaining terms read only the records the index selects.
+ * <p/>
+ * Queries are immutable and may be evaluated by multiple threads.
+ *
+ * @version $Id$
+ * @see Shapefile#findRecords(DBaseQuery)
+ * @see ShapefileRenderable#setRecordsVisible(DBaseQuery)
+ */
+public abstract class DBaseQuery
+{
+    protected static final String CHARACTER_ENCODING = "UTF-8";
+    protected static final String DATE_FORMAT = "yyyyMMdd";
+
+    /**
+     * A query compiled against a table. A matcher is used by a single thread; compile a query for each thread that
+     * evaluates it.
+     */
+    public abstract static class Matcher
+    {
+        /**
+         * Indicates whether a record matches the query.
+         *
+         * @param record the record's ordinal position in the table.
+         *
+         * @return true if the record matches, otherwise false.
+         */
+        public abstract boolean matches(int record);
+
+        /**
+         * Returns the records of a set of candidates that match the query. The default implementation tests each
+         * candidate with {@link #matches(int)}.
+         *
+         * @param candidates the ordinals of the records to test. Not modified.
+         *
+         * @return a new set holding the ordinals of the matching candidates.
+         */
+        public BitSet select(BitSet candidates)
+        {
+            BitSet result = new BitSet(candidates.length());
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+            {
+                if (this.matches(i))
+                    result.set(i);
+            }
+
+            return result;
+        }
+
+        /**
+         * Indicates whether this matcher selects records without reading their values. Indexed matchers are evaluated
+         * before the other terms of a conjunction.
+         *
+         * @return true if this matcher uses an index, otherwise false.
+         */
+        public boolean isIndexed()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Compiles this query against a table.
+     *
+     * @param table the table to evaluate this query against.
+     *
+     * @return a matcher evaluating this query against the table's records.
+     *
+     * @throws IllegalArgumentException if the table is null, if the table has no field with a name this query refers
+     *                                  to, or if a query value cannot be converted to the type of its field's values.
+     */
+    public abstract Matcher compile(DBaseTable table);
+
+    /**
+     * Returns the records of a table that match this query and are not deleted.
+     *
+     * @param table the table to query.
+     *
+     * @return a new set holding the ordinals of the matching records.
+     *
+     * @throws IllegalArgumentException if the table is null, or if this query cannot be compiled against the table.
+     */
+    public BitSet select(DBaseTable table)
+    {
+        if (table == null)
+        {
+            String message = Logging.getMessage("nullValue.TableIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        Matcher matcher = this.compile(table);
+
+        BitSet candidates = new BitSet(table.getNumberOfRecords());
+        for (int i = 0; i < table.getNumberOfRecords(); i++)
+        {
+            if (!table.isDeleted(i))
+                candidates.set(i);
+        }
+
+        return matcher.select(candidates);
+    }
+
+    /**
+     * Returns the ordinal positions of the records of a table that match this query and are not deleted, in ascending
+     * order.
+     *
+     * @param table the table to query.
+     *
+     * @return the ordinals of the matching records. The array is empty if there are none.
+     *
+     * @throws IllegalArgumentException if the table is null, or if this query cannot be compiled against the table.
+     */
+    public int[] findRecords(DBaseTable table)
+    {
+        BitSet records = this.select(table);
+
+        int[] ordinals = new int[records.cardinality()];
+        int count = 0;
+        for (int i = records.nextSetBit(0); i >= 0; i = records.nextSetBit(i + 1))
+        {
+            ordinals[count++] = i;
+        }
+
+        return ordinals;
+    }
+
+    //**************************************************************//
+    //********************  Query Construction  ********************//
+    //**************************************************************//
+
+    /**
+     * Creates a query matching records whose field equals a value.
+     *
+     * @param fieldName the field's name.
+     * @param value     the value to compare with.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public static DBaseQuery equalTo(String fieldName, Object value)
+    {
+        checkValue(value);
+        return new RangeQuery(fieldName, value, true, value, true);
+    }
+
+    /**
+     * Creates a query matching records whose field is less than a value.
+     *
+     * @param fieldName the field's name.
+     * @param value     the value to compare with.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public static DBaseQuery lessThan(String fieldName, Object value)
+    {
+        checkValue(value);
+        return new RangeQuery(fieldName, null, false, value, false);
+    }
+
+    /**
+     * Creates a query matching records whose field is less than or equal to a value.
+     *
+     * @param fieldName the field's name.
+     * @param value     the value to compare with.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public static DBaseQuery lessThanOrEqualTo(String fieldName, Object value)
+    {
+        checkValue(value);
+        return new RangeQuery(fieldName, null, false, value, true);
+    }
+
+    /**
+     * Creates a query matching records whose field is greater than a value.
+     *
+     * @param fieldName the field's name.
+     * @param value     the value to compare with.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public static DBaseQuery greaterThan(String fieldName, Object value)
+    {
+        checkValue(value);
+        return new RangeQuery(fieldName, value, false, null, false);
+    }
+
+    /**
+     * Creates a query matching records whose field is greater than or equal to a value.
+     *
+     * @param fieldName the field's name.
+     * @param value     the value to compare with.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public static DBaseQuery greaterThanOrEqualTo(String fieldName, Object value)
+    {
+        checkValue(value);
+        return new RangeQuery(fieldName, value, true, null, false);
+    }
+
+    /**
+     * Creates a query matching records whose field is within a range of values, inclusive.
+     *
+     * @param fieldName the field's name.
+     * @param min       the least value in the range.
+     * @param max       the greatest value in the range.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if any argument is null.
+     */
+    public static DBaseQuery between(String fieldName, Object min, Object max)
+    {
+        checkValue(min);
+        checkValue(max);
+        return new RangeQuery(fieldName, min, true, max, true);
+    }
+
+    /**
+     * Creates a query matching records whose field equals one of a list of values.
+     *
+     * @param fieldName the field's name.
+     * @param values    the values to compare with.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if the field name or values are null, or if any value is null.
+     */
+    public static DBaseQuery in(String fieldName, Object... values)
+    {
+        if (values == null)
+        {
+            String message = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        for (Object value : values)
+        {
+            checkValue(value);
+        }
+
+        return new InQuery(fieldName, values.clone());
+    }
+
+    /**
+     * Creates a query matching records whose field starts with a prefix. The field's value is compared as a string
+     * whatever its type, ignoring leading whitespace.
+     *
+     * @param fieldName the field's name.
+     * @param prefix    the prefix to compare with.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public static DBaseQuery startsWith(String fieldName, String prefix)
+    {
+        if (prefix == null)
+        {
+            String message = Logging.getMessage("nullValue.PrefixIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return new PrefixQuery(fieldName, prefix);
+    }
+
+    /**
+     * Creates a query matching records whose field is null: empty, or filled with spaces or asterisks.
+     *
+     * @param fieldName the field's name.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if the field name is null.
+     */
+    public static DBaseQuery isNull(String fieldName)
+    {
+        return new NullQuery(fieldName);
+    }
+
+    /**
+     * Creates a query matching records that match every one of a list of queries. A conjunction of no queries matches
+     * every record.
+     *
+     * @param queries the queries to combine.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if the queries are null, or if any query is null.
+     */
+    public static DBaseQuery and(DBaseQuery... queries)
+    {
+        return new AndQuery(checkQueries(queries));
+    }
+
+    /**
+     * Creates a query matching records that match any one of a list of queries. A disjunction of no queries matches no
+     * record.
+     *
+     * @param queries the queries to combine.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if the queries are null, or if any query is null.
+     */
+    public static DBaseQuery or(DBaseQuery... queries)
+    {
+        return new OrQuery(checkQueries(queries));
+    }
+
+    /**
+     * Creates a query matching records that don't match a query.
+     *
+     * @param query the query to negate.
+     *
+     * @return the query.
+     *
+     * @throws IllegalArgumentException if the query is null.
+     */
+    public static DBaseQuery not(DBaseQuery query)
+    {
+        if (query == null)
+        {
+            String message = Logging.getMessage("nullValue.QueryIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return new NotQuery(query);
+    }
+
+    protected static void checkValue(Object value)
+    {
+        if (value == null)
+        {
+            String message = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    protected static DBaseQuery[] checkQueries(DBaseQuery[] queries)
+    {
+        if (queries == null)
+        {
+            String message = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        for (DBaseQuery query : queries)
+        {
+            if (query == null)
+            {
+                String message = Logging.getMessage("nullValue.QueryIsNull");
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+        }
+
+        return queries.clone();
+    }
+
+    //**************************************************************//
+    //********************  Field Queries  *************************//
+    //**************************************************************//
+
+    /** A query of one field. Compiling the query uses the field's bitmap index when one is loaded. */
+    protected abstract static class FieldQuery extends DBaseQuery
+    {
+        protected final String fieldName;
+
+        public FieldQuery(String fieldName)
+        {
+            if (fieldName == null)
+            {
+                String message = Logging.getMessage("nullValue.NameIsNull");
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public Matcher compile(DBaseTable table)
+        {
+            if (table == null)
+            {
+                String message = Logging.getMessage("nullValue.TableIsNull");
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            int field = table.getFieldIndex(this.fieldName);
+            if (field < 0)
+            {
+                String message = Logging.getMessage("SHP.DBaseFieldNotFound", this.fieldName);
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            FieldMatcher matcher = this.createMatcher(table, field);
+
+            DBaseBitmapIndex index = this.isIndexable() ? table.getDBaseFile().getBitmapIndex(this.fieldName) : null;
+            if (index != null && index.matches(table))
+                return new IndexMatcher(index, matcher);
+
+            return matcher;
+        }
+
+        /**
+         * Indicates whether this query can be evaluated with a bitmap index, which holds only the field's non-null
+         * values.
+         *
+         * @return true if this query never matches a null value, otherwise false.
+         */
+        protected boolean isIndexable()
+        {
+            return true;
+        }
+
+        protected abstract FieldMatcher createMatcher(DBaseTable table, int field);
+    }
+
+    protected static class RangeQuery extends FieldQuery
+    {
+        protected final Object min;
+        protected final boolean minInclusive;
+        protected final Object max;
+        protected final boolean maxInclusive;
+
+        /** Creates a query of the range between two values. A null value indicates the range is unbounded. */
+        public RangeQuery(String fieldName, Object min, boolean minInclusive, Object max, boolean maxInclusive)
+        {
+            super(fieldName);
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+        }
+
+        @Override
+        protected FieldMatcher createMatcher(DBaseTable table, int field)
+        {
+            if (isNumeric(table.getField(field)))
+            {
+                double min = this.min != null ? toNumber(this.min, table.getField(field)) : Double.NEGATIVE_INFINITY;
+                double max = this.max != null ? toNumber(this.max, table.getField(field)) : Double.POSITIVE_INFINITY;
+                return new NumberRangeMatcher(table, field, min, this.minInclusive, max, this.maxInclusive);
+            }
+            else
+            {
+                byte[] min = this.min != null ? toBytes(this.min) : null;
+                byte[] max = this.max != null ? toBytes(this.max) : null;
+                return new StringRangeMatcher(table, field, min, this.minInclusive, max, this.maxInclusive);
+            }
+        }
+    }
+
+    protected static class InQuery extends FieldQuery
+    {
+        protected final Object[] values;
+
+        public InQuery(String fieldName, Object[] values)
+        {
+            super(fieldName);
+            this.values = values;
+        }
+
+        @Override
+        protected FieldMatcher createMatcher(DBaseTable table, int field)
+        {
+            if (isNumeric(table.getField(field)))
+            {
+                double[] numbers = new double[this.values.length];
+                for (int i = 0; i < this.values.length; i++)
+                {
+                    numbers[i] = toNumber(this.values[i], table.getField(field)) + 0.0; // convert -0.0 to 0.0
+                }
+
+                Arrays.sort(numbers);
+                return new NumberInMatcher(table, field, numbers);
+            }
+            else
+            {
+                byte[][] strings = new byte[this.values.length][];
+                for (int i = 0; i < this.values.length; i++)
+                {
+                    strings[i] = toBytes(this.values[i]);
+                }
+
+                Arrays.sort(strings, new Comparator<byte[]>()
+                {
+                    @Override
+                    public int compare(byte[] a, byte[] b)
+                    {
+                        return compareBytes(a, b);
+                    }
+                });
+                return new StringInMatcher(table, field, strings);
+            }
+        }
+    }
+
+    protected static class PrefixQuery extends FieldQuery
+    {
+        protected final String prefix;
+
+        public PrefixQuery(String fieldName, String prefix)
+        {
+            super(fieldName);
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected FieldMatcher createMatcher(DBaseTable table, int field)
+        {
+            return new PrefixMatcher(table, field, getBytes(this.prefix));
+        }
+    }
+
+    protected static class NullQuery extends FieldQuery
+    {
+        public NullQuery(String fieldName)
+        {
+            super(fieldName);
+        }
+
+        @Override
+        protected boolean isIndexable()
+        {
+            return false;
+        }
+
+        @Override
+        protected FieldMatcher createMatcher(DBaseTable table, final int field)
+        {
+            return new FieldMatcher(table, field)
+            {
+                @Override
+                public boolean matches(int record)
+                {
+                    return this.table.isNull(record, this.field);
+                }
+
+                @Override
+                public boolean matchesValue(String value)
+                {
+                    return false;
+                }
+            };
+        }
+    }
+
+    //**************************************************************//
+    //********************  Compound Queries  **********************//
+    //**************************************************************//
+
+    protected static class AndQuery extends DBaseQuery
+    {
+        protected final DBaseQuery[] queries;
+
+        public AndQuery(DBaseQuery[] queries)
+        {
+            this.queries = queries;
+        }
+
+        @Override
+        public Matcher compile(DBaseTable table)
+        {
+            // Evaluate indexed terms first. They narrow the candidates read by the other terms without reading records.
+            ArrayList<Matcher> matchers = new ArrayList<Matcher>(this.queries.length);
+            for (DBaseQuery query : this.queries)
+            {
+                Matcher matcher = query.compile(table);
+                if (matcher.isIndexed())
+                    matchers.add(0, matcher);
+                else
+                    matchers.add(matcher);
+            }
+
+            final Matcher[] terms = matchers.toArray(new Matcher[matchers.size()]);
+            return new Matcher()
+            {
+                @Override
+                public boolean matches(int record)
+                {
+                    for (Matcher term : terms)
+                    {
+                        if (!term.matches(record))
+                            return false;
+                    }
+
+                    return true;
+                }
+
+                @Override
+                public BitSet select(BitSet candidates)
+                {
+                    BitSet result = (BitSet) candidates.clone();
+                    for (int i = 0; i < terms.length && !result.isEmpty(); i++)
+                    {
+                        result = terms[i].select(result);
+                    }
+
+                    return result;
+                }
+
+                @Override
+                public boolean isIndexed()
+                {
+                    return terms.length > 0 && terms[terms.length - 1].isIndexed();
+                }
+            };
+        }
+    }
+
+    protected static class OrQuery extends DBaseQuery
+    {
+        protected final DBaseQuery[] queries;
+
+        public OrQuery(DBaseQuery[] queries)
+        {
+            this.queries = queries;
+        }
+
+        @Override
+        public Matcher compile(DBaseTable table)
+        {
+            final Matcher[] terms = new Matcher[this.queries.length];
+            for (int i = 0; i < terms.length; i++)
+            {
+                terms[i] = this.queries[i].compile(table);
+            }
+
+            return new Matcher()
+            {
+                @Override
+                public boolean matches(int record)
+                {
+                    for (Matcher term : terms)
+                    {
+                        if (term.matches(record))
+                            return true;
+                    }
+
+                    return false;
+                }
+
+                @Override
+                public BitSet select(BitSet candidates)
+                {
+                    // Each term tests only the candidates the previous terms have not matched.
+                    BitSet result = new BitSet(candidates.length());
+                    BitSet remaining = (BitSet) candidates.clone();
+                    for (int i = 0; i < terms.length && !remaining.isEmpty(); i++)
+                    {
+                        BitSet selected = terms[i].select(remaining);
+                        result.or(selected);
+                        remaining.andNot(selected);
+                    }
+
+                    return result;
+                }
+
+                @Override
+                public boolean isIndexed()
+                {
+                    for (Matcher term : terms)
+                    {
+                        if (!term.isIndexed())
+                            return false;
+                    }
+
+                    return true;
+                }
+            };
+        }
+    }
+
+    protected static class NotQuery extends DBaseQuery
+    {
+        protected final DBaseQuery query;
+
+        public NotQuery(DBaseQuery query)
+        {
+            this.query = query;
+        }
+
+        @Override
+        public Matcher compile(DBaseTable table)
+        {
+            final Matcher term = this.query.compile(table);
+
+            return new Matcher()
+            {
+                @Override
+                public boolean matches(int record)
+                {
+                    return !term.matches(record);
+                }
+
+                @Override
+                public BitSet select(BitSet candidates)
+                {
+                    BitSet result = (BitSet) candidates.clone();
+                    result.andNot(term.select(candidates));
+                    return result;
+                }
+
+                @Override
+                public boolean isIndexed()
+                {
+                    return term.isIndexed();
+                }
+            };
+        }
+    }
+
+    //**************************************************************//
+    //********************  Matchers  ******************************//
+    //**************************************************************//
+
+    /** Matches the values of one field of a table. */
+    protected abstract static class FieldMatcher extends Matcher
+    {
+        protected final DBaseTable table;
+        protected final int field;
+        protected final boolean logical;
+
+        public FieldMatcher(DBaseTable table, int field)
+        {
+            this.table = table;
+            this.field = field;
+            this.logical = DBaseField.TYPE_BOOLEAN.equals(table.getField(field).getType());
+        }
+
+        /**
+         * Indicates whether a value of the field matches. This is used to match the distinct values held by a bitmap
+         * index.
+         *
+         * @param value a non-null value of the field, with leading and trailing whitespace removed.
+         *
+         * @return true if the value matches, otherwise false.
+         */
+        public abstract boolean matchesValue(String value);
+
+        /** Returns a numeric or logical field of a record as a number, or NaN if the value is null. */
+        protected double getNumber(int record)
+        {
+            if (!this.logical)
+                return this.table.getDouble(record, this.field);
+
+            if (this.table.isNull(record, this.field))
+                return Double.NaN;
+
+            return this.table.getBoolean(record, this.field) ? 1 : 0;
+        }
+
+        /** Converts a value of a numeric or logical field to a number, as {@link #getNumber(int)} does. */
+        protected double parseNumber(String value)
+        {
+            if (this.logical)
+                return value.length() == 1 && "TtYy".indexOf(value.charAt(0)) >= 0 ? 1 : 0;
+
+            try
+            {
+                return Double.parseDouble(value);
+            }
+            catch (NumberFormatException e)
+            {
+                return Double.NaN;
+            }
+        }
+    }
+
+    protected static class NumberRangeMatcher extends FieldMatcher
+    {
+        protected final double min;
+        protected final boolean minInclusive;
+        protected final double max;
+        protected final boolean maxInclusive;
+
+        public NumberRangeMatcher(DBaseTable table, int field, double min, boolean minInclusive, double max,
+            boolean maxInclusive)
+        {
+            super(table, field);
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+        }
+
+        @Override
+        public boolean matches(int record)
+        {
+            return this.matchesNumber(this.getNumber(record));
+        }
+
+        @Override
+        public boolean matchesValue(String value)
+        {
+            return this.matchesNumber(this.parseNumber(value));
+        }
+
+        protected boolean matchesNumber(double d)
+        {
+            // Comparisons with NaN are false, so null values never match.
+            return (this.minInclusive ? d >= this.min : d > this.min)
+                && (this.maxInclusive ? d <= this.max : d < this.max);
+        }
+    }
+
+    protected static class NumberInMatcher extends FieldMatcher
+    {
+        protected final double[] values;
+
+        /** Creates a matcher of a list of values, sorted in ascending order. */
+        public NumberInMatcher(DBaseTable table, int field, double[] values)
+        {
+            super(table, field);
+            this.values = values;
+        }
+
+        @Override
+        public boolean matches(int record)
+        {
+            return this.matchesNumber(this.getNumber(record));
+        }
+
+        @Override
+        public boolean matchesValue(String value)
+        {
+            return this.matchesNumber(this.parseNumber(value));
+        }
+
+        protected boolean matchesNumber(double d)
+        {
+            return !Double.isNaN(d) && Arrays.binarySearch(this.values, d + 0.0) >= 0;
+        }
+    }
+
+    protected static class StringRangeMatcher extends FieldMatcher
+    {
+        protected final byte[] min;
+        protected final boolean minInclusive;
+        protected final byte[] max;
+        protected final boolean maxInclusive;
+        protected final boolean equality;
+
+        public StringRangeMatcher(DBaseTable table, int field, byte[] min, boolean minInclusive, byte[] max,
+            boolean maxInclusive)
+        {
+            super(table, field);
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+            this.equality = minInclusive && maxInclusive && min != null && Arrays.equals(min, max);
+        }
+
+        @Override
+        public boolean matches(int record)
+        {
+            if (this.equality)
+                return this.table.compareString(record, this.field, this.min) == 0
+                    && !this.table.isNull(record, this.field);
+
+            if (this.min != null && !this.isAboveMin(this.table.compareString(record, this.field, this.min)))
+                return false;
+
+            if (this.max != null && !this.isBelowMax(this.table.compareString(record, this.field, this.max)))
+                return false;
+
+            // Null values compare as empty strings. Exclude them only when they'd otherwise match.
+            return !this.table.isNull(record, this.field);
+        }
+
+        @Override
+        public boolean matchesValue(String value)
+        {
+            byte[] bytes = getBytes(value);
+            return (this.min == null || this.isAboveMin(compareBytes(bytes, this.min)))
+                && (this.max == null || this.isBelowMax(compareBytes(bytes, this.max)));
+        }
+
+        protected boolean isAboveMin(int comparison)
+        {
+            return this.minInclusive ? comparison >= 0 : comparison > 0;
+        }
+
+        protected boolean isBelowMax(int comparison)
+        {
+            return this.maxInclusive ? comparison <= 0 : comparison < 0;
+        }
+    }
+
+    protected static class StringInMatcher extends FieldMatcher
+    {
+        protected final byte[][] values;
+
+        /** Creates a matcher of a list of values, sorted in ascending order as unsigned bytes. */
+        public StringInMatcher(DBaseTable table, int field, byte[][] values)
+        {
+            super(table, field);
+            this.values = values;
+        }
+
+        @Override
+        public boolean matches(int record)
+        {
+            int low = 0;
+            int high = this.values.length - 1;
+            while (low <= high)
+            {
+                int mid = (low + high) >>> 1;
+                int comparison = this.table.compareString(record, this.field, this.values[mid]);
+                if (comparison > 0)
+                    low = mid + 1;
+                else if (comparison < 0)
+                    high = mid - 1;
+                else
+                    return !this.table.isNull(record, this.field);
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean matchesValue(String value)
+        {
+            byte[] bytes = getBytes(value);
+            for (byte[] b : this.values)
+            {
+                if (compareBytes(bytes, b) == 0)
+                    return true;
+            }
+
+            return false;
+        }
+    }
+
+    protected static class PrefixMatcher extends FieldMatcher
+    {
+        protected final byte[] prefix;
+
+        public PrefixMatcher(DBaseTable table, int field, byte[] prefix)
+        {
+            super(table, field);
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean matches(int record)
+        {
+            return this.table.startsWith(record, this.field, this.prefix) && !this.table.isNull(record, this.field);
+        }
+
+        @Override
+        public boolean matchesValue(String value)
+        {
+            byte[] bytes = getBytes(value);
+            return bytes.length >= this.prefix.length
+                && compareBytes(Arrays.copyOf(bytes, this.prefix.length), this.prefix) == 0;
+        }
+    }
+
+    /** Matches the records holding the values of a bitmap index that match a field matcher. */
+    protected static class IndexMatcher extends Matcher
+    {
+        protected final DBaseBitmapIndex index;
+        protected final FieldMatcher matcher;
+        protected BitSet records;
+
+        public IndexMatcher(DBaseBitmapIndex index, FieldMatcher matcher)
+        {
+            this.index = index;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean matches(int record)
+        {
+            return this.getRecords().get(record);
+        }
+
+        @Override
+        public BitSet select(BitSet candidates)
+        {
+            BitSet result = (BitSet) this.getRecords().clone();
+            result.and(candidates);
+            return result;
+        }
+
+        @Override
+        public boolean isIndexed()
+        {
+            return true;
+        }
+
+        protected BitSet getRecords()
+        {
+            if (this.records == null)
+            {
+                BitSet records = new BitSet(this.index.getNumRecords());
+                for (int i = 0; i < this.index.getNumValues(); i++)
+                {
+                    if (this.matcher.matchesValue(this.index.getValue(i)))
+                        records.or(this.index.getRecords(i));
+                }
+
+                this.records = records;
+            }
+
+            return this.records;
+        }
+    }
+
+    //**************************************************************//
+    //********************  Value Conversion  **********************//
+    //**************************************************************//
+
+    protected static boolean isNumeric(DBaseField field)
+    {
+        return DBaseField.TYPE_NUMBER.equals(field.getType()) || DBaseField.TYPE_BOOLEAN.equals(field.getType());
+    }
+
+    /**
+     * Converts a query value to a number comparable with the values of a numeric or logical field. Logical values are
+     * 1 for true and 0 for false.
+     */
+    protected static double toNumber(Object value, DBaseField field)
+    {
+        if (DBaseField.TYPE_BOOLEAN.equals(field.getType()))
+        {
+            if (value instanceof Boolean)
+                return (Boolean) value ? 1 : 0;
+
+            String s = value.toString().trim();
+            return s.equalsIgnoreCase("T") || s.equalsIgnoreCase("Y") || s.equalsIgnoreCase("true") ? 1 : 0;
+        }
+
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+
+        try
+        {
+            if (!(value instanceof Date) && !(value instanceof Boolean))
+                return Double.parseDouble(value.toString().trim());
+        }
+        catch (NumberFormatException e)
+        {
+            // Fall through to the exception below.
+        }
+
+        String message = Logging.getMessage("SHP.InvalidQueryValue", value, field.getName());
+        Logging.logger().severe(message);
+        throw new IllegalArgumentException(message);
+    }
+
+    /** Converts a query value to the UTF-8 bytes of a string comparable with the values of a character field. */
+    protected static byte[] toBytes(Object value)
+    {
+        String s;
+        if (value instanceof Date)
+            s = new SimpleDateFormat(DATE_FORMAT).format((Date) value);
+        else if (value instanceof Boolean)
+            s = (Boolean) value ? "T" : "F";
+        else
+            s = value.toString().trim();
+
+        return getBytes(s);
+    }
+
+    protected static byte[] getBytes(String s)
+    {
+        try
+        {
+            return s.getBytes(CHARACTER_ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Compares two byte arrays lexicographically as unsigned bytes, as {@link DBaseTable#compareString} does. */
+    protected static int compareBytes(byte[] a, byte[] b)
+    {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++)
+        {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0)
+                return diff;
+        }
+
+        return a.length - b.length;
+    }
+}
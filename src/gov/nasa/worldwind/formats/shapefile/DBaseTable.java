@@ -0,0 +1,709 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.avlist.AVList;
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.*;
+import java.text.*;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * A columnar view of the records of a {@link DBaseFile} mapped into memory. Attribute values are decoded on demand by
+ * record and field, so reading a few fields of each record costs neither the time nor the memory of decoding every
+ * field into a {@link DBaseRecord}. Numeric and boolean values are read directly from the file's bytes into primitive
+ * values.
+ * <p/>
+ * Records are identified by their zero-origin ordinal position in the file, and fields by their index in this table. A
+ * table may be a projection of another table onto some of its fields; see {@link #project(String...)}. Values decoded
+ * by {@link #getValue(int, int)} are the same as those in the corresponding DBaseRecord.
+ * <p/>
+ * Tables are immutable and may be read by multiple threads. A table remains readable after its DBaseFile is closed.
+ *
+ * @version $Id$
+ * @see DBaseFile#getTable()
+ */
+public class DBaseTable
+{
+    /** Exact powers of ten used to decode decimal numbers with at most 15 significant digits. */
+    protected static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15};
+    protected static final int MAX_FAST_DIGITS = 15;
+
+    protected final DBaseFile dbaseFile;
+    protected final ByteBuffer buffer;
+    protected final int numRecords;
+    protected final int headerLength;
+    protected final int recordLength;
+    // Properties of the fields in this table, which may be a subset of the file's fields.
+    protected final DBaseField[] fields;
+    protected final int[] fieldOffsets;
+    protected final HashMap<String, Integer> fieldIndices = new HashMap<String, Integer>();
+
+    /**
+     * Creates a table of all the fields of a DBase file.
+     *
+     * @param dbaseFile the DBase file whose header and fields describe the buffer.
+     * @param buffer    the DBase file's contents.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public DBaseTable(DBaseFile dbaseFile, ByteBuffer buffer)
+    {
+        if (dbaseFile == null)
+        {
+            String message = Logging.getMessage("nullValue.DBaseFileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.dbaseFile = dbaseFile;
+        this.buffer = buffer;
+        this.headerLength = dbaseFile.getHeaderLength();
+        this.recordLength = dbaseFile.getRecordLength();
+        // Ignore records beyond the end of a truncated file.
+        long available = this.recordLength > 0 ? (buffer.limit() - this.headerLength) / this.recordLength : 0;
+        this.numRecords = (int) Math.max(0, Math.min(dbaseFile.getNumberOfRecords(), available));
+        this.fields = dbaseFile.getFields();
+        this.fieldOffsets = new int[this.fields.length];
+
+        int offset = 1; // skip the deleted record flag
+        for (int i = 0; i < this.fields.length; i++)
+        {
+            this.fieldOffsets[i] = offset;
+            this.fieldIndices.put(this.fields[i].getName(), i);
+            offset += this.fields[i].getLength();
+        }
+    }
+
+    /**
+     * Creates a projection of a table onto some of its fields.
+     *
+     * @param table  the table to project.
+     * @param fields the indices of the projected fields in the table.
+     */
+    protected DBaseTable(DBaseTable table, int[] fields)
+    {
+        this.dbaseFile = table.dbaseFile;
+        this.buffer = table.buffer;
+        this.numRecords = table.numRecords;
+        this.headerLength = table.headerLength;
+        this.recordLength = table.recordLength;
+        this.fields = new DBaseField[fields.length];
+        this.fieldOffsets = new int[fields.length];
+
+        for (int i = 0; i < fields.length; i++)
+        {
+            this.fields[i] = table.fields[fields[i]];
+            this.fieldOffsets[i] = table.fieldOffsets[fields[i]];
+            this.fieldIndices.put(this.fields[i].getName(), i);
+        }
+    }
+
+    /**
+     * Returns a projection of this table onto the named fields. The fields of the projection are in the order they're
+     * named. Reading a field of the projection reads the same value as reading the field from this table.
+     *
+     * @param fieldNames the names of the fields to include.
+     *
+     * @return a table of the named fields.
+     *
+     * @throws IllegalArgumentException if the field names are null, or if this table has no field with one of the
+     *                                  names.
+     */
+    public DBaseTable project(String... fieldNames)
+    {
+        if (fieldNames == null)
+        {
+            String message = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int[] indices = new int[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++)
+        {
+            indices[i] = this.getFieldIndex(fieldNames[i]);
+            if (indices[i] < 0)
+            {
+                String message = Logging.getMessage("SHP.DBaseFieldNotFound", fieldNames[i]);
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+        }
+
+        return new DBaseTable(this, indices);
+    }
+
+    /**
+     * Returns the DBase file this table reads.
+     *
+     * @return this table's DBase file.
+     */
+    public DBaseFile getDBaseFile()
+    {
+        return this.dbaseFile;
+    }
+
+    public int getNumberOfRecords()
+    {
+        return this.numRecords;
+    }
+
+    public int getNumberOfFields()
+    {
+        return this.fields.length;
+    }
+
+    public DBaseField[] getFields()
+    {
+        return this.fields.clone();
+    }
+
+    public DBaseField getField(int field)
+    {
+        this.checkField(field);
+        return this.fields[field];
+    }
+
+    /**
+     * Returns the index in this table of the field with a specified name.
+     *
+     * @param name the field's name.
+     *
+     * @return the field's index, or -1 if this table has no field with the name.
+     */
+    public int getFieldIndex(String name)
+    {
+        Integer index = this.fieldIndices.get(name);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Indicates whether a record is marked as deleted.
+     *
+     * @param record the record's ordinal position.
+     *
+     * @return true if the record is deleted, otherwise false.
+     *
+     * @throws IllegalArgumentException if the record is out of range.
+     */
+    public boolean isDeleted(int record)
+    {
+        this.checkRecord(record);
+        return this.buffer.get(this.getRecordPosition(record)) == 0x2A;
+    }
+
+    /**
+     * Indicates whether a field of a record has no value. A value is null when it's empty or filled with spaces or
+     * asterisks, as it is in the corresponding {@link DBaseRecord}.
+     *
+     * @param record the record's ordinal position.
+     * @param field  the field's index.
+     *
+     * @return true if the value is null, otherwise false.
+     *
+     * @throws IllegalArgumentException if the record or field is out of range.
+     */
+    public boolean isNull(int record, int field)
+    {
+        int pos = this.getFieldPosition(record, field);
+        int length = this.getValueLength(pos, this.fields[field].getLength());
+        return this.isEmpty(pos, length);
+    }
+
+    /**
+     * Returns a field of a record as a string with leading and trailing whitespace removed.
+     *
+     * @param record the record's ordinal position.
+     * @param field  the field's index.
+     *
+     * @return the field's value, or null if the value is null.
+     *
+     * @throws IllegalArgumentException if the record or field is out of range.
+     */
+    public String getString(int record, int field)
+    {
+        int pos = this.getFieldPosition(record, field);
+        int length = this.getValueLength(pos, this.fields[field].getLength());
+        if (this.isEmpty(pos, length))
+            return null;
+
+        return this.decodeString(pos, length).trim();
+    }
+
+    /**
+     * Returns a numeric field of a record as a double. The value is decoded without creating a string unless it's in
+     * exponential notation or has more than 15 significant digits.
+     *
+     * @param record the record's ordinal position.
+     * @param field  the field's index.
+     *
+     * @return the field's value, or NaN if the value is null or not a number.
+     *
+     * @throws IllegalArgumentException if the record or field is out of range.
+     */
+    public double getDouble(int record, int field)
+    {
+        int pos = this.getFieldPosition(record, field);
+        int length = this.getValueLength(pos, this.fields[field].getLength());
+        int end = pos + length;
+
+        // Skip leading spaces, then read an optional sign.
+        while (pos < end && this.buffer.get(pos) == ' ')
+        {
+            pos++;
+        }
+
+        boolean negative = false;
+        if (pos < end && (this.buffer.get(pos) == '-' || this.buffer.get(pos) == '+'))
+        {
+            negative = this.buffer.get(pos) == '-';
+            pos++;
+        }
+
+        // Accumulate the digits into an integer mantissa and count the digits after the decimal point. Values with too
+        // many digits to convert exactly, or with characters other than digits and one decimal point, are converted by
+        // Double.parseDouble.
+        long mantissa = 0;
+        int numDigits = 0;
+        boolean hasDigits = false;
+        int scale = -1;
+        boolean trailingSpace = false;
+        for (; pos < end; pos++)
+        {
+            byte b = this.buffer.get(pos);
+            if (b >= '0' && b <= '9' && !trailingSpace)
+            {
+                if (mantissa > 0 || b != '0')
+                    numDigits++;
+                hasDigits = true;
+                mantissa = 10 * mantissa + (b - '0');
+                if (scale >= 0)
+                    scale++;
+            }
+            else if (b == '.' && scale < 0 && !trailingSpace)
+            {
+                scale = 0;
+            }
+            else if (b == ' ')
+            {
+                trailingSpace = true;
+            }
+            else
+            {
+                return this.parseDouble(record, field);
+            }
+
+            if (numDigits > MAX_FAST_DIGITS || scale > MAX_FAST_DIGITS)
+                return this.parseDouble(record, field);
+        }
+
+        if (!hasDigits) // the value is null, or is a sign or decimal point alone
+            return Double.NaN;
+
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns a numeric field of a record as a long. Values with a fractional part are truncated.
+     *
+     * @param record the record's ordinal position.
+     * @param field  the field's index.
+     *
+     * @return the field's value, or 0 if the value is null or not a number. Use {@link #isNull(int, int)} to
+     *         distinguish null values from zero.
+     *
+     * @throws IllegalArgumentException if the record or field is out of range.
+     */
+    public long getLong(int record, int field)
+    {
+        int pos = this.getFieldPosition(record, field);
+        int length = this.getValueLength(pos, this.fields[field].getLength());
+        int end = pos + length;
+
+        while (pos < end && this.buffer.get(pos) == ' ')
+        {
+            pos++;
+        }
+
+        boolean negative = false;
+        if (pos < end && (this.buffer.get(pos) == '-' || this.buffer.get(pos) == '+'))
+        {
+            negative = this.buffer.get(pos) == '-';
+            pos++;
+        }
+
+        long value = 0;
+        int numDigits = 0;
+        for (; pos < end; pos++)
+        {
+            byte b = this.buffer.get(pos);
+            if (b >= '0' && b <= '9' && numDigits < 18)
+            {
+                value = 10 * value + (b - '0');
+                numDigits++;
+            }
+            else if (b == ' ' && this.isSpace(pos, end))
+            {
+                break;
+            }
+            else
+            {
+                // Decode fractional values, exponential notation and values too long for the loop above as a double.
+                double d = this.getDouble(record, field);
+                return Double.isNaN(d) ? 0 : (long) d;
+            }
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns a field of a record as a boolean. The values "T" and "Y", in either case, are true.
+     *
+     * @param record the record's ordinal position.
+     * @param field  the field's index.
+     *
+     * @return true if the value is true, otherwise false.
+     *
+     * @throws IllegalArgumentException if the record or field is out of range.
+     */
+    public boolean getBoolean(int record, int field)
+    {
+        int pos = this.getFieldPosition(record, field);
+        int length = this.getValueLength(pos, this.fields[field].getLength());
+        int end = pos + length;
+
+        while (pos < end && this.buffer.get(pos) == ' ')
+        {
+            pos++;
+        }
+
+        if (pos == end || !this.isSpace(pos + 1, end))
+            return false;
+
+        byte b = this.buffer.get(pos);
+        return b == 'T' || b == 't' || b == 'Y' || b == 'y';
+    }
+
+    /**
+     * Compares a field of a record with a string encoded as UTF-8, without decoding the field. The field's value is
+     * compared with leading and trailing whitespace removed, and bytes are compared as unsigned values. This orders
+     * strings as {@link String#compareTo(String)} does for ASCII strings. A null value compares as an empty string.
+     *
+     * @param record the record's ordinal position.
+     * @param field  the field's index.
+     * @param value  the UTF-8 bytes of the string to compare with.
+     *
+     * @return a negative number, zero or a positive number as the field's value is less than, equal to or greater than
+     *         the string.
+     *
+     * @throws IllegalArgumentException if the record or field is out of range, or if the value is null.
+     */
+    public int compareString(int record, int field, byte[] value)
+    {
+        if (value == null)
+        {
+            String message = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int pos = this.getFieldPosition(record, field);
+        int end = this.getTrimmedEnd(pos, this.getValueLength(pos, this.fields[field].getLength()));
+        pos = this.getTrimmedStart(pos, end);
+
+        int length = Math.min(end - pos, value.length);
+        for (int i = 0; i < length; i++)
+        {
+            int diff = (this.buffer.get(pos + i) & 0xFF) - (value[i] & 0xFF);
+            if (diff != 0)
+                return diff;
+        }
+
+        return (end - pos) - value.length;
+    }
+
+    /**
+     * Indicates whether a field of a record starts with a string encoded as UTF-8, without decoding the field. Leading
+     * whitespace in the field's value is ignored.
+     *
+     * @param record the record's ordinal position.
+     * @param field  the field's index.
+     * @param prefix the UTF-8 bytes of the prefix.
+     *
+     * @return true if the field's value starts with the prefix, otherwise false.
+     *
+     * @throws IllegalArgumentException if the record or field is out of range, or if the prefix is null.
+     */
+    public boolean startsWith(int record, int field, byte[] prefix)
+    {
+        if (prefix == null)
+        {
+            String message = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int pos = this.getFieldPosition(record, field);
+        int end = this.getTrimmedEnd(pos, this.getValueLength(pos, this.fields[field].getLength()));
+        pos = this.getTrimmedStart(pos, end);
+
+        if (end - pos < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (this.buffer.get(pos + i) != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a field of a record as an object of the type determined by the field's type: a Boolean, a String, a Date,
+     * or a Double or Long depending on whether the field has decimals. This is the value the corresponding {@link
+     * DBaseRecord} holds for the field.
+     *
+     * @param record the record's ordinal position.
+     * @param field  the field's index.
+     *
+     * @return the field's value, or null if the value is null or cannot be decoded.
+     *
+     * @throws IllegalArgumentException if the record or field is out of range.
+     */
+    @SuppressWarnings({"StringEquality"})
+    public Object getValue(int record, int field)
+    {
+        String value = this.getString(record, field);
+        if (value == null)
+            return null;
+
+        DBaseField dbaseField = this.fields[field];
+        try
+        {
+            if (dbaseField.getType() == DBaseField.TYPE_BOOLEAN)
+            {
+                return value.equalsIgnoreCase("T") || value.equalsIgnoreCase("Y");
+            }
+            else if (dbaseField.getType() == DBaseField.TYPE_CHAR)
+            {
+                return value;
+            }
+            else if (dbaseField.getType() == DBaseField.TYPE_DATE)
+            {
+                return new SimpleDateFormat("yyyyMMdd").parse(value);
+            }
+            else if (dbaseField.getType() == DBaseField.TYPE_NUMBER)
+            {
+                if (dbaseField.getDecimals() > 0)
+                    return Double.valueOf(value);
+                else
+                    return Long.valueOf(value);
+            }
+        }
+        catch (Exception e)
+        {
+            // Log warning and treat the value as null, as DBaseRecord does.
+            Logging.logger().log(Level.WARNING, Logging.getMessage("SHP.FieldParsingError", dbaseField, value), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Copies the values of every field of a record in this table into a key-value list, keyed by field name. Null
+     * values are copied as null entries. Copying the values of a projection copies only the projected fields.
+     *
+     * @param record the record's ordinal position.
+     * @param list   the list to receive the values.
+     *
+     * @return the list.
+     *
+     * @throws IllegalArgumentException if the record is out of range or the list is null.
+     */
+    public AVList getValues(int record, AVList list)
+    {
+        if (list == null)
+        {
+            String message = Logging.getMessage("nullValue.ListIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.checkRecord(record);
+
+        for (int i = 0; i < this.fields.length; i++)
+        {
+            list.setValue(this.fields[i].getName(), this.getValue(record, i));
+        }
+
+        return list;
+    }
+
+    /**
+     * Decodes every field of a record into a {@link DBaseRecord}, as {@link DBaseFile#readRecord(int)} does. The
+     * record holds the fields of the DBase file, not only the fields of this table.
+     *
+     * @param record the record's ordinal position.
+     *
+     * @return the decoded record. Its record number is <code>record + 1</code>.
+     *
+     * @throws IllegalArgumentException if the record is out of range.
+     */
+    public DBaseRecord readRecord(int record)
+    {
+        this.checkRecord(record);
+
+        ByteBuffer recordBuffer = this.buffer.duplicate();
+        int pos = this.getRecordPosition(record);
+        recordBuffer.limit(pos + this.recordLength);
+        recordBuffer.position(pos);
+
+        return this.dbaseFile.readRecordFromBuffer(recordBuffer.slice(), record + 1);
+    }
+
+    protected int getRecordPosition(int record)
+    {
+        return this.headerLength + record * this.recordLength;
+    }
+
+    protected int getFieldPosition(int record, int field)
+    {
+        this.checkRecord(record);
+        this.checkField(field);
+
+        return this.getRecordPosition(record) + this.fieldOffsets[field];
+    }
+
+    protected void checkRecord(int record)
+    {
+        if (record < 0 || record >= this.numRecords)
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", record);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    protected void checkField(int field)
+    {
+        if (field < 0 || field >= this.fields.length)
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", field);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /** Returns the length of a value, which ends at the first zero byte as in {@link DBaseFile}. */
+    protected int getValueLength(int pos, int maxLength)
+    {
+        int length;
+        for (length = 0; length < maxLength && this.buffer.get(pos + length) != 0; length++)
+        {
+        }
+
+        return length;
+    }
+
+    /** Returns the position after the last character of a value that's not whitespace, as in {@link String#trim()}. */
+    protected int getTrimmedEnd(int pos, int length)
+    {
+        int end = pos + length;
+        while (end > pos && (this.buffer.get(end - 1) & 0xFF) <= ' ')
+        {
+            end--;
+        }
+
+        return end;
+    }
+
+    /** Returns the position of the first character of a value that's not whitespace, as in {@link String#trim()}. */
+    protected int getTrimmedStart(int pos, int end)
+    {
+        while (pos < end && (this.buffer.get(pos) & 0xFF) <= ' ')
+        {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    protected boolean isEmpty(int pos, int length)
+    {
+        return length <= 0 || this.isFilled(pos, length, (byte) 0x20) || this.isFilled(pos, length, (byte) 0x2A);
+    }
+
+    protected boolean isFilled(int pos, int length, byte fillValue)
+    {
+        for (int i = pos; i < pos + length; i++)
+        {
+            if (this.buffer.get(i) != fillValue)
+                return false;
+        }
+
+        return true;
+    }
+
+    protected boolean isSpace(int pos, int end)
+    {
+        for (int i = pos; i < end; i++)
+        {
+            if (this.buffer.get(i) != ' ')
+                return false;
+        }
+
+        return true;
+    }
+
+    protected double parseDouble(int record, int field)
+    {
+        String value = this.getString(record, field);
+        if (value == null)
+            return Double.NaN;
+
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return Double.NaN;
+        }
+    }
+
+    protected String decodeString(int pos, int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = this.buffer.get(pos + i);
+        }
+
+        try
+        {
+            return new String(bytes, 0, length, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            return new String(bytes, 0, length);
+        }
+    }
+}
@@ -79,6 +79,14 @@ import java.util.logging.Level;
  * hemisphere (if coordinate system is UTM); either {@link gov.nasa.worldwind.avlist.AVKey#NORTH} or {@link
  * gov.nasa.worldwind.avlist.AVKey#SOUTH}.</li> </ul>
  * <p/>
+ * <h3>Random Access</h3>
+ * <p/>
+ * A Shapefile opened from a local file that has an accompanying index file maps the file into memory and can also read
+ * records in any order: {@link #readRecord(int)} reads a record by its ordinal position without reading the records
+ * before it, and {@link #findRecords(gov.nasa.worldwind.geom.Sector)} finds the records intersecting a sector using a
+ * {@link ShapefileSpatialIndex}. The spatial index is created the first time it's needed and saved beside the
+ * Shapefile with the suffix ".wwi", so later sessions map it instead of creating it again.
+ * <p/>
  * Subclasses can override how the Shapefile reads and interprets its coordinate system. Override {@link
  * #readCoordinateSystem()} and {@link #validateCoordinateSystem(gov.nasa.worldwind.avlist.AVList)} to change how the
  * Shapefile parses an accompanying projection file and validates the coordinate system parameters. Override {@link
@@ -97,6 +105,7 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
     protected static final String INDEX_FILE_SUFFIX = ".shx";
     protected static final String ATTRIBUTE_FILE_SUFFIX = ".dbf";
     protected static final String PROJECTION_FILE_SUFFIX = ".prj";
+    protected static final String SPATIAL_INDEX_FILE_SUFFIX = ".wwi";
 
     protected static final String[] SHAPE_CONTENT_TYPES =
         {
@@ -178,6 +187,19 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
     protected ByteBuffer recordHeaderBuffer;
     protected ByteBuffer recordContentBuffer;
     protected MappedByteBuffer mappedShpBuffer;
+    // Random access data.
+    protected File shpFile;
+    protected ShapefileSpatialIndex spatialIndex;
+    /**
+     * The first part number of each record whose points have been added to the point buffer, plus one, or zero if the
+     * record's points have not been added. Null until a record is read in random access mode.
+     */
+    protected int[] recordPartNumbers;
+    /**
+     * The part number to return from {@link #addPoints(ShapefileRecord, java.nio.ByteBuffer, int)} for a record whose
+     * points have already been added, or -1 if the points must be read.
+     */
+    protected int reusedPartNumber = -1;
 
     /**
      * Opens an Shapefile from a general source. The source type may be one of the following: <ul> <li>{@link
@@ -456,6 +478,212 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         return set;
     }
 
+    /**
+     * Returns a columnar view of this shapefile's attributes that decodes attribute values on demand. The table's
+     * records are in the same order as the shapefile's records, and each record read from this Shapefile refers to its
+     * attributes in the table; see {@link ShapefileRecord#getAttributeTable()}. Reading a few attribute values from the
+     * table is much faster than decoding every attribute of each record with {@link ShapefileRecord#getAttributes()},
+     * and uses no memory per record.
+     *
+     * @return the attribute table, or null if this shapefile has no attributes or its attribute file was not opened
+     *         from a local file.
+     *
+     * @see DBaseFile#getTable()
+     */
+    public DBaseTable getAttributeTable()
+    {
+        return this.attributeFile != null ? this.attributeFile.getTable() : null;
+    }
+
+    /**
+     * Indicates whether this Shapefile can read records in any order. Random access is available while the Shapefile is
+     * open if the Shapefile was opened from a local file that could be mapped into memory, and it has an accompanying
+     * index file.
+     *
+     * @return <code>true</code> if {@link #readRecord(int)} and {@link #findRecords(gov.nasa.worldwind.geom.Sector)}
+     *         are available; <code>false</code> otherwise.
+     */
+    public boolean isRandomAccess()
+    {
+        return this.open && this.mappedShpBuffer != null && this.index != null;
+    }
+
+    /**
+     * Reads the record at a specified ordinal position. The record is read from the mapped Shapefile without reading
+     * any other record, and its points are not copied: like the records returned by {@link #nextRecord()}, it refers
+     * to its points through {@link #getPointBuffer()}. Reading a record again returns a new record that refers to the
+     * same points. If the Shapefile has an attribute file, the record's attributes are read from the corresponding
+     * attribute record.
+     * <p/>
+     * Random access does not affect sequential reading with {@link #nextRecord()}.
+     *
+     * @param ordinal the record's zero-origin ordinal position in the Shapefile.
+     *
+     * @return the record.
+     *
+     * @throws IllegalArgumentException if the ordinal is less than 0 or not less than the number of records.
+     * @throws IllegalStateException    if this Shapefile does not support random access.
+     * @throws WWRuntimeException       if an exception occurs while reading the record.
+     * @see #isRandomAccess()
+     */
+    public synchronized ShapefileRecord readRecord(int ordinal)
+    {
+        if (!this.isRandomAccess())
+        {
+            String message = Logging.getMessage("SHP.RandomAccessUnavailable", this.getStringValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        if (ordinal < 0 || ordinal >= this.getNumberOfRecords())
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", ordinal);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        ShapefileRecord record;
+        try
+        {
+            record = this.createRecord(this.getRecordBuffer(ordinal), ordinal);
+            DBaseTable table = this.getAttributeTable();
+            if (record != null && table != null && ordinal < table.getNumberOfRecords())
+            {
+                record.setAttributeTable(table, ordinal);
+            }
+            else if (record != null && this.attributeFile != null && this.attributeFile.isRandomAccess()
+                && ordinal < this.attributeFile.getNumberOfRecords())
+            {
+                record.setAttributes(this.attributeFile.readRecord(ordinal));
+            }
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("SHP.ExceptionAttemptingToReadShapefileRecord",
+                this.getStringValue(AVKey.DISPLAY_NAME));
+            Logging.logger().log(Level.SEVERE, message, e);
+            throw new WWRuntimeException(message, e);
+        }
+
+        return record;
+    }
+
+    /**
+     * Returns the ordinal positions of the records whose bounding rectangles intersect a sector, in ascending order.
+     * The records are found with this Shapefile's spatial index, and may then be read with {@link #readRecord(int)}.
+     * Null records are never returned.
+     *
+     * @param sector the sector of interest, in geographic coordinates.
+     *
+     * @return the ordinals of the intersecting records. The array is empty if there are none.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     * @throws IllegalStateException    if this Shapefile does not support random access.
+     * @see #getSpatialIndex()
+     */
+    public int[] findRecords(Sector sector)
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return this.getSpatialIndex().findRecords(sector);
+    }
+
+    /**
+     * Returns the ordinal positions of the records whose attributes match a query, in ascending order. The query is
+     * evaluated against this Shapefile's attribute table, and the records may then be read with {@link
+     * #readRecord(int)}.
+     *
+     * @param query the query to evaluate.
+     *
+     * @return the ordinals of the matching records. The array is empty if there are none.
+     *
+     * @throws IllegalArgumentException if the query is null, or if it cannot be compiled against the attribute table.
+     * @throws IllegalStateException    if this Shapefile has no attribute table.
+     * @see #getAttributeTable()
+     */
+    public int[] findRecords(DBaseQuery query)
+    {
+        if (query == null)
+        {
+            String message = Logging.getMessage("nullValue.QueryIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        DBaseTable table = this.getAttributeTable();
+        if (table == null)
+        {
+            String message = Logging.getMessage("SHP.AttributeTableUnavailable",
+                this.getStringValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        return query.findRecords(table);
+    }
+
+    /**
+     * Returns this Shapefile's spatial index. The first call maps the index file beside the Shapefile if it exists, is
+     * newer than the Shapefile and matches it. Otherwise it creates the index by reading every record's bounding
+     * rectangle, and attempts to save it beside the Shapefile. An index that cannot be saved is kept in memory.
+     *
+     * @return the spatial index of this Shapefile's records.
+     *
+     * @throws IllegalStateException if this Shapefile does not support random access.
+     */
+    public synchronized ShapefileSpatialIndex getSpatialIndex()
+    {
+        if (this.spatialIndex != null)
+            return this.spatialIndex;
+
+        if (!this.isRandomAccess())
+        {
+            String message = Logging.getMessage("SHP.RandomAccessUnavailable", this.getStringValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        File indexFile = new File(WWIO.replaceSuffix(this.shpFile.getPath(), SPATIAL_INDEX_FILE_SUFFIX));
+        if (indexFile.exists() && indexFile.lastModified() >= this.shpFile.lastModified())
+        {
+            try
+            {
+                ShapefileSpatialIndex index = ShapefileSpatialIndex.load(indexFile);
+                if (index.matches(this))
+                    this.spatialIndex = index;
+            }
+            catch (IOException e)
+            {
+                // Create the index again if the existing file is unreadable.
+                String message = Logging.getMessage("generic.ExceptionAttemptingToReadFile", indexFile);
+                Logging.logger().log(Level.WARNING, message, e);
+            }
+        }
+
+        if (this.spatialIndex == null)
+        {
+            this.spatialIndex = ShapefileSpatialIndex.createIndex(this);
+
+            try
+            {
+                this.spatialIndex.save(indexFile);
+            }
+            catch (IOException e)
+            {
+                // The index is still usable. It's created again the next time the Shapefile is opened.
+                String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", indexFile);
+                Logging.logger().log(Level.FINE, message, e);
+            }
+        }
+
+        return this.spatialIndex;
+    }
+
     /**
      * Returns <code>true</code> if the Shapefile has a more records, and <code>false</code> if all records have been
      * read.
@@ -483,6 +711,9 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
      * <p/>
      * This throws an exception if the JVM cannot allocate enough memory to hold the buffer used to store the record's
      * point coordinates.
+     * <p/>
+     * Sequential reading and {@link #readRecord(int)} share the Shapefile's record state, and are synchronized on the
+     * Shapefile so that they may be called from different threads.
      *
      * @return the Shapefile's next record.
      *
@@ -490,7 +721,7 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
      * @throws WWRuntimeException    if an exception occurs while reading the record.
      * @see #getShapeType()
      */
-    public ShapefileRecord nextRecord()
+    public synchronized ShapefileRecord nextRecord()
     {
         if (!this.open)
         {
@@ -631,6 +862,8 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         // IOException if the file cannot be opened via stream.
         if (this.mappedShpBuffer == null)
             this.shpChannel = Channels.newChannel(new BufferedInputStream(new FileInputStream(file)));
+        else
+            this.shpFile = file;
 
         // Attempt to open the optional index and projection files associated with the Shapefile. Ignore exceptions
         // thrown while attempting to open these optional resource streams. We wrap each source InputStream in a
@@ -1253,10 +1486,19 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         ShapefileRecord record;
         try
         {
+            // Records read from the mapped Shapefile may also have been read by readRecord.
+            if (this.mappedShpBuffer != null)
+                this.reusedPartNumber = this.getRecordPartNumber(this.numRecordsRead);
+
             record = this.readRecordFromBuffer(buffer);
+
+            if (this.mappedShpBuffer != null)
+                this.setRecordPartNumber(this.numRecordsRead, record);
         }
         finally
         {
+            this.reusedPartNumber = -1;
+
             // Restore the mapped buffer's limit to its capacity.
             if (this.mappedShpBuffer != null)
                 this.mappedShpBuffer.limit(this.mappedShpBuffer.capacity());
@@ -1282,8 +1524,14 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
 
         if (record != null)
         {
-            // Read the record's attribute data.
-            if (this.attributeFile != null && this.attributeFile.hasNext())
+            // Refer to the record's attribute data in the attribute table when it's available, deferring decoding
+            // until the attributes are requested. Otherwise read the record's attribute data.
+            DBaseTable table = this.getAttributeTable();
+            if (table != null && this.numRecordsRead < table.getNumberOfRecords())
+            {
+                record.setAttributeTable(table, this.numRecordsRead);
+            }
+            else if (this.attributeFile != null && this.attributeFile.hasNext())
             {
                 record.setAttributes(this.attributeFile.nextRecord());
             }
@@ -1292,6 +1540,144 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         return record;
     }
 
+    /**
+     * Returns a view of the mapped Shapefile holding the record at a specified ordinal position. The view's position
+     * is the start of the record and its limit is the end of the record.
+     *
+     * @param ordinal the record's ordinal position.
+     *
+     * @return a buffer holding the record.
+     *
+     * @throws WWRuntimeException if the index places the record outside the Shapefile.
+     */
+    protected ByteBuffer getRecordBuffer(int ordinal)
+    {
+        int pos = this.index[2 * ordinal];
+        long limit = (long) pos + ShapefileRecord.RECORD_HEADER_LENGTH + this.index[2 * ordinal + 1];
+        if (pos < HEADER_LENGTH || limit > this.mappedShpBuffer.capacity())
+        {
+            // Let the caller catch and log the message.
+            throw new WWRuntimeException(Logging.getMessage("generic.InvalidFileLength", limit));
+        }
+
+        ByteBuffer buffer = this.mappedShpBuffer.duplicate();
+        buffer.limit((int) limit);
+        buffer.position(pos);
+        return buffer;
+    }
+
+    /**
+     * Returns a new record from the specified buffer, as {@link #createRecord(java.nio.ByteBuffer)} does, but refers to
+     * the points already added to the point buffer if the record at the specified ordinal position has been read
+     * before. Points are converted to geographic coordinates as they're added, so they must be added only once.
+     *
+     * @param buffer  the buffer containing the record's content.
+     * @param ordinal the record's ordinal position.
+     *
+     * @return a new record, or <code>null</code> if the record's shape type is not one of the recognized types.
+     */
+    protected ShapefileRecord createRecord(ByteBuffer buffer, int ordinal)
+    {
+        ShapefileRecord record;
+        try
+        {
+            this.reusedPartNumber = this.getRecordPartNumber(ordinal);
+            record = this.createRecord(buffer);
+        }
+        finally
+        {
+            this.reusedPartNumber = -1;
+        }
+
+        this.setRecordPartNumber(ordinal, record);
+        return record;
+    }
+
+    /**
+     * Returns the first part number of a record whose points have been added to the point buffer, or -1 if its points
+     * have not been added.
+     *
+     * @param ordinal the record's ordinal position.
+     *
+     * @return the record's first part number, or -1.
+     */
+    protected int getRecordPartNumber(int ordinal)
+    {
+        if (this.recordPartNumbers == null || ordinal >= this.recordPartNumbers.length)
+            return -1;
+
+        return this.recordPartNumbers[ordinal] - 1;
+    }
+
+    /**
+     * Notes the first part number of a record whose points have been added to the point buffer. Part numbers are noted
+     * only in random access mode, since records read sequentially from a stream are read only once.
+     *
+     * @param ordinal the record's ordinal position.
+     * @param record  the record. May be null.
+     */
+    protected void setRecordPartNumber(int ordinal, ShapefileRecord record)
+    {
+        if (record == null || record.getNumberOfParts() == 0 || record.getFirstPartNumber() < 0)
+            return;
+
+        if (this.recordPartNumbers == null)
+        {
+            if (!this.isRandomAccess())
+                return;
+
+            this.recordPartNumbers = new int[this.getNumberOfRecords()];
+        }
+
+        if (ordinal < this.recordPartNumbers.length)
+            this.recordPartNumbers[ordinal] = record.getFirstPartNumber() + 1;
+    }
+
+    /**
+     * Returns the bounding rectangle of the record at a specified ordinal position in geographic coordinates, or null
+     * if the record is a null record. The rectangle is read from the record's header without reading its points. The
+     * returned array is ordered as {@link ShapefileRecord#getBoundingRectangle()} is.
+     *
+     * @param ordinal the record's ordinal position.
+     *
+     * @return the record's bounding rectangle, or null if the record has no points.
+     *
+     * @throws IllegalStateException if this Shapefile does not support random access.
+     */
+    protected double[] readRecordBoundingRectangle(int ordinal)
+    {
+        if (!this.isRandomAccess())
+        {
+            String message = Logging.getMessage("SHP.RandomAccessUnavailable", this.getStringValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        ByteBuffer buffer = this.getRecordBuffer(ordinal);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int pos = buffer.position() + ShapefileRecord.RECORD_HEADER_LENGTH;
+        String shapeType = this.getShapeType(buffer.getInt(pos));
+
+        if (shapeType == null || isNullType(shapeType))
+        {
+            return null;
+        }
+        else if (isPointType(shapeType))
+        {
+            // Read the point as a degenerate rectangle, so that it's converted as a bounding rectangle is.
+            double x = buffer.getDouble(pos + 4);
+            double y = buffer.getDouble(pos + 12);
+            ByteBuffer rect = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+            rect.putDouble(x).putDouble(y).putDouble(x).putDouble(y).flip();
+            return this.readBoundingRectangle(rect).coords;
+        }
+        else
+        {
+            buffer.position(pos + 4);
+            return this.readBoundingRectangle(buffer).coords;
+        }
+    }
+
     /**
      * Returns a new <code>{@link gov.nasa.worldwind.formats.shapefile.ShapefileRecord}</code> from the specified
      * buffer. The buffer's current position is assumed to be set at the start of the record and will be set to the
@@ -1508,6 +1894,13 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
      */
     protected int addPoints(ShapefileRecord record, ByteBuffer buffer, int numPoints)
     {
+        // The record's points have been added before. Refer to them rather than converting them again.
+        if (this.reusedPartNumber >= 0)
+        {
+            buffer.position(buffer.position() + 2 * WWBufferUtil.SIZEOF_DOUBLE * numPoints);
+            return this.reusedPartNumber++;
+        }
+
         DoubleBuffer pointBuffer;
 
         // Read the point data, keeping track of the start and end of the point data.
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.nio.*;
+
+/**
+ * The multi-resolution representation of the boundaries of a {@link ShapefileRenderable}: the effective area of every
+ * boundary vertex, as computed by {@link PolylineGeneralizer}, and whether each boundary crosses the antimeridian. A
+ * boundary generalized to a resolution keeps the vertices whose effective area is at least the square of the
+ * resolution, so one generalization serves every level of detail.
+ * <p/>
+ * Generalizing a boundary takes time proportional to n log n in its number of vertices, so a generalization is
+ * computed once and persisted as a single file that is read in place: a generalization loaded with {@link #load(File)}
+ * maps the file into memory. Effective areas are stored in single precision, in the square degrees of the shapefile's
+ * geographic coordinates.
+ * <p/>
+ * Generalizations are immutable and may be read by multiple threads.
+ *
+ * @version $Id$
+ * @see ShapefileRenderable#getGeneralization()
+ */
+public class ShapefileGeneralization
+{
+    protected static final String FILE_ID = "SHP_GENERALIZED";
+    protected static final int VERSION = 1;
+
+    // Header field locations.
+    protected static final int VERSION_LOCATION = 16;
+    protected static final int NUM_RECORDS_LOCATION = 20;
+    protected static final int NUM_BOUNDARIES_LOCATION = 24;
+    protected static final int NUM_POINTS_LOCATION = 28;
+    protected static final int SHAPEFILE_LENGTH_LOCATION = 32;
+    protected static final int HEADER_LENGTH = 40;
+
+    /** Boundary flag indicating that the boundary crosses the antimeridian. */
+    protected static final byte CROSSES_ANTIMERIDIAN = 1;
+
+    protected final ByteBuffer buffer;
+    protected final int numRecords;
+    protected final int numBoundaries;
+    protected final int numPoints;
+    // Tables following the header: the first boundary of each record and the first point of each boundary, each
+    // followed by the total count, then a flag byte for each boundary, then the effective areas aligned to 4 bytes.
+    protected final int recordTableLocation;
+    protected final int boundaryTableLocation;
+    protected final int flagsLocation;
+    protected final int areasLocation;
+
+    /**
+     * Creates a generalization from its binary representation.
+     *
+     * @param buffer the generalization's binary representation, as written by {@link #save(File)}.
+     *
+     * @throws IllegalArgumentException if the buffer is null.
+     * @throws IOException              if the buffer does not contain a shapefile generalization.
+     */
+    protected ShapefileGeneralization(ByteBuffer buffer) throws IOException
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < HEADER_LENGTH || !FILE_ID.equals(ShapefileSpatialIndex.getFileId(buffer))
+            || buffer.getInt(VERSION_LOCATION) != VERSION)
+        {
+            throw new IOException(Logging.getMessage("SHP.NotAGeneralization"));
+        }
+
+        this.buffer = buffer;
+        this.numRecords = buffer.getInt(NUM_RECORDS_LOCATION);
+        this.numBoundaries = buffer.getInt(NUM_BOUNDARIES_LOCATION);
+        this.numPoints = buffer.getInt(NUM_POINTS_LOCATION);
+        this.recordTableLocation = HEADER_LENGTH;
+        this.boundaryTableLocation = this.recordTableLocation + 4 * (this.numRecords + 1);
+        this.flagsLocation = this.boundaryTableLocation + 4 * (this.numBoundaries + 1);
+        this.areasLocation = align(this.flagsLocation + this.numBoundaries);
+
+        if (this.numRecords < 0 || this.numBoundaries < 0 || this.numPoints < 0
+            || buffer.limit() < (long) this.areasLocation + 4L * this.numPoints)
+        {
+            throw new IOException(Logging.getMessage("SHP.NotAGeneralization"));
+        }
+    }
+
+    /**
+     * Opens a generalization file by mapping it into memory.
+     *
+     * @param file the generalization file.
+     *
+     * @return the generalization.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the file cannot be read or does not contain a shapefile generalization.
+     */
+    public static ShapefileGeneralization load(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return new ShapefileGeneralization(WWIO.mapFile(file));
+    }
+
+    /**
+     * Writes this generalization to a file. The generalization is written to a temporary file that then replaces the
+     * specified file, so generalizations mapped from a previous version of the file remain readable.
+     *
+     * @param file the generalization file.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the file cannot be written.
+     */
+    public void save(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        ShapefileSpatialIndex.saveBuffer(this.buffer, file);
+    }
+
+    /**
+     * Generalizes every boundary of a renderable's records.
+     *
+     * @param renderable      the renderable to generalize.
+     * @param shapefileLength the length of the renderable's shapefile, used to detect generalization files that are out
+     *                        of date.
+     *
+     * @return the renderable's generalization.
+     *
+     * @throws IllegalArgumentException if the renderable is null.
+     */
+    public static ShapefileGeneralization createGeneralization(ShapefileRenderable renderable, long shapefileLength)
+    {
+        if (renderable == null)
+        {
+            String message = Logging.getMessage("nullValue.RenderableIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int numRecords = renderable.getRecordCount();
+        int numBoundaries = 0;
+        int numPoints = 0;
+        for (ShapefileRenderable.Record record : renderable)
+        {
+            numBoundaries += record.numberOfParts;
+            numPoints += record.numberOfPoints;
+        }
+
+        int flagsLocation = HEADER_LENGTH + 4 * (numRecords + 1) + 4 * (numBoundaries + 1);
+        int areasLocation = align(flagsLocation + numBoundaries);
+        ByteBuffer buffer = ByteBuffer.allocate(areasLocation + 4 * numPoints);
+        buffer.put(ShapefileSpatialIndex.getFileIdBytes(FILE_ID));
+        buffer.putInt(VERSION_LOCATION, VERSION);
+        buffer.putInt(NUM_RECORDS_LOCATION, numRecords);
+        buffer.putInt(NUM_BOUNDARIES_LOCATION, numBoundaries);
+        buffer.putInt(NUM_POINTS_LOCATION, numPoints);
+        buffer.putLong(SHAPEFILE_LENGTH_LOCATION, shapefileLength);
+
+        PolylineGeneralizer generalizer = new PolylineGeneralizer();
+        double[] coord = new double[2];
+        double[] area = new double[0];
+        int recordPos = HEADER_LENGTH;
+        int boundaryPos = HEADER_LENGTH + 4 * (numRecords + 1);
+        int boundary = 0;
+        int point = 0;
+
+        for (ShapefileRenderable.Record record : renderable)
+        {
+            buffer.putInt(recordPos, boundary);
+            recordPos += 4;
+
+            for (int i = 0; i < record.getBoundaryCount(); i++)
+            {
+                VecBuffer points = record.getBoundaryPoints(i);
+                int size = points.getSize();
+                boolean crossesAntimeridian = false;
+                double prevLon = 0;
+
+                generalizer.reset();
+                generalizer.beginPolyline();
+                for (int j = 0; j < size; j++)
+                {
+                    points.get(j, coord); // lon, lat
+                    generalizer.addVertex(coord[0], coord[1], 0);
+
+                    if (j > 0 && Math.signum(prevLon) != Math.signum(coord[0]) && Math.abs(prevLon - coord[0]) > 180)
+                        crossesAntimeridian = true;
+
+                    prevLon = coord[0];
+                }
+                generalizer.endPolyline();
+
+                if (area.length < size)
+                    area = new double[size];
+                generalizer.getVertexEffectiveArea(area);
+
+                buffer.putInt(boundaryPos, point);
+                boundaryPos += 4;
+                buffer.put(flagsLocation + boundary, crossesAntimeridian ? CROSSES_ANTIMERIDIAN : 0);
+
+                for (int j = 0; j < size; j++)
+                {
+                    buffer.putFloat(areasLocation + 4 * (point + j), (float) area[j]);
+                }
+
+                boundary++;
+                point += size;
+            }
+        }
+
+        buffer.putInt(recordPos, boundary);
+        buffer.putInt(boundaryPos, point);
+
+        try
+        {
+            return new ShapefileGeneralization(buffer);
+        }
+        catch (IOException e)
+        {
+            // The buffer written above is always a valid generalization.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Indicates whether this generalization was created from a renderable with the same number of records, boundaries
+     * and points as a specified renderable, and from a shapefile of the same length. A generalization file that doesn't
+     * match its renderable is out of date.
+     *
+     * @param renderable      the renderable to compare.
+     * @param shapefileLength the length of the renderable's shapefile.
+     *
+     * @return true if the generalization matches the renderable, otherwise false.
+     *
+     * @throws IllegalArgumentException if the renderable is null.
+     */
+    public boolean matches(ShapefileRenderable renderable, long shapefileLength)
+    {
+        if (renderable == null)
+        {
+            String message = Logging.getMessage("nullValue.RenderableIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.numRecords != renderable.getRecordCount()
+            || this.buffer.getLong(SHAPEFILE_LENGTH_LOCATION) != shapefileLength)
+        {
+            return false;
+        }
+
+        int ordinal = 0;
+        for (ShapefileRenderable.Record record : renderable)
+        {
+            int boundary = this.getFirstBoundary(ordinal++);
+            if (this.getFirstBoundary(ordinal) - boundary != record.numberOfParts
+                || this.getFirstPoint(boundary + record.numberOfParts) - this.getFirstPoint(boundary)
+                != record.numberOfPoints)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public int getNumRecords()
+    {
+        return this.numRecords;
+    }
+
+    public int getNumBoundaries()
+    {
+        return this.numBoundaries;
+    }
+
+    public int getNumPoints()
+    {
+        return this.numPoints;
+    }
+
+    /**
+     * Indicates whether a record's boundary crosses the antimeridian.
+     *
+     * @param ordinal  the record's ordinal.
+     * @param boundary the boundary's index in the record.
+     *
+     * @return true if the boundary crosses the antimeridian, otherwise false.
+     */
+    public boolean isCrossesAntimeridian(int ordinal, int boundary)
+    {
+        int index = this.getFirstBoundary(ordinal) + boundary;
+        return (this.buffer.get(this.flagsLocation + index) & CROSSES_ANTIMERIDIAN) != 0;
+    }
+
+    /**
+     * Returns the effective area of each vertex of a record's boundary. The first and last vertices have the maximum
+     * effective area, so that a generalized boundary always keeps its end points.
+     *
+     * @param ordinal  the record's ordinal.
+     * @param boundary the boundary's index in the record.
+     * @param array    an array to hold the effective areas. A new array is allocated if this is null or is too short
+     *                 to hold the boundary's vertices.
+     *
+     * @return an array holding the effective areas, in square degrees.
+     */
+    public double[] getEffectiveArea(int ordinal, int boundary, double[] array)
+    {
+        int index = this.getFirstBoundary(ordinal) + boundary;
+        int first = this.getFirstPoint(index);
+        int size = this.getFirstPoint(index + 1) - first;
+
+        if (array == null || array.length < size)
+            array = new double[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            float area = this.buffer.getFloat(this.areasLocation + 4 * (first + i));
+            array[i] = Float.isInfinite(area) ? Double.MAX_VALUE : area;
+        }
+
+        return array;
+    }
+
+    protected int getFirstBoundary(int ordinal)
+    {
+        return this.buffer.getInt(this.recordTableLocation + 4 * ordinal);
+    }
+
+    protected int getFirstPoint(int boundary)
+    {
+        return this.buffer.getInt(this.boundaryTableLocation + 4 * boundary);
+    }
+
+    protected static int align(int location)
+    {
+        return (location + 3) & ~3;
+    }
+}
@@ -56,6 +56,13 @@ import java.util.Map;
  * attribute delegates are called when parsing shapefiles containing polylines, polygons or extruded polygons.
  * shapefiles containing points or multi-points ignore the attribute delegate. The delegate is specified using {@link
  * #setAttributeDelegate(gov.nasa.worldwind.formats.shapefile.ShapefileRenderable.AttributeDelegate)}.
+ * <p/>
+ * <h1>Loading Visible Records</h1>
+ * <p/>
+ * By default the factory converts every record of the shapefile. When configured with {@link
+ * #setLoadVisibleRecordsOnly(boolean)}, the factory instead creates a {@link ShapefilePointLayer} for point and
+ * multi-point shapefiles that support random access, which loads only the records in view. Other shapefiles are
+ * converted as usual.
  *
  * @author tag
  * @version $Id: ShapefileLayerFactory.java 2348 2014-09-25 23:35:46Z dcollins $
@@ -92,6 +99,31 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
     protected PointPlacemarkAttributes normalPointAttributes;
     protected PointPlacemarkAttributes highlightPointAttributes;
     protected ShapefileRenderable.AttributeDelegate attributeDelegate;
+    protected boolean loadVisibleRecordsOnly;
+
+    /**
+     * Indicates whether point and multi-point layers load only the records in view.
+     *
+     * @return <code>true</code> if the factory creates layers that load only visible records, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isLoadVisibleRecordsOnly()
+    {
+        return this.loadVisibleRecordsOnly;
+    }
+
+    /**
+     * Specifies whether point and multi-point layers load only the records in view. When <code>true</code>, the
+     * factory creates a {@link ShapefilePointLayer} for a point or multi-point shapefile that supports random access,
+     * and that layer owns and closes the shapefile. Other shapefiles are converted completely. Defaults to
+     * <code>false</code>.
+     *
+     * @param loadVisibleRecordsOnly <code>true</code> to load only visible records, otherwise <code>false</code>.
+     */
+    public void setLoadVisibleRecordsOnly(boolean loadVisibleRecordsOnly)
+    {
+        this.loadVisibleRecordsOnly = loadVisibleRecordsOnly;
+    }
 
     /**
      * Indicates the mappings between shapefile attribute names and av-list keys attached to created shapes.
@@ -233,7 +265,7 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
     {
         if (this.dBaseMappings != null)
         {
-            AVList mappings = this.applyMappings(shapefileRecord.getAttributes(), this.dBaseMappings);
+            AVList mappings = this.applyMappings(shapefileRecord, this.dBaseMappings);
             if (mappings != null)
                 renderableRecord.setValues(mappings);
         }
@@ -453,7 +485,7 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
             throw new WWRuntimeException(msg);
         }
 
-        RenderableLayer layer = new RenderableLayer();
+        RenderableLayer layer = this.isLoadVisibleRecordsOnly() ? new ShapefilePointLayer() : new RenderableLayer();
 
         if (params == null)
             params = new AVListImpl();
@@ -516,7 +548,9 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
      */
     protected Object doCreateFromShapefile(Object shapefileSource, CompletionCallback callback) throws Exception
     {
-        RenderableLayer layer = new RenderableLayer();
+        // A point layer with no shapefile behaves as a RenderableLayer, so it's created before the shapefile is opened
+        // and converts the shapefile completely if it can't load the visible records alone.
+        RenderableLayer layer = this.isLoadVisibleRecordsOnly() ? new ShapefilePointLayer() : new RenderableLayer();
 
         this.createShapefileLayer(shapefileSource, layer, callback);
 
@@ -536,6 +570,9 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
                 {
                     shp = loadShapefile(shapefileSource);
                     assembleShapefileLayer(shp, layer);
+
+                    if (layer instanceof ShapefilePointLayer && ((ShapefilePointLayer) layer).getShapefile() == shp)
+                        shp = null; // the layer reads the shapefile as it's displayed, and closes it when disposed
                 }
                 catch (Exception e)
                 {
@@ -546,7 +583,7 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
                 {
                     if (callback != null)
                         callback.completion(layer);
-                    if (shapefileSource != shp) // close the shapefile if we created it
+                    if (shp != null && shapefileSource != shp) // close the shapefile if we created it
                         WWIO.closeStream(shp, shapefileSource.toString());
                 }
             }
@@ -560,7 +597,11 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
 
     protected void assembleShapefileLayer(Shapefile shp, RenderableLayer layer)
     {
-        this.addRenderablesForShapefile(shp, layer);
+        if (layer instanceof ShapefilePointLayer && ShapefilePointLayer.isSupported(shp))
+            ((ShapefilePointLayer) layer).setShapefile(shp, this);
+        else
+            this.addRenderablesForShapefile(shp, layer);
+
         this.addPropertiesForShapefile(shp, layer);
     }
 
@@ -708,7 +749,7 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
             if (!Shapefile.isPointType(record.getShapeType()))
                 continue;
 
-            AVList mappings = this.applyMappings(record.getAttributes(), this.dBaseMappings);
+            AVList mappings = this.applyMappings(record, this.dBaseMappings);
 
             double[] point = ((ShapefileRecordPoint) record).getPoint();
             layer.addRenderable(this.createPoint(record, point[1], point[0], mappings));
@@ -724,7 +765,7 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
             if (!Shapefile.isMultiPointType(record.getShapeType()))
                 continue;
 
-            AVList mappings = this.applyMappings(record.getAttributes(), this.dBaseMappings);
+            AVList mappings = this.applyMappings(record, this.dBaseMappings);
 
             Iterable<double[]> iterable = ((ShapefileRecordMultiPoint) record).getPoints(0);
 
@@ -786,6 +827,33 @@ public class ShapefileLayerFactory implements Factory, ShapefileRenderable.Attri
         layer.addRenderable(shape);
     }
 
+    /**
+     * Maps a record's attributes to key-value pairs, as {@link #applyMappings(DBaseRecord, AVList)} does. When the
+     * record refers to its attributes in an attribute table, only the mapped attributes are decoded.
+     *
+     * @param record       the shapefile record.
+     * @param attrMappings the mappings from attribute names to keys.
+     *
+     * @return the mapped values, or null if there are none.
+     */
+    protected AVList applyMappings(ShapefileRecord record, AVList attrMappings)
+    {
+        DBaseTable table = record.getAttributeTable();
+        if (table == null || attrMappings == null)
+            return this.applyMappings(record.getAttributes(), attrMappings);
+
+        AVList mappings = new AVListImpl();
+        for (Map.Entry<String, Object> mapping : attrMappings.getEntries())
+        {
+            int field = table.getFieldIndex(mapping.getKey());
+            Object attrValue = field >= 0 ? table.getValue(record.getAttributeOrdinal(), field) : null;
+            if (attrValue != null)
+                mappings.setValue((String) mapping.getValue(), attrValue);
+        }
+
+        return mappings.getEntries().size() > 0 ? mappings : null;
+    }
+
     protected AVList applyMappings(DBaseRecord attrRecord, AVList attrMappings)
     {
         if (attrRecord == null || attrMappings == null)
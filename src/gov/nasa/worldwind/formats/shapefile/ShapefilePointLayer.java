@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.WorldWind;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.layers.RenderableLayer;
+import gov.nasa.worldwind.render.*;
+import gov.nasa.worldwind.util.*;
+
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * A layer that displays the points of a large point or multi-point Shapefile, loading only the records in view. The
+ * Shapefile's bounding rectangle is divided into a grid of cells. Each frame the layer finds the cells intersecting the
+ * visible sector, and loads any it doesn't hold on a background thread: the cell's records are found with {@link
+ * Shapefile#findRecords(gov.nasa.worldwind.geom.Sector)}, read with {@link Shapefile#readRecord(int)} and converted to
+ * renderables by a {@link ShapefileLayerFactory}. The layer keeps the most recently used cells, and discards the others
+ * when it holds more than its cell capacity.
+ * <p/>
+ * The Shapefile must support random access; see {@link Shapefile#isRandomAccess()}. The layer closes the Shapefile
+ * when it's disposed.
+ * <p/>
+ * Renderables added to the layer with {@link #addRenderable(gov.nasa.worldwind.render.Renderable)} are displayed
+ * along with the Shapefile's points.
+ *
+ * @version $Id$
+ * @see ShapefileLayerFactory#setLoadVisibleRecordsOnly(boolean)
+ */
+public class ShapefilePointLayer extends RenderableLayer
+{
+    /** The average number of records per cell the layer divides its Shapefile into. */
+    protected static final int RECORDS_PER_CELL = 256;
+    /** The maximum number of cells along each side of the grid. */
+    protected static final int MAX_GRID_SIZE = 256;
+    protected static final int DEFAULT_CELL_CAPACITY = 256;
+
+    protected static class Cell
+    {
+        public final int index;
+        public final Sector sector;
+        public final List<Renderable> renderables;
+
+        public Cell(int index, Sector sector, List<Renderable> renderables)
+        {
+            this.index = index;
+            this.sector = sector;
+            this.renderables = renderables;
+        }
+    }
+
+    protected Shapefile shapefile;
+    protected ShapefileLayerFactory factory;
+    protected Sector sector;
+    protected int numRows;
+    protected int numCols;
+    protected int cellCapacity = DEFAULT_CELL_CAPACITY;
+    /** The loaded cells, in least to most recently used order. Access is synchronized on the map. */
+    protected LinkedHashMap<Integer, Cell> cells = new LinkedHashMap<Integer, Cell>(16, 0.75f, true);
+    /** The indices of the cells being loaded. Access is synchronized on the cell map. */
+    protected Set<Integer> pendingCells = new HashSet<Integer>();
+    /** The indices of the cells that failed to load, which are not requested again until a retry interval passes. */
+    protected AbsentResourceList absentCells = new AbsentResourceList();
+    /** The renderables displayed in the current frame. */
+    protected List<Renderable> activeRenderables = new ArrayList<Renderable>();
+
+    /**
+     * Creates a layer with no Shapefile. Specify the Shapefile to display with {@link #setShapefile(Shapefile,
+     * ShapefileLayerFactory)}. Until then the layer displays the renderables added to it.
+     */
+    public ShapefilePointLayer()
+    {
+    }
+
+    /**
+     * Creates a layer that displays a specified Shapefile.
+     *
+     * @param shapefile the Shapefile to display.
+     * @param factory   the factory that creates the renderables for the Shapefile's records.
+     *
+     * @throws IllegalArgumentException if either argument is null, or the Shapefile does not support random access or
+     *                                  its shape type is not point or multi-point.
+     */
+    public ShapefilePointLayer(Shapefile shapefile, ShapefileLayerFactory factory)
+    {
+        this.setShapefile(shapefile, factory);
+    }
+
+    /**
+     * Indicates whether a Shapefile can be displayed by this layer.
+     *
+     * @param shapefile the Shapefile to test.
+     *
+     * @return <code>true</code> if the Shapefile supports random access and its shape type is point or multi-point;
+     *         <code>false</code> otherwise.
+     */
+    public static boolean isSupported(Shapefile shapefile)
+    {
+        if (shapefile == null || !shapefile.isRandomAccess() || shapefile.getBoundingRectangle() == null)
+            return false;
+
+        String shapeType = shapefile.getShapeType();
+        return Shapefile.isPointType(shapeType) || Shapefile.isMultiPointType(shapeType);
+    }
+
+    public Shapefile getShapefile()
+    {
+        return this.shapefile;
+    }
+
+    /**
+     * Specifies the Shapefile to display. This discards the cells loaded from the current Shapefile, but does not close
+     * it.
+     *
+     * @param shapefile the Shapefile to display.
+     * @param factory   the factory that creates the renderables for the Shapefile's records.
+     *
+     * @throws IllegalArgumentException if either argument is null, or the Shapefile does not support random access or
+     *                                  its shape type is not point or multi-point.
+     */
+    public void setShapefile(Shapefile shapefile, ShapefileLayerFactory factory)
+    {
+        if (shapefile == null)
+        {
+            String message = Logging.getMessage("nullValue.ShapefileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (factory == null)
+        {
+            String message = Logging.getMessage("nullValue.FactoryIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!isSupported(shapefile))
+        {
+            String message = Logging.getMessage("SHP.RandomAccessUnavailable", shapefile.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int numCells = Math.max(1, shapefile.getNumberOfRecords() / RECORDS_PER_CELL);
+        int gridSize = Math.min((int) Math.ceil(Math.sqrt(numCells)), MAX_GRID_SIZE);
+
+        synchronized (this.cells)
+        {
+            this.shapefile = shapefile;
+            this.factory = factory;
+            this.sector = Sector.fromDegrees(shapefile.getBoundingRectangle());
+            this.numRows = gridSize;
+            this.numCols = gridSize;
+            this.cells.clear();
+            this.pendingCells.clear();
+            this.absentCells = new AbsentResourceList();
+        }
+    }
+
+    /**
+     * Indicates the maximum number of cells the layer keeps loaded.
+     *
+     * @return the cell capacity.
+     */
+    public int getCellCapacity()
+    {
+        return this.cellCapacity;
+    }
+
+    /**
+     * Specifies the maximum number of cells the layer keeps loaded. When more cells are loaded, the least recently
+     * displayed cells are discarded.
+     *
+     * @param cellCapacity the cell capacity.
+     *
+     * @throws IllegalArgumentException if the capacity is less than 1.
+     */
+    public void setCellCapacity(int cellCapacity)
+    {
+        if (cellCapacity < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "cellCapacity < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.cellCapacity = cellCapacity;
+    }
+
+    /**
+     * Returns the number of cells currently loaded.
+     *
+     * @return the number of loaded cells.
+     */
+    public int getNumLoadedCells()
+    {
+        synchronized (this.cells)
+        {
+            return this.cells.size();
+        }
+    }
+
+    /**
+     * Returns the renderables displayed in the most recent frame, followed by any renderables added to the layer. If
+     * the layer has no Shapefile, this returns the renderables added to the layer.
+     *
+     * @return the active renderables.
+     */
+    @Override
+    protected Iterable<Renderable> getActiveRenderables()
+    {
+        if (this.shapefile == null)
+            return super.getActiveRenderables();
+
+        return Collections.unmodifiableList(this.activeRenderables);
+    }
+
+    @Override
+    protected void doPreRender(DrawContext dc)
+    {
+        if (this.shapefile != null)
+            this.assembleActiveRenderables(dc);
+
+        super.doPreRender(dc);
+    }
+
+    /** Closes the Shapefile and discards the loaded cells, in addition to disposing the layer's renderables. */
+    @Override
+    public void dispose()
+    {
+        super.dispose();
+
+        synchronized (this.cells)
+        {
+            if (this.shapefile != null)
+                WWIO.closeStream(this.shapefile, null);
+
+            this.cells.clear();
+            this.pendingCells.clear();
+            this.absentCells = new AbsentResourceList();
+            this.activeRenderables = new ArrayList<Renderable>();
+            this.shapefile = null;
+        }
+    }
+
+    /**
+     * Replaces the active renderables with those of the loaded cells intersecting the visible sector, and requests the
+     * visible cells that are not loaded.
+     *
+     * @param dc the current draw context.
+     */
+    protected void assembleActiveRenderables(DrawContext dc)
+    {
+        List<Renderable> list = new ArrayList<Renderable>();
+        List<Integer> missing = new ArrayList<Integer>();
+
+        synchronized (this.cells)
+        {
+            for (int index : this.getVisibleCells(dc))
+            {
+                Cell cell = this.cells.get(index); // marks the cell as most recently used
+                if (cell != null)
+                    list.addAll(cell.renderables);
+                else if (!this.pendingCells.contains(index) && !this.absentCells.isResourceAbsent(index))
+                    missing.add(index);
+            }
+        }
+
+        for (Renderable renderable : this.renderables)
+        {
+            list.add(renderable);
+        }
+
+        this.activeRenderables = list;
+
+        for (Integer index : missing)
+        {
+            this.requestCell(index);
+        }
+    }
+
+    /**
+     * Returns the indices of the cells intersecting the visible sector, ordered row by row.
+     *
+     * @param dc the current draw context.
+     *
+     * @return the visible cell indices. Empty if the Shapefile is not in view.
+     */
+    protected List<Integer> getVisibleCells(DrawContext dc)
+    {
+        Sector visible = dc.getVisibleSector();
+        Sector s = (visible != null) ? this.sector.intersection(visible) : this.sector;
+        if (s == null)
+            return Collections.emptyList();
+
+        int minRow = this.rowOf(s.getMinLatitude().degrees);
+        int maxRow = this.rowOf(s.getMaxLatitude().degrees);
+        int minCol = this.colOf(s.getMinLongitude().degrees);
+        int maxCol = this.colOf(s.getMaxLongitude().degrees);
+
+        List<Integer> list = new ArrayList<Integer>((maxRow - minRow + 1) * (maxCol - minCol + 1));
+        for (int row = minRow; row <= maxRow; row++)
+        {
+            for (int col = minCol; col <= maxCol; col++)
+            {
+                list.add(row * this.numCols + col);
+            }
+        }
+
+        return list;
+    }
+
+    protected int rowOf(double latDegrees)
+    {
+        double delta = this.sector.getDeltaLatDegrees();
+        int row = delta > 0 ? (int) ((latDegrees - this.sector.getMinLatitude().degrees) / delta * this.numRows) : 0;
+        return WWMath.clamp(row, 0, this.numRows - 1);
+    }
+
+    protected int colOf(double lonDegrees)
+    {
+        double delta = this.sector.getDeltaLonDegrees();
+        int col = delta > 0 ? (int) ((lonDegrees - this.sector.getMinLongitude().degrees) / delta * this.numCols) : 0;
+        return WWMath.clamp(col, 0, this.numCols - 1);
+    }
+
+    protected Sector getCellSector(int index)
+    {
+        int row = index / this.numCols;
+        int col = index % this.numCols;
+        double dLat = this.sector.getDeltaLatDegrees() / this.numRows;
+        double dLon = this.sector.getDeltaLonDegrees() / this.numCols;
+        double minLat = this.sector.getMinLatitude().degrees + row * dLat;
+        double minLon = this.sector.getMinLongitude().degrees + col * dLon;
+
+        // Extend the last row and column to the Shapefile's edges, rather than trusting the accumulated deltas.
+        double maxLat = (row == this.numRows - 1) ? this.sector.getMaxLatitude().degrees : minLat + dLat;
+        double maxLon = (col == this.numCols - 1) ? this.sector.getMaxLongitude().degrees : minLon + dLon;
+
+        return Sector.fromDegrees(minLat, maxLat, minLon, maxLon);
+    }
+
+    /**
+     * Loads a cell on the task service, unless the service is full. A cell not loaded is requested again in a later
+     * frame.
+     *
+     * @param index the cell's index.
+     */
+    protected void requestCell(final int index)
+    {
+        if (WorldWind.getTaskService().isFull())
+            return;
+
+        final Shapefile shp = this.shapefile;
+        synchronized (this.cells)
+        {
+            this.pendingCells.add(index);
+        }
+
+        WorldWind.getTaskService().addTask(new Runnable()
+        {
+            public void run()
+            {
+                loadCell(shp, index);
+            }
+        });
+    }
+
+    /**
+     * Reads the records in a cell and creates their renderables. A multi-point record may intersect several cells; each
+     * cell holds only the points within it, so that no point is displayed twice. A cell whose records cannot be read is
+     * not kept, and is marked absent so that it is requested again only after a retry interval.
+     *
+     * @param shp   the Shapefile the cell was requested from. The cell is discarded if the layer's Shapefile has
+     *              changed.
+     * @param index the cell's index.
+     */
+    protected void loadCell(Shapefile shp, int index)
+    {
+        List<Renderable> list = new ArrayList<Renderable>();
+        boolean loaded = false;
+        try
+        {
+            if (shp != this.shapefile || !shp.isRandomAccess())
+                return;
+
+            for (int ordinal : shp.findRecords(this.getCellSector(index)))
+            {
+                this.addRenderablesForRecord(shp.readRecord(ordinal), index, list);
+            }
+
+            loaded = true;
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("SHP.ExceptionAttemptingToReadShapefileRecord",
+                shp.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().log(Level.SEVERE, message, e);
+        }
+        finally
+        {
+            synchronized (this.cells)
+            {
+                this.pendingCells.remove(index);
+
+                if (shp == this.shapefile && loaded)
+                {
+                    this.cells.put(index, new Cell(index, this.getCellSector(index), list));
+                    this.trimCells();
+                    this.absentCells.unmarkResourceAbsent(index);
+                }
+                else if (shp == this.shapefile)
+                {
+                    this.absentCells.markResourceAbsent(index);
+                }
+            }
+        }
+
+        this.firePropertyChange(AVKey.LAYER, null, this);
+    }
+
+    protected void addRenderablesForRecord(ShapefileRecord record, int index, List<Renderable> list)
+    {
+        if (record == null)
+            return;
+
+        AVList mappings = this.factory.applyMappings(record, this.factory.getDBaseMappings());
+
+        if (Shapefile.isPointType(record.getShapeType()))
+        {
+            double[] point = ((ShapefileRecordPoint) record).getPoint();
+            if (this.cellOf(point[1], point[0]) == index)
+                list.add(this.factory.createPoint(record, point[1], point[0], mappings));
+        }
+        else if (Shapefile.isMultiPointType(record.getShapeType()))
+        {
+            for (double[] point : ((ShapefileRecordMultiPoint) record).getPoints(0))
+            {
+                if (this.cellOf(point[1], point[0]) == index)
+                    list.add(this.factory.createPoint(record, point[1], point[0], mappings));
+            }
+        }
+    }
+
+    protected int cellOf(double latDegrees, double lonDegrees)
+    {
+        return this.rowOf(latDegrees) * this.numCols + this.colOf(lonDegrees);
+    }
+
+    /** Discards the least recently used cells until no more than the cell capacity remain. */
+    protected void trimCells()
+    {
+        Iterator<Cell> iterator = this.cells.values().iterator();
+        while (this.cells.size() > this.cellCapacity && iterator.hasNext())
+        {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
@@ -331,7 +331,7 @@ public class ShapefilePolygons extends ShapefileRenderable implements OrderedRen
         if (!WorldWind.getMemoryCacheSet().containsCache(ShapefileGeometry.class.getName()))
         {
             long size = Configuration.getLongValue(AVKey.SHAPEFILE_GEOMETRY_CACHE_SIZE, (long) 50e6); // default 50MB
-            MemoryCache cache = new BasicMemoryCache((long) (0.8 * size), size);
+            MemoryCache cache = WorldWind.createMemoryCache((long) (0.8 * size), size);
             cache.setName("Shapefile Geometry");
             WorldWind.getMemoryCacheSet().addCache(ShapefileGeometry.class.getName(), cache);
         }
@@ -924,6 +924,20 @@ public class ShapefilePolygons extends ShapefileRenderable implements OrderedRen
             record.boundaryEffectiveArea = new double[record.getBoundaryCount()][];
             record.boundaryCrossesAntimeridian = new boolean[record.getBoundaryCount()];
 
+            // Read the record's metrics from the shape's generalization when it's available. It's computed once for all
+            // records on a background thread and persisted in the file store.
+            ShapefileGeneralization generalization = this.getGeneralization();
+            if (generalization != null)
+            {
+                for (int i = 0; i < record.getBoundaryCount(); i++)
+                {
+                    record.boundaryEffectiveArea[i] = generalization.getEffectiveArea(record.ordinal, i, null);
+                    record.boundaryCrossesAntimeridian[i] = generalization.isCrossesAntimeridian(record.ordinal, i);
+                }
+
+                return;
+            }
+
             for (int i = 0; i < record.getBoundaryCount(); i++)
             {
                 VecBuffer boundaryCoords = record.getBoundaryPoints(i);
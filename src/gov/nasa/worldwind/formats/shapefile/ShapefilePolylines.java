@@ -7,8 +7,9 @@
 package gov.nasa.worldwind.formats.shapefile;
 
 import com.jogamp.common.nio.Buffers;
+import gov.nasa.worldwind.*;
 import gov.nasa.worldwind.avlist.AVKey;
-import gov.nasa.worldwind.cache.GpuResourceCache;
+import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.layers.Layer;
 import gov.nasa.worldwind.pick.PickSupport;
@@ -17,6 +18,7 @@ import gov.nasa.worldwind.util.*;
 
 import javax.media.opengl.*;
 import java.awt.*;
+import java.beans.*;
 import java.nio.*;
 import java.util.*;
 import java.util.List;
@@ -31,7 +33,6 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
     {
         // Data structures supporting drawing.
         protected Tile tile;
-        protected IntBuffer outlineIndices;
 
         public Record(ShapefileRenderable shapefileRenderable, ShapefileRecord shapefileRecord)
         {
@@ -43,7 +44,7 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
     {
         // Record group properties.
         public final ShapeAttributes attributes;
-        public ArrayList<Record> records = new ArrayList<Record>();
+        public ArrayList<IntBuffer> recordIndices = new ArrayList<IntBuffer>();
         // Data structures supporting drawing.
         public IntBuffer indices;
         public Range outlineIndexRange = new Range(0, 0);
@@ -61,17 +62,12 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         public ShapefileRenderable shapefileRenderable;
         public final Sector sector;
         public final int level;
-        // Tile records, attribute groups and child tiles.
+        // Tile records and child tiles.
         public ArrayList<Record> records = new ArrayList<Record>();
-        public ArrayList<RecordGroup> attributeGroups = new ArrayList<RecordGroup>();
         public long attributeStateID;
         public Tile[] children;
-        // Tile shape data.
-        public FloatBuffer vertices;
-        public int vertexStride;
-        public Vec4 referencePoint;
-        public Matrix transformMatrix;
-        public Object vboKey = new Object();
+        // The geometry drawn for the tile in the current frame.
+        public TileGeometry geometry;
 
         public Tile(ShapefileRenderable shapefileRenderable, Sector sector, int level)
         {
@@ -110,21 +106,126 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         }
     }
 
+    protected static class TileGeometry implements Runnable, Cacheable, Comparable<TileGeometry>
+    {
+        // Properties that define the geometry.
+        protected final Tile tile;
+        protected final double resolution; // zero indicates full resolution
+        // Properties supporting geometry tessellation.
+        protected MemoryCache memoryCache;
+        protected PropertyChangeListener listener;
+        protected double priority;
+        // Properties supporting geometry rendering.
+        protected FloatBuffer vertices;
+        protected int vertexStride;
+        protected int vertexCount;
+        protected Vec4 referencePoint;
+        protected Matrix transformMatrix;
+        protected Object vboKey = new Object();
+        protected IntBuffer[] recordIndices;
+        protected int[] recordVertexCounts;
+        protected ArrayList<RecordGroup> attributeGroups = new ArrayList<RecordGroup>();
+        protected long attributeStateID = -1;
+
+        public TileGeometry(Tile tile, double resolution)
+        {
+            this.tile = tile;
+            this.resolution = resolution;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                ((ShapefilePolylines) this.tile.shapefileRenderable).tessellateTile(this);
+
+                if (this.memoryCache != null)
+                {
+                    this.memoryCache.add(this, this); // the geometry is its own key, see lookupGeometry
+                }
+            }
+            catch (Exception e)
+            {
+                String msg = Logging.getMessage("generic.ExceptionWhileTessellating", this.tile.shapefileRenderable);
+                Logging.logger().log(java.util.logging.Level.SEVERE, msg, e);
+            }
+            finally
+            {
+                if (this.listener != null)
+                {
+                    this.listener.propertyChange(new PropertyChangeEvent(this, AVKey.REPAINT, null, null));
+                }
+
+                // don't need the caching and notification properties anymore
+                this.memoryCache = null;
+                this.listener = null;
+            }
+        }
+
+        @Override
+        public long getSizeInBytes()
+        {
+            long size = 244 + (this.vertices != null ? 4 * this.vertices.capacity() : 0);
+
+            if (this.recordIndices != null)
+            {
+                for (IntBuffer indices : this.recordIndices)
+                {
+                    size += 4 + (indices != null ? 4 * indices.capacity() : 0);
+                }
+            }
+
+            return size;
+        }
+
+        @Override
+        public int compareTo(TileGeometry that)
+        {
+            return Double.compare(this.priority, that.priority);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (o == null || this.getClass() != o.getClass())
+                return false;
+
+            TileGeometry that = (TileGeometry) o;
+            return this.tile == that.tile
+                && this.resolution == that.resolution;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            long temp = this.resolution != +0.0d ? Double.doubleToLongBits(this.resolution) : 0L;
+            int result;
+            result = System.identityHashCode(this.tile);
+            result = 31 * result + (int) (temp ^ (temp >>> 32));
+            return result;
+        }
+    }
+
     protected static class TileStateKey
     {
         protected Tile tile;
+        protected TileGeometry geometry;
         protected long attributeStateID;
         protected ShapeAttributes[] attributeGroups;
 
         public TileStateKey(Tile tile)
         {
             this.tile = tile;
-            this.attributeStateID = tile.attributeStateID;
-            this.attributeGroups = new ShapeAttributes[tile.attributeGroups.size()];
+            this.geometry = tile.geometry;
+            this.attributeStateID = tile.geometry.attributeStateID;
+            this.attributeGroups = new ShapeAttributes[tile.geometry.attributeGroups.size()];
 
             for (int i = 0; i < this.attributeGroups.length; i++)
             {
-                this.attributeGroups[i] = tile.attributeGroups.get(i).attributes.copy();
+                this.attributeGroups[i] = tile.geometry.attributeGroups.get(i).attributes.copy();
             }
         }
 
@@ -138,6 +239,7 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
 
             TileStateKey that = (TileStateKey) o;
             return this.tile.equals(that.tile)
+                && this.geometry == that.geometry
                 && this.attributeStateID == that.attributeStateID
                 && Arrays.equals(this.attributeGroups, that.attributeGroups);
         }
@@ -146,6 +248,7 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         public int hashCode()
         {
             int result = this.tile.hashCode();
+            result = 31 * result + System.identityHashCode(this.geometry);
             result = 31 * result + (int) (this.attributeStateID ^ (this.attributeStateID >>> 32));
             result = 31 * result + Arrays.hashCode(this.attributeGroups);
             return result;
@@ -154,14 +257,36 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
 
     /** The default outline pick width. */
     protected static final int DEFAULT_OUTLINE_PICK_WIDTH = 10;
+    /**
+     * The resolution in radians of the coarsest level of detail, matching the resolution of the top level tiles in
+     * {@link ShapefilePolygons}. Each subsequent level of detail halves the resolution.
+     */
+    protected static final double BASE_RESOLUTION = Angle.fromDegrees(45).radians / 512;
 
+    static
+    {
+        if (!WorldWind.getMemoryCacheSet().containsCache(TileGeometry.class.getName()))
+        {
+            long size = Configuration.getLongValue(AVKey.SHAPEFILE_GEOMETRY_CACHE_SIZE, (long) 50e6); // default 50MB
+            MemoryCache cache = WorldWind.createMemoryCache((long) (0.8 * size), size);
+            cache.setName("Shapefile Polyline Geometry");
+            WorldWind.getMemoryCacheSet().addCache(TileGeometry.class.getName(), cache);
+        }
+    }
+
+    // ShapefilePolylines properties.
+    protected double detailHint = 0;
+    protected double detailHintOrigin = 2.8;
+    protected int maxDetailLevel = 12;
     // Tile quadtree structures.
     protected Tile rootTile;
     protected int tileMaxLevel = 3;
     protected int tileMaxCapacity = 10000;
-    // Data structures supporting polygon tessellation and drawing.
+    // Data structures supporting polyline tessellation and drawing.
     protected ArrayList<Tile> currentTiles = new ArrayList<Tile>();
-    protected PolylineTessellator tess = new PolylineTessellator();
+    protected PriorityQueue<Runnable> requestQueue = new PriorityQueue<Runnable>();
+    protected MemoryCache cache = WorldWind.getMemoryCache(TileGeometry.class.getName());
+    protected Layer layer;
     protected byte[] colorByteArray = new byte[3];
     protected float[] colorFloatArray = new float[4];
     protected double[] matrixArray = new double[16];
@@ -227,6 +352,42 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         this.init(shapefile, normalAttrs, highlightAttrs, attributeDelegate);
     }
 
+    /**
+     * Indicates the object's detail hint, which is described in {@link #setDetailHint(double)}.
+     *
+     * @return the detail hint
+     *
+     * @see #setDetailHint(double)
+     */
+    public double getDetailHint()
+    {
+        return this.detailHint;
+    }
+
+    /**
+     * Modifies the default relationship of shape resolution to screen resolution as the viewing altitude changes.
+     * Values greater than 0 cause shape detail to appear at higher resolution at greater altitudes than normal, but at
+     * an increased performance cost. Values less than 0 decrease the default resolution at any given altitude. The
+     * default value is 0. Values typically range between -0.5 and 0.5.
+     * <p/>
+     * Polylines are drawn at one of several levels of detail, each level keeping only the vertices that are
+     * discernible at its resolution. The detail hint is interpreted as described in {@link
+     * ShapefilePolygons#setDetailHint(double)}.
+     *
+     * @param detailHint the degree to modify the default relationship of shape resolution to screen resolution with
+     *                   changing view altitudes. Values greater than 1 increase the resolution. Values less than zero
+     *                   decrease the resolution. The default value is 0.
+     */
+    public void setDetailHint(double detailHint)
+    {
+        this.detailHint = detailHint;
+    }
+
+    protected double getDetailFactor()
+    {
+        return this.detailHintOrigin + this.getDetailHint();
+    }
+
     /**
      * Indicates the outline line width to use during picking. A larger width than normal typically makes the outline
      * easier to pick.
@@ -282,6 +443,8 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         if (this.getRecordCount() == 0) // Shapefile is empty or contains only null records.
             return;
 
+        this.layer = dc.getCurrentLayer();
+
         // Assemble the tiles used for rendering, then cause those tiles to be drawn into the scene controller's
         // composite surface object tiles.
         this.assembleTiles(dc);
@@ -307,6 +470,9 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
                 dc.disablePickingMode();
             }
         }
+
+        // Send requests for tile geometry.
+        this.sendRequests();
     }
 
     @Override
@@ -481,21 +647,22 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
             return;
         }
 
-        // Add the tile to the list of tiles to draw, regenerating the tile's geometry and the tile's attribute groups
-        // as necessary.
+        // Add the tile to the list of tiles to draw, selecting the tile's geometry for the current level of detail and
+        // assembling the geometry's attribute groups as necessary.
         if (tile.records.size() > 0)
         {
-            if (this.mustRegenerateTileGeometry(tile))
-            {
-                this.regenerateTileGeometry(tile);
-            }
+            TileGeometry geom = this.selectTileGeometry(dc, tile);
+            tile.geometry = geom;
 
-            if (this.mustAssembleTileAttributeGroups(tile))
+            if (this.isTileGeometryDrawable(geom))
             {
-                this.assembleTileAttributeGroups(tile);
-            }
+                if (this.mustAssembleTileAttributeGroups(tile, geom)) // build attribute groups on the rendering thread
+                {
+                    this.assembleTileAttributeGroups(tile, geom);
+                }
 
-            this.currentTiles.add(tile);
+                this.currentTiles.add(tile);
+            }
         }
 
         // Process the tile's children, if any.
@@ -525,77 +692,203 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         return dc.getView().getFrustumInModelCoordinates().intersects(extent);
     }
 
-    protected boolean mustRegenerateTileGeometry(Tile tile)
+    protected boolean isTileGeometryDrawable(TileGeometry geom)
+    {
+        return geom != null && geom.vertexCount > 0; // don't use missing or empty geometry
+    }
+
+    protected TileGeometry selectTileGeometry(DrawContext dc, Tile tile)
+    {
+        // Select the tile's geometry at the level of detail appropriate for the current view. Geometry that is not yet
+        // available is requested, and the tile's previous geometry is used until the request completes.
+        double resolution = this.computeTileResolution(dc, tile);
+        TileGeometry geom = this.lookupGeometry(tile, resolution);
+
+        if (geom == null)
+        {
+            this.requestGeometry(dc, tile, resolution);
+            geom = tile.geometry; // use the previous geometry, if any
+        }
+
+        return geom;
+    }
+
+    /**
+     * Computes the resolution in radians at which to draw the specified tile. The resolution is the coarsest level of
+     * detail discernible at the tile's distance from the eye, or zero to indicate full resolution when the tile is
+     * viewed from close enough to need the finest level of detail.
+     * <p/>
+     * Levels of detail coarser than full resolution depend on the shape's generalization. Tiles are drawn at full
+     * resolution until the generalization is available.
+     *
+     * @param dc   the current draw context.
+     * @param tile the tile to draw.
+     *
+     * @return the tile's resolution in radians, or zero to indicate full resolution.
+     */
+    protected double computeTileResolution(DrawContext dc, Tile tile)
+    {
+        // Compute the level of detail scale and the field of view scale, as in ShapefilePolygons.needToSplit. These
+        // scales are multiplied by the eye distance to derive a scaled distance that is compared to the resolution.
+        double detailScale = Math.pow(10, -this.getDetailFactor());
+        double fieldOfViewScale = dc.getView().getFieldOfView().tanHalfAngle() / Angle.fromDegrees(45).tanHalfAngle();
+        fieldOfViewScale = WWMath.clamp(fieldOfViewScale, 0, 1);
+
+        // Compute the distance between the eye point and the tile's sector in meters, and compute a fraction of that
+        // distance by multiplying the actual distance by the level of detail scale and the field of view scale.
+        double eyeDistanceMeters = tile.sector.distanceTo(dc, dc.getView().getEyePoint());
+        double scaledEyeDistanceMeters = eyeDistanceMeters * detailScale * fieldOfViewScale;
+
+        // Select the coarsest level whose resolution in meters is no greater than the scaled eye distance. Take care
+        // to convert from radians to meters by multiplying by the globe's radius, not the length of a Cartesian point.
+        double baseResolutionMeters = dc.getGlobe().getRadius() * BASE_RESOLUTION;
+        int level = scaledEyeDistanceMeters > 0
+            ? (int) Math.ceil(WWMath.logBase2(baseResolutionMeters / scaledEyeDistanceMeters))
+            : this.maxDetailLevel;
+        level = WWMath.clamp(level, 0, this.maxDetailLevel);
+
+        if (level == this.maxDetailLevel || this.getGeneralization() == null)
+            return 0; // full resolution
+
+        return BASE_RESOLUTION / (1 << level);
+    }
+
+    protected TileGeometry lookupGeometry(Tile tile, double resolution)
     {
-        return tile.vertices == null;
+        // Tile geometry is its own memory cache key. Geometry is equal to any other geometry for the same tile and
+        // resolution.
+        return (TileGeometry) this.cache.getObject(new TileGeometry(tile, resolution));
     }
 
-    protected void regenerateTileGeometry(Tile tile)
+    protected void requestGeometry(DrawContext dc, Tile tile, double resolution)
     {
-        this.tessellateTile(tile);
+        Vec4 eyePoint = dc.getView().getEyePoint();
+        Vec4 centroid = tile.sector.computeCenterPoint(dc.getGlobe(), dc.getVerticalExaggeration());
+
+        TileGeometry geom = new TileGeometry(tile, resolution);
+        geom.memoryCache = this.cache;
+        geom.listener = this.layer;
+        geom.priority = eyePoint.distanceTo3(centroid);
+
+        this.requestQueue.offer(geom);
     }
 
-    protected void tessellateTile(Tile tile)
+    protected void sendRequests()
     {
-        int numPoints = 0;
-        for (Record record : tile.records)
+        Runnable request;
+        while ((request = this.requestQueue.poll()) != null)
         {
-            numPoints += record.numberOfPoints;
+            if (WorldWind.getTaskService().isFull())
+                break;
+
+            WorldWind.getTaskService().addTask(request);
         }
 
-        // Allocate the geographic coordinate vertices to hold the coordinates for all records in the tile. The records
-        // in the tile never changes, so the number of vertices in the tile never changes.
-        int vertexStride = 2;
-        FloatBuffer vertices = Buffers.newDirectFloatBuffer(vertexStride * numPoints);
+        this.requestQueue.clear(); // clear any remaining requests
+    }
 
+    /**
+     * Tessellates a tile's records at the geometry's resolution. This runs on a task service thread, so it uses its
+     * own tessellator and modifies only the specified geometry.
+     * <p/>
+     * Each record boundary keeps only the vertices whose effective area in the shape's generalization is at least the
+     * square of the resolution, and records smaller than the resolution are omitted entirely. Geometry at full
+     * resolution keeps every vertex of every record.
+     *
+     * @param geom the geometry to tessellate.
+     */
+    protected void tessellateTile(TileGeometry geom)
+    {
+        Tile tile = geom.tile;
+        ShapefileGeneralization generalization = geom.resolution > 0 ? this.getGeneralization() : null;
+        boolean fullResolution = generalization == null;
+
+        // Compute the minimum effective area for a vertex based on the geometry resolution. We convert the resolution
+        // from radians to square degrees to match the units of the generalization's effective areas.
+        double resolutionDegrees = geom.resolution * 180.0 / Math.PI;
+        double minEffectiveArea = resolutionDegrees * resolutionDegrees;
+
+        // Allocate the geographic coordinate vertices. Geometry at a coarse resolution usually holds a small fraction
+        // of the tile's points, so the array grows as vertices are added and is copied to its actual size below.
+        int vertexStride = 2;
+        float[] vertices = new float[vertexStride * 1024];
+        int vertexCount = 0;
         double[] location = new double[2];
-        float[] vertex = new float[2];
+        double[] effectiveArea = null;
         Vec4 rp = null;
 
-        // Generate the geographic coordinate vertices and indices for all records in the tile. This may include records
-        // that are marked as not visible, as recomputing the vertices and indices for record visibility changes would
-        // be expensive. The tessellated indices are generated only once, since each record's indices never change.
-        for (Record record : tile.records)
+        geom.recordIndices = new IntBuffer[tile.records.size()];
+        geom.recordVertexCounts = new int[tile.records.size()];
+        PolylineTessellator tess = new PolylineTessellator();
+
+        // Generate the geographic coordinate vertices and indices for all records in the tile meeting the geometry's
+        // resolution criteria. This may include records that are marked as not visible, as recomputing the vertices and
+        // indices for record visibility changes would be expensive.
+        for (int r = 0; r < tile.records.size(); r++)
         {
-            this.tess.reset();
+            Record record = tile.records.get(r);
+            if (!fullResolution && Math.max(record.sector.getDeltaLatRadians(), record.sector.getDeltaLonRadians())
+                < geom.resolution)
+            {
+                continue; // ignore records that don't meet the resolution criteria
+            }
+
+            int firstVertex = vertexCount;
+            tess.reset();
 
             for (int i = 0; i < record.getBoundaryCount(); i++)
             {
-                this.tess.beginPolyline();
-
                 VecBuffer points = record.getBoundaryPoints(i);
+                if (!fullResolution)
+                {
+                    effectiveArea = generalization.getEffectiveArea(record.ordinal, i, effectiveArea);
+                }
+
+                tess.beginPolyline();
+
                 for (int j = 0; j < points.getSize(); j++)
                 {
+                    if (!fullResolution && effectiveArea[j] < minEffectiveArea)
+                        continue; // ignore vertices that don't meet the resolution criteria
+
                     points.get(j, location);
                     double x = location[0]; // map longitude to x
                     double y = location[1]; // map latitude to y
 
-                    int index = vertices.position() / vertexStride;
-                    this.tess.addVertex(x, y, 0, index);
-
                     if (rp == null) // first vertex in the tile
                     {
                         rp = new Vec4(x, y, 0);
                     }
 
-                    vertex[0] = (float) (x - rp.x);
-                    vertex[1] = (float) (y - rp.y);
-                    vertices.put(vertex);
+                    if (vertices.length < vertexStride * (vertexCount + 1))
+                    {
+                        vertices = Arrays.copyOf(vertices, 2 * vertices.length);
+                    }
+
+                    tess.addVertex(x, y, 0, vertexCount);
+                    vertices[vertexStride * vertexCount] = (float) (x - rp.x);
+                    vertices[vertexStride * vertexCount + 1] = (float) (y - rp.y);
+                    vertexCount++;
                 }
 
-                this.tess.endPolyline();
+                tess.endPolyline();
             }
 
-            this.assembleRecordIndices(this.tess, record);
+            geom.recordIndices[r] = this.assembleRecordIndices(tess);
+            geom.recordVertexCounts[r] = vertexCount - firstVertex;
         }
 
-        tile.vertices = (FloatBuffer) vertices.rewind();
-        tile.vertexStride = vertexStride;
-        tile.referencePoint = rp;
-        tile.transformMatrix = Matrix.fromTranslation(rp.x, rp.y, rp.z);
+        if (vertexCount > 0)
+        {
+            geom.vertices = Buffers.newDirectFloatBuffer(vertices, 0, vertexStride * vertexCount);
+            geom.vertexStride = vertexStride;
+            geom.vertexCount = vertexCount;
+            geom.referencePoint = rp;
+            geom.transformMatrix = Matrix.fromTranslation(rp.x, rp.y, rp.z);
+        }
     }
 
-    protected void assembleRecordIndices(PolylineTessellator tessellator, Record record)
+    protected IntBuffer assembleRecordIndices(PolylineTessellator tessellator)
     {
         // Get the tessellated boundary indices representing a line segment tessellation of the record parts.
         // Flip each buffer in order to limit the buffer range we use to values added during tessellation.
@@ -605,23 +898,23 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         IntBuffer outlineIndices = IntBuffer.allocate(tessBoundary.remaining());
         outlineIndices.put(tessBoundary);
 
-        record.outlineIndices = (IntBuffer) outlineIndices.rewind();
+        return (IntBuffer) outlineIndices.rewind();
     }
 
     protected void invalidateTileAttributeGroups(Tile tile)
     {
-        tile.attributeGroups.clear();
+        tile.attributeStateID++; // causes each of the tile's geometries to re-assemble its attribute groups
     }
 
-    protected boolean mustAssembleTileAttributeGroups(Tile tile)
+    protected boolean mustAssembleTileAttributeGroups(Tile tile, TileGeometry geom)
     {
-        return tile.attributeGroups.isEmpty();
+        return geom.attributeStateID != tile.attributeStateID;
     }
 
-    protected void assembleTileAttributeGroups(Tile tile)
+    protected void assembleTileAttributeGroups(Tile tile, TileGeometry geom)
     {
-        tile.attributeGroups.clear();
-        tile.attributeStateID++;
+        geom.attributeGroups.clear();
+        geom.attributeStateID = tile.attributeStateID;
 
         // Assemble the tile's records into groups with common attributes. Attributes are compared using the instance's
         // address, so subsequent changes to an Attribute instance will be reflected in the record group automatically.
@@ -629,11 +922,17 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         // without re-assembling these groups. However, changes to a record's visibility state, highlight state, normal
         // attributes reference and highlight attributes reference invalidate this grouping.
         HashMap<ShapeAttributes, RecordGroup> attrMap = new HashMap<ShapeAttributes, RecordGroup>();
-        for (Record record : tile.records)
+        for (int r = 0; r < tile.records.size(); r++)
         {
+            Record record = tile.records.get(r);
+            IntBuffer recordIndices = geom.recordIndices[r];
+
             if (!record.isVisible()) // ignore records marked as not visible
                 continue;
 
+            if (recordIndices == null) // ignore records omitted at the geometry's resolution
+                continue;
+
             ShapeAttributes attrs = this.determineActiveAttributes(record);
             RecordGroup group = attrMap.get(attrs);
 
@@ -641,31 +940,31 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
             {
                 group = new RecordGroup(attrs);
                 attrMap.put(attrs, group); // add it to the map to prevent duplicates
-                tile.attributeGroups.add(group); // add it to the tile's attribute group list
+                geom.attributeGroups.add(group); // add it to the geometry's attribute group list
             }
 
-            group.records.add(record);
-            group.outlineIndexRange.length += record.outlineIndices.remaining();
+            group.recordIndices.add(recordIndices);
+            group.outlineIndexRange.length += recordIndices.remaining();
         }
 
         // Make the indices for each record group. We take care to make indices for both the interior and the outline,
         // regardless of the current state of Attributes.isDrawInterior and Attributes.isDrawOutline. This enable these
         // properties change state without needing to re-assemble these groups.
-        for (RecordGroup group : tile.attributeGroups)
+        for (RecordGroup group : geom.attributeGroups)
         {
             int indexCount = group.outlineIndexRange.length;
             IntBuffer indices = Buffers.newDirectIntBuffer(indexCount);
 
             group.outlineIndexRange.location = indices.position();
-            for (Record record : group.records) // assemble the group's line indices in a single contiguous range
+            for (IntBuffer recordIndices : group.recordIndices) // assemble the group's line indices contiguously
             {
-                indices.put(record.outlineIndices);
-                record.outlineIndices.rewind();
+                indices.put(recordIndices);
+                recordIndices.rewind();
             }
 
             group.indices = (IntBuffer) indices.rewind();
-            group.records.clear();
-            group.records.trimToSize(); // Reduce memory overhead from unused ArrayList capacity.
+            group.recordIndices.clear();
+            group.recordIndices.trimToSize(); // Reduce memory overhead from unused ArrayList capacity.
         }
     }
 
@@ -731,35 +1030,36 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
     protected void drawTile(DrawContext dc, Tile tile)
     {
         GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2 compatibility.
+        TileGeometry geom = tile.geometry;
 
         int[] vboId = null;
         boolean useVbo = dc.getGLRuntimeCapabilities().isUseVertexBufferObject();
-        if (useVbo && (vboId = (int[]) dc.getGpuResourceCache().get(tile.vboKey)) == null)
+        if (useVbo && (vboId = (int[]) dc.getGpuResourceCache().get(geom.vboKey)) == null)
         {
-            long vboSize = 4 * tile.vertices.remaining(); // 4 bytes for each float vertex component
+            long vboSize = 4 * geom.vertices.remaining(); // 4 bytes for each float vertex component
             vboId = new int[1];
             gl.glGenBuffers(1, vboId, 0);
             gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vboId[0]);
-            gl.glBufferData(GL.GL_ARRAY_BUFFER, vboSize, tile.vertices, GL.GL_STATIC_DRAW);
-            gl.glVertexPointer(tile.vertexStride, GL.GL_FLOAT, 0, 0);
-            dc.getGpuResourceCache().put(tile.vboKey, vboId, GpuResourceCache.VBO_BUFFERS, vboSize);
+            gl.glBufferData(GL.GL_ARRAY_BUFFER, vboSize, geom.vertices, GL.GL_STATIC_DRAW);
+            gl.glVertexPointer(geom.vertexStride, GL.GL_FLOAT, 0, 0);
+            dc.getGpuResourceCache().put(geom.vboKey, vboId, GpuResourceCache.VBO_BUFFERS, vboSize);
         }
         else if (useVbo)
         {
             gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vboId[0]);
-            gl.glVertexPointer(tile.vertexStride, GL.GL_FLOAT, 0, 0);
+            gl.glVertexPointer(geom.vertexStride, GL.GL_FLOAT, 0, 0);
         }
         else
         {
-            gl.glVertexPointer(tile.vertexStride, GL.GL_FLOAT, 0, tile.vertices);
+            gl.glVertexPointer(geom.vertexStride, GL.GL_FLOAT, 0, geom.vertices);
         }
 
         SurfaceTileDrawContext sdc = (SurfaceTileDrawContext) dc.getValue(AVKey.SURFACE_TILE_DRAW_CONTEXT);
-        Matrix modelview = sdc.getModelviewMatrix().multiply(tile.transformMatrix);
+        Matrix modelview = sdc.getModelviewMatrix().multiply(geom.transformMatrix);
         modelview.toArray(this.matrixArray, 0, false);
         gl.glLoadMatrixd(this.matrixArray, 0);
 
-        for (RecordGroup attrGroup : tile.attributeGroups)
+        for (RecordGroup attrGroup : geom.attributeGroups)
         {
             this.drawTileAttributeGroup(dc, attrGroup);
         }
@@ -815,8 +1115,9 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
     protected void drawTileInUniqueColors(DrawContext dc, Tile tile)
     {
         GL2 gl = dc.getGL().getGL2();
+        TileGeometry geom = tile.geometry;
 
-        int pickColorsSize = 3 * (tile.vertices.remaining() / tile.vertexStride); // 1 RGB color for each XY vertex
+        int pickColorsSize = 3 * geom.vertexCount; // 1 RGB color for each XY vertex
         if (this.pickColors == null || this.pickColors.capacity() < pickColorsSize)
         {
             this.pickColors = Buffers.newDirectByteBuffer(pickColorsSize);
@@ -848,10 +1149,11 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
         }
 
         byte[] vertexColors = this.colorByteArray;
-        for (Record record : tile.records)
+        for (int r = 0; r < tile.records.size(); r++)
         {
             // Assign each record a unique RGB color. Generate vertex colors for every record - regardless of its
-            // visibility - since the tile's color array must match the tile's vertex array.
+            // visibility - since the geometry's color array must match the geometry's vertex array.
+            Record record = tile.records.get(r);
             Color color = dc.getUniquePickColor();
             this.pickSupport.addPickableObject(color.getRGB(), record);
             vertexColors[0] = (byte) color.getRed();
@@ -859,7 +1161,7 @@ public class ShapefilePolylines extends ShapefileRenderable implements OrderedRe
             vertexColors[2] = (byte) color.getBlue();
 
             // Add the unique color each vertex of the record.
-            for (int i = 0; i < record.numberOfPoints; i++)
+            for (int i = 0; i < geom.recordVertexCounts[r]; i++)
             {
                 colors.put(vertexColors, 0, 3);
             }
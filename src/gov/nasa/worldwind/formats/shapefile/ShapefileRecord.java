@@ -27,6 +27,9 @@ public abstract class ShapefileRecord
     protected int contentLengthInBytes;
     protected String shapeType;
     protected DBaseRecord attributes;
+    /** The table holding the record's attributes, from which they're decoded on demand. May be null. */
+    protected DBaseTable attributeTable;
+    protected int attributeOrdinal;
     protected int numberOfParts;
     protected int numberOfPoints;
     protected int firstPartNumber;
@@ -112,12 +115,18 @@ public abstract class ShapefileRecord
     }
 
     /**
-     * Returns the record's attributes.
+     * Returns the record's attributes. Attributes read from an attribute table are decoded the first time this is
+     * called; see {@link #getAttributeTable()}.
      *
      * @return the record's attributes.
      */
     public DBaseRecord getAttributes()
     {
+        if (this.attributes == null && this.attributeTable != null)
+        {
+            this.attributes = this.attributeTable.readRecord(this.attributeOrdinal);
+        }
+
         return this.attributes;
     }
 
@@ -129,6 +138,45 @@ public abstract class ShapefileRecord
     public void setAttributes(DBaseRecord attributes)
     {
         this.attributes = attributes;
+        this.attributeTable = null;
+    }
+
+    /**
+     * Returns the table holding this record's attributes, or null if the attributes were not read from a table. Reading
+     * values from the table with {@link #getAttributeOrdinal()} avoids decoding every attribute of the record, as
+     * {@link #getAttributes()} does.
+     *
+     * @return the table holding this record's attributes, or null if there is none.
+     *
+     * @see Shapefile#getAttributeTable()
+     */
+    public DBaseTable getAttributeTable()
+    {
+        return this.attributeTable;
+    }
+
+    /**
+     * Returns the ordinal position of this record's attributes in its attribute table.
+     *
+     * @return the ordinal position of this record in the table returned by {@link #getAttributeTable()}.
+     */
+    public int getAttributeOrdinal()
+    {
+        return this.attributeOrdinal;
+    }
+
+    /**
+     * Specifies the table holding this record's attributes. The attributes are decoded from the table when they're
+     * requested by {@link #getAttributes()}.
+     *
+     * @param table   the table holding the record's attributes.
+     * @param ordinal the ordinal position of the record's attributes in the table.
+     */
+    public void setAttributeTable(DBaseTable table, int ordinal)
+    {
+        this.attributes = null;
+        this.attributeTable = table;
+        this.attributeOrdinal = ordinal;
     }
 
     /**
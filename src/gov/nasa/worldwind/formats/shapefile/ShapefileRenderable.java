@@ -5,13 +5,17 @@
  */
 package gov.nasa.worldwind.formats.shapefile;
 
-import gov.nasa.worldwind.WWObjectImpl;
-import gov.nasa.worldwind.avlist.AVListImpl;
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.render.*;
 import gov.nasa.worldwind.util.*;
 
+import java.io.*;
+import java.net.URL;
 import java.util.*;
+import java.util.logging.Level;
 
 /**
  * @author dcollins
@@ -28,6 +32,12 @@ public abstract class ShapefileRenderable extends WWObjectImpl
      * AttributeDelegate entry points may be called on a non-EDT thread. Implementations of AttributeDelegate may modify
      * the ShapefileRenderable.Record passed to these methods, but should not modify the ShapefileRenderable without
      * synchronizing access with the thread used to create the ShapefileRenderable.
+     * <p/>
+     * Delegates that need only a few of a large shapefile's attributes should read them from the record's attribute
+     * table, if it has one, rather than from {@link ShapefileRecord#getAttributes()}, which decodes every attribute of
+     * the record. For example, <code>table.getDouble(shapefileRecord.getAttributeOrdinal(), field)</code> reads one
+     * numeric attribute, where <code>table</code> is the record's attribute table and <code>field</code> is the index
+     * returned by {@link DBaseTable#getFieldIndex(String)}.
      */
     public interface AttributeDelegate
     {
@@ -52,6 +62,7 @@ public abstract class ShapefileRenderable extends WWObjectImpl
         protected ShapefileRenderable shapefileRenderable;
         protected Sector sector;
         protected int ordinal;
+        protected int attributeOrdinal;
         protected boolean visible = true;
         protected boolean highlighted;
         protected ShapeAttributes normalAttrs;
@@ -85,6 +96,8 @@ public abstract class ShapefileRenderable extends WWObjectImpl
             this.firstPartNumber = shapefileRecord.getFirstPartNumber();
             this.numberOfParts = shapefileRecord.getNumberOfParts();
             this.numberOfPoints = shapefileRecord.getNumberOfPoints();
+            this.attributeOrdinal = shapefileRecord.getAttributeTable() != null
+                ? shapefileRecord.getAttributeOrdinal() : -1;
         }
 
         public ShapefileRenderable getShapefileRenderable()
@@ -102,6 +115,19 @@ public abstract class ShapefileRenderable extends WWObjectImpl
             return this.ordinal;
         }
 
+        /**
+         * Returns the ordinal position of this record's attributes in the attribute table of the ShapefileRenderable.
+         *
+         * @return the ordinal position of this record's attributes, or -1 if the record has no attributes in the
+         *         table.
+         *
+         * @see ShapefileRenderable#getAttributeTable()
+         */
+        public int getAttributeOrdinal()
+        {
+            return this.attributeOrdinal;
+        }
+
         public boolean isVisible()
         {
             return this.visible;
@@ -194,9 +220,20 @@ public abstract class ShapefileRenderable extends WWObjectImpl
         }
     }
 
+    /** The file store path under which generalization files are kept. */
+    public static final String GENERALIZATION_CACHE_PATH = "Shapefile";
+    protected static final String GENERALIZATION_FILE_SUFFIX = ".wwg";
+
     protected Sector sector;
     protected ArrayList<ShapefileRenderable.Record> records;
     protected boolean visible = true;
+    // Properties supporting the generalization of record boundaries.
+    protected volatile ShapefileGeneralization generalization;
+    protected volatile boolean generalizationRequested;
+    protected File shapefileFile;
+    protected long shapefileLength;
+    protected FileStore dataFileStore = WorldWind.getDataFileStore();
+    protected DBaseTable attributeTable;
     // Properties used during initialization.
     protected ShapeAttributes initNormalAttrs;
     protected ShapeAttributes initHighlightAttrs;
@@ -241,6 +278,9 @@ public abstract class ShapefileRenderable extends WWObjectImpl
         this.initNormalAttrs = normalAttrs;
         this.initHighlightAttrs = highlightAttrs;
         this.initAttributeDelegate = attributeDelegate;
+        this.shapefileFile = shapefile.shpFile;
+        this.shapefileLength = shapefile.getLength();
+        this.attributeTable = shapefile.getAttributeTable();
         this.assembleRecords(shapefile);
     }
 
@@ -331,6 +371,230 @@ public abstract class ShapefileRenderable extends WWObjectImpl
         this.visible = visible;
     }
 
+    /**
+     * Returns the file store in which this shape keeps the generalization of its record boundaries. By default this is
+     * the WorldWind data file store.
+     *
+     * @return the file store in which generalizations are kept, or null if they are not kept.
+     */
+    public FileStore getDataFileStore()
+    {
+        return this.dataFileStore;
+    }
+
+    /**
+     * Specifies the file store in which this shape keeps the generalization of its record boundaries. A null file store
+     * causes the generalization to be created each time the shapefile is displayed.
+     *
+     * @param dataFileStore the file store in which to keep generalizations. May be null.
+     */
+    public void setDataFileStore(FileStore dataFileStore)
+    {
+        this.dataFileStore = dataFileStore;
+    }
+
+    /**
+     * Returns the attribute table of the shapefile this shape displays.
+     *
+     * @return the shapefile's attribute table, or null if the shapefile has none.
+     *
+     * @see Shapefile#getAttributeTable()
+     */
+    public DBaseTable getAttributeTable()
+    {
+        return this.attributeTable;
+    }
+
+    /**
+     * Shows the records whose attributes match a query, and hides every other record. The query is evaluated against
+     * the shapefile's attribute table without decoding the records' attributes; see {@link DBaseQuery}.
+     *
+     * @param query the query selecting the records to show.
+     *
+     * @return the number of visible records.
+     *
+     * @throws IllegalArgumentException if the query is null, or if it cannot be compiled against the attribute table.
+     * @throws IllegalStateException    if the shapefile has no attribute table.
+     */
+    public int setRecordsVisible(DBaseQuery query)
+    {
+        if (query == null)
+        {
+            String msg = Logging.getMessage("nullValue.QueryIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (this.attributeTable == null)
+        {
+            String msg = Logging.getMessage("SHP.AttributeTableUnavailable", this);
+            Logging.logger().severe(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        BitSet selected = query.select(this.attributeTable);
+        int numVisible = 0;
+
+        for (ShapefileRenderable.Record record : this)
+        {
+            boolean visible = record.attributeOrdinal >= 0 && selected.get(record.attributeOrdinal);
+            record.setVisible(visible);
+
+            if (visible)
+                numVisible++;
+        }
+
+        return numVisible;
+    }
+
+    /**
+     * Returns the generalization of this shape's record boundaries, or null if it's not yet available. The first call
+     * requests the generalization on a background thread; see {@link #loadGeneralization()}. Once the generalization
+     * is available this shape fires an {@link AVKey#REPAINT} property change event.
+     *
+     * @return the generalization of this shape's record boundaries, or null if it's not yet available.
+     */
+    protected ShapefileGeneralization getGeneralization()
+    {
+        if (this.generalization == null && !this.generalizationRequested && this.getRecordCount() > 0
+            && !WorldWind.getTaskService().isFull())
+        {
+            this.generalizationRequested = true;
+            WorldWind.getTaskService().addTask(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        loadGeneralization();
+                        firePropertyChange(AVKey.REPAINT, null, ShapefileRenderable.this);
+                    }
+                    catch (Exception e)
+                    {
+                        String message = Logging.getMessage("generic.ExceptionWhileTessellating",
+                            ShapefileRenderable.this);
+                        Logging.logger().log(Level.SEVERE, message, e);
+                    }
+                }
+            });
+        }
+
+        return this.generalization;
+    }
+
+    /**
+     * Loads or creates the generalization of this shape's record boundaries. This maps the shapefile's generalization
+     * file in this shape's file store if it exists and matches this shape's records. Otherwise it generalizes every
+     * boundary, and attempts to save the generalization to the file store. Generalization files are keyed by the
+     * shapefile's path, length and last modified time, so the directory holding the shapefile is never modified and a
+     * changed shapefile is generalized again. A generalization that cannot be saved, or whose shapefile was not read
+     * from a local file, is kept in memory.
+     * <p/>
+     * Generalizing a large shapefile takes time, so this should be called on a thread other than the rendering thread.
+     *
+     * @return the generalization of this shape's record boundaries.
+     */
+    protected synchronized ShapefileGeneralization loadGeneralization()
+    {
+        if (this.generalization != null)
+            return this.generalization;
+
+        FileStore fileStore = this.getDataFileStore();
+        String cachePath = (fileStore != null && this.shapefileFile != null) ? this.getGeneralizationCachePath() : null;
+        ShapefileGeneralization gen = null;
+        if (cachePath != null)
+        {
+            URL url = fileStore.findFile(cachePath, false);
+            File file = (url != null) ? WWIO.convertURLToFile(url) : null;
+            if (file != null)
+            {
+                try
+                {
+                    gen = ShapefileGeneralization.load(file);
+                    if (!gen.matches(this, this.shapefileLength))
+                        gen = null;
+                }
+                catch (IOException e)
+                {
+                    // Generalize the boundaries again if the existing file is unreadable.
+                    String message = Logging.getMessage("generic.ExceptionAttemptingToReadFile", file);
+                    Logging.logger().log(Level.WARNING, message, e);
+                }
+            }
+        }
+
+        if (gen == null)
+        {
+            gen = ShapefileGeneralization.createGeneralization(this, this.shapefileLength);
+
+            if (cachePath != null)
+                this.saveGeneralization(fileStore, cachePath, gen);
+        }
+
+        this.generalization = gen;
+        return gen;
+    }
+
+    /**
+     * Saves a generalization to a file store, and removes the generalizations of earlier versions of the shapefile.
+     * Failures are logged and otherwise ignored; the generalization is still usable, and is created again the next time
+     * the shapefile is displayed.
+     *
+     * @param fileStore the file store in which to save the generalization.
+     * @param cachePath the file store path of the generalization file.
+     * @param gen       the generalization to save.
+     */
+    protected void saveGeneralization(FileStore fileStore, String cachePath, ShapefileGeneralization gen)
+    {
+        String dirPath = cachePath.substring(0, cachePath.lastIndexOf('/'));
+        String[] names = fileStore.listFileNames(dirPath, new FileStoreFilter()
+        {
+            public boolean accept(FileStore fileStore, String fileName)
+            {
+                return fileName.endsWith(GENERALIZATION_FILE_SUFFIX);
+            }
+        });
+
+        if (names != null)
+        {
+            for (String name : names)
+            {
+                URL url = name.equals(cachePath) ? null : fileStore.findFile(name, false);
+                if (url != null)
+                    fileStore.removeFile(url);
+            }
+        }
+
+        File file = fileStore.newFile(cachePath);
+        if (file == null)
+            return;
+
+        try
+        {
+            gen.save(file);
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", file);
+            Logging.logger().log(Level.FINE, message, e);
+        }
+    }
+
+    /**
+     * Returns the file store path of the shapefile's generalization file. Each shapefile has its own directory, named
+     * for the shapefile's absolute path, and the file's name is formed from the shapefile's length and last modified
+     * time.
+     *
+     * @return the path of the shapefile's generalization file.
+     */
+    protected String getGeneralizationCachePath()
+    {
+        String path = WWIO.replaceIllegalFileNameCharacters(this.shapefileFile.getAbsolutePath());
+        return GENERALIZATION_CACHE_PATH + "/" + path + "/"
+            + this.shapefileLength + "_" + this.shapefileFile.lastModified() + GENERALIZATION_FILE_SUFFIX;
+    }
+
     protected void recordDidChange(ShapefileRenderable.Record record)
     {
         // Intentionally left empty. May be overridden by subclass.
@@ -0,0 +1,541 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.Arrays;
+
+/**
+ * A spatial index of the records of a shapefile: a packed R-tree of the records' bounding rectangles, built bottom-up
+ * by sort-tile-recursive packing. The index finds the records intersecting a sector without reading the records that
+ * don't, so a window of a very large shapefile is read in time proportional to the records in the window.
+ * <p/>
+ * An index is persisted as a single file that is read in place: an index loaded with {@link #load(File)} maps the file
+ * into memory. Bounding rectangles are stored in geographic coordinates as single precision values rounded outward, so
+ * the index may report records that lie just outside a sector, but never misses a record that intersects it. Null
+ * records are not indexed.
+ * <p/>
+ * Indexes are immutable and may be read by multiple threads.
+ *
+ * @version $Id$
+ * @see Shapefile#findRecords(gov.nasa.worldwind.geom.Sector)
+ */
+public class ShapefileSpatialIndex
+{
+    protected static final String FILE_ID = "SHP_SPATIAL_IDX";
+    protected static final int FILE_ID_LENGTH = 16;
+    protected static final int VERSION = 1;
+    protected static final String CHARACTER_ENCODING = "UTF-8";
+
+    // Header field locations.
+    protected static final int VERSION_LOCATION = 16;
+    protected static final int NUM_RECORDS_LOCATION = 20;
+    protected static final int NUM_ENTRIES_LOCATION = 24;
+    protected static final int NUM_LEVELS_LOCATION = 28;
+    protected static final int SHAPEFILE_LENGTH_LOCATION = 32;
+    protected static final int BOUNDS_LOCATION = 40;
+    protected static final int LEVEL_TABLE_LOCATION = 72;
+    protected static final int MAX_LEVELS = 16;
+    protected static final int HEADER_LENGTH = LEVEL_TABLE_LOCATION + 8 * MAX_LEVELS;
+
+    /** The number of children of each node. */
+    protected static final int NODE_CAPACITY = 16;
+    // Leaf entries: min-latitude, max-latitude, min-longitude and max-longitude as floats, and the record's ordinal.
+    // Nodes above the leaves hold only the bounding rectangle of their children.
+    protected static final int ENTRY_LENGTH = 20;
+    protected static final int NODE_LENGTH = 16;
+
+    protected final ByteBuffer buffer;
+    protected final int numRecords;
+    protected final int numEntries;
+    protected final int numLevels;
+    protected final int[] levelLocations;
+    protected final int[] levelCounts;
+
+    /**
+     * Creates an index from its binary representation.
+     *
+     * @param buffer the index's binary representation, as written by {@link #save(File)}.
+     *
+     * @throws IllegalArgumentException if the buffer is null.
+     * @throws IOException              if the buffer does not contain a shapefile spatial index.
+     */
+    protected ShapefileSpatialIndex(ByteBuffer buffer) throws IOException
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < HEADER_LENGTH || !FILE_ID.equals(getFileId(buffer))
+            || buffer.getInt(VERSION_LOCATION) != VERSION || buffer.getInt(NUM_LEVELS_LOCATION) > MAX_LEVELS)
+        {
+            throw new IOException(Logging.getMessage("SHP.NotASpatialIndex"));
+        }
+
+        this.buffer = buffer;
+        this.numRecords = buffer.getInt(NUM_RECORDS_LOCATION);
+        this.numEntries = buffer.getInt(NUM_ENTRIES_LOCATION);
+        this.numLevels = buffer.getInt(NUM_LEVELS_LOCATION);
+        this.levelLocations = new int[this.numLevels];
+        this.levelCounts = new int[this.numLevels];
+        for (int level = 0; level < this.numLevels; level++)
+        {
+            this.levelLocations[level] = buffer.getInt(LEVEL_TABLE_LOCATION + 8 * level);
+            this.levelCounts[level] = buffer.getInt(LEVEL_TABLE_LOCATION + 8 * level + 4);
+        }
+    }
+
+    /**
+     * Opens an index file by mapping it into memory.
+     *
+     * @param file the index file.
+     *
+     * @return the index.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the file cannot be read or does not contain a shapefile spatial index.
+     */
+    public static ShapefileSpatialIndex load(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return new ShapefileSpatialIndex(WWIO.mapFile(file));
+    }
+
+    /**
+     * Writes this index to a file. The index is written to a temporary file that then replaces the specified file, so
+     * indexes mapped from a previous version of the file remain readable.
+     *
+     * @param file the index file.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     * @throws IOException              if the file cannot be written.
+     */
+    public void save(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        saveBuffer(this.buffer, file);
+    }
+
+    /**
+     * Writes a buffer's contents to a temporary file that then replaces the specified file.
+     *
+     * @param buffer the buffer to write. Its position is not changed.
+     * @param file   the file to write.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    protected static void saveBuffer(ByteBuffer buffer, File file) throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+        try
+        {
+            if (!WWIO.saveBuffer(buffer.duplicate(), tempFile))
+                throw new IOException(Logging.getMessage("generic.ExceptionAttemptingToWriteTo", file));
+
+            // Renaming over an existing file fails on some platforms.
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file)))
+                throw new IOException(Logging.getMessage("generic.ExceptionAttemptingToWriteTo", file));
+        }
+        finally
+        {
+            if (tempFile.exists())
+                tempFile.delete();
+        }
+    }
+
+    /**
+     * Creates an index of a shapefile's records. The shapefile must support random access, and the records' bounding
+     * rectangles are read without reading their points.
+     *
+     * @param shapefile the shapefile to index.
+     *
+     * @return the index of the shapefile's records.
+     *
+     * @throws IllegalArgumentException if the shapefile is null.
+     * @throws IllegalStateException    if the shapefile does not support random access.
+     */
+    public static ShapefileSpatialIndex createIndex(Shapefile shapefile)
+    {
+        if (shapefile == null)
+        {
+            String message = Logging.getMessage("nullValue.ShapefileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int numRecords = shapefile.getNumberOfRecords();
+        double[] bounds = new double[4 * Math.max(numRecords, 0)];
+        int[] ordinals = new int[Math.max(numRecords, 0)];
+        int numEntries = 0;
+
+        for (int i = 0; i < numRecords; i++)
+        {
+            double[] rect = shapefile.readRecordBoundingRectangle(i);
+            if (rect == null)
+                continue;
+
+            System.arraycopy(rect, 0, bounds, 4 * numEntries, 4);
+            ordinals[numEntries++] = i;
+        }
+
+        try
+        {
+            return new ShapefileSpatialIndex(pack(numRecords, shapefile.getLength(),
+                shapefile.getBoundingRectangle(), bounds, ordinals, numEntries));
+        }
+        catch (IOException e)
+        {
+            // The packed buffer is always a valid index.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Indicates whether this index was created from a shapefile with the same number of records, length and bounding
+     * rectangle as a specified shapefile. An index file that doesn't match its shapefile is out of date.
+     *
+     * @param shapefile the shapefile to compare.
+     *
+     * @return true if the index matches the shapefile, otherwise false.
+     *
+     * @throws IllegalArgumentException if the shapefile is null.
+     */
+    public boolean matches(Shapefile shapefile)
+    {
+        if (shapefile == null)
+        {
+            String message = Logging.getMessage("nullValue.ShapefileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        double[] rect = shapefile.getBoundingRectangle();
+        if (rect == null || this.numRecords != shapefile.getNumberOfRecords()
+            || this.buffer.getLong(SHAPEFILE_LENGTH_LOCATION) != shapefile.getLength())
+        {
+            return false;
+        }
+
+        for (int i = 0; i < 4; i++)
+        {
+            if (Double.compare(rect[i], this.buffer.getDouble(BOUNDS_LOCATION + 8 * i)) != 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of records in the indexed shapefile, including null records.
+     *
+     * @return the number of records in the shapefile.
+     */
+    public int getNumRecords()
+    {
+        return this.numRecords;
+    }
+
+    /**
+     * Returns the number of indexed records. Null records are not indexed.
+     *
+     * @return the number of indexed records.
+     */
+    public int getNumEntries()
+    {
+        return this.numEntries;
+    }
+
+    /**
+     * Returns the ordinals of the records whose bounding rectangles intersect a sector, in ascending order.
+     *
+     * @param sector the sector of interest.
+     *
+     * @return the ordinals of the intersecting records. The array is empty if there are none.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     */
+    public int[] findRecords(Sector sector)
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.numLevels == 0)
+            return new int[0];
+
+        double minLat = sector.getMinLatitude().degrees;
+        double maxLat = sector.getMaxLatitude().degrees;
+        double minLon = sector.getMinLongitude().degrees;
+        double maxLon = sector.getMaxLongitude().degrees;
+
+        int[] result = new int[16];
+        int numResults = 0;
+
+        // Descend the tree depth first. Each stack element is a level and the first and last node of a run of siblings.
+        int[] stack = new int[3 * NODE_CAPACITY * this.numLevels];
+        int top = 0;
+        stack[top++] = this.numLevels - 1;
+        stack[top++] = 0;
+        stack[top++] = this.levelCounts[this.numLevels - 1];
+
+        while (top > 0)
+        {
+            int end = stack[--top];
+            int begin = stack[--top];
+            int level = stack[--top];
+            int location = this.levelLocations[level];
+            int length = (level == 0) ? ENTRY_LENGTH : NODE_LENGTH;
+
+            for (int i = begin; i < end; i++)
+            {
+                int pos = location + i * length;
+                if (this.buffer.getFloat(pos) > maxLat || this.buffer.getFloat(pos + 4) < minLat
+                    || this.buffer.getFloat(pos + 8) > maxLon || this.buffer.getFloat(pos + 12) < minLon)
+                {
+                    continue;
+                }
+
+                if (level == 0)
+                {
+                    if (numResults == result.length)
+                        result = Arrays.copyOf(result, 2 * result.length);
+                    result[numResults++] = this.buffer.getInt(pos + 16);
+                }
+                else
+                {
+                    stack[top++] = level - 1;
+                    stack[top++] = i * NODE_CAPACITY;
+                    stack[top++] = Math.min((i + 1) * NODE_CAPACITY, this.levelCounts[level - 1]);
+                }
+            }
+        }
+
+        result = Arrays.copyOf(result, numResults);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Packs bounding rectangles into the binary representation of an index. Entries are sorted into vertical slices by
+     * the longitude of their centers, and within each slice by the latitude of their centers, then grouped into nodes
+     * of {@link #NODE_CAPACITY} entries, and the nodes grouped likewise until one level holds a single node's worth.
+     *
+     * @param numRecords      the number of records in the shapefile.
+     * @param shapefileLength the length of the shapefile.
+     * @param shapefileBounds the shapefile's bounding rectangle.
+     * @param bounds          the entries' bounding rectangles, four elements per entry ordered as min-latitude,
+     *                        max-latitude, min-longitude and max-longitude.
+     * @param ordinals        the entries' record ordinals.
+     * @param numEntries      the number of entries.
+     *
+     * @return the index's binary representation.
+     */
+    protected static ByteBuffer pack(int numRecords, long shapefileLength, double[] shapefileBounds, double[] bounds,
+        int[] ordinals, int numEntries)
+    {
+        int[] order = sortTileRecursive(bounds, numEntries);
+
+        // Compute the number of nodes on each level.
+        int[] counts = new int[MAX_LEVELS];
+        int numLevels = 0;
+        int count = numEntries;
+        while (count > 0)
+        {
+            counts[numLevels++] = count;
+            if (count <= NODE_CAPACITY)
+                break;
+            count = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        }
+
+        int length = HEADER_LENGTH + numEntries * ENTRY_LENGTH;
+        for (int level = 1; level < numLevels; level++)
+        {
+            length += counts[level] * NODE_LENGTH;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(getFileIdBytes(FILE_ID));
+        buffer.putInt(VERSION_LOCATION, VERSION);
+        buffer.putInt(NUM_RECORDS_LOCATION, numRecords);
+        buffer.putInt(NUM_ENTRIES_LOCATION, numEntries);
+        buffer.putInt(NUM_LEVELS_LOCATION, numLevels);
+        buffer.putLong(SHAPEFILE_LENGTH_LOCATION, shapefileLength);
+        for (int i = 0; i < 4; i++)
+        {
+            buffer.putDouble(BOUNDS_LOCATION + 8 * i, shapefileBounds != null ? shapefileBounds[i] : 0);
+        }
+
+        // Write the leaf entries in sorted order.
+        int location = HEADER_LENGTH;
+        buffer.position(location);
+        for (int i = 0; i < numEntries; i++)
+        {
+            int entry = order[i];
+            putBounds(buffer, bounds[4 * entry], bounds[4 * entry + 1], bounds[4 * entry + 2], bounds[4 * entry + 3]);
+            buffer.putInt(ordinals[entry]);
+        }
+
+        // Write each level's nodes, bounding runs of NODE_CAPACITY consecutive children on the level below.
+        for (int level = 0; level < numLevels; level++)
+        {
+            buffer.putInt(LEVEL_TABLE_LOCATION + 8 * level, location);
+            buffer.putInt(LEVEL_TABLE_LOCATION + 8 * level + 4, counts[level]);
+
+            if (level + 1 == numLevels)
+                break;
+
+            int childLength = (level == 0) ? ENTRY_LENGTH : NODE_LENGTH;
+            for (int node = 0; node < counts[level + 1]; node++)
+            {
+                float minLat = Float.MAX_VALUE, maxLat = -Float.MAX_VALUE;
+                float minLon = Float.MAX_VALUE, maxLon = -Float.MAX_VALUE;
+                int end = Math.min((node + 1) * NODE_CAPACITY, counts[level]);
+                for (int child = node * NODE_CAPACITY; child < end; child++)
+                {
+                    int pos = location + child * childLength;
+                    minLat = Math.min(minLat, buffer.getFloat(pos));
+                    maxLat = Math.max(maxLat, buffer.getFloat(pos + 4));
+                    minLon = Math.min(minLon, buffer.getFloat(pos + 8));
+                    maxLon = Math.max(maxLon, buffer.getFloat(pos + 12));
+                }
+
+                buffer.putFloat(minLat).putFloat(maxLat).putFloat(minLon).putFloat(maxLon);
+            }
+
+            location += counts[level] * childLength;
+        }
+
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Returns the order of entries that groups nearby entries together: the entries sorted into vertical slices by the
+     * longitude of their centers, and within each slice by the latitude of their centers.
+     */
+    protected static int[] sortTileRecursive(double[] bounds, int numEntries)
+    {
+        // Sort 31 bit keys and 32 bit entry numbers packed together in longs, rather than boxing the entry numbers.
+        long[] keys = new long[numEntries];
+        for (int i = 0; i < numEntries; i++)
+        {
+            keys[i] = (quantize(0.5 * (bounds[4 * i + 2] + bounds[4 * i + 3]), 180) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int numLeaves = (numEntries + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int numSlices = (int) Math.ceil(Math.sqrt(numLeaves));
+        int sliceSize = numSlices * NODE_CAPACITY;
+
+        for (int begin = 0; begin < numEntries; begin += sliceSize)
+        {
+            int end = Math.min(begin + sliceSize, numEntries);
+            for (int i = begin; i < end; i++)
+            {
+                int entry = (int) keys[i];
+                keys[i] = (quantize(0.5 * (bounds[4 * entry] + bounds[4 * entry + 1]), 90) << 32) | entry;
+            }
+            Arrays.sort(keys, begin, end);
+        }
+
+        int[] order = new int[numEntries];
+        for (int i = 0; i < numEntries; i++)
+        {
+            order[i] = (int) keys[i];
+        }
+
+        return order;
+    }
+
+    /** Maps a coordinate in the range [-range, range] to a non-negative 31 bit key that preserves its order. */
+    protected static long quantize(double value, double range)
+    {
+        double t = (value + range) / (2 * range);
+        return (long) (WWMath.clamp(t, 0, 1) * Integer.MAX_VALUE);
+    }
+
+    /** Writes a bounding rectangle as single precision values rounded outward. */
+    protected static void putBounds(ByteBuffer buffer, double minLat, double maxLat, double minLon, double maxLon)
+    {
+        buffer.putFloat(roundDown(minLat)).putFloat(roundUp(maxLat)).putFloat(roundDown(minLon)).putFloat(
+            roundUp(maxLon));
+    }
+
+    protected static float roundDown(double value)
+    {
+        float f = (float) value;
+        return (f > value) ? Math.nextDown(f) : f;
+    }
+
+    protected static float roundUp(double value)
+    {
+        float f = (float) value;
+        return (f < value) ? Math.nextUp(f) : f;
+    }
+
+    protected static String getFileId(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[FILE_ID_LENGTH];
+        for (int i = 0; i < FILE_ID_LENGTH; i++)
+        {
+            bytes[i] = buffer.get(i);
+        }
+
+        int length = 0;
+        while (length < FILE_ID_LENGTH && bytes[length] != 0)
+        {
+            length++;
+        }
+
+        try
+        {
+            return new String(bytes, 0, length, CHARACTER_ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected static byte[] getFileIdBytes(String fileId)
+    {
+        try
+        {
+            return Arrays.copyOf(fileId.getBytes(CHARACTER_ENCODING), FILE_ID_LENGTH);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+}
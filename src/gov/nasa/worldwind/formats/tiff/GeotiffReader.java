@@ -27,6 +27,11 @@ import java.util.ArrayList;
  */
 public class GeotiffReader implements Disposable
 {
+    // Tolerance for pixel coordinates computed from a sector, which is not exact in floating point.
+    protected static final double PIXEL_ROUNDING_TOLERANCE = 1e-6;
+    // The version number identifying a BigTIFF file, whose offsets are 8 bytes long.
+    protected static final int BIGTIFF_VERSION = 43;
+
     private TIFFReader tiffReader = null;
 
     private String sourceFilename;
@@ -37,6 +42,12 @@ public class GeotiffReader implements Disposable
 
     private ArrayList<TiffIFDEntry[]> tiffIFDs = null;
     private ArrayList<AVList> metadata = null;
+    private boolean bigTIFF = false;
+
+    // Region reading state, created for each image when a region of it is first read.
+    private TIFFBlockReader[] blockReaders = null;
+    private BaselineTiff[] baselineTiffs = null;
+    private byte[][][] colorMaps = null;
 
     public GeotiffReader(String sourceFilename) throws IOException
     {
@@ -95,6 +106,17 @@ public class GeotiffReader implements Disposable
         { /* best effort */ }
     }
 
+    /**
+     * Indicates whether the file is a BigTIFF file, whose offsets are 8 bytes long rather than 4, allowing files larger
+     * than 4 GB.
+     *
+     * @return true if the file is a BigTIFF file, otherwise false.
+     */
+    public boolean isBigTIFF()
+    {
+        return this.bigTIFF;
+    }
+
     public int getNumImages() throws IOException
     {
         return (this.tiffIFDs != null) ? this.tiffIFDs.size() : 0;
@@ -179,8 +201,6 @@ public class GeotiffReader implements Disposable
         byte[][] cmap = null;
         long[] stripCounts = null;
 
-        boolean tiffDifferencing = false;
-
         TiffIFDEntry[] ifd = this.tiffIFDs.get(imageIndex);
 
         BaselineTiff tiff = BaselineTiff.extract(ifd, this.tiffReader);
@@ -241,6 +261,14 @@ public class GeotiffReader implements Disposable
             throw new IOException(msg);
         }
 
+        // Tiled and compressed images are decoded block by block, as a region covering the whole image.
+        TiffIFDEntry compression = getByTag(ifd, Tiff.Tag.COMPRESSION);
+        if (getByTag(ifd, Tiff.Tag.TILE_WIDTH) != null
+            || (compression != null && compression.asLong() != Tiff.Compression.NONE))
+        {
+            return this.readRegion(imageIndex, new Rectangle(0, 0, tiff.width, tiff.height));
+        }
+
         for (TiffIFDEntry entry : ifd)
         {
             try
@@ -280,33 +308,6 @@ public class GeotiffReader implements Disposable
             throw new IOException(message);
         }
 
-        TiffIFDEntry notToday = getByTag(ifd, Tiff.Tag.COMPRESSION);
-        boolean lzwCompressed = false;
-        if (notToday != null && notToday.asLong() == Tiff.Compression.LZW)
-        {
-            lzwCompressed = true;
-            TiffIFDEntry predictorEntry = getByTag(ifd, Tiff.Tag.TIFF_PREDICTOR);
-            if ((predictorEntry != null) && (predictorEntry.asLong() != 0))
-            {
-                tiffDifferencing = true;
-            }
-        }
-        else if (notToday != null && notToday.asLong() != Tiff.Compression.NONE)
-        {
-            String message = Logging.getMessage("GeotiffReader.CompressionFormatNotSupported");
-            Logging.logger().severe(message);
-            throw new IOException(message);
-        }
-
-        notToday = getByTag(ifd, Tiff.Tag.TILE_WIDTH);
-        if (notToday != null)
-        {
-            String message = Logging.getMessage("GeotiffReader.NoTiled");
-            Logging.logger().severe(message);
-            throw new IOException(message);
-        }
-
-        long offset = stripOffsets[0];
 //        int sampleFormat = (null != tiff.sampleFormat) ? tiff.sampleFormat[0] : Tiff.Undefined;
 //        int bitsPerSample = (null != tiff.bitsPerSample) ? tiff.bitsPerSample[0] : Tiff.Undefined;
 
@@ -514,18 +515,8 @@ public class GeotiffReader implements Disposable
             byte[][] imageData;
             if (tiff.planarConfig == Tiff.PlanarConfiguration.CHUNKY)
             {
-                if (lzwCompressed && (tiff.samplesPerPixel > 2))
-                {
-                    imageData = new byte[1][tiff.width * tiff.height * tiff.samplesPerPixel];
-
-                    imageData[0] = this.tiffReader.readLZWCompressed(tiff.width, tiff.height, offset,
-                        tiff.samplesPerPixel, tiffDifferencing, stripOffsets, stripCounts);
-                }
-                else
-                {
-                    imageData = this.tiffReader.readPixelInterleaved8(tiff.width, tiff.height, tiff.samplesPerPixel,
-                        stripOffsets, stripCounts);
-                }
+                imageData = this.tiffReader.readPixelInterleaved8(tiff.width, tiff.height, tiff.samplesPerPixel,
+                    stripOffsets, stripCounts);
             }
             else
             {
@@ -554,6 +545,347 @@ public class GeotiffReader implements Disposable
         throw new IOException(message);
     }
 
+    /**
+     * Indicates whether an image is organized in tiles rather than in strips.
+     *
+     * @param imageIndex the index of the image.
+     *
+     * @return true if the image is tiled, otherwise false.
+     *
+     * @throws IOException if the image index is invalid.
+     */
+    public boolean isTiled(int imageIndex) throws IOException
+    {
+        this.checkImageIndex(imageIndex);
+        return getByTag(this.tiffIFDs.get(imageIndex), Tiff.Tag.TILE_WIDTH) != null;
+    }
+
+    /**
+     * Computes the smallest region of an image's pixels that covers a sector. Pixels of elevation images are treated
+     * as points spanning the image's sector, and pixels of other images as covering a finite area of it, matching the
+     * way {@link gov.nasa.worldwind.data.BufferWrapperRaster} and {@link gov.nasa.worldwind.data.BufferedImageRaster}
+     * draw them.
+     *
+     * @param imageIndex the index of the image.
+     * @param sector     the sector to cover.
+     *
+     * @return the region of pixels covering the sector, clipped to the image, or null if the image has no sector or
+     *         the sector does not intersect it.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     * @throws IOException              if the image index is invalid.
+     */
+    public Rectangle computeRegion(int imageIndex, Sector sector) throws IOException
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.checkImageIndex(imageIndex);
+        Object o = this.metadata.get(imageIndex).getValue(AVKey.SECTOR);
+        if (!(o instanceof Sector) || !((Sector) o).intersects(sector))
+            return null;
+
+        Sector imageSector = (Sector) o;
+        int width = this.getWidth(imageIndex);
+        int height = this.getHeight(imageIndex);
+
+        if (this.hasPointPixels(imageIndex))
+        {
+            double pixelWidth = imageSector.getDeltaLonDegrees() / Math.max(width - 1, 1);
+            double pixelHeight = imageSector.getDeltaLatDegrees() / Math.max(height - 1, 1);
+
+            int xMin = (int) Math.floor((sector.getMinLongitude().degrees - imageSector.getMinLongitude().degrees)
+                / pixelWidth + PIXEL_ROUNDING_TOLERANCE);
+            int xMax = (int) Math.ceil((sector.getMaxLongitude().degrees - imageSector.getMinLongitude().degrees)
+                / pixelWidth - PIXEL_ROUNDING_TOLERANCE);
+            int yMin = (int) Math.floor((imageSector.getMaxLatitude().degrees - sector.getMaxLatitude().degrees)
+                / pixelHeight + PIXEL_ROUNDING_TOLERANCE);
+            int yMax = (int) Math.ceil((imageSector.getMaxLatitude().degrees - sector.getMinLatitude().degrees)
+                / pixelHeight - PIXEL_ROUNDING_TOLERANCE);
+
+            xMin = Math.max(0, xMin);
+            yMin = Math.max(0, yMin);
+            xMax = Math.min(width - 1, xMax);
+            yMax = Math.min(height - 1, yMax);
+            if (xMax < xMin || yMax < yMin)
+                return null;
+
+            return new Rectangle(xMin, yMin, xMax - xMin + 1, yMax - yMin + 1);
+        }
+        else
+        {
+            double pixelWidth = imageSector.getDeltaLonDegrees() / width;
+            double pixelHeight = imageSector.getDeltaLatDegrees() / height;
+
+            int xMin = (int) Math.floor((sector.getMinLongitude().degrees - imageSector.getMinLongitude().degrees)
+                / pixelWidth + PIXEL_ROUNDING_TOLERANCE);
+            int xMax = (int) Math.ceil((sector.getMaxLongitude().degrees - imageSector.getMinLongitude().degrees)
+                / pixelWidth - PIXEL_ROUNDING_TOLERANCE);
+            int yMin = (int) Math.floor((imageSector.getMaxLatitude().degrees - sector.getMaxLatitude().degrees)
+                / pixelHeight + PIXEL_ROUNDING_TOLERANCE);
+            int yMax = (int) Math.ceil((imageSector.getMaxLatitude().degrees - sector.getMinLatitude().degrees)
+                / pixelHeight - PIXEL_ROUNDING_TOLERANCE);
+
+            xMin = Math.max(0, xMin);
+            yMin = Math.max(0, yMin);
+            xMax = Math.min(width, xMax);
+            yMax = Math.min(height, yMax);
+            if (xMax <= xMin || yMax <= yMin)
+                return null;
+
+            return new Rectangle(xMin, yMin, xMax - xMin, yMax - yMin);
+        }
+    }
+
+    /**
+     * Indicates whether an image is read as an elevation raster, whose pixels are points spanning the image's sector.
+     * The pixels of other images cover a finite area of the sector.
+     *
+     * @param imageIndex the index of the image.
+     *
+     * @return true if the image's pixels are points, otherwise false.
+     */
+    protected boolean hasPointPixels(int imageIndex)
+    {
+        return AVKey.ELEVATION.equals(this.metadata.get(imageIndex).getValue(AVKey.PIXEL_FORMAT));
+    }
+
+    /**
+     * Reads the pixels of an image that cover a sector. Only the strips or tiles intersecting the sector are read.
+     *
+     * @param imageIndex the index of the image.
+     * @param sector     the sector to read.
+     *
+     * @return a raster covering the pixels of the image that intersect the sector, or null if the image has no sector
+     *         or the sector does not intersect it.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     * @throws IOException              if the image index is invalid, or if the image cannot be read.
+     * @see #computeRegion(int, gov.nasa.worldwind.geom.Sector)
+     */
+    public DataRaster readRegion(int imageIndex, Sector sector) throws IOException
+    {
+        Rectangle region = this.computeRegion(imageIndex, sector);
+        return (region != null) ? this.readRegion(imageIndex, region) : null;
+    }
+
+    /**
+     * Reads a region of an image's pixels. Only the strips or tiles intersecting the region are read, so this can read
+     * parts of images too large to fit in memory. The returned raster has the image's metadata, and if the image has a
+     * sector, the sector covered by the region.
+     *
+     * @param imageIndex the index of the image.
+     * @param region     the region of pixels to read.
+     *
+     * @return a raster containing the region's pixels.
+     *
+     * @throws IllegalArgumentException if the region is null, or is not within the image.
+     * @throws IOException              if the image index is invalid, or if the image cannot be read.
+     */
+    public DataRaster readRegion(int imageIndex, Rectangle region) throws IOException
+    {
+        if (region == null)
+        {
+            String message = Logging.getMessage("nullValue.RectangleIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        TIFFBlockReader blockReader = this.getBlockReader(imageIndex);
+        byte[] samples = blockReader.readRegion(region.x, region.y, region.width, region.height);
+
+        AVList values = this.getMetadata(imageIndex);
+        values.setValue(AVKey.WIDTH, region.width);
+        values.setValue(AVKey.HEIGHT, region.height);
+        Object o = values.getValue(AVKey.SECTOR);
+        if (o instanceof Sector)
+        {
+            // A region of point pixels spans one pixel less than its size.
+            Sector sector = (Sector) o;
+            int span = this.hasPointPixels(imageIndex) ? 1 : 0;
+            double pixelWidth = sector.getDeltaLonDegrees() / Math.max(this.getWidth(imageIndex) - span, 1);
+            double pixelHeight = sector.getDeltaLatDegrees() / Math.max(this.getHeight(imageIndex) - span, 1);
+            values.setValue(AVKey.SECTOR, Sector.fromDegrees(
+                sector.getMaxLatitude().degrees - (region.y + region.height - span) * pixelHeight,
+                sector.getMaxLatitude().degrees - region.y * pixelHeight,
+                sector.getMinLongitude().degrees + region.x * pixelWidth,
+                sector.getMinLongitude().degrees + (region.x + region.width - span) * pixelWidth));
+        }
+
+        return this.createRegionRaster(imageIndex, region.width, region.height, samples, values);
+    }
+
+    /**
+     * Reads the samples of a region of an image's pixels, without interpreting them. The samples are pixel
+     * interleaved, row by row from the top of the region, in the byte order of the file.
+     *
+     * @param imageIndex the index of the image.
+     * @param region     the region of pixels to read.
+     *
+     * @return a buffer containing the region's samples, whose byte order is the file's byte order.
+     *
+     * @throws IllegalArgumentException if the region is null, or is not within the image.
+     * @throws IOException              if the image index is invalid, or if the image cannot be read.
+     */
+    public ByteBuffer readRegionSamples(int imageIndex, Rectangle region) throws IOException
+    {
+        if (region == null)
+        {
+            String message = Logging.getMessage("nullValue.RectangleIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        TIFFBlockReader blockReader = this.getBlockReader(imageIndex);
+        byte[] samples = blockReader.readRegion(region.x, region.y, region.width, region.height);
+        return ByteBuffer.wrap(samples).order(blockReader.getByteOrder());
+    }
+
+    protected synchronized TIFFBlockReader getBlockReader(int imageIndex) throws IOException
+    {
+        this.checkImageIndex(imageIndex);
+
+        if (this.blockReaders == null)
+        {
+            this.blockReaders = new TIFFBlockReader[this.getNumImages()];
+            this.baselineTiffs = new BaselineTiff[this.getNumImages()];
+            this.colorMaps = new byte[this.getNumImages()][][];
+        }
+
+        if (this.blockReaders[imageIndex] == null)
+        {
+            TiffIFDEntry[] ifd = this.tiffIFDs.get(imageIndex);
+            BaselineTiff tiff = BaselineTiff.extract(ifd, this.tiffReader);
+            if (null == tiff)
+            {
+                String message = Logging.getMessage("GeotiffReader.BadGeotiff");
+                Logging.logger().severe(message);
+                throw new IOException(message);
+            }
+
+            // The color map is read with the channel's position, so read it now rather than while reading a region.
+            if (tiff.photometric == Tiff.Photometric.Color_Palette)
+                this.colorMaps[imageIndex] = this.tiffReader.readColorMap(getByTag(ifd, Tiff.Tag.COLORMAP));
+
+            this.baselineTiffs[imageIndex] = tiff;
+            this.blockReaders[imageIndex] = new TIFFBlockReader(this.theChannel, this.tiffReader.getByteOrder(), ifd,
+                tiff);
+        }
+
+        return this.blockReaders[imageIndex];
+    }
+
+    protected DataRaster createRegionRaster(int imageIndex, int width, int height, byte[] samples, AVList values)
+        throws IOException
+    {
+        BaselineTiff tiff;
+        byte[][] cmap;
+        synchronized (this)
+        {
+            tiff = this.baselineTiffs[imageIndex];
+            cmap = this.colorMaps[imageIndex];
+        }
+
+        int samplesPerPixel = Math.max(1, tiff.samplesPerPixel);
+        int bytesPerSample = samples.length / (width * height * samplesPerPixel);
+        ByteOrder byteOrder = this.tiffReader.getByteOrder();
+
+        if (values.getValue(AVKey.PIXEL_FORMAT) == AVKey.ELEVATION)
+        {
+            byte[] band = extractBand(samples, samplesPerPixel, bytesPerSample, 0);
+            values.setValue(AVKey.BYTE_ORDER,
+                (byteOrder == ByteOrder.LITTLE_ENDIAN) ? AVKey.LITTLE_ENDIAN : AVKey.BIG_ENDIAN);
+
+            ByteBufferRaster raster = new ByteBufferRaster(width, height, (Sector) values.getValue(AVKey.SECTOR),
+                ByteBuffer.wrap(band), values);
+            ElevationsUtil.rectify(raster);
+            return raster;
+        }
+
+        BufferedImage image = null;
+
+        if (values.getValue(AVKey.PIXEL_FORMAT) == AVKey.IMAGE
+            && values.getValue(AVKey.IMAGE_COLOR_FORMAT) == AVKey.GRAYSCALE)
+        {
+            byte[] band = extractBand(samples, samplesPerPixel, bytesPerSample, 0);
+
+            if (bytesPerSample == 1)
+            {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+                byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                System.arraycopy(band, 0, data, 0, data.length);
+            }
+            else if (bytesPerSample == 2)
+            {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+                short[] data = ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+                ByteBuffer.wrap(band).order(byteOrder).asShortBuffer().get(data);
+            }
+        }
+        else if (values.getValue(AVKey.PIXEL_FORMAT) == AVKey.IMAGE
+            && values.getValue(AVKey.IMAGE_COLOR_FORMAT) == AVKey.COLOR && bytesPerSample == 1)
+        {
+            if (tiff.photometric == Tiff.Photometric.Color_RGB
+                && (samplesPerPixel == Tiff.SamplesPerPixel.RGB || samplesPerPixel == Tiff.SamplesPerPixel.RGBA))
+            {
+                boolean hasAlpha = samplesPerPixel == Tiff.SamplesPerPixel.RGBA;
+                int[] bits = new int[samplesPerPixel];
+                int[] bandOffsets = new int[samplesPerPixel];
+                for (int i = 0; i < samplesPerPixel; i++)
+                {
+                    bits[i] = 8;
+                    bandOffsets[i] = i;
+                }
+
+                ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), bits,
+                    hasAlpha, false, hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+                SampleModel sampleModel = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, width, height,
+                    samplesPerPixel, width * samplesPerPixel, bandOffsets);
+                WritableRaster raster = Raster.createWritableRaster(sampleModel,
+                    new DataBufferByte(samples, samples.length), new Point(0, 0));
+                image = new BufferedImage(colorModel, raster, false, null);
+            }
+            else if (tiff.photometric == Tiff.Photometric.Color_Palette && cmap != null)
+            {
+                IndexColorModel colorModel = new IndexColorModel(8, cmap[0].length, cmap[0], cmap[1], cmap[2]);
+                image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+                byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                System.arraycopy(extractBand(samples, samplesPerPixel, 1, 0), 0, data, 0, data.length);
+            }
+        }
+
+        if (null == image)
+        {
+            String message = Logging.getMessage("Geotiff.UnsupportedDataTypeRaster", tiff.toString());
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        image = ImageUtil.toCompatibleImage(image);
+        return BufferedImageRaster.wrap(image, values);
+    }
+
+    protected static byte[] extractBand(byte[] samples, int samplesPerPixel, int bytesPerSample, int band)
+    {
+        if (samplesPerPixel == 1)
+            return samples;
+
+        int bytesPerPixel = samplesPerPixel * bytesPerSample;
+        byte[] bandSamples = new byte[samples.length / samplesPerPixel];
+        for (int src = band * bytesPerSample, dest = 0; dest < bandSamples.length; src += bytesPerPixel)
+        {
+            for (int b = 0; b < bytesPerSample; b++)
+            {
+                bandSamples[dest++] = samples[src + b];
+            }
+        }
+        return bandSamples;
+    }
+
     /**
      * Returns true if georeferencing information was found in this file.
      * <p/>
@@ -785,17 +1117,44 @@ public class GeotiffReader implements Disposable
 
         this.tiffReader.setByteOrder(byteOrder);
 
-        // skip the magic number and get offset to first (and likely only) ImageFileDirectory...
+        // check the magic number and get offset to first (and likely only) ImageFileDirectory...
         ifh = ByteBuffer.wrap(array).order(byteOrder);
-        ifh.position(4);
-        long ifdOffset = TIFFReader.getUnsignedInt(ifh);
+        ifh.position(2);
+        this.bigTIFF = TIFFReader.getUnsignedShort(ifh) == BIGTIFF_VERSION;
 
-        // position the channel to the ImageFileDirectory...
-        this.theChannel.position(ifdOffset);
-        ifh.clear().limit(2);
-        this.theChannel.read(ifh);
-        ifh.flip();
-        readIFD(ifh.getShort());
+        if (this.bigTIFF)
+        {
+            // A BigTIFF header continues with the size of offsets, which must be 8, and a reserved zero, and is
+            // followed by the 8-byte offset of the first ImageFileDirectory.
+            if (TIFFReader.getUnsignedShort(ifh) != 8)
+            {
+                String message = Logging.getMessage("GeotiffReader.BadTiffSig");
+                Logging.logger().severe(message);
+                throw new IOException(message);
+            }
+
+            ifh.clear();
+            this.theChannel.read(ifh);
+            ifh.flip();
+            this.theChannel.position(ifh.getLong());
+
+            ifh.clear();
+            this.theChannel.read(ifh);
+            ifh.flip();
+            readIFD(ifh.getLong());
+        }
+        else
+        {
+            ifh.position(4);
+            long ifdOffset = TIFFReader.getUnsignedInt(ifh);
+
+            // position the channel to the ImageFileDirectory...
+            this.theChannel.position(ifdOffset);
+            ifh.clear().limit(2);
+            this.theChannel.read(ifh);
+            ifh.flip();
+            readIFD(TIFFReader.getUnsignedShort(ifh));
+        }
 
         // decode any geotiff tags and structures that may be present into a manager object...
         this.repackageGeoReferencingTags();
@@ -1036,7 +1395,7 @@ public class GeotiffReader implements Disposable
      *
      */
 
-    private void readIFD(int numEntries) throws IOException
+    private void readIFD(long numEntries) throws IOException
     {
         try
         {
@@ -1048,7 +1407,7 @@ public class GeotiffReader implements Disposable
             java.util.List<TiffIFDEntry> ifd = new ArrayList<TiffIFDEntry>();
             for (int i = 0; i < numEntries; i++)
             {
-                ifd.add(TIFFIFDFactory.create(this.theChannel, this.tiffReader.getByteOrder()));
+                ifd.add(TIFFIFDFactory.create(this.theChannel, this.tiffReader.getByteOrder(), this.bigTIFF));
             }
 
             TiffIFDEntry[] array = ifd.toArray(new TiffIFDEntry[ifd.size()]);
@@ -1060,19 +1419,19 @@ public class GeotiffReader implements Disposable
             }
             this.metadata.add(new AVListImpl());
 
-            ByteBuffer bb = ByteBuffer.allocate(4).order(this.tiffReader.getByteOrder());
+            ByteBuffer bb = ByteBuffer.allocate(this.bigTIFF ? 8 : 4).order(this.tiffReader.getByteOrder());
             this.theChannel.read(bb);
             bb.flip();
 
             // If there's another IFD in this file, go get it (recursively)...
-            long nextIFDOffset = TIFFReader.getUnsignedInt(bb);
+            long nextIFDOffset = this.bigTIFF ? bb.getLong() : TIFFReader.getUnsignedInt(bb);
             if (nextIFDOffset > 0)
             {
                 this.theChannel.position(nextIFDOffset);
-                bb.clear().limit(2);
+                bb.clear().limit(this.bigTIFF ? 8 : 2);
                 this.theChannel.read(bb);
                 bb.flip();
-                readIFD(bb.getShort());
+                readIFD(this.bigTIFF ? bb.getLong() : TIFFReader.getUnsignedShort(bb));
             }
         }
         catch (Exception ex)
@@ -17,8 +17,18 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
+ * Writes images and elevations as GeoTIFF files.
+ * <p/>
+ * By default images are written uncompressed, in strips one row high. When a tile size or a compression scheme is
+ * specified, images are written in tiles instead, compressed with LZW, Deflate or PackBits, and optionally encoded on
+ * several threads. Tiled images are read from their source a row of tiles at a time, so a {@link DataRaster} that reads
+ * its pixels on demand, such as {@link GeotiffDataRaster}, can be written without ever holding the whole image in
+ * memory. Tiled files whose offsets do not fit in 4 bytes are written as BigTIFF files, which can also be requested
+ * for any tiled file.
+ *
  * @author Lado Garakanidze
  * @version $Id: GeotiffWriter.java 1171 2013-02-11 21:45:02Z dcollins $
  */
@@ -34,6 +44,26 @@ public class GeotiffWriter
     private static final int BufferedImage_TYPE_ELEVATION_SHORT16 = 9001;
     private static final int BufferedImage_TYPE_ELEVATION_FLOAT32 = 9002;
 
+    /** The width and height of tiles when tiled output is required but no tile size has been specified. */
+    public static final int DEFAULT_TILE_SIZE = 256;
+    // Tile dimensions must be multiples of 16, via decree of the spec.
+    private static final int TILE_SIZE_MULTIPLE = 16;
+    // The version number identifying a BigTIFF file, whose offsets are 8 bytes long.
+    private static final int BIGTIFF_VERSION = 43;
+    // The largest offset a classic TIFF file can hold.
+    private static final long MAX_CLASSIC_TIFF_OFFSET = 0xFFFFFFFFL;
+    // Room left for the tile offsets and GeoTIFF tags when deciding whether a file needs BigTIFF offsets.
+    private static final long METADATA_RESERVE = 1L << 20;
+    // Rows of tiles are read and encoded together until a band holds this many tiles per encoding thread.
+    private static final int NO_EXTRA_SAMPLE = -1;
+    private static final int TILES_PER_THREAD = 4;
+
+    private int tileWidth = 0;
+    private int tileHeight = 0;
+    private int compression = Tiff.Compression.NONE;
+    private boolean bigTIFF = false;
+    private int encodingThreadCount = 1;
+
     public GeotiffWriter(String filename) throws IOException
     {
         if (null == filename || 0 == filename.trim().length())
@@ -89,6 +119,148 @@ public class GeotiffWriter
         { /* best effort */ }
     }
 
+    /**
+     * Returns the width of the tiles of tiled output. See {@link #setTileSize(int, int)}.
+     *
+     * @return the tile width in pixels, or 0 if no tile size has been specified.
+     */
+    public int getTileWidth()
+    {
+        return this.tileWidth;
+    }
+
+    /**
+     * Returns the height of the tiles of tiled output. See {@link #setTileSize(int, int)}.
+     *
+     * @return the tile height in pixels, or 0 if no tile size has been specified.
+     */
+    public int getTileHeight()
+    {
+        return this.tileHeight;
+    }
+
+    /**
+     * Specifies the size of the tiles images are written in. Tiles on the right and bottom edges of an image extend
+     * beyond it, and the pixels beyond the image are zero. A size of 0 by 0 writes images in strips, unless compression
+     * or BigTIFF output has been specified, in which case tiles of {@link #DEFAULT_TILE_SIZE} are written.
+     *
+     * @param tileWidth  the tile width in pixels, a positive multiple of 16, or 0.
+     * @param tileHeight the tile height in pixels, a positive multiple of 16, or 0.
+     *
+     * @throws IllegalArgumentException if the width or height is not a positive multiple of 16, and the size is not 0
+     *                                  by 0.
+     */
+    public void setTileSize(int tileWidth, int tileHeight)
+    {
+        boolean none = tileWidth == 0 && tileHeight == 0;
+        boolean valid = tileWidth > 0 && tileHeight > 0
+            && tileWidth % TILE_SIZE_MULTIPLE == 0 && tileHeight % TILE_SIZE_MULTIPLE == 0;
+        if (!none && !valid)
+        {
+            String msg = Logging.getMessage("GeotiffWriter.InvalidTileSize", tileWidth, tileHeight);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * Returns the compression scheme of tiled output. See {@link #setCompression(int)}.
+     *
+     * @return the TIFF compression code.
+     */
+    public int getCompression()
+    {
+        return this.compression;
+    }
+
+    /**
+     * Specifies the compression scheme images are written with. Compressed images are always written in tiles. The
+     * default is {@link Tiff.Compression#NONE}.
+     *
+     * @param compression the TIFF compression code: {@link Tiff.Compression#NONE}, {@link Tiff.Compression#LZW},
+     *                    {@link Tiff.Compression#DEFLATE} or {@link Tiff.Compression#PACKBITS}.
+     *
+     * @throws IllegalArgumentException if the compression scheme is not supported.
+     */
+    public void setCompression(int compression)
+    {
+        if (!TIFFBlockEncoder.isSupported(compression))
+        {
+            String msg = Logging.getMessage("GeotiffWriter.UnsupportedCompression", compression);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.compression = compression;
+    }
+
+    /**
+     * Indicates whether tiled images are always written as BigTIFF files. See {@link #setBigTIFF(boolean)}.
+     *
+     * @return true if BigTIFF output is always written, otherwise false.
+     */
+    public boolean isBigTIFF()
+    {
+        return this.bigTIFF;
+    }
+
+    /**
+     * Specifies whether images are always written as BigTIFF files, whose offsets are 8 bytes long. BigTIFF images
+     * are written in tiles. Tiled images too large for a classic TIFF file are written as BigTIFF files regardless. The
+     * default is false. Note that some TIFF readers do not read BigTIFF files.
+     *
+     * @param bigTIFF true to always write BigTIFF files.
+     */
+    public void setBigTIFF(boolean bigTIFF)
+    {
+        this.bigTIFF = bigTIFF;
+    }
+
+    /**
+     * Returns the number of threads that compress tiles. See {@link #setEncodingThreadCount(int)}.
+     *
+     * @return the number of encoding threads.
+     */
+    public int getEncodingThreadCount()
+    {
+        return this.encodingThreadCount;
+    }
+
+    /**
+     * Specifies the number of threads that compress tiles. Each band of tiles is read from the source on the calling
+     * thread, and its tiles are then compressed concurrently and written in order, so the file does not depend on the
+     * number of threads. The default is 1, which compresses tiles on the calling thread.
+     *
+     * @param threadCount the number of encoding threads.
+     *
+     * @throws IllegalArgumentException if <code>threadCount</code> is less than 1.
+     */
+    public void setEncodingThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", "threadCount < 1");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.encodingThreadCount = threadCount;
+    }
+
+    /**
+     * Indicates whether images are written in tiles: a tile size, a compression scheme or BigTIFF output has been
+     * specified.
+     *
+     * @return true if images are written in tiles, false if they are written in strips.
+     */
+    public boolean isTiled()
+    {
+        return this.tileWidth > 0 || this.compression != Tiff.Compression.NONE || this.bigTIFF;
+    }
+
     public void write(BufferedImage image) throws IOException
     {
         this.write(image, null);
@@ -125,6 +297,12 @@ public class GeotiffWriter
         {
             this.writeRaster((BufferWrapperRaster) raster);
         }
+        else
+        {
+            // Other rasters are read a band at a time, and are always written in tiles.
+            AVList params = this.validateRasterParameters(raster);
+            this.writeTiled(new RasterTileSource(raster), params);
+        }
     }
 
     /*
@@ -220,6 +398,12 @@ public class GeotiffWriter
             this.validateParameters(params, image.getWidth(), image.getHeight());
         }
 
+        if (this.isTiled())
+        {
+            this.writeTiled(new ImageTileSource(image), params);
+            return;
+        }
+
         // how we proceed in part depends upon the image type...
         int type = image.getType();
 
@@ -970,6 +1154,11 @@ public class GeotiffWriter
     }
 
     private void writeIFDs(List<TiffIFDEntry> ifds) throws IOException
+    {
+        this.writeIFDs(ifds, false);
+    }
+
+    private void writeIFDs(List<TiffIFDEntry> ifds, boolean bigTIFF) throws IOException
     {
         long offset = this.theChannel.position();
 
@@ -981,43 +1170,92 @@ public class GeotiffWriter
 
         Collections.sort(ifds);
 
-        ByteBuffer dataBuff = ByteBuffer.allocateDirect(ifds.size() * 12);
+        // BigTIFF entries have 8-byte counts and value offsets, and the directory has an 8-byte entry count and
+        // next directory offset.
+        int valueSize = bigTIFF ? 8 : 4;
+        ByteBuffer dataBuff = ByteBuffer.allocateDirect(2 * valueSize + ifds.size() * (4 + 2 * valueSize) + 2);
 
-        // The IFD directory is preceeded by a SHORT count of the number of entries...
-        putUnsignedShort(dataBuff, ifds.size());
-        dataBuff.flip();
-        this.theChannel.write(dataBuff);
+        // The IFD directory is preceeded by a count of the number of entries...
+        if (bigTIFF)
+            dataBuff.putLong(ifds.size());
+        else
+            putUnsignedShort(dataBuff, ifds.size());
 
-        dataBuff.clear();
         for (TiffIFDEntry ifd : ifds)
         {
             putUnsignedShort(dataBuff, ifd.tag);
             putUnsignedShort(dataBuff, ifd.type);
-            putUnsignedInt(dataBuff, ifd.count);
+            if (bigTIFF)
+                dataBuff.putLong(ifd.count);
+            else
+                putUnsignedInt(dataBuff, ifd.count);
+
+            int valueStart = dataBuff.position();
+            long size = TIFFIFDFactory.calcSize(ifd.type, ifd.count);
             if (ifd.type == Tiff.Type.SHORT && ifd.count == 1)
             {
                 // these get packed in the first few bytes...
                 putUnsignedShort(dataBuff, (int) ifd.valOffset);
-                dataBuff.putShort((short) 0);
             }
+            else if (ifd.count == 1 && (ifd.type == Tiff.Type.LONG || ifd.type == Tiff.Type.LONG8))
+            {
+                if (ifd.type == Tiff.Type.LONG8)
+                    dataBuff.putLong(ifd.valOffset);
+                else
+                    putUnsignedInt(dataBuff, ifd.valOffset);
+            }
+            else if (size > 0 && size <= valueSize)
+            {
+                // The values have been written to the file, but they fit in the Value Offset, where readers expect
+                // them. Move them there.
+                ByteBuffer values = ByteBuffer.allocate((int) size);
+                this.theChannel.read(values, ifd.valOffset);
+                values.flip();
+                dataBuff.put(values);
+            }
+            else if (bigTIFF)
+                dataBuff.putLong(ifd.valOffset);
             else
                 putUnsignedInt(dataBuff, ifd.valOffset);
+
+            while (dataBuff.position() < valueStart + valueSize)
+            {
+                dataBuff.put((byte) 0);
+            }
         }
-        dataBuff.flip();
-        this.theChannel.write(dataBuff);
 
-        // The spec requires 4 bytes of zeros at the end...
-        dataBuff.clear();
-        dataBuff.putInt(0);
+        // The spec requires zeros at the end...
+        for (int i = 0; i < valueSize; i++)
+        {
+            dataBuff.put((byte) 0);
+        }
         dataBuff.flip();
         this.theChannel.write(dataBuff);
 
         // go back and patch up the ifd offset in header...
-        this.theChannel.position(4);
-        dataBuff.clear();
-        putUnsignedInt(dataBuff, offset);
-        dataBuff.flip();
-        this.theChannel.write(dataBuff);
+        this.theChannel.write(this.createTiffHeader(bigTIFF, offset), 0);
+    }
+
+    private ByteBuffer createTiffHeader(boolean bigTIFF, long ifdOffset)
+    {
+        // A BigTIFF header has version 43, followed by the size of offsets (8), a reserved zero, and the 8-byte offset
+        // of the first IFD.
+        ByteBuffer header = ByteBuffer.allocate(bigTIFF ? 16 : 8);
+        header.put((byte) 0x4D).put((byte) 0x4D);
+        if (bigTIFF)
+        {
+            putUnsignedShort(header, BIGTIFF_VERSION);
+            putUnsignedShort(header, 8);
+            putUnsignedShort(header, 0);
+            header.putLong(ifdOffset);
+        }
+        else
+        {
+            putUnsignedShort(header, 42);
+            putUnsignedInt(header, ifdOffset);
+        }
+        header.flip();
+        return header;
     }
 
     private void putUnsignedByte(ByteBuffer buff, int value)
@@ -1092,6 +1330,14 @@ public class GeotiffWriter
             throw new IllegalArgumentException(msg);
         }
 
+        if (this.isTiled())
+        {
+            AVList params = this.validateRasterParameters(raster);
+            this.writeTiled(new BufferTileSource(raster.getBuffer(), raster.getWidth(), raster.getHeight(),
+                PixelLayout.fromParams(params)), params);
+            return;
+        }
+
         this.validateParameters(raster, raster.getWidth(), raster.getHeight());
 
         int bitsPerSample, samplesPerPixel, sampleFormat, photometric, numBands;
@@ -1321,4 +1567,583 @@ public class GeotiffWriter
 
         this.writeIFDs(ifds);
     }
+
+    /**
+     * Copies a raster's parameters for writing, and validates them. The samples of the raster are written in the byte
+     * order of the file regardless of the raster's byte order, so the byte order is not copied.
+     */
+    private AVList validateRasterParameters(DataRaster raster)
+    {
+        AVList params = raster.copy();
+        params.removeKey(AVKey.BYTE_ORDER);
+        this.validateParameters(params, raster.getWidth(), raster.getHeight());
+        return params;
+    }
+
+    /**
+     * Writes an image in tiles. The image is read from its source in bands of one or more rows of tiles; the tiles of
+     * each band are compressed, on several threads if an encoding thread count has been specified, and written in
+     * order. Only one band of the image is held in memory at a time.
+     *
+     * @param source the source of the image's pixels.
+     * @param params the validated GeoTIFF parameters.
+     *
+     * @throws IOException if the image cannot be read or the file cannot be written.
+     */
+    private void writeTiled(TileSource source, AVList params) throws IOException
+    {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        PixelLayout layout = source.getLayout();
+        int bytesPerPixel = layout.getBytesPerPixel();
+
+        int tileWidth = (this.tileWidth > 0) ? this.tileWidth : DEFAULT_TILE_SIZE;
+        int tileHeight = (this.tileHeight > 0) ? this.tileHeight : DEFAULT_TILE_SIZE;
+        int tilesAcross = (width + tileWidth - 1) / tileWidth;
+        int tilesDown = (height + tileHeight - 1) / tileHeight;
+        long[] tileOffsets = new long[tilesAcross * tilesDown];
+        long[] tileCounts = new long[tilesAcross * tilesDown];
+
+        // Read enough rows of tiles at a time to keep every encoding thread busy.
+        int tileRowsPerBand = Math.max(1, Math.min(tilesDown,
+            (this.encodingThreadCount * TILES_PER_THREAD + tilesAcross - 1) / tilesAcross));
+        TIFFBlockEncoder encoder = new TIFFBlockEncoder(this.compression, tileWidth * bytesPerPixel);
+
+        // Reserve room for a BigTIFF header. Whether the file needs one is known once the tiles are written, and a
+        // classic header leaves the rest unused.
+        this.theChannel.position(0);
+        this.theChannel.write(ByteBuffer.allocate(16));
+
+        byte[] band = null;
+        for (int tileRow = 0; tileRow < tilesDown; tileRow += tileRowsPerBand)
+        {
+            int y = tileRow * tileHeight;
+            int rows = Math.min(tileRowsPerBand * tileHeight, height - y);
+            int length = width * rows * bytesPerPixel;
+            if (band == null || band.length != length)
+                band = new byte[length];
+            source.readRows(y, rows, band);
+
+            byte[][] tiles = this.encodeTiles(encoder, band, width, rows, bytesPerPixel, tileWidth, tileHeight,
+                tilesAcross);
+
+            for (int i = 0; i < tiles.length; i++)
+            {
+                int index = tileRow * tilesAcross + i;
+                tileOffsets[index] = this.theChannel.position();
+                tileCounts[index] = tiles[i].length;
+
+                ByteBuffer buffer = ByteBuffer.wrap(tiles[i]);
+                while (buffer.hasRemaining())
+                {
+                    this.theChannel.write(buffer);
+                }
+            }
+        }
+
+        // Classic TIFF offsets are 4 bytes long. Files too large for them are written as BigTIFF files.
+        boolean bigTIFF = this.bigTIFF
+            || this.theChannel.position() + 16L * tileOffsets.length + METADATA_RESERVE > MAX_CLASSIC_TIFF_OFFSET;
+
+        ArrayList<TiffIFDEntry> ifds = new ArrayList<TiffIFDEntry>(16);
+
+        ifds.add(new TiffIFDEntry(Tiff.Tag.IMAGE_WIDTH, Tiff.Type.LONG, 1, width));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.IMAGE_LENGTH, Tiff.Type.LONG, 1, height));
+        this.appendShorts(ifds, Tiff.Tag.BITS_PER_SAMPLE, layout.samplesPerPixel, layout.bitsPerSample);
+        ifds.add(new TiffIFDEntry(Tiff.Tag.COMPRESSION, Tiff.Type.SHORT, 1, this.compression));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.PHOTO_INTERPRETATION, Tiff.Type.SHORT, 1, layout.photometric));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.ORIENTATION, Tiff.Type.SHORT, 1, Tiff.Orientation.DEFAULT));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.SAMPLES_PER_PIXEL, Tiff.Type.SHORT, 1, layout.samplesPerPixel));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.PLANAR_CONFIGURATION, Tiff.Type.SHORT, 1, Tiff.PlanarConfiguration.CHUNKY));
+        this.appendShorts(ifds, Tiff.Tag.SAMPLE_FORMAT, layout.samplesPerPixel, layout.sampleFormat);
+        if (layout.extraSample != NO_EXTRA_SAMPLE)
+            ifds.add(new TiffIFDEntry(Tiff.Tag.EXTRA_SAMPLES, Tiff.Type.SHORT, 1, layout.extraSample));
+
+        ifds.add(new TiffIFDEntry(Tiff.Tag.TILE_WIDTH, Tiff.Type.LONG, 1, tileWidth));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.TILE_LENGTH, Tiff.Type.LONG, 1, tileHeight));
+        this.appendLongs(ifds, Tiff.Tag.TILE_OFFSETS, bigTIFF ? Tiff.Type.LONG8 : Tiff.Type.LONG, tileOffsets);
+        this.appendLongs(ifds, Tiff.Tag.TILE_COUNTS, Tiff.Type.LONG, tileCounts);
+
+        this.appendGeoTiff(ifds, params);
+
+        this.writeIFDs(ifds, bigTIFF);
+    }
+
+    /**
+     * Compresses the tiles of a band of the image. Tiles are divided among the encoding threads, in groups of
+     * consecutive tiles.
+     *
+     * @return the compressed tiles, row by row.
+     */
+    private byte[][] encodeTiles(final TIFFBlockEncoder encoder, final byte[] band, final int width, final int rows,
+        final int bytesPerPixel, final int tileWidth, final int tileHeight, final int tilesAcross)
+    {
+        int numTiles = tilesAcross * ((rows + tileHeight - 1) / tileHeight);
+        final byte[][] tiles = new byte[numTiles][];
+        int groups = Math.max(1, Math.min(this.encodingThreadCount, numTiles));
+
+        if (groups == 1)
+        {
+            for (int i = 0; i < numTiles; i++)
+            {
+                tiles[i] = encodeTile(encoder, band, width, rows, bytesPerPixel, tileWidth, tileHeight, tilesAcross, i);
+            }
+        }
+        else
+        {
+            List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(groups);
+            for (int group = 0; group < groups; group++)
+            {
+                final int first = group * numTiles / groups;
+                final int last = (group + 1) * numTiles / groups;
+                tasks.add(new RecursiveAction()
+                {
+                    protected void compute()
+                    {
+                        for (int i = first; i < last; i++)
+                        {
+                            tiles[i] = encodeTile(encoder, band, width, rows, bytesPerPixel, tileWidth, tileHeight,
+                                tilesAcross, i);
+                        }
+                    }
+                });
+            }
+
+            ForkJoinTask.invokeAll(tasks);
+        }
+
+        return tiles;
+    }
+
+    private static byte[] encodeTile(TIFFBlockEncoder encoder, byte[] band, int width, int rows, int bytesPerPixel,
+        int tileWidth, int tileHeight, int tilesAcross, int index)
+    {
+        int x = (index % tilesAcross) * tileWidth;
+        int y = (index / tilesAcross) * tileHeight;
+        int columns = Math.min(tileWidth, width - x);
+        int tileRows = Math.min(tileHeight, rows - y);
+        int tileRowLength = tileWidth * bytesPerPixel;
+
+        // Tiles on the right and bottom edges extend beyond the image, and the pixels beyond it are left zero.
+        byte[] tile = new byte[tileRowLength * tileHeight];
+        for (int row = 0; row < tileRows; row++)
+        {
+            System.arraycopy(band, ((y + row) * width + x) * bytesPerPixel, tile, row * tileRowLength,
+                columns * bytesPerPixel);
+        }
+
+        return encoder.encode(tile);
+    }
+
+    /** Adds an entry for one SHORT value per sample, writing the values to the file when there is more than one. */
+    private void appendShorts(ArrayList<TiffIFDEntry> ifds, int tag, int count, int value) throws IOException
+    {
+        if (count == 1)
+        {
+            ifds.add(new TiffIFDEntry(tag, Tiff.Type.SHORT, 1, value));
+            return;
+        }
+
+        short[] values = new short[count];
+        Arrays.fill(values, (short) value);
+
+        long offset = this.theChannel.position();
+        this.theChannel.write(ByteBuffer.wrap(this.getBytes(values)));
+        ifds.add(new TiffIFDEntry(tag, Tiff.Type.SHORT, count, offset));
+    }
+
+    /** Adds an entry for LONG or LONG8 values, writing the values to the file when there is more than one. */
+    private void appendLongs(ArrayList<TiffIFDEntry> ifds, int tag, int type, long[] values) throws IOException
+    {
+        if (values.length == 1)
+        {
+            ifds.add(new TiffIFDEntry(tag, type, 1, values[0]));
+            return;
+        }
+
+        long offset = this.theChannel.position();
+        ByteBuffer dataBuff = ByteBuffer.allocate(values.length * (type == Tiff.Type.LONG8 ? 8 : INTEGER_SIZEOF));
+        for (long value : values)
+        {
+            if (type == Tiff.Type.LONG8)
+                dataBuff.putLong(value);
+            else
+                putUnsignedInt(dataBuff, value);
+        }
+        dataBuff.flip();
+        while (dataBuff.hasRemaining())
+        {
+            this.theChannel.write(dataBuff);
+        }
+        ifds.add(new TiffIFDEntry(tag, type, values.length, offset));
+    }
+
+    /** Describes how the samples of each pixel are written. */
+    private static class PixelLayout
+    {
+        private final int samplesPerPixel;
+        private final int bitsPerSample;
+        private final int sampleFormat;
+        private final int photometric;
+        private final int extraSample;
+
+        private PixelLayout(int samplesPerPixel, int bitsPerSample, int sampleFormat, int photometric,
+            int extraSample)
+        {
+            this.samplesPerPixel = samplesPerPixel;
+            this.bitsPerSample = bitsPerSample;
+            this.sampleFormat = sampleFormat;
+            this.photometric = photometric;
+            this.extraSample = extraSample;
+        }
+
+        public int getBytesPerPixel()
+        {
+            return this.samplesPerPixel * this.bitsPerSample / Byte.SIZE;
+        }
+
+        /**
+         * Returns the layout of an image's pixels. RGB images with 8-bit components, with or without alpha, and 8-bit
+         * or 16-bit grayscale images are supported.
+         *
+         * @throws IllegalArgumentException if the image's pixels cannot be written.
+         */
+        public static PixelLayout fromImage(BufferedImage image)
+        {
+            ColorModel cm = image.getColorModel();
+            int numComponents = cm.getNumComponents();
+            int numBands = image.getRaster().getNumBands();
+            int csType = cm.getColorSpace().getType();
+
+            boolean eightBit = true;
+            for (int size : cm.getComponentSize())
+            {
+                eightBit &= size == Byte.SIZE;
+            }
+
+            if (!(cm instanceof IndexColorModel) && numBands == numComponents)
+            {
+                if (ColorSpace.TYPE_RGB == csType && eightBit && (numComponents == 3 || numComponents == 4))
+                {
+                    int extraSample = NO_EXTRA_SAMPLE;
+                    if (cm.hasAlpha())
+                    {
+                        extraSample = cm.isAlphaPremultiplied() ? Tiff.ExtraSamples.ASSOCIATED_ALPHA
+                            : Tiff.ExtraSamples.UNASSOCIATED_ALPHA;
+                    }
+                    return new PixelLayout(numComponents, Tiff.BitsPerSample.MONOCHROME_BYTE,
+                        Tiff.SampleFormat.UNSIGNED, Tiff.Photometric.Color_RGB, extraSample);
+                }
+                else if (ColorSpace.TYPE_GRAY == csType && numComponents == 1
+                    && (cm.getPixelSize() == Byte.SIZE || cm.getPixelSize() == Short.SIZE))
+                {
+                    return new PixelLayout(1, cm.getPixelSize(), Tiff.SampleFormat.UNSIGNED,
+                        Tiff.Photometric.Grayscale_BlackIsZero, NO_EXTRA_SAMPLE);
+                }
+            }
+
+            String msg = Logging.getMessage("GeotiffWriter.UnsupportedType", image.getType());
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        /**
+         * Returns the layout of the pixels of a raster of a buffer with the specified parameters. The parameters'
+         * AVKey.PIXEL_FORMAT and AVKey.DATA_TYPE are interpreted as {@link
+         * GeotiffWriter#writeRaster(BufferWrapperRaster)} interprets them.
+         *
+         * @throws IllegalArgumentException if the pixel format or data type is not supported.
+         */
+        public static PixelLayout fromParams(AVList params)
+        {
+            Object pixelFormat = params.getValue(AVKey.PIXEL_FORMAT);
+            Object dataType = params.getValue(AVKey.DATA_TYPE);
+
+            if (AVKey.ELEVATION.equals(pixelFormat) && AVKey.FLOAT32.equals(dataType))
+            {
+                return new PixelLayout(Tiff.SamplesPerPixel.MONOCHROME, Tiff.BitsPerSample.ELEVATIONS_FLOAT32,
+                    Tiff.SampleFormat.IEEEFLOAT, Tiff.Photometric.Grayscale_BlackIsZero, NO_EXTRA_SAMPLE);
+            }
+            else if (AVKey.ELEVATION.equals(pixelFormat) && AVKey.INT16.equals(dataType))
+            {
+                return new PixelLayout(Tiff.SamplesPerPixel.MONOCHROME, Tiff.BitsPerSample.ELEVATIONS_INT16,
+                    Tiff.SampleFormat.SIGNED, Tiff.Photometric.Grayscale_BlackIsZero, NO_EXTRA_SAMPLE);
+            }
+            else if (AVKey.IMAGE.equals(pixelFormat) && AVKey.INT8.equals(dataType))
+            {
+                return new PixelLayout(Tiff.SamplesPerPixel.MONOCHROME, Tiff.BitsPerSample.MONOCHROME_UINT8,
+                    Tiff.SampleFormat.UNSIGNED, Tiff.Photometric.Grayscale_BlackIsZero, NO_EXTRA_SAMPLE);
+            }
+            else if (AVKey.IMAGE.equals(pixelFormat) && AVKey.INT16.equals(dataType))
+            {
+                return new PixelLayout(Tiff.SamplesPerPixel.MONOCHROME, Tiff.BitsPerSample.MONOCHROME_UINT16,
+                    Tiff.SampleFormat.UNSIGNED, Tiff.Photometric.Grayscale_BlackIsZero, NO_EXTRA_SAMPLE);
+            }
+            else if (AVKey.IMAGE.equals(pixelFormat) && AVKey.INT32.equals(dataType))
+            {
+                // Each int holds an RGB color, written as three 8-bit samples.
+                return new PixelLayout(Tiff.SamplesPerPixel.RGB, Tiff.BitsPerSample.MONOCHROME_BYTE,
+                    Tiff.SampleFormat.UNSIGNED, Tiff.Photometric.Color_RGB, NO_EXTRA_SAMPLE);
+            }
+
+            String msg = Logging.getMessage("GeotiffWriter.UnsupportedType",
+                AVKey.ELEVATION.equals(pixelFormat) || AVKey.IMAGE.equals(pixelFormat) ? dataType : pixelFormat);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /** A source of the pixels of an image written in tiles. */
+    private abstract static class TileSource
+    {
+        public abstract int getWidth();
+
+        public abstract int getHeight();
+
+        public abstract PixelLayout getLayout() throws IOException;
+
+        /**
+         * Reads rows of the image's pixels into an array, as big-endian samples, pixel interleaved, row by row.
+         *
+         * @param y    the first row.
+         * @param rows the number of rows.
+         * @param dest the array to read into, whose length is the length of the rows.
+         *
+         * @throws IOException if the rows cannot be read.
+         */
+        public abstract void readRows(int y, int rows, byte[] dest) throws IOException;
+    }
+
+    /** Reads the pixels of a BufferedImage. */
+    private static class ImageTileSource extends TileSource
+    {
+        private final BufferedImage image;
+        private final PixelLayout layout;
+
+        public ImageTileSource(BufferedImage image)
+        {
+            this.image = image;
+            this.layout = PixelLayout.fromImage(image);
+        }
+
+        public int getWidth()
+        {
+            return this.image.getWidth();
+        }
+
+        public int getHeight()
+        {
+            return this.image.getHeight();
+        }
+
+        public PixelLayout getLayout()
+        {
+            return this.layout;
+        }
+
+        public void readRows(int y, int rows, byte[] dest)
+        {
+            Raster raster = this.image.getRaster();
+            int width = this.image.getWidth();
+            int[] samples = new int[width * this.layout.samplesPerPixel];
+            ByteBuffer buffer = ByteBuffer.wrap(dest);
+
+            for (int row = 0; row < rows; row++)
+            {
+                raster.getPixels(0, y + row, width, 1, samples);
+                for (int sample : samples)
+                {
+                    if (this.layout.bitsPerSample == Short.SIZE)
+                        buffer.putShort((short) sample);
+                    else
+                        buffer.put((byte) sample);
+                }
+            }
+        }
+    }
+
+    /** Reads the samples of a BufferWrapper holding one sample, or one packed RGB color, per pixel. */
+    private static class BufferTileSource extends TileSource
+    {
+        private final BufferWrapper buffer;
+        private final int width;
+        private final int height;
+        private final PixelLayout layout;
+
+        public BufferTileSource(BufferWrapper buffer, int width, int height, PixelLayout layout)
+        {
+            this.buffer = buffer;
+            this.width = width;
+            this.height = height;
+            this.layout = layout;
+        }
+
+        public int getWidth()
+        {
+            return this.width;
+        }
+
+        public int getHeight()
+        {
+            return this.height;
+        }
+
+        public PixelLayout getLayout()
+        {
+            return this.layout;
+        }
+
+        public void readRows(int y, int rows, byte[] dest)
+        {
+            ByteBuffer out = ByteBuffer.wrap(dest);
+
+            if (this.layout.photometric == Tiff.Photometric.Color_RGB)
+            {
+                int[] colors = new int[this.width];
+                for (int row = 0; row < rows; row++)
+                {
+                    this.buffer.getInt((y + row) * this.width, colors, 0, this.width);
+                    for (int color : colors)
+                    {
+                        out.put((byte) (color >> 16)).put((byte) (color >> 8)).put((byte) color);
+                    }
+                }
+            }
+            else if (this.layout.bitsPerSample == Byte.SIZE)
+            {
+                this.buffer.getByte(y * this.width, dest, 0, rows * this.width);
+            }
+            else if (this.layout.sampleFormat == Tiff.SampleFormat.IEEEFLOAT)
+            {
+                float[] samples = new float[this.width];
+                for (int row = 0; row < rows; row++)
+                {
+                    this.buffer.getFloat((y + row) * this.width, samples, 0, this.width);
+                    out.asFloatBuffer().put(samples);
+                    out.position(out.position() + this.width * 4);
+                }
+            }
+            else
+            {
+                short[] samples = new short[this.width];
+                for (int row = 0; row < rows; row++)
+                {
+                    this.buffer.getShort((y + row) * this.width, samples, 0, this.width);
+                    out.asShortBuffer().put(samples);
+                    out.position(out.position() + this.width * 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the pixels of any DataRaster a band at a time. Bands of a {@link GeotiffDataRaster} are read exactly with
+     * {@link GeotiffReader#readRegion(int, java.awt.Rectangle)}. Bands of other rasters are read with {@link
+     * DataRaster#getSubRaster(int, int, Sector, AVList)} over the sector the band's pixels cover, which resamples the
+     * raster at its own pixels.
+     */
+    private static class RasterTileSource extends TileSource
+    {
+        private final DataRaster raster;
+        private PixelLayout layout;
+
+        public RasterTileSource(DataRaster raster)
+        {
+            this.raster = raster;
+        }
+
+        public int getWidth()
+        {
+            return this.raster.getWidth();
+        }
+
+        public int getHeight()
+        {
+            return this.raster.getHeight();
+        }
+
+        public PixelLayout getLayout() throws IOException
+        {
+            if (this.layout == null)
+            {
+                // The layout depends on the rasters that bands are read as. Read a small band to find out.
+                DataRaster band = this.readBand(0, Math.min(2, this.getHeight()));
+                try
+                {
+                    this.layout = layoutOf(band);
+                }
+                finally
+                {
+                    band.dispose();
+                }
+            }
+
+            return this.layout;
+        }
+
+        public void readRows(int y, int rows, byte[] dest) throws IOException
+        {
+            // A band of point pixels one row high would cover no area, so read the row above it too.
+            int extra = (rows == 1 && y > 0 && this.hasPointPixels()) ? 1 : 0;
+            DataRaster band = this.readBand(y - extra, rows + extra);
+            try
+            {
+                PixelLayout layout = this.getLayout();
+                TileSource source = (band instanceof BufferedImageRaster)
+                    ? new ImageTileSource(((BufferedImageRaster) band).getBufferedImage())
+                    : new BufferTileSource(((BufferWrapperRaster) band).getBuffer(), band.getWidth(),
+                        band.getHeight(), layout);
+                source.readRows(extra, rows, dest);
+            }
+            finally
+            {
+                band.dispose();
+            }
+        }
+
+        private boolean hasPointPixels()
+        {
+            // Elevations are drawn as points spanning the raster's sector, and images as areas covering it.
+            return AVKey.ELEVATION.equals(this.raster.getValue(AVKey.PIXEL_FORMAT));
+        }
+
+        private DataRaster readBand(int y, int rows) throws IOException
+        {
+            DataRaster band;
+            if (this.raster instanceof GeotiffDataRaster)
+            {
+                GeotiffDataRaster geotiff = (GeotiffDataRaster) this.raster;
+                band = geotiff.getReader().readRegion(geotiff.getImageIndex(),
+                    new java.awt.Rectangle(0, y, this.getWidth(), rows));
+            }
+            else
+            {
+                Sector sector = this.raster.getSector();
+                int span = this.hasPointPixels() ? 1 : 0;
+                double pixelHeight = sector.getDeltaLatDegrees() / Math.max(this.getHeight() - span, 1);
+                double maxLat = sector.getMaxLatitude().degrees;
+                Sector bandSector = Sector.fromDegrees(maxLat - (y + rows - span) * pixelHeight,
+                    maxLat - y * pixelHeight, sector.getMinLongitude().degrees, sector.getMaxLongitude().degrees);
+                band = this.raster.getSubRaster(this.getWidth(), rows, bandSector, null);
+            }
+
+            if (band == null || band.getWidth() != this.getWidth() || band.getHeight() != rows
+                || !(band instanceof BufferedImageRaster || band instanceof BufferWrapperRaster))
+            {
+                String msg = Logging.getMessage("DataRaster.CannotRead", this.raster);
+                Logging.logger().severe(msg);
+                throw new IOException(msg);
+            }
+
+            return band;
+        }
+
+        private static PixelLayout layoutOf(DataRaster band)
+        {
+            if (band instanceof BufferedImageRaster)
+                return PixelLayout.fromImage(((BufferedImageRaster) band).getBufferedImage());
+            else
+                return PixelLayout.fromParams(band);
+        }
+    }
 }
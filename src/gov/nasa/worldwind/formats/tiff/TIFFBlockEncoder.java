@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.tiff;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * This is a package private class that compresses the samples of one TIFF strip or tile. It is the counterpart of
+ * {@link TIFFBlockReader}, and produces LZW, Deflate and PackBits blocks that it and other TIFF readers decode. An
+ * encoder holds no state between blocks, so one encoder may compress blocks on any number of threads.
+ *
+ * @version $Id$
+ */
+class TIFFBlockEncoder
+{
+    private static final int CLEAR_CODE = 256;
+    private static final int EOI_CODE = 257;
+    private static final int FIRST_CODE = 258;
+    /** The table is cleared once it holds this many codes, so that no code is wider than 12 bits. */
+    private static final int MAX_CODE = 4094;
+    private static final int HASH_SIZE = 8192;
+
+    protected final int compression;
+    protected final int rowLength;
+
+    /**
+     * Creates an encoder for a compression scheme.
+     *
+     * @param compression the compression scheme: {@link Tiff.Compression#NONE}, {@link Tiff.Compression#LZW}, {@link
+     *                    Tiff.Compression#DEFLATE} or {@link Tiff.Compression#PACKBITS}.
+     * @param rowLength   the length in bytes of one row of a block. PackBits compresses each row separately.
+     *
+     * @throws IllegalArgumentException if the compression scheme is not supported, or the row length is less than 1.
+     */
+    public TIFFBlockEncoder(int compression, int rowLength)
+    {
+        if (!isSupported(compression))
+        {
+            String message = Logging.getMessage("GeotiffWriter.UnsupportedCompression", compression);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (rowLength < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "rowLength < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.compression = compression;
+        this.rowLength = rowLength;
+    }
+
+    /**
+     * Indicates whether blocks can be compressed with a specified scheme.
+     *
+     * @param compression the TIFF compression code.
+     *
+     * @return true if the scheme is uncompressed, LZW, Deflate or PackBits, otherwise false.
+     */
+    public static boolean isSupported(int compression)
+    {
+        return compression == Tiff.Compression.NONE || compression == Tiff.Compression.LZW
+            || compression == Tiff.Compression.DEFLATE || compression == Tiff.Compression.PACKBITS;
+    }
+
+    public int getCompression()
+    {
+        return this.compression;
+    }
+
+    /**
+     * Compresses a block.
+     *
+     * @param block the block's samples, row by row, in the byte order of the file. The array is not modified.
+     *
+     * @return the compressed block. Uncompressed blocks are returned as is.
+     */
+    public byte[] encode(byte[] block)
+    {
+        if (this.compression == Tiff.Compression.LZW)
+            return lzwEncode(block);
+        else if (this.compression == Tiff.Compression.PACKBITS)
+            return packBitsEncode(block, this.rowLength);
+        else if (this.compression == Tiff.Compression.DEFLATE)
+            return deflate(block);
+        else
+            return block;
+    }
+
+    /**
+     * Encodes TIFF LZW data: codes are written most significant bit first, the code width grows one code early, and
+     * the data begins with a clear code and ends with an end of information code.
+     *
+     * @param input the data to encode.
+     *
+     * @return the encoded data.
+     */
+    protected static byte[] lzwEncode(byte[] input)
+    {
+        // The string table maps a prefix code and a following byte to the code of the combined string. It is an open
+        // addressing hash table keyed by (prefix << 8 | byte).
+        int[] keys = new int[HASH_SIZE];
+        short[] codes = new short[HASH_SIZE];
+        Arrays.fill(keys, -1);
+
+        BitWriter out = new BitWriter(input.length / 2 + 16);
+        out.write(CLEAR_CODE, 9);
+        int nextCode = FIRST_CODE;
+
+        if (input.length == 0)
+        {
+            out.write(EOI_CODE, 9);
+            return out.toByteArray();
+        }
+
+        int prefix = input[0] & 0xFF;
+        for (int i = 1; i < input.length; i++)
+        {
+            int b = input[i] & 0xFF;
+            int key = (prefix << 8) | b;
+            int slot = (key * 0x9E3779B1 >>> 19) & (HASH_SIZE - 1);
+            while (keys[slot] != -1 && keys[slot] != key)
+            {
+                slot = (slot + 1) & (HASH_SIZE - 1);
+            }
+
+            if (keys[slot] == key)
+            {
+                prefix = codes[slot];
+                continue;
+            }
+
+            out.write(prefix, codeWidth(nextCode));
+            keys[slot] = key;
+            codes[slot] = (short) nextCode++;
+
+            if (nextCode == MAX_CODE)
+            {
+                out.write(CLEAR_CODE, codeWidth(nextCode));
+                Arrays.fill(keys, -1);
+                nextCode = FIRST_CODE;
+            }
+
+            prefix = b;
+        }
+
+        out.write(prefix, codeWidth(nextCode));
+        // The decoder adds a code for the last string before it reads the end of information code.
+        out.write(EOI_CODE, codeWidth(nextCode + 1));
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the width of the next code written while the table's next free code is <code>nextCode</code>. The decoder
+     * adds each code one code after the encoder, and widens codes when its table reaches 511, 1023 and 2047 codes.
+     *
+     * @param nextCode the encoder's next free code.
+     *
+     * @return the code width in bits.
+     */
+    private static int codeWidth(int nextCode)
+    {
+        return (nextCode < 512) ? 9 : (nextCode < 1024) ? 10 : (nextCode < 2048) ? 11 : 12;
+    }
+
+    /**
+     * Encodes PackBits data. Each row is encoded separately, as the TIFF specification requires.
+     *
+     * @param input     the data to encode.
+     * @param rowLength the length of one row, in bytes.
+     *
+     * @return the encoded data.
+     */
+    protected static byte[] packBitsEncode(byte[] input, int rowLength)
+    {
+        // The worst case adds one header byte for every 128 literal bytes.
+        int rows = (input.length + rowLength - 1) / rowLength;
+        byte[] output = new byte[input.length + rows * ((rowLength + 127) / 128)];
+        int outPos = 0;
+
+        for (int rowStart = 0; rowStart < input.length; rowStart += rowLength)
+        {
+            int rowEnd = Math.min(rowStart + rowLength, input.length);
+            int pos = rowStart;
+            while (pos < rowEnd)
+            {
+                // Measure the run of bytes equal to the byte at pos.
+                int run = 1;
+                while (pos + run < rowEnd && run < 128 && input[pos + run] == input[pos])
+                {
+                    run++;
+                }
+
+                if (run > 1)
+                {
+                    output[outPos++] = (byte) (1 - run);
+                    output[outPos++] = input[pos];
+                    pos += run;
+                    continue;
+                }
+
+                // Gather literal bytes until a run of at least three equal bytes begins. A run of two is cheaper to
+                // leave in the literal sequence than to break it.
+                int literalStart = pos;
+                while (pos < rowEnd && pos - literalStart < 128)
+                {
+                    if (pos + 2 < rowEnd && input[pos] == input[pos + 1] && input[pos] == input[pos + 2])
+                        break;
+                    pos++;
+                }
+
+                int count = pos - literalStart;
+                output[outPos++] = (byte) (count - 1);
+                System.arraycopy(input, literalStart, output, outPos, count);
+                outPos += count;
+            }
+        }
+
+        return Arrays.copyOf(output, outPos);
+    }
+
+    /**
+     * Encodes Deflate data as a zlib stream.
+     *
+     * @param input the data to encode.
+     *
+     * @return the encoded data.
+     */
+    protected static byte[] deflate(byte[] input)
+    {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try
+        {
+            deflater.setInput(input);
+            deflater.finish();
+
+            byte[] output = new byte[input.length / 2 + 64];
+            int outPos = 0;
+            while (!deflater.finished())
+            {
+                if (outPos == output.length)
+                    output = Arrays.copyOf(output, output.length * 2);
+                outPos += deflater.deflate(output, outPos, output.length - outPos);
+            }
+
+            return Arrays.copyOf(output, outPos);
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /** Accumulates codes most significant bit first in a growing byte array. */
+    protected static class BitWriter
+    {
+        protected byte[] bytes;
+        protected int length;
+        protected int bitBuffer;
+        protected int bitCount;
+
+        public BitWriter(int capacity)
+        {
+            this.bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        public void write(int code, int width)
+        {
+            this.bitBuffer = (this.bitBuffer << width) | code;
+            this.bitCount += width;
+            while (this.bitCount >= 8)
+            {
+                this.bitCount -= 8;
+                this.put((byte) (this.bitBuffer >>> this.bitCount));
+            }
+        }
+
+        public byte[] toByteArray()
+        {
+            if (this.bitCount > 0)
+            {
+                this.put((byte) (this.bitBuffer << (8 - this.bitCount)));
+                this.bitCount = 0;
+            }
+
+            return Arrays.copyOf(this.bytes, this.length);
+        }
+
+        protected void put(byte b)
+        {
+            if (this.length == this.bytes.length)
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            this.bytes[this.length++] = b;
+        }
+    }
+}
@@ -0,0 +1,583 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.tiff;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * This is a package private class that reads the pixels of a region of one TIFF image, decoding only the strips or
+ * tiles that intersect the region. Both the image's strips and tiles are treated as a grid of blocks; a stripped image
+ * is a grid one block wide whose blocks are as wide as the image.
+ * <p/>
+ * Blocks are read from memory-mapped windows of the file, so reading a region of an image larger than the heap touches
+ * only the pages of the blocks that intersect it. Uncompressed, LZW, Deflate and PackBits blocks are supported, with or
+ * without horizontal differencing. Reads do not change the state of the file channel, and any number of threads may
+ * read regions concurrently.
+ *
+ * @version $Id$
+ */
+class TIFFBlockReader
+{
+    /** The Deflate compression code written by Adobe applications and GDAL. */
+    protected static final int COMPRESSION_DEFLATE = Tiff.Compression.DEFLATE;
+    /** The Deflate compression code used before the code was registered. */
+    protected static final int COMPRESSION_DEFLATE_OLD = 32946;
+    /** The predictor value indicating horizontal differencing. */
+    protected static final int PREDICTOR_HORIZONTAL = 2;
+
+    /** The file is mapped in windows of this size, aligned to this size. */
+    protected static final long MAP_WINDOW_SIZE = 64L << 20;
+    /** Each window extends this far into the next, so that blocks crossing a window boundary can be sliced. */
+    protected static final long MAP_WINDOW_OVERLAP = 16L << 20;
+    /** The maximum number of mapped windows kept. Older windows are unmapped when collected. */
+    protected static final int MAX_MAPPED_WINDOWS = 32;
+
+    private static final int CLEAR_CODE = 256;
+    private static final int EOI_CODE = 257;
+    private static final int FIRST_CODE = 258;
+    private static final int MAX_CODES = 4096;
+
+    protected final FileChannel channel;
+    protected final ByteOrder byteOrder;
+    protected final int width;
+    protected final int height;
+    protected final int samplesPerPixel;
+    protected final int bytesPerSample;
+    protected final boolean planar;
+    protected final boolean tiled;
+    protected final int blockWidth;
+    protected final int blockHeight;
+    protected final int blocksAcross;
+    protected final int blocksDown;
+    protected final long[] blockOffsets;
+    protected final long[] blockCounts;
+    protected final int compression;
+    protected final int predictor;
+
+    protected final Map<Long, ByteBuffer> windows = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true)
+    {
+        protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest)
+        {
+            return this.size() > MAX_MAPPED_WINDOWS;
+        }
+    };
+
+    public TIFFBlockReader(FileChannel channel, ByteOrder byteOrder, TiffIFDEntry[] ifd, BaselineTiff tiff)
+        throws IOException
+    {
+        if (channel == null)
+        {
+            String message = Logging.getMessage("nullValue.ChannelIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.channel = channel;
+        this.byteOrder = byteOrder;
+        this.width = tiff.width;
+        this.height = tiff.height;
+        this.samplesPerPixel = Math.max(1, tiff.samplesPerPixel);
+        this.planar = this.samplesPerPixel > 1 && tiff.planarConfig == Tiff.PlanarConfiguration.PLANAR;
+
+        int bitsPerSample = (tiff.bitsPerSample != null && tiff.bitsPerSample.length > 0) ? tiff.bitsPerSample[0] : 8;
+        if (bitsPerSample <= 0 || bitsPerSample % 8 != 0)
+        {
+            String message = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue", bitsPerSample, "BitsPerSample",
+                Tiff.Tag.BITS_PER_SAMPLE);
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+        this.bytesPerSample = bitsPerSample / 8;
+
+        TiffIFDEntry tileWidth = getByTag(ifd, Tiff.Tag.TILE_WIDTH);
+        TiffIFDEntry tileHeight = getByTag(ifd, Tiff.Tag.TILE_LENGTH);
+        this.tiled = tileWidth != null && tileHeight != null;
+        if (this.tiled)
+        {
+            this.blockWidth = (int) tileWidth.asLong();
+            this.blockHeight = (int) tileHeight.asLong();
+            this.blockOffsets = getLongs(ifd, Tiff.Tag.TILE_OFFSETS, "TileOffsets");
+            this.blockCounts = getLongs(ifd, Tiff.Tag.TILE_COUNTS, "TileByteCounts");
+        }
+        else
+        {
+            this.blockWidth = this.width;
+            this.blockHeight = (tiff.rowsPerStrip > 0 && tiff.rowsPerStrip < this.height) ? tiff.rowsPerStrip
+                : this.height;
+            this.blockOffsets = getLongs(ifd, Tiff.Tag.STRIP_OFFSETS, "StripOffsets");
+            this.blockCounts = getLongs(ifd, Tiff.Tag.STRIP_BYTE_COUNTS, "StripByteCounts");
+        }
+
+        if (this.blockWidth <= 0 || this.blockHeight <= 0)
+        {
+            String message = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue", this.blockWidth, "TileWidth",
+                Tiff.Tag.TILE_WIDTH);
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        this.blocksAcross = (this.width + this.blockWidth - 1) / this.blockWidth;
+        this.blocksDown = (this.height + this.blockHeight - 1) / this.blockHeight;
+
+        int numBlocks = this.blocksAcross * this.blocksDown * (this.planar ? this.samplesPerPixel : 1);
+        if (this.blockOffsets.length < numBlocks || this.blockCounts.length < numBlocks)
+        {
+            String message = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue", this.blockOffsets.length,
+                this.tiled ? "TileOffsets" : "StripOffsets",
+                this.tiled ? Tiff.Tag.TILE_OFFSETS : Tiff.Tag.STRIP_OFFSETS);
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        TiffIFDEntry entry = getByTag(ifd, Tiff.Tag.COMPRESSION);
+        this.compression = (entry != null) ? (int) entry.asLong() : Tiff.Compression.NONE;
+        if (this.compression != Tiff.Compression.NONE && this.compression != Tiff.Compression.LZW
+            && this.compression != Tiff.Compression.PACKBITS && this.compression != COMPRESSION_DEFLATE
+            && this.compression != COMPRESSION_DEFLATE_OLD)
+        {
+            String message = Logging.getMessage("GeotiffReader.CompressionFormatNotSupported");
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        entry = getByTag(ifd, Tiff.Tag.TIFF_PREDICTOR);
+        this.predictor = (entry != null) ? (int) entry.asLong() : 1;
+        if (this.predictor != 1 && this.predictor != PREDICTOR_HORIZONTAL)
+        {
+            String message = Logging.getMessage("GeotiffReader.CompressionFormatNotSupported");
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+    }
+
+    public boolean isTiled()
+    {
+        return this.tiled;
+    }
+
+    public int getBlockWidth()
+    {
+        return this.blockWidth;
+    }
+
+    public int getBlockHeight()
+    {
+        return this.blockHeight;
+    }
+
+    public ByteOrder getByteOrder()
+    {
+        return this.byteOrder;
+    }
+
+    public int getBytesPerPixel()
+    {
+        return this.samplesPerPixel * this.bytesPerSample;
+    }
+
+    /**
+     * Reads the samples of a region of the image. The samples are returned pixel interleaved, row by row from the top
+     * of the region, in the byte order of the file, regardless of how the image is organized in the file.
+     *
+     * @param x      the column of the region's upper left pixel.
+     * @param y      the row of the region's upper left pixel.
+     * @param width  the width of the region, in pixels.
+     * @param height the height of the region, in pixels.
+     *
+     * @return the region's samples.
+     *
+     * @throws IllegalArgumentException if the region is empty or is not within the image.
+     * @throws IOException              if a block cannot be read or decoded.
+     */
+    public byte[] readRegion(int x, int y, int width, int height) throws IOException
+    {
+        if (width <= 0 || height <= 0 || x < 0 || y < 0 || x + width > this.width || y + height > this.height)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange",
+                x + "," + y + " " + width + "x" + height);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int bytesPerPixel = this.getBytesPerPixel();
+        byte[] region = new byte[width * height * bytesPerPixel];
+
+        int planes = this.planar ? this.samplesPerPixel : 1;
+        int blocksPerPlane = this.blocksAcross * this.blocksDown;
+        int firstBlockRow = y / this.blockHeight;
+        int lastBlockRow = (y + height - 1) / this.blockHeight;
+        int firstBlockCol = x / this.blockWidth;
+        int lastBlockCol = (x + width - 1) / this.blockWidth;
+
+        for (int blockRow = firstBlockRow; blockRow <= lastBlockRow; blockRow++)
+        {
+            int blockY = blockRow * this.blockHeight;
+            int rowMin = Math.max(y, blockY);
+            int rowMax = Math.min(y + height, blockY + this.blockHeight);
+
+            for (int blockCol = firstBlockCol; blockCol <= lastBlockCol; blockCol++)
+            {
+                int blockX = blockCol * this.blockWidth;
+                int colMin = Math.max(x, blockX);
+                int colMax = Math.min(x + width, blockX + this.blockWidth);
+
+                for (int plane = 0; plane < planes; plane++)
+                {
+                    byte[] block = this.readBlock(plane * blocksPerPlane + blockRow * this.blocksAcross + blockCol);
+
+                    for (int row = rowMin; row < rowMax; row++)
+                    {
+                        int dest = ((row - y) * width + (colMin - x)) * bytesPerPixel;
+                        if (!this.planar)
+                        {
+                            int src = ((row - blockY) * this.blockWidth + (colMin - blockX)) * bytesPerPixel;
+                            System.arraycopy(block, src, region, dest, (colMax - colMin) * bytesPerPixel);
+                        }
+                        else
+                        {
+                            int src = ((row - blockY) * this.blockWidth + (colMin - blockX)) * this.bytesPerSample;
+                            dest += plane * this.bytesPerSample;
+                            for (int col = colMin; col < colMax; col++)
+                            {
+                                System.arraycopy(block, src, region, dest, this.bytesPerSample);
+                                src += this.bytesPerSample;
+                                dest += bytesPerPixel;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return region;
+    }
+
+    /**
+     * Reads and decodes one strip or tile. The returned array always holds a full block; rows beyond the end of a
+     * shortened final strip are zero.
+     *
+     * @param index the block's index in the file's offset and byte count arrays.
+     *
+     * @return the block's samples, in the byte order of the file.
+     *
+     * @throws IOException if the block cannot be read or decoded.
+     */
+    protected byte[] readBlock(int index) throws IOException
+    {
+        int samplesPerBlockPixel = this.planar ? 1 : this.samplesPerPixel;
+        byte[] block = new byte[this.blockWidth * this.blockHeight * samplesPerBlockPixel * this.bytesPerSample];
+
+        long count = this.blockCounts[index];
+        if (count <= 0)
+            return block;
+
+        ByteBuffer source = this.mapBlock(this.blockOffsets[index], count);
+
+        if (this.compression == Tiff.Compression.NONE)
+        {
+            source.get(block, 0, (int) Math.min(block.length, source.remaining()));
+        }
+        else
+        {
+            byte[] encoded = new byte[source.remaining()];
+            source.get(encoded);
+
+            if (this.compression == Tiff.Compression.LZW)
+                lzwDecode(encoded, block);
+            else if (this.compression == Tiff.Compression.PACKBITS)
+                packBitsDecode(encoded, block);
+            else
+                inflate(encoded, block);
+        }
+
+        if (this.predictor == PREDICTOR_HORIZONTAL)
+            this.undoHorizontalDifferencing(block, samplesPerBlockPixel);
+
+        return block;
+    }
+
+    /**
+     * Returns a buffer holding the specified bytes of the file. The buffer is a slice of a mapped window of the file
+     * when the bytes are within one window, and is read from the file otherwise.
+     *
+     * @param offset the offset of the first byte in the file.
+     * @param length the number of bytes.
+     *
+     * @return a buffer positioned at the first byte, whose remaining bytes are the requested bytes.
+     *
+     * @throws IOException if the file cannot be mapped or read.
+     */
+    protected ByteBuffer mapBlock(long offset, long length) throws IOException
+    {
+        long windowStart = (offset / MAP_WINDOW_SIZE) * MAP_WINDOW_SIZE;
+        long fileSize = this.channel.size();
+        long windowLength = Math.min(MAP_WINDOW_SIZE + MAP_WINDOW_OVERLAP, fileSize - windowStart);
+        length = Math.min(length, fileSize - offset);
+
+        if (offset + length <= windowStart + windowLength)
+        {
+            ByteBuffer window;
+            synchronized (this.windows)
+            {
+                window = this.windows.get(windowStart);
+                if (window == null)
+                {
+                    window = this.channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+                    this.windows.put(windowStart, window);
+                }
+                window = window.duplicate();
+            }
+
+            window.position((int) (offset - windowStart));
+            window.limit((int) (offset - windowStart + length));
+            return window.slice();
+        }
+
+        // The block crosses the end of the window's overlap. Read it with a positional read, which leaves the channel
+        // position unchanged.
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining())
+        {
+            if (this.channel.read(buffer, offset + buffer.position()) < 0)
+                break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    protected void undoHorizontalDifferencing(byte[] block, int samplesPerBlockPixel)
+    {
+        int rowSamples = this.blockWidth * samplesPerBlockPixel;
+        boolean bigEndian = this.byteOrder == ByteOrder.BIG_ENDIAN;
+
+        for (int row = 0; row < this.blockHeight; row++)
+        {
+            int rowStart = row * rowSamples;
+            for (int i = samplesPerBlockPixel; i < rowSamples; i++)
+            {
+                int sample = rowStart + i;
+                int previous = sample - samplesPerBlockPixel;
+
+                if (this.bytesPerSample == 1)
+                {
+                    block[sample] += block[previous];
+                }
+                else
+                {
+                    // Add the previous sample to this one, carrying from the least significant byte up.
+                    int carry = 0;
+                    for (int b = 0; b < this.bytesPerSample; b++)
+                    {
+                        int significance = bigEndian ? this.bytesPerSample - 1 - b : b;
+                        int dest = sample * this.bytesPerSample + significance;
+                        int src = previous * this.bytesPerSample + significance;
+                        int sum = (block[dest] & 0xFF) + (block[src] & 0xFF) + carry;
+                        block[dest] = (byte) sum;
+                        carry = sum >> 8;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes TIFF LZW data: codes are read most significant bit first, and the code width grows one code early.
+     *
+     * @param input  the encoded data.
+     * @param output the array to decode into. Decoded bytes beyond its end are discarded.
+     *
+     * @return the number of bytes decoded into <code>output</code>.
+     */
+    protected static int lzwDecode(byte[] input, byte[] output)
+    {
+        int[] prefix = new int[MAX_CODES];
+        byte[] suffix = new byte[MAX_CODES];
+        byte[] first = new byte[MAX_CODES];
+        int[] length = new int[MAX_CODES];
+        for (int i = 0; i < 256; i++)
+        {
+            suffix[i] = (byte) i;
+            first[i] = (byte) i;
+            length[i] = 1;
+        }
+
+        int outPos = 0;
+        int nextCode = FIRST_CODE;
+        int codeWidth = 9;
+        int oldCode = -1;
+
+        long bitBuffer = 0;
+        int bitCount = 0;
+        int inPos = 0;
+
+        while (true)
+        {
+            while (bitCount < codeWidth && inPos < input.length)
+            {
+                bitBuffer = (bitBuffer << 8) | (input[inPos++] & 0xFF);
+                bitCount += 8;
+            }
+            if (bitCount < codeWidth)
+                break;
+
+            int code = (int) (bitBuffer >>> (bitCount - codeWidth)) & ((1 << codeWidth) - 1);
+            bitCount -= codeWidth;
+
+            if (code == EOI_CODE)
+                break;
+
+            if (code == CLEAR_CODE)
+            {
+                nextCode = FIRST_CODE;
+                codeWidth = 9;
+                oldCode = -1;
+                continue;
+            }
+
+            if (oldCode == -1)
+            {
+                if (code > 255)
+                    break;
+                if (outPos < output.length)
+                    output[outPos] = (byte) code;
+                outPos++;
+                oldCode = code;
+                continue;
+            }
+
+            int entry;
+            if (code < nextCode)
+            {
+                entry = code;
+                if (nextCode < MAX_CODES)
+                {
+                    prefix[nextCode] = oldCode;
+                    suffix[nextCode] = first[code];
+                    first[nextCode] = first[oldCode];
+                    length[nextCode] = length[oldCode] + 1;
+                    nextCode++;
+                }
+            }
+            else if (code == nextCode && nextCode < MAX_CODES)
+            {
+                prefix[nextCode] = oldCode;
+                suffix[nextCode] = first[oldCode];
+                first[nextCode] = first[oldCode];
+                length[nextCode] = length[oldCode] + 1;
+                entry = nextCode++;
+            }
+            else
+            {
+                // The data is corrupt.
+                break;
+            }
+
+            // Write the entry's string, last byte first.
+            int entryLength = length[entry];
+            for (int pos = outPos + entryLength - 1, c = entry; pos >= outPos; pos--, c = prefix[c])
+            {
+                if (pos < output.length)
+                    output[pos] = suffix[c];
+            }
+            outPos += entryLength;
+            oldCode = code;
+
+            if (nextCode == 511)
+                codeWidth = 10;
+            else if (nextCode == 1023)
+                codeWidth = 11;
+            else if (nextCode == 2047)
+                codeWidth = 12;
+        }
+
+        return Math.min(outPos, output.length);
+    }
+
+    protected static int packBitsDecode(byte[] input, byte[] output)
+    {
+        int inPos = 0;
+        int outPos = 0;
+
+        while (inPos < input.length && outPos < output.length)
+        {
+            int n = input[inPos++];
+            if (n >= 0)
+            {
+                int count = Math.min(n + 1, Math.min(input.length - inPos, output.length - outPos));
+                System.arraycopy(input, inPos, output, outPos, count);
+                inPos += n + 1;
+                outPos += count;
+            }
+            else if (n != -128 && inPos < input.length)
+            {
+                byte value = input[inPos++];
+                int count = Math.min(1 - n, output.length - outPos);
+                Arrays.fill(output, outPos, outPos + count, value);
+                outPos += count;
+            }
+        }
+
+        return outPos;
+    }
+
+    protected static int inflate(byte[] input, byte[] output) throws IOException
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(input);
+            int outPos = 0;
+            while (outPos < output.length && !inflater.finished())
+            {
+                int n = inflater.inflate(output, outPos, output.length - outPos);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                outPos += n;
+            }
+            return outPos;
+        }
+        catch (DataFormatException e)
+        {
+            String message = Logging.getMessage("GeotiffReader.CorruptBlock", e.getMessage());
+            Logging.logger().severe(message);
+            throw new IOException(message, e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    protected static TiffIFDEntry getByTag(TiffIFDEntry[] ifd, int tag)
+    {
+        for (TiffIFDEntry entry : ifd)
+        {
+            if (entry != null && entry.tag == tag)
+                return entry;
+        }
+        return null;
+    }
+
+    protected static long[] getLongs(TiffIFDEntry[] ifd, int tag, String name) throws IOException
+    {
+        TiffIFDEntry entry = getByTag(ifd, tag);
+        long[] values = (entry != null) ? entry.getAsLongs() : null;
+        if (values == null || values.length == 0)
+        {
+            String message = Logging.getMessage("GeotiffReader.MissingRequiredTag", name);
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+        return values;
+    }
+}
@@ -26,14 +26,30 @@ class TIFFIFDFactory
     }
 
     public static TiffIFDEntry create(FileChannel fc, ByteOrder tiffFileOrder)
+    {
+        return create( fc, tiffFileOrder, false );
+    }
+
+    /**
+     * Reads an IFD entry at the channel's position, and leaves the channel positioned at the next entry. Entries of
+     * BigTIFF files are 20 bytes long, with an 8-byte count and an 8-byte Value Offset; entries of other TIFF files are
+     * 12 bytes long, with a 4-byte count and Value Offset.
+     *
+     * @param fc            the channel to read.
+     * @param tiffFileOrder the byte order of the file.
+     * @param bigTIFF       true if the file is a BigTIFF file.
+     *
+     * @return the entry, or null if the entry cannot be read.
+     */
+    public static TiffIFDEntry create(FileChannel fc, ByteOrder tiffFileOrder, boolean bigTIFF)
     {
         if( null == fc )
             return null;
 
         long savedPosition = 0;
 
-
-        ByteBuffer header = ByteBuffer.wrap(new byte[12]).order( tiffFileOrder );
+        int valueSize = bigTIFF ? 8 : 4;
+        ByteBuffer header = ByteBuffer.wrap(new byte[bigTIFF ? 20 : 12]).order( tiffFileOrder );
 
         try
         {
@@ -42,13 +58,15 @@ class TIFFIFDFactory
 
             int tag = getUnsignedShort( header );
             int type = getUnsignedShort( header );
-            long count = getUnsignedInt( header );
+            long count = bigTIFF ? header.getLong() : getUnsignedInt( header );
+            int valuePosition = header.position();
 
 
             // To save time and space the Value Offset contains the Value instead of pointing to
             // the Value if and only if the Value fits into 4 bytes. If the Value is shorter than 4 bytes,
             // it is left-justified within the 4-byte Value Offset, i.e., stored in the lowernumbered bytes.
             // Whether the Value fits within 4 bytes is determined by the Type and Count of the field.
+            // BigTIFF Value Offsets are 8 bytes long, and hold Values that fit into 8 bytes.
 
             if ( type == Tiff.Type.SHORT && count == 1 )
             {
@@ -61,15 +79,31 @@ class TIFFIFDFactory
             }
             else if( count == 1 && (type == Tiff.Type.LONG || type == Tiff.Type.FLOAT))
             {
-                long value = header.getInt();
+                long value = getUnsignedInt( header );
+                return new TiffIFDEntry(tag, type, value );
+            }
+            else if( count == 1 && bigTIFF && (type == Tiff.Type.LONG8 || type == Tiff.Type.IFD8) )
+            {
+                long value = header.getLong();
                 return new TiffIFDEntry(tag, type, value );
             }
             else
             {
-                long offset = getUnsignedInt( header );
-                int size = MASK_USHORT & (int)calcSize( type, count );
+                long offset = bigTIFF ? header.getLong() : getUnsignedInt( header );
+                int size = (int)calcSize( type, count );
 
-                if( size > 0L )
+                if( size > 0 && size <= valueSize )
+                {
+                    // the values fit in the Value Offset, and are left-justified within it
+                    ByteBuffer data = ByteBuffer.allocateDirect( size ).order( tiffFileOrder );
+                    header.position( valuePosition );
+                    header.limit( valuePosition + size );
+                    data.put( header );
+                    data.flip();
+
+                    return new TiffIFDEntry(tag, type, count, offset, data );
+                }
+                else if( size > 0 )
                 {
                     ByteBuffer data = ByteBuffer.allocateDirect( size ).order( tiffFileOrder );
                     savedPosition = fc.position();
@@ -110,7 +144,7 @@ class TIFFIFDFactory
     }
 
 
-    private static long calcSize(int type, long count)
+    static long calcSize(int type, long count)
     {
         switch( type )
         {
@@ -137,6 +171,11 @@ class TIFFIFDFactory
             case Tiff.Type.SRATIONAL:
                 return count * 8L;
 
+            case Tiff.Type.LONG8:
+            case Tiff.Type.SLONG8:
+            case Tiff.Type.IFD8:
+                return count * 8L;
+
             case Tiff.Type.UNDEFINED:
             default:
                 return 0;
@@ -21,9 +21,6 @@ import java.nio.channels.FileChannel;
  */
 class TIFFReader
 {
-    private static final int CLEAR_CODE = 256;
-    private static final int EOI_CODE = 257;
-
     private static final int DOUBLE_SIZEOF = Double.SIZE / Byte.SIZE;
     private static final int FLOAT_SIZEOF = Float.SIZE / Byte.SIZE;
     private static final int INTEGER_SIZEOF = Integer.SIZE / Byte.SIZE;
@@ -55,150 +52,6 @@ class TIFFReader
     }
 
 
-   /*
-    *
-    *
-    */
-    public byte[] readLZWCompressed(int width, int height, long offset, int samplesPerPixel,
-        boolean differencing, long[] stripOffsets, long[] stripCounts)
-        throws IOException
-    {
-        this.theChannel.position(offset);
-        byte[] pixels = new byte[width * height * samplesPerPixel];
-        int base = 0;
-        for (int i = 0; i < stripOffsets.length; i++)
-        {
-            if (i > 0)
-            {
-                long skip = stripOffsets[i] - stripOffsets[i - 1] - stripCounts[i - 1];
-                if (skip > 0)
-                {
-                    //in.skip(skip);
-                    this.theChannel.position(this.theChannel.position() + skip);
-                }
-            }
-            byte[] byteArray = new byte[(int) stripCounts[i]];
-            ByteBuffer bBuffer = ByteBuffer.wrap(byteArray);
-            int read = 0, left = byteArray.length;
-            while (left > 0)
-            {
-                long r = this.theChannel.read(bBuffer);
-                if (r == -1)
-                {
-                    break;
-                }
-                read += r;
-                left -= r;
-            }
-            byteArray = lzwUncompress(byteArray, (width * samplesPerPixel));
-            if (differencing)
-            {
-                for (int b = 0; b < byteArray.length; b++)
-                {
-                    if (b / samplesPerPixel % width == 0)
-                        continue;
-                    byteArray[b] += byteArray[b - samplesPerPixel];
-                }
-            }
-            int k = 0;
-            int bytesToRead = byteArray.length;
-            bytesToRead = bytesToRead - (bytesToRead % width);
-            int pmax = base + bytesToRead;
-            if (pmax > width * height * samplesPerPixel)
-                pmax = width * height * samplesPerPixel;
-
-            for (int j = base; j < pmax; j++)
-            {
-                pixels[j] = byteArray[k++];
-            }
-
-            base += bytesToRead;
-        }
-
-        return pixels;
-    }
-
-
-
-    public byte[] lzwUncompress(byte[] input, int rowNumPixels)
-    {
-        if (input == null || input.length == 0)
-            return input;
-        byte[][] symbolTable = new byte[4096][1];
-        int bitsToRead = 9; //default
-        int nextSymbol = 258;
-        int code;
-        int oldCode = -1;
-
-        ByteBuffer out = java.nio.ByteBuffer.allocate(rowNumPixels);
-        CodeReader bb = new CodeReader(input);
-
-        while (true)
-        {
-            code = bb.getCode(bitsToRead);
-
-            if (code == EOI_CODE || code == -1)
-                break;
-            if (code == CLEAR_CODE)
-            {
-                // initialize symbol table
-                for (int i = 0; i < 256; i++)
-                {
-                    symbolTable[i][0] = (byte) i;
-                }
-                nextSymbol = 258;
-                bitsToRead = 9;
-                code = bb.getCode(bitsToRead);
-
-                if (code == EOI_CODE || code == -1)
-                    break;
-
-                out.put(symbolTable[code]);
-                oldCode = code;
-            }
-            else
-            {
-                if (code < nextSymbol)
-                {
-                    out.put(symbolTable[code]);
-                    ByteBuffer symbol = java.nio.ByteBuffer.allocate((symbolTable[oldCode].length + 1));
-                    symbol.put(symbolTable[oldCode]);
-                    symbol.put(symbolTable[code][0]);
-                    symbolTable[nextSymbol] = symbol.array();
-                    oldCode = code;
-                    nextSymbol++;
-                }
-                else
-                {
-                    int size = symbolTable[oldCode].length + 1;
-                    ByteBuffer symbol = java.nio.ByteBuffer.allocate(size);
-                    symbol.put(symbolTable[oldCode]);
-                    symbol.put(symbolTable[oldCode][0]);
-                    byte[] outString = symbol.array();
-
-                    out.put(outString);
-
-                    symbolTable[nextSymbol] = outString;
-                    oldCode = code;
-                    nextSymbol++;
-                }
-                if (nextSymbol == 511)
-                {
-                    bitsToRead = 10;
-                }
-                if (nextSymbol == 1023)
-                {
-                    bitsToRead = 11;
-                }
-                if (nextSymbol == 2047)
-                {
-                    bitsToRead = 12;
-                }
-            }
-        }
-        return out.array();
-    }
-
     /*
      * Reads BYTE image data organized as a singular image plane (and pixel interleaved, in the case of color images).
      *
@@ -445,6 +298,18 @@ class TIFFReader
     {
         byte[] bytes = new byte[(int) entry.count];
         ByteBuffer buff = ByteBuffer.wrap(bytes);
+        ByteBuffer data = entry.getData();
+        if (data != null && data.capacity() >= bytes.length)
+        {
+            // The bytes were read with the entry, either from the entry itself when they fit in its Value Offset, or
+            // from the offset it points to.
+            data = data.duplicate();
+            data.rewind();
+            data.limit(bytes.length);
+            buff.put(data);
+            return bytes;
+        }
+
         this.theChannel.position(entry.asOffset());
         this.theChannel.read(buff);
         return bytes;
@@ -506,73 +371,4 @@ class TIFFReader
 //
 //        return offsets;
 //    }
-
-        //Inner class for reading individual codes during decompression
-    private class CodeReader
-    {
-        private int currentByte;
-        private int currentBit;
-        private byte[] byteBuffer;
-        private int bufferLength;
-        private int[] backMask = new int[] {0x0000, 0x0001, 0x0003, 0x0007,
-            0x000F, 0x001F, 0x003F, 0x007F};
-        private int[] frontMask = new int[] {0x0000, 0x0080, 0x00C0, 0x00E0,
-            0x00F0, 0x00F8, 0x00FC, 0x00FE};
-        private boolean atEof;
-
-        public CodeReader(byte[] byteBuffer)
-        {
-            //todo validate byteBuffer
-            this.byteBuffer = byteBuffer;
-            currentByte = 0;
-            currentBit = 0;
-            bufferLength = byteBuffer.length;
-        }
-
-        public int getCode(int numBitsToRead)
-        {
-            if (numBitsToRead < 0)
-                return 0;
-            if (atEof)
-                return -1; //end of file
-            int returnCode = 0;
-            while (numBitsToRead != 0 && !atEof)
-            {
-                if (numBitsToRead >= 8 - currentBit)
-                {
-                    if (currentBit == 0) //get first
-                    {
-                        returnCode = returnCode << 8;
-                        int cb = ((int) byteBuffer[currentByte]);
-                        returnCode += (cb < 0 ? 256 + cb : cb);
-                        numBitsToRead -= 8;
-                        currentByte++;
-                    }
-                    else
-                    {
-                        returnCode = returnCode << (8 - currentBit);
-                        returnCode += ((int) byteBuffer[currentByte]) & backMask[8 - currentBit];
-                        numBitsToRead -= (8 - currentBit);
-                        currentBit = 0;
-                        currentByte++;
-                    }
-                }
-                else
-                {
-                    returnCode = returnCode << numBitsToRead;
-                    int cb = ((int) byteBuffer[currentByte]);
-                    cb = (cb < 0 ? 256 + cb : cb);
-                    returnCode += ((cb) & (0x00FF - frontMask[currentBit])) >> (8 - (currentBit + numBitsToRead));
-                    currentBit += numBitsToRead;
-                    numBitsToRead = 0;
-                }
-                if (currentByte == bufferLength)  //at eof
-                {
-                    atEof = true;
-                    return returnCode;
-                }
-            }
-            return returnCode;
-        }
-    }
 }
@@ -27,6 +27,10 @@ public interface Tiff
         public static final int SRATIONAL = 10;
         public static final int FLOAT = 11;
         public static final int DOUBLE = 12;
+        // BigTIFF types...
+        public static final int LONG8 = 16;
+        public static final int SLONG8 = 17;
+        public static final int IFD8 = 18;
     }
 
     public interface Tag
@@ -68,6 +72,7 @@ public interface Tiff
         public static final int TILE_COUNTS = 325;
 
         // Tiff extensions...
+        public static final int EXTRA_SAMPLES = 338;
         public static final int SAMPLE_FORMAT = 339;  // SHORT array of samplesPerPixel size
     }
 
@@ -191,6 +196,7 @@ public interface Tiff
         public static final int NONE = 1;
         public static final int LZW = 5;
         public static final int JPEG = 6;
+        public static final int DEFLATE = 8;
         public static final int PACKBITS = 32773;
     }
 
@@ -233,4 +239,11 @@ public interface Tiff
         public static final int IEEEFLOAT = 3;
         public static final int UNDEFINED = 4;
     }
+
+    public interface ExtraSamples
+    {
+        public static final int UNSPECIFIED = 0;
+        public static final int ASSOCIATED_ALPHA = 1;
+        public static final int UNASSOCIATED_ALPHA = 2;
+    }
 }
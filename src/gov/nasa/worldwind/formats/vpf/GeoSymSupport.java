@@ -90,7 +90,8 @@ public class GeoSymSupport
 
         this.filePath = filePath;
         this.imageSuffix = WWIO.makeSuffixForMimeType(symbolMimeType);
-        this.featureMap = new HashMap<FeatureKey, List<? extends VPFSymbolKey>>();
+        // Symbol keys are added lazily by the threads that load coverage tiles concurrently.
+        this.featureMap = Collections.synchronizedMap(new HashMap<FeatureKey, List<? extends VPFSymbolKey>>());
 
         this.loadAssignment(filePath);
 
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 public class VPFBasicPrimitiveDataFactory implements VPFPrimitiveDataFactory
 {
     private VPFTile tile;
+    private VPFPrimitiveDataCache cache;
 
     /**
      * Constructs an instance of a VPFBasicPrimitiveDataFactory which will construct primiitve data for the specified
@@ -25,8 +26,23 @@ public class VPFBasicPrimitiveDataFactory implements VPFPrimitiveDataFactory
      * @param tile the tile which defines the geographic region to construct features for.
      */
     public VPFBasicPrimitiveDataFactory(VPFTile tile)
+    {
+        this(tile, null);
+    }
+
+    /**
+     * Constructs an instance of a VPFBasicPrimitiveDataFactory which will construct primitive data for the specified
+     * {@link gov.nasa.worldwind.formats.vpf.VPFTile}, and which reads and writes the primitive data through the
+     * specified cache. Primitive data read from a current cache file is not constructed from the primitive tables.
+     *
+     * @param tile  the tile which defines the geographic region to construct features for.
+     * @param cache the cache of primitive data. May be null, in which case primitive data is always constructed from
+     *              the primitive tables.
+     */
+    public VPFBasicPrimitiveDataFactory(VPFTile tile, VPFPrimitiveDataCache cache)
     {
         this.tile = tile;
+        this.cache = cache;
     }
 
     public VPFTile getTile()
@@ -34,6 +50,11 @@ public class VPFBasicPrimitiveDataFactory implements VPFPrimitiveDataFactory
         return this.tile;
     }
 
+    public VPFPrimitiveDataCache getCache()
+    {
+        return this.cache;
+    }
+
     public VPFPrimitiveData createPrimitiveData(VPFCoverage coverage)
     {
         if (coverage == null)
@@ -48,7 +69,17 @@ public class VPFBasicPrimitiveDataFactory implements VPFPrimitiveDataFactory
         if (!file.exists())
             return null;
 
-        return this.doCreatePrimitives(coverage);
+        if (this.cache == null)
+            return this.doCreatePrimitives(coverage);
+
+        VPFPrimitiveData primitiveData = this.cache.getPrimitiveData(coverage, this.tile);
+        if (primitiveData == null)
+        {
+            primitiveData = this.doCreatePrimitives(coverage);
+            this.cache.putPrimitiveData(coverage, this.tile, primitiveData);
+        }
+
+        return primitiveData;
     }
 
     //**************************************************************//
@@ -46,6 +46,10 @@ public class VPFLayer extends AbstractLayer
     // Threaded requests
     protected Queue<Runnable> requestQ = new PriorityBlockingQueue<Runnable>(4);
     protected Queue<Disposable> disposalQ = new ConcurrentLinkedQueue<Disposable>();
+    // Primitive data and feature classes shared by the tiles of a coverage
+    protected VPFPrimitiveDataCache primitiveDataCache = new VPFPrimitiveDataCache();
+    protected ConcurrentHashMap<String, VPFFeatureClass[]> featureClasses =
+        new ConcurrentHashMap<String, VPFFeatureClass[]>();
 
     // --- Inner classes ----------------------------------------------------------------------
 
@@ -54,6 +58,7 @@ public class VPFLayer extends AbstractLayer
     protected static class VPFLibraryRenderable
     {
         protected boolean enabled = false;
+        protected boolean primitiveDataRequested = false;
         protected VPFLayer layer;
         protected VPFLibrary library;
         protected VPFCoverageRenderable referenceCoverage;
@@ -261,7 +266,8 @@ public class VPFLayer extends AbstractLayer
 
     protected VPFSymbolCollection loadTileSymbols(VPFCoverage coverage, VPFTile tile)
     {
-        VPFPrimitiveDataFactory primitiveDataFactory = new VPFBasicPrimitiveDataFactory(tile);
+        VPFPrimitiveDataFactory primitiveDataFactory = new VPFBasicPrimitiveDataFactory(tile,
+            this.primitiveDataCache);
         VPFPrimitiveData primitiveData = primitiveDataFactory.createPrimitiveData(coverage);
 
         // The PrimitiveDataFactory returns null when there are no primitive data tables for this coverage tile. We
@@ -278,7 +284,7 @@ public class VPFLayer extends AbstractLayer
         ArrayList<VPFSymbol> list = new ArrayList<VPFSymbol>();
 
         // Create coverage renderables for one tile - if tile is null gets all coverage
-        VPFFeatureClass[] array = VPFUtils.readFeatureClasses(coverage, new VPFFeatureTableFilter());
+        VPFFeatureClass[] array = this.getFeatureClasses(coverage);
         for (VPFFeatureClass cls : array)
         {
             Collection<? extends VPFSymbol> symbols = cls.createFeatureSymbols(symbolFactory);
@@ -289,6 +295,78 @@ public class VPFLayer extends AbstractLayer
         return new VPFSymbolCollection(list);
     }
 
+    /**
+     * Returns the feature classes of a coverage. The feature classes are read from the coverage's feature class schema
+     * the first time they are requested, and then shared by the coverage's tiles.
+     *
+     * @param coverage the coverage.
+     *
+     * @return the coverage's feature classes.
+     */
+    protected VPFFeatureClass[] getFeatureClasses(VPFCoverage coverage)
+    {
+        VPFFeatureClass[] array = this.featureClasses.get(coverage.getFilePath());
+        if (array == null)
+        {
+            array = VPFUtils.readFeatureClasses(coverage, new VPFFeatureTableFilter());
+            this.featureClasses.putIfAbsent(coverage.getFilePath(), array);
+        }
+
+        return array;
+    }
+
+    /**
+     * Starts creating the cached primitive data of each tile of a library's coverages, the first time the library is
+     * enabled. The tiles are created in the background by one thread per available processor, less one. Tiles later
+     * requested for display then read their primitive data from the cache rather than from the VPF primitive tables.
+     * Does nothing if this layer has no primitive data cache.
+     *
+     * @param lr the library.
+     */
+    protected void requestLibraryPrimitiveData(final VPFLibraryRenderable lr)
+    {
+        final VPFPrimitiveDataCache cache = this.primitiveDataCache;
+        if (cache == null || lr.primitiveDataRequested)
+            return;
+
+        lr.primitiveDataRequested = true;
+
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+                ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory()
+                {
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+
+                try
+                {
+                    cache.cacheLibrary(lr.library, executor);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    executor.shutdown();
+                }
+            }
+        });
+        thread.setName("World Wind VPF Primitive Data Loader");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
     protected static class RequestTask implements Runnable, Comparable<RequestTask>
     {
         protected VPFCoverageRenderable coverageRenderable;
@@ -466,11 +544,37 @@ public class VPFLayer extends AbstractLayer
     {
         VPFLibraryRenderable lr = this.getLibraryRenderable(library);
         if (lr != null)
+        {
             lr.enabled = enabled;
+            if (enabled)
+                this.requestLibraryPrimitiveData(lr);
+        }
 
         this.firePropertyChange(AVKey.LAYER, null, this);
     }
 
+    /**
+     * Returns the cache through which this layer reads and writes the primitive data of coverage tiles.
+     *
+     * @return this layer's primitive data cache, or null if primitive data is not cached.
+     */
+    public VPFPrimitiveDataCache getPrimitiveDataCache()
+    {
+        return this.primitiveDataCache;
+    }
+
+    /**
+     * Specifies the cache through which this layer reads and writes the primitive data of coverage tiles. By default
+     * this is a cache in the WorldWind data file store.
+     *
+     * @param cache the primitive data cache. May be null, in which case primitive data is always created from the VPF
+     *              primitive tables.
+     */
+    public void setPrimitiveDataCache(VPFPrimitiveDataCache cache)
+    {
+        this.primitiveDataCache = cache;
+    }
+
     public VPFLibraryRenderable getLibraryRenderable(VPFLibrary library)
     {
         for (VPFLibraryRenderable lr : this.libraries)
@@ -0,0 +1,718 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.vpf;
+
+import gov.nasa.worldwind.WorldWind;
+import gov.nasa.worldwind.cache.FileStore;
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Caches the primitive data of VPF coverage tiles in a compact binary form, so that later sessions create a tile's
+ * {@link VPFPrimitiveData} without reading its primitive tables or traversing its winged-edge topology. Each cache file
+ * holds the primitive data of one coverage tile, and records the length and last modified time of each of the tile's
+ * primitive tables. A cache file is used only while these match the tables on disk, so the primitive data of a tile
+ * whose tables change is created again.
+ * <p/>
+ * Cache files are kept in a {@link FileStore}, by default the WorldWind data file store. The path of a tile's cache
+ * file is derived from the path of the tile's primitive tables.
+ *
+ * @version $Id$
+ */
+public class VPFPrimitiveDataCache
+{
+    /** The file store path under which cache files are kept. */
+    public static final String CACHE_PATH = "VPF";
+    /** The suffix of cache files. */
+    public static final String CACHE_FILE_SUFFIX = ".wvp";
+
+    protected static final String FILE_ID = "VPF_PRIMITIVES";
+    protected static final int FILE_ID_LENGTH = 16;
+    protected static final int VERSION = 1;
+
+    /** The primitive tables whose length and last modified time determine whether a cache file is current. */
+    protected static final String[] PRIMITIVE_TABLES = {
+        VPFConstants.NODE_PRIMITIVE_TABLE, VPFConstants.ENTITY_NODE_PRIMITIVE_TABLE,
+        VPFConstants.CONNECTED_NODE_PRIMITIVE_TABLE, VPFConstants.EDGE_PRIMITIVE_TABLE,
+        VPFConstants.EDGE_BOUNDING_RECTANGLE_TABLE, VPFConstants.FACE_PRIMITIVE_TABLE,
+        VPFConstants.FACE_BOUNDING_RECTANGLE_TABLE, VPFConstants.RING_TABLE, VPFConstants.TEXT_PRIMITIVE_TABLE};
+    /** The names under which {@link VPFBasicPrimitiveDataFactory} stores primitive data. */
+    protected static final String[] PRIMITIVE_NAMES = {
+        VPFConstants.NODE_PRIMITIVE_TABLE, VPFConstants.ENTITY_NODE_PRIMITIVE_TABLE,
+        VPFConstants.CONNECTED_NODE_PRIMITIVE_TABLE, VPFConstants.EDGE_PRIMITIVE_TABLE,
+        VPFConstants.FACE_PRIMITIVE_TABLE, VPFConstants.TEXT_PRIMITIVE_TABLE};
+
+    protected static final byte BASIC_INFO = 1;
+    protected static final byte EDGE_INFO = 2;
+    protected static final byte FACE_INFO = 3;
+
+    protected static final byte SHORT_COORDS = 1;
+    protected static final byte INT_COORDS = 2;
+    protected static final byte FLOAT_COORDS = 3;
+    protected static final byte DOUBLE_COORDS = 4;
+
+    protected final FileStore fileStore;
+
+    /** Constructs a cache that keeps its files in the WorldWind data file store. */
+    public VPFPrimitiveDataCache()
+    {
+        this(WorldWind.getDataFileStore());
+    }
+
+    /**
+     * Constructs a cache that keeps its files in a specified file store.
+     *
+     * @param fileStore the file store in which to keep cache files.
+     *
+     * @throws IllegalArgumentException if the file store is null.
+     */
+    public VPFPrimitiveDataCache(FileStore fileStore)
+    {
+        if (fileStore == null)
+        {
+            String message = Logging.getMessage("nullValue.FileStoreIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.fileStore = fileStore;
+    }
+
+    public FileStore getFileStore()
+    {
+        return this.fileStore;
+    }
+
+    /**
+     * Returns the cached primitive data of a coverage tile.
+     *
+     * @param coverage the coverage.
+     * @param tile     the tile, or null if the coverage is not tiled.
+     *
+     * @return the tile's primitive data, or null if the tile has no cache file or if its cache file is not current.
+     *
+     * @throws IllegalArgumentException if the coverage is null.
+     */
+    public VPFPrimitiveData getPrimitiveData(VPFCoverage coverage, VPFTile tile)
+    {
+        if (coverage == null)
+        {
+            String message = Logging.getMessage("nullValue.CoverageIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        File file = this.findCacheFile(coverage, tile);
+        if (file == null)
+            return null;
+
+        try
+        {
+            ByteBuffer buffer = WWIO.readFileToBuffer(file);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (!readHeader(buffer, getTableStamps(coverage, tile)))
+                return null;
+
+            return readPrimitiveData(buffer);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("VPF.ExceptionAttemptingToReadPrimitiveDataCache", file);
+            Logging.logger().log(Level.WARNING, message, e);
+            return null;
+        }
+    }
+
+    /**
+     * Indicates whether a coverage tile has a current cache file. Only the file's header is read.
+     *
+     * @param coverage the coverage.
+     * @param tile     the tile, or null if the coverage is not tiled.
+     *
+     * @return true if the tile has a current cache file, otherwise false.
+     *
+     * @throws IllegalArgumentException if the coverage is null.
+     */
+    public boolean isCurrent(VPFCoverage coverage, VPFTile tile)
+    {
+        if (coverage == null)
+        {
+            String message = Logging.getMessage("nullValue.CoverageIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        File file = this.findCacheFile(coverage, tile);
+        if (file == null)
+            return false;
+
+        long[] stamps = getTableStamps(coverage, tile);
+        byte[] header = new byte[(int) Math.min(file.length(), FILE_ID_LENGTH + 8 + 8 * stamps.length)];
+
+        try
+        {
+            DataInputStream stream = new DataInputStream(new FileInputStream(file));
+            try
+            {
+                stream.readFully(header);
+            }
+            finally
+            {
+                WWIO.closeStream(stream, file.getPath());
+            }
+
+            return readHeader(ByteBuffer.wrap(header), stamps);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("VPF.ExceptionAttemptingToReadPrimitiveDataCache", file);
+            Logging.logger().log(Level.WARNING, message, e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the primitive data of a coverage tile to the tile's cache file. The stamps of the tile's primitive tables
+     * are read when this method is called. Failures to write the file are logged and otherwise ignored.
+     *
+     * @param coverage      the coverage.
+     * @param tile          the tile, or null if the coverage is not tiled.
+     * @param primitiveData the tile's primitive data.
+     *
+     * @throws IllegalArgumentException if the coverage or the primitive data is null.
+     */
+    public void putPrimitiveData(VPFCoverage coverage, VPFTile tile, VPFPrimitiveData primitiveData)
+    {
+        if (coverage == null)
+        {
+            String message = Logging.getMessage("nullValue.CoverageIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (primitiveData == null)
+        {
+            String message = Logging.getMessage("VPF.NoPrimitiveData");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        File file = this.fileStore.newFile(getCachePath(coverage, tile));
+        if (file == null)
+            return;
+
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeader(out, getTableStamps(coverage, tile));
+            writePrimitiveData(out, primitiveData);
+            out.flush();
+
+            saveBuffer(ByteBuffer.wrap(bytes.toByteArray()), file);
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("VPF.ExceptionAttemptingToWritePrimitiveDataCache", file);
+            Logging.logger().log(Level.FINE, message, e);
+        }
+    }
+
+    /**
+     * Creates and caches the primitive data of each tile of each coverage of a library, unless the tile already has a
+     * current cache file. Untiled coverages are treated as a single tile. The coverage tiles are processed concurrently
+     * by a specified executor, and this method returns once all of them are done. Failures to create the primitive
+     * data of a tile are logged, and do not stop the remaining tiles.
+     *
+     * @param library  the library.
+     * @param executor the executor that processes the coverage tiles.
+     *
+     * @return the number of coverage tiles whose primitive data was created and cached.
+     *
+     * @throws IllegalArgumentException if the library or the executor is null.
+     * @throws InterruptedException     if the calling thread is interrupted while waiting for the tiles.
+     */
+    public int cacheLibrary(VPFLibrary library, ExecutorService executor) throws InterruptedException
+    {
+        if (library == null)
+        {
+            String message = Logging.getMessage("nullValue.LibraryIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (executor == null)
+        {
+            String message = Logging.getMessage("nullValue.ExecutorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        VPFTile[] tiles = library.getTiles();
+
+        for (final VPFCoverage coverage : library.getCoverages())
+        {
+            VPFTile[] coverageTiles = (coverage.isTiled() && tiles != null) ? tiles : new VPFTile[] {null};
+            for (final VPFTile tile : coverageTiles)
+            {
+                futures.add(executor.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        if (isCurrent(coverage, tile))
+                            return;
+
+                        VPFPrimitiveData primitiveData = new VPFBasicPrimitiveDataFactory(tile).createPrimitiveData(
+                            coverage);
+                        if (primitiveData != null)
+                        {
+                            putPrimitiveData(coverage, tile, primitiveData);
+                            count.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+        }
+
+        for (Future<?> future : futures)
+        {
+            try
+            {
+                future.get();
+            }
+            catch (ExecutionException e)
+            {
+                String message = Logging.getMessage("VPF.ExceptionAttemptingToCreatePrimitiveData",
+                    library.getFilePath());
+                Logging.logger().log(Level.WARNING, message, e.getCause());
+            }
+        }
+
+        return count.get();
+    }
+
+    /**
+     * Returns the file store path of a coverage tile's cache file.
+     *
+     * @param coverage the coverage.
+     * @param tile     the tile, or null if the coverage is not tiled.
+     *
+     * @return the path of the tile's cache file.
+     */
+    protected static String getCachePath(VPFCoverage coverage, VPFTile tile)
+    {
+        String path = WWIO.stripTrailingSeparator(VPFBasicPrimitiveDataFactory.getPrimitiveTablePath(coverage, tile,
+            ""));
+        return CACHE_PATH + "/" + WWIO.replaceIllegalFileNameCharacters(path) + CACHE_FILE_SUFFIX;
+    }
+
+    protected File findCacheFile(VPFCoverage coverage, VPFTile tile)
+    {
+        URL url = this.fileStore.findFile(getCachePath(coverage, tile), false);
+        return (url != null) ? WWIO.convertURLToFile(url) : null;
+    }
+
+    /**
+     * Returns the length and last modified time of each of a coverage tile's primitive tables. Both are zero for a
+     * table that does not exist.
+     *
+     * @param coverage the coverage.
+     * @param tile     the tile, or null if the coverage is not tiled.
+     *
+     * @return the tables' lengths and last modified times, in pairs.
+     */
+    protected static long[] getTableStamps(VPFCoverage coverage, VPFTile tile)
+    {
+        long[] stamps = new long[2 * PRIMITIVE_TABLES.length];
+        for (int i = 0; i < PRIMITIVE_TABLES.length; i++)
+        {
+            File file = new File(VPFBasicPrimitiveDataFactory.getPrimitiveTablePath(coverage, tile,
+                PRIMITIVE_TABLES[i]));
+            stamps[2 * i] = file.length();
+            stamps[2 * i + 1] = file.lastModified();
+        }
+
+        return stamps;
+    }
+
+    protected static void saveBuffer(ByteBuffer buffer, File file) throws IOException
+    {
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try
+        {
+            if (!WWIO.saveBuffer(buffer, tempFile))
+                throw new IOException(Logging.getMessage("generic.ExceptionAttemptingToWriteTo", file));
+
+            // Renaming over an existing file fails on some platforms.
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file)))
+                throw new IOException(Logging.getMessage("generic.ExceptionAttemptingToWriteTo", file));
+        }
+        finally
+        {
+            if (tempFile.exists())
+                tempFile.delete();
+        }
+    }
+
+    //**************************************************************//
+    //********************  Writing  *******************************//
+    //**************************************************************//
+
+    protected static void writeHeader(DataOutputStream out, long[] stamps) throws IOException
+    {
+        byte[] id = Arrays.copyOf(FILE_ID.getBytes("US-ASCII"), FILE_ID_LENGTH);
+        out.write(id);
+        out.writeInt(VERSION);
+        out.writeInt(stamps.length / 2);
+        for (long stamp : stamps)
+        {
+            out.writeLong(stamp);
+        }
+    }
+
+    protected static void writePrimitiveData(DataOutputStream out, VPFPrimitiveData primitiveData) throws IOException
+    {
+        for (String name : PRIMITIVE_NAMES)
+        {
+            VPFPrimitiveData.PrimitiveInfo[] info = primitiveData.getPrimitiveInfo(name);
+            out.writeBoolean(info != null);
+            if (info != null)
+                writePrimitiveInfo(out, info);
+
+            VecBufferSequence coords = primitiveData.getPrimitiveCoords(name);
+            out.writeBoolean(coords != null);
+            if (coords != null)
+                writeCoords(out, coords);
+
+            CompoundStringBuilder strings = primitiveData.getPrimitiveStrings(name);
+            out.writeBoolean(strings != null);
+            if (strings != null)
+                writeStrings(out, strings);
+        }
+    }
+
+    protected static void writePrimitiveInfo(DataOutputStream out, VPFPrimitiveData.PrimitiveInfo[] info)
+        throws IOException
+    {
+        Class<?> type = info.getClass().getComponentType();
+        byte kind = VPFPrimitiveData.EdgeInfo.class.isAssignableFrom(type) ? EDGE_INFO
+            : VPFPrimitiveData.FaceInfo.class.isAssignableFrom(type) ? FACE_INFO : BASIC_INFO;
+
+        out.writeByte(kind);
+        out.writeInt(info.length);
+        for (VPFPrimitiveData.PrimitiveInfo pi : info)
+        {
+            out.writeBoolean(pi != null);
+            if (pi == null)
+                continue;
+
+            if (kind == EDGE_INFO)
+            {
+                VPFPrimitiveData.EdgeInfo edge = (VPFPrimitiveData.EdgeInfo) pi;
+                out.writeInt(edge.getEdgeType());
+                out.writeInt(edge.getStartNode());
+                out.writeInt(edge.getEndNode());
+                out.writeInt(edge.getLeftFace());
+                out.writeInt(edge.getRightFace());
+                out.writeInt(edge.getLeftEdge());
+                out.writeInt(edge.getRightEdge());
+                out.writeBoolean(edge.isOnTileBoundary());
+            }
+            else if (kind == FACE_INFO)
+            {
+                VPFPrimitiveData.FaceInfo face = (VPFPrimitiveData.FaceInfo) pi;
+                writeRing(out, face.getOuterRing());
+                out.writeInt(face.getInnerRings().length);
+                for (VPFPrimitiveData.Ring ring : face.getInnerRings())
+                {
+                    writeRing(out, ring);
+                }
+            }
+
+            VPFBoundingBox bounds = pi.getBounds();
+            out.writeDouble(bounds.getXmin());
+            out.writeDouble(bounds.getYmin());
+            out.writeDouble(bounds.getXmax());
+            out.writeDouble(bounds.getYmax());
+        }
+    }
+
+    protected static void writeRing(DataOutputStream out, VPFPrimitiveData.Ring ring) throws IOException
+    {
+        out.writeInt(ring.getNumEdges());
+        for (int i = 0; i < ring.getNumEdges(); i++)
+        {
+            out.writeInt(ring.getEdgeId(i));
+            out.writeByte(ring.getEdgeOrientation(i));
+        }
+    }
+
+    protected static void writeCoords(DataOutputStream out, VecBufferSequence coords) throws IOException
+    {
+        BufferWrapper backingBuffer = coords.getVecBuffer().getBufferWrapper();
+        byte type = backingBuffer instanceof BufferWrapper.ShortBufferWrapper ? SHORT_COORDS
+            : backingBuffer instanceof BufferWrapper.IntBufferWrapper ? INT_COORDS
+            : backingBuffer instanceof BufferWrapper.FloatBufferWrapper ? FLOAT_COORDS : DOUBLE_COORDS;
+
+        int numCoords = 0;
+        out.writeByte(type);
+        out.writeInt(coords.getCoordsPerVec());
+        out.writeInt(coords.size());
+        for (int i = 0; i < coords.size(); i++)
+        {
+            out.writeInt(coords.subBufferSize(i));
+            numCoords += coords.subBufferSize(i) * coords.getCoordsPerVec();
+        }
+
+        out.writeInt(numCoords);
+        for (int i = 0; i < coords.size(); i++)
+        {
+            BufferWrapper buffer = coords.subBuffer(i).getBufferWrapper();
+            int length = coords.subBufferSize(i) * coords.getCoordsPerVec();
+            for (int j = 0; j < length; j++)
+            {
+                if (type == SHORT_COORDS)
+                    out.writeShort(buffer.getShort(j));
+                else if (type == INT_COORDS)
+                    out.writeInt(buffer.getInt(j));
+                else if (type == FLOAT_COORDS)
+                    out.writeFloat(buffer.getFloat(j));
+                else
+                    out.writeDouble(buffer.getDouble(j));
+            }
+        }
+    }
+
+    protected static void writeStrings(DataOutputStream out, CompoundStringBuilder strings) throws IOException
+    {
+        int numChars = 0;
+        out.writeInt(strings.size());
+        for (int i = 0; i < strings.size(); i++)
+        {
+            out.writeInt(strings.substringLength(i));
+            numChars += strings.substringLength(i);
+        }
+
+        out.writeInt(numChars);
+        for (int i = 0; i < strings.size(); i++)
+        {
+            out.writeChars(strings.substring(i));
+        }
+    }
+
+    //**************************************************************//
+    //********************  Reading  *******************************//
+    //**************************************************************//
+
+    /**
+     * Reads a cache file's header, and compares its table stamps to specified stamps.
+     *
+     * @param buffer the cache file's contents, positioned at the start of the file.
+     * @param stamps the current stamps of the tile's primitive tables.
+     *
+     * @return true if the file is current, false if its stamps do not match the specified stamps.
+     *
+     * @throws IOException if the buffer does not contain a cache file.
+     */
+    protected static boolean readHeader(ByteBuffer buffer, long[] stamps) throws IOException
+    {
+        byte[] id = new byte[FILE_ID_LENGTH];
+        if (buffer.remaining() < FILE_ID_LENGTH + 8)
+            throw new IOException(Logging.getMessage("VPF.NotAPrimitiveDataCache"));
+
+        buffer.get(id);
+        if (!new String(id, "US-ASCII").trim().equals(FILE_ID))
+            throw new IOException(Logging.getMessage("VPF.NotAPrimitiveDataCache"));
+
+        if (buffer.getInt() != VERSION || buffer.getInt() != stamps.length / 2)
+            return false;
+
+        for (long stamp : stamps)
+        {
+            if (buffer.getLong() != stamp)
+                return false;
+        }
+
+        return true;
+    }
+
+    protected static VPFPrimitiveData readPrimitiveData(ByteBuffer buffer)
+    {
+        VPFPrimitiveData primitiveData = new VPFPrimitiveData();
+        for (String name : PRIMITIVE_NAMES)
+        {
+            if (buffer.get() != 0)
+                primitiveData.setPrimitiveInfo(name, readPrimitiveInfo(buffer));
+
+            if (buffer.get() != 0)
+                primitiveData.setPrimitiveCoords(name, readCoords(buffer));
+
+            if (buffer.get() != 0)
+                primitiveData.setPrimitiveStrings(name, readStrings(buffer));
+        }
+
+        return primitiveData;
+    }
+
+    protected static VPFPrimitiveData.PrimitiveInfo[] readPrimitiveInfo(ByteBuffer buffer)
+    {
+        byte kind = buffer.get();
+        int numInfo = buffer.getInt();
+
+        // The array type matches the array created by VPFBasicPrimitiveDataFactory.
+        VPFPrimitiveData.PrimitiveInfo[] info = kind == EDGE_INFO ? new VPFPrimitiveData.EdgeInfo[numInfo]
+            : kind == FACE_INFO ? new VPFPrimitiveData.FaceInfo[numInfo]
+            : new VPFPrimitiveData.BasicPrimitiveInfo[numInfo];
+
+        for (int i = 0; i < numInfo; i++)
+        {
+            if (buffer.get() == 0)
+                continue;
+
+            if (kind == EDGE_INFO)
+            {
+                int edgeType = buffer.getInt();
+                int startNode = buffer.getInt();
+                int endNode = buffer.getInt();
+                int leftFace = buffer.getInt();
+                int rightFace = buffer.getInt();
+                int leftEdge = buffer.getInt();
+                int rightEdge = buffer.getInt();
+                boolean isOnTileBoundary = buffer.get() != 0;
+                info[i] = new VPFPrimitiveData.EdgeInfo(edgeType, startNode, endNode, leftFace, rightFace, leftEdge,
+                    rightEdge, isOnTileBoundary, readBounds(buffer));
+            }
+            else if (kind == FACE_INFO)
+            {
+                VPFPrimitiveData.Ring outerRing = readRing(buffer);
+                VPFPrimitiveData.Ring[] innerRings = new VPFPrimitiveData.Ring[buffer.getInt()];
+                for (int j = 0; j < innerRings.length; j++)
+                {
+                    innerRings[j] = readRing(buffer);
+                }
+                info[i] = new VPFPrimitiveData.FaceInfo(outerRing, innerRings, readBounds(buffer));
+            }
+            else
+            {
+                info[i] = new VPFPrimitiveData.BasicPrimitiveInfo(readBounds(buffer));
+            }
+        }
+
+        return info;
+    }
+
+    protected static VPFBoundingBox readBounds(ByteBuffer buffer)
+    {
+        double xmin = buffer.getDouble();
+        double ymin = buffer.getDouble();
+        double xmax = buffer.getDouble();
+        double ymax = buffer.getDouble();
+        return new VPFBoundingBox(xmin, ymin, xmax, ymax);
+    }
+
+    protected static VPFPrimitiveData.Ring readRing(ByteBuffer buffer)
+    {
+        int numEdges = buffer.getInt();
+        int[] edgeId = new int[numEdges];
+        int[] edgeOrientation = new int[numEdges];
+        for (int i = 0; i < numEdges; i++)
+        {
+            edgeId[i] = buffer.getInt();
+            edgeOrientation[i] = buffer.get();
+        }
+
+        return new VPFPrimitiveData.Ring(numEdges, edgeId, edgeOrientation);
+    }
+
+    protected static VecBufferSequence readCoords(ByteBuffer buffer)
+    {
+        byte type = buffer.get();
+        int coordsPerVec = buffer.getInt();
+        int[] lengths = new int[buffer.getInt()];
+        for (int i = 0; i < lengths.length; i++)
+        {
+            lengths[i] = buffer.getInt();
+        }
+
+        int numCoords = buffer.getInt();
+        BufferWrapper source;
+        BufferFactory factory;
+        int elementSize;
+
+        if (type == SHORT_COORDS)
+        {
+            source = new BufferWrapper.ShortBufferWrapper(buffer.asShortBuffer());
+            factory = new BufferFactory.ShortBufferFactory();
+            elementSize = 2;
+        }
+        else if (type == INT_COORDS)
+        {
+            source = new BufferWrapper.IntBufferWrapper(buffer.asIntBuffer());
+            factory = new BufferFactory.IntBufferFactory();
+            elementSize = 4;
+        }
+        else if (type == FLOAT_COORDS)
+        {
+            source = new BufferWrapper.FloatBufferWrapper(buffer.asFloatBuffer());
+            factory = new BufferFactory.FloatBufferFactory();
+            elementSize = 4;
+        }
+        else
+        {
+            source = new BufferWrapper.DoubleBufferWrapper(buffer.asDoubleBuffer());
+            factory = new BufferFactory.DoubleBufferFactory();
+            elementSize = 8;
+        }
+        buffer.position(buffer.position() + numCoords * elementSize);
+
+        // Copy the coordinates to a buffer like the one created by VPFBasicDataBufferFactory, one sub-buffer at a time.
+        VecBuffer sourceVecs = new VecBuffer(coordsPerVec, source);
+        VecBufferSequence coords = new VecBufferSequence(new VecBuffer(coordsPerVec,
+            factory.newBuffer(Math.max(1, numCoords))), Math.max(1, lengths.length));
+        int position = 0;
+        for (int length : lengths)
+        {
+            coords.append(length > 0 ? sourceVecs.getSubBuffer(position, length)
+                : VecBuffer.emptyVecBuffer(coordsPerVec));
+            position += length;
+        }
+
+        return coords;
+    }
+
+    protected static CompoundStringBuilder readStrings(ByteBuffer buffer)
+    {
+        int[] lengths = new int[buffer.getInt()];
+        for (int i = 0; i < lengths.length; i++)
+        {
+            lengths[i] = buffer.getInt();
+        }
+
+        int numChars = buffer.getInt();
+        CharBuffer chars = buffer.asCharBuffer();
+        buffer.position(buffer.position() + 2 * numChars);
+
+        CompoundStringBuilder strings = new CompoundStringBuilder(new StringBuilder(numChars),
+            Math.max(1, lengths.length));
+        for (int length : lengths)
+        {
+            int position = chars.position();
+            strings.append(chars.subSequence(0, length));
+            chars.position(position + length);
+        }
+
+        return strings;
+    }
+}
@@ -335,6 +335,56 @@ public interface ElevationModel extends WWObject, Restorable, Disposable
     double[] getUnmappedElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution[],
         double[] buffer);
 
+    /**
+     * Returns the elevations of a collection of locations specified as parallel arrays of latitudes and longitudes in
+     * degrees. The results are identical to those of {@link #getElevations(gov.nasa.worldwind.geom.Sector,
+     * java.util.List, double, double[])} for the same locations, but implementations may process the locations in bulk
+     * without creating a {@link LatLon} for each location. A location whose latitude or longitude is NaN is treated as
+     * a null location: the output buffer for that location is not modified.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes, in degrees, of the locations to return elevations for.
+     * @param longitudes       the longitudes, in degrees, of the locations to return elevations for. Must contain at
+     *                         least as many elements as the latitudes array.
+     * @param targetResolution the desired horizontal resolution, in radians, of the raster or other elevation sample
+     *                         from which elevations are drawn.
+     * @param buffer           an array in which to place the returned elevations. The array must be pre-allocated and
+     *                         contain at least as many elements as the latitudes array.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     *
+     * @throws IllegalArgumentException if the sector or any array is null, or if the longitudes or elevations array is
+     *                                  smaller than the latitudes array.
+     */
+    double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer);
+
+    /**
+     * Returns the elevations of a collection of locations specified as parallel arrays of latitudes and longitudes in
+     * degrees. <em>Does not</em> replace any elevation values corresponding to the missing data signal with the
+     * elevation model's missing data replacement value. The results are identical to those of {@link
+     * #getUnmappedElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])} for the same
+     * locations.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes, in degrees, of the locations to return elevations for.
+     * @param longitudes       the longitudes, in degrees, of the locations to return elevations for. Must contain at
+     *                         least as many elements as the latitudes array.
+     * @param targetResolution the desired horizontal resolution, in radians, of the raster or other elevation sample
+     *                         from which elevations are drawn.
+     * @param buffer           an array in which to place the returned elevations. The array must be pre-allocated and
+     *                         contain at least as many elements as the latitudes array.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     *
+     * @throws IllegalArgumentException if the sector or any array is null, or if the longitudes or elevations array is
+     *                                  smaller than the latitudes array.
+     */
+    double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer);
+
     /**
      * Returns the elevation used for missing values in the elevation model.
      *
@@ -546,7 +546,7 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
             return;
         }
 
-        if (!WorldWind.getRetrievalService().isAvailable())
+        if (!WorldWind.getRetrievalService().isAvailable(tile.getPriority()))
             return;
 
         java.net.URL url;
@@ -39,7 +39,7 @@ public class BasicMercatorTiledImageLayer extends MercatorTiledImageLayer
         {
             long size = Configuration.getLongValue(
                 AVKey.TEXTURE_IMAGE_CACHE_SIZE, 3000000L);
-            MemoryCache cache = new BasicMemoryCache((long) (0.85 * size), size);
+            MemoryCache cache = WorldWind.createMemoryCache((long) (0.85 * size), size);
             cache.setName("Texture Tiles");
             WorldWind.getMemoryCacheSet().addCache(MercatorTextureTile.class.getName(), cache);
         }
@@ -215,7 +215,7 @@ public class BasicMercatorTiledImageLayer extends MercatorTiledImageLayer
 
     protected void downloadTexture(final MercatorTextureTile tile)
     {
-        if (!WorldWind.getRetrievalService().isAvailable())
+        if (!WorldWind.getRetrievalService().isAvailable(tile.getPriority()))
             return;
 
         java.net.URL url;
@@ -27,8 +27,10 @@ class RPFGenerator
     @SuppressWarnings({"FieldCanBeLocal"})
     private final RPFFileIndex fileIndex;
     private final FrameFile[] frameFiles;
+    private final RPFFrameIndex frameIndex;
     private final Sector globalBounds;
     private final AbsentResourceList absentFrames;
+    private final RPFFrameCache frameCache;
     // Wavelet parameters.
     private final int smallImageSize;
     private final int preloadRes;
@@ -37,6 +39,8 @@ class RPFGenerator
     public static final String RPF_FILE_INDEX = "RPFGenerator.RPFFileIndex";
     public static final String WAVELET_IMAGE_THRESHOLD = "RPFGenerator.WaveletImageThreshold";
     public static final String WAVELET_PRELOAD_SIZE = "RPFGenerator.WaveletPreloadSize";
+    public static final String RPF_FRAME_CACHE = "RPFGenerator.RPFFrameCache";
+    public static final String RPF_FRAME_INDEX = "RPFGenerator.RPFFrameIndex";
 
     public RPFGenerator(AVList params)
     {
@@ -51,8 +55,10 @@ class RPFGenerator
 
         this.fileIndex = (RPFFileIndex) params.getValue(RPF_FILE_INDEX);
         this.frameFiles = loadFrameFiles(this.fileIndex);
+        this.frameIndex = initFrameIndex(this.frameFiles, (RPFFrameIndex) params.getValue(RPF_FRAME_INDEX));
         this.globalBounds = computeGlobalBounds(this.fileIndex);
         this.absentFrames = new AbsentResourceList(1, 0); // Mark frame files absent after the first failed attempt.
+        this.frameCache = (RPFFrameCache) params.getValue(RPF_FRAME_CACHE);
 
         this.smallImageSize = (Integer) params.getValue(WAVELET_IMAGE_THRESHOLD);
         this.preloadRes = (Integer) params.getValue(WAVELET_PRELOAD_SIZE);
@@ -82,6 +88,11 @@ class RPFGenerator
         if (o == null || !(o instanceof Integer) || !WWMath.isPowerOfTwo((Integer) o))
             params.setValue(WAVELET_PRELOAD_SIZE, 32);
 
+        // Decoded frames are shared with other generators through the shared frame cache, unless a cache is given.
+        o = params.getValue(RPF_FRAME_CACHE);
+        if (o == null || !(o instanceof RPFFrameCache))
+            params.setValue(RPF_FRAME_CACHE, new RPFFrameCache());
+
         return params;
     }
 
@@ -90,6 +101,11 @@ class RPFGenerator
         return this.globalBounds;
     }
 
+    public RPFFrameIndex getFrameIndex()
+    {
+        return this.frameIndex;
+    }
+
     public RPFServiceInstance getServiceInstance()
     {
         return new RPFServiceInstance();
@@ -129,6 +145,26 @@ class RPFGenerator
         return array;
     }
 
+    //
+    // Returns the spatial index of the frame files, which numbers frames in the same order as the frame file array.
+    // A given frame index is used only if it has one frame for each frame file; otherwise the index is created.
+    //
+    private RPFFrameIndex initFrameIndex(FrameFile[] frameFiles, RPFFrameIndex frameIndex)
+    {
+        if (frameIndex != null && frameIndex.getNumFrames() == frameFiles.length)
+            return frameIndex;
+
+        String rootPath = this.fileIndex.getIndexProperties() != null
+            ? this.fileIndex.getIndexProperties().getRootPath() : null;
+        RPFFrameIndex.Builder builder = new RPFFrameIndex.Builder(new File(rootPath != null ? rootPath : ""));
+        for (FrameFile frame : frameFiles)
+        {
+            builder.addFrame(frame.rpfFile, frame.sector, 0);
+        }
+
+        return builder.build();
+    }
+
     //
     // Find the global bounds for this collection of frame files (i.e., the union of their Sectors).
     //
@@ -156,7 +192,6 @@ class RPFGenerator
         public Sector sector;
         public WaveletCodec codec;
         public RPFFrameFilename frameFile;
-        public RPFFrameTransform transform;
 
         public FrameFile(long id, File rpfFile, File waveletFile, Sector sector)
         {
@@ -167,21 +202,6 @@ class RPFGenerator
             this.frameFile = RPFFrameFilename.parseFilename(rpfFile.getName().toUpperCase());
         }
 
-        public RPFFrameTransform getFrameTransform()
-        {
-            if (this.transform == null)
-            {
-                RPFDataSeries dataSeries = RPFDataSeries.dataSeriesFor(this.frameFile.getDataSeriesCode());
-                this.transform = RPFFrameTransform.createFrameTransform(this.frameFile.getZoneCode(),
-                    dataSeries.rpfDataType, dataSeries.scaleOrGSD);
-            }
-            return this.transform;
-        }
-
-        public int getFrameNumber() {
-            return frameFile.getFrameNumber();
-        }
-
     }
 
     // --------------------------------------------
@@ -222,26 +242,10 @@ class RPFGenerator
                 BufferedImage reqImage = new BufferedImage(reqWidth, reqHeight, BufferedImage.TYPE_4BYTE_ABGR);
                 int numFramesInRequest = 0;
 
-                for (FrameFile frame : RPFGenerator.this.frameFiles)
+                // Visit only the frames intersecting the request, in frame file order.
+                for (int frameNumber : RPFGenerator.this.frameIndex.findFrames(reqSector))
                 {
-                    try
-                    {
-                        // The call to getSector() can throw an exception if the file is
-                        // named with an inappropriate frameNumber for the dataseries/zone.
-                        // We don't want these to short circuit the entire request, so
-                        // trap any such occurances and ignore 'em.
-                        if (!reqSector.intersects(frame.sector))
-                            continue;
-                    }
-                    catch (Exception e)
-                    {
-                        /* ignore this framefile */
-                        String msg = String.format("Exception while computing frame bounds: %s", frame.rpfFile);
-                        Logging.logger().log(java.util.logging.Level.SEVERE, msg, e);
-                        markFrameFileAbsent(frame);
-                        continue;
-                    }
-
+                    FrameFile frame = RPFGenerator.this.frameFiles[frameNumber];
                     if (RPFGenerator.this.isFrameFileAbsent(frame))
                         continue;
 
@@ -431,16 +435,14 @@ class RPFGenerator
         }
 
         //
-        // Attempts to return the specified FrameFile as a BufferedImage. Returns null on failure.
+        // Attempts to return the specified FrameFile as deprojected BufferedImages, decoding the frame only if it's not
+        // in the frame cache. Returns null on failure.
         //
         private RPFFrameTransform.RPFImage[] getImageFromRPFSource(FrameFile frame)
         {
             try
             {
-                File file = frame.rpfFile;
-                RPFImageFile sourceFile = RPFImageFile.load(file);
-                BufferedImage image = sourceFile.getBufferedImage();
-                return frame.getFrameTransform().deproject(frame.getFrameNumber(), image);
+                return RPFGenerator.this.frameCache.getFrameImages(frame.rpfFile);
             }
             catch (Exception e)
             {
@@ -10,6 +10,7 @@ import gov.nasa.worldwind.*;
 import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.cache.FileStore;
 import gov.nasa.worldwind.formats.dds.DDSCompressor;
+import gov.nasa.worldwind.formats.rpf.RPFFrameIndex;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.layers.*;
 import gov.nasa.worldwind.render.DrawContext;
@@ -97,6 +98,19 @@ public class RPFTiledImageLayer extends TiledImageLayer
         return path;
     }
 
+    static String getFrameIndexCachePath(String rootPath, String dataSeriesId)
+    {
+        String path = null;
+        if (rootPath != null && dataSeriesId != null)
+        {
+            path = WWIO.formPath(
+                rootPath,
+                dataSeriesId,
+                "rpf_frame_index.idx");
+        }
+        return path;
+    }
+
     public static RPFTiledImageLayer fromRestorableState(String stateInXml)
     {
         if (stateInXml == null)
@@ -208,6 +222,26 @@ public class RPFTiledImageLayer extends TiledImageLayer
             params.setValue(RPFGenerator.RPF_FILE_INDEX, fileIndex);
         }
 
+        // Map the spatial index of the frame files saved with the RPFFileIndex, unless it's older than the RPFFileIndex.
+        // The RPFGenerator creates the spatial index if it's not available.
+        if (params.getValue(RPFGenerator.RPF_FRAME_INDEX) == null)
+        {
+            File frameIndexFile = fileStore.newFile(getFrameIndexCachePath(rootPath, dataSeriesId));
+            if (frameIndexFile != null && file != null && frameIndexFile.exists()
+                && frameIndexFile.lastModified() >= file.lastModified())
+            {
+                try
+                {
+                    params.setValue(RPFGenerator.RPF_FRAME_INDEX, RPFFrameIndex.load(frameIndexFile));
+                }
+                catch (Exception e)
+                {
+                    String message = "Exception while attempting to load RPFFrameIndex: " + frameIndexFile;
+                    Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+                }
+            }
+        }
+
         // Default to expiring data on the date the DDS converter was updated. If the RPFFileIndex's last-modified time
         // is newer than the default expiry time, then use newer of the two. This ensures that layer imagery always
         // reflects whats in the RPFFileIndex. If the layer has been re-imported (data has been added, or data has been
@@ -397,7 +431,9 @@ public class RPFTiledImageLayer extends TiledImageLayer
             {
                 // Intentionally left blank. URLBuilder will be created from scratch in fromRestorableState().
             }
-            else if (p.getKey().equals(RPFGenerator.RPF_FILE_INDEX))
+            else if (p.getKey().equals(RPFGenerator.RPF_FILE_INDEX)
+                || p.getKey().equals(RPFGenerator.RPF_FRAME_INDEX)
+                || p.getKey().equals(RPFGenerator.RPF_FRAME_CACHE))
             {
                 // Intentionally left blank.
             }
@@ -710,7 +746,7 @@ public class RPFTiledImageLayer extends TiledImageLayer
             return;
         }
 
-        if (WorldWind.getRetrievalService().isAvailable())
+        if (WorldWind.getRetrievalService().isAvailable(tile.getPriority()))
         {
             Retriever retriever = new RPFRetriever(service, url, new DownloadPostProcessor(tile, this));
             // Apply any overridden timeouts.
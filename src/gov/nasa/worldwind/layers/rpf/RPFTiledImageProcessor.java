@@ -8,7 +8,6 @@ package gov.nasa.worldwind.layers.rpf;
 import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.formats.dds.DDSCompressor;
-import gov.nasa.worldwind.formats.nitfs.*;
 import gov.nasa.worldwind.formats.rpf.*;
 import gov.nasa.worldwind.formats.wvt.WaveletCodec;
 import gov.nasa.worldwind.geom.*;
@@ -34,6 +33,8 @@ public class RPFTiledImageProcessor
     private final PropertyChangeSupport propertyChangeSupport;
     private final Object fileLock = new Object();
     private volatile boolean doStop = false;
+    // Decoded frames, shared by the wavelet pass and the tiled imagery pass.
+    private final RPFFrameCache frameCache = new RPFFrameCache();
 
     private static final int DEFAULT_WAVELET_SIZE = 256;
 
@@ -83,6 +84,8 @@ public class RPFTiledImageProcessor
         RPFFileIndex result = null;
         if (!this.doStop)
         {
+            this.frameCache.setThreadCount(this.getFrameDecodeThreadCount());
+
             RPFFileIndex fileIndex = new RPFFileIndex();
             fileIndex.getIndexProperties().setRootPath(rootFile.getAbsolutePath());
             fileIndex.getIndexProperties().setDataSeriesIdentifier(dataSeriesId);
@@ -140,10 +143,18 @@ public class RPFTiledImageProcessor
             params.setValue(RPFTiledImageLayer.RPF_ROOT_PATH, rootPath);
             params.setValue(RPFTiledImageLayer.RPF_DATA_SERIES_ID, dataSeriesId);
             params.setValue(RPFGenerator.RPF_FILE_INDEX, fileIndex);
+            params.setValue(RPFGenerator.RPF_FRAME_CACHE, this.frameCache);
+            this.frameCache.setThreadCount(this.getFrameDecodeThreadCount());
             Collection<Tile> tileList = RPFTiledImageLayer.createTopLevelTiles(params);
             RPFGenerator generator = new RPFGenerator(params);
             createTiledImagery(tileList, generator);
 
+            // Save the generator's spatial index of the frame files, which the layer maps rather than recreates.
+            File frameIndexFile = WorldWind.getDataFileStore().newFile(
+                RPFTiledImageLayer.getFrameIndexCachePath(rootPath, dataSeriesId));
+            saveFrameIndex(generator.getFrameIndex(), frameIndexFile);
+            params.setValue(RPFGenerator.RPF_FRAME_INDEX, generator.getFrameIndex());
+
             // Return the layer.
             if (!this.doStop)
             {
@@ -158,6 +169,12 @@ public class RPFTiledImageProcessor
         this.doStop = true;
     }
 
+    private int getFrameDecodeThreadCount()
+    {
+        // Decode each frame on all processors, unless files and tiles are already processed concurrently.
+        return this.numThreads > 1 ? 1 : Runtime.getRuntime().availableProcessors();
+    }
+
     private String makeWaveletCachePath(RPFFileIndex fileIndex, long rpfFileKey)
     {
         String path = null;
@@ -238,15 +255,12 @@ public class RPFTiledImageProcessor
         }
 
         File file = null;
-        RPFImageFile rpfImageFile = null;
         if (!this.doStop)
         {
-            // Load the RPF image file.
             file = fileIndex.getRPFFile(record.getKey());
-            rpfImageFile = RPFImageFile.load(file);
 
             // Create an attribute for the file's sector.
-            Sector sector = getFileSector(rpfImageFile);
+            Sector sector = file != null ? RPFFrameIndex.computeFrameSector(file) : null;
             if (sector != null)
             {
                 ((RPFFileIndex.RPFFileRecord) record).setSector(sector);
@@ -277,11 +291,9 @@ public class RPFTiledImageProcessor
             // then create a new wavelet file.
             if (waveletFile != null && (file != null && file.lastModified() > waveletFile.lastModified()))
             {
-                // Get the RPF image file as a BufferedImage.
-                BufferedImage bi = rpfImageFile.getBufferedImage();
-
-                // Must deproject it...
-                bi = deproject(file, bi);
+                // Get the deprojected RPF image file as a BufferedImage. The decoded frame stays in the frame
+                // cache for the tiled imagery created next.
+                BufferedImage bi = mergeImages(this.frameCache.getFrameImages(file));
 
                 // Get coverage information from the transform.
                 // Create the wavelet from the RPF BufferedImage.
@@ -292,8 +304,6 @@ public class RPFTiledImageProcessor
                     bi = null;
                 }
             }
-            //noinspection UnusedAssignment
-            rpfImageFile = null;
         }
 
         if (!this.doStop)
@@ -351,93 +361,6 @@ public class RPFTiledImageProcessor
         return destImage;
     }
 
-    private Sector getFileSector(RPFFile rpfFile)
-    {
-        // Attempt to get the file's coverage from the RPFFile.
-        Sector sector = null;
-        if (rpfFile != null)
-        {
-
-            // We'll first attempt to compute the Sector, if possible, from the filename (if it exists) by using
-            // the conventions for CADRG and CIB filenames. It has been observed that for polar frame files in
-            // particular that coverage information in the file itself is sometimes unreliable.
-            File file = rpfFile.getFile();
-            if (file != null)
-                sector = sectorFromFilename(file);
-
-            // Can't compute the Sector;  see if the RPFFile contains coverage information.
-            if (sector == null)
-                sector = sectorFromHeader(rpfFile);
-        }
-        return sector;
-    }
-
-    private Sector sectorFromHeader(RPFFile rpfFile)
-    {
-        Sector sector = null;
-        try
-        {
-            if (rpfFile != null)
-            {
-                NITFSImageSegment imageSegment = (NITFSImageSegment) rpfFile.getNITFSSegment(NITFSSegmentType.IMAGE_SEGMENT);
-                RPFFrameFileComponents comps = imageSegment.getUserDefinedImageSubheader().getRPFFrameFileComponents();
-                Angle minLat = comps.swLowerleft.getLatitude();
-                Angle maxLat = comps.neUpperRight.getLatitude();
-                Angle minLon = comps.swLowerleft.getLongitude();
-                Angle maxLon = comps.neUpperRight.getLongitude();
-                // This sector spans the longitude boundary. In order to render this sector,
-                // we must adjust the longitudes such that minLon<maxLon.
-                if (Angle.crossesLongitudeBoundary(minLon, maxLon))
-                {
-                    if (minLon.compareTo(maxLon) > 0)
-                    {
-                        double degrees = 360 + maxLon.degrees;
-                        maxLon = Angle.fromDegrees(degrees);
-                    }
-                }
-                sector = new Sector(minLat, maxLat, minLon, maxLon);
-            }
-        }
-        catch (Exception e)
-        {
-            // Computing the file's coverage failed. Log the condition and return null.
-            // This at allows the coverage to be re-computed at a later time.
-            String message = String.format("Exception while getting file sector: %s", rpfFile != null ? rpfFile.getFile() : "");
-            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
-            sector = null;
-        }
-        return sector;
-    }
-
-    private Sector sectorFromFilename(File file)
-    {
-        Sector sector = null;
-        try
-        {
-            if (file != null && file.getName() != null)
-            {
-                // Parse the filename, using the conventions for CADRG and CIB filenames.
-                RPFFrameFilename rpfFilename = RPFFrameFilename.parseFilename(file.getName().toUpperCase());
-                // Get the dataseries associated with that code.
-                RPFDataSeries ds = RPFDataSeries.dataSeriesFor(rpfFilename.getDataSeriesCode());
-                // Create a transform to compute coverage information.
-                RPFFrameTransform tx = RPFFrameTransform.createFrameTransform(
-                    rpfFilename.getZoneCode(), ds.rpfDataType, ds.scaleOrGSD);
-                // Get coverage information from the transform.
-                sector = tx.computeFrameCoverage(rpfFilename.getFrameNumber());
-            }
-        }
-        catch (Exception e)
-        {
-            // Computing the file's coverage failed. Log the condition and return null.
-            // This at allows the coverage to be re-computed at a later time.
-            String message = String.format("Exception while computing file sector: %s", file);
-            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
-            sector = null;
-        }
-        return sector;
-    }
-
     //private boolean isPolarFile(File file)
     //{
     //    boolean isPolar = false;
@@ -564,14 +487,24 @@ public class RPFTiledImageProcessor
         }
     }
 
-    private BufferedImage deproject(File file, BufferedImage image)
+    private void saveFrameIndex(RPFFrameIndex frameIndex, File file)
+    {
+        try
+        {
+            if (frameIndex != null && file != null)
+            {
+                frameIndex.save(file);
+            }
+        }
+        catch (Exception e)
+        {
+            String message = String.format("Exception while saving RPFFrameIndex: %s", file);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+        }
+    }
+
+    private BufferedImage mergeImages(RPFFrameTransform.RPFImage[] images)
     {
-        // Need a RPFFrameTransform object and a frame-number to perform the deprojection...
-        RPFFrameFilename fframe = RPFFrameFilename.parseFilename(file.getName().toUpperCase());
-        RPFDataSeries ds = RPFDataSeries.dataSeriesFor(fframe.getDataSeriesCode());
-        RPFFrameTransform tx = RPFFrameTransform.createFrameTransform(fframe.getZoneCode(),
-            ds.rpfDataType, ds.scaleOrGSD);
-        RPFFrameTransform.RPFImage[] images = tx.deproject(fframe.getFrameNumber(), image);
         if (images.length == 1)
             return images[0].getImage();
 
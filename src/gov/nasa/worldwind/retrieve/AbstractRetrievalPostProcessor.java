@@ -101,6 +101,17 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
         return this.retriever;
     }
 
+    /**
+     * Identifies the layer or elevation model the post-processor's retrievals are for. {@link RetrievalStatistics}
+     * groups retrievals by this name.
+     *
+     * @return the display name in the attribute-value list passed to the constructor, or null if there is none.
+     */
+    public String getSourceName()
+    {
+        return this.avList != null ? this.avList.getStringValue(AVKey.DISPLAY_NAME) : null;
+    }
+
     /**
      * Called when the retrieval state is other than {@link Retriever#RETRIEVER_STATE_SUCCESSFUL}. Can be overridden by
      * subclasses to handle special error cases. The default implementation calls {@link #markResourceAbsent()} if the
@@ -236,11 +247,15 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
         if (outFile.exists() && !this.overwriteExistingFile())
             return false;
 
+        long start = System.nanoTime();
         synchronized (this.getFileLock()) // synchronize with read of file in another class
         {
             WWIO.saveBuffer(buffer != null ? buffer : this.getRetriever().getBuffer(), outFile);
         }
 
+        if (this.getRetriever() instanceof URLRetriever)
+            ((URLRetriever) this.getRetriever()).addCacheWriteTime(System.nanoTime() - start);
+
         return true;
     }
 
@@ -425,6 +425,12 @@ public final class BasicRetrievalService extends WWObjectImpl
         return this.hasRetrievers();
     }
 
+    /** {@inheritDoc} This service does not displace requests, so the priority is ignored. */
+    public boolean isAvailable(double priority)
+    {
+        return this.isAvailable();
+    }
+
     public boolean isAvailable()
     {
         return this.executor.getQueue().size() < this.queueSize;
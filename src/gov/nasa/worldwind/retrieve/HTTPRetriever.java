@@ -5,8 +5,9 @@
  */
 package gov.nasa.worldwind.retrieve;
 
-import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.*;
 
+import java.io.*;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.logging.Level;
@@ -56,6 +57,39 @@ public class HTTPRetriever extends URLRetriever
         if (this.responseCode == HttpURLConnection.HTTP_OK)
             return super.doRead(connection);
 
+        this.consumeErrorStream(htpc);
+
         return null;
     }
+
+    /**
+     * Reads and closes the body of an unsuccessful response. The JDK returns a connection to its keep-alive cache only
+     * once the response body has been consumed, so this lets the next request to the same host reuse the connection.
+     *
+     * @param connection the connection whose error stream to consume.
+     */
+    protected void consumeErrorStream(HttpURLConnection connection)
+    {
+        InputStream errorStream = connection.getErrorStream();
+        if (errorStream == null)
+            return;
+
+        try
+        {
+            byte[] buffer = new byte[4096];
+            while (errorStream.read(buffer) >= 0)
+            {
+                // Discard the error content.
+            }
+        }
+        catch (IOException e)
+        {
+            Logging.logger().log(Level.FINE, Logging.getMessage("URLRetriever.ErrorReadingFromConnection",
+                connection.getURL()), e);
+        }
+        finally
+        {
+            WWIO.closeStream(errorStream, connection.getURL().toString());
+        }
+    }
 }
@@ -0,0 +1,936 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.util.Logging;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.logging.Level;
+
+/**
+ * A retrieval service that keeps pending requests ordered by priority and lets clients change or cancel them while
+ * they wait. It is intended for tiled layers that re-request the tiles they need each frame: a request for a resource
+ * that is already pending does not create a new task, but moves the pending task to the new priority and marks it as
+ * recently requested. Requests that are not renewed within the stale request limit are dropped before they run, so
+ * tiles that have left the view do not occupy the retrieval threads. Pending and running requests are indexed by
+ * retriever name, so duplicate detection and {@link #contains(Retriever)} take constant time.
+ * <p/>
+ * Lower priority values run first, and among equal priorities the most recent request runs first. The service limits
+ * the number of requests running concurrently for each host, so that one slow server cannot occupy every retrieval
+ * thread. The default limit is the number of idle connections the JDK keeps alive for each host (the
+ * <code>http.maxConnections</code> system property), so every connection used for a host can return to the JDK's
+ * keep-alive cache and be reused by the next request to that host. When the queue is full a new request displaces the
+ * least important pending request if it is more important, and is rejected otherwise.
+ * <p/>
+ * To use this service in place of {@link BasicRetrievalService}, specify its class name for the configuration
+ * property {@link AVKey#RETRIEVAL_SERVICE_CLASS_NAME}.
+ *
+ * @version $Id$
+ */
+public class PrioritizedRetrievalService extends WWObjectImpl
+    implements RetrievalService, Thread.UncaughtExceptionHandler
+{
+    // These constants are last-ditch values in case Configuration lacks defaults
+    protected static final int DEFAULT_QUEUE_SIZE = 100;
+    protected static final int DEFAULT_POOL_SIZE = 5;
+    protected static final long DEFAULT_STALE_REQUEST_LIMIT = 30000; // milliseconds
+    protected static final int DEFAULT_MAX_REQUESTS_PER_HOST = Integer.getInteger("http.maxConnections", 5);
+    protected static final long THREAD_TIMEOUT = 2; // keep idle threads alive this many seconds
+
+    protected static final String RUNNING_THREAD_NAME_PREFIX = Logging.getMessage(
+        "BasicRetrievalService.RunningThreadNamePrefix");
+    protected static final String IDLE_THREAD_NAME_PREFIX = Logging.getMessage(
+        "BasicRetrievalService.IdleThreadNamePrefix");
+
+    /** Selects retrievers, for example to cancel the pending requests of resources no longer needed. */
+    public interface RetrieverFilter
+    {
+        /**
+         * Indicates whether a retriever is selected.
+         *
+         * @param retriever the retriever to test.
+         *
+         * @return true if the retriever is selected, otherwise false.
+         */
+        boolean accept(Retriever retriever);
+    }
+
+    /** Encapsulates a single retrieval. A task is pending while it is in its host's queue. */
+    protected class RetrievalTask extends FutureTask<Retriever> implements RetrievalFuture
+    {
+        protected final Retriever retriever;
+        protected final HostQueue host;
+        // The following fields are guarded by the service lock. They determine the task's position in its host's
+        // queue, so they are changed only while the task is out of the queue.
+        protected double priority;
+        protected long sequence;
+        protected long requestTime;
+        protected boolean pending;
+
+        protected RetrievalTask(Retriever retriever, HostQueue host)
+        {
+            super(retriever);
+            this.retriever = retriever;
+            this.host = host;
+        }
+
+        public Retriever getRetriever()
+        {
+            return this.retriever;
+        }
+
+        public double getPriority()
+        {
+            return this.priority;
+        }
+
+        @Override
+        protected void done()
+        {
+            taskDone(this);
+        }
+    }
+
+    /** The pending tasks of one host and the number of its tasks running. */
+    protected static class HostQueue
+    {
+        protected final String name;
+        protected final TreeSet<RetrievalTask> pending = new TreeSet<RetrievalTask>(TASK_ORDER);
+        protected int numRunning;
+
+        protected HostQueue(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    /** Orders tasks by ascending priority, and tasks of equal priority by most recent request. */
+    protected static final Comparator<RetrievalTask> TASK_ORDER = new Comparator<RetrievalTask>()
+    {
+        public int compare(RetrievalTask a, RetrievalTask b)
+        {
+            if (a.priority != b.priority)
+                return a.priority < b.priority ? -1 : 1;
+
+            return a.sequence > b.sequence ? -1 : a.sequence < b.sequence ? 1 : 0;
+        }
+    };
+
+    /** Orders host queues by their first pending task. */
+    protected static final Comparator<HostQueue> HOST_ORDER = new Comparator<HostQueue>()
+    {
+        public int compare(HostQueue a, HostQueue b)
+        {
+            int order = TASK_ORDER.compare(a.pending.first(), b.pending.first());
+            return order != 0 ? order : a.name.compareTo(b.name);
+        }
+    };
+
+    protected final Lock lock = new ReentrantLock();
+    protected final Condition taskAvailable = this.lock.newCondition();
+    /** Pending and running tasks by retriever name. */
+    protected final ConcurrentHashMap<String, RetrievalTask> tasks = new ConcurrentHashMap<String, RetrievalTask>();
+    // The following fields are guarded by the lock.
+    protected final HashMap<String, HostQueue> hosts = new HashMap<String, HostQueue>();
+    /** The host queues that have pending tasks and may run another task, ordered by their first pending task. */
+    protected final TreeSet<HostQueue> readyHosts = new TreeSet<HostQueue>(HOST_ORDER);
+    protected final Set<RetrievalTask> runningTasks = new HashSet<RetrievalTask>();
+    protected int numPending;
+    protected long nextSequence;
+    protected int poolSize;
+    protected int numThreads;
+    protected int queueSize;
+    protected int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    protected long staleRequestLimit;
+    protected boolean shutdown;
+    protected SSLExceptionListener sslExceptionListener;
+
+    public PrioritizedRetrievalService()
+    {
+        this.poolSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_POOL_SIZE, DEFAULT_POOL_SIZE);
+        this.queueSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        this.staleRequestLimit = Configuration.getLongValue(AVKey.RETRIEVAL_QUEUE_STALE_REQUEST_LIMIT,
+            DEFAULT_STALE_REQUEST_LIMIT);
+        this.maxRequestsPerHost = Configuration.getIntegerValue(AVKey.RETRIEVAL_MAX_REQUESTS_PER_HOST,
+            DEFAULT_MAX_REQUESTS_PER_HOST);
+    }
+
+    public SSLExceptionListener getSSLExceptionListener()
+    {
+        return this.sslExceptionListener;
+    }
+
+    public void setSSLExceptionListener(SSLExceptionListener sslExceptionListener)
+    {
+        this.sslExceptionListener = sslExceptionListener;
+    }
+
+    public void uncaughtException(Thread thread, Throwable throwable)
+    {
+        Logging.logger().fine(Logging.getMessage("BasicRetrievalService.UncaughtExceptionDuringRetrieval",
+            thread.getName()));
+    }
+
+    /**
+     * @param retriever the retriever to run
+     *
+     * @return a future object that can be used to query the request status of cancel the request.
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null or has no name
+     */
+    public RetrievalFuture runRetriever(Retriever retriever)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Requests without a priority run after all requests with one, most recent first.
+        return this.runRetriever(retriever, Double.MAX_VALUE);
+    }
+
+    /**
+     * Requests a retrieval. If a retrieval of the same resource, as identified by the retriever's name, is pending, its
+     * priority is changed to the specified priority, its request time is renewed, and its future is returned. If a
+     * retrieval of the same resource is running, its future is returned.
+     *
+     * @param retriever the retriever to run
+     * @param priority  the retrieval's priority. Lower values run first.
+     *
+     * @return a future object that can be used to query the request status or cancel the request, or null if the
+     *         request is rejected because the service is shut down or the queue is full of more important requests.
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null or has no name
+     */
+    public RetrievalFuture runRetriever(Retriever retriever, double priority)
+    {
+        if (retriever == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (retriever.getName() == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverNameIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.lock.lock();
+        try
+        {
+            if (this.shutdown)
+            {
+                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejected",
+                    retriever.getName()));
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+
+            RetrievalTask task = this.tasks.get(retriever.getName());
+            if (task != null && !task.isDone())
+            {
+                if (task.pending)
+                    this.requeue(task, priority, now);
+
+                return task;
+            }
+
+            task = new RetrievalTask(retriever, this.getHostQueue(retriever));
+            task.priority = priority;
+            task.sequence = this.nextSequence++;
+
+            if (this.numPending >= this.queueSize && !this.makeRoomFor(task))
+            {
+                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejectedQueueIsFull",
+                    retriever.getName()));
+                return null;
+            }
+
+            retriever.setSubmitTime(now);
+            task.requestTime = now;
+            this.tasks.put(retriever.getName(), task);
+            this.enqueue(task);
+            this.startThreadIfNeeded();
+            this.taskAvailable.signal();
+
+            return task;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the priority of a pending retrieval. The request time of the retrieval is not renewed.
+     *
+     * @param retriever the retriever whose priority to change.
+     * @param priority  the new priority. Lower values run first.
+     *
+     * @return true if the retrieval is pending and its priority was changed, otherwise false.
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null
+     */
+    public boolean setPriority(Retriever retriever, double priority)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.lock.lock();
+        try
+        {
+            RetrievalTask task = this.tasks.get(retriever.getName());
+            if (task == null || !task.pending)
+                return false;
+
+            this.requeue(task, priority, task.requestTime);
+            return true;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels a pending or running retrieval. A running retrieval is interrupted.
+     *
+     * @param retriever the retriever to cancel.
+     *
+     * @return true if the retrieval was cancelled, false if it is neither pending nor running.
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null
+     */
+    public boolean cancel(Retriever retriever)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        RetrievalTask task = this.tasks.get(retriever.getName());
+        return task != null && task.cancel(true);
+    }
+
+    /**
+     * Cancels the pending retrievals selected by a filter, for example those for tiles that are no longer in view.
+     * Running retrievals are not affected.
+     *
+     * @param filter the filter selecting the retrievals to cancel.
+     *
+     * @return the number of retrievals cancelled.
+     *
+     * @throws IllegalArgumentException if <code>filter</code> is null
+     */
+    public int cancelPending(RetrieverFilter filter)
+    {
+        if (filter == null)
+        {
+            String msg = Logging.getMessage("nullValue.FilterIsNull");
+            Logging.logger().fine(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.lock.lock();
+        try
+        {
+            int numCancelled = 0;
+            for (RetrievalTask task : this.tasks.values())
+            {
+                if (task.pending && filter.accept(task.getRetriever()) && task.cancel(false))
+                    numCancelled++;
+            }
+
+            return numCancelled;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    public void shutdown(boolean immediately)
+    {
+        this.lock.lock();
+        try
+        {
+            this.shutdown = true;
+            this.taskAvailable.signalAll();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+
+        if (immediately)
+        {
+            for (RetrievalTask task : this.tasks.values())
+            {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @param poolSize the number of threads in the thread pool
+     *
+     * @throws IllegalArgumentException if <code>poolSize</code> is non-positive
+     */
+    public void setRetrieverPoolSize(int poolSize)
+    {
+        if (poolSize < 1)
+        {
+            String message = Logging.getMessage("BasicRetrievalService.RetrieverPoolSizeIsLessThanOne");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.lock.lock();
+        try
+        {
+            this.poolSize = poolSize;
+            while (this.startThreadIfNeeded())
+            {
+                // Start threads for the tasks that can now run.
+            }
+            this.taskAvailable.signalAll(); // surplus threads exit when they wake
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    public int getRetrieverPoolSize()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.poolSize;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Indicates the maximum number of retrievals that may run concurrently for a single host.
+     *
+     * @return the maximum number of concurrent retrievals per host.
+     */
+    public int getMaxRequestsPerHost()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.maxRequestsPerHost;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Specifies the maximum number of retrievals that may run concurrently for a single host. Values greater than the
+     * JDK's <code>http.maxConnections</code> system property prevent some connections from being kept alive.
+     *
+     * @param maxRequestsPerHost the maximum number of concurrent retrievals per host.
+     *
+     * @throws IllegalArgumentException if <code>maxRequestsPerHost</code> is less than 1.
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost)
+    {
+        if (maxRequestsPerHost < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", maxRequestsPerHost);
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.lock.lock();
+        try
+        {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            for (HostQueue host : this.hosts.values())
+            {
+                this.detach(host);
+                this.attach(host);
+            }
+            while (this.startThreadIfNeeded())
+            {
+                // Start threads for the tasks that can now run.
+            }
+            this.taskAvailable.signalAll();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean hasActiveTasks()
+    {
+        this.lock.lock();
+        try
+        {
+            return !this.runningTasks.isEmpty();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean isAvailable()
+    {
+        this.lock.lock();
+        try
+        {
+            return !this.shutdown && this.numPending < this.queueSize;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc} When the queue is full, a request is accepted if it is at least as important as the least important
+     * pending request, which it then displaces.
+     */
+    public boolean isAvailable(double priority)
+    {
+        this.lock.lock();
+        try
+        {
+            if (this.shutdown)
+                return false;
+
+            if (this.numPending < this.queueSize)
+                return true;
+
+            // A new request ranks ahead of earlier requests of equal priority.
+            RetrievalTask leastImportant = this.getLeastImportantPendingTask();
+            return leastImportant != null && priority <= leastImportant.priority;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    public int getNumRetrieversPending()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.numPending + this.runningTasks.size();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @param retriever the retriever to check
+     *
+     * @return <code>true</code> if the retriever is being run or pending execution
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null
+     */
+    public boolean contains(Retriever retriever)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        RetrievalTask task = this.tasks.get(retriever.getName());
+        return task != null && !task.isDone();
+    }
+
+    public double getProgress()
+    {
+        long totalContentLength = 0;
+        long totalBytesRead = 0;
+
+        for (RetrievalTask task : this.tasks.values())
+        {
+            if (task.isDone())
+                continue;
+
+            Retriever retriever = task.getRetriever();
+            try
+            {
+                double tcl = retriever.getContentLength();
+                if (tcl > 0)
+                {
+                    totalContentLength += tcl;
+                    totalBytesRead += retriever.getContentLengthRead();
+                }
+            }
+            catch (Exception e)
+            {
+                Logging.logger().log(Level.FINE,
+                    Logging.getMessage("BasicRetrievalService.ExceptionRetrievingContentSizes",
+                        retriever.getName() != null ? retriever.getName() : ""), e);
+            }
+        }
+
+        if (totalContentLength < 1)
+            return 0;
+
+        return Math.min(100.0, 100.0 * (double) totalBytesRead / (double) totalContentLength);
+    }
+
+    /**
+     * Identifies the host whose concurrency limit applies to a retriever. Retrievers of URLs without a host, and
+     * retrievers that are not URL retrievers, share a single host queue.
+     *
+     * @param retriever the retriever.
+     *
+     * @return the host name and port.
+     */
+    protected String getHostName(Retriever retriever)
+    {
+        if (retriever instanceof URLRetriever)
+        {
+            URL url = ((URLRetriever) retriever).getUrl();
+            if (url.getHost() != null)
+                return url.getHost().toLowerCase() + ":" + (url.getPort() >= 0 ? url.getPort() : url.getDefaultPort());
+        }
+
+        return "";
+    }
+
+    /** Must be called with the lock held. */
+    protected HostQueue getHostQueue(Retriever retriever)
+    {
+        String name = this.getHostName(retriever);
+        HostQueue host = this.hosts.get(name);
+        if (host == null)
+        {
+            host = new HostQueue(name);
+            this.hosts.put(name, host);
+        }
+
+        return host;
+    }
+
+    /** Removes a host queue from the ready set. Must be called before the first task of the queue changes. */
+    protected void detach(HostQueue host)
+    {
+        if (!host.pending.isEmpty())
+            this.readyHosts.remove(host);
+    }
+
+    /** Adds a host queue to the ready set if it has pending tasks and may run another task. */
+    protected void attach(HostQueue host)
+    {
+        if (!host.pending.isEmpty() && host.numRunning < this.maxRequestsPerHost)
+            this.readyHosts.add(host);
+    }
+
+    /** Must be called with the lock held. */
+    protected void enqueue(RetrievalTask task)
+    {
+        this.detach(task.host);
+        task.host.pending.add(task);
+        task.pending = true;
+        this.numPending++;
+        this.attach(task.host);
+    }
+
+    /** Must be called with the lock held. */
+    protected void dequeue(RetrievalTask task)
+    {
+        this.detach(task.host);
+        task.host.pending.remove(task);
+        task.pending = false;
+        this.numPending--;
+        this.attach(task.host);
+        this.removeIfUnused(task.host);
+    }
+
+    /** Moves a pending task to a new priority. Must be called with the lock held. */
+    protected void requeue(RetrievalTask task, double priority, long requestTime)
+    {
+        this.detach(task.host);
+        task.host.pending.remove(task);
+        task.priority = priority;
+        task.sequence = this.nextSequence++;
+        task.requestTime = requestTime;
+        task.host.pending.add(task);
+        this.attach(task.host);
+    }
+
+    /** Must be called with the lock held. */
+    protected void removeIfUnused(HostQueue host)
+    {
+        if (host.pending.isEmpty() && host.numRunning == 0)
+            this.hosts.remove(host.name);
+    }
+
+    /**
+     * Cancels the least important pending task if it is less important than a specified task. Must be called with the
+     * lock held.
+     *
+     * @param task the task to make room for.
+     *
+     * @return true if a task was cancelled, otherwise false.
+     */
+    protected boolean makeRoomFor(RetrievalTask task)
+    {
+        RetrievalTask leastImportant = this.getLeastImportantPendingTask();
+        if (leastImportant == null || TASK_ORDER.compare(task, leastImportant) >= 0)
+            return false;
+
+        Logging.logger().finer(Logging.getMessage("BasicRetrievalService.RetrievalCancelled",
+            leastImportant.getRetriever().getName()));
+        leastImportant.cancel(false);
+        return true;
+    }
+
+    /**
+     * Finds the pending task that would run last. Must be called with the lock held.
+     *
+     * @return the least important pending task, or null if no task is pending.
+     */
+    protected RetrievalTask getLeastImportantPendingTask()
+    {
+        RetrievalTask leastImportant = null;
+        for (HostQueue host : this.hosts.values())
+        {
+            if (!host.pending.isEmpty()
+                && (leastImportant == null || TASK_ORDER.compare(host.pending.last(), leastImportant) > 0))
+                leastImportant = host.pending.last();
+        }
+
+        return leastImportant;
+    }
+
+    /** Called by a task when it completes or is cancelled. */
+    protected void taskDone(RetrievalTask task)
+    {
+        this.tasks.remove(task.getRetriever().getName(), task);
+
+        this.lock.lock();
+        try
+        {
+            if (task.pending)
+                this.dequeue(task);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a retrieval thread if there are fewer threads than the pool size and fewer threads than tasks. Must be
+     * called with the lock held.
+     *
+     * @return true if a thread was started, otherwise false.
+     */
+    protected boolean startThreadIfNeeded()
+    {
+        if (this.numThreads >= this.poolSize || this.numThreads >= this.numPending + this.runningTasks.size())
+            return false;
+
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                runTasks();
+            }
+        });
+        thread.setName(IDLE_THREAD_NAME_PREFIX);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY); // Subordinate thread priority to rendering
+        thread.setUncaughtExceptionHandler(this);
+        this.numThreads++;
+        thread.start();
+
+        return true;
+    }
+
+    /** The loop of a retrieval thread. */
+    protected void runTasks()
+    {
+        RetrievalTask task;
+        while ((task = this.takeTask()) != null)
+        {
+            Thread.currentThread().setName(RUNNING_THREAD_NAME_PREFIX + task.getRetriever().getName());
+            task.getRetriever().setBeginTime(System.currentTimeMillis());
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                task.getRetriever().setEndTime(System.currentTimeMillis());
+                this.finishTask(task);
+                Thread.currentThread().setName(IDLE_THREAD_NAME_PREFIX);
+            }
+        }
+    }
+
+    /**
+     * Waits for the most important task that may run and marks it as running. Drops pending tasks that have exceeded
+     * the stale request limit.
+     *
+     * @return the task to run, or null if the calling thread is to exit.
+     */
+    protected RetrievalTask takeTask()
+    {
+        this.lock.lock();
+        try
+        {
+            while (true)
+            {
+                if (this.numThreads > this.poolSize || (this.shutdown && this.numPending == 0))
+                {
+                    this.numThreads--;
+                    return null;
+                }
+
+                if (this.readyHosts.isEmpty())
+                {
+                    try
+                    {
+                        if (!this.taskAvailable.await(THREAD_TIMEOUT, TimeUnit.SECONDS) && this.readyHosts.isEmpty())
+                        {
+                            this.numThreads--; // idle too long
+                            return null;
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // Ignore interrupts left over from a cancelled retrieval; exit only by the conditions above.
+                    }
+                    continue;
+                }
+
+                HostQueue host = this.readyHosts.first();
+                this.detach(host);
+                RetrievalTask task = host.pending.pollFirst();
+                task.pending = false;
+                this.numPending--;
+
+                if (this.isStale(task))
+                {
+                    this.attach(host);
+                    this.removeIfUnused(host);
+                    Logging.logger().finer(Logging.getMessage("BasicRetrievalService.CancellingTooOldRetrieval",
+                        task.getRetriever().getName()));
+                    task.cancel(false);
+                    continue;
+                }
+
+                host.numRunning++;
+                this.attach(host);
+                this.runningTasks.add(task);
+
+                return task;
+            }
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    protected boolean isStale(RetrievalTask task)
+    {
+        long limit = task.getRetriever().getStaleRequestLimit() >= 0
+            ? task.getRetriever().getStaleRequestLimit() : this.staleRequestLimit;
+
+        return System.currentTimeMillis() - task.requestTime > limit;
+    }
+
+    /**
+     * Releases a finished task's host slot and logs the outcome of the retrieval.
+     *
+     * @param task the finished task.
+     */
+    protected void finishTask(RetrievalTask task)
+    {
+        this.lock.lock();
+        try
+        {
+            this.runningTasks.remove(task);
+            this.detach(task.host);
+            task.host.numRunning--;
+            this.attach(task.host);
+            this.removeIfUnused(task.host);
+            this.taskAvailable.signal();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+
+        Thread.interrupted(); // clear an interrupt from cancelling the task so that it doesn't affect the next one
+
+        try
+        {
+            task.get();
+        }
+        catch (ExecutionException e)
+        {
+            String message = Logging.getMessage("BasicRetrievalService.ExecutionExceptionDuringRetrieval",
+                task.getRetriever().getName());
+            if (e.getCause() instanceof SocketTimeoutException)
+            {
+                Logging.logger().fine(message + " " + e.getCause().getLocalizedMessage());
+            }
+            else if (e.getCause() instanceof SSLHandshakeException)
+            {
+                if (this.sslExceptionListener != null)
+                    this.sslExceptionListener.onException(e.getCause(), task.getRetriever().getName());
+                else
+                    Logging.logger().fine(message + " " + e.getCause().getLocalizedMessage());
+            }
+            else
+            {
+                Logging.logger().log(Level.FINE, message, e);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Logging.logger().log(Level.FINE, Logging.getMessage("BasicRetrievalService.RetrievalInterrupted",
+                task.getRetriever().getName()), e);
+        }
+        catch (CancellationException e)
+        {
+            Logging.logger().fine(Logging.getMessage("BasicRetrievalService.RetrievalCancelled",
+                task.getRetriever().getName()));
+        }
+    }
+}
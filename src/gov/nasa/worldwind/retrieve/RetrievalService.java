@@ -25,6 +25,16 @@ public interface RetrievalService extends WWObject
 
     boolean isAvailable();
 
+    /**
+     * Indicates whether the service would accept a request of a specified priority. A service that orders its requests
+     * by priority may accept an important request even when its queue is full, by displacing a less important one.
+     *
+     * @param priority the priority of the request. Lower values are more important.
+     *
+     * @return true if a request of the priority would be accepted, otherwise false.
+     */
+    boolean isAvailable(double priority);
+
     boolean contains(Retriever retriever);
 
     int getNumRetrieversPending();
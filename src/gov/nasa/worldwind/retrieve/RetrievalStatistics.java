@@ -0,0 +1,609 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.util.*;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+import java.util.logging.Level;
+
+/**
+ * Collects the timing and outcome of URL retrievals, in total and for each layer and host. Each {@link URLRetriever}
+ * records itself when it finishes, so the statistics cover retrievals run by any retrieval service. For each retrieval
+ * the statistics record the time spent waiting in the retrieval service's queue, the time to open the connection, the
+ * time and number of bytes to request and read the resource, the time to post-process it and the part of that time
+ * spent writing it to the file cache, and whether it succeeded, failed or was interrupted. Times are accumulated in
+ * histograms, from which percentiles can be estimated.
+ * <p/>
+ * The statistics are available from {@link gov.nasa.worldwind.WorldWind#getRetrievalStatistics()}, are displayed by
+ * {@link StatisticsPanel} under the key {@link PerformanceStatistic#RETRIEVAL}, and are registered with the platform
+ * MBean server under the name {@link #OBJECT_NAME}.
+ *
+ * @version $Id$
+ */
+public class RetrievalStatistics implements RetrievalStatisticsMXBean
+{
+    public static final String OBJECT_NAME = "gov.nasa.worldwind:type=RetrievalStatistics";
+
+    /** The maximum number of layers and of hosts listed in the per-frame statistics, busiest first. */
+    protected static final int MAX_DISPLAYED_GROUPS = 8;
+
+    /**
+     * A histogram of durations, with buckets whose upper bounds grow roughly exponentially from one millisecond to 30
+     * seconds, and a final bucket for longer durations. The histogram is thread safe and does not lock.
+     */
+    public static class Histogram
+    {
+        protected static final double[] BUCKET_BOUNDS = // milliseconds
+            new double[] {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+        protected final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+        protected final AtomicLong count = new AtomicLong();
+        protected final AtomicLong totalNanos = new AtomicLong();
+        protected final AtomicLong maxNanos = new AtomicLong();
+
+        /**
+         * Adds a duration to the histogram.
+         *
+         * @param nanos the duration, in nanoseconds. Negative durations are ignored.
+         */
+        public void record(long nanos)
+        {
+            if (nanos < 0)
+                return;
+
+            double millis = nanos / 1e6;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket])
+            {
+                bucket++;
+            }
+
+            this.counts.incrementAndGet(bucket);
+            this.count.incrementAndGet();
+            this.totalNanos.addAndGet(nanos);
+
+            long max;
+            while (nanos > (max = this.maxNanos.get()) && !this.maxNanos.compareAndSet(max, nanos))
+            {
+                // Retry until the maximum is updated.
+            }
+        }
+
+        /** @return the number of durations recorded. */
+        public long getCount()
+        {
+            return this.count.get();
+        }
+
+        /** @return the mean duration in milliseconds, or 0 if no durations are recorded. */
+        public double getMean()
+        {
+            long n = this.count.get();
+            return n > 0 ? this.totalNanos.get() / 1e6 / n : 0;
+        }
+
+        /** @return the longest duration in milliseconds. */
+        public double getMax()
+        {
+            return this.maxNanos.get() / 1e6;
+        }
+
+        /**
+         * Estimates a percentile of the recorded durations. The estimate is the upper bound of the bucket containing
+         * the percentile, or the longest duration if that is less.
+         *
+         * @param fraction the percentile as a fraction, for example 0.95 for the 95th percentile.
+         *
+         * @return the estimated percentile in milliseconds, or 0 if no durations are recorded.
+         */
+        public double getPercentile(double fraction)
+        {
+            long[] bucketCounts = this.getBucketCounts();
+            long n = 0;
+            for (long c : bucketCounts)
+            {
+                n += c;
+            }
+            if (n == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(fraction * n));
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++)
+            {
+                cumulative += bucketCounts[i];
+                if (cumulative >= rank)
+                    return Math.min(BUCKET_BOUNDS[i], this.getMax());
+            }
+
+            return this.getMax();
+        }
+
+        /** @return the upper bounds of the buckets in milliseconds. The last bucket has no upper bound. */
+        public double[] getBucketBounds()
+        {
+            return BUCKET_BOUNDS.clone();
+        }
+
+        /** @return the number of durations in each bucket. */
+        public long[] getBucketCounts()
+        {
+            long[] array = new long[this.counts.length()];
+            for (int i = 0; i < array.length; i++)
+            {
+                array[i] = this.counts.get(i);
+            }
+
+            return array;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%.0f/%.0f/%.0f", this.getPercentile(0.5), this.getPercentile(0.95), this.getMax());
+        }
+    }
+
+    /** The statistics of a group of retrievals: all retrievals, or those of one layer or host. */
+    public static class Group
+    {
+        protected final String name;
+        protected final Histogram queueWaitTime = new Histogram();
+        protected final Histogram connectTime = new Histogram();
+        protected final Histogram transferTime = new Histogram();
+        protected final Histogram postProcessingTime = new Histogram();
+        protected final Histogram cacheWriteTime = new Histogram();
+        protected final AtomicLong requestCount = new AtomicLong();
+        protected final AtomicLong successfulCount = new AtomicLong();
+        protected final AtomicLong errorCount = new AtomicLong();
+        protected final AtomicLong interruptedCount = new AtomicLong();
+        protected final AtomicLong bytesTransferred = new AtomicLong();
+
+        public Group(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Adds a retrieval to the group's statistics.
+         *
+         * @param retriever the retriever to add. Its begin time and the times it recorded must be set.
+         */
+        public void record(URLRetriever retriever)
+        {
+            this.requestCount.incrementAndGet();
+            if (Retriever.RETRIEVER_STATE_INTERRUPTED.equals(retriever.getState()))
+                this.interruptedCount.incrementAndGet();
+            else if (isSuccessful(retriever))
+                this.successfulCount.incrementAndGet();
+            else
+                this.errorCount.incrementAndGet();
+
+            // The submit time is not set when the retriever is run other than by a retrieval service.
+            if (retriever.getSubmitTime() > 0 && retriever.getBeginTime() >= retriever.getSubmitTime())
+                this.queueWaitTime.record((retriever.getBeginTime() - retriever.getSubmitTime()) * 1000000L);
+            if (retriever.getConnectTime() > 0)
+                this.connectTime.record(retriever.getConnectTime());
+            if (retriever.getTransferTime() > 0)
+                this.transferTime.record(retriever.getTransferTime());
+            this.postProcessingTime.record(retriever.getPostProcessingTime());
+            if (retriever.getCacheWriteTime() > 0)
+                this.cacheWriteTime.record(retriever.getCacheWriteTime());
+            this.bytesTransferred.addAndGet(retriever.getContentLengthRead());
+        }
+
+        /**
+         * Indicates whether a retrieval succeeded. An HTTP retrieval succeeds only if the server returned the resource;
+         * the retriever's state does not distinguish a completed request for a missing resource.
+         *
+         * @param retriever the retriever.
+         *
+         * @return true if the retrieval succeeded, otherwise false.
+         */
+        protected static boolean isSuccessful(URLRetriever retriever)
+        {
+            if (!Retriever.RETRIEVER_STATE_SUCCESSFUL.equals(retriever.getState()))
+                return false;
+
+            return !(retriever instanceof HTTPRetriever)
+                || ((HTTPRetriever) retriever).getResponseCode() == HttpURLConnection.HTTP_OK;
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+
+        public Histogram getQueueWaitTime()
+        {
+            return this.queueWaitTime;
+        }
+
+        public Histogram getConnectTime()
+        {
+            return this.connectTime;
+        }
+
+        public Histogram getTransferTime()
+        {
+            return this.transferTime;
+        }
+
+        public Histogram getPostProcessingTime()
+        {
+            return this.postProcessingTime;
+        }
+
+        public Histogram getCacheWriteTime()
+        {
+            return this.cacheWriteTime;
+        }
+
+        public long getRequestCount()
+        {
+            return this.requestCount.get();
+        }
+
+        public long getSuccessfulCount()
+        {
+            return this.successfulCount.get();
+        }
+
+        public long getErrorCount()
+        {
+            return this.errorCount.get();
+        }
+
+        public long getInterruptedCount()
+        {
+            return this.interruptedCount.get();
+        }
+
+        public long getBytesTransferred()
+        {
+            return this.bytesTransferred.get();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %d requests (%d ok, %d error, %d interrupted), %d Kb, "
+                + "ms 50%%/95%%/max: wait %s, connect %s, transfer %s, post-process %s, cache write %s",
+                this.name, this.getRequestCount(), this.getSuccessfulCount(), this.getErrorCount(),
+                this.getInterruptedCount(), this.getBytesTransferred() / 1000, this.queueWaitTime, this.connectTime,
+                this.transferTime, this.postProcessingTime, this.cacheWriteTime);
+        }
+    }
+
+    /** Orders groups by descending request count. */
+    protected static final Comparator<Group> BUSIEST_FIRST = new Comparator<Group>()
+    {
+        public int compare(Group a, Group b)
+        {
+            long ca = a.getRequestCount();
+            long cb = b.getRequestCount();
+            return ca > cb ? -1 : ca < cb ? 1 : a.getName().compareTo(b.getName());
+        }
+    };
+
+    protected volatile Group total = new Group("All");
+    protected final ConcurrentHashMap<String, Group> layers = new ConcurrentHashMap<String, Group>();
+    protected final ConcurrentHashMap<String, Group> hosts = new ConcurrentHashMap<String, Group>();
+    protected ObjectName registeredName;
+
+    /**
+     * Adds a finished retrieval to the statistics.
+     *
+     * @param retriever the finished retriever.
+     *
+     * @throws IllegalArgumentException if the retriever is null.
+     */
+    public void record(URLRetriever retriever)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.total.record(retriever);
+
+        String layerName = this.getLayerName(retriever);
+        if (layerName != null)
+            this.getGroup(this.layers, layerName).record(retriever);
+
+        String hostName = this.getHostName(retriever);
+        if (hostName != null)
+            this.getGroup(this.hosts, hostName).record(retriever);
+    }
+
+    /**
+     * Identifies the layer or elevation model a retrieval is for. The default implementation returns the source name
+     * of the retriever's post-processor if it is an {@link AbstractRetrievalPostProcessor}.
+     *
+     * @param retriever the retriever.
+     *
+     * @return the name of the layer or elevation model, or null if it cannot be determined.
+     */
+    protected String getLayerName(URLRetriever retriever)
+    {
+        RetrievalPostProcessor postProcessor = retriever.getPostProcessor();
+        if (postProcessor instanceof AbstractRetrievalPostProcessor)
+            return ((AbstractRetrievalPostProcessor) postProcessor).getSourceName();
+
+        return null;
+    }
+
+    /**
+     * Identifies the host a retrieval is from.
+     *
+     * @param retriever the retriever.
+     *
+     * @return the host name, and the port if the retriever's URL specifies one, or null if the URL has no host.
+     */
+    protected String getHostName(URLRetriever retriever)
+    {
+        URL url = retriever.getUrl();
+        if (WWUtil.isEmpty(url.getHost()))
+            return null;
+
+        return url.getPort() >= 0 ? url.getHost() + ":" + url.getPort() : url.getHost();
+    }
+
+    protected Group getGroup(ConcurrentHashMap<String, Group> groups, String name)
+    {
+        Group group = groups.get(name);
+        if (group == null)
+        {
+            Group newGroup = new Group(name);
+            group = groups.putIfAbsent(name, newGroup);
+            if (group == null)
+                group = newGroup;
+        }
+
+        return group;
+    }
+
+    /** @return the statistics of all retrievals. */
+    public Group getTotal()
+    {
+        return this.total;
+    }
+
+    /**
+     * Returns the statistics of one layer or elevation model.
+     *
+     * @param name the name of the layer or elevation model.
+     *
+     * @return the layer's statistics, or null if no retrievals are recorded for the layer.
+     */
+    public Group getLayer(String name)
+    {
+        return name != null ? this.layers.get(name) : null;
+    }
+
+    /**
+     * Returns the statistics of one host.
+     *
+     * @param name the host name, followed by a colon and the port if the host's URLs specify a port.
+     *
+     * @return the host's statistics, or null if no retrievals are recorded for the host.
+     */
+    public Group getHost(String name)
+    {
+        return name != null ? this.hosts.get(name) : null;
+    }
+
+    /** @return the statistics of each layer and elevation model, busiest first. */
+    public List<Group> getLayers()
+    {
+        return this.sort(this.layers.values());
+    }
+
+    /** @return the statistics of each host, busiest first. */
+    public List<Group> getHosts()
+    {
+        return this.sort(this.hosts.values());
+    }
+
+    protected List<Group> sort(Collection<Group> groups)
+    {
+        ArrayList<Group> list = new ArrayList<Group>(groups);
+        Collections.sort(list, BUSIEST_FIRST);
+        return list;
+    }
+
+    public void reset()
+    {
+        this.total = new Group("All");
+        this.layers.clear();
+        this.hosts.clear();
+    }
+
+    /**
+     * Returns the statistics in the form displayed by {@link StatisticsPanel}: the totals, followed by a summary of
+     * the busiest layers and hosts.
+     *
+     * @return the retrieval statistics.
+     */
+    public Collection<PerformanceStatistic> getPerformanceStatistics()
+    {
+        Group all = this.total;
+
+        ArrayList<PerformanceStatistic> stats = new ArrayList<PerformanceStatistic>();
+        stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL, "Retrievals ok/error/interrupted",
+            all.getSuccessfulCount() + "/" + all.getErrorCount() + "/" + all.getInterruptedCount()));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL, "Retrieved (Kb)",
+            all.getBytesTransferred() / 1000));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL, "Retrieval Wait ms 50%/95%/max",
+            all.getQueueWaitTime()));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL, "Retrieval Connect ms 50%/95%/max",
+            all.getConnectTime()));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL, "Retrieval Transfer ms 50%/95%/max",
+            all.getTransferTime()));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL, "Retrieval Post-process ms 50%/95%/max",
+            all.getPostProcessingTime()));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL, "Retrieval Cache Write ms 50%/95%/max",
+            all.getCacheWriteTime()));
+
+        this.addGroupStatistics("Retrieval Layer: ", this.getLayers(), stats);
+        this.addGroupStatistics("Retrieval Host: ", this.getHosts(), stats);
+
+        return stats;
+    }
+
+    protected void addGroupStatistics(String prefix, List<Group> groups, Collection<PerformanceStatistic> stats)
+    {
+        for (int i = 0; i < groups.size() && i < MAX_DISPLAYED_GROUPS; i++)
+        {
+            Group group = groups.get(i);
+            stats.add(new PerformanceStatistic(PerformanceStatistic.RETRIEVAL, prefix + group.getName(),
+                String.format("%d req, 95%% wait %.0f ms, transfer %.0f ms", group.getRequestCount(),
+                    group.getQueueWaitTime().getPercentile(0.95), group.getTransferTime().getPercentile(0.95))));
+        }
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server under the name {@link #OBJECT_NAME}, replacing any
+     * statistics registered under that name.
+     *
+     * @return true if the statistics were registered, otherwise false.
+     */
+    public synchronized boolean register()
+    {
+        try
+        {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+
+            server.registerMBean(this, name);
+            this.registeredName = name;
+            return true;
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.FINE,
+                Logging.getMessage("RetrievalStatistics.ExceptionRegisteringMBean", OBJECT_NAME), e);
+            return false;
+        }
+    }
+
+    /** Removes these statistics from the platform MBean server if they are registered. */
+    public synchronized void unregister()
+    {
+        if (this.registeredName == null)
+            return;
+
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.registeredName);
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(Level.FINE,
+                Logging.getMessage("RetrievalStatistics.ExceptionUnregisteringMBean", OBJECT_NAME), e);
+        }
+        finally
+        {
+            this.registeredName = null;
+        }
+    }
+
+    public long getRequestCount()
+    {
+        return this.total.getRequestCount();
+    }
+
+    public long getSuccessfulCount()
+    {
+        return this.total.getSuccessfulCount();
+    }
+
+    public long getErrorCount()
+    {
+        return this.total.getErrorCount();
+    }
+
+    public long getInterruptedCount()
+    {
+        return this.total.getInterruptedCount();
+    }
+
+    public long getBytesTransferred()
+    {
+        return this.total.getBytesTransferred();
+    }
+
+    public double getMeanQueueWaitTime()
+    {
+        return this.total.getQueueWaitTime().getMean();
+    }
+
+    public double getQueueWaitTime95thPercentile()
+    {
+        return this.total.getQueueWaitTime().getPercentile(0.95);
+    }
+
+    public double getMeanConnectTime()
+    {
+        return this.total.getConnectTime().getMean();
+    }
+
+    public double getConnectTime95thPercentile()
+    {
+        return this.total.getConnectTime().getPercentile(0.95);
+    }
+
+    public double getMeanTransferTime()
+    {
+        return this.total.getTransferTime().getMean();
+    }
+
+    public double getTransferTime95thPercentile()
+    {
+        return this.total.getTransferTime().getPercentile(0.95);
+    }
+
+    public double getMeanPostProcessingTime()
+    {
+        return this.total.getPostProcessingTime().getMean();
+    }
+
+    public double getMeanCacheWriteTime()
+    {
+        return this.total.getCacheWriteTime().getMean();
+    }
+
+    public String[] getLayerStatistics()
+    {
+        return this.toStrings(this.getLayers());
+    }
+
+    public String[] getHostStatistics()
+    {
+        return this.toStrings(this.getHosts());
+    }
+
+    protected String[] toStrings(List<Group> groups)
+    {
+        String[] strings = new String[groups.size()];
+        for (int i = 0; i < strings.length; i++)
+        {
+            strings[i] = groups.get(i).toString();
+        }
+
+        return strings;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.retrieve;
+
+/**
+ * The management interface of {@link RetrievalStatistics}. Times are in milliseconds.
+ *
+ * @version $Id$
+ */
+public interface RetrievalStatisticsMXBean
+{
+    /** @return the number of retrievals recorded. */
+    long getRequestCount();
+
+    /** @return the number of retrievals that completed successfully. */
+    long getSuccessfulCount();
+
+    /** @return the number of retrievals that failed. */
+    long getErrorCount();
+
+    /** @return the number of retrievals that were interrupted. */
+    long getInterruptedCount();
+
+    /** @return the number of bytes read by all retrievals. */
+    long getBytesTransferred();
+
+    /** @return the mean time retrievals waited in the retrieval service's queue. */
+    double getMeanQueueWaitTime();
+
+    /** @return the 95th percentile of the time retrievals waited in the retrieval service's queue. */
+    double getQueueWaitTime95thPercentile();
+
+    /** @return the mean time to open a connection. */
+    double getMeanConnectTime();
+
+    /** @return the 95th percentile of the time to open a connection. */
+    double getConnectTime95thPercentile();
+
+    /** @return the mean time to request and read a resource once connected. */
+    double getMeanTransferTime();
+
+    /** @return the 95th percentile of the time to request and read a resource once connected. */
+    double getTransferTime95thPercentile();
+
+    /** @return the mean time to post-process a resource, including writing it to the file cache. */
+    double getMeanPostProcessingTime();
+
+    /** @return the mean time to write a resource to the file cache. */
+    double getMeanCacheWriteTime();
+
+    /** @return a summary of the retrievals of each layer or elevation model. */
+    String[] getLayerStatistics();
+
+    /** @return a summary of the retrievals from each host. */
+    String[] getHostStatistics();
+
+    /** Discards all recorded statistics. */
+    void reset();
+}
@@ -49,6 +49,10 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
     protected long submitTime;
     protected long beginTime;
     protected long endTime;
+    protected long connectTime;
+    protected long transferTime;
+    protected long postProcessingTime;
+    protected long cacheWriteTime;
 
     /**
      * Create the appropriate retriever for a URL's protocol.
@@ -223,6 +227,59 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
         this.endTime = endTime;
     }
 
+    /**
+     * Indicates the time taken to open the connection to the resource. For HTTP connections this includes resolving
+     * the host and establishing the TCP connection, but not sending the request.
+     *
+     * @return the connection time in nanoseconds, or 0 if the connection was not opened.
+     */
+    public long getConnectTime()
+    {
+        return this.connectTime;
+    }
+
+    /**
+     * Indicates the time taken to request the resource and read it once the connection is open.
+     *
+     * @return the transfer time in nanoseconds, or 0 if the resource was not read.
+     */
+    public long getTransferTime()
+    {
+        return this.transferTime;
+    }
+
+    /**
+     * Indicates the time taken by the post-processor, including the time it took to write the resource to the file
+     * cache.
+     *
+     * @return the post-processing time in nanoseconds.
+     */
+    public long getPostProcessingTime()
+    {
+        return this.postProcessingTime;
+    }
+
+    /**
+     * Indicates the time the post-processor took to write the resource to the file cache.
+     *
+     * @return the cache write time in nanoseconds, or 0 if the resource was not written.
+     */
+    public long getCacheWriteTime()
+    {
+        return this.cacheWriteTime;
+    }
+
+    /**
+     * Adds to the time taken to write the resource to the file cache. Called by post-processors, which may write more
+     * than one file.
+     *
+     * @param nanos the time to add, in nanoseconds.
+     */
+    public void addCacheWriteTime(long nanos)
+    {
+        this.cacheWriteTime += nanos;
+    }
+
     public final Retriever call() throws Exception
     {
         if (this.interrupted())
@@ -277,7 +334,16 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
         }
         finally
         {
-            this.end();
+            long start = System.nanoTime();
+            try
+            {
+                this.end();
+            }
+            finally
+            {
+                this.postProcessingTime = System.nanoTime() - start;
+                WorldWind.getRetrievalStatistics().record(this);
+            }
         }
 
         return this;
@@ -365,7 +431,13 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
     {
         try
         {
+            long start = System.nanoTime();
+            this.connection.connect();
+            this.connectTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
             ByteBuffer buffer = this.doRead(this.connection);
+            this.transferTime = System.nanoTime() - start;
             if (buffer == null)
                 this.contentLength = 0;
             return buffer;
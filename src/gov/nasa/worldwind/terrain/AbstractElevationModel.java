@@ -15,7 +15,7 @@ import gov.nasa.worldwind.util.*;
 import org.w3c.dom.Element;
 
 import javax.xml.xpath.XPath;
-import java.util.List;
+import java.util.*;
 
 /**
  * @author tag
@@ -151,6 +151,112 @@ abstract public class AbstractElevationModel extends WWObjectImpl implements Ele
         return new double[] {this.getElevations(sector, latLons, targetResolutions[0], elevations)};
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This implementation converts the locations to a list of {@link LatLon} and delegates to {@link
+     * #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}. Subclasses may override it to
+     * process the locations in bulk.
+     */
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        List<LatLon> latlons = makeLatLonList(latitudes, longitudes);
+        return this.getElevations(sector, latlons, targetResolution, buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This implementation converts the locations to a list of {@link LatLon} and delegates to {@link
+     * #getUnmappedElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}. Subclasses may
+     * override it to process the locations in bulk.
+     */
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        List<LatLon> latlons = makeLatLonList(latitudes, longitudes);
+        return this.getUnmappedElevations(sector, latlons, targetResolution, buffer);
+    }
+
+    /**
+     * Validates the arguments of the bulk elevation methods, throwing an exception if they are invalid.
+     *
+     * @param sector     the sector in question.
+     * @param latitudes  the latitudes of the locations.
+     * @param longitudes the longitudes of the locations.
+     * @param buffer     the output elevations.
+     *
+     * @throws IllegalArgumentException if the sector or any array is null, or if the longitudes or elevations array is
+     *                                  smaller than the latitudes array.
+     */
+    protected static void checkBulkElevationArguments(Sector sector, double[] latitudes, double[] longitudes,
+        double[] buffer)
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (latitudes == null || longitudes == null)
+        {
+            String msg = Logging.getMessage("nullValue.LatitudeOrLongitudeIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (longitudes.length < latitudes.length)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", longitudes.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.ElevationsBufferIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (buffer.length < latitudes.length)
+        {
+            String msg = Logging.getMessage("ElevationModel.ElevationsBufferTooSmall", latitudes.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    protected static List<LatLon> makeLatLonList(double[] latitudes, double[] longitudes)
+    {
+        if (latitudes == null || longitudes == null)
+        {
+            String msg = Logging.getMessage("nullValue.LatitudeOrLongitudeIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (longitudes.length < latitudes.length)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", longitudes.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        ArrayList<LatLon> latlons = new ArrayList<LatLon>(latitudes.length);
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            if (Double.isNaN(latitudes[i]) || Double.isNaN(longitudes[i]))
+                latlons.add(null);
+            else
+                latlons.add(LatLon.fromDegrees(latitudes[i], longitudes[i]));
+        }
+
+        return latlons;
+    }
+
     public double[] getBestResolutions(Sector sector)
     {
         return new double[] {this.getBestResolution(sector)};
@@ -26,6 +26,7 @@ import java.io.*;
 import java.net.*;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 // Implementation notes, not for API doc:
 //
@@ -66,6 +67,11 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     protected boolean extremesCachingEnabled = true;
     protected BufferWrapper extremes = null;
     protected MemoryCache extremesLookupCache;
+    protected OffHeapBufferStore offHeapTileStore;
+    protected static OffHeapBufferStore sharedOffHeapTileStore;
+    /** The heap size charged to the memory cache for a tile whose elevations are held by the off-heap tile store. */
+    protected static final long OFF_HEAP_TILE_SIZE_IN_BYTES = 256;
+    protected ForkJoinPool bulkElevationsPool;
     // Model resource properties.
     protected static final int RESOURCE_ID_OGC_CAPABILITIES = 1;
 
@@ -132,6 +138,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             this.setValue(AVKey.SECTOR, this.levels.getSector());
 
         this.memoryCache = this.createMemoryCache(ElevationTile.class.getName());
+        this.offHeapTileStore = getSharedOffHeapTileStore();
 
         this.setValue(AVKey.CONSTRUCTION_PARAMETERS, params.copy());
 
@@ -223,13 +230,103 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         else
         {
             long size = Configuration.getLongValue(AVKey.ELEVATION_TILE_CACHE_SIZE, 20000000L);
-            MemoryCache mc = new BasicMemoryCache((long) (0.85 * size), size);
+            MemoryCache mc = WorldWind.createMemoryCache((long) (0.85 * size), size);
             mc.setName("Elevation Tiles");
             WorldWind.getMemoryCacheSet().addCache(cacheName, mc);
             return mc;
         }
     }
 
+    /**
+     * Returns the store this elevation model uses to hold tile elevations outside the Java heap. By default this is a
+     * store shared by all elevation models and sized by the configuration property {@link
+     * AVKey#ELEVATION_TILE_OFF_HEAP_CACHE_SIZE}, or null if that property is not set.
+     *
+     * @return the off-heap tile store, or null if tile elevations are held on the heap.
+     */
+    public OffHeapBufferStore getOffHeapTileStore()
+    {
+        return this.offHeapTileStore;
+    }
+
+    /**
+     * Specifies the store this elevation model uses to hold tile elevations outside the Java heap. Tiles already in
+     * memory are unaffected. A null store causes subsequently loaded tiles to be held on the heap.
+     *
+     * @param store the off-heap tile store. May be null.
+     */
+    public void setOffHeapTileStore(OffHeapBufferStore store)
+    {
+        this.offHeapTileStore = store;
+    }
+
+    /**
+     * Returns the off-heap tile store shared by all elevation models, creating it on first use if the configuration
+     * property {@link AVKey#ELEVATION_TILE_OFF_HEAP_CACHE_SIZE} specifies a positive size. Tiles whose elevations
+     * are evicted from the store stay in the elevation tile memory cache with a heap copy of their elevations, which
+     * lets the store reuse the direct memory once no reader still holds the evicted elevations. Conversely, tiles
+     * removed from the memory cache release their elevations from the store.
+     *
+     * @return the shared off-heap tile store, or null if off-heap storage is not configured.
+     */
+    protected static synchronized OffHeapBufferStore getSharedOffHeapTileStore()
+    {
+        if (sharedOffHeapTileStore == null)
+        {
+            long size = Configuration.getLongValue(AVKey.ELEVATION_TILE_OFF_HEAP_CACHE_SIZE, 0L);
+            if (size <= 0)
+                return null;
+
+            sharedOffHeapTileStore = new OffHeapBufferStore(size);
+            sharedOffHeapTileStore.setName("Elevation Tiles");
+            sharedOffHeapTileStore.addCacheListener(new MemoryCache.CacheListener()
+            {
+                public void entryRemoved(Object key, Object clientObject)
+                {
+                    String cacheName = ElevationTile.class.getName();
+                    if (!WorldWind.getMemoryCacheSet().containsCache(cacheName))
+                        return;
+
+                    MemoryCache cache = WorldWind.getMemoryCache(cacheName);
+                    Object o = cache.getObject(key);
+                    if (!(o instanceof ElevationTile) || ((ElevationTile) o).getElevations() != clientObject)
+                        return;
+
+                    // Move the cached tile's elevations back to the heap and charge the memory cache for them.
+                    ElevationTile tile = (ElevationTile) o;
+                    tile.elevations = OffHeapBufferStore.heapCopyOf((BufferWrapper) clientObject);
+                    cache.add(key, tile, tile.elevations.getSizeInBytes());
+                }
+
+                public void removalException(Throwable exception, Object key, Object clientObject)
+                {
+                    Logging.logger().finest(exception.getMessage());
+                }
+            });
+
+            String cacheName = ElevationTile.class.getName();
+            if (WorldWind.getMemoryCacheSet().containsCache(cacheName))
+            {
+                WorldWind.getMemoryCache(cacheName).addCacheListener(new MemoryCache.CacheListener()
+                {
+                    public void entryRemoved(Object key, Object clientObject)
+                    {
+                        // Release the tile's elevations only if the store still holds them, and not a newer tile's.
+                        if (clientObject instanceof ElevationTile)
+                            sharedOffHeapTileStore.remove(key, ((ElevationTile) clientObject).getElevations());
+                    }
+
+                    public void removalException(Throwable exception, Object key, Object clientObject)
+                    {
+                        Logging.logger().finest(exception.getMessage());
+                    }
+                });
+            }
+        }
+
+        return sharedOffHeapTileStore;
+    }
+
     public LevelSet getLevels()
     {
         return this.levels;
@@ -512,11 +609,31 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 
     protected void addTileToCache(ElevationTile tile, BufferWrapper elevations)
     {
-        // Level 0 tiles are held in the model itself; other levels are placed in the memory cache.
+        // Level 0 tiles are held in the model itself; other levels are placed in the memory cache. When an off-heap
+        // store is configured, the elevations of non level 0 tiles move to direct memory and the tile in the memory
+        // cache holds only a view of them, so the memory cache is charged only for the tile and the view. The
+        // elevations stay on the heap if the store has no room.
         if (tile.getLevelNumber() == 0)
+        {
             this.levelZeroTiles.put(tile.getTileKey(), tile);
+        }
         else
-            this.getMemoryCache().add(tile.getTileKey(), tile, elevations.getSizeInBytes());
+        {
+            long size = elevations.getSizeInBytes();
+
+            OffHeapBufferStore store = this.getOffHeapTileStore();
+            if (store != null && tile.getElevations() == elevations)
+            {
+                BufferWrapper offHeapElevations = store.put(tile.getTileKey(), elevations);
+                if (offHeapElevations != null)
+                {
+                    tile.elevations = offHeapElevations;
+                    size = OFF_HEAP_TILE_SIZE_IN_BYTES;
+                }
+            }
+
+            this.getMemoryCache().add(tile.getTileKey(), tile, size);
+        }
     }
 
     protected boolean areElevationsInMemory(TileKey key)
@@ -533,8 +650,16 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     {
         if (tileKey.getLevelNumber() == 0)
             return this.levelZeroTiles.get(tileKey);
-        else
-            return (ElevationTile) this.getMemoryCache().getObject(tileKey);
+
+        ElevationTile tile = (ElevationTile) this.getMemoryCache().getObject(tileKey);
+
+        // Count the lookup against the off-heap store. A tile whose elevations are in the store is marked as recently
+        // used there; a missing tile, or one whose elevations are on the heap, counts as a miss.
+        OffHeapBufferStore store = this.getOffHeapTileStore();
+        if (store != null)
+            store.access(tileKey, tile != null ? tile.getElevations() : null);
+
+        return tile;
     }
 
     // Read elevations from the file cache. Don't be confused by the use of a URL here: it's used so that files can
@@ -847,7 +972,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             return;
         }
 
-        if (!WorldWind.getRetrievalService().isAvailable())
+        if (!WorldWind.getRetrievalService().isAvailable(0d))
             return;
 
         java.net.URL url = null;
@@ -1144,6 +1269,406 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         }
     }
 
+    /**
+     * Computes elevations for locations given as arrays of latitudes and longitudes in degrees. The computation
+     * produces exactly the values {@link Elevations#getElevation(gov.nasa.worldwind.geom.Angle,
+     * gov.nasa.worldwind.geom.Angle)} and {@link BasicElevationModel#lookupElevation(gov.nasa.worldwind.geom.Angle,
+     * gov.nasa.worldwind.geom.Angle, gov.nasa.worldwind.terrain.BasicElevationModel.ElevationTile)} produce for each
+     * location, in three passes: each location is assigned the tile that contains it, the locations are grouped by
+     * tile, and each tile's group is interpolated in a loop over primitive values.
+     * <p/>
+     * Tile assignment looks up the location's row and column in each tile level's grid rather than testing every tile.
+     * Locations lying on or very near a grid line may be contained by two tiles, and are assigned by testing the tiles
+     * in the same order as <code>Elevations</code> does.
+     */
+    protected static class BulkElevations
+    {
+        /** The minimum number of locations for which a request is divided among the threads of a pool. */
+        public static final int PARALLEL_THRESHOLD = 16384;
+        /** The number of locations processed by each task when a request is divided among threads. */
+        protected static final int TASK_SIZE = 8192;
+        protected static final double DEGREES_TO_RADIANS = Math.PI / 180d;
+        protected static final double GRID_LINE_EPSILON = 1e-9;
+        protected static final int NO_LOCATION = -2;
+        protected static final int NO_TILE = -1;
+
+        /** The tiles of one level, indexed by their row and column. */
+        protected static class TileGrid
+        {
+            protected double originLat;
+            protected double originLon;
+            protected double deltaLat;
+            protected double deltaLon;
+            protected int minRow;
+            protected int minCol;
+            protected int numRows;
+            protected int numCols;
+            protected int[] tileIndices;
+
+            protected int getTileIndex(int row, int col)
+            {
+                int r = row - this.minRow;
+                int c = col - this.minCol;
+                if (r < 0 || r >= this.numRows || c < 0 || c >= this.numCols)
+                    return NO_TILE;
+
+                return this.tileIndices[r * this.numCols + c];
+            }
+        }
+
+        protected final BasicElevationModel model;
+        protected final Sector sector;
+        protected final double[] latitudes;
+        protected final double[] longitudes;
+        protected final double[] buffer;
+        protected final boolean mapMissingData;
+        protected final int count;
+        protected final ElevationTile[] tiles;
+        protected final TileGrid[] grids;
+        protected final int[] assignments;
+        protected int[] order;
+        protected int[] groupStart;
+        protected volatile Double minExtreme;
+
+        public BulkElevations(BasicElevationModel model, Elevations elevations, Sector sector, double[] latitudes,
+            double[] longitudes, double[] buffer, boolean mapMissingData)
+        {
+            this.model = model;
+            this.sector = sector;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.buffer = buffer;
+            this.mapMissingData = mapMissingData;
+            this.count = latitudes.length;
+            this.assignments = new int[this.count];
+
+            // Preserve the iteration order of the tile set, which determines the tile chosen for shared edges.
+            this.tiles = elevations.tiles != null ? elevations.tiles.toArray(new ElevationTile[elevations.tiles.size()])
+                : new ElevationTile[0];
+            this.grids = this.makeGrids(model.getLevels().getTileOrigin());
+        }
+
+        protected TileGrid[] makeGrids(LatLon origin)
+        {
+            ArrayList<TileGrid> gridList = new ArrayList<TileGrid>();
+
+            int start = 0;
+            while (start < this.tiles.length)
+            {
+                int levelNumber = this.tiles[start].getLevelNumber();
+                int end = start;
+                int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+                int minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+                while (end < this.tiles.length && this.tiles[end].getLevelNumber() == levelNumber)
+                {
+                    minRow = Math.min(minRow, this.tiles[end].getRow());
+                    maxRow = Math.max(maxRow, this.tiles[end].getRow());
+                    minCol = Math.min(minCol, this.tiles[end].getColumn());
+                    maxCol = Math.max(maxCol, this.tiles[end].getColumn());
+                    end++;
+                }
+
+                LatLon delta = this.tiles[start].getLevel().getTileDelta();
+                TileGrid grid = new TileGrid();
+                grid.originLat = origin.getLatitude().degrees;
+                grid.originLon = origin.getLongitude().degrees;
+                grid.deltaLat = delta.getLatitude().degrees;
+                grid.deltaLon = delta.getLongitude().degrees;
+                grid.minRow = minRow;
+                grid.minCol = minCol;
+                grid.numRows = maxRow - minRow + 1;
+                grid.numCols = maxCol - minCol + 1;
+                grid.tileIndices = new int[grid.numRows * grid.numCols];
+                Arrays.fill(grid.tileIndices, NO_TILE);
+
+                // Iterate in reverse so that the first of any duplicate tiles is the one recorded.
+                for (int i = end - 1; i >= start; i--)
+                {
+                    int r = this.tiles[i].getRow() - minRow;
+                    int c = this.tiles[i].getColumn() - minCol;
+                    grid.tileIndices[r * grid.numCols + c] = i;
+                }
+
+                gridList.add(grid);
+                start = end;
+            }
+
+            return gridList.toArray(new TileGrid[gridList.size()]);
+        }
+
+        public void compute(ForkJoinPool pool)
+        {
+            if (pool == null || this.count < PARALLEL_THRESHOLD)
+            {
+                this.assignTiles(0, this.count);
+                this.groupByTile();
+                for (int t = 0; t <= this.tiles.length; t++)
+                {
+                    this.computeGroup(t, this.groupStart[t], this.groupStart[t + 1]);
+                }
+                return;
+            }
+
+            pool.invoke(new RecursiveAction()
+            {
+                protected void compute()
+                {
+                    ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+                    for (int start = 0; start < count; start += TASK_SIZE)
+                    {
+                        final int from = start;
+                        final int to = Math.min(start + TASK_SIZE, count);
+                        tasks.add(new RecursiveAction()
+                        {
+                            protected void compute()
+                            {
+                                assignTiles(from, to);
+                            }
+                        });
+                    }
+                    invokeAll(tasks);
+
+                    groupByTile();
+
+                    // Fan out each tile's group, dividing large groups so that the work is evenly spread.
+                    tasks.clear();
+                    for (int t = 0; t <= tiles.length; t++)
+                    {
+                        for (int start = groupStart[t]; start < groupStart[t + 1]; start += TASK_SIZE)
+                        {
+                            final int group = t;
+                            final int from = start;
+                            final int to = Math.min(start + TASK_SIZE, groupStart[t + 1]);
+                            tasks.add(new RecursiveAction()
+                            {
+                                protected void compute()
+                                {
+                                    computeGroup(group, from, to);
+                                }
+                            });
+                        }
+                    }
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        protected void assignTiles(int from, int to)
+        {
+            for (int i = from; i < to; i++)
+            {
+                double lat = this.latitudes[i];
+                double lon = this.longitudes[i];
+
+                if (Double.isNaN(lat) || Double.isNaN(lon))
+                    this.assignments[i] = NO_LOCATION;
+                else
+                    this.assignments[i] = this.findTile(lat, lon);
+            }
+        }
+
+        protected int findTile(double lat, double lon)
+        {
+            for (TileGrid grid : this.grids)
+            {
+                // Compute the grid row and column as Tile.computeRow and Tile.computeColumn do.
+                double rowPosition = (lat - grid.originLat) / grid.deltaLat;
+                double gridLon = lon - grid.originLon;
+                if (gridLon < 0.0)
+                    gridLon = 360d + gridLon;
+                double colPosition = gridLon / grid.deltaLon;
+
+                if (isNearGridLine(rowPosition) || isNearGridLine(colPosition))
+                    return this.findTileInOrder(lat, lon);
+
+                int index = grid.getTileIndex((int) rowPosition, (int) colPosition);
+                if (index != NO_TILE && this.tiles[index].getSector().containsDegrees(lat, lon))
+                    return index;
+            }
+
+            return NO_TILE;
+        }
+
+        protected int findTileInOrder(double lat, double lon)
+        {
+            for (int i = 0; i < this.tiles.length; i++)
+            {
+                if (this.tiles[i].getSector().containsDegrees(lat, lon))
+                    return i;
+            }
+
+            return NO_TILE;
+        }
+
+        protected static boolean isNearGridLine(double position)
+        {
+            double fraction = position - Math.floor(position);
+            return fraction < GRID_LINE_EPSILON || fraction > 1 - GRID_LINE_EPSILON;
+        }
+
+        /**
+         * Sorts the location indices by assigned tile. Group <code>t</code> holds the locations of tile
+         * <code>t</code>, and the last group holds the valid locations not contained by any tile.
+         */
+        protected void groupByTile()
+        {
+            int numGroups = this.tiles.length + 1;
+            int[] counts = new int[numGroups + 1];
+            for (int i = 0; i < this.count; i++)
+            {
+                int a = this.assignments[i];
+                if (a != NO_LOCATION)
+                    counts[(a == NO_TILE ? this.tiles.length : a) + 1]++;
+            }
+
+            for (int g = 0; g < numGroups; g++)
+            {
+                counts[g + 1] += counts[g];
+            }
+
+            this.groupStart = counts.clone();
+            this.order = new int[counts[numGroups]];
+            for (int i = 0; i < this.count; i++)
+            {
+                int a = this.assignments[i];
+                if (a != NO_LOCATION)
+                    this.order[counts[a == NO_TILE ? this.tiles.length : a]++] = i;
+            }
+        }
+
+        protected void computeGroup(int group, int from, int to)
+        {
+            if (from >= to)
+                return;
+
+            if (group == this.tiles.length)
+            {
+                for (int p = from; p < to; p++)
+                {
+                    this.storeElevation(this.order[p], false, 0);
+                }
+                return;
+            }
+
+            ElevationTile tile = this.tiles[group];
+            BufferWrapper elevations = tile.getElevations();
+            Sector sector = tile.getSector();
+            final int tileHeight = tile.getHeight();
+            final int tileWidth = tile.getWidth();
+            final double sectorDeltaLat = sector.getDeltaLat().radians;
+            final double sectorDeltaLon = sector.getDeltaLon().radians;
+            final double maxLat = sector.getMaxLatitude().radians;
+            final double minLon = sector.getMinLongitude().radians;
+            final double dw = sectorDeltaLon / (tileWidth - 1);
+            final double dh = sectorDeltaLat / (tileHeight - 1);
+            final double missingDataSignal = this.model.getMissingDataSignal();
+
+            for (int p = from; p < to; p++)
+            {
+                int index = this.order[p];
+                double value;
+
+                // This is the computation of BasicElevationModel.lookupElevation, on primitive values.
+                try
+                {
+                    final double dLat = maxLat - DEGREES_TO_RADIANS * this.latitudes[index];
+                    final double dLon = DEGREES_TO_RADIANS * this.longitudes[index] - minLon;
+                    final double sLat = dLat / sectorDeltaLat;
+                    final double sLon = dLon / sectorDeltaLon;
+
+                    int j = (int) ((tileHeight - 1) * sLat);
+                    int i = (int) ((tileWidth - 1) * sLon);
+                    int k = j * tileWidth + i;
+
+                    double eLeft = elevations.getDouble(k);
+                    double eRight = i < (tileWidth - 1) ? elevations.getDouble(k + 1) : eLeft;
+
+                    if (missingDataSignal == eLeft || missingDataSignal == eRight)
+                    {
+                        value = missingDataSignal;
+                    }
+                    else
+                    {
+                        double ssLon = (dLon - i * dw) / dw;
+                        double ssLat = (dLat - j * dh) / dh;
+
+                        double eTop = eLeft + ssLon * (eRight - eLeft);
+
+                        boolean missing = false;
+                        if (j < tileHeight - 1 && i < tileWidth - 1)
+                        {
+                            eLeft = elevations.getDouble(k + tileWidth);
+                            eRight = elevations.getDouble(k + tileWidth + 1);
+
+                            missing = missingDataSignal == eLeft || missingDataSignal == eRight;
+                        }
+
+                        if (missing)
+                        {
+                            value = missingDataSignal;
+                        }
+                        else
+                        {
+                            double eBot = eLeft + ssLon * (eRight - eLeft);
+                            value = eTop + ssLat * (eBot - eTop);
+                        }
+                    }
+                }
+                catch (Exception e)
+                {
+                    Logging.logger().log(java.util.logging.Level.SEVERE,
+                        Logging.getMessage("BasicElevationModel.ExceptionComputingElevation",
+                            this.latitudes[index], this.longitudes[index]), e);
+                    this.storeElevation(index, false, 0);
+                    continue;
+                }
+
+                this.storeElevation(index, true, value);
+            }
+        }
+
+        /**
+         * Writes an elevation to the output buffer following the rules of {@link BasicElevationModel#getElevations(gov.nasa.worldwind.geom.Sector,
+         * java.util.List, double, double[], boolean)}.
+         *
+         * @param index    the location's index.
+         * @param hasValue true if a tile provided a value for the location, false if no tile contains the location.
+         * @param value    the tile's value for the location.
+         */
+        protected void storeElevation(int index, boolean hasValue, double value)
+        {
+            double missingDataSignal = this.model.getMissingDataSignal();
+            double missingDataReplacement = this.model.getMissingDataReplacement();
+
+            // Equivalent to AbstractElevationModel.isTransparentValue, which compares boxed values.
+            if ((!hasValue || Double.doubleToLongBits(value) == Double.doubleToLongBits(missingDataSignal))
+                && missingDataReplacement == missingDataSignal)
+                return;
+
+            if (hasValue && value != missingDataSignal)
+            {
+                this.buffer[index] = value;
+            }
+            else if (this.model.contains(Angle.fromDegrees(this.latitudes[index]),
+                Angle.fromDegrees(this.longitudes[index])))
+            {
+                if (!hasValue)
+                    this.buffer[index] = this.getMinExtreme();
+                else if (this.mapMissingData && value == missingDataSignal)
+                    this.buffer[index] = missingDataReplacement;
+            }
+        }
+
+        protected double getMinExtreme()
+        {
+            Double e = this.minExtreme;
+            if (e == null)
+                this.minExtreme = e = this.model.getExtremeElevations(this.sector)[0];
+
+            return e;
+        }
+    }
+
     protected void determineExtremes(double value, double extremes[])
     {
         if (value == this.getMissingDataSignal())
@@ -1273,6 +1798,78 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         return this.getElevations(sector, latlons, targetResolution, buffer, false);
     }
 
+    /**
+     * Returns the fork-join pool used to divide bulk elevation requests among threads.
+     *
+     * @return the pool used for bulk elevation requests, or null if bulk requests are processed on the calling
+     *         thread.
+     *
+     * @see #getElevations(gov.nasa.worldwind.geom.Sector, double[], double[], double, double[])
+     */
+    public ForkJoinPool getBulkElevationsPool()
+    {
+        return this.bulkElevationsPool;
+    }
+
+    /**
+     * Specifies a fork-join pool used to divide large bulk elevation requests among threads. Requests with fewer than
+     * {@link BulkElevations#PARALLEL_THRESHOLD} locations are always processed on the calling thread.
+     *
+     * @param pool the pool used for bulk elevation requests. May be null, in which case bulk requests are processed on
+     *             the calling thread.
+     */
+    public void setBulkElevationsPool(ForkJoinPool pool)
+    {
+        this.bulkElevationsPool = pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This groups the locations by the tile containing them, then interpolates each tile's locations together. If a
+     * {@link #setBulkElevationsPool(java.util.concurrent.ForkJoinPool) bulk elevations pool} is specified, large
+     * requests are divided among its threads.
+     */
+    @Override
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        return this.getElevations(sector, latitudes, longitudes, targetResolution, buffer, true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        return this.getElevations(sector, latitudes, longitudes, targetResolution, buffer, false);
+    }
+
+    protected double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer, boolean mapMissingData)
+    {
+        checkBulkElevationArguments(sector, latitudes, longitudes, buffer);
+
+        Level targetLevel = this.getTargetLevel(sector, targetResolution);
+        if (targetLevel == null)
+            return Double.MAX_VALUE;
+
+        Elevations elevations = this.getElevations(sector, this.levels, targetLevel.getLevelNumber());
+        if (elevations == null)
+            return Double.MAX_VALUE;
+
+        if (this.intersects(sector) == -1)
+            return Double.MAX_VALUE;
+
+        // Mark the model as used this frame.
+        this.setValue(AVKey.FRAME_TIMESTAMP, System.currentTimeMillis());
+
+        new BulkElevations(this, elevations, sector, latitudes, longitudes, buffer, mapMissingData).compute(
+            this.getBulkElevationsPool());
+
+        return elevations.achievedResolution;
+    }
+
     protected double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
         double[] buffer, boolean mapMissingData)
     {
@@ -1627,7 +2224,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         if (this.extremesLookupCache == null)
         {
             long size = Configuration.getLongValue(AVKey.ELEVATION_EXTREMES_LOOKUP_CACHE_SIZE, 20000000L);
-            this.extremesLookupCache = new BasicMemoryCache((long) (0.85 * size), size);
+            this.extremesLookupCache = WorldWind.createMemoryCache((long) (0.85 * size), size);
         }
 
         return this.extremesLookupCache;
@@ -1635,7 +2232,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 
     protected static class ElevationTile extends gov.nasa.worldwind.util.Tile implements Cacheable
     {
-        protected BufferWrapper elevations; // the elevations themselves
+        protected volatile BufferWrapper elevations; // the elevations themselves
         protected long updateTime = 0;
         protected double[] extremes = new double[2];
 
@@ -93,7 +93,11 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
     protected int numRows;
     protected int numCols;
     protected MemoryCache geometryCache;
+    protected ConcurrentHashMap<Sector, FutureTask<RenderInfo>> pendingGeometry =
+        new ConcurrentHashMap<Sector, FutureTask<RenderInfo>>();
     protected ThreadLocal<Long> startTime = new ThreadLocal<Long>();
+    protected int extremesCachingSuspensions;
+    protected boolean suspendedExtremesCachingMode;
 
     /**
      * Constructs a terrain object for a specified globe.
@@ -142,7 +146,7 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
 
         this.computeDimensions();
 
-        this.geometryCache = new BasicMemoryCache((long) (0.85 * DEFAULT_CACHE_CAPACITY), DEFAULT_CACHE_CAPACITY);
+        this.geometryCache = WorldWind.createMemoryCache((long) (0.85 * DEFAULT_CACHE_CAPACITY), DEFAULT_CACHE_CAPACITY);
 //        this.geometryCache.addCacheListener(new MemoryCache.CacheListener()
 //        {
 //            public void entryRemoved(Object key, Object clientObject)
@@ -453,34 +457,33 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
     {
         ExecutorService service = Executors.newFixedThreadPool(10);
 
-        for (int i = 0; i < positions.size(); i += 2)
+        try
         {
-            final Position pA = positions.get(i);
-            final Position pB = positions.get(i + 1);
-
-            service.submit(new Runnable()
+            LineOfSightEngine engine = new LineOfSightEngine(this, service);
+            LineOfSightEngine.Job job = engine.intersect(positions, new LineOfSightEngine.ResultListener()
             {
-                @Override
-                public void run()
+                public void result(int index, Position pA, Position pB, Intersection[] intersections)
+                {
+                    if (intersections != null)
+                        callback.intersection(pA, pB, intersections);
+                }
+
+                public void exception(int index, Position pA, Position pB, Exception exception)
+                {
+                    callback.exception(exception);
+                }
+
+                public void completed()
                 {
-                    try
-                    {
-                        Intersection[] intersections = intersect(pA, pB);
-                        if (intersections != null)
-                        {
-                            callback.intersection(pA, pB, intersections);
-                        }
-                    }
-                    catch (Exception e)
-                    {
-                        callback.exception(e);
-                    }
                 }
             });
-        }
 
-        service.shutdown();
-        service.awaitTermination(100, TimeUnit.DAYS); // wait indefinitely for all threads to complete
+            job.await(); // wait indefinitely for all lines to complete
+        }
+        finally
+        {
+            service.shutdown();
+        }
     }
 
     /**
@@ -593,6 +596,105 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         return sectors;
     }
 
+    /**
+     * Determines the terrain elevations at locations specified as parallel arrays of latitudes and longitudes in
+     * degrees. The elevations are drawn from the globe's elevation model at this terrain's target resolution, or at the
+     * best resolution the elevation model has available within the sector if that is coarser, and the terrain's
+     * vertical exaggeration is applied to them. This method blocks until elevations of that resolution are available
+     * or the current timeout is exceeded.
+     * <p/>
+     * The elevations are retrieved in a single bulk request to the elevation model rather than by constructing the
+     * terrain geometry, so this method is suited to computations that need elevations on a dense grid of locations.
+     * Offsets applied by the globe itself, such as EGM96 geoid offsets, are not included.
+     *
+     * @param sector     a sector containing all of the locations.
+     * @param latitudes  the latitudes, in degrees, of the locations.
+     * @param longitudes the longitudes, in degrees, of the locations. Must contain at least as many elements as the
+     *                   latitudes array.
+     * @param elevations an array in which to return the elevations. Must contain at least as many elements as the
+     *                   latitudes array.
+     *
+     * @throws IllegalArgumentException if the sector or any array is null, or if the longitudes or elevations array is
+     *                                  smaller than the latitudes array.
+     * @throws InterruptedException     if the operation is interrupted.
+     * @throws gov.nasa.worldwind.exception.WWTimeoutException
+     *                                  if the current timeout is exceeded while retrieving terrain data.
+     */
+    public void getElevations(Sector sector, double[] latitudes, double[] longitudes, double[] elevations)
+        throws InterruptedException
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (latitudes == null || longitudes == null || elevations == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (longitudes.length < latitudes.length || elevations.length < latitudes.length)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength",
+                Math.min(longitudes.length, elevations.length));
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        ElevationModel em = this.globe.getElevationModel();
+        if (em == null)
+        {
+            Arrays.fill(elevations, 0, latitudes.length, 0d);
+            return;
+        }
+
+        try
+        {
+            this.startTime.set(System.currentTimeMillis());
+
+            if (this.useCachedElevationsOnly)
+            {
+                for (int i = 0; i < latitudes.length; i++)
+                {
+                    double elevation = em.getUnmappedLocalSourceElevation(Angle.fromDegrees(latitudes[i]),
+                        Angle.fromDegrees(longitudes[i]));
+                    elevations[i] = elevation != em.getMissingDataSignal() ? elevation : em.getMissingDataReplacement();
+                }
+            }
+            else
+            {
+                double targetResolution = Math.max(em.getBestResolution(sector), this.targetResolution);
+                while (em.getElevations(sector, latitudes, longitudes, targetResolution, elevations)
+                    > targetResolution)
+                {
+                    // Give the system a chance to retrieve data from the disk cache or the server. Also catches
+                    // interrupts and throws interrupt exceptions.
+                    Thread.sleep(this.timeout == null ? 5L : Math.min(this.timeout, 5L));
+
+                    Long timeout = this.getTimeout();
+                    if (timeout != null && System.currentTimeMillis() - this.startTime.get() > timeout)
+                        throw new WWTimeoutException("Terrain convergence timed out");
+                }
+            }
+
+            if (this.verticalExaggeration != 1)
+            {
+                for (int i = 0; i < latitudes.length; i++)
+                {
+                    elevations[i] *= this.verticalExaggeration;
+                }
+            }
+        }
+        finally
+        {
+            this.startTime.set(null); // signals that no operation is active
+        }
+    }
+
     /** Computes the row and column dimensions of the tile array. */
     protected void computeDimensions()
     {
@@ -820,8 +922,7 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
     {
         // Turn off elevation min/max caching in the elevation model because searching for the intersecting tiles
         // generates a lot of elevation min/max request that often overflows the elevation model's cache.
-        boolean oldCachingMode = this.getGlobe().getElevationModel().isExtremesCachingEnabled();
-        this.getGlobe().getElevationModel().setExtremesCachingEnabled(false);
+        this.suspendExtremesCaching();
 
         try
         {
@@ -852,10 +953,31 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         }
         finally
         {
-            this.getGlobe().getElevationModel().setExtremesCachingEnabled(oldCachingMode);
+            this.resumeExtremesCaching();
         }
     }
 
+    /**
+     * Turns off elevation min/max caching in the globe's elevation model until a matching call to {@link
+     * #resumeExtremesCaching()}. Calls may be nested and may be made from multiple threads; the elevation model's
+     * caching mode is restored only when the last suspension ends.
+     */
+    protected synchronized void suspendExtremesCaching()
+    {
+        if (this.extremesCachingSuspensions++ == 0)
+        {
+            this.suspendedExtremesCachingMode = this.getGlobe().getElevationModel().isExtremesCachingEnabled();
+            this.getGlobe().getElevationModel().setExtremesCachingEnabled(false);
+        }
+    }
+
+    /** Ends a suspension of elevation min/max caching started by {@link #suspendExtremesCaching()}. */
+    protected synchronized void resumeExtremesCaching()
+    {
+        if (--this.extremesCachingSuspensions == 0)
+            this.getGlobe().getElevationModel().setExtremesCachingEnabled(this.suspendedExtremesCachingMode);
+    }
+
     protected void doGetIntersectingTiles(int r0, int c0, int r1, int c1, Line line, List<RectTile> tiles)
     {
         double minLat = this.sector.getMinLatitude().degrees + r0 * this.latTileSize;
@@ -893,24 +1015,59 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
     }
 
     /**
-     * Computes a terrain tile's vertices of draws them from the cache.
+     * Computes a terrain tile's vertices of draws them from the cache. When several threads need the same tile at once,
+     * one thread computes its vertices and the others wait for and share the result.
      *
      * @param tile the tile to compute vertices for
      *
      * @throws InterruptedException                            if the operation is interrupted.
      * @throws gov.nasa.worldwind.exception.WWTimeoutException if terrain data retrieval exceeds the current timeout.
      */
-    protected void makeVerts(RectTile tile) throws InterruptedException
+    protected void makeVerts(final RectTile tile) throws InterruptedException
     {
         // First see if the vertices have been previously computed and are in the cache.
         tile.ri = (RenderInfo) this.geometryCache.getObject(tile.sector);
         if (tile.ri != null)
             return;
 
-        tile.ri = this.buildVerts(tile);
-        if (tile.ri != null)
+        FutureTask<RenderInfo> task = new FutureTask<RenderInfo>(new Callable<RenderInfo>()
+        {
+            public RenderInfo call() throws Exception
+            {
+                RenderInfo ri = buildVerts(tile);
+                if (ri != null)
+                    geometryCache.add(tile.sector, ri, ri.getSizeInBytes());
+
+                return ri;
+            }
+        });
+
+        FutureTask<RenderInfo> pending = this.pendingGeometry.putIfAbsent(tile.sector, task);
+        if (pending == null)
         {
-            this.geometryCache.add(tile.sector, tile.ri, tile.ri.getSizeInBytes());
+            pending = task;
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                this.pendingGeometry.remove(tile.sector, task);
+            }
+        }
+
+        try
+        {
+            tile.ri = pending.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof InterruptedException)
+                throw (InterruptedException) e.getCause();
+            else if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            else
+                throw new WWRuntimeException(e.getCause());
         }
     }
 
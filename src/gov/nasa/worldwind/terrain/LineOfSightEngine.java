@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.Disposable;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.Level;
+
+/**
+ * Computes the intersections of very many lines with a {@link HighResolutionTerrain}. Lines are divided into batches
+ * that run on an executor, and each line's result is passed to a listener as soon as it is computed, so callers can
+ * consume results while the remaining lines are still being processed. The engine requires no rendering context and
+ * may be used in headless applications.
+ * <p/>
+ * Before the lines are divided into batches they are ordered by the location of their midpoints along a space-filling
+ * curve, so that the lines of a batch tend to cross the same terrain tiles. Terrain tile geometry is shared among all
+ * threads through the terrain's geometry cache, and a tile needed by several threads at once is computed only once.
+ * <p/>
+ * The engine's operations return a {@link Job} that may be used to wait for or cancel the operation. Listener methods
+ * are called on the executor's threads, so listeners must be thread safe. An engine constructed without an executor
+ * creates its own thread pool, which {@link #dispose()} shuts down.
+ *
+ * @version $Id$
+ */
+public class LineOfSightEngine implements Disposable
+{
+    /** The default number of lines processed by each task. */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /** Receives the results of a line of sight operation as they are computed. */
+    public interface ResultListener
+    {
+        /**
+         * Called with the result of one line.
+         *
+         * @param index         the line's index, either the index of the line's position pair or the index of its
+         *                      target position.
+         * @param pA            the line's first position.
+         * @param pB            the line's second position.
+         * @param intersections the line's intersections with the terrain, sorted by distance from the first position,
+         *                      or null if the line does not intersect the terrain.
+         */
+        void result(int index, Position pA, Position pB, Intersection[] intersections);
+
+        /**
+         * Called if an exception occurs while computing the intersections of one line.
+         *
+         * @param index     the line's index.
+         * @param pA        the line's first position.
+         * @param pB        the line's second position.
+         * @param exception the exception thrown.
+         */
+        void exception(int index, Position pA, Position pB, Exception exception);
+
+        /** Called once after the results of all lines have been reported, or after the job has been cancelled. */
+        void completed();
+    }
+
+    /** Represents a line of sight operation in progress. */
+    public static class Job
+    {
+        protected final int numLines;
+        protected final AtomicInteger remainingBatches;
+        protected final AtomicLong numCompleted = new AtomicLong();
+        protected final CountDownLatch done = new CountDownLatch(1);
+        protected volatile boolean cancelled;
+        protected volatile Exception exception;
+
+        protected Job(int numLines, int numBatches)
+        {
+            this.numLines = numLines;
+            this.remainingBatches = new AtomicInteger(numBatches);
+        }
+
+        /**
+         * Indicates the number of lines in this job.
+         *
+         * @return the number of lines.
+         */
+        public int getNumLines()
+        {
+            return this.numLines;
+        }
+
+        /**
+         * Indicates the number of lines whose results have been reported.
+         *
+         * @return the number of completed lines.
+         */
+        public long getNumCompleted()
+        {
+            return this.numCompleted.get();
+        }
+
+        /**
+         * Stops the job. Lines not yet started are not computed, and the listener's <code>completed</code> method is
+         * called once the lines in progress finish.
+         */
+        public void cancel()
+        {
+            this.cancelled = true;
+        }
+
+        public boolean isCancelled()
+        {
+            return this.cancelled;
+        }
+
+        public boolean isDone()
+        {
+            return this.done.getCount() == 0;
+        }
+
+        /**
+         * Indicates the exception that prevented this job from computing all its lines, such as the {@link
+         * RejectedExecutionException} thrown when the engine's executor has been shut down. A job that fails this way
+         * is cancelled, and its listener's <code>completed</code> method is still called.
+         *
+         * @return the exception that stopped the job, or null if the job has not failed.
+         */
+        public Exception getException()
+        {
+            return this.exception;
+        }
+
+        /**
+         * Waits for the job to complete.
+         *
+         * @throws InterruptedException if the current thread is interrupted while waiting.
+         */
+        public void await() throws InterruptedException
+        {
+            this.done.await();
+        }
+
+        /**
+         * Waits at most a specified time for the job to complete.
+         *
+         * @param timeout the maximum time to wait.
+         * @param unit    the unit of the timeout.
+         *
+         * @return true if the job completed, false if the timeout elapsed first.
+         *
+         * @throws InterruptedException if the current thread is interrupted while waiting.
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            return this.done.await(timeout, unit);
+        }
+    }
+
+    protected final HighResolutionTerrain terrain;
+    protected final ExecutorService executor;
+    protected final boolean ownsExecutor;
+    protected int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Constructs an engine that runs on a fixed pool of daemon threads, one per available processor. The pool is shut
+     * down by {@link #dispose()}.
+     *
+     * @param terrain the terrain to intersect.
+     *
+     * @throws IllegalArgumentException if the terrain is null.
+     */
+    public LineOfSightEngine(HighResolutionTerrain terrain)
+    {
+        this(terrain, createDefaultExecutor(), true);
+    }
+
+    /**
+     * Constructs an engine that runs on a specified executor. The engine does not shut down the executor.
+     *
+     * @param terrain  the terrain to intersect.
+     * @param executor the executor on which to compute intersections.
+     *
+     * @throws IllegalArgumentException if the terrain or the executor is null.
+     */
+    public LineOfSightEngine(HighResolutionTerrain terrain, ExecutorService executor)
+    {
+        this(terrain, executor, false);
+    }
+
+    protected LineOfSightEngine(HighResolutionTerrain terrain, ExecutorService executor, boolean ownsExecutor)
+    {
+        if (terrain == null)
+        {
+            String msg = Logging.getMessage("nullValue.TerrainIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (executor == null)
+        {
+            String msg = Logging.getMessage("nullValue.ExecutorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.terrain = terrain;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    protected static ExecutorService createDefaultExecutor()
+    {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Shuts down the thread pool this engine created, if any. Jobs already started run to completion, and jobs started
+     * afterwards fail with a {@link RejectedExecutionException}. An executor passed to the constructor is not shut
+     * down.
+     */
+    public void dispose()
+    {
+        if (this.ownsExecutor)
+            this.executor.shutdown();
+    }
+
+    public HighResolutionTerrain getTerrain()
+    {
+        return this.terrain;
+    }
+
+    public ExecutorService getExecutor()
+    {
+        return this.executor;
+    }
+
+    public int getBatchSize()
+    {
+        return this.batchSize;
+    }
+
+    /**
+     * Specifies the number of lines processed by each task.
+     *
+     * @param batchSize the batch size.
+     *
+     * @throws IllegalArgumentException if the batch size is less than 1.
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize < 1)
+        {
+            String msg = Logging.getMessage("generic.SizeOutOfRange", batchSize);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Intersects a list of two-position lines with the terrain. The first line is formed by positions[0] and
+     * positions[1], the second by positions[2] and positions[3], and so on. The index passed to the listener for a line
+     * is the index of its pair, i.e. half the index of its first position. Position altitudes are relative to the
+     * terrain.
+     *
+     * @param positions the line positions.
+     * @param listener  the listener to receive the results.
+     *
+     * @return the job computing the intersections.
+     *
+     * @throws IllegalArgumentException if the positions or the listener are null, or the number of positions is odd.
+     */
+    public Job intersect(List<Position> positions, ResultListener listener)
+    {
+        if (positions == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionsListIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (positions.size() % 2 != 0)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", positions.size());
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return this.doIntersect(positions, listener);
+    }
+
+    /**
+     * Intersects the lines from a common origin to each of a list of targets with the terrain. This is the form of a
+     * viewshed computation. The index passed to the listener for a line is the index of its target. Position altitudes
+     * are relative to the terrain.
+     *
+     * @param origin   the position common to all lines, typically the observer.
+     * @param targets  the lines' second positions.
+     * @param listener the listener to receive the results.
+     *
+     * @return the job computing the intersections.
+     *
+     * @throws IllegalArgumentException if the origin, the targets or the listener are null.
+     */
+    public Job intersect(final Position origin, final List<Position> targets, ResultListener listener)
+    {
+        if (origin == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (targets == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionsListIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Present the lines as position pairs without copying the targets.
+        List<Position> positions = new AbstractList<Position>()
+        {
+            public Position get(int index)
+            {
+                return index % 2 == 0 ? origin : targets.get(index / 2);
+            }
+
+            public int size()
+            {
+                return 2 * targets.size();
+            }
+        };
+
+        return this.doIntersect(positions, listener);
+    }
+
+    protected Job doIntersect(final List<Position> positions, final ResultListener listener)
+    {
+        if (listener == null)
+        {
+            String msg = Logging.getMessage("nullValue.ListenerIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        final int numLines = positions.size() / 2;
+        final int[] order = this.computeLineOrder(positions);
+        int numBatches = (numLines + this.batchSize - 1) / this.batchSize;
+
+        final Job job = new Job(numLines, numBatches);
+        if (numBatches == 0)
+        {
+            this.completeJob(job, listener);
+            return job;
+        }
+
+        int numSubmitted = 0;
+        try
+        {
+            for (int start = 0; start < numLines; start += this.batchSize)
+            {
+                final int from = start;
+                final int to = Math.min(start + this.batchSize, numLines);
+
+                this.executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            intersectBatch(positions, order, from, to, job, listener);
+                        }
+                        finally
+                        {
+                            if (job.remainingBatches.decrementAndGet() == 0)
+                                completeJob(job, listener);
+                        }
+                    }
+                });
+                numSubmitted++;
+            }
+        }
+        catch (RejectedExecutionException e)
+        {
+            // The rejected batches never run, so they are no longer awaited. The job fails and completes once the
+            // batches already submitted finish.
+            String msg = Logging.getMessage("LineOfSightEngine.BatchesRejected", numBatches - numSubmitted, numBatches);
+            Logging.logger().log(Level.SEVERE, msg, e);
+            job.exception = e;
+            job.cancel();
+            if (job.remainingBatches.addAndGet(numSubmitted - numBatches) == 0)
+                this.completeJob(job, listener);
+        }
+
+        return job;
+    }
+
+    protected void intersectBatch(List<Position> positions, int[] order, int from, int to, Job job,
+        ResultListener listener)
+    {
+        for (int k = from; k < to; k++)
+        {
+            if (job.isCancelled() || Thread.currentThread().isInterrupted())
+                return;
+
+            int index = order[k];
+            Position pA = positions.get(2 * index);
+            Position pB = positions.get(2 * index + 1);
+
+            Intersection[] intersections;
+            try
+            {
+                intersections = this.terrain.intersect(pA, pB);
+            }
+            catch (Exception e)
+            {
+                job.numCompleted.incrementAndGet();
+                listener.exception(index, pA, pB, e);
+                continue;
+            }
+
+            job.numCompleted.incrementAndGet();
+            listener.result(index, pA, pB, intersections);
+        }
+    }
+
+    protected void completeJob(Job job, ResultListener listener)
+    {
+        try
+        {
+            listener.completed();
+        }
+        finally
+        {
+            job.done.countDown();
+        }
+    }
+
+    /**
+     * Orders lines by the location of their midpoints along a Z-order curve over the terrain's sector, so that
+     * consecutive lines are near each other and tend to use the same terrain tiles.
+     *
+     * @param positions the line positions.
+     *
+     * @return the line indices in processing order.
+     */
+    protected int[] computeLineOrder(List<Position> positions)
+    {
+        int numLines = positions.size() / 2;
+        Sector sector = this.terrain.getSector();
+        double minLat = sector.getMinLatitude().degrees;
+        double minLon = sector.getMinLongitude().degrees;
+        double latScale = 65535 / Math.max(sector.getDeltaLatDegrees(), Double.MIN_VALUE);
+        double lonScale = 65535 / Math.max(sector.getDeltaLonDegrees(), Double.MIN_VALUE);
+
+        // Each key holds the midpoint's curve position in its upper half and the line index in its lower half.
+        long[] keys = new long[numLines];
+        for (int i = 0; i < numLines; i++)
+        {
+            Position pA = positions.get(2 * i);
+            Position pB = positions.get(2 * i + 1);
+
+            long code = 0;
+            if (pA != null && pB != null)
+            {
+                double lat = 0.5 * (pA.getLatitude().degrees + pB.getLatitude().degrees);
+                double lon = 0.5 * (pA.getLongitude().degrees + pB.getLongitude().degrees);
+                int y = (int) Math.max(0, Math.min(65535, (lat - minLat) * latScale));
+                int x = (int) Math.max(0, Math.min(65535, (lon - minLon) * lonScale));
+                code = interleaveBits(x, y);
+            }
+
+            keys[i] = (code << 32) | i;
+        }
+
+        Arrays.sort(keys);
+
+        int[] order = new int[numLines];
+        for (int i = 0; i < numLines; i++)
+        {
+            order[i] = (int) keys[i];
+        }
+
+        return order;
+    }
+
+    /**
+     * Interleaves the bits of two 16-bit values, forming a Z-order curve position.
+     *
+     * @param x the value whose bits occupy the even bit positions.
+     * @param y the value whose bits occupy the odd bit positions.
+     *
+     * @return the interleaved 32-bit value.
+     */
+    protected static long interleaveBits(int x, int y)
+    {
+        return spreadBits(x) | (spreadBits(y) << 1);
+    }
+
+    protected static long spreadBits(int v)
+    {
+        long x = v & 0xffffL;
+        x = (x | (x << 8)) & 0x00ff00ffL;
+        x = (x | (x << 4)) & 0x0f0f0f0fL;
+        x = (x | (x << 2)) & 0x33333333L;
+        x = (x | (x << 1)) & 0x55555555L;
+        return x;
+    }
+}
@@ -7,19 +7,30 @@ package gov.nasa.worldwind.terrain;
 
 import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.data.*;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.Earth;
 import gov.nasa.worldwind.util.*;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Implements an elevation model for a local file or collection of files containing elevation data.
  * <p/>
+ * The rasters are indexed by a uniform grid over the sectors they cover, so locating the raster containing a location
+ * does not depend on the number of rasters. When several rasters contain a location, the raster added first is used,
+ * as it always has been. Rasters may be added while other threads query the model.
+ * <p/>
+ * By default the elevations of each file are read when the file is added. When {@link #setLazyLoadingEnabled(boolean)
+ * lazy loading} is enabled, only the file's metadata is read when it's added, and its elevations are read the first
+ * time they're needed and kept in a bounded {@link #getRasterCache() raster cache}. This allows a model to span many
+ * more rasters than fit in memory.
+ * <p/>
  * Note: Unless the amount of data associated with the local elevation models is small, it's best to construct and add
  * elevations to a local elevation model on a thread other than the event dispatch thread in order to avoid freezing the
  * user interface.
@@ -29,10 +40,25 @@ import java.util.concurrent.CopyOnWriteArrayList;
  */
 public class LocalElevationModel extends AbstractElevationModel
 {
+    /** The minimum number of locations for which a bulk request is divided among the threads of a pool. */
+    public static final int BULK_PARALLEL_THRESHOLD = 16384;
+    /** The number of locations processed by each task when a bulk request is divided among threads. */
+    protected static final int BULK_TASK_SIZE = 8192;
+    /** The default capacity of the cache holding lazily loaded elevations, in bytes. */
+    protected static final long DEFAULT_RASTER_CACHE_CAPACITY = 256L << 20;
+    protected static final double DEGREES_TO_RADIANS = Math.PI / 180d;
+
     /** The min and max elevations. */
     protected double[] extremeElevations = null;
     /** The list of elevation rasters, one per file specified. */
     protected CopyOnWriteArrayList<LocalTile> tiles = new CopyOnWriteArrayList<LocalTile>();
+    /** The spatial index of the tiles, or null if it must be rebuilt because tiles were added. */
+    protected volatile TileIndex tileIndex;
+    protected final Object tileIndexLock = new Object();
+    protected boolean lazyLoadingEnabled = false;
+    protected MemoryCache rasterCache = new SegmentedMemoryCache((long) (0.8 * DEFAULT_RASTER_CACHE_CAPACITY),
+        DEFAULT_RASTER_CACHE_CAPACITY);
+    protected ForkJoinPool bulkElevationsPool;
 
     public double getMinElevation()
     {
@@ -45,24 +71,99 @@ public class LocalElevationModel extends AbstractElevationModel
     }
 
     /**
-     * Returns the sector spanned by this elevation model.
+     * Indicates whether files added to this model have their elevations read when they're first needed rather than
+     * when they're added.
      *
-     * @return the sector spanned by this elevation model.
+     * @return true if elevations are loaded lazily, otherwise false.
+     *
+     * @see #setLazyLoadingEnabled(boolean)
      */
-    public Sector getSector()
+    public boolean isLazyLoadingEnabled()
     {
-        if (this.tiles.size() < 1)
-            return null;
+        return this.lazyLoadingEnabled;
+    }
+
+    /**
+     * Specifies whether files subsequently added to this model have their elevations read when they're first needed
+     * rather than when they're added. When enabled, {@link #addElevations(java.io.File)} reads only the file's
+     * metadata, and the file's elevations are read into the {@link #getRasterCache() raster cache} by the first lookup
+     * that needs them. The file's minimum and maximum elevations are taken from its metadata if present, otherwise
+     * Earth's extreme elevations are assumed until the elevations are read. Files whose metadata does not specify their
+     * sector and dimensions are read when they're added, as are elevations added from a buffer. The default is false.
+     *
+     * @param enabled true to load elevations lazily, false to read them when they're added.
+     */
+    public void setLazyLoadingEnabled(boolean enabled)
+    {
+        this.lazyLoadingEnabled = enabled;
+    }
 
-        Sector sector = null;
+    /**
+     * Returns the cache holding lazily loaded elevations.
+     *
+     * @return the cache of lazily loaded elevations.
+     *
+     * @see #setLazyLoadingEnabled(boolean)
+     */
+    public MemoryCache getRasterCache()
+    {
+        return this.rasterCache;
+    }
 
-        for (LocalTile tile : this.tiles)
+    /**
+     * Specifies the cache holding lazily loaded elevations. The cache's capacity bounds the memory used by the
+     * elevations of lazily loaded files; the least recently used elevations are read again when they're next needed.
+     * The default cache holds 256 megabytes.
+     *
+     * @param cache the cache of lazily loaded elevations.
+     *
+     * @throws IllegalArgumentException if the cache is null.
+     */
+    public void setRasterCache(MemoryCache cache)
+    {
+        if (cache == null)
         {
-            Sector tileSector = tile.sector;
-            sector = sector == null ? tileSector : sector.union(tileSector);
+            String message = Logging.getMessage("nullValue.CacheIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
         }
 
-        return sector;
+        this.rasterCache = cache;
+    }
+
+    /**
+     * Returns the fork-join pool used to divide bulk elevation requests among threads.
+     *
+     * @return the pool used for bulk elevation requests, or null if bulk requests are processed on the calling
+     *         thread.
+     *
+     * @see #getElevations(gov.nasa.worldwind.geom.Sector, double[], double[], double, double[])
+     */
+    public ForkJoinPool getBulkElevationsPool()
+    {
+        return this.bulkElevationsPool;
+    }
+
+    /**
+     * Specifies a fork-join pool used to divide large bulk elevation requests among threads. Requests with fewer than
+     * {@link #BULK_PARALLEL_THRESHOLD} locations are always processed on the calling thread.
+     *
+     * @param pool the pool used for bulk elevation requests. May be null, in which case bulk requests are processed on
+     *             the calling thread.
+     */
+    public void setBulkElevationsPool(ForkJoinPool pool)
+    {
+        this.bulkElevationsPool = pool;
+    }
+
+    /**
+     * Returns the sector spanned by this elevation model.
+     *
+     * @return the sector spanned by this elevation model.
+     */
+    public Sector getSector()
+    {
+        return this.getTileIndex().sector;
     }
 
     public double[] getExtremeElevations(Angle latitude, Angle longitude)
@@ -80,8 +181,12 @@ public class LocalElevationModel extends AbstractElevationModel
         double min = Double.MAX_VALUE;
         double max = -min;
 
-        for (LocalTile tile : this.tiles)
+        TileIndex index = this.getTileIndex();
+        BitSet candidates = index.getCandidates(latitude.degrees, latitude.degrees, longitude.degrees,
+            longitude.degrees);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
         {
+            LocalTile tile = index.tiles[i];
             if (tile.sector.contains(latitude, longitude))
             {
                 if (tile.minElevation < min)
@@ -111,8 +216,11 @@ public class LocalElevationModel extends AbstractElevationModel
         double min = Double.MAX_VALUE;
         double max = -min;
 
-        for (LocalTile tile : this.tiles)
+        TileIndex index = this.getTileIndex();
+        BitSet candidates = index.getCandidates(sector);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
         {
+            LocalTile tile = index.tiles[i];
             if (tile.sector.intersects(sector))
             {
                 if (tile.minElevation < min)
@@ -129,11 +237,17 @@ public class LocalElevationModel extends AbstractElevationModel
 
     public double getBestResolution(Sector sector)
     {
+        TileIndex index = this.getTileIndex();
+        if (sector == null)
+            return index.bestResolution;
+
         double res = Double.MAX_VALUE;
 
-        for (LocalTile tile : tiles)
+        BitSet candidates = index.getCandidates(sector);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
         {
-            if (sector != null && !sector.intersects(tile.sector))
+            LocalTile tile = index.tiles[i];
+            if (!sector.intersects(tile.sector))
                 continue;
 
             double r = tile.sector.getDeltaLatRadians() / tile.tileHeight;
@@ -187,6 +301,29 @@ public class LocalElevationModel extends AbstractElevationModel
         return this.doGetElevations(sector, latlons, targetResolution, buffer, false);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This looks up each location in this model's tile index directly, without creating a {@link LatLon} for it. If a
+     * {@link #setBulkElevationsPool(java.util.concurrent.ForkJoinPool) bulk elevations pool} is specified, large
+     * requests are divided among its threads. The elevations are identical to those of {@link
+     * #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}.
+     */
+    @Override
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        return this.doGetElevations(sector, latitudes, longitudes, targetResolution, buffer, true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        return this.doGetElevations(sector, latitudes, longitudes, targetResolution, buffer, false);
+    }
+
     /**
      * Performs the lookup and assembly of elevations for a list of specified locations. This method is provided to
      * enable subclasses to override this operation.
@@ -270,6 +407,117 @@ public class LocalElevationModel extends AbstractElevationModel
         return this.getBestResolution(sector);
     }
 
+    /**
+     * Performs the lookup of elevations for arrays of locations. Locations whose latitude or longitude is NaN are
+     * skipped. This method is provided to enable subclasses to override this operation.
+     *
+     * @param sector           the sector containing the specified locations.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired maximum horizontal resolution of the elevation data to draw from.
+     * @param buffer           a buffer in which to return the elevations. Must be at least as large as the latitudes
+     *                         array.
+     * @param mapMissingData   indicates whether to replace any elevations that match this elevation model's missing
+     *                         data signal to this model's missing data replacement value.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     *
+     * @throws IllegalArgumentException if the sector or any array is null, or if the longitudes or elevations array is
+     *                                  smaller than the latitudes array.
+     */
+    @SuppressWarnings( {"UnusedParameters"})
+    protected double doGetElevations(Sector sector, final double[] latitudes, final double[] longitudes,
+        double targetResolution, final double[] buffer, final boolean mapMissingData)
+    {
+        checkBulkElevationArguments(sector, latitudes, longitudes, buffer);
+
+        if (this.intersects(sector) == -1)
+            return Double.MAX_VALUE;
+
+        // Mark the model as used this frame.
+        this.setValue(AVKey.FRAME_TIMESTAMP, System.currentTimeMillis());
+
+        final TileIndex index = this.getTileIndex();
+        final double minElevation = this.getExtremeElevations(sector)[0];
+        final int count = latitudes.length;
+
+        ForkJoinPool pool = this.getBulkElevationsPool();
+        if (pool == null || count < BULK_PARALLEL_THRESHOLD)
+        {
+            this.lookupElevations(index, latitudes, longitudes, buffer, 0, count, minElevation, mapMissingData);
+        }
+        else
+        {
+            pool.invoke(new RecursiveAction()
+            {
+                protected void compute()
+                {
+                    ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+                    for (int start = 0; start < count; start += BULK_TASK_SIZE)
+                    {
+                        final int from = start;
+                        final int to = Math.min(start + BULK_TASK_SIZE, count);
+                        tasks.add(new RecursiveAction()
+                        {
+                            protected void compute()
+                            {
+                                lookupElevations(index, latitudes, longitudes, buffer, from, to, minElevation,
+                                    mapMissingData);
+                            }
+                        });
+                    }
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        return this.getBestResolution(sector);
+    }
+
+    /**
+     * Looks up the elevations of a range of locations, writing them to the buffer as {@link
+     * #doGetElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[], boolean)} does. Several
+     * threads may look up different ranges concurrently.
+     *
+     * @param index          the tile index to search.
+     * @param latitudes      the latitudes of the locations, in degrees.
+     * @param longitudes     the longitudes of the locations, in degrees.
+     * @param buffer         the buffer in which to write the elevations.
+     * @param from           the index of the first location.
+     * @param to             the index following the last location.
+     * @param minElevation   the elevation written for locations whose tile is not available.
+     * @param mapMissingData indicates whether to replace missing data with this model's missing data replacement.
+     */
+    protected void lookupElevations(TileIndex index, double[] latitudes, double[] longitudes, double[] buffer,
+        int from, int to, double minElevation, boolean mapMissingData)
+    {
+        for (int i = from; i < to; i++)
+        {
+            double lat = latitudes[i];
+            double lon = longitudes[i];
+            if (Double.isNaN(lat) || Double.isNaN(lon))
+                continue;
+
+            if (!index.contains(lat, lon))
+                continue;
+
+            // Convert to radians as Angle.fromDegrees does, so that tile selection and interpolation match the list
+            // form of this request exactly.
+            double latRadians = DEGREES_TO_RADIANS * lat;
+            double lonRadians = DEGREES_TO_RADIANS * lon;
+            LocalTile tile = index.findTile(latRadians, lonRadians);
+
+            Double e = tile != null ? this.lookupElevation(tile, latRadians, lonRadians) : null;
+            if (e != null && e != this.missingDataFlag)
+                buffer[i] = e;
+            if (e == null)
+                buffer[i] = minElevation;
+            else if (mapMissingData && e == this.missingDataFlag)
+                buffer[i] = this.getMissingDataReplacement();
+        }
+    }
+
     /**
      * Adds the specified elevation data to this elevation model.
      *
@@ -294,7 +542,8 @@ public class LocalElevationModel extends AbstractElevationModel
     }
 
     /**
-     * Adds the specified elevation data to this elevation model.
+     * Adds the specified elevation data to this elevation model. If {@link #setLazyLoadingEnabled(boolean) lazy
+     * loading} is enabled and the file's metadata specifies its sector and dimensions, only the metadata is read.
      *
      * @param file the file containing the elevation data.
      *
@@ -322,9 +571,7 @@ public class LocalElevationModel extends AbstractElevationModel
         }
 
         // Create a raster reader for the file type.
-        DataRasterReaderFactory readerFactory = (DataRasterReaderFactory) WorldWind.createConfigurationComponent(
-            AVKey.DATA_RASTER_READER_FACTORY_CLASS_NAME);
-        DataRasterReader reader = readerFactory.findReaderFor(file, null);
+        DataRasterReader reader = this.findReader(file);
 
         // Before reading the raster, verify that the file contains elevations.
         AVList metadata = reader.readMetadata(file, null);
@@ -335,6 +582,9 @@ public class LocalElevationModel extends AbstractElevationModel
             throw new IllegalArgumentException(msg);
         }
 
+        if (this.isLazyLoadingEnabled() && this.addLazyTile(file, metadata))
+            return;
+
         // Read the file into the raster.
         DataRaster[] rasters = reader.read(file, null);
         if (rasters == null || rasters.length == 0)
@@ -350,6 +600,35 @@ public class LocalElevationModel extends AbstractElevationModel
         }
     }
 
+    /**
+     * Adds a tile whose elevations are read from a file when they're first needed.
+     *
+     * @param file     the file containing the elevations.
+     * @param metadata the file's metadata.
+     *
+     * @return true if the tile was added, or false if the metadata does not specify the file's sector and dimensions.
+     */
+    protected boolean addLazyTile(File file, AVList metadata)
+    {
+        Object sector = metadata.getValue(AVKey.SECTOR);
+        Object width = metadata.getValue(AVKey.WIDTH);
+        Object height = metadata.getValue(AVKey.HEIGHT);
+        if (!(sector instanceof Sector) || !(width instanceof Integer) || !(height instanceof Integer))
+            return false;
+
+        Double tileMissingDataFlag = AVListImpl.getDoubleValue(metadata, AVKey.MISSING_DATA_SIGNAL);
+        if (tileMissingDataFlag == null)
+            tileMissingDataFlag = this.getMissingDataSignal();
+
+        Object min = metadata.getValue(AVKey.ELEVATION_MIN);
+        Object max = metadata.getValue(AVKey.ELEVATION_MAX);
+
+        this.addTile(new LocalTile((Sector) sector, tileMissingDataFlag, (Integer) width, (Integer) height, file,
+            min instanceof Double ? (Double) min : null, max instanceof Double ? (Double) max : null));
+
+        return true;
+    }
+
     /**
      * Adds a new raster to this elevation model.
      *
@@ -372,11 +651,35 @@ public class LocalElevationModel extends AbstractElevationModel
             throw new IllegalArgumentException(msg);
         }
 
-        // Request a sub-raster that contains the whole file. This step is necessary because only sub-rasters
-        // are reprojected (if necessary); primary rasters are not.
         int width = raster.getWidth();
         int height = raster.getHeight();
 
+        ByteBuffer elevations = this.createElevationBuffer(raster, width, height, sector, filename);
+
+        this.addElevations(elevations, sector, width, height, raster);
+
+        // Tne primary raster can now be disposed.
+        raster.dispose();
+    }
+
+    /**
+     * Copies a raster's elevations into a new buffer.
+     *
+     * @param raster   the raster.
+     * @param width    the number of elevations in a row of the buffer.
+     * @param height   the number of rows in the buffer.
+     * @param sector   the sector covered by the buffer.
+     * @param filename the filename associated with the raster. Used only for error reporting.
+     *
+     * @return the elevations, in the data type and byte order of the raster.
+     *
+     * @throws WWRuntimeException if the raster cannot create an elevation buffer.
+     */
+    protected ByteBuffer createElevationBuffer(DataRaster raster, int width, int height, Sector sector,
+        String filename)
+    {
+        // Request a sub-raster that contains the whole file. This step is necessary because only sub-rasters
+        // are reprojected (if necessary); primary rasters are not.
         DataRaster subRaster = raster.getSubRaster(width, height, sector, raster);
 
         // Verify that the sub-raster can create a ByteBuffer, then create one.
@@ -391,10 +694,7 @@ public class LocalElevationModel extends AbstractElevationModel
         // The sub-raster can now be disposed. Disposal won't affect the ByteBuffer.
         subRaster.dispose();
 
-        this.addElevations(elevations, sector, width, height, raster);
-
-        // Tne primary raster can now be disposed.
-        raster.dispose();
+        return elevations;
     }
 
     /**
@@ -467,16 +767,60 @@ public class LocalElevationModel extends AbstractElevationModel
         BufferWrapper buffer = BufferWrapper.wrap(byteBuffer, bufferParams);
 
         LocalTile tile = new LocalTile(sector, tileMissingDataFlag, width, height, buffer, minElevation, maxElevation);
-        this.tiles.add(tile);
-        this.adjustMinMax(tile);
+        this.addTile(tile);
+    }
+
+    /**
+     * Adds a tile to this elevation model, invalidating the tile index and updating the model's extreme elevations.
+     *
+     * @param tile the tile to add.
+     */
+    protected void addTile(LocalTile tile)
+    {
+        synchronized (this.tileIndexLock)
+        {
+            this.tiles.add(tile);
+            this.tileIndex = null;
+            this.adjustMinMax(tile);
+        }
+    }
+
+    /**
+     * Returns the spatial index of this model's tiles, building it if tiles have been added since it was last built.
+     *
+     * @return the tile index.
+     */
+    protected TileIndex getTileIndex()
+    {
+        TileIndex index = this.tileIndex;
+        if (index != null && index.tiles.length == this.tiles.size())
+            return index;
+
+        synchronized (this.tileIndexLock)
+        {
+            index = this.tileIndex;
+            if (index == null || index.tiles.length != this.tiles.size())
+            {
+                index = new TileIndex(this.tiles.toArray(new LocalTile[0]));
+                this.tileIndex = index;
+            }
+
+            return index;
+        }
     }
 
     public int intersects(Sector sector)
     {
+        if (sector == null)
+            return -1;
+
         boolean intersects = false;
 
-        for (LocalTile tile : this.tiles)
+        TileIndex index = this.getTileIndex();
+        BitSet candidates = index.getCandidates(sector);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
         {
+            LocalTile tile = index.tiles[i];
             if (tile.sector.contains(sector))
                 return 0;
 
@@ -489,13 +833,7 @@ public class LocalElevationModel extends AbstractElevationModel
 
     public boolean contains(Angle latitude, Angle longitude)
     {
-        for (LocalTile tile : this.tiles)
-        {
-            if (tile.sector.contains(latitude, longitude))
-                return true;
-        }
-
-        return false;
+        return this.getTileIndex().contains(latitude.degrees, longitude.degrees);
     }
 
     /**
@@ -549,6 +887,25 @@ public class LocalElevationModel extends AbstractElevationModel
         if (tile == null)
             return null;
 
+        return this.lookupElevation(tile, latRadians, lonRadians);
+    }
+
+    /**
+     * Interpolates the elevation of a location within a specified tile.
+     *
+     * @param tile       the tile containing the location.
+     * @param latRadians the latitude of the location, in radians.
+     * @param lonRadians the longitude of the location, in radians.
+     *
+     * @return the elevation at the location, this elevation model's missing data flag if that's the value at the
+     *         location, or null if the tile's elevations cannot be read.
+     */
+    protected Double lookupElevation(LocalTile tile, final double latRadians, final double lonRadians)
+    {
+        BufferWrapper elevations = this.getTileElevations(tile);
+        if (elevations == null)
+            return null;
+
         final double sectorDeltaLat = tile.sector.getDeltaLat().radians;
         final double sectorDeltaLon = tile.sector.getDeltaLon().radians;
         final double dLat = tile.sector.getMaxLatitude().radians - latRadians;
@@ -560,8 +917,8 @@ public class LocalElevationModel extends AbstractElevationModel
         int i = (int) ((tile.tileWidth - 1) * sLon);
         int k = j * tile.tileWidth + i;
 
-        double eLeft = tile.elevations.getDouble(k);
-        double eRight = i < (tile.tileWidth - 1) ? tile.elevations.getDouble(k + 1) : eLeft;
+        double eLeft = elevations.getDouble(k);
+        double eRight = i < (tile.tileWidth - 1) ? elevations.getDouble(k + 1) : eLeft;
 
         // Notice that the below test is against the tile flag, but the value returned is the model's flag.
         if (tile.isMissingData(eLeft) || tile.isMissingData(eRight))
@@ -576,8 +933,8 @@ public class LocalElevationModel extends AbstractElevationModel
 
         if (j < tile.tileHeight - 1 && i < tile.tileWidth - 1)
         {
-            eLeft = tile.elevations.getDouble(k + tile.tileWidth);
-            eRight = tile.elevations.getDouble(k + tile.tileWidth + 1);
+            eLeft = elevations.getDouble(k + tile.tileWidth);
+            eRight = elevations.getDouble(k + tile.tileWidth + 1);
 
             // Notice that the below test is against the tile flag, but the value returned is the model's flag.
             if (tile.isMissingData(eLeft) || tile.isMissingData(eRight))
@@ -589,7 +946,8 @@ public class LocalElevationModel extends AbstractElevationModel
     }
 
     /**
-     * Finds the tile in this elevation model that contains a specified location.
+     * Finds the tile in this elevation model that contains a specified location. If several tiles contain the
+     * location, the tile added first is returned.
      *
      * @param latRadians the location's latitude, in radians.
      * @param lonRadians the location's longitude, in radians.
@@ -598,13 +956,101 @@ public class LocalElevationModel extends AbstractElevationModel
      */
     protected LocalTile findTile(final double latRadians, final double lonRadians)
     {
-        for (LocalTile tile : this.tiles)
+        return this.getTileIndex().findTile(latRadians, lonRadians);
+    }
+
+    /**
+     * Returns a tile's elevations. The elevations of a lazily loaded tile are read from its file and added to the
+     * raster cache if they're not already in the cache. Concurrent requests for the same tile read its file once.
+     *
+     * @param tile the tile.
+     *
+     * @return the tile's elevations, or null if they cannot be read.
+     */
+    protected BufferWrapper getTileElevations(LocalTile tile)
+    {
+        if (tile.elevations != null)
+            return tile.elevations;
+
+        if (tile.unavailable)
+            return null;
+
+        MemoryCache cache = this.getRasterCache();
+        BufferWrapper elevations = (BufferWrapper) cache.getObject(tile);
+        if (elevations != null)
+            return elevations;
+
+        synchronized (tile)
         {
-            if (tile.sector.containsRadians(latRadians, lonRadians))
-                return tile;
+            elevations = (BufferWrapper) cache.getObject(tile);
+            if (elevations == null && !tile.unavailable)
+            {
+                try
+                {
+                    elevations = this.readTileElevations(tile);
+                    // Assign the tile's extremes before publishing its elevations through the cache.
+                    if (!tile.extremesKnown)
+                        tile.computeMinMaxElevations(elevations);
+                    cache.add(tile, elevations, elevations.getSizeInBytes());
+                }
+                catch (Exception e)
+                {
+                    // Log the failure once rather than on every lookup within the tile.
+                    tile.unavailable = true;
+                    String msg = Logging.getMessage("ElevationModel.CannotReadElevations", tile.file.getPath());
+                    Logging.logger().log(java.util.logging.Level.SEVERE, msg, e);
+                    return null;
+                }
+            }
         }
 
-        return null;
+        return elevations;
+    }
+
+    /**
+     * Reads the elevations of a lazily loaded tile from its file.
+     *
+     * @param tile the tile.
+     *
+     * @return the tile's elevations.
+     *
+     * @throws IOException        if the file cannot be read.
+     * @throws WWRuntimeException if the file's elevations cannot be interpreted.
+     */
+    protected BufferWrapper readTileElevations(LocalTile tile) throws IOException
+    {
+        DataRaster[] rasters = this.findReader(tile.file).read(tile.file, null);
+        if (rasters == null || rasters.length == 0)
+        {
+            String msg = Logging.getMessage("ElevationModel.CannotReadElevations", tile.file.getAbsolutePath());
+            Logging.logger().severe(msg);
+            throw new WWRuntimeException(msg);
+        }
+
+        DataRaster raster = rasters[0];
+        try
+        {
+            ByteBuffer byteBuffer = this.createElevationBuffer(raster, tile.tileWidth, tile.tileHeight, tile.sector,
+                tile.file.getAbsolutePath());
+
+            AVList bufferParams = new AVListImpl();
+            bufferParams.setValues(raster.copy());
+            return BufferWrapper.wrap(byteBuffer, bufferParams);
+        }
+        finally
+        {
+            for (DataRaster r : rasters)
+            {
+                r.dispose();
+            }
+        }
+    }
+
+    protected DataRasterReader findReader(File file)
+    {
+        DataRasterReaderFactory readerFactory = (DataRasterReaderFactory) WorldWind.createConfigurationComponent(
+            AVKey.DATA_RASTER_READER_FACTORY_CLASS_NAME);
+        return readerFactory.findReaderFor(file, null);
     }
 
     /** An internal class that represents one elevation raster in the elevation model. */
@@ -617,13 +1063,19 @@ public class LocalElevationModel extends AbstractElevationModel
         /** The number of rows in the raster. */
         protected final int tileHeight;
         /** The minimum elevation contained in this tile's raster. */
-        protected double minElevation;
+        protected volatile double minElevation;
         /** The maximum elevation contained in this tile's raster. */
-        protected double maxElevation;
+        protected volatile double maxElevation;
         /** The elevation model's missing data flag. */
         protected final double missingDataFlag;
-        /** The elevations. */
+        /** The elevations, or null if the elevations are read from the tile's file when needed. */
         protected final BufferWrapper elevations;
+        /** The file the elevations are read from, or null if the elevations were specified at construction. */
+        protected final File file;
+        /** Indicates whether the minimum and maximum elevations are those of the raster rather than estimates. */
+        protected volatile boolean extremesKnown;
+        /** Indicates that the tile's file could not be read. */
+        protected volatile boolean unavailable;
 
         /**
          * Constructs a new elevations tile.
@@ -646,6 +1098,8 @@ public class LocalElevationModel extends AbstractElevationModel
             this.tileHeight = tileHeight;
             this.missingDataFlag = missingDataFlag;
             this.elevations = elevations;
+            this.file = null;
+            this.extremesKnown = true;
 
             // One or both of the min/max elevations may have been specified in the metadata.
             if (minEl != null)
@@ -659,14 +1113,52 @@ public class LocalElevationModel extends AbstractElevationModel
             return;
         }
 
+        /**
+         * Constructs a new elevations tile whose elevations are read from a file when they're needed.
+         *
+         * @param sector          the sector the tile covers.
+         * @param missingDataFlag the elevation model's missing data flag.
+         * @param tileWidth       the number of elevation values in a row of this tile's elevation raster.
+         * @param tileHeight      the number of rows in this tile's elevation raster.
+         * @param file            the file containing the elevations.
+         * @param minEl           the minimum elevation of this tile. May be null, in which case Earth's minimum
+         *                        elevation is assumed until the elevations are read.
+         * @param maxEl           the maximum elevation of this tile. May be null, in which case Earth's maximum
+         *                        elevation is assumed until the elevations are read.
+         */
+        protected LocalTile(Sector sector, double missingDataFlag, int tileWidth, int tileHeight, File file,
+            Double minEl, Double maxEl)
+        {
+            this.sector = sector;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.missingDataFlag = missingDataFlag;
+            this.elevations = null;
+            this.file = file;
+            this.extremesKnown = minEl != null && maxEl != null;
+            this.minElevation = minEl != null ? minEl : Earth.ELEVATION_MIN;
+            this.maxElevation = maxEl != null ? maxEl : Earth.ELEVATION_MAX;
+        }
+
         /** Determines the minimum and maximum elevations of this tile. */
         protected void computeMinMaxElevations()
         {
-            int len = this.elevations.length();
+            this.computeMinMaxElevations(this.elevations);
+        }
+
+        /**
+         * Determines the minimum and maximum elevations of this tile from its elevations.
+         *
+         * @param elevations the tile's elevations.
+         */
+        protected void computeMinMaxElevations(BufferWrapper elevations)
+        {
+            int len = elevations.length();
             if (len == 0)
             {
                 this.minElevation = 0;
                 this.maxElevation = 0;
+                this.extremesKnown = true;
                 return;
             }
 
@@ -675,7 +1167,7 @@ public class LocalElevationModel extends AbstractElevationModel
 
             for (int i = 0; i < len; i++)
             {
-                double v = this.elevations.getDouble(i);
+                double v = elevations.getDouble(i);
                 if (v == this.missingDataFlag)
                     continue;
 
@@ -687,6 +1179,7 @@ public class LocalElevationModel extends AbstractElevationModel
 
             this.minElevation = min;
             this.maxElevation = max;
+            this.extremesKnown = true;
         }
 
         /**
@@ -706,4 +1199,291 @@ public class LocalElevationModel extends AbstractElevationModel
                 || value == -32767;
         }
     }
+
+    /**
+     * An immutable spatial index of the tiles of an elevation model. The index divides the sector spanned by the tiles
+     * into a grid of square cells, and lists the tiles overlapping each cell in the order they were added to the model.
+     * The cell size is the median tile extent, doubled until the grid has at most a few cells per tile, so a location
+     * is tested against only the few tiles overlapping its cell. Tiles much larger than a cell are kept in a separate
+     * list that every query tests. Tile ranges are expanded by a small tolerance when they're assigned to cells, so
+     * that a location contained by a tile is always found in a cell listing the tile, regardless of rounding.
+     */
+    protected static class TileIndex
+    {
+        /** The tolerance, in degrees, by which tiles are expanded when they're assigned to cells. */
+        protected static final double EPSILON = 1e-9;
+        /** The maximum number of cells a tile is assigned to before it is considered a large tile. */
+        protected static final int MAX_CELLS_PER_TILE = 64;
+
+        /** The tiles, in the order they were added to the model. */
+        protected final LocalTile[] tiles;
+        /** The union of the tiles' sectors, or null if there are no tiles. */
+        protected final Sector sector;
+        /** The best resolution of all the tiles, in radians. */
+        protected final double bestResolution;
+        protected double minLat = Double.POSITIVE_INFINITY;
+        protected double maxLat = Double.NEGATIVE_INFINITY;
+        protected double minLon = Double.POSITIVE_INFINITY;
+        protected double maxLon = Double.NEGATIVE_INFINITY;
+        protected double cellSize;
+        protected int numRows;
+        protected int numCols;
+        /** The start of each cell's tiles in <code>cellTiles</code>, followed by the length of that array. */
+        protected int[] cellStart;
+        /** The indices of the tiles overlapping each cell, in ascending order within each cell. */
+        protected int[] cellTiles;
+        /** The indices of the large tiles, in ascending order. */
+        protected int[] largeTiles;
+
+        /**
+         * Builds an index of the specified tiles.
+         *
+         * @param tiles the tiles, in the order they were added to the model.
+         */
+        public TileIndex(LocalTile[] tiles)
+        {
+            this.tiles = tiles;
+
+            Sector union = null;
+            double res = Double.MAX_VALUE;
+            double[] extents = new double[tiles.length];
+            for (int i = 0; i < tiles.length; i++)
+            {
+                Sector s = tiles[i].sector;
+                union = union == null ? s : union.union(s);
+                res = Math.min(res, s.getDeltaLatRadians() / tiles[i].tileHeight);
+                extents[i] = Math.max(s.getDeltaLatDegrees(), s.getDeltaLonDegrees());
+            }
+            this.sector = union;
+            this.bestResolution = res;
+
+            if (tiles.length == 0)
+            {
+                this.cellStart = new int[] {0};
+                this.cellTiles = new int[0];
+                this.largeTiles = new int[0];
+                return;
+            }
+
+            this.minLat = union.getMinLatitude().degrees - EPSILON;
+            this.maxLat = union.getMaxLatitude().degrees + EPSILON;
+            this.minLon = union.getMinLongitude().degrees - EPSILON;
+            this.maxLon = union.getMaxLongitude().degrees + EPSILON;
+
+            Arrays.sort(extents);
+            double size = Math.max(extents[extents.length / 2], EPSILON);
+            double maxCells = 4d * tiles.length + 1024;
+            while ((Math.floor((this.maxLat - this.minLat) / size) + 1)
+                * (Math.floor((this.maxLon - this.minLon) / size) + 1) > maxCells)
+            {
+                size *= 2;
+            }
+            this.cellSize = size;
+            this.numRows = (int) Math.floor((this.maxLat - this.minLat) / size) + 1;
+            this.numCols = (int) Math.floor((this.maxLon - this.minLon) / size) + 1;
+
+            // Count the tiles in each cell, then fill the cells in tile order so that each cell's list is ascending.
+            int numCells = this.numRows * this.numCols;
+            int[] ranges = new int[4 * tiles.length];
+            boolean[] large = new boolean[tiles.length];
+            int numLarge = 0;
+            int[] counts = new int[numCells + 1];
+            for (int i = 0; i < tiles.length; i++)
+            {
+                Sector s = tiles[i].sector;
+                int r0 = ranges[4 * i] = this.row(s.getMinLatitude().degrees - EPSILON);
+                int r1 = ranges[4 * i + 1] = this.row(s.getMaxLatitude().degrees + EPSILON);
+                int c0 = ranges[4 * i + 2] = this.column(s.getMinLongitude().degrees - EPSILON);
+                int c1 = ranges[4 * i + 3] = this.column(s.getMaxLongitude().degrees + EPSILON);
+                if ((r1 - r0 + 1) * (c1 - c0 + 1) > MAX_CELLS_PER_TILE)
+                {
+                    large[i] = true;
+                    numLarge++;
+                    continue;
+                }
+
+                for (int r = r0; r <= r1; r++)
+                {
+                    for (int c = c0; c <= c1; c++)
+                    {
+                        counts[r * this.numCols + c + 1]++;
+                    }
+                }
+            }
+
+            for (int k = 1; k <= numCells; k++)
+            {
+                counts[k] += counts[k - 1];
+            }
+            this.cellStart = counts;
+            this.cellTiles = new int[counts[numCells]];
+            this.largeTiles = new int[numLarge];
+
+            int[] next = Arrays.copyOf(counts, numCells);
+            numLarge = 0;
+            for (int i = 0; i < tiles.length; i++)
+            {
+                if (large[i])
+                {
+                    this.largeTiles[numLarge++] = i;
+                    continue;
+                }
+
+                for (int r = ranges[4 * i]; r <= ranges[4 * i + 1]; r++)
+                {
+                    for (int c = ranges[4 * i + 2]; c <= ranges[4 * i + 3]; c++)
+                    {
+                        this.cellTiles[next[r * this.numCols + c]++] = i;
+                    }
+                }
+            }
+        }
+
+        protected int row(double latDegrees)
+        {
+            int row = (int) Math.floor((latDegrees - this.minLat) / this.cellSize);
+            return row < 0 ? 0 : row >= this.numRows ? this.numRows - 1 : row;
+        }
+
+        protected int column(double lonDegrees)
+        {
+            int col = (int) Math.floor((lonDegrees - this.minLon) / this.cellSize);
+            return col < 0 ? 0 : col >= this.numCols ? this.numCols - 1 : col;
+        }
+
+        /**
+         * Finds the first tile, in the order the tiles were added, whose sector contains a location.
+         *
+         * @param latRadians the location's latitude, in radians.
+         * @param lonRadians the location's longitude, in radians.
+         *
+         * @return the first tile containing the location, or null if no tile contains it.
+         */
+        public LocalTile findTile(double latRadians, double lonRadians)
+        {
+            double lat = Math.toDegrees(latRadians);
+            double lon = Math.toDegrees(lonRadians);
+            if (!(lat >= this.minLat && lat <= this.maxLat && lon >= this.minLon && lon <= this.maxLon))
+                return null;
+
+            int found = this.tiles.length;
+
+            int cell = this.row(lat) * this.numCols + this.column(lon);
+            for (int k = this.cellStart[cell]; k < this.cellStart[cell + 1]; k++)
+            {
+                int i = this.cellTiles[k];
+                if (this.tiles[i].sector.containsRadians(latRadians, lonRadians))
+                {
+                    found = i;
+                    break;
+                }
+            }
+
+            for (int i : this.largeTiles)
+            {
+                if (i >= found)
+                    break;
+
+                if (this.tiles[i].sector.containsRadians(latRadians, lonRadians))
+                {
+                    found = i;
+                    break;
+                }
+            }
+
+            return found < this.tiles.length ? this.tiles[found] : null;
+        }
+
+        /**
+         * Indicates whether any tile's sector contains a location.
+         *
+         * @param latDegrees the location's latitude, in degrees.
+         * @param lonDegrees the location's longitude, in degrees.
+         *
+         * @return true if a tile contains the location, otherwise false.
+         */
+        public boolean contains(double latDegrees, double lonDegrees)
+        {
+            if (!(latDegrees >= this.minLat && latDegrees <= this.maxLat
+                && lonDegrees >= this.minLon && lonDegrees <= this.maxLon))
+                return false;
+
+            int cell = this.row(latDegrees) * this.numCols + this.column(lonDegrees);
+            for (int k = this.cellStart[cell]; k < this.cellStart[cell + 1]; k++)
+            {
+                if (this.tiles[this.cellTiles[k]].sector.containsDegrees(latDegrees, lonDegrees))
+                    return true;
+            }
+
+            for (int i : this.largeTiles)
+            {
+                if (this.tiles[i].sector.containsDegrees(latDegrees, lonDegrees))
+                    return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Returns the indices of the tiles that may intersect a sector. The caller tests each candidate's sector.
+         *
+         * @param sector the sector.
+         *
+         * @return the indices of the candidate tiles.
+         */
+        public BitSet getCandidates(Sector sector)
+        {
+            return this.getCandidates(sector.getMinLatitude().degrees, sector.getMaxLatitude().degrees,
+                sector.getMinLongitude().degrees, sector.getMaxLongitude().degrees);
+        }
+
+        /**
+         * Returns the indices of the tiles that may intersect a range of latitude and longitude. The caller tests each
+         * candidate's sector. When the range spans more cells than there are tiles, all tiles are candidates.
+         *
+         * @param minLatDegrees the minimum latitude of the range, in degrees.
+         * @param maxLatDegrees the maximum latitude of the range, in degrees.
+         * @param minLonDegrees the minimum longitude of the range, in degrees.
+         * @param maxLonDegrees the maximum longitude of the range, in degrees.
+         *
+         * @return the indices of the candidate tiles.
+         */
+        public BitSet getCandidates(double minLatDegrees, double maxLatDegrees, double minLonDegrees,
+            double maxLonDegrees)
+        {
+            BitSet candidates = new BitSet(this.tiles.length);
+            if (this.tiles.length == 0 || maxLatDegrees < this.minLat || minLatDegrees > this.maxLat
+                || maxLonDegrees < this.minLon || minLonDegrees > this.maxLon)
+                return candidates;
+
+            int r0 = this.row(minLatDegrees - EPSILON);
+            int r1 = this.row(maxLatDegrees + EPSILON);
+            int c0 = this.column(minLonDegrees - EPSILON);
+            int c1 = this.column(maxLonDegrees + EPSILON);
+            if ((long) (r1 - r0 + 1) * (c1 - c0 + 1) > this.tiles.length)
+            {
+                candidates.set(0, this.tiles.length);
+                return candidates;
+            }
+
+            for (int r = r0; r <= r1; r++)
+            {
+                for (int c = c0; c <= c1; c++)
+                {
+                    int cell = r * this.numCols + c;
+                    for (int k = this.cellStart[cell]; k < this.cellStart[cell + 1]; k++)
+                    {
+                        candidates.set(this.cellTiles[k]);
+                    }
+                }
+            }
+
+            for (int i : this.largeTiles)
+            {
+                candidates.set(i);
+            }
+
+            return candidates;
+        }
+    }
 }
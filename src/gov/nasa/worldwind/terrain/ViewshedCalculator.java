@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.Disposable;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.BufferWrapperRaster;
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+
+import java.nio.ShortBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Computes the viewshed of an observer: the terrain visible from the observer's position within a specified radius.
+ * The result is a raster of square cells centered on the observer, each cell indicating whether the terrain at its
+ * center is visible. The raster may be written to a GeoTIFF file with {@link gov.nasa.worldwind.data.GeotiffRasterWriter}.
+ * <p/>
+ * Rather than intersecting a line with the terrain for each cell, the calculator fetches the elevations of all cells
+ * in one bulk request to the terrain and then sweeps outward from the observer one square ring of cells at a time.
+ * The horizon of a cell, the steepest terrain slope between the observer and the cell, is interpolated from the
+ * horizons of the neighboring cells in the next inner ring, so each cell is visited once. The sweep is divided into
+ * eight octant wedges about the observer that are computed concurrently on an executor. The sweep accounts for the
+ * curvature of the globe, but not for atmospheric refraction.
+ * <p/>
+ * Because horizons are interpolated, cells whose lines of sight graze the terrain may be classified differently than
+ * by {@link HighResolutionTerrain#intersect(gov.nasa.worldwind.geom.Position, gov.nasa.worldwind.geom.Position)}.
+ *
+ * @version $Id$
+ */
+public class ViewshedCalculator implements Disposable
+{
+    /** The raster value of cells visible from the observer. */
+    public static final short VISIBLE = 1;
+    /** The raster value of cells not visible from the observer. */
+    public static final short NOT_VISIBLE = 0;
+    /** The raster value of cells outside the viewshed radius. This is the raster's missing data signal. */
+    public static final short OUTSIDE_RADIUS = -1;
+
+    protected static final int NUM_OCTANTS = 8;
+
+    /**
+     * The grid of a single viewshed computation. Row 0 of the grid is its northernmost row, and the observer is at the
+     * center cell.
+     */
+    protected static class Grid
+    {
+        /** The number of cells from the center cell to each edge of the grid. */
+        protected final int numRadialCells;
+        /** The number of rows and columns of the grid. */
+        protected final int size;
+        /** The width and height of a cell, in meters. */
+        protected final double cellSize;
+        /** The globe's radius at the observer, in meters. */
+        protected final double globeRadius;
+        protected final double[] elevations;
+        protected final short[] visibility;
+        protected double observerElevation;
+        protected double targetHeight;
+
+        protected Grid(int numRadialCells, double cellSize, double globeRadius)
+        {
+            this.numRadialCells = numRadialCells;
+            this.size = 2 * numRadialCells + 1;
+            this.cellSize = cellSize;
+            this.globeRadius = globeRadius;
+            this.elevations = new double[this.size * this.size];
+            this.visibility = new short[this.size * this.size];
+        }
+    }
+
+    /**
+     * The transforms from octant coordinates (i, j), with 0 &lt;= j &lt;= i, to grid offsets (dx, dy) east and north
+     * of the observer: dx = a*i + b*j and dy = c*i + d*j, listed as {a, b, c, d}. Octants are numbered counterclockwise
+     * starting east of the observer.
+     */
+    protected static final int[][] OCTANT_TRANSFORMS = new int[][]
+        {
+            {1, 0, 0, 1}, {0, 1, 1, 0}, {0, -1, 1, 0}, {-1, 0, 0, 1},
+            {-1, 0, 0, -1}, {0, -1, -1, 0}, {0, 1, -1, 0}, {1, 0, 0, -1}
+        };
+
+    protected final HighResolutionTerrain terrain;
+    protected final ExecutorService executor;
+    protected final boolean ownsExecutor;
+    protected double targetHeight;
+
+    /**
+     * Constructs a calculator that runs on a fixed pool of daemon threads, one per available processor. The pool is
+     * shut down by {@link #dispose()}.
+     *
+     * @param terrain the terrain from which to compute viewsheds.
+     *
+     * @throws IllegalArgumentException if the terrain is null.
+     */
+    public ViewshedCalculator(HighResolutionTerrain terrain)
+    {
+        this(terrain, LineOfSightEngine.createDefaultExecutor(), true);
+    }
+
+    /**
+     * Constructs a calculator that runs on a specified executor. The calculator does not shut down the executor.
+     *
+     * @param terrain  the terrain from which to compute viewsheds.
+     * @param executor the executor on which to compute the octants of a viewshed.
+     *
+     * @throws IllegalArgumentException if the terrain or the executor is null.
+     */
+    public ViewshedCalculator(HighResolutionTerrain terrain, ExecutorService executor)
+    {
+        this(terrain, executor, false);
+    }
+
+    protected ViewshedCalculator(HighResolutionTerrain terrain, ExecutorService executor, boolean ownsExecutor)
+    {
+        if (terrain == null)
+        {
+            String msg = Logging.getMessage("nullValue.TerrainIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (executor == null)
+        {
+            String msg = Logging.getMessage("nullValue.ExecutorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.terrain = terrain;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Shuts down the thread pool this calculator created, if any. Viewsheds already being computed run to completion,
+     * and viewsheds computed afterwards fail with a {@link RejectedExecutionException}. An executor passed to the
+     * constructor is not shut down.
+     */
+    public void dispose()
+    {
+        if (this.ownsExecutor)
+            this.executor.shutdown();
+    }
+
+    public HighResolutionTerrain getTerrain()
+    {
+        return this.terrain;
+    }
+
+    public ExecutorService getExecutor()
+    {
+        return this.executor;
+    }
+
+    /**
+     * Indicates the height above the terrain at which a target must be visible for its cell to be visible.
+     *
+     * @return the target height, in meters.
+     */
+    public double getTargetHeight()
+    {
+        return this.targetHeight;
+    }
+
+    /**
+     * Specifies the height above the terrain at which a target must be visible for its cell to be visible. The default
+     * is 0, which determines the visibility of the terrain itself.
+     *
+     * @param targetHeight the target height, in meters.
+     */
+    public void setTargetHeight(double targetHeight)
+    {
+        this.targetHeight = targetHeight;
+    }
+
+    /**
+     * Computes the viewshed of an observer. The returned raster is square, has an odd number of rows and columns, and
+     * is centered on the observer's cell. Its cells contain {@link #VISIBLE} or {@link #NOT_VISIBLE}, or {@link
+     * #OUTSIDE_RADIUS} for cells farther than the radius from the observer. The raster's parameters identify it as a
+     * 16-bit geographic elevation raster whose missing data signal is <code>OUTSIDE_RADIUS</code>, so that it can be
+     * written by {@link gov.nasa.worldwind.data.GeotiffRasterWriter}.
+     *
+     * @param observer the observer's position. The altitude is relative to the terrain.
+     * @param radius   the radius of the viewshed, in meters.
+     * @param cellSize the width and height of the raster's cells, in meters.
+     *
+     * @return the viewshed raster.
+     *
+     * @throws IllegalArgumentException if the observer is null, the radius or cell size is not positive, or the
+     *                                  viewshed extends beyond the poles or the antimeridian.
+     * @throws InterruptedException     if the operation is interrupted.
+     * @throws gov.nasa.worldwind.exception.WWTimeoutException
+     *                                  if the terrain's timeout is exceeded while retrieving elevations.
+     */
+    public BufferWrapperRaster computeViewshed(Position observer, double radius, double cellSize)
+        throws InterruptedException
+    {
+        if (observer == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!(radius > 0))
+        {
+            String msg = Logging.getMessage("Geom.RadiusInvalid", radius);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!(cellSize > 0) || cellSize > radius)
+        {
+            String msg = Logging.getMessage("generic.SizeOutOfRange", cellSize);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        long numRadialCells = (long) Math.ceil(radius / cellSize);
+        long size = 2 * numRadialCells + 1;
+        if (size * size > Integer.MAX_VALUE)
+        {
+            String msg = Logging.getMessage("generic.SizeOutOfRange", size * size);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        double globeRadius = this.terrain.getGlobe().getRadiusAt(observer);
+        Grid grid = new Grid((int) numRadialCells, cellSize, globeRadius);
+        grid.targetHeight = this.targetHeight;
+
+        Sector sector = this.computeSector(observer, grid);
+        this.fetchElevations(sector, grid);
+        grid.observerElevation = grid.elevations[grid.elevations.length / 2] + observer.getAltitude();
+
+        this.sweep(grid);
+        this.applyRadius(grid, radius);
+
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+        params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+        params.setValue(AVKey.MISSING_DATA_SIGNAL, (double) OUTSIDE_RADIUS);
+        params.setValue(AVKey.COORDINATE_SYSTEM, AVKey.COORDINATE_SYSTEM_GEOGRAPHIC);
+        params.setValue(AVKey.RASTER_PIXEL, AVKey.RASTER_PIXEL_IS_AREA);
+
+        return new BufferWrapperRaster(grid.size, grid.size, sector,
+            new BufferWrapper.ShortBufferWrapper(ShortBuffer.wrap(grid.visibility)), params);
+    }
+
+    /**
+     * Computes the sector covered by a viewshed grid. Each cell is the same number of meters wide and high at the
+     * observer's latitude, so the grid's longitude spacing is wider than its latitude spacing away from the equator.
+     *
+     * @param observer the observer's position.
+     * @param grid     the viewshed grid.
+     *
+     * @return the sector covered by the grid's cells.
+     *
+     * @throws IllegalArgumentException if the sector extends beyond the poles or the antimeridian.
+     */
+    protected Sector computeSector(Position observer, Grid grid)
+    {
+        double halfSize = grid.numRadialCells + 0.5;
+        double deltaLat = Math.toDegrees(grid.cellSize / grid.globeRadius);
+        double deltaLon = deltaLat / Math.cos(observer.getLatitude().radians);
+
+        double minLat = observer.getLatitude().degrees - halfSize * deltaLat;
+        double maxLat = observer.getLatitude().degrees + halfSize * deltaLat;
+        double minLon = observer.getLongitude().degrees - halfSize * deltaLon;
+        double maxLon = observer.getLongitude().degrees + halfSize * deltaLon;
+        if (minLat < -90 || maxLat > 90 || minLon < -180 || maxLon > 180)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange",
+                String.format("%f, %f, %f, %f", minLat, maxLat, minLon, maxLon));
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return Sector.fromDegrees(minLat, maxLat, minLon, maxLon);
+    }
+
+    /**
+     * Fetches the terrain elevations at the centers of a grid's cells.
+     *
+     * @param sector the sector covered by the grid.
+     * @param grid   the grid whose elevations to fetch.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected void fetchElevations(Sector sector, Grid grid) throws InterruptedException
+    {
+        double deltaLat = sector.getDeltaLatDegrees() / grid.size;
+        double deltaLon = sector.getDeltaLonDegrees() / grid.size;
+        double maxLat = sector.getMaxLatitude().degrees;
+        double minLon = sector.getMinLongitude().degrees;
+
+        double[] latitudes = new double[grid.elevations.length];
+        double[] longitudes = new double[grid.elevations.length];
+        for (int row = 0, k = 0; row < grid.size; row++)
+        {
+            double latitude = maxLat - (row + 0.5) * deltaLat;
+            for (int col = 0; col < grid.size; col++, k++)
+            {
+                latitudes[k] = latitude;
+                longitudes[k] = minLon + (col + 0.5) * deltaLon;
+            }
+        }
+
+        this.terrain.getElevations(sector, latitudes, longitudes, grid.elevations);
+    }
+
+    /**
+     * Computes the visibility of a grid's cells by sweeping its octants concurrently on this calculator's executor.
+     *
+     * @param grid the grid to compute.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected void sweep(final Grid grid) throws InterruptedException
+    {
+        grid.visibility[grid.visibility.length / 2] = VISIBLE; // the observer's cell
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(NUM_OCTANTS);
+        for (int i = 0; i < NUM_OCTANTS; i++)
+        {
+            final int octant = i;
+            tasks.add(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    sweepOctant(grid, octant);
+                    return null;
+                }
+            });
+        }
+
+        for (Future<Void> future : this.executor.invokeAll(tasks))
+        {
+            try
+            {
+                future.get();
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof InterruptedException)
+                    throw (InterruptedException) e.getCause();
+                else if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                else
+                    throw new WWRuntimeException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Computes the visibility of the cells of one octant, one ring at a time outward from the observer. In octant
+     * coordinates the cells of ring i are (i, j) for 0 &lt;= j &lt;= i. The horizon of cell (i, j) is interpolated at
+     * position j * (i - 1) / i along ring i - 1, the point at which the line of sight to the cell crosses that ring.
+     * <p/>
+     * Cells on the diagonals and axes lie in two octants, and both octants compute them identically. To write each cell
+     * once, even octants write the cells with j &lt; i and odd octants write the cells with j &gt; 0.
+     *
+     * @param grid   the grid to compute.
+     * @param octant the octant number.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected void sweepOctant(Grid grid, int octant) throws InterruptedException
+    {
+        int[] t = OCTANT_TRANSFORMS[octant];
+        int center = grid.elevations.length / 2;
+        int iStep = t[0] - t[2] * grid.size; // grid index increment for each step of i
+        int jStep = t[1] - t[3] * grid.size; // grid index increment for each step of j
+        int jMin = octant % 2 == 0 ? 0 : 1;
+        int jEnd = octant % 2 == 0 ? 0 : 1; // the last written j is i - 1 + jEnd
+
+        // The horizon of each cell of the previous and current rings, including the cell's own terrain slope.
+        double[] previous = new double[grid.numRadialCells + 1];
+        double[] current = new double[grid.numRadialCells + 1];
+
+        for (int i = 1; i <= grid.numRadialCells; i++)
+        {
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedException();
+
+            for (int j = 0; j <= i; j++)
+            {
+                double horizon = Double.NEGATIVE_INFINITY;
+                if (i > 1)
+                {
+                    double s = (double) (j * (i - 1)) / i;
+                    int j0 = (int) s;
+                    double f = s - j0;
+                    horizon = f > 0 ? previous[j0] + f * (previous[j0 + 1] - previous[j0]) : previous[j0];
+                }
+
+                int index = center + i * iStep + j * jStep;
+                double distance = grid.cellSize * Math.sqrt(i * i + j * j);
+                double height = grid.elevations[index] - grid.observerElevation
+                    - distance * distance / (2 * grid.globeRadius);
+
+                if (j >= jMin && j < i + jEnd)
+                {
+                    grid.visibility[index] = (height + grid.targetHeight) / distance >= horizon
+                        ? VISIBLE : NOT_VISIBLE;
+                }
+
+                current[j] = Math.max(horizon, height / distance);
+            }
+
+            double[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+    }
+
+    /**
+     * Marks the cells of a grid farther than a specified radius from the observer as outside the viewshed.
+     *
+     * @param grid   the grid.
+     * @param radius the viewshed radius, in meters.
+     */
+    protected void applyRadius(Grid grid, double radius)
+    {
+        double maxDistanceSquared = (radius / grid.cellSize) * (radius / grid.cellSize);
+        for (int row = 0, k = 0; row < grid.size; row++)
+        {
+            int dy = row - grid.numRadialCells;
+            for (int col = 0; col < grid.size; col++, k++)
+            {
+                int dx = col - grid.numRadialCells;
+                if (dx * dx + dy * dy > maxDistanceSquared)
+                    grid.visibility[k] = OUTSIDE_RADIUS;
+            }
+        }
+    }
+}
@@ -1215,7 +1215,15 @@ public class WWIO
             // Determine whether the file can be treated like a File, e.g., a jar entry.
             URI uri = url.toURI();
             if (uri.isOpaque())
-                return false; // TODO: Determine how to check the date of non-Files
+            {
+                // Files packed by a file store report their date through their URL connection.
+                // TODO: Determine how to check the date of other non-Files, e.g., jar entries
+                if ("jar".equalsIgnoreCase(url.getProtocol()))
+                    return false;
+
+                long lastModified = url.openConnection().getLastModified();
+                return lastModified > 0 && lastModified < expiryTime;
+            }
 
             File file = new File(uri);
 
@@ -1226,6 +1234,11 @@ public class WWIO
             Logging.logger().log(Level.SEVERE, "WWIO.ExceptionValidatingFileExpiration", url);
             return false;
         }
+        catch (IOException e)
+        {
+            Logging.logger().log(Level.SEVERE, "WWIO.ExceptionValidatingFileExpiration", url);
+            return false;
+        }
     }
 
     public static Proxy configureProxy()
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.terrain.BasicElevationModel;
+import gov.nasa.worldwind.util.*;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the time to compute elevations for a large set of locations using the list-based {@link
+ * BasicElevationModel#getElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])} and the bulk
+ * {@link BasicElevationModel#getElevations(gov.nasa.worldwind.geom.Sector, double[], double[], double, double[])},
+ * both on the calling thread and divided among the threads of a fork-join pool. The elevation model's tiles are created
+ * in memory, so the benchmark measures only tile lookup and interpolation.
+ * <p/>
+ * The benchmark runs warmup iterations followed by measured iterations, and reports the mean time per request and the
+ * throughput in locations per second. It also verifies that each method produces the same elevations. Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.BulkElevationsBenchmark [numLocations]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class BulkElevationsBenchmark extends BasicElevationModel
+{
+    protected static final Sector SECTOR = Sector.fromDegrees(30, 40, -120, -110);
+    protected static final int TILE_SIZE = 150;
+    protected static final int NUM_LEVELS = 3;
+    protected static final double TARGET_RESOLUTION = 1e-9;
+    protected static final int WARMUP_ITERATIONS = 5;
+    protected static final int MEASUREMENT_ITERATIONS = 10;
+
+    protected interface Request
+    {
+        void run(double[] buffer);
+    }
+
+    public static void main(String[] args)
+    {
+        int numLocations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        final BulkElevationsBenchmark model = new BulkElevationsBenchmark(createParams());
+        model.createTiles();
+
+        Random random = new Random(1);
+        final double[] latitudes = new double[numLocations];
+        final double[] longitudes = new double[numLocations];
+        final List<LatLon> locations = new ArrayList<LatLon>(numLocations);
+        for (int i = 0; i < numLocations; i++)
+        {
+            latitudes[i] = SECTOR.getMinLatitude().degrees + random.nextDouble() * SECTOR.getDeltaLatDegrees();
+            longitudes[i] = SECTOR.getMinLongitude().degrees + random.nextDouble() * SECTOR.getDeltaLonDegrees();
+            locations.add(LatLon.fromDegrees(latitudes[i], longitudes[i]));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool();
+
+        System.out.printf("%d locations, %d threads%n", numLocations, pool.getParallelism());
+        System.out.printf("%-24s %12s %16s%n", "Method", "ms/request", "locations/s");
+
+        double[] listElevations = run("List<LatLon>", numLocations, new Request()
+        {
+            public void run(double[] buffer)
+            {
+                model.getElevations(SECTOR, locations, TARGET_RESOLUTION, buffer);
+            }
+        });
+
+        double[] bulkElevations = run("double[] sequential", numLocations, new Request()
+        {
+            public void run(double[] buffer)
+            {
+                model.setBulkElevationsPool(null);
+                model.getElevations(SECTOR, latitudes, longitudes, TARGET_RESOLUTION, buffer);
+            }
+        });
+
+        double[] parallelElevations = run("double[] parallel", numLocations, new Request()
+        {
+            public void run(double[] buffer)
+            {
+                model.setBulkElevationsPool(pool);
+                model.getElevations(SECTOR, latitudes, longitudes, TARGET_RESOLUTION, buffer);
+            }
+        });
+
+        pool.shutdown();
+
+        System.out.printf("Results identical: %b%n", Arrays.equals(listElevations, bulkElevations)
+            && Arrays.equals(listElevations, parallelElevations));
+    }
+
+    protected static double[] run(String name, int numLocations, Request request)
+    {
+        double[] buffer = new double[numLocations];
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            request.run(buffer);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+        {
+            request.run(buffer);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / MEASUREMENT_ITERATIONS;
+
+        System.out.printf("%-24s %12.2f %16.0f%n", name, seconds * 1e3, numLocations / seconds);
+
+        return buffer;
+    }
+
+    protected static AVList createParams()
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.SECTOR, SECTOR);
+        params.setValue(AVKey.TILE_ORIGIN, LatLon.fromDegrees(30, -120));
+        params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(5, 5));
+        params.setValue(AVKey.NUM_LEVELS, NUM_LEVELS);
+        params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+        params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+        params.setValue(AVKey.DATA_CACHE_NAME, "BulkElevationsBenchmark");
+        params.setValue(AVKey.DATASET_NAME, "BulkElevationsBenchmark");
+        params.setValue(AVKey.FORMAT_SUFFIX, ".bil");
+        params.setValue(AVKey.NETWORK_RETRIEVAL_ENABLED, false);
+        params.setValue(AVKey.ELEVATION_MIN, 0d);
+        params.setValue(AVKey.ELEVATION_MAX, 4000d);
+
+        return params;
+    }
+
+    public BulkElevationsBenchmark(AVList params)
+    {
+        super(params);
+    }
+
+    @Override
+    protected void requestTile(TileKey key)
+    {
+        // Tiles are created in memory by createTiles.
+    }
+
+    protected void createTiles()
+    {
+        for (int levelNumber = 0; levelNumber < NUM_LEVELS; levelNumber++)
+        {
+            int numTiles = 2 << levelNumber;
+            for (int row = 0; row < numTiles; row++)
+            {
+                for (int col = 0; col < numTiles; col++)
+                {
+                    TileKey key = new TileKey(levelNumber, row, col,
+                        this.getLevels().getLevel(levelNumber).getCacheName());
+                    ElevationTile tile = this.createTile(key);
+
+                    ByteBuffer buffer = ByteBuffer.allocate(TILE_SIZE * TILE_SIZE * 2).order(ByteOrder.LITTLE_ENDIAN);
+                    BufferWrapper elevations = BufferWrapper.wrap(buffer, AVKey.INT16);
+                    for (int i = 0; i < elevations.length(); i++)
+                    {
+                        elevations.putShort(i, (short) ((row * 31 + col * 17 + i) % 4000));
+                    }
+
+                    tile.setElevations(elevations, this);
+                    this.addTileToCache(tile, elevations);
+                }
+            }
+        }
+    }
+}
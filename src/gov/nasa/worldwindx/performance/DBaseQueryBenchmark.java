@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.formats.shapefile.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Measures the time to find the records of a large DBase file matching attribute queries, three ways: by decoding every
+ * record with {@link DBaseFile#nextRecord()} and testing its values, by evaluating a {@link DBaseQuery} against the
+ * file's {@link DBaseTable}, and by evaluating the query with a bitmap index of the low-cardinality CLASS field. Also
+ * reports the time to create the bitmap index and to load the saved index. Each synthetic DBase file holds a road-like
+ * classification, a population, a name and a latitude per record.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.DBaseQueryBenchmark [millionsOfRecords ...]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class DBaseQueryBenchmark
+{
+    protected static final int ITERATIONS = 5;
+    protected static final String[] NAME_PREFIXES = {"North", "South", "East", "West", "Central", "Upper", "Lower"};
+    protected static final String[] NAME_SUFFIXES = {"Road", "Street", "Avenue", "Highway", "Lane", "Way"};
+
+    /** A query, and the equivalent test of a decoded record. */
+    protected abstract static class Query
+    {
+        protected final String name;
+        protected final DBaseQuery query;
+
+        public Query(String name, DBaseQuery query)
+        {
+            this.name = name;
+            this.query = query;
+        }
+
+        public abstract boolean matches(DBaseRecord record);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        double[] sizes = {1, 4};
+        if (args.length > 0)
+        {
+            sizes = new double[args.length];
+            for (int i = 0; i < args.length; i++)
+            {
+                sizes[i] = Double.parseDouble(args[i]);
+            }
+        }
+
+        for (double size : sizes)
+        {
+            File dir = File.createTempFile("DBaseQueryBenchmark", "");
+            dir.delete();
+            dir.mkdir();
+            File file = new File(dir, "roads.dbf");
+            try
+            {
+                int numRecords = Math.max(1, (int) (size * 1e6));
+                writeDBaseFile(file, numRecords);
+                measure(file, numRecords);
+            }
+            finally
+            {
+                File[] files = dir.listFiles();
+                if (files != null)
+                {
+                    for (File f : files)
+                    {
+                        f.delete();
+                    }
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    protected static List<Query> createQueries()
+    {
+        List<Query> queries = new ArrayList<Query>();
+
+        queries.add(new Query("CLASS = 3", DBaseQuery.equalTo("CLASS", 3))
+        {
+            public boolean matches(DBaseRecord record)
+            {
+                return ((Number) record.getValue("CLASS")).intValue() == 3;
+            }
+        });
+        queries.add(new Query("CLASS IN (1, 2) AND POP > 500000", DBaseQuery.and(DBaseQuery.in("CLASS", 1, 2),
+            DBaseQuery.greaterThan("POP", 500000)))
+        {
+            public boolean matches(DBaseRecord record)
+            {
+                int c = ((Number) record.getValue("CLASS")).intValue();
+                return (c == 1 || c == 2) && ((Number) record.getValue("POP")).doubleValue() > 500000;
+            }
+        });
+        queries.add(new Query("LAT BETWEEN 10 AND 20", DBaseQuery.between("LAT", 10, 20))
+        {
+            public boolean matches(DBaseRecord record)
+            {
+                double lat = ((Number) record.getValue("LAT")).doubleValue();
+                return lat >= 10 && lat <= 20;
+            }
+        });
+        queries.add(new Query("NAME LIKE 'West%'", DBaseQuery.startsWith("NAME", "West"))
+        {
+            public boolean matches(DBaseRecord record)
+            {
+                return ((String) record.getValue("NAME")).startsWith("West");
+            }
+        });
+
+        return queries;
+    }
+
+    protected static void measure(File file, int numRecords) throws IOException
+    {
+        List<Query> queries = createQueries();
+        DBaseFile dbaseFile = new DBaseFile(file);
+        DBaseTable table = dbaseFile.getTable();
+
+        // Compile the query evaluation before measuring it.
+        for (Query query : queries)
+        {
+            query.query.findRecords(table);
+        }
+
+        long[] decodedCounts = new long[queries.size()];
+        double[] decodedMillis = new double[queries.size()];
+        for (int i = 0; i < queries.size(); i++)
+        {
+            long start = System.nanoTime();
+            decodedCounts[i] = countDecodedMatches(file, queries.get(i));
+            decodedMillis[i] = (System.nanoTime() - start) / 1e6;
+        }
+
+        double[] scanMillis = new double[queries.size()];
+        long[] scanCounts = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++)
+        {
+            long start = System.nanoTime();
+            for (int j = 0; j < ITERATIONS; j++)
+            {
+                scanCounts[i] = queries.get(i).query.findRecords(table).length;
+            }
+            scanMillis[i] = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        }
+
+        long start = System.nanoTime();
+        dbaseFile.loadBitmapIndex("CLASS", DBaseBitmapIndex.DEFAULT_MAX_CARDINALITY);
+        double createMillis = (System.nanoTime() - start) / 1e6;
+        dbaseFile.close();
+
+        start = System.nanoTime();
+        dbaseFile = new DBaseFile(file);
+        table = dbaseFile.getTable();
+        dbaseFile.loadBitmapIndex("CLASS", DBaseBitmapIndex.DEFAULT_MAX_CARDINALITY);
+        double loadMillis = (System.nanoTime() - start) / 1e6;
+
+        double[] indexMillis = new double[queries.size()];
+        long[] indexCounts = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++)
+        {
+            queries.get(i).query.findRecords(table);
+            start = System.nanoTime();
+            for (int j = 0; j < ITERATIONS; j++)
+            {
+                indexCounts[i] = queries.get(i).query.findRecords(table).length;
+            }
+            indexMillis[i] = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        }
+        dbaseFile.close();
+
+        System.out.printf("%n%d records, %.1f MB%n", numRecords, file.length() / 1048576d);
+        System.out.printf("create CLASS bitmap index %.1f ms, open file and load index %.1f ms%n", createMillis,
+            loadMillis);
+        System.out.printf("%-34s %10s %12s %10s %12s%n", "Query", "matches", "decoded ms", "scan ms", "indexed ms");
+        for (int i = 0; i < queries.size(); i++)
+        {
+            if (decodedCounts[i] != scanCounts[i] || scanCounts[i] != indexCounts[i])
+                System.out.printf("Mismatched results for %s%n", queries.get(i).name);
+
+            System.out.printf("%-34s %10d %12.1f %10.1f %12.1f%n", queries.get(i).name, scanCounts[i],
+                decodedMillis[i], scanMillis[i], indexMillis[i]);
+        }
+    }
+
+    /** Counts the records matching a query by decoding every record, as readers of DBase files did before queries. */
+    protected static long countDecodedMatches(File file, Query query) throws IOException
+    {
+        DBaseFile dbaseFile = new DBaseFile(new FileInputStream(file));
+        try
+        {
+            long count = 0;
+            while (dbaseFile.hasNext())
+            {
+                if (query.matches(dbaseFile.nextRecord()))
+                    count++;
+            }
+
+            return count;
+        }
+        finally
+        {
+            dbaseFile.close();
+        }
+    }
+
+    /** Writes a DBase file with CLASS N(2), POP N(10), NAME C(24) and LAT N(9,4) fields. */
+    protected static void writeDBaseFile(File file, int numRecords) throws IOException
+    {
+        String[] names = {"CLASS", "POP", "NAME", "LAT"};
+        char[] types = {'N', 'N', 'C', 'N'};
+        int[] lengths = {2, 10, 24, 9};
+        int[] decimals = {0, 0, 0, 4};
+        int recordLength = 1 + 2 + 10 + 24 + 9;
+        int headerLength = 32 + 32 * names.length + 1;
+
+        FileChannel channel = new FileOutputStream(file).getChannel();
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.put((byte) 3).put((byte) 114).put((byte) 1).put((byte) 1);
+            header.putInt(numRecords);
+            header.putShort((short) headerLength);
+            header.putShort((short) recordLength);
+            for (int i = 0; i < names.length; i++)
+            {
+                int pos = 32 + 32 * i;
+                header.position(pos);
+                header.put(names[i].getBytes("US-ASCII"));
+                header.put(pos + 11, (byte) types[i]);
+                header.put(pos + 16, (byte) lengths[i]);
+                header.put(pos + 17, (byte) decimals[i]);
+            }
+            header.put(headerLength - 1, (byte) 0x0D);
+            header.clear();
+            channel.write(header);
+
+            Random random = new Random(7);
+            ByteBuffer records = ByteBuffer.allocate(recordLength * 10000);
+            for (int i = 0; i < numRecords; i++)
+            {
+                // Most records are minor roads. Populations are skewed toward small values.
+                int roadClass = Math.min(7, (int) Math.abs(random.nextGaussian() * 2.5));
+                long pop = (long) Math.pow(10, 2 + 5 * random.nextDouble());
+                String name = NAME_PREFIXES[random.nextInt(NAME_PREFIXES.length)] + " "
+                    + (1 + random.nextInt(999)) + " " + NAME_SUFFIXES[random.nextInt(NAME_SUFFIXES.length)];
+                double lat = -90 + 180 * random.nextDouble();
+
+                String record = String.format(Locale.US, " %2d%10d%-24s%9.4f", roadClass, pop, name, lat);
+                records.put(record.getBytes("US-ASCII"));
+
+                if (!records.hasRemaining() || i == numRecords - 1)
+                {
+                    records.flip();
+                    channel.write(records);
+                    records.clear();
+                }
+            }
+
+            channel.write(ByteBuffer.wrap(new byte[] {0x1A}));
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
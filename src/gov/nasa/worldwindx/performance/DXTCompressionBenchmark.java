@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.formats.dds.*;
+
+import java.awt.image.BufferedImage;
+import java.nio.*;
+import java.util.Random;
+
+/**
+ * Measures the throughput of DXT1 and DXT3 compression for square images from 256 to 8192 pixels on a side. Each image
+ * is compressed with the block-by-block color block extractor, with {@link DXTBlockEncoder} on the calling thread, and
+ * with the block encoder on an increasing number of threads. Mipmaps are not built, so the measurement covers block
+ * compression alone.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -Xmx2g gov.nasa.worldwindx.performance.DXTCompressionBenchmark [minSize] [maxSize] [maxThreads]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class DXTCompressionBenchmark
+{
+    protected static final int WARMUP_ITERATIONS = 8;
+    protected static final int MEASUREMENT_ITERATIONS = 3;
+
+    public static void main(String[] args)
+    {
+        int minSize = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int maxSize = args.length > 1 ? Integer.parseInt(args[1]) : 8192;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%d processors%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-6s %-8s %-16s %12s %12s %10s%n", "format", "size", "compressor", "millis", "Mpixels/s",
+            "speedup");
+
+        for (int size = minSize; size <= maxSize; size *= 2)
+        {
+            BufferedImage image = createImage(size);
+            for (String format : new String[] {"DXT1", "DXT3"})
+            {
+                double baseline = measure(format, size, "blocks", image, 1, true, 0);
+                measure(format, size, "encoder", image, 1, false, baseline);
+                for (int threads = 2; threads <= maxThreads; threads *= 2)
+                {
+                    measure(format, size, "encoder x" + threads, image, threads, false, baseline);
+                }
+            }
+        }
+    }
+
+    protected static double measure(String format, int size, String name, BufferedImage image, int threads,
+        boolean useBlockExtractor, double baseline)
+    {
+        DXTCompressor compressor = createCompressor(format, useBlockExtractor);
+        DXTCompressionAttributes attributes = new DXTCompressionAttributes();
+        attributes.setBuildMipmaps(false);
+        attributes.setCompressionThreadCount(threads);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(compressor.getCompressedSize(image, attributes));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        // Large images are compressed fewer times, so that the slowest compressor finishes in reasonable time.
+        int scale = Math.max(1, (size * size) / (1024 * 1024));
+        for (int i = 0; i < Math.max(1, WARMUP_ITERATIONS / scale); i++)
+        {
+            buffer.clear();
+            compressor.compressImage(image, attributes, buffer);
+        }
+
+        int iterations = Math.max(1, MEASUREMENT_ITERATIONS / scale);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+        {
+            buffer.clear();
+            compressor.compressImage(image, attributes, buffer);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        double pixelsPerSecond = (double) size * size / (millis / 1000d);
+        System.out.printf("%-6s %-8d %-16s %12.1f %12.1f %10.2f%n", format, size, name, millis, pixelsPerSecond / 1e6,
+            baseline > 0 ? pixelsPerSecond / baseline : 1d);
+
+        return pixelsPerSecond;
+    }
+
+    protected static DXTCompressor createCompressor(String format, boolean useBlockExtractor)
+    {
+        if (format.equals("DXT1"))
+        {
+            return useBlockExtractor ? new DXT1Compressor()
+            {
+                protected ColorBlockExtractor getColorBlockExtractor(BufferedImage image)
+                {
+                    return new BlockExtractor(image);
+                }
+            } : new DXT1Compressor();
+        }
+        else
+        {
+            return useBlockExtractor ? new DXT3Compressor()
+            {
+                protected ColorBlockExtractor getColorBlockExtractor(BufferedImage image)
+                {
+                    return new BlockExtractor(image);
+                }
+            } : new DXT3Compressor();
+        }
+    }
+
+    /**
+     * Creates an image with smooth gradients, noise and partially transparent pixels, so that blocks use the full
+     * range of palette colors.
+     *
+     * @param size the width and height of the image.
+     *
+     * @return the image.
+     */
+    protected static BufferedImage createImage(int size)
+    {
+        Random random = new Random(size);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        int[] row = new int[size];
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                int a = (x / 16 + y / 16) % 7 == 0 ? 128 : 255;
+                int r = (x * 255 / size + random.nextInt(8)) & 0xFF;
+                int g = (y * 255 / size + random.nextInt(8)) & 0xFF;
+                int b = ((x ^ y) + random.nextInt(8)) & 0xFF;
+                row[x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, size, 1, row, 0, size);
+        }
+        return image;
+    }
+
+    /** A color block extractor that forces compressors to compress each block with the block compressors. */
+    protected static class BlockExtractor extends BasicColorBlockExtractor
+    {
+        public BlockExtractor(BufferedImage image)
+        {
+            super(image);
+        }
+    }
+}
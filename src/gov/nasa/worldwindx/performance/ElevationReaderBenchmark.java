@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.geom.Sector;
+
+import java.io.*;
+import java.nio.*;
+import java.util.Random;
+
+/**
+ * Compares reading DTED and BIL elevations onto the heap with memory-mapping them. A synthetic DTED Level 2 sized file
+ * and a BIL file of the same dimensions are written to the temporary directory, then each is read with its raster
+ * reader configured to read onto the heap and to memory-map. Three workloads are measured: opening the raster only,
+ * opening it and drawing a small region onto a canvas, as an elevation model resolving one tile does, and opening it
+ * and scanning every elevation, as an import does. The heap column is the heap retained by each open raster.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -Xmx1g gov.nasa.worldwindx.performance.ElevationReaderBenchmark [size] [iterations]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class ElevationReaderBenchmark
+{
+    protected static final int WARMUP_ITERATIONS = 3;
+    protected static final int MEASUREMENT_ITERATIONS = 5;
+    protected static final Sector SECTOR = Sector.fromDegrees(45, 46, 10, 11);
+
+    public static void main(String[] args) throws Exception
+    {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 3601;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : MEASUREMENT_ITERATIONS;
+
+        File dted = File.createTempFile("ElevationReaderBenchmark", ".dt2");
+        File bil = File.createTempFile("ElevationReaderBenchmark", ".bil");
+        try
+        {
+            writeDTED(dted, size);
+            writeBIL(bil, size);
+
+            System.out.printf("%d x %d elevations, DTED file %.1f MB, BIL file %.1f MB%n", size, size,
+                dted.length() / 1e6, bil.length() / 1e6);
+            System.out.printf("%-6s %-8s %-8s %12s %10s %12s%n", "format", "reader", "workload", "millis", "speedup",
+                "heap MB");
+
+            for (String workload : new String[] {"open", "region", "scan"})
+            {
+                double baseline = measure("DTED", "heap", workload, dted, size, iterations, 0);
+                measure("DTED", "mapped", workload, dted, size, iterations, baseline);
+                baseline = measure("BIL", "heap", workload, bil, size, iterations, 0);
+                measure("BIL", "mapped", workload, bil, size, iterations, baseline);
+            }
+        }
+        finally
+        {
+            dted.delete();
+            bil.delete();
+        }
+    }
+
+    protected static double measure(String format, String reader, String workload, File file, int size,
+        int iterations, double baseline) throws Exception
+    {
+        boolean mapped = reader.equals("mapped");
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            run(format, mapped, workload, file, size);
+        }
+
+        long heap = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+        {
+            heap += run(format, mapped, workload, file, size);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.printf("%-6s %-8s %-8s %12.1f %10.2f %12.1f%n", format, reader, workload, millis,
+            baseline > 0 ? baseline / millis : 1d, heap / 1e6 / iterations);
+
+        return millis;
+    }
+
+    /**
+     * Opens the file and runs the workload, returning the heap retained by the open raster.
+     *
+     * @param format   the file format, DTED or BIL.
+     * @param mapped   true to memory-map the file, false to read it onto the heap.
+     * @param workload the workload: open, region or scan.
+     * @param file     the file.
+     * @param size     the raster's width and height.
+     *
+     * @return the retained heap, in bytes.
+     *
+     * @throws Exception if the file cannot be read.
+     */
+    protected static long run(String format, boolean mapped, String workload, File file, int size) throws Exception
+    {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+
+        DataRaster raster;
+        if (format.equals("DTED"))
+        {
+            DTEDRasterReader dtedReader = new DTEDRasterReader();
+            dtedReader.setMapFiles(mapped);
+            raster = dtedReader.read(file, new AVListImpl())[0];
+        }
+        else
+        {
+            BILRasterReader bilReader = new BILRasterReader();
+            bilReader.setMapLargeFiles(mapped);
+            bilReader.setLargeFileThreshold(0);
+            raster = bilReader.read(file, createBILParams(size))[0];
+        }
+
+        if (workload.equals("region"))
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+            raster.drawOnTo(new ByteBufferRaster(150, 150, Sector.fromDegrees(45.5, 45.6, 10.5, 10.6), params));
+        }
+        else if (workload.equals("scan"))
+        {
+            ((BufferWrapperRaster) raster).getExtremes();
+        }
+
+        // Collect the workload's temporary arrays, so that only the heap held by the open raster is counted.
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        raster.dispose();
+
+        return Math.max(0, after - before);
+    }
+
+    protected static AVList createBILParams(int size)
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.WIDTH, size);
+        params.setValue(AVKey.HEIGHT, size);
+        params.setValue(AVKey.SECTOR, SECTOR);
+        params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+        params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+        params.setValue(AVKey.BYTE_ORDER, AVKey.LITTLE_ENDIAN);
+        return params;
+    }
+
+    protected static short elevation(Random random, int x, int y)
+    {
+        return (short) (x / 3 + y / 5 + random.nextInt(16) - 100);
+    }
+
+    /**
+     * Writes a DTED file with the minimal headers the DTED reader requires, and signed-magnitude elevations with valid
+     * data record checksums.
+     *
+     * @param file the file to write.
+     * @param size the number of longitude lines and latitude points.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    protected static void writeDTED(File file, int size) throws IOException
+    {
+        Random random = new Random(size);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+        try
+        {
+            out.write(header(80, String.format("UHL10100000E0450000N%-27s%04d%04d", "", size, size)));
+            out.write(header(648, String.format("DSIU%-55sDTED2", "")));
+            out.write(header(2700, "ACC"));
+
+            ByteBuffer record = ByteBuffer.allocate(12 + 2 * size);
+            for (int x = 0; x < size; x++)
+            {
+                record.clear();
+                record.put((byte) 0xAA).put((byte) 0).putShort((short) x).putShort((short) x).putShort((short) 0);
+                for (int i = 0; i < size; i++)
+                {
+                    short value = elevation(random, x, i);
+                    record.putShort(value < 0 ? (short) (0x8000 | -value) : value);
+                }
+
+                int chkSum = 0;
+                for (int i = 0; i < record.position(); i++)
+                {
+                    chkSum += 0xFF & record.get(i);
+                }
+                record.putInt(chkSum);
+
+                out.write(record.array(), 0, record.position());
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    protected static void writeBIL(File file, int size) throws IOException
+    {
+        Random random = new Random(size);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+        try
+        {
+            ByteBuffer row = ByteBuffer.allocate(2 * size).order(ByteOrder.LITTLE_ENDIAN);
+            for (int y = 0; y < size; y++)
+            {
+                row.clear();
+                for (int x = 0; x < size; x++)
+                {
+                    row.putShort(elevation(random, x, y));
+                }
+                out.write(row.array());
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    protected static byte[] header(int size, String text)
+    {
+        byte[] bytes = new byte[size];
+        java.util.Arrays.fill(bytes, (byte) ' ');
+        byte[] textBytes = text.getBytes();
+        System.arraycopy(textBytes, 0, bytes, 0, textBytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.cache.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures {@link FileStoreIndex} and the lookups of {@link BasicDataFileStore} on a synthetic file cache laid out as
+ * tiled imagery is: <code>Earth/Benchmark/level/row/row_column.dds</code>, with {@link #FILES_PER_DIRECTORY} empty
+ * files in each row directory. The benchmark reports the time to build the index by walking the cache, to save it, and
+ * to rebuild it from the saved index, then compares the throughput of <code>findFile</code> with and without the
+ * index. Lookups are a mix of files that exist and files that do not, as when a layer checks the cache for tiles it
+ * has not yet retrieved.
+ * <p/>
+ * Creating the synthetic cache takes a while, so it is kept in the given directory and reused by later runs. Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.FileStoreIndexBenchmark [numFiles] [directory] [threads]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class FileStoreIndexBenchmark
+{
+    protected static final int FILES_PER_DIRECTORY = 100;
+    protected static final int DIRECTORIES_PER_LEVEL = 1000;
+    protected static final String CACHE_NAME = "Earth/Benchmark";
+    protected static final double HIT_FRACTION = 0.8;
+    protected static final int WARMUP_ITERATIONS = 2;
+    protected static final int MEASUREMENT_ITERATIONS = 5;
+    protected static final long ITERATION_MILLIS = 1000;
+
+    /** A file store that does not index its locations, as file stores did before they were indexed. */
+    protected static class UnindexedFileStore extends BasicDataFileStore
+    {
+        public UnindexedFileStore(File directoryPath)
+        {
+            super(directoryPath);
+        }
+
+        @Override
+        protected FileStoreIndex createIndex(StoreLocation location)
+        {
+            return null;
+        }
+    }
+
+    /** A file store that reports when the background build of its index is complete. */
+    protected static class IndexedFileStore extends BasicDataFileStore
+    {
+        public IndexedFileStore(File directoryPath)
+        {
+            super(directoryPath);
+        }
+
+        public boolean isIndexBuilt()
+        {
+            FileStoreIndex index = this.getWriteLocationIndex();
+            return index != null && index.isBuilt();
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int numFiles = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        File root = new File(args.length > 1 ? args[1]
+            : System.getProperty("java.io.tmpdir") + File.separator + "FileStoreIndexBenchmark" + numFiles);
+        int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        createCache(root, numFiles);
+
+        // Build the index from scratch, as on the first start with an existing cache.
+        FileStoreIndex index = new FileStoreIndex(root);
+        //noinspection ResultOfMethodCallIgnored
+        index.getIndexFile().delete();
+        long start = System.nanoTime();
+        index.build();
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        index.save();
+        double saveSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Build the index again from the saved index, as on later starts.
+        FileStoreIndex rebuilt = new FileStoreIndex(root);
+        start = System.nanoTime();
+        rebuilt.build();
+        double rebuildSeconds = (System.nanoTime() - start) / 1e9;
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("Files indexed:         %d%n", rebuilt.size());
+        System.out.printf("Index file size:       %d bytes%n", index.getIndexFile().length());
+        System.out.printf("Build by walking:      %.3f s%n", buildSeconds);
+        System.out.printf("Save:                  %.3f s%n", saveSeconds);
+        System.out.printf("Build from saved index:%.3f s%n", rebuildSeconds);
+        System.out.printf("Heap used:             %d MB%n", (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+        index = null;
+        rebuilt = null;
+
+        System.out.printf("%n%-24s %8s %16s%n", "File store", "Threads", "lookups/s");
+
+        IndexedFileStore indexed = new IndexedFileStore(root);
+        while (!indexed.isIndexBuilt())
+        {
+            Thread.sleep(10);
+        }
+        run("Indexed", indexed, numFiles, numThreads);
+
+        // The unindexed store marks directories used on every lookup, which invalidates the saved index, so it runs
+        // last.
+        run("Unindexed", new UnindexedFileStore(root), numFiles, numThreads);
+    }
+
+    /** Creates the synthetic cache, unless a previous run created it. */
+    protected static void createCache(File root, int numFiles) throws IOException
+    {
+        File marker = new File(root, "complete");
+        if (marker.exists())
+            return;
+
+        System.out.printf("Creating %d files in %s%n", numFiles, root);
+        for (int i = 0; i < numFiles; i++)
+        {
+            File file = new File(root, fileName(i));
+            if (i % FILES_PER_DIRECTORY == 0 && !file.getParentFile().isDirectory()
+                && !file.getParentFile().mkdirs())
+                throw new IOException("Cannot create " + file.getParentFile());
+
+            if (!file.exists() && !file.createNewFile())
+                throw new IOException("Cannot create " + file);
+        }
+
+        if (!marker.createNewFile())
+            throw new IOException("Cannot create " + marker);
+    }
+
+    /** Returns the name of the i'th file of the synthetic cache. Names of indices past the last file do not exist. */
+    protected static String fileName(int i)
+    {
+        int directory = i / FILES_PER_DIRECTORY;
+        int level = directory / DIRECTORIES_PER_LEVEL;
+        int row = directory % DIRECTORIES_PER_LEVEL;
+        int column = i % FILES_PER_DIRECTORY;
+        return CACHE_NAME + "/" + level + "/" + row + "/" + row + "_" + column + ".dds";
+    }
+
+    protected static void run(String name, FileStore fileStore, int numFiles, int numThreads) throws Exception
+    {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            iteration(fileStore, numFiles, numThreads);
+        }
+
+        double totalLookupsPerSecond = 0;
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+        {
+            totalLookupsPerSecond += iteration(fileStore, numFiles, numThreads);
+        }
+
+        System.out.printf("%-24s %8d %16.0f%n", name, numThreads, totalLookupsPerSecond / MEASUREMENT_ITERATIONS);
+    }
+
+    protected static double iteration(final FileStore fileStore, final int numFiles, int numThreads)
+        throws Exception
+    {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ITERATION_MILLIS);
+        final AtomicLong lookups = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < numThreads; t++)
+        {
+            final long seed = start + t;
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    Random random = new Random(seed);
+                    long localLookups = 0;
+
+                    while ((localLookups & 0xff) != 0 || System.nanoTime() < deadline)
+                    {
+                        int i = random.nextInt(numFiles);
+                        if (random.nextDouble() >= HIT_FRACTION)
+                            i += numFiles; // a file that does not exist
+
+                        fileStore.findFile(fileName(i), false);
+                        localLookups++;
+                    }
+
+                    lookups.addAndGet(localLookups);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures)
+        {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+
+        return lookups.get() / seconds;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.terrain.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of {@link LineOfSightEngine} for a viewshed-like workload: lines from one observer to a
+ * grid of targets over the surrounding terrain. The terrain is computed rather than retrieved, so the benchmark runs
+ * headless and offline and measures only geometry construction and intersection. For comparison it also measures
+ * {@link HighResolutionTerrain#intersect(gov.nasa.worldwind.geom.Position, gov.nasa.worldwind.geom.Position)} called
+ * for each line on the calling thread.
+ * <p/>
+ * Each measurement uses a new terrain instance, so it includes building the terrain geometry. Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.LineOfSightBenchmark [numLines] [maxThreads]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class LineOfSightBenchmark
+{
+    protected static final Sector SECTOR = Sector.fromDegrees(35, 35.5, -120, -119.5);
+    protected static final Position OBSERVER = Position.fromDegrees(35.25, -119.75, 20);
+    protected static final double VIEWSHED_RADIUS = 0.1; // degrees
+    protected static final double TERRAIN_RESOLUTION = 30;
+    protected static final int WARMUP_ITERATIONS = 2;
+    protected static final int MEASUREMENT_ITERATIONS = 3;
+
+    /** An elevation model of rolling hills, computed rather than retrieved. */
+    protected static class HillsElevationModel extends ZeroElevationModel
+    {
+        protected static double elevation(double latDegrees, double lonDegrees)
+        {
+            return 500 + 300 * Math.sin(latDegrees * 60) * Math.cos(lonDegrees * 45)
+                + 50 * Math.sin(latDegrees * 400 + lonDegrees * 300);
+        }
+
+        @Override
+        public double getMaxElevation()
+        {
+            return 850;
+        }
+
+        @Override
+        public double[] getExtremeElevations(Angle latitude, Angle longitude)
+        {
+            return new double[] {150, 850};
+        }
+
+        @Override
+        public double[] getExtremeElevations(Sector sector)
+        {
+            return new double[] {150, 850};
+        }
+
+        @Override
+        public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                LatLon ll = latlons.get(i);
+                buffer[i] = elevation(ll.getLatitude().degrees, ll.getLongitude().degrees);
+            }
+
+            return 0;
+        }
+
+        @Override
+        public double getUnmappedElevation(Angle latitude, Angle longitude)
+        {
+            return elevation(latitude.degrees, longitude.degrees);
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int numLines = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        Globe globe = new Earth();
+        globe.setElevationModel(new HillsElevationModel());
+
+        // Place the targets on a regular grid around the observer, as a viewshed computation does.
+        int gridSize = (int) Math.ceil(Math.sqrt(numLines));
+        double spacing = 2 * VIEWSHED_RADIUS / (gridSize - 1);
+        List<Position> targets = new ArrayList<Position>(numLines);
+        for (int i = 0; i < numLines; i++)
+        {
+            targets.add(Position.fromDegrees(
+                OBSERVER.getLatitude().degrees - VIEWSHED_RADIUS + (i / gridSize) * spacing,
+                OBSERVER.getLongitude().degrees - VIEWSHED_RADIUS + (i % gridSize) * spacing, 2));
+        }
+
+        System.out.printf("%d lines%n", numLines);
+        System.out.printf("%-32s %12s %12s%n", "Method", "lines/s", "visible");
+
+        runSequential(globe, targets);
+        for (int threads = 1; threads <= maxThreads; threads *= 2)
+        {
+            runEngine(globe, targets, threads);
+        }
+    }
+
+    protected static void runSequential(Globe globe, List<Position> targets)
+    {
+        long numVisible = 0;
+        double totalSeconds = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; i++)
+        {
+            HighResolutionTerrain terrain = new HighResolutionTerrain(globe, SECTOR, TERRAIN_RESOLUTION, null);
+
+            long start = System.nanoTime();
+            numVisible = 0;
+            for (Position target : targets)
+            {
+                if (terrain.intersect(OBSERVER, target) == null)
+                    numVisible++;
+            }
+
+            if (i >= WARMUP_ITERATIONS)
+                totalSeconds += (System.nanoTime() - start) / 1e9;
+        }
+
+        System.out.printf("%-32s %12.0f %12d%n", "HighResolutionTerrain.intersect",
+            targets.size() * MEASUREMENT_ITERATIONS / totalSeconds, numVisible);
+    }
+
+    protected static void runEngine(Globe globe, List<Position> targets, int numThreads) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        final AtomicLong numVisible = new AtomicLong();
+        double totalSeconds = 0;
+
+        try
+        {
+            for (int i = 0; i < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; i++)
+            {
+                HighResolutionTerrain terrain = new HighResolutionTerrain(globe, SECTOR, TERRAIN_RESOLUTION, null);
+                LineOfSightEngine engine = new LineOfSightEngine(terrain, executor);
+
+                long start = System.nanoTime();
+                numVisible.set(0);
+                LineOfSightEngine.Job job = engine.intersect(OBSERVER, targets, new LineOfSightEngine.ResultListener()
+                {
+                    public void result(int index, Position pA, Position pB, Intersection[] intersections)
+                    {
+                        if (intersections == null)
+                            numVisible.incrementAndGet();
+                    }
+
+                    public void exception(int index, Position pA, Position pB, Exception exception)
+                    {
+                    }
+
+                    public void completed()
+                    {
+                    }
+                });
+                job.await();
+
+                if (i >= WARMUP_ITERATIONS)
+                    totalSeconds += (System.nanoTime() - start) / 1e9;
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        System.out.printf("%-32s %12.0f %12d%n", "LineOfSightEngine, " + numThreads + " threads",
+            targets.size() * MEASUREMENT_ITERATIONS / totalSeconds, numVisible.get());
+    }
+}
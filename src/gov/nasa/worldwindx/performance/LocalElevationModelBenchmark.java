@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.terrain.LocalElevationModel;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares elevation lookups in a {@link LocalElevationModel} spanning many rasters using the model's tile index with
+ * lookups that scan the rasters linearly, as the model once did. The rasters are created in memory as a grid of small,
+ * abutting tiles, so the benchmark measures only raster selection and interpolation. Four requests are measured: a
+ * list request on a model that scans its rasters, a list request on the indexed model, and bulk requests on the
+ * indexed model both on the calling thread and divided among the threads of a fork-join pool. The benchmark also
+ * verifies that each request produces the same elevations.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.LocalElevationModelBenchmark [numRasters] [numLocations]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class LocalElevationModelBenchmark
+{
+    protected static final Sector SECTOR = Sector.fromDegrees(30, 40, -120, -110);
+    protected static final int RASTER_SIZE = 32;
+    protected static final int WARMUP_ITERATIONS = 1;
+    protected static final int MEASUREMENT_ITERATIONS = 3;
+
+    protected interface Request
+    {
+        void run(double[] buffer);
+    }
+
+    /**
+     * A local elevation model that finds rasters by testing each in turn, as LocalElevationModel once did. The model
+     * records the sector of each raster it's given, and replaces the grid index with an index that scans those
+     * sectors.
+     */
+    protected static class LinearElevationModel extends LocalElevationModel
+    {
+        protected List<Sector> sectors = new ArrayList<Sector>();
+        protected TileIndex linearIndex;
+
+        protected static class LinearTileIndex extends TileIndex
+        {
+            protected final Sector[] tileSectors;
+
+            public LinearTileIndex(LocalTile[] tiles, Sector[] tileSectors)
+            {
+                super(tiles);
+                this.tileSectors = tileSectors;
+            }
+
+            @Override
+            public LocalTile findTile(double latRadians, double lonRadians)
+            {
+                for (int i = 0; i < this.tileSectors.length; i++)
+                {
+                    if (this.tileSectors[i].containsRadians(latRadians, lonRadians))
+                        return this.tiles[i];
+                }
+
+                return null;
+            }
+
+            @Override
+            public boolean contains(double latDegrees, double lonDegrees)
+            {
+                for (Sector sector : this.tileSectors)
+                {
+                    if (sector.containsDegrees(latDegrees, lonDegrees))
+                        return true;
+                }
+
+                return false;
+            }
+
+            @Override
+            public BitSet getCandidates(double minLatDegrees, double maxLatDegrees, double minLonDegrees,
+                double maxLonDegrees)
+            {
+                BitSet candidates = new BitSet(this.tiles.length);
+                candidates.set(0, this.tiles.length);
+                return candidates;
+            }
+        }
+
+        @Override
+        public void addElevations(ByteBuffer byteBuffer, Sector sector, int width, int height, AVList parameters)
+        {
+            super.addElevations(byteBuffer, sector, width, height, parameters);
+            this.sectors.add(sector);
+            this.linearIndex = null;
+        }
+
+        @Override
+        protected TileIndex getTileIndex()
+        {
+            if (this.linearIndex == null)
+            {
+                this.linearIndex = new LinearTileIndex(this.tiles.toArray(new LocalTile[this.tiles.size()]),
+                    this.sectors.toArray(new Sector[this.sectors.size()]));
+            }
+
+            return this.linearIndex;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int numRasters = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int numLocations = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+        final LocalElevationModel linearModel = new LinearElevationModel();
+        final LocalElevationModel indexedModel = new LocalElevationModel();
+
+        long start = System.nanoTime();
+        addRasters(linearModel, numRasters);
+        addRasters(indexedModel, numRasters);
+        System.out.printf("%d rasters of %d x %d, added in %.1f ms per model%n", numRasters, RASTER_SIZE,
+            RASTER_SIZE, (System.nanoTime() - start) / 2e6);
+
+        Random random = new Random(1);
+        final double[] latitudes = new double[numLocations];
+        final double[] longitudes = new double[numLocations];
+        final List<LatLon> locations = new ArrayList<LatLon>(numLocations);
+        for (int i = 0; i < numLocations; i++)
+        {
+            latitudes[i] = SECTOR.getMinLatitude().degrees + random.nextDouble() * SECTOR.getDeltaLatDegrees();
+            longitudes[i] = SECTOR.getMinLongitude().degrees + random.nextDouble() * SECTOR.getDeltaLonDegrees();
+            locations.add(LatLon.fromDegrees(latitudes[i], longitudes[i]));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool();
+
+        System.out.printf("%d locations, %d threads%n", numLocations, pool.getParallelism());
+        System.out.printf("%-28s %12s %16s%n", "Method", "ms/request", "locations/s");
+
+        double[] linearElevations = run("List<LatLon> linear scan", numLocations, new Request()
+        {
+            public void run(double[] buffer)
+            {
+                linearModel.getElevations(SECTOR, locations, 0, buffer);
+            }
+        });
+
+        double[] listElevations = run("List<LatLon> indexed", numLocations, new Request()
+        {
+            public void run(double[] buffer)
+            {
+                indexedModel.getElevations(SECTOR, locations, 0, buffer);
+            }
+        });
+
+        double[] bulkElevations = run("double[] sequential", numLocations, new Request()
+        {
+            public void run(double[] buffer)
+            {
+                indexedModel.setBulkElevationsPool(null);
+                indexedModel.getElevations(SECTOR, latitudes, longitudes, 0, buffer);
+            }
+        });
+
+        double[] parallelElevations = run("double[] parallel", numLocations, new Request()
+        {
+            public void run(double[] buffer)
+            {
+                indexedModel.setBulkElevationsPool(pool);
+                indexedModel.getElevations(SECTOR, latitudes, longitudes, 0, buffer);
+            }
+        });
+
+        pool.shutdown();
+
+        System.out.printf("Results identical: %b%n", Arrays.equals(linearElevations, listElevations)
+            && Arrays.equals(linearElevations, bulkElevations) && Arrays.equals(linearElevations, parallelElevations));
+    }
+
+    /**
+     * Adds a grid of abutting rasters covering the benchmark sector to a model.
+     *
+     * @param model      the model.
+     * @param numRasters the approximate number of rasters, rounded to a square grid.
+     */
+    protected static void addRasters(LocalElevationModel model, int numRasters)
+    {
+        int n = Math.max(1, (int) Math.round(Math.sqrt(numRasters)));
+        double delta = SECTOR.getDeltaLatDegrees() / n;
+
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+        params.setValue(AVKey.BYTE_ORDER, AVKey.BIG_ENDIAN);
+
+        for (int row = 0; row < n; row++)
+        {
+            for (int col = 0; col < n; col++)
+            {
+                ByteBuffer elevations = ByteBuffer.allocate(2 * RASTER_SIZE * RASTER_SIZE);
+                for (int i = 0; i < RASTER_SIZE * RASTER_SIZE; i++)
+                {
+                    elevations.putShort((short) (row * 10 + col + i % 101));
+                }
+                elevations.rewind();
+
+                double minLat = SECTOR.getMinLatitude().degrees + row * delta;
+                double minLon = SECTOR.getMinLongitude().degrees + col * delta;
+                model.addElevations(elevations, Sector.fromDegrees(minLat, minLat + delta, minLon, minLon + delta),
+                    RASTER_SIZE, RASTER_SIZE, params);
+            }
+        }
+    }
+
+    protected static double[] run(String name, int numLocations, Request request)
+    {
+        double[] buffer = new double[numLocations];
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            request.run(buffer);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+        {
+            request.run(buffer);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / MEASUREMENT_ITERATIONS;
+
+        System.out.printf("%-28s %12.2f %16.0f%n", name, seconds * 1e3, numLocations / seconds);
+
+        return buffer;
+    }
+}
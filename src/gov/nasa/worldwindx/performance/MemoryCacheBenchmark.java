@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.cache.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of {@link BasicMemoryCache} and {@link SegmentedMemoryCache} under a mixed, concurrent
+ * workload of gets and adds resembling tile caching: most operations are gets, keys follow a skewed distribution, and
+ * the key space is several times larger than the cache so that eviction runs continuously.
+ * <p/>
+ * The benchmark follows the usual microbenchmark structure of warmup iterations followed by measured iterations, and
+ * reports the mean throughput in operations per second for each cache and thread count. Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.MemoryCacheBenchmark [maxThreads]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class MemoryCacheBenchmark
+{
+    protected static final int KEY_SPACE = 100000;
+    protected static final long CAPACITY = 20000;
+    protected static final int ENTRY_SIZE = 1;
+    protected static final double GET_FRACTION = 0.8;
+    protected static final int WARMUP_ITERATIONS = 3;
+    protected static final int MEASUREMENT_ITERATIONS = 5;
+    protected static final long ITERATION_MILLIS = 1000;
+
+    protected interface CacheFactory
+    {
+        MemoryCache createCache();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        CacheFactory basic = new CacheFactory()
+        {
+            public MemoryCache createCache()
+            {
+                return new BasicMemoryCache((long) (0.85 * CAPACITY), CAPACITY);
+            }
+        };
+
+        CacheFactory segmented = new CacheFactory()
+        {
+            public MemoryCache createCache()
+            {
+                return new SegmentedMemoryCache((long) (0.85 * CAPACITY), CAPACITY);
+            }
+        };
+
+        System.out.printf("%-24s %8s %16s %10s%n", "Cache", "Threads", "ops/s", "hit rate");
+        for (int threads = 1; threads <= maxThreads; threads *= 2)
+        {
+            run("BasicMemoryCache", basic, threads);
+            run("SegmentedMemoryCache", segmented, threads);
+        }
+    }
+
+    protected static void run(String name, CacheFactory factory, int numThreads) throws Exception
+    {
+        MemoryCache cache = factory.createCache();
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            iteration(cache, numThreads, new AtomicLong(), new AtomicLong());
+        }
+
+        AtomicLong hits = new AtomicLong();
+        AtomicLong gets = new AtomicLong();
+        double totalOpsPerSecond = 0;
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+        {
+            totalOpsPerSecond += iteration(cache, numThreads, hits, gets);
+        }
+
+        System.out.printf("%-24s %8d %16.0f %10.3f%n", name, numThreads, totalOpsPerSecond / MEASUREMENT_ITERATIONS,
+            gets.get() > 0 ? (double) hits.get() / gets.get() : 0d);
+    }
+
+    protected static double iteration(final MemoryCache cache, int numThreads, final AtomicLong hits,
+        final AtomicLong gets) throws Exception
+    {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ITERATION_MILLIS);
+        final AtomicLong ops = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < numThreads; t++)
+        {
+            final long seed = start + t;
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    Random random = new Random(seed);
+                    long localOps = 0;
+                    long localHits = 0;
+                    long localGets = 0;
+
+                    while ((localOps & 0xff) != 0 || System.nanoTime() < deadline)
+                    {
+                        // Square the uniform sample to skew accesses toward low keys, as a view skews tile access.
+                        double u = random.nextDouble();
+                        Integer key = (int) (u * u * KEY_SPACE);
+
+                        if (random.nextDouble() < GET_FRACTION)
+                        {
+                            localGets++;
+                            if (cache.getObject(key) != null)
+                                localHits++;
+                        }
+                        else
+                        {
+                            cache.add(key, key, ENTRY_SIZE);
+                        }
+
+                        localOps++;
+                    }
+
+                    ops.addAndGet(localOps);
+                    hits.addAndGet(localHits);
+                    gets.addAndGet(localGets);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures)
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return ops.get() / seconds;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.formats.nitfs.*;
+import gov.nasa.worldwind.formats.rpf.RPFImageType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Compares loading a large multi-segment NITF file into memory with loading it lazily from a memory mapped file. Each
+ * synthetic file holds a number of CADRG image segments followed by data extension segments filling the file to the
+ * requested size. For each file and each loading mode the benchmark measures the time to load the file, the time to
+ * then decode one of the last image segments, the time to read the data of the last data extension segment, and the heap the
+ * loaded message retains.
+ * <p/>
+ * Files are read while they're in the operating system's file cache, so the measurements compare parsing and copying
+ * rather than disk latency. A file is read into memory only if it's smaller than 2 GB and fits in the Java heap; run
+ * the benchmark with a larger maximum heap, such as -Xmx4g, to compare both modes on larger files.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.NITFSMessageBenchmark [numImageSegments] [fileSizeMB ...]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class NITFSMessageBenchmark
+{
+    protected static final int SUBFRAMES = 6;
+    protected static final int SUBFRAME_SIZE = 256;
+    protected static final int CODES_PER_ROW = SUBFRAME_SIZE / 4;
+    protected static final int SIZE = SUBFRAMES * SUBFRAME_SIZE;
+    protected static final int NUM_COLORS = 217;
+    protected static final int DES_SUBHEADER_LENGTH = 200;
+    protected static final long MAX_DES_LENGTH = 512L << 20;
+    /** The RPF components of each image segment: compression, lookup, description, display and spatial data. */
+    protected static final int[] COMPONENT_IDS = {131, 132, 136, 137, 140};
+    protected static final int ITERATIONS = 3;
+
+    /** The sum of the data read, kept so that reading the data isn't optimized away. */
+    protected static long checksum;
+
+    public static void main(String[] args) throws Exception
+    {
+        int numImages = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long[] fileSizes = {1024, 4096};
+        if (args.length > 1)
+        {
+            fileSizes = new long[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+            {
+                fileSizes[i - 1] = Long.parseLong(args[i]);
+            }
+        }
+
+        for (long fileSizeMB : fileSizes)
+        {
+            File file = File.createTempFile("NITFSMessageBenchmark", ".ntf");
+            try
+            {
+                long start = System.nanoTime();
+                int numDes = writeFile(file, numImages, fileSizeMB << 20);
+                System.out.printf("%n%d MB file, %d image segments, %d data extension segments, written in %.1f s%n",
+                    file.length() >> 20, numImages, numDes, (System.nanoTime() - start) / 1e9);
+                System.out.printf("%-8s %12s %12s %12s %12s%n", "Mode", "load ms", "decode ms", "read DES ms",
+                    "heap MB");
+
+                // Compile the decoder before measuring it.
+                decodeLastImages(NITFSMessage.load(file, true));
+
+                if (file.length() < Integer.MAX_VALUE && file.length() < Runtime.getRuntime().maxMemory() * 3 / 4)
+                    measure("loaded", file, false);
+                else
+                    System.out.printf("%-8s %12s%n", "loaded", "n/a: file exceeds 2 GB or the heap");
+                measure("lazy", file, true);
+            }
+            finally
+            {
+                file.delete();
+            }
+        }
+    }
+
+    protected static void measure(String name, File file, boolean lazy) throws IOException
+    {
+        long heapBefore = usedHeap();
+        NITFSMessage message = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            message = null;
+            message = NITFSMessage.load(file, lazy);
+        }
+        double loadMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        long heap = usedHeap() - heapBefore;
+
+        start = System.nanoTime();
+        decodeLastImages(message);
+        double decodeMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+        int numDes = message.getNumSegments(NITFSSegmentType.DATA_EXTENSION_SEGMENT);
+        start = System.nanoTime();
+        ByteBuffer data = message.getSegment(NITFSSegmentType.DATA_EXTENSION_SEGMENT, numDes - 1).getData();
+        long sum = 0;
+        while (data.remaining() >= 8)
+        {
+            sum += data.getLong();
+        }
+        double readMillis = (System.nanoTime() - start) / 1e6;
+
+        checksum += sum;
+
+        System.out.printf("%-8s %12.1f %12.1f %12.1f %12.1f%n", name, loadMillis, decodeMillis, readMillis,
+            heap / 1048576d);
+    }
+
+    /** Decodes the last image segments of a message, one per iteration, parsing them if the message is lazy. */
+    protected static void decodeLastImages(NITFSMessage message)
+    {
+        int numImages = message.getNumSegments(NITFSSegmentType.IMAGE_SEGMENT);
+        int[] pixels = new int[SIZE * SIZE];
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            NITFSImageSegment image = (NITFSImageSegment) message.getSegment(NITFSSegmentType.IMAGE_SEGMENT,
+                numImages - 1 - i);
+            image.getImagePixelsAsArray(pixels, RPFImageType.IMAGE_TYPE_ALPHA_RGB);
+        }
+    }
+
+    protected static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Writes a NITF 2.1 file of CADRG image segments followed by data extension segments, whose data fills the file to
+     * about the requested size.
+     *
+     * @return the number of data extension segments.
+     */
+    protected static int writeFile(File file, int numImages, long fileSize) throws IOException
+    {
+        Random random = new Random(1);
+        byte[][] colors = new byte[3][NUM_COLORS];
+        for (byte[] table : colors)
+        {
+            random.nextBytes(table);
+        }
+        byte[][] codebook = new byte[4][4096 * 4];
+        for (byte[] table : codebook)
+        {
+            random.nextBytes(table);
+        }
+        // Random 12-bit codes, packed two to three bytes, shared by every image.
+        byte[] spatialData = new byte[SUBFRAMES * SUBFRAMES * CODES_PER_ROW * CODES_PER_ROW * 3 / 2];
+        for (int i = 0; i < spatialData.length; i += 3)
+        {
+            int c0 = random.nextInt(4095);
+            int c1 = random.nextInt(4095);
+            spatialData[i] = (byte) (c0 >> 4);
+            spatialData[i + 1] = (byte) (((c0 & 0xF) << 4) | (c1 >> 8));
+            spatialData[i + 2] = (byte) c1;
+        }
+
+        int imageSegmentSize = 2048 + 3 * NUM_COLORS + 4 * codebook[0].length + spatialData.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4096 + numImages * (16 + imageSegmentSize));
+
+        // Data extension segments fill the rest of the file.
+        long desLength = Math.max(0, fileSize - buffer.capacity());
+        int numDes = (int) Math.max(1, (desLength + MAX_DES_LENGTH - 1) / MAX_DES_LENGTH);
+        long[] desLengths = new long[numDes];
+        for (int i = 0; i < numDes; i++)
+        {
+            desLengths[i] = (desLength / numDes) & ~7L;
+        }
+
+        // NITF 2.1 file header, followed by the segment lengths.
+        buffer.put(text("NITF02.1003BF01", 39 + 247 + 11 + 3 + 24 + 18));
+        int fileLengthPos = buffer.position();
+        buffer.put(text("", 12 + 6));
+        buffer.put(text(String.format("%03d", numImages), 3));
+        int segmentLengthsPos = buffer.position();
+        buffer.put(text("", 16 * numImages));
+        buffer.put(text(String.format("000000000%03d", numDes), 12));
+        for (long length : desLengths)
+        {
+            buffer.put(text(String.format("%04d%09d", DES_SUBHEADER_LENGTH, length), 13));
+        }
+        buffer.put(text("000", 3));
+
+        // User defined header containing the RPF header section.
+        buffer.put(text("00062000RPFHDR00048", 19));
+        buffer.put((byte) 0).putShort((short) 48).put(text("0000AA10.ON2", 12)).put((byte) 0);
+        buffer.put(text("MIL-C-89038    19941006U", 28));
+        int locationRefPos = buffer.position();
+        buffer.putInt(0);
+        buffer.put(text("00000", 5));
+        int headerLength = buffer.position();
+
+        for (int i = 0; i < numImages; i++)
+        {
+            int segmentStart = buffer.position();
+            int locationPos = writeImageSegment(buffer, colors, codebook, spatialData);
+            if (i == 0)
+                buffer.putInt(locationRefPos, locationPos);
+            int dataStart = locationPos + 14 + 10 * COMPONENT_IDS.length;
+            putText(buffer, segmentLengthsPos + 16 * i, String.format("%06d%010d", dataStart - segmentStart,
+                buffer.position() - dataStart));
+        }
+
+        long length = buffer.position();
+        for (long desDataLength : desLengths)
+        {
+            length += DES_SUBHEADER_LENGTH + desDataLength;
+        }
+        putText(buffer, fileLengthPos, String.format("%012d%06d", length, headerLength));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+
+            ByteBuffer chunk = ByteBuffer.allocate(8 << 20);
+            random.nextBytes(chunk.array());
+            for (long desDataLength : desLengths)
+            {
+                channel.write(ByteBuffer.wrap(text("DE", DES_SUBHEADER_LENGTH)));
+                for (long remaining = desDataLength; remaining > 0; remaining -= chunk.limit())
+                {
+                    chunk.clear();
+                    chunk.limit((int) Math.min(chunk.capacity(), remaining));
+                    while (chunk.hasRemaining())
+                    {
+                        channel.write(chunk);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        return numDes;
+    }
+
+    /**
+     * Writes a CADRG image segment at the buffer's position. The segment's RPF components are located by their offsets
+     * in the file, which are their positions in the buffer.
+     *
+     * @return the position of the segment's RPF location section.
+     */
+    protected static int writeImageSegment(ByteBuffer buffer, byte[][] colors, byte[][] codebook, byte[] spatialData)
+    {
+        // Image subheader.
+        buffer.put(text("IMCADRG", 2 + 10 + 14 + 17 + 80));
+        buffer.put(text("U", 1 + 40 + 40 + 40 + 20 + 20 + 6));
+        buffer.put(text("0", 1 + 42));
+        buffer.put(text(String.format("%08d%08d", SIZE, SIZE), 16));
+        buffer.put(text(String.format("%-3s%-8s%-8s%02dRG", "INT", "RGB/LUT", "MAP", 8), 23));
+        for (int i = 0; i < 4; i++)
+        {
+            buffer.put(text("450000N0100000E", 15));
+        }
+        buffer.put(text(String.format("0C4%4s1LU%6sN%3s3%05d", "", "", "", NUM_COLORS), 26));
+        for (byte[] table : colors)
+        {
+            buffer.put(table);
+        }
+        buffer.put(text(String.format("0B%04d%04d%04d%04d08001000", SUBFRAMES, SUBFRAMES, SUBFRAME_SIZE,
+            SUBFRAME_SIZE), 26));
+        buffer.put(text("00000000001.0", 14));
+        int udidlPos = buffer.position();
+        buffer.put(text("", 5));
+        buffer.put(text("000RPFIMG", 9));
+        int udidDataLengthPos = buffer.position();
+        buffer.put(text("", 5));
+
+        // RPF location section, locating the components written to the image data below.
+        int locationPos = buffer.position();
+        buffer.putShort((short) (14 + 10 * COMPONENT_IDS.length)).putInt(14).putShort((short) COMPONENT_IDS.length);
+        buffer.putShort((short) 10).putInt(0);
+        int recordsPos = buffer.position();
+        buffer.position(recordsPos + 10 * COMPONENT_IDS.length);
+        int dataStart = buffer.position();
+        int[] componentPos = new int[COMPONENT_IDS.length];
+
+        // Compression section subheader.
+        componentPos[0] = buffer.position();
+        buffer.putShort((short) 1).putShort((short) 4).putShort((short) 0);
+
+        // Compression lookup subsection: four tables, one per kernel row, of 4096 records of four color codes.
+        componentPos[1] = buffer.position();
+        buffer.putInt(6).putShort((short) 14);
+        for (int t = 0; t < 4; t++)
+        {
+            buffer.putShort((short) t).putInt(4096).putShort((short) 4).putShort((short) 8).putInt(62 + t * 16384);
+        }
+        for (byte[] table : codebook)
+        {
+            buffer.put(table);
+        }
+
+        // Image description subheader, without subframe or transparency masks.
+        componentPos[2] = buffer.position();
+        buffer.putShort((short) 1).putShort((short) (SUBFRAMES * SUBFRAMES)).putShort((short) 1).putShort((short) 1);
+        buffer.putShort((short) SUBFRAMES).putShort((short) SUBFRAMES).putInt(SUBFRAME_SIZE).putInt(SUBFRAME_SIZE);
+        buffer.putInt(-1).putInt(-1);
+
+        // Image display parameters subheader.
+        componentPos[3] = buffer.position();
+        buffer.putInt(CODES_PER_ROW).putInt(CODES_PER_ROW).put((byte) 12);
+
+        // Spatial data subsection: the subframes in sequence.
+        componentPos[4] = buffer.position();
+        buffer.put(spatialData);
+        int end = buffer.position();
+
+        for (int i = 0; i < COMPONENT_IDS.length; i++)
+        {
+            int length = (i + 1 < COMPONENT_IDS.length ? componentPos[i + 1] : end) - componentPos[i];
+            buffer.position(recordsPos + 10 * i);
+            buffer.putShort((short) COMPONENT_IDS[i]).putInt(length).putInt(componentPos[i]);
+        }
+        buffer.position(end);
+
+        putText(buffer, udidlPos, String.format("%05d", dataStart - udidDataLengthPos + 9));
+        putText(buffer, udidDataLengthPos, String.format("%05d", dataStart - locationPos));
+
+        return locationPos;
+    }
+
+    protected static byte[] text(String text, int size)
+    {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) ' ');
+        byte[] textBytes = text.getBytes();
+        System.arraycopy(textBytes, 0, bytes, 0, textBytes.length);
+        return bytes;
+    }
+
+    protected static void putText(ByteBuffer buffer, int position, String text)
+    {
+        byte[] bytes = text.getBytes();
+        for (int i = 0; i < bytes.length; i++)
+        {
+            buffer.put(position + i, bytes[i]);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.cache.BasicMemoryCache;
+import gov.nasa.worldwind.formats.rpf.*;
+import gov.nasa.worldwind.geom.Sector;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Measures decoding a synthetic CADRG series, and the tile requests of an RPF tiled imagery generator with and without
+ * a frame cache. A block of abutting frames is written to a temporary directory; each frame has random colors, a
+ * random kernel codebook and random image codes, so every kernel and color lookup is exercised. Two workloads are
+ * measured. The first decodes each frame on the calling thread and divided among the threads of the common fork/join
+ * pool. The second requests a grid of tiles offset from the frame grid, so that each frame is overlapped by several
+ * tiles as neighboring tiles of a tiled imagery pyramid are, and decodes the frames each tile overlaps either on every
+ * request or once through an {@link RPFFrameCache}.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.RPFFrameDecodeBenchmark [frameRows] [frameCols] [tilesPerFrame]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class RPFFrameDecodeBenchmark
+{
+    protected static final int WARMUP_ITERATIONS = 2;
+    protected static final int MEASUREMENT_ITERATIONS = 5;
+
+    protected static final String DATA_SERIES = "ON";
+    protected static final char ZONE = '2';
+    protected static final int SUBFRAMES = 6;
+    protected static final int SUBFRAME_SIZE = 256;
+    protected static final int CODES_PER_ROW = SUBFRAME_SIZE / 4;
+    protected static final int NUM_COLORS = 216;
+    protected static final String BASE34_ALPHABET = "0123456789ABCDEFGHJKLMNPQRSTUVWXYZ";
+
+    /** A frame cache that decodes frames on every request, as RPF imagery generation did without a cache. */
+    protected static class UncachedFrameCache extends RPFFrameCache
+    {
+        public UncachedFrameCache()
+        {
+            super(new BasicMemoryCache(1, 2));
+        }
+
+        @Override
+        public RPFFrameTransform.RPFImage[] getFrameImages(File file) throws IOException
+        {
+            return this.decodeFrame(file);
+        }
+    }
+
+    protected interface Workload
+    {
+        void run() throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int frameRows = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int frameCols = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int tilesPerFrame = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        File dir = createTempDirectory();
+        try
+        {
+            final List<File> files = writeSeries(dir, frameRows, frameCols);
+            final List<Sector> sectors = new ArrayList<Sector>();
+            for (File file : files)
+            {
+                RPFFrameFilename filename = RPFFrameFilename.parseFilename(file.getName());
+                sectors.add(createTransform().computeFrameCoverage(filename.getFrameNumber()));
+            }
+            System.out.printf("%d x %d CADRG frames of %d x %d pixels, %d threads%n", frameRows, frameCols,
+                SUBFRAMES * SUBFRAME_SIZE, SUBFRAMES * SUBFRAME_SIZE, threads);
+
+            System.out.printf("%-28s %12s %10s%n", "Frame decode", "ms/frame", "speedup");
+            double baseline = measure("sequential", files.size(), 0, new Workload()
+            {
+                public void run() throws IOException
+                {
+                    for (File file : files)
+                    {
+                        RPFImageFile.load(file).getBufferedImage();
+                    }
+                }
+            });
+            final int threadCount = threads;
+            measure("parallel subframes", files.size(), baseline, new Workload()
+            {
+                public void run() throws IOException
+                {
+                    for (File file : files)
+                    {
+                        RPFImageFile.load(file).getBufferedImage(threadCount);
+                    }
+                }
+            });
+
+            final List<Sector> tiles = createTiles(sectors, frameRows, frameCols, tilesPerFrame);
+            System.out.printf("%-28s %12s %10s   (%d tiles)%n", "Tile requests", "ms/tile", "speedup", tiles.size());
+            baseline = measure("decode per tile", tiles.size(), 0, new Workload()
+            {
+                public void run() throws IOException
+                {
+                    requestTiles(tiles, files, sectors, new UncachedFrameCache());
+                }
+            });
+            measure("frame cache", tiles.size(), baseline, new Workload()
+            {
+                public void run() throws IOException
+                {
+                    requestTiles(tiles, files, sectors, new RPFFrameCache(new BasicMemoryCache(170000000L,
+                        200000000L)));
+                }
+            });
+        }
+        finally
+        {
+            for (File file : dir.listFiles())
+            {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    protected static double measure(String name, int count, double baseline, Workload workload) throws IOException
+    {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            workload.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+        {
+            workload.run();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / MEASUREMENT_ITERATIONS / count;
+
+        System.out.printf("%-28s %12.2f %10.2f%n", name, millis, baseline > 0 ? baseline / millis : 1d);
+        return millis;
+    }
+
+    /**
+     * Creates a grid of tiles covering the series, offset from the frame grid by half a tile so that tiles on frame
+     * edges overlap two or four frames.
+     *
+     * @param sectors       the frame sectors, in row major order.
+     * @param frameRows     the number of frame rows.
+     * @param frameCols     the number of frame columns.
+     * @param tilesPerFrame the number of tiles across each frame.
+     *
+     * @return the tile sectors.
+     */
+    protected static List<Sector> createTiles(List<Sector> sectors, int frameRows, int frameCols, int tilesPerFrame)
+    {
+        Sector bounds = Sector.union(sectors);
+        double dLat = bounds.getDeltaLatDegrees() / (frameRows * tilesPerFrame);
+        double dLon = bounds.getDeltaLonDegrees() / (frameCols * tilesPerFrame);
+
+        List<Sector> tiles = new ArrayList<Sector>();
+        for (int row = 0; row < frameRows * tilesPerFrame - 1; row++)
+        {
+            for (int col = 0; col < frameCols * tilesPerFrame - 1; col++)
+            {
+                double minLat = bounds.getMinLatitude().degrees + (row + 0.5) * dLat;
+                double minLon = bounds.getMinLongitude().degrees + (col + 0.5) * dLon;
+                tiles.add(Sector.fromDegrees(minLat, minLat + dLat, minLon, minLon + dLon));
+            }
+        }
+
+        return tiles;
+    }
+
+    protected static void requestTiles(List<Sector> tiles, List<File> files, List<Sector> sectors,
+        RPFFrameCache frameCache) throws IOException
+    {
+        for (Sector tile : tiles)
+        {
+            for (int i = 0; i < files.size(); i++)
+            {
+                if (tile.intersectsInterior(sectors.get(i)))
+                    frameCache.getFrameImages(files.get(i));
+            }
+        }
+    }
+
+    protected static File createTempDirectory() throws IOException
+    {
+        File dir = File.createTempFile("RPFFrameDecodeBenchmark", "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    protected static RPFFrameTransform createTransform()
+    {
+        RPFDataSeries dataSeries = RPFDataSeries.dataSeriesFor(DATA_SERIES);
+        return RPFFrameTransform.createFrameTransform(ZONE, dataSeries.rpfDataType, dataSeries.scaleOrGSD);
+    }
+
+    /**
+     * Writes a block of abutting CADRG frames in one zone of the benchmark data series.
+     *
+     * @param dir  the directory to write the frames to.
+     * @param rows the number of frame rows.
+     * @param cols the number of frame columns.
+     *
+     * @return the frame files.
+     *
+     * @throws IOException if a frame cannot be written.
+     */
+    protected static List<File> writeSeries(File dir, int rows, int cols) throws IOException
+    {
+        RPFFrameTransform transform = createTransform();
+
+        List<File> files = new ArrayList<File>();
+        int firstRow = transform.getRows() / 2;
+        int firstCol = transform.getColumns() / 2;
+        for (int row = firstRow; row < firstRow + rows; row++)
+        {
+            for (int col = firstCol; col < firstCol + cols; col++)
+            {
+                int frameNumber = transform.getFrameNumber(row, col);
+                File file = new File(dir, base34(frameNumber, 5) + base34(1, 2) + "0." + DATA_SERIES + ZONE);
+                writeFrame(file, new Random(frameNumber));
+                files.add(file);
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Writes a CADRG frame with the headers and sections the RPF reader requires: an RGB color lookup table, a 4x4
+     * kernel codebook and 6x6 subframes of 12-bit kernel codes, all random.
+     *
+     * @param file   the frame file to write.
+     * @param random the source of the frame's colors, codebook and codes.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    protected static void writeFrame(File file, Random random) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 19);
+
+        // NITF 2.1 file header, followed by the image segment length and the empty segment groups.
+        buffer.put(text("NITF02.1003BF01", 39));
+        buffer.put(text("", 80 + 1 + 2 + 11 + 2 + 20 + 2 + 8 + 4 + 1 + 8 + 43 + 1 + 40 + 1 + 8 + 15));
+        buffer.put(text("0000000000", 11 + 3 + 24 + 18));
+        int fileLengthPos = buffer.position();
+        buffer.put(text("", 12 + 6));
+        buffer.put(text("001", 3));
+        int segmentLengthsPos = buffer.position();
+        buffer.put(text("", 6 + 10));
+        buffer.put(text("000000000000000", 15));
+
+        // User defined header containing the RPF header section.
+        buffer.put(text("00062000RPFHDR00048", 19));
+        int rpfHeaderPos = buffer.position();
+        buffer.put((byte) 0).putShort((short) 48).put(text(file.getName(), 12)).put((byte) 0);
+        buffer.put(text("MIL-C-89038    19941006U  ", 28));
+        int locationRefPos = buffer.position();
+        buffer.putInt(0);
+        if (buffer.position() - rpfHeaderPos != 48)
+            throw new IllegalStateException();
+        buffer.put(text("00000", 5));
+        int headerLength = buffer.position();
+
+        // Image subheader.
+        buffer.put(text("IMCADRG", 2 + 10 + 14 + 17 + 80));
+        buffer.put(text("U", 1 + 40 + 40 + 40 + 20 + 20 + 6));
+        buffer.put(text("0", 1 + 42));
+        buffer.put(text(String.format("%08d%08d", SUBFRAMES * SUBFRAME_SIZE, SUBFRAMES * SUBFRAME_SIZE), 16));
+        buffer.put(text(String.format("%-3s%-8s%-8s%02dRG", "INT", "RGB/LUT", "MAP", 8), 23));
+        for (int i = 0; i < 4; i++)
+        {
+            buffer.put(text("450000N0100000E", 15));
+        }
+        buffer.put(text(String.format("0C4%4s1LU%6sN%3s3%05d", "", "", "", NUM_COLORS), 26));
+        for (int i = 0; i < 3 * NUM_COLORS; i++)
+        {
+            buffer.put((byte) random.nextInt(256));
+        }
+        buffer.put(text(String.format("0B%04d%04d%04d%04d08001000", SUBFRAMES, SUBFRAMES, SUBFRAME_SIZE,
+            SUBFRAME_SIZE), 26));
+        buffer.put(text("00000000001.0 ", 14));
+        int udidlPos = buffer.position();
+        buffer.put(text("", 5));
+        buffer.put(text("000RPFIMG", 9));
+        int udidDataLengthPos = buffer.position();
+        buffer.put(text("", 5));
+
+        // RPF location section, locating the components written to the image data below.
+        int locationPos = buffer.position();
+        int[] componentIds = {131, 132, 136, 137, 140};
+        buffer.putShort((short) (14 + 10 * componentIds.length)).putInt(14).putShort((short) componentIds.length);
+        buffer.putShort((short) 10).putInt(0);
+        int recordsPos = buffer.position();
+        buffer.position(recordsPos + 10 * componentIds.length);
+        int dataStart = buffer.position();
+        int subheaderLength = dataStart - headerLength;
+
+        // Compression section subheader.
+        int[] componentPos = new int[componentIds.length];
+        componentPos[0] = buffer.position();
+        buffer.putShort((short) 1).putShort((short) 4).putShort((short) 0);
+
+        // Compression lookup subsection: four tables, one per kernel row, of 4096 records of four colors.
+        componentPos[1] = buffer.position();
+        buffer.putInt(6).putShort((short) 14);
+        for (int t = 0; t < 4; t++)
+        {
+            buffer.putShort((short) t).putInt(4096).putShort((short) 4).putShort((short) 8).putInt(62 + t * 16384);
+        }
+        for (int i = 0; i < 4 * 4096 * 4; i++)
+        {
+            buffer.put((byte) random.nextInt(NUM_COLORS));
+        }
+
+        // Image description subheader.
+        componentPos[2] = buffer.position();
+        buffer.putShort((short) 1).putShort((short) (SUBFRAMES * SUBFRAMES)).putShort((short) 1).putShort((short) 1);
+        buffer.putShort((short) SUBFRAMES).putShort((short) SUBFRAMES).putInt(SUBFRAME_SIZE).putInt(SUBFRAME_SIZE);
+        buffer.putInt(-1).putInt(-1);
+
+        // Image display parameters subheader.
+        componentPos[3] = buffer.position();
+        buffer.putInt(CODES_PER_ROW).putInt(CODES_PER_ROW).put((byte) 12);
+
+        // Spatial data subsection: the subframes in row major order, each 64 rows of 64 packed 12-bit codes.
+        componentPos[4] = buffer.position();
+        for (int i = 0; i < SUBFRAMES * SUBFRAMES * CODES_PER_ROW * CODES_PER_ROW / 2; i++)
+        {
+            int c0 = random.nextInt(4095);
+            int c1 = random.nextInt(4095);
+            buffer.put((byte) (c0 >> 4)).put((byte) (((c0 & 0xF) << 4) | (c1 >> 8))).put((byte) c1);
+        }
+        int end = buffer.position();
+
+        for (int i = 0; i < componentIds.length; i++)
+        {
+            int length = (i + 1 < componentIds.length ? componentPos[i + 1] : end) - componentPos[i];
+            buffer.position(recordsPos + 10 * i);
+            buffer.putShort((short) componentIds[i]).putInt(length).putInt(componentPos[i]);
+        }
+
+        buffer.putInt(locationRefPos, locationPos);
+        putText(buffer, fileLengthPos, String.format("%012d%06d", end, headerLength));
+        putText(buffer, segmentLengthsPos, String.format("%06d%010d", subheaderLength, end - dataStart));
+        putText(buffer, udidlPos, String.format("%05d", dataStart - udidDataLengthPos + 9));
+        putText(buffer, udidDataLengthPos, String.format("%05d", dataStart - locationPos));
+
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(buffer.array(), 0, end);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Formats a number in the base 34 alphabet of RPF frame file names, which excludes the letters I and O.
+     *
+     * @param value  the number.
+     * @param digits the number of digits.
+     *
+     * @return the digits.
+     */
+    protected static String base34(int value, int digits)
+    {
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--, value /= 34)
+        {
+            chars[i] = BASE34_ALPHABET.charAt(value % 34);
+        }
+        return new String(chars);
+    }
+
+    protected static byte[] text(String text, int size)
+    {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) ' ');
+        byte[] textBytes = text.getBytes();
+        System.arraycopy(textBytes, 0, bytes, 0, textBytes.length);
+        return bytes;
+    }
+
+    protected static void putText(ByteBuffer buffer, int position, String text)
+    {
+        byte[] bytes = text.getBytes();
+        for (int i = 0; i < bytes.length; i++)
+        {
+            buffer.put(position + i, bytes[i]);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.formats.rpf.*;
+import gov.nasa.worldwind.geom.Sector;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Compares discovering the frames of an RPF data set by crawling its directories with opening an {@link RPFFrameIndex}
+ * of the data set, and compares finding the frames that intersect a sector by testing every frame with finding them
+ * through the index. The data set is a tree of directories of empty CIB frame files, whose sectors are determined by
+ * their names, so the benchmark measures only file system traversal and indexing.
+ * <p/>
+ * Startup is measured four ways: crawling the directories with {@link RPFCrawler} and computing each frame's sector, as
+ * the RPF importer does; creating and saving the index when no index file exists; opening the index file when no
+ * directory has changed; and opening the index file after a frame has been added to one directory. The operating
+ * system's file cache is warm in every case, so the cold measurement reflects the work of creating the index rather
+ * than disk latency.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.RPFFrameIndexBenchmark [numDirectories] [framesPerDirectory] [numQueries]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class RPFFrameIndexBenchmark
+{
+    protected static final String DATA_SERIES = "I1";
+    protected static final char ZONE = '2';
+    protected static final String BASE34_ALPHABET = "0123456789ABCDEFGHJKLMNPQRSTUVWXYZ";
+    protected static final int WARMUP_ITERATIONS = 2;
+    protected static final int MEASUREMENT_ITERATIONS = 5;
+
+    protected interface Workload
+    {
+        Object run() throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int numDirectories = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int framesPerDirectory = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int numQueries = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+
+        final File root = createTempDirectory();
+        final File indexFile = new File(root.getPath() + ".idx");
+        try
+        {
+            long start = System.nanoTime();
+            final File changedDir = writeFrames(root, numDirectories, framesPerDirectory);
+            System.out.printf("%d frames in %d directories, written in %.0f ms%n", numDirectories * framesPerDirectory,
+                numDirectories, (System.nanoTime() - start) / 1e6);
+
+            System.out.printf("%-36s %12s %10s%n", "Startup", "ms", "frames");
+
+            measure("RPFCrawler + sector per frame", new Workload()
+            {
+                public Object run()
+                {
+                    File[] files = new RPFCrawler().invoke(root, false);
+                    List<Sector> sectors = new ArrayList<Sector>(files.length);
+                    for (File file : files)
+                    {
+                        sectors.add(RPFFrameIndex.computeFrameSector(file));
+                    }
+                    return sectors.size();
+                }
+            });
+
+            measure("RPFFrameIndex cold (create, save)", new Workload()
+            {
+                public Object run() throws IOException
+                {
+                    indexFile.delete();
+                    return RPFFrameIndex.open(root, indexFile).getNumFrames();
+                }
+            });
+
+            measure("RPFFrameIndex warm (map, refresh)", new Workload()
+            {
+                public Object run() throws IOException
+                {
+                    return RPFFrameIndex.open(root, indexFile).getNumFrames();
+                }
+            });
+
+            final int[] added = {numDirectories * framesPerDirectory};
+            measure("RPFFrameIndex one directory changed", new Workload()
+            {
+                public Object run() throws IOException
+                {
+                    createFile(new File(changedDir, frameName(added[0]++)));
+                    changedDir.setLastModified(changedDir.lastModified() + 1000);
+                    return RPFFrameIndex.open(root, indexFile).getNumFrames();
+                }
+            });
+
+            measureQueries(RPFFrameIndex.open(root, indexFile), numQueries);
+        }
+        finally
+        {
+            delete(root);
+            indexFile.delete();
+        }
+    }
+
+    protected static void measure(String name, Workload workload) throws IOException
+    {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            workload.run();
+        }
+
+        Object result = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+        {
+            result = workload.run();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / MEASUREMENT_ITERATIONS;
+
+        System.out.printf("%-36s %12.2f %10s%n", name, millis, result);
+    }
+
+    /**
+     * Measures finding the frames intersecting random sectors about four frames across, by testing every frame's sector
+     * and through the index, and verifies that both find the same frames.
+     */
+    protected static void measureQueries(RPFFrameIndex index, int numQueries)
+    {
+        Sector[] frameSectors = new Sector[index.getNumFrames()];
+        for (int i = 0; i < frameSectors.length; i++)
+        {
+            frameSectors[i] = index.getFrameSector(i);
+        }
+
+        Sector bounds = index.getBoundingSector();
+        double size = 4 * frameSectors[0].getDeltaLonDegrees();
+        Random random = new Random(1);
+        Sector[] queries = new Sector[numQueries];
+        for (int i = 0; i < numQueries; i++)
+        {
+            double lat = bounds.getMinLatitude().degrees + random.nextDouble() * bounds.getDeltaLatDegrees();
+            double lon = bounds.getMinLongitude().degrees + random.nextDouble() * bounds.getDeltaLonDegrees();
+            queries[i] = Sector.fromDegrees(lat, lat + size, lon, lon + size);
+        }
+
+        long linearHits = 0;
+        long start = System.nanoTime();
+        for (Sector query : queries)
+        {
+            for (Sector frameSector : frameSectors)
+            {
+                if (query.intersects(frameSector))
+                    linearHits++;
+            }
+        }
+        double linearMicros = (System.nanoTime() - start) / 1e3 / numQueries;
+
+        long indexHits = 0;
+        start = System.nanoTime();
+        for (Sector query : queries)
+        {
+            indexHits += index.findFrames(query).length;
+        }
+        double indexMicros = (System.nanoTime() - start) / 1e3 / numQueries;
+
+        System.out.printf("%-36s %12s %10s%n", "Query by sector", "us/query", "frames");
+        System.out.printf("%-36s %12.2f %10d%n", "Test every frame", linearMicros, linearHits);
+        System.out.printf("%-36s %12.2f %10d%n", "RPFFrameIndex.findFrames", indexMicros, indexHits);
+    }
+
+    /**
+     * Writes empty frame files into a tree of directories. Each directory holds a run of consecutive frame numbers, and
+     * directories are grouped ten to a parent directory.
+     *
+     * @return the last frame directory.
+     */
+    protected static File writeFrames(File root, int numDirectories, int framesPerDirectory) throws IOException
+    {
+        File dir = null;
+        for (int d = 0; d < numDirectories; d++)
+        {
+            dir = new File(new File(root, "GROUP" + (d / 10)), "FRAMES" + d);
+            for (int i = 0; i < framesPerDirectory; i++)
+            {
+                createFile(new File(dir, frameName(d * framesPerDirectory + i)));
+            }
+        }
+
+        return dir;
+    }
+
+    protected static String frameName(int frameNumber)
+    {
+        // CIB frame names have six frame number digits and one version digit.
+        return base34(frameNumber, 6) + base34(1, 1) + "3." + DATA_SERIES + ZONE;
+    }
+
+    protected static String base34(int value, int digits)
+    {
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--)
+        {
+            chars[i] = BASE34_ALPHABET.charAt(value % 34);
+            value /= 34;
+        }
+
+        return new String(chars);
+    }
+
+    protected static void createFile(File file) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        new FileOutputStream(file).close();
+    }
+
+    protected static File createTempDirectory() throws IOException
+    {
+        File dir = File.createTempFile("RPFFrameIndexBenchmark", "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("Cannot create directory " + dir);
+        return dir;
+    }
+
+    protected static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
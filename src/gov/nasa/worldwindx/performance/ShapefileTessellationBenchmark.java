@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.formats.shapefile.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Measures the CPU side of preparing {@link ShapefilePolylines} for display as the dataset grows: the time to
+ * generalize the shapefile's boundaries and to load the saved generalization, and the time to tessellate every tile of
+ * the shape at several levels of detail, along with the size of the tessellated geometry. Each synthetic shapefile
+ * holds random walk polylines spread over the globe.
+ * <p/>
+ * The tessellation time at a level of detail is the time a frame viewing the whole dataset at that level waits for
+ * geometry, were it tessellated synchronously. Before levels of detail, every frame needed the full resolution
+ * geometry.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.ShapefileTessellationBenchmark [millionsOfVertices ...]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class ShapefileTessellationBenchmark
+{
+    protected static final int POINTS_PER_RECORD = 1000;
+    protected static final int[] LEVELS = {0, 2, 4, 6, 8, 10};
+    protected static final int ITERATIONS = 5;
+
+    /** Exposes the tessellation of each tile of a ShapefilePolylines. */
+    protected static class BenchmarkPolylines extends ShapefilePolylines
+    {
+        public BenchmarkPolylines(Shapefile shapefile)
+        {
+            super(shapefile);
+        }
+
+        public ShapefileGeneralization generalize()
+        {
+            return this.loadGeneralization();
+        }
+
+        /**
+         * Tessellates every tile at a resolution.
+         *
+         * @param resolution the resolution in radians, or zero for full resolution.
+         *
+         * @return the size in bytes of the tessellated tiles.
+         */
+        public long tessellate(double resolution)
+        {
+            return this.tessellate(this.rootTile, resolution);
+        }
+
+        protected long tessellate(Tile tile, double resolution)
+        {
+            TileGeometry geom = new TileGeometry(tile, resolution);
+            this.tessellateTile(geom);
+            long size = geom.getSizeInBytes();
+
+            if (tile.children != null)
+            {
+                for (Tile child : tile.children)
+                {
+                    size += this.tessellate(child, resolution);
+                }
+            }
+
+            return size;
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        double[] sizes = {1, 4};
+        if (args.length > 0)
+        {
+            sizes = new double[args.length];
+            for (int i = 0; i < args.length; i++)
+            {
+                sizes[i] = Double.parseDouble(args[i]);
+            }
+        }
+
+        for (double size : sizes)
+        {
+            File dir = File.createTempFile("ShapefileTessellationBenchmark", "");
+            dir.delete();
+            dir.mkdir();
+            File file = new File(dir, "lines.shp");
+            try
+            {
+                int numRecords = Math.max(1, (int) (size * 1e6 / POINTS_PER_RECORD));
+                writeShapefile(file, numRecords);
+                measure(file, numRecords);
+            }
+            finally
+            {
+                File[] files = dir.listFiles();
+                if (files != null)
+                {
+                    for (File f : files)
+                    {
+                        f.delete();
+                    }
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    protected static void measure(File file, int numRecords) throws IOException
+    {
+        long start = System.nanoTime();
+        BenchmarkPolylines polylines = new BenchmarkPolylines(new Shapefile(file));
+        double openMillis = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        polylines.generalize();
+        double generalizeMillis = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        polylines = new BenchmarkPolylines(new Shapefile(file));
+        double reopenMillis = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        polylines.generalize();
+        double loadMillis = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("%n%d records, %d vertices%n", numRecords, (long) numRecords * POINTS_PER_RECORD);
+        System.out.printf("open %.1f ms, generalize %.1f ms, reopen %.1f ms, load generalization %.1f ms%n",
+            openMillis, generalizeMillis, reopenMillis, loadMillis);
+        System.out.printf("%-8s %14s %12s%n", "Level", "geometry MB", "ms");
+
+        // Compile the tessellator before measuring it.
+        polylines.tessellate(0);
+        polylines.tessellate(Math.toRadians(45) / 512);
+
+        for (int level : LEVELS)
+        {
+            measureLevel(polylines, String.valueOf(level), Math.toRadians(45) / 512 / (1 << level));
+        }
+        measureLevel(polylines, "full", 0);
+    }
+
+    protected static void measureLevel(BenchmarkPolylines polylines, String name, double resolution)
+    {
+        long size = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            size = polylines.tessellate(resolution);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+        System.out.printf("%-8s %14.1f %12.1f%n", name, size / 1048576d, millis);
+    }
+
+    /** Writes a polyline shapefile and its index file. Each record is a random walk of one part. */
+    protected static void writeShapefile(File file, int numRecords) throws IOException
+    {
+        int contentLength = 4 + 32 + 4 + 4 + 4 + 16 * POINTS_PER_RECORD;
+        int recordLength = 8 + contentLength;
+        File shxFile = new File(file.getParentFile(), "lines.shx");
+
+        FileChannel shp = new FileOutputStream(file).getChannel();
+        FileChannel shx = new FileOutputStream(shxFile).getChannel();
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(100);
+            writeHeader(header, 100 + (long) numRecords * recordLength);
+            shp.write(header);
+            writeHeader(header, 100 + 8L * numRecords);
+            shx.write(header);
+
+            Random random = new Random(11);
+            ByteBuffer record = ByteBuffer.allocate(recordLength);
+            ByteBuffer index = ByteBuffer.allocate(8);
+            double[] coords = new double[2 * POINTS_PER_RECORD];
+            long offset = 100;
+
+            for (int i = 0; i < numRecords; i++)
+            {
+                double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+                double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+                double x = -170 + 340 * random.nextDouble();
+                double y = -75 + 150 * random.nextDouble();
+                for (int j = 0; j < POINTS_PER_RECORD; j++)
+                {
+                    x = Math.max(-180, Math.min(180, x + 0.02 * random.nextGaussian()));
+                    y = Math.max(-90, Math.min(90, y + 0.02 * random.nextGaussian()));
+                    coords[2 * j] = x;
+                    coords[2 * j + 1] = y;
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+
+                record.clear();
+                record.order(ByteOrder.BIG_ENDIAN);
+                record.putInt(i + 1);
+                record.putInt(contentLength / 2);
+                record.order(ByteOrder.LITTLE_ENDIAN);
+                record.putInt(3); // polyline
+                record.putDouble(minX).putDouble(minY).putDouble(maxX).putDouble(maxY);
+                record.putInt(1); // number of parts
+                record.putInt(POINTS_PER_RECORD);
+                record.putInt(0); // first point of the part
+                for (double coord : coords)
+                {
+                    record.putDouble(coord);
+                }
+                record.flip();
+                shp.write(record);
+
+                index.clear();
+                index.putInt((int) (offset / 2));
+                index.putInt(contentLength / 2);
+                index.flip();
+                shx.write(index);
+
+                offset += recordLength;
+            }
+        }
+        finally
+        {
+            shp.close();
+            shx.close();
+        }
+    }
+
+    protected static void writeHeader(ByteBuffer buffer, long length)
+    {
+        buffer.clear();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(9994);
+        buffer.position(24);
+        buffer.putInt((int) (length / 2));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(1000);
+        buffer.putInt(3); // polyline
+        buffer.putDouble(-180).putDouble(-90).putDouble(180).putDouble(90);
+        buffer.position(100);
+        buffer.flip();
+    }
+}
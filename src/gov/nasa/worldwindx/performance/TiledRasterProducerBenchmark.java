@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.WWIO;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Measures the throughput of {@link TiledElevationProducer} building a tile pyramid from a synthetic elevation mosaic,
+ * once on the calling thread and then in parallel with an increasing number of threads. The mosaic is a grid of
+ * in-memory 16-bit rasters, so the measurement covers drawing and writing tiles rather than reading source files.
+ * Tiles are written to a temporary directory that is deleted after each run.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.TiledRasterProducerBenchmark [mosaicSize] [rasterSize] [maxThreads]
+ * </pre>
+ * where <code>mosaicSize</code> is the number of rasters along each side of the mosaic and <code>rasterSize</code> is
+ * the width and height of each raster in pixels.
+ *
+ * @version $Id$
+ */
+public class TiledRasterProducerBenchmark
+{
+    protected static final double RASTER_SIZE_DEGREES = 1d;
+    protected static final int WARMUP_ITERATIONS = 1;
+    protected static final int MEASUREMENT_ITERATIONS = 3;
+
+    public static void main(String[] args) throws Exception
+    {
+        int mosaicSize = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rasterSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<DataRaster> mosaic = createMosaic(mosaicSize, rasterSize);
+
+        System.out.printf("Mosaic of %d x %d rasters, %d x %d pixels each, %d processors%n", mosaicSize, mosaicSize,
+            rasterSize, rasterSize, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-10s %10s %12s %12s %10s%n", "threads", "tiles", "millis", "tiles/sec", "speedup");
+
+        double baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2)
+        {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            {
+                produce(mosaic, threads);
+            }
+
+            long tiles = 0;
+            long millis = 0;
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+            {
+                long start = System.nanoTime();
+                tiles += produce(mosaic, threads);
+                millis += (System.nanoTime() - start) / 1000000L;
+            }
+
+            double tilesPerSecond = 1000d * tiles / Math.max(millis, 1);
+            if (threads == 1)
+                baseline = tilesPerSecond;
+
+            System.out.printf("%-10d %10d %12d %12.1f %10.2f%n", threads, tiles / MEASUREMENT_ITERATIONS,
+                millis / MEASUREMENT_ITERATIONS, tilesPerSecond, tilesPerSecond / baseline);
+
+            // Make sure the processor count is measured when it is not a power of two.
+            if (threads < maxThreads && threads * 2 > maxThreads)
+                threads = maxThreads / 2;
+        }
+    }
+
+    /**
+     * Creates a grid of elevation rasters with a smoothly varying synthetic surface, so that adjacent rasters are
+     * continuous.
+     *
+     * @param mosaicSize the number of rasters along each side of the grid.
+     * @param rasterSize the width and height of each raster in pixels.
+     *
+     * @return the rasters in the grid.
+     */
+    protected static List<DataRaster> createMosaic(int mosaicSize, int rasterSize)
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+        params.setValue(AVKey.BYTE_ORDER, AVKey.LITTLE_ENDIAN);
+        params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+
+        List<DataRaster> rasters = new ArrayList<DataRaster>();
+        for (int row = 0; row < mosaicSize; row++)
+        {
+            for (int col = 0; col < mosaicSize; col++)
+            {
+                Sector sector = Sector.fromDegrees(row * RASTER_SIZE_DEGREES, (row + 1) * RASTER_SIZE_DEGREES,
+                    col * RASTER_SIZE_DEGREES, (col + 1) * RASTER_SIZE_DEGREES);
+                ByteBufferRaster raster = new ByteBufferRaster(rasterSize, rasterSize, sector, params);
+                raster.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+
+                double[] samples = new double[rasterSize];
+                for (int y = 0; y < rasterSize; y++)
+                {
+                    double lat = (row + (rasterSize - 1 - y) / (double) rasterSize) * RASTER_SIZE_DEGREES;
+                    for (int x = 0; x < rasterSize; x++)
+                    {
+                        double lon = (col + x / (double) rasterSize) * RASTER_SIZE_DEGREES;
+                        samples[x] = 1000 * Math.sin(lat * 3) * Math.cos(lon * 2) + 100 * Math.sin(lat * lon * 40);
+                    }
+                    raster.getBuffer().putDouble(y * rasterSize, samples, 0, rasterSize);
+                }
+
+                rasters.add(raster);
+            }
+        }
+
+        return rasters;
+    }
+
+    /**
+     * Builds and writes a tile pyramid for the mosaic.
+     *
+     * @param mosaic  the source rasters.
+     * @param threads the number of threads building the pyramid. One builds the pyramid on the calling thread.
+     *
+     * @return the number of tiles written.
+     *
+     * @throws Exception if production fails.
+     */
+    protected static long produce(List<DataRaster> mosaic, int threads) throws Exception
+    {
+        File root = File.createTempFile("TiledRasterProducerBenchmark", "");
+        root.delete();
+        root.mkdir();
+
+        try
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.FILE_STORE_LOCATION, root.getAbsolutePath());
+            params.setValue(AVKey.DATA_CACHE_NAME, "Benchmark");
+            params.setValue(AVKey.DATASET_NAME, "Benchmark");
+            if (threads > 1)
+                params.setValue(AVKey.TILED_RASTER_PRODUCER_PARALLELISM, threads);
+
+            TiledElevationProducer producer = new TiledElevationProducer();
+            producer.setStoreParameters(params);
+            for (DataRaster raster : mosaic)
+            {
+                producer.offerDataSource(raster, null);
+            }
+            producer.startProduction();
+
+            return countFiles(new File(root, "Benchmark"), ".bil");
+        }
+        finally
+        {
+            WWIO.deleteDirectory(root);
+            root.delete();
+        }
+    }
+
+    protected static long countFiles(File dir, String suffix)
+    {
+        long count = 0;
+
+        File[] files = dir.listFiles();
+        if (files == null)
+            return count;
+
+        for (File file : files)
+        {
+            if (file.isDirectory())
+                count += countFiles(file, suffix);
+            else if (file.getName().endsWith(suffix))
+                count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.cache.BasicDataFileStore;
+import gov.nasa.worldwind.formats.vpf.*;
+import gov.nasa.worldwind.util.WWIO;
+
+import java.io.File;
+import java.util.concurrent.*;
+
+/**
+ * Measures the time to create the primitive data of every tile of every coverage of the libraries of a VPF database,
+ * such as a VMAP0 distribution, three ways: by reading the primitive tables of one coverage tile after another, as
+ * {@link VPFLayer} did before primitive data was cached; by creating the tiles concurrently and writing them to a
+ * {@link VPFPrimitiveDataCache}, as VPFLayer does when a library is first enabled; and by reading the tiles from the
+ * cache, as later sessions do. The cache is kept in a temporary file store that is deleted when the benchmark ends.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.VPFLoadBenchmark pathToDatabaseHeaderTable [numThreads]
+ * </pre>
+ * For example, <code>java gov.nasa.worldwindx.performance.VPFLoadBenchmark /data/vmaplv0/dht</code>.
+ *
+ * @version $Id$
+ */
+public class VPFLoadBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0 || !VPFDatabase.isDatabase(args[0]))
+        {
+            System.out.println("Usage: VPFLoadBenchmark pathToDatabaseHeaderTable [numThreads]");
+            return;
+        }
+
+        int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        VPFDatabase database = VPFDatabase.fromFile(args[0]);
+
+        File root = File.createTempFile("VPFLoadBenchmark", "");
+        root.delete();
+        root.mkdir();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try
+        {
+            System.out.printf("%-12s %8s %12s %16s %12s%n", "Library", "tiles", "tables ms",
+                String.format("cache %d thr ms", numThreads), "cached ms");
+
+            for (VPFLibrary library : database.getLibraries())
+            {
+                File cacheDir = new File(root, library.getName());
+                VPFPrimitiveDataCache cache = new VPFPrimitiveDataCache(new BasicDataFileStore(cacheDir));
+
+                long start = System.nanoTime();
+                int numTiles = loadLibrary(library, null);
+                double tablesMillis = (System.nanoTime() - start) / 1e6;
+
+                start = System.nanoTime();
+                cache.cacheLibrary(library, executor);
+                double cacheMillis = (System.nanoTime() - start) / 1e6;
+
+                start = System.nanoTime();
+                loadLibrary(library, cache);
+                double cachedMillis = (System.nanoTime() - start) / 1e6;
+
+                System.out.printf("%-12s %8d %12.0f %16.0f %12.0f%n", library.getName(), numTiles, tablesMillis,
+                    cacheMillis, cachedMillis);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            WWIO.deleteDirectory(root);
+            root.delete();
+        }
+    }
+
+    /**
+     * Creates the primitive data of every tile of every coverage of a library, one tile after another.
+     *
+     * @param library the library.
+     * @param cache   the cache to read primitive data from, or null to read the primitive tables.
+     *
+     * @return the number of coverage tiles that have primitive data.
+     */
+    protected static int loadLibrary(VPFLibrary library, VPFPrimitiveDataCache cache)
+    {
+        int count = 0;
+        VPFTile[] tiles = library.getTiles();
+
+        for (VPFCoverage coverage : library.getCoverages())
+        {
+            VPFTile[] coverageTiles = (coverage.isTiled() && tiles != null) ? tiles : new VPFTile[] {null};
+            for (VPFTile tile : coverageTiles)
+            {
+                if (new VPFBasicPrimitiveDataFactory(tile, cache).createPrimitiveData(coverage) != null)
+                    count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.data.BufferWrapperRaster;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.terrain.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Compares the time to compute a viewshed with {@link ViewshedCalculator} with the time to compute the same cells by
+ * calling {@link HighResolutionTerrain#intersect(gov.nasa.worldwind.geom.Position, gov.nasa.worldwind.geom.Position)}
+ * for each cell. The terrain is the computed hills of {@link LineOfSightBenchmark}, so the benchmark runs headless and
+ * offline. Because intersecting every cell is slow, the per-cell rate is measured over a sample of the cells.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java gov.nasa.worldwindx.performance.ViewshedBenchmark [radiusMeters] [cellSizeMeters]
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class ViewshedBenchmark extends LineOfSightBenchmark
+{
+    protected static final int NUM_INTERSECTION_SAMPLES = 2000;
+    protected static final double TARGET_HEIGHT = 2;
+
+    public static void main(String[] args) throws Exception
+    {
+        double radius = args.length > 0 ? Double.parseDouble(args[0]) : 10000;
+        double cellSize = args.length > 1 ? Double.parseDouble(args[1]) : 30;
+
+        Globe globe = new Earth();
+        globe.setElevationModel(new HillsElevationModel());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        BufferWrapperRaster viewshed = null;
+        double totalSeconds = 0;
+        try
+        {
+            for (int i = 0; i < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; i++)
+            {
+                HighResolutionTerrain terrain = new HighResolutionTerrain(globe, SECTOR, TERRAIN_RESOLUTION, null);
+                ViewshedCalculator calculator = new ViewshedCalculator(terrain, executor);
+                calculator.setTargetHeight(TARGET_HEIGHT);
+
+                long start = System.nanoTime();
+                viewshed = calculator.computeViewshed(OBSERVER, radius, cellSize);
+                if (i >= WARMUP_ITERATIONS)
+                    totalSeconds += (System.nanoTime() - start) / 1e9;
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        int numCells = viewshed.getWidth() * viewshed.getHeight();
+        System.out.printf("%d x %d cells%n", viewshed.getWidth(), viewshed.getHeight());
+        System.out.printf("%-32s %12s %12s%n", "Method", "cells/s", "seconds");
+        System.out.printf("%-32s %12.0f %12.3f%n", "ViewshedCalculator",
+            numCells * MEASUREMENT_ITERATIONS / totalSeconds, totalSeconds / MEASUREMENT_ITERATIONS);
+
+        // Intersect a sample of the cells, spread evenly over the raster.
+        HighResolutionTerrain terrain = new HighResolutionTerrain(globe, SECTOR, TERRAIN_RESOLUTION, null);
+        Sector sector = viewshed.getSector();
+        double deltaLat = sector.getDeltaLatDegrees() / viewshed.getHeight();
+        double deltaLon = sector.getDeltaLonDegrees() / viewshed.getWidth();
+        int step = Math.max(1, numCells / NUM_INTERSECTION_SAMPLES);
+        int numSamples = 0, numAgreements = 0;
+
+        long start = System.nanoTime();
+        for (int k = 0; k < numCells; k += step)
+        {
+            int row = k / viewshed.getWidth();
+            int col = k % viewshed.getWidth();
+            double value = viewshed.getDoubleAtPosition(row, col);
+            if (value == ViewshedCalculator.OUTSIDE_RADIUS)
+                continue;
+
+            Position target = Position.fromDegrees(sector.getMaxLatitude().degrees - (row + 0.5) * deltaLat,
+                sector.getMinLongitude().degrees + (col + 0.5) * deltaLon, TARGET_HEIGHT);
+            boolean visible = isVisible(terrain, OBSERVER, target);
+
+            numSamples++;
+            if (visible == (value == ViewshedCalculator.VISIBLE))
+                numAgreements++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double rate = numSamples / seconds;
+        System.out.printf("%-32s %12.0f %12.3f (estimated)%n", "HighResolutionTerrain.intersect", rate,
+            numCells / rate);
+        System.out.printf("Agreement with intersection: %.1f%% of %d cells%n", 100.0 * numAgreements / numSamples,
+            numSamples);
+    }
+
+    /**
+     * Determines whether a target is visible from an observer by intersecting the line between them with the terrain.
+     * Intersections beyond the target, which {@link HighResolutionTerrain} may also report, do not hide the target.
+     *
+     * @param terrain  the terrain.
+     * @param observer the observer's position, with altitude relative to the terrain.
+     * @param target   the target's position, with altitude relative to the terrain.
+     *
+     * @return true if the target is visible, otherwise false.
+     */
+    protected static boolean isVisible(HighResolutionTerrain terrain, Position observer, Position target)
+    {
+        Intersection[] intersections = terrain.intersect(observer, target);
+        if (intersections == null)
+            return true;
+
+        // The intersections are sorted by distance from the observer.
+        Vec4 origin = terrain.getSurfacePoint(observer);
+        return origin.distanceTo3(intersections[0].getIntersectionPoint())
+            >= origin.distanceTo3(terrain.getSurfacePoint(target));
+    }
+}
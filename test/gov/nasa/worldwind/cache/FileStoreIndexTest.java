@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class FileStoreIndexTest
+{
+    private File root;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.root = File.createTempFile("FileStoreIndexTest", "");
+        assertTrue(this.root.delete());
+        assertTrue(this.root.mkdir());
+
+        this.createFile("a.txt");
+        this.createFile("Earth/Layer/0/0/0_0.dds");
+        this.createFile("Earth/Layer/0/0/0_1.dds");
+        this.createFile("Earth/Layer/1/0/0_0.dds");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        WWIO.deleteDirectory(this.root);
+        this.root.delete();
+    }
+
+    /** Tests that a built index contains the files beneath its directory and nothing else. */
+    @Test
+    public void testBuild()
+    {
+        FileStoreIndex index = new FileStoreIndex(this.root);
+        assertFalse(index.isBuilt());
+        assertFalse(index.contains("a.txt"));
+
+        index.build();
+        assertTrue(index.isBuilt());
+        assertEquals(4, index.size());
+        assertTrue(index.contains("a.txt"));
+        assertTrue(index.contains("Earth/Layer/0/0/0_1.dds"));
+        assertFalse(index.contains("Earth/Layer/0/0/0_2.dds"));
+        assertFalse(index.contains("Earth/Layer"));
+        assertFalse(index.contains(null));
+    }
+
+    /** Tests adding and removing files. */
+    @Test
+    public void testAddRemove()
+    {
+        FileStoreIndex index = new FileStoreIndex(this.root);
+        index.build();
+
+        index.add("Earth/Other/0/0/0_0.dds");
+        assertTrue(index.contains("Earth/Other/0/0/0_0.dds"));
+        assertEquals(5, index.size());
+        assertTrue(index.isModified());
+
+        index.remove("a.txt");
+        assertFalse(index.contains("a.txt"));
+        assertEquals(4, index.size());
+
+        index.remove("a.txt");
+        assertEquals(4, index.size());
+    }
+
+    /** Tests that a rebuild from a saved index keeps unchanged directories and finds changes to the others. */
+    @Test
+    public void testSaveAndRebuild() throws Exception
+    {
+        FileStoreIndex index = new FileStoreIndex(this.root);
+        index.build();
+        index.save();
+        assertTrue(index.getIndexFile().exists());
+        assertFalse(index.isModified());
+        assertTrue(index.getLastSaveTime() > 0);
+
+        // A file added to the index but not to disk lives on in the saved index until its directory changes.
+        File unchanged = new File(this.root, "Earth/Layer/1/0");
+        long unchangedModified = unchanged.lastModified();
+        index.add("Earth/Layer/1/0/phantom.dds");
+        index.save();
+
+        // Change one directory. Setting its modification time ensures the change is seen on coarse file systems.
+        File changed = new File(this.root, "Earth/Layer/0/0");
+        this.createFile("Earth/Layer/0/0/0_2.dds");
+        assertTrue(new File(changed, "0_0.dds").delete());
+        assertTrue(changed.setLastModified(changed.lastModified() + 10000));
+        assertEquals(unchangedModified, unchanged.lastModified());
+
+        FileStoreIndex rebuilt = new FileStoreIndex(this.root);
+        rebuilt.build();
+        assertTrue(rebuilt.contains("a.txt"));
+        assertTrue(rebuilt.contains("Earth/Layer/1/0/0_0.dds"));
+        assertTrue(rebuilt.contains("Earth/Layer/1/0/phantom.dds"));
+        assertTrue(rebuilt.contains("Earth/Layer/0/0/0_1.dds"));
+        assertTrue(rebuilt.contains("Earth/Layer/0/0/0_2.dds"));
+        assertFalse(rebuilt.contains("Earth/Layer/0/0/0_0.dds"));
+        assertFalse(rebuilt.contains(FileStoreIndex.INDEX_FILE_NAME));
+    }
+
+    /** Tests that an unreadable saved index is ignored. */
+    @Test
+    public void testInvalidIndexFile() throws Exception
+    {
+        FileStoreIndex index = new FileStoreIndex(this.root);
+        FileOutputStream out = new FileOutputStream(index.getIndexFile());
+        out.write(new byte[] {1, 2, 3});
+        out.close();
+
+        index.build();
+        assertEquals(4, index.size());
+    }
+
+    /** Tests that marking a directory as used does not cause the next build to list it again. */
+    @Test
+    public void testTouchDirectory() throws Exception
+    {
+        FileStoreIndex index = new FileStoreIndex(this.root);
+        index.build();
+        index.add("Earth/Layer/1/0/phantom.dds");
+        index.save();
+
+        File dir = new File(this.root, "Earth/Layer/1/0");
+        long time = dir.lastModified() + 20000;
+        assertTrue(index.touchDirectory("Earth/Layer/1/0", time));
+        assertEquals(time, dir.lastModified());
+        index.save();
+
+        FileStoreIndex rebuilt = new FileStoreIndex(this.root);
+        rebuilt.build();
+        assertTrue(rebuilt.contains("Earth/Layer/1/0/phantom.dds"));
+    }
+
+    /** Tests that a file store finds files through its index and keeps the index current. */
+    @Test
+    public void testBasicDataFileStore() throws Exception
+    {
+        BasicDataFileStore store = new BasicDataFileStore(this.root);
+        FileStoreIndex index = store.getWriteLocationIndex();
+        assertNotNull(index);
+
+        long start = System.currentTimeMillis();
+        while (!index.isBuilt() && System.currentTimeMillis() - start < 10000)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(index.isBuilt());
+
+        URL url = store.findFile("Earth/Layer/0/0/0_0.dds", false);
+        assertNotNull(url);
+        assertTrue(store.containsFile("Earth\\Layer\\0\\0\\0_1.dds"));
+        assertNull(store.findFile("Earth/Layer/0/0/0_9.dds", false));
+
+        // A file written without the index being told to a directory the index has not listed is found on disk and
+        // then indexed.
+        this.createFile("Earth/Layer/2/0/0_0.dds");
+        assertNotNull(store.findFile("Earth/Layer/2/0/0_0.dds", false));
+        assertTrue(index.contains("Earth/Layer/2/0/0_0.dds"));
+
+        store.removeFile(url);
+        assertFalse(index.contains("Earth/Layer/0/0/0_0.dds"));
+        assertNull(store.findFile("Earth/Layer/0/0/0_0.dds", false));
+
+        // The saved index is not one of the store's files.
+        index.save();
+        String[] names = store.listTopFileNames("", new FileStoreFilter()
+        {
+            public boolean accept(FileStore fileStore, String fileName)
+            {
+                return true;
+            }
+        });
+        for (String name : names)
+        {
+            assertFalse(name.startsWith(FileStoreIndex.INDEX_FILE_NAME));
+        }
+    }
+
+    /**
+     * Tests that the store answers from its built index without probing the disk, and that refreshing the index picks
+     * up files added or deleted without going through the store.
+     */
+    @Test
+    public void testChangesBehindStore() throws Exception
+    {
+        BasicDataFileStore store = new BasicDataFileStore(this.root);
+        FileStoreIndex index = store.getWriteLocationIndex();
+        assertNotNull(index);
+
+        long start = System.currentTimeMillis();
+        while (!index.isBuilt() && System.currentTimeMillis() - start < 10000)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(index.isBuilt());
+
+        // Index hits are trusted, and misses in listed directories are authoritative, until the index is refreshed.
+        assertTrue(new File(this.root, "Earth/Layer/0/0/0_0.dds").delete());
+        this.createFile("Earth/Layer/0/0/0_2.dds");
+        assertNotNull(store.findFile("Earth/Layer/0/0/0_0.dds", false));
+        assertNull(store.findFile("Earth/Layer/0/0/0_2.dds", false));
+        assertFalse(store.containsFile("Earth/Layer/0/0/0_2.dds"));
+
+        // Advance the directory's modification time in case the file system's timestamps are coarse.
+        File dir = new File(this.root, "Earth/Layer/0/0");
+        assertTrue(dir.setLastModified(dir.lastModified() + 2000));
+        index.refresh();
+        assertNull(store.findFile("Earth/Layer/0/0/0_0.dds", false));
+        assertFalse(index.contains("Earth/Layer/0/0/0_0.dds"));
+        assertNotNull(store.findFile("Earth/Layer/0/0/0_2.dds", false));
+        assertTrue(store.containsFile("Earth/Layer/0/0/0_2.dds"));
+
+        // Directories deleted behind the store are removed with their files.
+        assertTrue(new File(this.root, "Earth/Layer/1/0/0_0.dds").delete());
+        assertTrue(new File(this.root, "Earth/Layer/1/0").delete());
+        assertTrue(new File(this.root, "Earth/Layer/1").delete());
+        index.refresh();
+        assertFalse(index.contains("Earth/Layer/1/0/0_0.dds"));
+        assertFalse(index.containsDirectory("Earth/Layer/1/0"));
+
+        // Files created through the store are indexed as they are created.
+        File file = store.newFile("Earth/Layer/0/0/0_3.dds");
+        assertNotNull(file);
+        assertTrue(index.contains("Earth/Layer/0/0/0_3.dds"));
+    }
+
+    private void createFile(String name) throws IOException
+    {
+        File file = new File(this.root, name);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(name.getBytes("UTF-8"));
+        out.close();
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class FileStoreQuotaTest
+{
+    private static final int FILE_SIZE = 1000;
+    private static final int NUM_FILES = 10;
+
+    private File root;
+    private File cache;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.root = File.createTempFile("FileStoreQuotaTest", "");
+        assertTrue(this.root.delete());
+        assertTrue(this.root.mkdir());
+        this.cache = new File(this.root, "cache");
+
+        // Tiles written an hour apart, oldest first, and a configuration document older than all of them.
+        long time = System.currentTimeMillis() - 100 * 3600000L;
+        for (int i = 0; i < NUM_FILES; i++)
+        {
+            createFile(new File(this.cache, tileName(i)), FILE_SIZE, time + i * 3600000L);
+        }
+        createFile(new File(this.cache, "Earth/Layer/Layer.xml"), FILE_SIZE, time - 3600000L);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        WWIO.deleteDirectory(this.root);
+        this.root.delete();
+    }
+
+    /** Tests that eviction removes the least recently used tiles until the cache is below the quota. */
+    @Test
+    public void testEviction() throws Exception
+    {
+        BasicDataFileStore fileStore = new BasicDataFileStore(this.cache);
+        fileStore.setQuota((NUM_FILES + 1) * FILE_SIZE);
+        FileStoreQuota quota = fileStore.getQuota();
+        try
+        {
+            assertEquals(0, quota.evict());
+            assertTrue(quota.isScanned());
+            assertEquals(NUM_FILES, quota.getFileCount());
+            assertEquals(NUM_FILES * FILE_SIZE, quota.getBytesUsed());
+
+            // Use the oldest tile, making it the most recently used.
+            assertNotNull(fileStore.findFile(tileName(0), false));
+
+            // Lower the quota so that the tiles must be reduced to 90% of 8 tiles, which is 7 tiles.
+            fileStore.setQuota(8 * FILE_SIZE);
+            assertEquals(3, quota.evict());
+            assertEquals(3, quota.getFilesEvicted());
+            assertEquals(3 * FILE_SIZE, quota.getBytesEvicted());
+            assertEquals(7 * FILE_SIZE, quota.getBytesUsed());
+
+            assertTrue(new File(this.cache, tileName(0)).exists());
+            for (int i = 1; i <= 3; i++)
+            {
+                assertFalse(new File(this.cache, tileName(i)).exists());
+                assertNull(fileStore.findFile(tileName(i), false));
+            }
+            assertTrue(new File(this.cache, tileName(4)).exists());
+            assertTrue(new File(this.cache, "Earth/Layer/Layer.xml").exists());
+        }
+        finally
+        {
+            quota.stop();
+        }
+    }
+
+    /** Tests that files the file store writes are counted, and files it removes are no longer counted. */
+    @Test
+    public void testWriteAndRemove() throws Exception
+    {
+        BasicDataFileStore fileStore = new BasicDataFileStore(this.cache);
+        fileStore.setQuota(100 * FILE_SIZE);
+        FileStoreQuota quota = fileStore.getQuota();
+        try
+        {
+            quota.evict();
+
+            File file = fileStore.newFile("Earth/Layer/1/0/0_0.dds");
+            createFile(file, 2 * FILE_SIZE, System.currentTimeMillis());
+            quota.evict();
+            assertEquals(NUM_FILES + 1, quota.getFileCount());
+            assertEquals((NUM_FILES + 2) * FILE_SIZE, quota.getBytesUsed());
+
+            fileStore.removeFile(file.toURI().toURL());
+            assertEquals(NUM_FILES * FILE_SIZE, quota.getBytesUsed());
+        }
+        finally
+        {
+            quota.stop();
+        }
+    }
+
+    /** Tests that the order of use is kept between sessions, and that other locations are never evicted. */
+    @Test
+    public void testAccessTimesAndInstallLocations() throws Exception
+    {
+        File install = new File(this.root, "install");
+        createFile(new File(install, "Earth/Installed/0/0/0_0.dds"), 50 * FILE_SIZE, 0);
+
+        BasicDataFileStore fileStore = new BasicDataFileStore(this.cache);
+        fileStore.addLocation(install.getPath(), true);
+        fileStore.setQuota(100 * FILE_SIZE);
+        FileStoreQuota quota = fileStore.getQuota();
+        quota.evict();
+        assertNotNull(fileStore.findFile(tileName(0), false));
+        assertNotNull(fileStore.findFile("Earth/Installed/0/0/0_0.dds", false));
+        assertEquals(NUM_FILES * FILE_SIZE, quota.getBytesUsed());
+        quota.stop();
+        assertTrue(quota.getAccessFile().exists());
+
+        // A new session evicts the tiles by their use in the previous session.
+        fileStore = new BasicDataFileStore(this.cache);
+        fileStore.addLocation(install.getPath(), true);
+        fileStore.setQuota(2 * FILE_SIZE);
+        quota = fileStore.getQuota();
+        try
+        {
+            assertEquals(NUM_FILES - 1, quota.evict());
+            assertTrue(new File(this.cache, tileName(0)).exists());
+            assertTrue(new File(install, "Earth/Installed/0/0/0_0.dds").exists());
+        }
+        finally
+        {
+            quota.stop();
+        }
+    }
+
+    /** Tests that evicting a file also removes the database entry of the address retrieved to it. */
+    @Test
+    public void testEvictionRemovesDBEntry() throws Exception
+    {
+        BasicDataFileStore fileStore = new BasicDataFileStore(this.cache);
+        fileStore.setQuota(100 * FILE_SIZE);
+        FileStoreQuota quota = fileStore.getQuota();
+        try
+        {
+            quota.evict();
+
+            String address = "http://example.com/" + tileName(0);
+            fileStore.db.add(address, new BasicDataFileStore.DBEntry(address));
+            fileStore.updateEntry(address, new File(this.cache, tileName(0)).toURI().toURL(), 0);
+            assertEquals("image/dds", fileStore.getContentType(address));
+
+            fileStore.setQuota(2 * FILE_SIZE);
+            quota.evict();
+            assertFalse(new File(this.cache, tileName(0)).exists());
+            assertNull(fileStore.getContentType(address));
+        }
+        finally
+        {
+            quota.stop();
+        }
+    }
+
+    /** Tests that saving access times appends only the times of the files used since the last save. */
+    @Test
+    public void testAccessTimesAppended() throws Exception
+    {
+        BasicDataFileStore fileStore = new BasicDataFileStore(this.cache);
+        fileStore.setQuota(100 * FILE_SIZE);
+        FileStoreQuota quota = fileStore.getQuota();
+        try
+        {
+            quota.evict();
+            for (int i = 0; i < NUM_FILES; i++)
+            {
+                assertNotNull(fileStore.findFile(tileName(i), false));
+            }
+            quota.evict();
+            long length = quota.getAccessFile().length();
+            assertTrue(length > 0);
+
+            // The access file is left alone when no file was used.
+            quota.evict();
+            assertEquals(length, quota.getAccessFile().length());
+
+            // A modified UTF-8 record holds a two byte length, the name, and an eight byte time.
+            assertNotNull(fileStore.findFile(tileName(3), false));
+            quota.evict();
+            assertEquals(length + 2 + tileName(3).length() + 8, quota.getAccessFile().length());
+
+            Map<String, Long> times = quota.loadAccessTimes();
+            assertNotNull(times);
+            assertEquals(NUM_FILES, times.size());
+            for (int i = 0; i < NUM_FILES; i++)
+            {
+                assertTrue(times.get(tileName(3)) >= times.get(tileName(i)));
+            }
+        }
+        finally
+        {
+            quota.stop();
+        }
+    }
+
+    /** Tests that packed tiles are counted and evicted. */
+    @Test
+    public void testPackedTiles() throws Exception
+    {
+        PackedDataFileStore fileStore = new PackedDataFileStore(this.cache);
+        try
+        {
+            assertEquals(NUM_FILES, fileStore.importDirectory(this.cache, true));
+            fileStore.setQuota(5 * FILE_SIZE);
+            FileStoreQuota quota = fileStore.getQuota();
+
+            assertEquals(NUM_FILES - 4, quota.evict());
+            assertEquals(4, fileStore.getTileStore().size());
+            assertFalse(fileStore.containsFile(tileName(0)));
+            assertTrue(fileStore.containsFile(tileName(NUM_FILES - 1)));
+            quota.stop();
+        }
+        finally
+        {
+            fileStore.close();
+        }
+    }
+
+    /** Tests that the files of datasets that cannot be retrieved again are neither counted nor removed. */
+    @Test
+    public void testLocalDatasetsKept() throws Exception
+    {
+        long time = System.currentTimeMillis() - 200 * 3600000L;
+        createFile(new File(this.cache, "Earth/Imported/0/0/0_0.dds"), FILE_SIZE, time);
+        writeConfig(new File(this.cache, "Earth/Imported/Imported.xml"), false);
+        writeConfig(new File(this.cache, "Earth/Layer/Layer.xml"), true);
+
+        BasicDataFileStore fileStore = new BasicDataFileStore(this.cache);
+        fileStore.setQuota(100 * FILE_SIZE);
+        FileStoreQuota quota = fileStore.getQuota();
+        try
+        {
+            assertEquals(0, quota.evict());
+            assertEquals(NUM_FILES, quota.getFileCount());
+
+            // A dataset imported during the session is recognized once its configuration document is written.
+            File tile = fileStore.newFile("Earth/Imported2/0/0/0_0.dds");
+            createFile(tile, FILE_SIZE, time);
+            quota.evict();
+            assertEquals(NUM_FILES + 1, quota.getFileCount());
+            writeConfig(fileStore.newFile("Earth/Imported2/Imported2.xml"), false);
+
+            fileStore.setQuota(FILE_SIZE);
+            assertEquals(NUM_FILES, quota.evict());
+            assertEquals(0, quota.getFileCount());
+            assertTrue(new File(this.cache, "Earth/Imported/0/0/0_0.dds").exists());
+            assertTrue(tile.exists());
+            assertFalse(new File(this.cache, tileName(NUM_FILES - 1)).exists());
+        }
+        finally
+        {
+            quota.stop();
+        }
+    }
+
+    private static void writeConfig(File file, boolean retrievable) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        String service = retrievable
+            ? "<Service serviceName=\"WWTileService\"><URL>http://host/tiles</URL></Service>" : "";
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Layer version=\"1\" layerType=\"TiledImageLayer\">"
+            + "<DisplayName>Test</DisplayName>" + service + "</Layer>").getBytes("UTF-8"));
+        out.close();
+    }
+
+    private static String tileName(int i)
+    {
+        return "Earth/Layer/0/" + i + "/" + i + "_0.dds";
+    }
+
+    private static void createFile(File file, int size, long time) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[size]);
+        out.close();
+        assertTrue(file.setLastModified(time));
+    }
+}
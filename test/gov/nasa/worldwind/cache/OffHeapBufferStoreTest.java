@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.util.BufferWrapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class OffHeapBufferStoreTest
+{
+    /** Tests that a stored buffer is copied to direct memory with its primitive type and values intact. */
+    @Test
+    public void testPutAndGet()
+    {
+        OffHeapBufferStore store = new OffHeapBufferStore(1 << 20, 1 << 16);
+
+        BufferWrapper heap = createShortBuffer(150 * 150, 7);
+        BufferWrapper offHeap = store.put("tile", heap);
+
+        assertNotNull(offHeap);
+        assertTrue(offHeap instanceof BufferWrapper.ShortBufferWrapper);
+        assertTrue(offHeap.getBackingBuffer().isDirect());
+        assertEquals(heap.length(), offHeap.length());
+        for (int i = 0; i < heap.length(); i++)
+        {
+            assertEquals(heap.getDouble(i), offHeap.getDouble(i), 0);
+        }
+
+        assertSame(offHeap, store.get("tile"));
+        assertNull(store.get("other"));
+        assertTrue(store.access("tile", offHeap));
+        assertFalse(store.access("tile", heap));
+        assertFalse(store.access("other", null));
+        assertEquals(2, store.getHitCount());
+        assertEquals(3, store.getMissCount());
+        assertTrue(store.getResidentBytes() >= heap.getSizeInBytes());
+    }
+
+    /** Tests that the store evicts least recently used buffers once its capacity is allocated. */
+    @Test
+    public void testEviction()
+    {
+        int numBytes = 1000 * 2;
+        OffHeapBufferStore store = new OffHeapBufferStore(10 * 2048, 10 * 2048);
+        final List<Object> removed = new ArrayList<Object>();
+        store.addCacheListener(new MemoryCache.CacheListener()
+        {
+            public void entryRemoved(Object key, Object clientObject)
+            {
+                removed.add(key);
+            }
+
+            public void removalException(Throwable exception, Object key, Object clientObject)
+            {
+            }
+        });
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertNotNull(store.put(i, createShortBuffer(numBytes / 2, i)));
+        }
+        assertEquals(10, store.getNumEntries());
+        assertEquals(10 * 2048, store.getAllocatedBytes());
+
+        store.get(0); // Make entry 0 the most recently used.
+        store.put(10, createShortBuffer(numBytes / 2, 10));
+
+        assertEquals(Arrays.<Object>asList(1), removed);
+        assertEquals(1, store.getEvictionCount());
+        assertTrue(store.contains(0));
+        assertFalse(store.contains(1));
+        assertEquals(10 * 2048, store.getAllocatedBytes());
+    }
+
+    /**
+     * Tests that a full store keeps accepting buffers, both of its established size and of a new size, once the
+     * wrappers of evicted buffers are collected.
+     */
+    @Test
+    public void testPutPastCapacity() throws InterruptedException
+    {
+        OffHeapBufferStore store = new OffHeapBufferStore(4 * 2048, 2 * 2048);
+
+        for (int i = 0; i < 20; i++)
+        {
+            BufferWrapper buffer = createShortBuffer(1000, i);
+            BufferWrapper stored = putReclaiming(store, i, buffer);
+            assertNotNull(stored);
+            assertEquals(buffer.getShort(999), stored.getShort(999));
+        }
+        assertEquals(4, store.getNumEntries());
+        assertEquals(16, store.getEvictionCount());
+        assertTrue(store.contains(19));
+
+        // Buffers of a new size class displace whole slabs of the old size class, least recently used first.
+        for (int i = 0; i < 20; i++)
+        {
+            assertNotNull(putReclaiming(store, "small" + i, createShortBuffer(500, i)));
+        }
+        assertFalse(store.contains(19));
+        assertTrue(store.contains("small19"));
+        assertEquals(8, store.getNumEntries());
+        assertEquals(4 * 2048, store.getAllocatedBytes());
+
+        // The old size class is still accepted once the new one fills the store.
+        assertNotNull(putReclaiming(store, 20, createShortBuffer(1000, 20)));
+        assertTrue(store.contains(20));
+        assertTrue(store.getAllocatedBytes() <= store.getCapacity());
+    }
+
+    /** Tests that a removed buffer's chunk, and then its empty slab, are reused without evicting other buffers. */
+    @Test
+    public void testRemovedChunkReused() throws InterruptedException
+    {
+        OffHeapBufferStore store = new OffHeapBufferStore(2048, 2048);
+
+        BufferWrapper first = store.put("a", createShortBuffer(1000, 1));
+        assertNotNull(first);
+
+        store.remove("a", createShortBuffer(1000, 1));
+        assertTrue(store.contains("a"));
+        store.remove("a", first);
+        assertFalse(store.contains("a"));
+        assertEquals(0, store.getResidentBytes());
+        first = null;
+
+        assertNotNull(putReclaiming(store, "b", createShortBuffer(1000, 2)));
+        store.remove("b");
+        assertNotNull(putReclaiming(store, "c", createShortBuffer(500, 3)));
+        assertNotNull(store.put("d", createShortBuffer(500, 4)));
+        assertEquals(2048, store.getAllocatedBytes());
+        assertEquals(0, store.getEvictionCount());
+    }
+
+    /** Tests that a wrapper evicted while a reader holds it keeps its contents until the reader releases it. */
+    @Test
+    public void testEvictedBufferHeldByReader() throws InterruptedException
+    {
+        OffHeapBufferStore store = new OffHeapBufferStore(2048, 2048);
+
+        BufferWrapper held = store.put("a", createShortBuffer(1000, 1));
+        assertNotNull(held);
+
+        // The store is full, so the put evicts "a" but cannot reuse its chunk while the reader holds the wrapper.
+        assertNull(store.put("b", createShortBuffer(1000, 2)));
+        assertFalse(store.contains("a"));
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(2048, store.getPendingBytes());
+
+        System.gc();
+        assertNull(store.put("b", createShortBuffer(1000, 2)));
+        assertEquals(1, store.getEvictionCount());
+        BufferWrapper expected = createShortBuffer(1000, 1);
+        for (int i = 0; i < expected.length(); i++)
+        {
+            assertEquals(expected.getShort(i), held.getShort(i));
+        }
+
+        // Once the reader releases the wrapper the chunk is reclaimed.
+        held = null;
+        BufferWrapper stored = putReclaiming(store, "b", createShortBuffer(1000, 2));
+        assertNotNull(stored);
+        assertEquals(createShortBuffer(1000, 2).getShort(999), stored.getShort(999));
+        assertEquals(0, store.getPendingBytes());
+    }
+
+    /** Tests that unsupported or oversized buffers are not stored. */
+    @Test
+    public void testRejectedBuffers()
+    {
+        OffHeapBufferStore store = new OffHeapBufferStore(1024);
+
+        assertNull(store.put("empty", BufferWrapper.emptyBufferWrapper()));
+        assertNull(store.put("large", createShortBuffer(1024, 0)));
+        assertEquals(0, store.getNumEntries());
+        assertEquals(0, store.getAllocatedBytes());
+    }
+
+    /** Tests that removal and clear release resident bytes. */
+    @Test
+    public void testRemoveAndClear()
+    {
+        OffHeapBufferStore store = new OffHeapBufferStore(1 << 20, 1 << 16);
+
+        store.put("a", createShortBuffer(100, 1));
+        store.put("b", createShortBuffer(100, 2));
+        store.remove("a");
+        assertFalse(store.contains("a"));
+        assertEquals(1, store.getNumEntries());
+
+        store.clear();
+        assertEquals(0, store.getNumEntries());
+        assertEquals(0, store.getResidentBytes());
+    }
+
+    /** Puts a buffer, collecting garbage until the store reclaims the chunk of a previously removed buffer. */
+    private static BufferWrapper putReclaiming(OffHeapBufferStore store, Object key, BufferWrapper buffer)
+        throws InterruptedException
+    {
+        for (int attempt = 0; attempt < 100; attempt++)
+        {
+            BufferWrapper stored = store.put(key, buffer);
+            if (stored != null)
+                return stored;
+
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        return null;
+    }
+
+    private static BufferWrapper createShortBuffer(int length, int seed)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        BufferWrapper wrapper = BufferWrapper.wrap(buffer, AVKey.INT16);
+        for (int i = 0; i < length; i++)
+        {
+            wrapper.putShort(i, (short) (seed * 31 + i));
+        }
+
+        return wrapper;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class PackedTileStoreTest
+{
+    private File root;
+    private PackedTileStore store;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.root = File.createTempFile("PackedTileStoreTest", "");
+        assertTrue(this.root.delete());
+        assertTrue(this.root.mkdir());
+
+        this.store = new PackedTileStore(new File(this.root, "pack"));
+        this.store.open();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.store.close();
+        WWIO.deleteDirectory(this.root);
+        this.root.delete();
+    }
+
+    /** Tests writing, reading, replacing and removing files. */
+    @Test
+    public void testPutGetRemove() throws Exception
+    {
+        this.store.put("Earth/a/0/0_0.dds", data("a", 100), 1000);
+        this.store.put("Earth/a/0/0_1.dds", data("b", 200), 2000);
+
+        assertEquals(2, this.store.size());
+        assertTrue(this.store.contains("Earth/a/0/0_0.dds"));
+        assertEquals(1000, this.store.getTime("Earth/a/0/0_0.dds"));
+        assertEquals(200, this.store.getLength("Earth/a/0/0_1.dds"));
+        assertContent(data("a", 100), this.store.get("Earth/a/0/0_0.dds"));
+        assertNull(this.store.get("Earth/a/0/0_2.dds"));
+        assertEquals(-1, this.store.getTime("Earth/a/0/0_2.dds"));
+
+        this.store.put("Earth/a/0/0_0.dds", data("c", 50), 3000);
+        assertEquals(2, this.store.size());
+        assertContent(data("c", 50), this.store.get("Earth/a/0/0_0.dds"));
+
+        assertTrue(this.store.remove("Earth/a/0/0_0.dds"));
+        assertFalse(this.store.remove("Earth/a/0/0_0.dds"));
+        assertFalse(this.store.contains("Earth/a/0/0_0.dds"));
+        assertEquals(1, this.store.size());
+    }
+
+    /** Tests that files survive reopening, with and without a saved index and with records written after a save. */
+    @Test
+    public void testReopen() throws Exception
+    {
+        this.store.put("a.dds", data("a", 100), 1000);
+        this.store.put("b.dds", data("b", 100), 1000);
+        assertTrue(this.store.saveIndex());
+        this.store.put("c.dds", data("c", 100), 1000);
+        this.store.remove("a.dds");
+
+        // Reopen without saving, as after a crash: the records after the saved index are scanned.
+        PackedTileStore reopened = this.reopenWithoutSaving();
+        assertFalse(reopened.contains("a.dds"));
+        assertContent(data("b", 100), reopened.get("b.dds"));
+        assertContent(data("c", 100), reopened.get("c.dds"));
+        reopened.close();
+
+        // Reopen without an index: every record is scanned.
+        assertTrue(reopened.getIndexFile().delete());
+        reopened = new PackedTileStore(this.store.getDirectory());
+        reopened.open();
+        assertEquals(2, reopened.size());
+        assertContent(data("c", 100), reopened.get("c.dds"));
+        reopened.close();
+    }
+
+    /** Tests that a record cut short at the end of a container is discarded. */
+    @Test
+    public void testTruncatedRecord() throws Exception
+    {
+        this.store.put("a.dds", data("a", 100), 1000);
+        this.store.put("b.dds", data("b", 100), 1000);
+        File container = new File(this.store.getDirectory(), PackedTileStore.containerNameFor(1));
+        long length = container.length();
+        this.store.close();
+
+        RandomAccessFile raf = new RandomAccessFile(container, "rw");
+        raf.setLength(length - 10);
+        raf.close();
+        assertTrue(this.store.getIndexFile().delete());
+
+        this.store = new PackedTileStore(this.store.getDirectory());
+        this.store.open();
+        assertEquals(1, this.store.size());
+        assertContent(data("a", 100), this.store.get("a.dds"));
+
+        // The store continues after the last complete record.
+        this.store.put("b.dds", data("b", 100), 1000);
+        assertContent(data("b", 100), this.store.get("b.dds"));
+    }
+
+    /** Tests that compaction keeps live files and deletes containers that are mostly dead. */
+    @Test
+    public void testCompaction() throws Exception
+    {
+        this.store.setMaxContainerSize(1000);
+        for (int i = 0; i < 20; i++)
+        {
+            this.store.put("t" + i + ".dds", data("t" + i, 300), i);
+        }
+        for (int i = 0; i < 20; i++)
+        {
+            if (i % 3 != 0)
+                this.store.remove("t" + i + ".dds");
+        }
+        int numContainers = this.countContainers();
+
+        assertTrue(this.store.compact() > 0);
+        assertTrue(this.countContainers() < numContainers);
+        for (int i = 0; i < 20; i++)
+        {
+            if (i % 3 == 0)
+            {
+                assertContent(data("t" + i, 300), this.store.get("t" + i + ".dds"));
+                assertEquals(i, this.store.getTime("t" + i + ".dds"));
+            }
+            else
+            {
+                assertFalse(this.store.contains("t" + i + ".dds"));
+            }
+        }
+
+        PackedTileStore reopened = this.reopenWithoutSaving();
+        assertEquals(7, reopened.size());
+        assertContent(data("t18", 300), reopened.get("t18.dds"));
+        reopened.close();
+    }
+
+    /** Tests that a file store packs tiles, serves them through URLs and imports a directory of tiles. */
+    @Test
+    public void testPackedDataFileStore() throws Exception
+    {
+        this.store.close();
+        File cache = new File(this.root, "cache");
+        createFile(new File(cache, "Earth/Layer/0/0/0_0.dds"), data("x", 500));
+        createFile(new File(cache, "Earth/Layer/layer.xml"), data("y", 10));
+
+        PackedDataFileStore fileStore = new PackedDataFileStore(cache);
+        try
+        {
+            PackedTileStore tileStore = fileStore.getTileStore();
+            assertNotNull(tileStore);
+
+            // A tile just written is not packed until it is old enough.
+            URL url = fileStore.findFile("Earth/Layer/0/0/0_0.dds", false);
+            assertEquals("file", url.getProtocol());
+            assertEquals(0, tileStore.size());
+
+            File tile = new File(cache, "Earth/Layer/0/0/0_0.dds");
+            assertTrue(tile.setLastModified(System.currentTimeMillis() - 60000));
+            url = fileStore.findFile("Earth/Layer/0/0/0_0.dds", false);
+            assertEquals(PackedDataFileStore.PROTOCOL, url.getProtocol());
+            assertFalse(tile.exists());
+            assertTrue(fileStore.containsFile("Earth/Layer/0/0/0_0.dds"));
+            assertContent(data("x", 500), WWIO.readURLContentToBuffer(url));
+            assertFalse(WWIO.isFileOutOfDate(url, System.currentTimeMillis() - 120000));
+            assertTrue(WWIO.isFileOutOfDate(url, System.currentTimeMillis()));
+
+            // Configuration files are not packed.
+            assertEquals("file", fileStore.findFile("Earth/Layer/layer.xml", false).getProtocol());
+
+            // Packed files are listed with files.
+            String[] names = fileStore.listAllFileNames("Earth", new FileStoreFilter()
+            {
+                public boolean accept(FileStore fileStore, String fileName)
+                {
+                    return true;
+                }
+            });
+            Arrays.sort(names);
+            assertArrayEquals(new String[] {"Earth/Layer/0/0/0_0.dds", "Earth/Layer/layer.xml"}, names);
+
+            fileStore.removeFile(url);
+            assertFalse(fileStore.containsFile("Earth/Layer/0/0/0_0.dds"));
+            assertNull(fileStore.findFile("Earth/Layer/0/0/0_0.dds", false));
+
+            // Import a cache laid out as one file per tile.
+            File oldCache = new File(this.root, "old");
+            createFile(new File(oldCache, "Earth/Old/0/0/0_0.bil"), data("o", 300));
+            createFile(new File(oldCache, "Earth/Old/0/0/0_1.bil"), data("p", 300));
+            createFile(new File(oldCache, "Earth/Old/old.xml"), data("q", 10));
+            assertEquals(2, fileStore.importDirectory(oldCache, true));
+            assertFalse(new File(oldCache, "Earth/Old/0/0/0_1.bil").exists());
+            assertTrue(new File(oldCache, "Earth/Old/old.xml").exists());
+            assertContent(data("p", 300), WWIO.readURLContentToBuffer(
+                fileStore.findFile("Earth/Old/0/0/0_1.bil", false)));
+        }
+        finally
+        {
+            fileStore.close();
+        }
+    }
+
+    /**
+     * Tests that tiles written through the file store are packed without being looked up, and that a tile written again
+     * replaces its packed copy.
+     */
+    @Test
+    public void testPackNewFiles() throws Exception
+    {
+        this.store.close();
+        File cache = new File(this.root, "cache");
+        createFile(new File(cache, "Earth/Layer/0/0/0_1.dds"), data("old", 200));
+        createFile(new File(cache, "Earth/Layer/0/0/0_2.dds.packing"), data("crash", 200));
+
+        PackedDataFileStore fileStore = new PackedDataFileStore(cache);
+        try
+        {
+            PackedTileStore tileStore = fileStore.getTileStore();
+
+            File tile = fileStore.newFile("Earth/Layer/0/0/0_0.dds");
+            createFile(tile, data("a", 300));
+            fileStore.packNewFiles();
+            assertTrue(tile.exists());
+
+            assertTrue(tile.setLastModified(System.currentTimeMillis() - 60000));
+            fileStore.packNewFiles();
+            assertFalse(tile.exists());
+            assertFalse(new File(tile.getPath() + PackedDataFileStore.PACKING_SUFFIX).exists());
+            assertContent(data("a", 300), tileStore.get("Earth/Layer/0/0/0_0.dds"));
+
+            // A tile written again is read from its file until the new file is packed.
+            tile = fileStore.newFile("Earth/Layer/0/0/0_0.dds");
+            assertFalse(tileStore.contains("Earth/Layer/0/0/0_0.dds"));
+            createFile(tile, data("b", 300));
+            URL url = fileStore.findFile("Earth/Layer/0/0/0_0.dds", false);
+            assertEquals("file", url.getProtocol());
+            assertContent(data("b", 300), WWIO.readURLContentToBuffer(url));
+
+            assertTrue(tile.setLastModified(System.currentTimeMillis() - 60000));
+            fileStore.packNewFiles();
+            assertContent(data("b", 300), tileStore.get("Earth/Layer/0/0/0_0.dds"));
+
+            // Tiles left as files by an earlier session are packed, and files left renamed aside are restored.
+            File oldTile = new File(cache, "Earth/Layer/0/0/0_1.dds");
+            assertTrue(oldTile.setLastModified(System.currentTimeMillis() - 60000));
+            fileStore.packDirectory(cache, "");
+            assertFalse(oldTile.exists());
+            assertContent(data("old", 200), tileStore.get("Earth/Layer/0/0/0_1.dds"));
+            assertTrue(new File(cache, "Earth/Layer/0/0/0_2.dds").exists());
+            assertFalse(new File(cache, "Earth/Layer/0/0/0_2.dds.packing").exists());
+        }
+        finally
+        {
+            fileStore.close();
+        }
+    }
+
+    private PackedTileStore reopenWithoutSaving() throws IOException
+    {
+        PackedTileStore reopened = new PackedTileStore(this.store.getDirectory());
+        reopened.open();
+        return reopened;
+    }
+
+    private int countContainers()
+    {
+        int count = 0;
+        for (File file : this.store.getDirectory().listFiles())
+        {
+            if (PackedTileStore.containerIdFor(file.getName()) >= 0)
+                count++;
+        }
+        return count;
+    }
+
+    private static ByteBuffer data(String seed, int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = (byte) (seed.hashCode() + i);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static void assertContent(ByteBuffer expected, ByteBuffer actual)
+    {
+        assertNotNull(actual);
+        assertEquals(expected.remaining(), actual.remaining());
+        assertEquals(expected, actual);
+    }
+
+    private static void createFile(File file, ByteBuffer data) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        WWIO.saveBuffer(data, file);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class SegmentedMemoryCacheTest
+{
+    /** Tests that add, get, contains and remove behave as in BasicMemoryCache, including capacity accounting. */
+    @Test
+    public void testAddGetRemove()
+    {
+        SegmentedMemoryCache cache = new SegmentedMemoryCache(80, 100);
+
+        assertTrue(cache.add("a", "A", 10));
+        assertTrue(cache.add("b", "B", 20));
+        assertEquals("A", cache.getObject("a"));
+        assertTrue(cache.contains("b"));
+        assertEquals(30, cache.getUsedCapacity());
+        assertEquals(2, cache.getNumObjects());
+
+        // Replacing an entry releases the old entry's capacity.
+        assertTrue(cache.add("a", "A2", 15));
+        assertEquals("A2", cache.getObject("a"));
+        assertEquals(35, cache.getUsedCapacity());
+
+        cache.remove("b");
+        assertFalse(cache.contains("b"));
+        assertNull(cache.getObject("b"));
+        assertEquals(15, cache.getUsedCapacity());
+
+        cache.clear();
+        assertEquals(0, cache.getNumObjects());
+        assertEquals(0, cache.getUsedCapacity());
+    }
+
+    /** Tests that items which are null, empty or larger than the cache are rejected. */
+    @Test
+    public void testRejectedItems()
+    {
+        SegmentedMemoryCache cache = new SegmentedMemoryCache(80, 100);
+
+        assertFalse(cache.add(null, "A", 10));
+        assertFalse(cache.add("a", null, 10));
+        assertFalse(cache.add("a", "A", 0));
+        assertFalse(cache.add("a", "A", 101));
+        assertEquals(0, cache.getNumObjects());
+    }
+
+    /** Tests that a full cache evicts least recently used entries down to the low water level. */
+    @Test
+    public void testLeastRecentlyUsedEviction()
+    {
+        // Use a single segment so the eviction order is exact.
+        SegmentedMemoryCache cache = new SegmentedMemoryCache(50, 100, 1);
+
+        for (int i = 0; i < 10; i++)
+        {
+            cache.add(i, i, 10);
+        }
+
+        // Touch the first two entries so they become the most recently used.
+        cache.getObject(0);
+        cache.getObject(1);
+
+        // Space is made down to the low water level before the new entry is added.
+        assertTrue(cache.add(10, 10, 10));
+        assertEquals(60, cache.getUsedCapacity());
+        assertTrue(cache.contains(0));
+        assertTrue(cache.contains(1));
+        assertTrue(cache.contains(10));
+        assertFalse(cache.contains(2));
+        assertFalse(cache.contains(3));
+    }
+
+    /** Tests that listeners are notified of every removal, whether explicit, by replacement or by eviction. */
+    @Test
+    public void testListenerNotification()
+    {
+        SegmentedMemoryCache cache = new SegmentedMemoryCache(50, 100);
+        final List<Object> removed = new ArrayList<Object>();
+
+        cache.addCacheListener(new MemoryCache.CacheListener()
+        {
+            public void entryRemoved(Object key, Object clientObject)
+            {
+                removed.add(key);
+            }
+
+            public void removalException(Throwable exception, Object key, Object clientObject)
+            {
+            }
+        });
+
+        for (int i = 0; i < 10; i++)
+        {
+            cache.add(i, i, 10);
+        }
+        assertTrue(removed.isEmpty());
+
+        cache.add(0, 0, 10); // replace
+        cache.remove(1);
+        assertEquals(Arrays.<Object>asList(0, 1), removed);
+
+        cache.add(10, 10, 10);
+        cache.add(11, 11, 10); // evict
+        assertEquals(13 - cache.getNumObjects(), removed.size());
+    }
+
+    /** Tests that capacity accounting stays consistent under concurrent adds, gets and removes. */
+    @Test
+    public void testConcurrentAccess() throws Exception
+    {
+        final SegmentedMemoryCache cache = new SegmentedMemoryCache(8000, 10000);
+        final AtomicLong removedSize = new AtomicLong();
+
+        cache.addCacheListener(new MemoryCache.CacheListener()
+        {
+            public void entryRemoved(Object key, Object clientObject)
+            {
+                removedSize.addAndGet(((long[]) clientObject)[0]);
+            }
+
+            public void removalException(Throwable exception, Object key, Object clientObject)
+            {
+            }
+        });
+
+        int numThreads = 8;
+        final AtomicLong addedSize = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        for (int t = 0; t < numThreads; t++)
+        {
+            final int seed = t;
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20000; i++)
+                    {
+                        int key = random.nextInt(2000);
+                        int op = random.nextInt(10);
+                        if (op < 6)
+                        {
+                            cache.getObject(key);
+                        }
+                        else if (op < 9)
+                        {
+                            long size = 1 + random.nextInt(50);
+                            if (cache.add(key, new long[] {size}, size))
+                                addedSize.addAndGet(size);
+                        }
+                        else
+                        {
+                            cache.remove(key);
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures)
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertTrue("Used capacity exceeds capacity ", cache.getUsedCapacity() <= cache.getCapacity());
+        assertEquals("Capacity accounting inconsistent ", addedSize.get() - removedSize.get(),
+            cache.getUsedCapacity());
+
+        cache.clear();
+        assertEquals(0, cache.getUsedCapacity());
+        assertEquals(addedSize.get(), removedSize.get());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.beans.*;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class TiledRasterProducerTest
+{
+    private static final int MOSAIC_SIZE = 3;
+    private static final int RASTER_SIZE = 200;
+    private static final int TILE_SIZE = 64;
+
+    private File root;
+    private List<DataRaster> mosaic;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.root = File.createTempFile("TiledRasterProducerTest", "");
+        assertTrue(this.root.delete());
+        assertTrue(this.root.mkdir());
+
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+        params.setValue(AVKey.BYTE_ORDER, AVKey.LITTLE_ENDIAN);
+
+        this.mosaic = new ArrayList<DataRaster>();
+        for (int row = 0; row < MOSAIC_SIZE; row++)
+        {
+            for (int col = 0; col < MOSAIC_SIZE; col++)
+            {
+                ByteBufferRaster raster = new ByteBufferRaster(RASTER_SIZE, RASTER_SIZE,
+                    Sector.fromDegrees(row, row + 1, col, col + 1), params);
+                raster.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+                for (int i = 0; i < RASTER_SIZE * RASTER_SIZE; i++)
+                {
+                    raster.getBuffer().putDouble(i, (row * 7 + col * 13 + i) % 5000);
+                }
+                this.mosaic.add(raster);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        WWIO.deleteDirectory(this.root);
+        this.root.delete();
+    }
+
+    /** Tests that a pyramid built in parallel is identical to one built on one thread. */
+    @Test
+    public void testParallelPyramidMatchesSequential() throws Exception
+    {
+        File sequential = this.produce("sequential", null, null, null);
+        File parallel = this.produce("parallel", 4, null, null);
+
+        Map<String, ByteBuffer> expected = readTiles(sequential);
+        assertTrue(expected.size() > MOSAIC_SIZE * MOSAIC_SIZE);
+        assertTilesEqual(expected, readTiles(parallel));
+    }
+
+    /** Tests that the pyramid is complete when the number of rasters in memory limits the forking of sub-trees. */
+    @Test
+    public void testInFlightRasterLimit() throws Exception
+    {
+        File sequential = this.produce("sequential", null, null, null);
+        File limited = this.produce("limited", "Auto", 1, null);
+
+        assertTilesEqual(readTiles(sequential), readTiles(limited));
+    }
+
+    /** Tests that progress is reported through property change events and ends at completion. */
+    @Test
+    public void testParallelProgress() throws Exception
+    {
+        final List<Double> progress = Collections.synchronizedList(new ArrayList<Double>());
+        this.produce("progress", 4, null, new PropertyChangeListener()
+        {
+            public void propertyChange(PropertyChangeEvent event)
+            {
+                if (AVKey.PROGRESS.equals(event.getPropertyName()))
+                    progress.add((Double) event.getNewValue());
+            }
+        });
+
+        assertFalse(progress.isEmpty());
+        assertEquals(0d, progress.get(0), 0d);
+        assertEquals(1d, progress.get(progress.size() - 1), 1e-9);
+        for (int i = 1; i < progress.size(); i++)
+        {
+            assertTrue(progress.get(i) >= progress.get(i - 1));
+        }
+    }
+
+    private File produce(String name, Object parallelism, Object maxInFlightRasters, PropertyChangeListener listener)
+        throws Exception
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.FILE_STORE_LOCATION, this.root.getAbsolutePath());
+        params.setValue(AVKey.DATA_CACHE_NAME, name);
+        params.setValue(AVKey.DATASET_NAME, name);
+        params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+        params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+        if (parallelism != null)
+            params.setValue(AVKey.TILED_RASTER_PRODUCER_PARALLELISM, parallelism);
+        if (maxInFlightRasters != null)
+            params.setValue(AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS, maxInFlightRasters);
+
+        TiledElevationProducer producer = new TiledElevationProducer();
+        if (listener != null)
+            producer.addPropertyChangeListener(listener);
+        producer.setStoreParameters(params);
+        for (DataRaster raster : this.mosaic)
+        {
+            producer.offerDataSource(raster, null);
+        }
+        producer.startProduction();
+
+        return new File(this.root, name);
+    }
+
+    private static Map<String, ByteBuffer> readTiles(File dir) throws Exception
+    {
+        Map<String, ByteBuffer> tiles = new TreeMap<String, ByteBuffer>();
+        readTiles(dir, "", tiles);
+        return tiles;
+    }
+
+    private static void readTiles(File dir, String path, Map<String, ByteBuffer> tiles) throws Exception
+    {
+        for (File file : dir.listFiles())
+        {
+            if (file.isDirectory())
+                readTiles(file, path + file.getName() + "/", tiles);
+            else if (file.getName().endsWith(".bil"))
+                tiles.put(path + file.getName(), WWIO.readFileToBuffer(file));
+        }
+    }
+
+    private static void assertTilesEqual(Map<String, ByteBuffer> expected, Map<String, ByteBuffer> actual)
+    {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, ByteBuffer> entry : expected.entrySet())
+        {
+            assertEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.dds;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.image.*;
+import java.io.File;
+import java.nio.*;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DXTBlockDecoderTest
+{
+    private static final int[][] SIZES = {{4, 4}, {8, 4}, {64, 32}, {36, 20}};
+
+    /** Tests that random DXT1 and DXT3 blocks decode to the same pixels as the legacy decoder. */
+    @Test
+    public void testDecodedPixelsMatchLegacyDecoder() throws Exception
+    {
+        Random random = new Random(42);
+        for (int[] size : SIZES)
+        {
+            for (int format : new int[] {DDSConstants.D3DFMT_DXT1, DDSConstants.D3DFMT_DXT3})
+            {
+                int blockSize = (format == DDSConstants.D3DFMT_DXT1) ? 8 : 16;
+                byte[] bytes = new byte[(size[0] / 4) * (size[1] / 4) * blockSize];
+                random.nextBytes(bytes);
+
+                String message = format + " " + size[0] + "x" + size[1];
+                BufferedImage expected = decodeLegacy(format, ByteBuffer.wrap(bytes), size[0], size[1]);
+                for (int threads : new int[] {1, 2, 3, 8})
+                {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    BufferedImage actual = decompress(format, buffer, size[0], size[1], threads);
+
+                    assertImagesEqual(message + " threads " + threads, expected, actual);
+                    assertEquals(message, bytes.length, buffer.position());
+                }
+            }
+        }
+    }
+
+    /** Tests that the blocks of compressed images decode to the same pixels as the legacy decoder. */
+    @Test
+    public void testCompressedImageMatchesLegacyDecoder() throws Exception
+    {
+        BufferedImage image = createImage(128, 64, new Random(7));
+        DXTCompressionAttributes attributes = new DXTCompressionAttributes();
+        attributes.setBuildMipmaps(false);
+
+        for (int format : new int[] {DDSConstants.D3DFMT_DXT1, DDSConstants.D3DFMT_DXT3})
+        {
+            DXTCompressor compressor = (format == DDSConstants.D3DFMT_DXT1) ? new DXT1Compressor()
+                : new DXT3Compressor();
+            ByteBuffer buffer = ByteBuffer.allocate(compressor.getCompressedSize(image, attributes));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            compressor.compressImage(image, attributes, buffer);
+
+            buffer.rewind();
+            BufferedImage expected = decodeLegacy(format, buffer.duplicate(), 128, 64);
+            assertImagesEqual("format " + format, expected, decompress(format, buffer, 128, 64, 4));
+        }
+    }
+
+    /** Tests that each mipmap level of a DDS file decompresses to the same pixels as the legacy decoder. */
+    @Test
+    public void testDecompressMipLevel() throws Exception
+    {
+        BufferedImage image = createImage(64, 64, new Random(3));
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        attributes.setBuildMipmaps(true);
+        ByteBuffer dds = new DDSCompressor().compressImage(image, attributes);
+
+        File file = File.createTempFile("DXTBlockDecoderTest", ".dds");
+        try
+        {
+            WWIO.saveBuffer(dds, file);
+            DDSHeader header = DDSHeader.readFrom(file);
+            int format = header.getPixelFormat().getFourCC();
+
+            DDSDecompressor decompressor = new DDSDecompressor();
+            decompressor.setThreadCount(2);
+            assertTrue(decompressor.decompress(file, createParams(null)) instanceof MipMappedBufferedImageRaster);
+
+            int offset = DDSConstants.DDS_DATA_OFFSET;
+            int length = header.getLinearSize();
+            for (int level = 0; (64 >> level) >= 4; level++)
+            {
+                dds.position(offset);
+                BufferedImage expected = decodeLegacy(format, dds.slice(), 64 >> level, 64 >> level);
+
+                DataRaster raster = decompressor.decompress(file, createParams(level));
+                assertEquals("level " + level, BufferedImageRaster.class, raster.getClass());
+                assertImagesEqual("level " + level, expected, ((BufferedImageRaster) raster).getBufferedImage());
+
+                offset += length;
+                length /= 4;
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test(expected = WWRuntimeException.class)
+    public void testInvalidMipLevel() throws Exception
+    {
+        File file = File.createTempFile("DXTBlockDecoderTest", ".dds");
+        try
+        {
+            DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+            attributes.setBuildMipmaps(true);
+            WWIO.saveBuffer(new DDSCompressor().compressImage(createImage(16, 16, new Random(1)), attributes), file);
+
+            // Only the 16x16, 8x8 and 4x4 levels are at least one DXT block in size.
+            new DDSDecompressor().decompress(file, createParams(3));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreadCount()
+    {
+        new DXT1Decompressor().setThreadCount(0);
+    }
+
+    private static AVList createParams(Integer mipLevel)
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.SECTOR, Sector.fromDegrees(0, 1, 0, 1));
+        if (mipLevel != null)
+            params.setValue(AVKey.MIP_LEVEL, mipLevel);
+        return params;
+    }
+
+    private static BufferedImage decompress(int format, ByteBuffer buffer, int width, int height, int threads)
+        throws Exception
+    {
+        if (format == DDSConstants.D3DFMT_DXT1)
+        {
+            DXT1Decompressor decompressor = new DXT1Decompressor();
+            decompressor.setThreadCount(threads);
+            return decompressor.decompress(buffer, width, height);
+        }
+        else
+        {
+            DXT3Decompressor decompressor = new DXT3Decompressor();
+            decompressor.setThreadCount(threads);
+            return decompressor.decompress(buffer, width, height);
+        }
+    }
+
+    private static void assertImagesEqual(String message, BufferedImage expected, BufferedImage actual)
+    {
+        assertNotNull(message, actual);
+        assertEquals(message, expected.getType(), actual.getType());
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertArrayEquals(message, expected.getRGB(0, 0, width, height, null, 0, width),
+            actual.getRGB(0, 0, width, height, null, 0, width));
+
+        // Compare the stored pixels too, since getRGB() divides premultiplied colors by their alpha.
+        assertArrayEquals(message, ((DataBufferInt) expected.getRaster().getDataBuffer()).getData(),
+            ((DataBufferInt) actual.getRaster().getDataBuffer()).getData());
+    }
+
+    private static BufferedImage createImage(int width, int height, Random random)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                int a = (x + y) % 5 == 0 ? random.nextInt(256) : 255;
+                int r = (x * 255 / width + random.nextInt(16)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(16)) & 0xFF;
+                int b = random.nextInt(256);
+                image.setRGB(x, y, (a << 24) | (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    /** Decodes blocks one row at a time through <code>BufferedImage.setRGB()</code>, as the decompressors once did. */
+    private static BufferedImage decodeLegacy(int format, ByteBuffer buffer, int width, int height)
+    {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        boolean dxt1 = (format == DDSConstants.D3DFMT_DXT1);
+
+        int[] pixels = new int[4 * width];
+        BufferedImage result = new BufferedImage(width, height,
+            dxt1 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+
+        for (int row = 0; row < height / 4; row++)
+        {
+            for (int col = 0; col < width / 4; col++)
+            {
+                long alphaData = dxt1 ? 0L : buffer.getLong();
+                short minColor = buffer.getShort();
+                short maxColor = buffer.getShort();
+                int colorIndexMask = buffer.getInt();
+
+                Color24[] lookupTable = Color24.expandLookupTable(minColor, maxColor);
+
+                for (int k = 15; k >= 0; k--)
+                {
+                    int alpha = dxt1 ? 0xFF : (((int) (alphaData >>> (k * 4)) & 0xF) << 4);
+                    int colorIndex = (colorIndexMask >>> k * 2) & 0x03;
+                    int pixel = (alpha << 24) | lookupTable[colorIndex].getPixel888();
+
+                    pixels[(k / 4) * width + (col * 4 + k % 4)] = pixel;
+                }
+            }
+
+            result.setRGB(0, row * 4, width, 4, pixels, 0, width);
+        }
+
+        return result;
+    }
+}
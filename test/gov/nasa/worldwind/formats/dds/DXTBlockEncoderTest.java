@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.dds;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.image.BufferedImage;
+import java.nio.*;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DXTBlockEncoderTest
+{
+    private static final String[] COMPRESSION_TYPES = {
+        DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_BBOX,
+        DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE,
+        DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_LUMINANCE_DISTANCE
+    };
+
+    private static final int[][] SIZES = {{1, 1}, {2, 2}, {4, 4}, {64, 32}, {37, 21}};
+
+    private static final int[] IMAGE_TYPES = {
+        BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_3BYTE_BGR,
+        BufferedImage.TYPE_BYTE_GRAY
+    };
+
+    /** Tests that the block encoder produces the same DXT1 and DXT3 blocks as the block compressors. */
+    @Test
+    public void testEncodedBlocksMatchBlockCompressors()
+    {
+        Random random = new Random(42);
+        for (int imageType : IMAGE_TYPES)
+        {
+            for (int[] size : SIZES)
+            {
+                BufferedImage image = createImage(size[0], size[1], imageType, random);
+                for (String compressionType : COMPRESSION_TYPES)
+                {
+                    for (int options = 0; options < 4; options++)
+                    {
+                        DXTCompressionAttributes attributes = new DXTCompressionAttributes();
+                        attributes.setColorBlockCompressionType(compressionType);
+                        attributes.setPremultiplyAlpha((options & 1) != 0);
+                        attributes.setEnableDXT1Alpha((options & 2) != 0);
+
+                        String message = imageType + " " + size[0] + "x" + size[1] + " " + compressionType + " "
+                            + options;
+                        assertCompressedEqual(message, new DXT1Compressor(), new ReferenceDXT1Compressor(), image,
+                            attributes);
+                        assertCompressedEqual(message, new DXT3Compressor(), new ReferenceDXT3Compressor(), image,
+                            attributes);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Tests that the output does not depend on the number of compression threads. */
+    @Test
+    public void testParallelCompressionMatchesSequential()
+    {
+        BufferedImage image = createImage(256, 128, BufferedImage.TYPE_INT_ARGB, new Random(7));
+        for (int threads : new int[] {2, 3, 8, 64})
+        {
+            DXTCompressionAttributes attributes = new DXTCompressionAttributes();
+            attributes.setEnableDXT1Alpha(true);
+            attributes.setCompressionThreadCount(threads);
+
+            assertCompressedEqual("threads " + threads, new DXT1Compressor(), new ReferenceDXT1Compressor(), image,
+                attributes);
+            assertCompressedEqual("threads " + threads, new DXT3Compressor(), new ReferenceDXT3Compressor(), image,
+                attributes);
+        }
+    }
+
+    /** Tests that a DDS file compressed in parallel, including its mipmaps, matches one compressed sequentially. */
+    @Test
+    public void testParallelDDSCompression()
+    {
+        BufferedImage image = createImage(128, 128, BufferedImage.TYPE_INT_ARGB, new Random(3));
+
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        ByteBuffer expected = new DDSCompressor().compressImage(image, attributes);
+
+        attributes.setCompressionThreadCount(4);
+        ByteBuffer actual = new DDSCompressor().compressImage(image, attributes);
+
+        assertEquals(expected, actual);
+        assertEquals(0, actual.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreadCount()
+    {
+        new DXTCompressionAttributes().setCompressionThreadCount(0);
+    }
+
+    private static void assertCompressedEqual(String message, DXTCompressor compressor, DXTCompressor reference,
+        BufferedImage image, DXTCompressionAttributes attributes)
+    {
+        ByteBuffer expected = compress(reference, image, attributes);
+        ByteBuffer actual = compress(compressor, image, attributes);
+        assertEquals(message, expected.position(), actual.position());
+        assertEquals(message, expected.rewind(), actual.rewind());
+    }
+
+    private static ByteBuffer compress(DXTCompressor compressor, BufferedImage image,
+        DXTCompressionAttributes attributes)
+    {
+        // Leave room for images whose dimensions are not a multiple of four, and offset the image from the start of
+        // the buffer as a DDS header does.
+        int size = ((image.getWidth() + 3) / 4) * ((image.getHeight() + 3) / 4) * 16;
+        ByteBuffer buffer = ByteBuffer.allocate(size + 12).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(12);
+        compressor.compressImage(image, attributes, buffer);
+        return buffer;
+    }
+
+    private static BufferedImage createImage(int width, int height, int imageType, Random random)
+    {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                // Mix smooth gradients, which exercise palette interpolation, with noise and transparent pixels.
+                int a = (x + y) % 5 == 0 ? random.nextInt(256) : 255;
+                int r = (x * 255 / width + random.nextInt(16)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(16)) & 0xFF;
+                int b = random.nextInt(256);
+                image.setRGB(x, y, (a << 24) | (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    /** Compresses blocks with the color block extractor and block compressors, rather than the block encoder. */
+    private static class ReferenceDXT1Compressor extends DXT1Compressor
+    {
+        protected ColorBlockExtractor getColorBlockExtractor(BufferedImage image)
+        {
+            return new BasicColorBlockExtractor(image)
+            {
+            };
+        }
+    }
+
+    private static class ReferenceDXT3Compressor extends DXT3Compressor
+    {
+        protected ColorBlockExtractor getColorBlockExtractor(BufferedImage image)
+        {
+            return new BasicColorBlockExtractor(image)
+            {
+            };
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.dted;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.geom.Sector;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.nio.*;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DTEDTest
+{
+    private static final int WIDTH = 61;
+    private static final int HEIGHT = 121;
+
+    private File file;
+    private short[][] elevations;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        // Column-major elevations, south to north, as DTED stores them. Include negative elevations, null elevations
+        // and elevations outside the practical range of [-12000,+9000].
+        Random random = new Random(17);
+        this.elevations = new short[WIDTH][HEIGHT];
+        for (int x = 0; x < WIDTH; x++)
+        {
+            for (int i = 0; i < HEIGHT; i++)
+            {
+                this.elevations[x][i] = (short) (random.nextInt(4000) - 1000);
+            }
+        }
+        this.elevations[3][5] = -32767;
+        this.elevations[4][6] = 9001;
+        this.elevations[5][7] = -12001;
+
+        this.file = File.createTempFile("DTEDTest", ".dt2");
+        writeDTED(this.file, this.elevations, -1);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.file.delete();
+    }
+
+    /** Tests that the mapped raster presents the same elevations as the raster read onto the heap. */
+    @Test
+    public void testMappedElevationsMatchHeapElevations() throws IOException
+    {
+        DataRaster heap = DTED.read(this.file, new AVListImpl());
+        DataRaster mapped = DTED.map(this.file, new AVListImpl());
+
+        assertTrue(heap instanceof ByteBufferRaster);
+        assertTrue(((BufferWrapperRaster) mapped).getBuffer() instanceof DTEDElevationBuffer);
+        assertEquals(WIDTH, mapped.getWidth());
+        assertEquals(HEIGHT, mapped.getHeight());
+        assertEquals(heap.getSector(), mapped.getSector());
+
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                double expected = expectedElevation(this.elevations[x][HEIGHT - y - 1]);
+                assertEquals(expected, ((BufferWrapperRaster) heap).getDoubleAtPosition(y, x), 0d);
+                assertEquals(expected, ((BufferWrapperRaster) mapped).getDoubleAtPosition(y, x), 0d);
+            }
+        }
+
+        double[] extremes = ((BufferWrapperRaster) mapped).getExtremes();
+        assertEquals((Double) heap.getValue(AVKey.ELEVATION_MIN), extremes[0], 0d);
+        assertEquals((Double) heap.getValue(AVKey.ELEVATION_MAX), extremes[1], 0d);
+    }
+
+    /** Tests that drawing the mapped raster onto a canvas matches drawing the heap raster. */
+    @Test
+    public void testMappedRasterDrawsLikeHeapRaster() throws IOException
+    {
+        DataRaster heap = DTED.read(this.file, new AVListImpl());
+        DataRaster mapped = DTED.map(this.file, new AVListImpl());
+
+        Sector sector = Sector.fromDegrees(45.2, 45.7, 10.1, 10.8);
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+
+        ByteBufferRaster expected = new ByteBufferRaster(40, 30, sector, params);
+        ByteBufferRaster actual = new ByteBufferRaster(40, 30, sector, params);
+        heap.drawOnTo(expected);
+        mapped.drawOnTo(actual);
+
+        assertEquals(expected.getByteBuffer(), actual.getByteBuffer());
+    }
+
+    @Test
+    public void testSignedMagnitudeDecoding()
+    {
+        assertEquals(5, DTED.decodeElevation((short) 0x0005));
+        assertEquals(-5, DTED.decodeElevation((short) 0x8005));
+        assertEquals(-32767, DTED.decodeElevation((short) 0xFFFF));
+        assertEquals(-32767, DTED.decodeElevation((short) 9001));
+        assertEquals(-12000, DTED.decodeElevation((short) (0x8000 | 12000)));
+    }
+
+    /** Tests that a bad checksum is reported when the mapped record is first accessed, and only for that record. */
+    @Test
+    public void testMappedChecksumVerifiedLazily() throws IOException
+    {
+        writeDTED(this.file, this.elevations, 7);
+
+        try
+        {
+            DTED.read(this.file, new AVListImpl());
+            fail("Expected an IOException");
+        }
+        catch (IOException e)
+        {
+            // Expected.
+        }
+
+        BufferWrapperRaster mapped = (BufferWrapperRaster) DTED.map(this.file, new AVListImpl());
+        assertEquals(expectedElevation(this.elevations[6][HEIGHT - 1]), mapped.getDoubleAtPosition(0, 6), 0d);
+
+        try
+        {
+            mapped.getDoubleAtPosition(0, 7);
+            fail("Expected a WWRuntimeException");
+        }
+        catch (WWRuntimeException e)
+        {
+            // Expected.
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMappedRasterIsReadOnly() throws IOException
+    {
+        BufferWrapperRaster mapped = (BufferWrapperRaster) DTED.map(this.file, new AVListImpl());
+        mapped.setDoubleAtPosition(0, 0, 1d);
+    }
+
+    private static double expectedElevation(short elevation)
+    {
+        return (elevation < -12000 || elevation > 9000) ? -32767 : elevation;
+    }
+
+    /**
+     * Writes a minimal DTED file with the specified elevations, encoded in signed magnitude. The file's origin is 45N,
+     * 10E.
+     *
+     * @param file          the file to write.
+     * @param elevations    the elevations, indexed by column then by row from south to north.
+     * @param corruptColumn the column whose checksum is written incorrectly, or -1 to write all checksums correctly.
+     */
+    private static void writeDTED(File file, short[][] elevations, int corruptColumn) throws IOException
+    {
+        int width = elevations.length;
+        int height = elevations[0].length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(80 + 648 + 2700 + width * (12 + 2 * height));
+        buffer.put(header(80, String.format("UHL10100000E0450000N%-27s%04d%04d", "", width, height)));
+        buffer.put(header(648, String.format("DSIU%-55sDTED2", "")));
+        buffer.put(header(2700, "ACC"));
+
+        for (int x = 0; x < width; x++)
+        {
+            int start = buffer.position();
+            buffer.put((byte) 0xAA).put((byte) 0).putShort((short) x).putShort((short) x).putShort((short) 0);
+            for (int i = 0; i < height; i++)
+            {
+                short value = elevations[x][i];
+                buffer.putShort(value < 0 ? (short) (0x8000 | -value) : value);
+            }
+
+            int chkSum = 0;
+            for (int i = start; i < buffer.position(); i++)
+            {
+                chkSum += 0xFF & buffer.get(i);
+            }
+            buffer.putInt(x == corruptColumn ? chkSum + 1 : chkSum);
+        }
+
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(buffer.array());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static byte[] header(int size, String text)
+    {
+        byte[] bytes = new byte[size];
+        java.util.Arrays.fill(bytes, (byte) ' ');
+        byte[] textBytes = text.getBytes();
+        System.arraycopy(textBytes, 0, bytes, 0, textBytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.nitfs;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class NITFSMessageTest
+{
+    private static final int SUBHEADER_LENGTH = 40;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.file = File.createTempFile("NITFSMessageTest", ".ntf");
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.file.delete();
+    }
+
+    /** Tests that a lazily loaded message parses only the segments requested, and gives views of their data. */
+    @Test
+    public void testLazyLoad() throws IOException
+    {
+        Random random = new Random(7);
+        byte[][] data = {"first text".getBytes(), "second text".getBytes(), new byte[1000]};
+        random.nextBytes(data[2]);
+
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        try
+        {
+            long[] imageLengths = {};
+            long[] textLengths = {data[0].length, data[1].length};
+            long[] desLengths = {data[2].length};
+            raf.write(fileHeader(imageLengths, textLengths, desLengths));
+            writeSegment(raf, "TE", data[0]);
+            writeSegment(raf, "TE", data[1]);
+            writeSegment(raf, "DE", data[2]);
+            writeFileLength(raf);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        NITFSMessage message = NITFSMessage.load(this.file, true);
+        assertTrue(message.isLazy());
+        assertEquals(this.file.length(), message.getNITFSFileHeader().getFileLength());
+        assertEquals(0, message.getNumSegments(NITFSSegmentType.IMAGE_SEGMENT));
+        assertEquals(2, message.getNumSegments(NITFSSegmentType.TEXT_SEGMENT));
+        assertEquals(1, message.getNumSegments(NITFSSegmentType.DATA_EXTENSION_SEGMENT));
+        assertNull(message.getSegment(NITFSSegmentType.USER_DEFINED_HEADER_SEGMENT));
+
+        NITFSSegment segment = message.getSegment(NITFSSegmentType.TEXT_SEGMENT, 1);
+        assertSame(segment, message.getSegment(NITFSSegmentType.TEXT_SEGMENT, 1));
+        assertEquals(SUBHEADER_LENGTH, segment.getHeaderLength());
+        assertEquals(ByteBuffer.wrap(data[1]), segment.getData());
+        assertTrue(segment.getData().isReadOnly());
+        assertEquals(ByteBuffer.wrap(data[0]), message.getSegment(NITFSSegmentType.TEXT_SEGMENT).getData());
+        assertEquals(ByteBuffer.wrap(data[2]),
+            message.getSegment(NITFSSegmentType.DATA_EXTENSION_SEGMENT).getData());
+    }
+
+    /**
+     * Tests that segments of a file larger than a buffer can hold are mapped separately. The file is sparse: its first
+     * segment's data is never written.
+     */
+    @Test
+    public void testSegmentsBeyondFirstMapping() throws IOException
+    {
+        long imageDataLength = Integer.MAX_VALUE + 100000000L;
+        byte[] text = "text after the image".getBytes();
+
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        try
+        {
+            raf.write(fileHeader(new long[] {imageDataLength}, new long[] {text.length}, new long[0]));
+            raf.write(subheader("IM"));
+            raf.seek(raf.getFilePointer() + imageDataLength);
+            writeSegment(raf, "TE", text);
+            writeFileLength(raf);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        NITFSMessage message = NITFSMessage.load(this.file, true);
+        assertEquals(this.file.length(), message.getNITFSFileHeader().getFileLength());
+
+        NITFSSegment segment = message.getSegment(NITFSSegmentType.TEXT_SEGMENT);
+        assertEquals(text.length, segment.getDataLength());
+        assertEquals(ByteBuffer.wrap(text), segment.getData());
+
+        try
+        {
+            message.getSegment(NITFSSegmentType.IMAGE_SEGMENT);
+            fail("Expected an exception mapping a segment larger than a buffer");
+        }
+        catch (NITFSRuntimeException e)
+        {
+            // Expected.
+        }
+    }
+
+    /**
+     * Creates a NITF 2.1 file header for segments with headers of {@link #SUBHEADER_LENGTH} bytes and the specified
+     * data lengths. The file length is left blank.
+     */
+    private static byte[] fileHeader(long[] imageLengths, long[] textLengths, long[] desLengths)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(pad("NITF02.1003BF01", 39 + 247 + 11 + 3 + 24 + 18));
+        sb.append(pad("", 12)); // file length
+        int headerLengthPos = sb.length();
+        sb.append(pad("", 6));
+        sb.append(String.format("%03d", imageLengths.length));
+        for (long length : imageLengths)
+        {
+            sb.append(String.format("%06d%010d", SUBHEADER_LENGTH, length));
+        }
+        sb.append("000000"); // graphic and reserved (label) segments
+        sb.append(String.format("%03d", textLengths.length));
+        for (long length : textLengths)
+        {
+            sb.append(String.format("%04d%05d", SUBHEADER_LENGTH, length));
+        }
+        sb.append(String.format("%03d", desLengths.length));
+        for (long length : desLengths)
+        {
+            sb.append(String.format("%04d%09d", SUBHEADER_LENGTH, length));
+        }
+        sb.append("000"); // reserved extension segments
+        sb.append("0000000000"); // user defined and extended header data lengths
+        sb.replace(headerLengthPos, headerLengthPos + 6, String.format("%06d", sb.length()));
+
+        return sb.toString().getBytes();
+    }
+
+    private static void writeSegment(RandomAccessFile raf, String partType, byte[] data) throws IOException
+    {
+        raf.write(subheader(partType));
+        raf.write(data);
+    }
+
+    private static void writeFileLength(RandomAccessFile raf) throws IOException
+    {
+        long length = raf.length();
+        raf.seek(342);
+        raf.write(String.format("%012d", length).getBytes());
+    }
+
+    private static byte[] subheader(String partType)
+    {
+        return pad(partType, SUBHEADER_LENGTH).getBytes();
+    }
+
+    private static String pad(String text, int size)
+    {
+        StringBuilder sb = new StringBuilder(text);
+        while (sb.length() < size)
+        {
+            sb.append(' ');
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.rpf;
+
+import gov.nasa.worldwind.geom.Sector;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class RPFFrameIndexTest
+{
+    private static final String BASE34_ALPHABET = "0123456789ABCDEFGHJKLMNPQRSTUVWXYZ";
+
+    private File root;
+    private File indexFile;
+    private List<File> frameFiles;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.root = File.createTempFile("RPFFrameIndexTest", "");
+        this.root.delete();
+        this.root.mkdirs();
+        // Keep the index file outside the indexed directories, so writing it doesn't modify them.
+        this.indexFile = new File(this.root.getPath() + ".idx");
+
+        // Frames of one series and zone divided among nested directories, and files the index should ignore.
+        this.frameFiles = new ArrayList<File>();
+        File[] dirs = {new File(this.root, "A"), new File(this.root, "B"), new File(this.root, "B/C")};
+        for (int i = 0; i < 60; i++)
+        {
+            this.frameFiles.add(createFile(new File(dirs[i % dirs.length], frameName(i))));
+        }
+        createFile(new File(this.root, "A.TOC"));
+        createFile(new File(dirs[0], "README.TXT"));
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete(this.root);
+        this.indexFile.delete();
+    }
+
+    @Test
+    public void testCreateIndex()
+    {
+        RPFFrameIndex index = RPFFrameIndex.createIndex(this.root, null);
+
+        assertEquals(this.frameFiles.size(), index.getNumFrames());
+        assertEquals(this.root.getAbsoluteFile(), index.getRootDirectory());
+
+        Set<File> indexedFiles = new HashSet<File>();
+        Sector boundingSector = null;
+        for (int i = 0; i < index.getNumFrames(); i++)
+        {
+            File file = index.getFrameFile(i);
+            indexedFiles.add(file);
+            assertEquals(RPFFrameIndex.computeFrameSector(file), index.getFrameSector(i));
+            assertEquals(file.lastModified(), index.getFrameLastModified(i));
+            assertEquals("ON", index.getFrameDataSeriesCode(i));
+            assertEquals('2', index.getFrameZoneCode(i));
+            boundingSector = boundingSector != null ? boundingSector.union(index.getFrameSector(i))
+                : index.getFrameSector(i);
+        }
+
+        assertEquals(new HashSet<File>(absoluteFiles(this.frameFiles)), indexedFiles);
+        assertEquals(boundingSector, index.getBoundingSector());
+    }
+
+    @Test
+    public void testFindFramesMatchesLinearSearch()
+    {
+        RPFFrameIndex index = RPFFrameIndex.createIndex(this.root, null);
+        Sector bounds = index.getBoundingSector();
+
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++)
+        {
+            double lat = bounds.getMinLatitude().degrees + random.nextDouble() * bounds.getDeltaLatDegrees();
+            double lon = bounds.getMinLongitude().degrees + random.nextDouble() * bounds.getDeltaLonDegrees();
+            double size = random.nextDouble() * bounds.getDeltaLatDegrees() / 4;
+            Sector sector = Sector.fromDegrees(lat, lat + size, lon, lon + size);
+
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int frame = 0; frame < index.getNumFrames(); frame++)
+            {
+                if (sector.intersects(index.getFrameSector(frame)))
+                    expected.add(frame);
+            }
+
+            assertEquals(expected, toList(index.findFrames(sector)));
+        }
+
+        // A sector sharing only an edge with a frame intersects it, as it does with Sector.intersects.
+        Sector frameSector = index.getFrameSector(0);
+        Sector edge = Sector.fromDegrees(frameSector.getMaxLatitude().degrees, frameSector.getMaxLatitude().degrees,
+            frameSector.getMinLongitude().degrees, frameSector.getMinLongitude().degrees);
+        assertTrue(toList(index.findFrames(edge)).contains(0));
+
+        assertEquals(0, index.findFrames(Sector.fromDegrees(-89, -88, 0, 1)).length);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException
+    {
+        RPFFrameIndex index = RPFFrameIndex.createIndex(this.root, null);
+        index.save(this.indexFile);
+
+        RPFFrameIndex loaded = RPFFrameIndex.load(this.indexFile);
+        assertEquals(index.getNumFrames(), loaded.getNumFrames());
+        assertEquals(index.getRootDirectory(), loaded.getRootDirectory());
+        assertEquals(index.getBoundingSector(), loaded.getBoundingSector());
+        for (int i = 0; i < index.getNumFrames(); i++)
+        {
+            assertEquals(index.getFrameFile(i), loaded.getFrameFile(i));
+            assertEquals(index.getFrameSector(i), loaded.getFrameSector(i));
+            assertEquals(index.getFrameLastModified(i), loaded.getFrameLastModified(i));
+        }
+        assertArrayEquals(index.findFrames(index.getBoundingSector()), loaded.findFrames(loaded.getBoundingSector()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadRejectsOtherFiles() throws IOException
+    {
+        File file = new File(this.root, "A.TOC");
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(new byte[200]);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        RPFFrameIndex.load(file);
+    }
+
+    @Test
+    public void testRefreshUnchangedDirectories() throws IOException
+    {
+        RPFFrameIndex index = RPFFrameIndex.open(this.root, this.indexFile);
+        long lastModified = this.indexFile.lastModified();
+
+        // Opening the index again reuses the index file, and refreshing it without changes returns the same index.
+        RPFFrameIndex reopened = RPFFrameIndex.open(this.root, this.indexFile);
+        assertEquals(lastModified, this.indexFile.lastModified());
+        assertEquals(index.getNumFrames(), reopened.getNumFrames());
+        assertSame(reopened, RPFFrameIndex.createIndex(this.root, reopened));
+    }
+
+    @Test
+    public void testRefreshChangedDirectories() throws IOException
+    {
+        RPFFrameIndex index = RPFFrameIndex.open(this.root, this.indexFile);
+
+        // Add a frame to one directory and remove a frame from another.
+        File dir = new File(this.root, "B/C");
+        File added = createFile(new File(dir, frameName(100)));
+        dir.setLastModified(dir.lastModified() - 10000);
+        File removed = this.frameFiles.get(0);
+        assertTrue(removed.delete());
+        removed.getParentFile().setLastModified(removed.getParentFile().lastModified() - 10000);
+
+        RPFFrameIndex refreshed = RPFFrameIndex.open(this.root, this.indexFile);
+        assertEquals(index.getNumFrames(), refreshed.getNumFrames());
+
+        Set<File> indexedFiles = new HashSet<File>();
+        for (int i = 0; i < refreshed.getNumFrames(); i++)
+        {
+            indexedFiles.add(refreshed.getFrameFile(i));
+        }
+        assertTrue(indexedFiles.contains(added.getAbsoluteFile()));
+        assertFalse(indexedFiles.contains(removed.getAbsoluteFile()));
+
+        // The refreshed index was saved.
+        assertTrue(toList(RPFFrameIndex.load(this.indexFile).findFrames(RPFFrameIndex.computeFrameSector(added)))
+            .size() > 0);
+    }
+
+    @Test
+    public void testBuilderKeepsFrameOrder()
+    {
+        RPFFrameIndex.Builder builder = new RPFFrameIndex.Builder(this.root);
+        List<File> files = new ArrayList<File>(this.frameFiles);
+        Collections.shuffle(files, new Random(5));
+        for (File file : files)
+        {
+            builder.addFrame(file, RPFFrameIndex.computeFrameSector(file), 0);
+        }
+
+        RPFFrameIndex index = builder.build();
+        assertEquals(files.size(), index.getNumFrames());
+        for (int i = 0; i < files.size(); i++)
+        {
+            assertEquals(files.get(i).getAbsoluteFile(), index.getFrameFile(i));
+            assertEquals(RPFFrameIndex.computeFrameSector(files.get(i)), index.getFrameSector(i));
+        }
+    }
+
+    private static String frameName(int frameNumber)
+    {
+        return base34(frameNumber, 5) + base34(1, 2) + "3.ON2";
+    }
+
+    private static String base34(int value, int digits)
+    {
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--)
+        {
+            chars[i] = BASE34_ALPHABET.charAt(value % 34);
+            value /= 34;
+        }
+
+        return new String(chars);
+    }
+
+    private static File createFile(File file) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        new FileOutputStream(file).close();
+        return file;
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    private static List<File> absoluteFiles(List<File> files)
+    {
+        List<File> list = new ArrayList<File>();
+        for (File file : files)
+        {
+            list.add(file.getAbsoluteFile());
+        }
+
+        return list;
+    }
+
+    private static List<Integer> toList(int[] array)
+    {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i : array)
+        {
+            list.add(i);
+        }
+
+        return list;
+    }
+}
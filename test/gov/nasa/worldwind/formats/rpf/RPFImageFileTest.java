@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.rpf;
+
+import gov.nasa.worldwind.cache.BasicMemoryCache;
+import gov.nasa.worldwind.formats.nitfs.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class RPFImageFileTest
+{
+    private static final int SUBFRAMES = 3;
+    private static final int SUBFRAME_SIZE = 32;
+    private static final int CODES_PER_ROW = SUBFRAME_SIZE / 4;
+    private static final int SIZE = SUBFRAMES * SUBFRAME_SIZE;
+    private static final int NUM_COLORS = 217;
+    private static final int TRANSPARENT_COLOR = 216;
+    private static final int TRANSPARENT_KERNEL = 4095;
+    private static final int MASKED_SUBFRAME = 4;
+
+    private File dir;
+    private File file;
+    private byte[][] colors;
+    private byte[][] codebook;
+    private int[][][] codes;
+
+    /** A frame cache that counts the frames it decodes. */
+    private static class CountingFrameCache extends RPFFrameCache
+    {
+        public int decodeCount;
+
+        public CountingFrameCache()
+        {
+            super(new BasicMemoryCache(50000000L, 60000000L));
+        }
+
+        @Override
+        protected RPFFrameTransform.RPFImage[] decodeFrame(File file) throws IOException
+        {
+            this.decodeCount++;
+            return super.decodeFrame(file);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        // Random colors, a random codebook with transparent and application reserved color codes, and random image
+        // codes including the transparent kernel code.
+        Random random = new Random(11);
+        this.colors = new byte[3][NUM_COLORS];
+        for (byte[] table : this.colors)
+        {
+            random.nextBytes(table);
+        }
+        this.codebook = new byte[4][4096 * 4];
+        for (byte[] table : this.codebook)
+        {
+            random.nextBytes(table);
+        }
+        this.codes = new int[SUBFRAMES * SUBFRAMES][CODES_PER_ROW][CODES_PER_ROW];
+        for (int[][] subframe : this.codes)
+        {
+            for (int[] row : subframe)
+            {
+                for (int col = 0; col < row.length; col++)
+                {
+                    row[col] = random.nextInt(10) == 0 ? TRANSPARENT_KERNEL : random.nextInt(4095);
+                }
+            }
+        }
+
+        this.dir = File.createTempFile("RPFImageFileTest", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+        this.file = new File(this.dir, "000HG010.ON2");
+        this.writeFrame(this.file);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.file.delete();
+        this.dir.delete();
+    }
+
+    /** Tests that decoding expands each image code through the codebook and the color lookup table. */
+    @Test
+    public void testDecodedPixelsMatchCodebook() throws IOException
+    {
+        BufferedImage image = RPFImageFile.load(this.file).getBufferedImage();
+
+        assertEquals(SIZE, image.getWidth());
+        assertEquals(SIZE, image.getHeight());
+        assertArrayEquals(this.expectedPixels(), ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+    }
+
+    @Test
+    public void testParallelDecodeMatchesSequentialDecode() throws IOException
+    {
+        RPFImageFile rpfFile = RPFImageFile.load(this.file);
+        int[] expected = ((DataBufferInt) rpfFile.getBufferedImage().getRaster().getDataBuffer()).getData();
+
+        for (int threadCount : new int[] {2, 4, SUBFRAMES * SUBFRAMES, 100})
+        {
+            BufferedImage image = rpfFile.getBufferedImage(threadCount);
+            assertArrayEquals(expected, ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        }
+    }
+
+    @Test
+    public void testFrameCacheDecodesFrameOnce() throws IOException
+    {
+        CountingFrameCache frameCache = new CountingFrameCache();
+
+        RPFFrameTransform.RPFImage[] images = frameCache.getFrameImages(this.file);
+        assertEquals(1, images.length);
+        assertNotNull(images[0].getSector());
+        assertArrayEquals(this.expectedPixels(),
+            ((DataBufferInt) images[0].getImage().getRaster().getDataBuffer()).getData());
+
+        assertSame(images, frameCache.getFrameImages(this.file));
+        assertSame(images, frameCache.getFrameImages(new File(this.dir, this.file.getName())));
+        assertEquals(1, frameCache.decodeCount);
+        assertEquals(1, frameCache.getMemoryCache().getNumObjects());
+    }
+
+    @Test
+    public void testFrameCacheDecodesModifiedFrameAgain() throws IOException
+    {
+        CountingFrameCache frameCache = new CountingFrameCache();
+        RPFFrameTransform.RPFImage[] images = frameCache.getFrameImages(this.file);
+
+        assertTrue(this.file.setLastModified(this.file.lastModified() - 10000));
+        assertNotSame(images, frameCache.getFrameImages(this.file));
+        assertEquals(2, frameCache.decodeCount);
+    }
+
+    @Test
+    public void testLazyMessageMatchesLoadedMessage() throws IOException
+    {
+        NITFSMessage message = NITFSMessage.load(this.file, true);
+        assertTrue(message.isLazy());
+        assertEquals(1, message.getNumSegments(NITFSSegmentType.IMAGE_SEGMENT));
+
+        NITFSImageSegment segment = (NITFSImageSegment) message.getSegment(NITFSSegmentType.IMAGE_SEGMENT);
+        assertSame(segment, message.getSegment(NITFSSegmentType.IMAGE_SEGMENT, 0));
+        assertNull(message.getSegment(NITFSSegmentType.IMAGE_SEGMENT, 1));
+        assertArrayEquals(this.expectedPixels(),
+            segment.getImagePixelsAsArray(new int[SIZE * SIZE], RPFImageType.IMAGE_TYPE_ALPHA_RGB));
+
+        NITFSImageSegment loadedSegment = (NITFSImageSegment) NITFSMessage.load(this.file).getSegment(
+            NITFSSegmentType.IMAGE_SEGMENT);
+        assertEquals(loadedSegment.getDataLength(), segment.getDataLength());
+        assertEquals(loadedSegment.getData(), segment.getData());
+    }
+
+    /** Tests that the views of the subframes' image codes contain the codes written to the frame. */
+    @Test
+    public void testSubframeData() throws IOException
+    {
+        NITFSImageSegment segment = (NITFSImageSegment) NITFSMessage.load(this.file, true).getSegment(
+            NITFSSegmentType.IMAGE_SEGMENT);
+        assertEquals(SUBFRAMES * SUBFRAMES, segment.getNumSubframes());
+
+        for (int subframe = 0; subframe < SUBFRAMES * SUBFRAMES; subframe++)
+        {
+            ByteBuffer data = segment.getSubframeData(subframe);
+            if (subframe == MASKED_SUBFRAME)
+            {
+                assertNull(data);
+                continue;
+            }
+
+            assertTrue(data.isReadOnly());
+            assertEquals(CODES_PER_ROW * CODES_PER_ROW * 3 / 2, data.remaining());
+            for (int[] row : this.codes[subframe])
+            {
+                for (int col = 0; col < row.length; col += 2)
+                {
+                    int aa = 0xFF & data.get();
+                    int ab = 0xFF & data.get();
+                    int bb = 0xFF & data.get();
+                    assertEquals(row[col], (aa << 4) | (ab >> 4));
+                    assertEquals(row[col + 1], ((ab & 0xF) << 8) | bb);
+                }
+            }
+        }
+    }
+
+    private static void assertArrayEquals(int[] expected, int[] actual)
+    {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals("pixel " + i, expected[i], actual[i]);
+        }
+    }
+
+    /**
+     * Computes the frame's pixels directly from its codes, codebook and colors. Masked subframes, transparent kernels,
+     * transparent pixels and pixels with application reserved color codes are left zero.
+     *
+     * @return the expected ARGB pixels.
+     */
+    private int[] expectedPixels()
+    {
+        int[] pixels = new int[SIZE * SIZE];
+        for (int subframe = 0; subframe < SUBFRAMES * SUBFRAMES; subframe++)
+        {
+            if (subframe == MASKED_SUBFRAME)
+                continue;
+
+            for (int row = 0; row < CODES_PER_ROW; row++)
+            {
+                for (int col = 0; col < CODES_PER_ROW; col++)
+                {
+                    int code = this.codes[subframe][row][col];
+                    if (code == TRANSPARENT_KERNEL)
+                        continue;
+
+                    for (int h = 0; h < 4; h++)
+                    {
+                        for (int w = 0; w < 4; w++)
+                        {
+                            int color = 0xFF & this.codebook[h][4 * code + w];
+                            if (color >= TRANSPARENT_COLOR)
+                                continue;
+
+                            int y = (subframe / SUBFRAMES) * SUBFRAME_SIZE + 4 * row + h;
+                            int x = (subframe % SUBFRAMES) * SUBFRAME_SIZE + 4 * col + w;
+                            pixels[y * SIZE + x] = 0xFF000000 | (0xFF & this.colors[0][color]) << 16
+                                | (0xFF & this.colors[1][color]) << 8 | (0xFF & this.colors[2][color]);
+                        }
+                    }
+                }
+            }
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Writes a minimal CADRG frame with the headers and sections the RPF reader requires. The frame's mask subsection
+     * masks one subframe and declares a transparent color code, and its unmasked subframes are stored in reverse order
+     * at the offsets given by the subframe mask table.
+     *
+     * @param file the frame file to write.
+     */
+    private void writeFrame(File file) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 17);
+
+        // NITF 2.1 file header, followed by the image segment length and the empty segment groups.
+        buffer.put(text("NITF02.1003BF01", 39 + 247 + 11 + 3 + 24 + 18));
+        int fileLengthPos = buffer.position();
+        buffer.put(text("", 12 + 6));
+        buffer.put(text("001", 3));
+        int segmentLengthsPos = buffer.position();
+        buffer.put(text("", 6 + 10));
+        buffer.put(text("000000000000000", 15));
+
+        // User defined header containing the RPF header section.
+        buffer.put(text("00062000RPFHDR00048", 19));
+        buffer.put((byte) 0).putShort((short) 48).put(text(file.getName(), 12)).put((byte) 0);
+        buffer.put(text("MIL-C-89038    19941006U", 28));
+        int locationRefPos = buffer.position();
+        buffer.putInt(0);
+        buffer.put(text("00000", 5));
+        int headerLength = buffer.position();
+
+        // Image subheader.
+        buffer.put(text("IMCADRG", 2 + 10 + 14 + 17 + 80));
+        buffer.put(text("U", 1 + 40 + 40 + 40 + 20 + 20 + 6));
+        buffer.put(text("0", 1 + 42));
+        buffer.put(text(String.format("%08d%08d", SIZE, SIZE), 16));
+        buffer.put(text(String.format("%-3s%-8s%-8s%02dRG", "INT", "RGB/LUT", "MAP", 8), 23));
+        for (int i = 0; i < 4; i++)
+        {
+            buffer.put(text("450000N0100000E", 15));
+        }
+        buffer.put(text(String.format("0C4%4s1LU%6sN%3s3%05d", "", "", "", NUM_COLORS), 26));
+        for (byte[] table : this.colors)
+        {
+            buffer.put(table);
+        }
+        buffer.put(text(String.format("0B%04d%04d%04d%04d08001000", SUBFRAMES, SUBFRAMES, SUBFRAME_SIZE,
+            SUBFRAME_SIZE), 26));
+        buffer.put(text("00000000001.0", 14));
+        int udidlPos = buffer.position();
+        buffer.put(text("", 5));
+        buffer.put(text("000RPFIMG", 9));
+        int udidDataLengthPos = buffer.position();
+        buffer.put(text("", 5));
+
+        // RPF location section, locating the components written to the image data below.
+        int locationPos = buffer.position();
+        int[] componentIds = {131, 132, 136, 137, 138, 140};
+        buffer.putShort((short) (14 + 10 * componentIds.length)).putInt(14).putShort((short) componentIds.length);
+        buffer.putShort((short) 10).putInt(0);
+        int recordsPos = buffer.position();
+        buffer.position(recordsPos + 10 * componentIds.length);
+        int dataStart = buffer.position();
+        int[] componentPos = new int[componentIds.length];
+
+        // Compression section subheader.
+        componentPos[0] = buffer.position();
+        buffer.putShort((short) 1).putShort((short) 4).putShort((short) 0);
+
+        // Compression lookup subsection: four tables, one per kernel row, of 4096 records of four color codes.
+        componentPos[1] = buffer.position();
+        buffer.putInt(6).putShort((short) 14);
+        for (int t = 0; t < 4; t++)
+        {
+            buffer.putShort((short) t).putInt(4096).putShort((short) 4).putShort((short) 8).putInt(62 + t * 16384);
+        }
+        for (byte[] table : this.codebook)
+        {
+            buffer.put(table);
+        }
+
+        // Image description subheader, locating the subframe mask table seven bytes into the mask subsection.
+        componentPos[2] = buffer.position();
+        buffer.putShort((short) 1).putShort((short) (SUBFRAMES * SUBFRAMES)).putShort((short) 1).putShort((short) 1);
+        buffer.putShort((short) SUBFRAMES).putShort((short) SUBFRAMES).putInt(SUBFRAME_SIZE).putInt(SUBFRAME_SIZE);
+        buffer.putInt(7).putInt(-1);
+
+        // Image display parameters subheader.
+        componentPos[3] = buffer.position();
+        buffer.putInt(CODES_PER_ROW).putInt(CODES_PER_ROW).put((byte) 12);
+
+        // Mask subsection: an 8-bit transparent color code, and the offset of each subframe's codes.
+        componentPos[4] = buffer.position();
+        buffer.putShort((short) 4).putShort((short) 0).putShort((short) 8).put((byte) TRANSPARENT_COLOR);
+        int subframeSize = CODES_PER_ROW * CODES_PER_ROW * 3 / 2;
+        for (int subframe = 0, offset = subframeSize * (SUBFRAMES * SUBFRAMES - 2); subframe < SUBFRAMES * SUBFRAMES;
+            subframe++)
+        {
+            buffer.putInt(subframe == MASKED_SUBFRAME ? -1 : offset);
+            offset -= subframe == MASKED_SUBFRAME ? 0 : subframeSize;
+        }
+
+        // Spatial data subsection: the unmasked subframes in reverse order, each row packing two 12-bit codes into
+        // three bytes.
+        componentPos[5] = buffer.position();
+        for (int subframe = SUBFRAMES * SUBFRAMES - 1; subframe >= 0; subframe--)
+        {
+            if (subframe == MASKED_SUBFRAME)
+                continue;
+
+            for (int[] row : this.codes[subframe])
+            {
+                for (int col = 0; col < row.length; col += 2)
+                {
+                    int c0 = row[col];
+                    int c1 = row[col + 1];
+                    buffer.put((byte) (c0 >> 4)).put((byte) (((c0 & 0xF) << 4) | (c1 >> 8))).put((byte) c1);
+                }
+            }
+        }
+        int end = buffer.position();
+
+        for (int i = 0; i < componentIds.length; i++)
+        {
+            int length = (i + 1 < componentIds.length ? componentPos[i + 1] : end) - componentPos[i];
+            buffer.position(recordsPos + 10 * i);
+            buffer.putShort((short) componentIds[i]).putInt(length).putInt(componentPos[i]);
+        }
+
+        buffer.putInt(locationRefPos, locationPos);
+        putText(buffer, fileLengthPos, String.format("%012d%06d", end, headerLength));
+        putText(buffer, segmentLengthsPos, String.format("%06d%010d", dataStart - headerLength, end - dataStart));
+        putText(buffer, udidlPos, String.format("%05d", dataStart - udidDataLengthPos + 9));
+        putText(buffer, udidDataLengthPos, String.format("%05d", dataStart - locationPos));
+
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(buffer.array(), 0, end);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static byte[] text(String text, int size)
+    {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) ' ');
+        byte[] textBytes = text.getBytes();
+        System.arraycopy(textBytes, 0, bytes, 0, textBytes.length);
+        return bytes;
+    }
+
+    private static void putText(ByteBuffer buffer, int position, String text)
+    {
+        byte[] bytes = text.getBytes();
+        for (int i = 0; i < bytes.length; i++)
+        {
+            buffer.put(position + i, bytes[i]);
+        }
+    }
+}
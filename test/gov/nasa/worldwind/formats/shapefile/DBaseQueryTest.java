@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DBaseQueryTest
+{
+    private static final String WORLD_BORDERS_PATH = "testData/shapefiles/TM_WORLD_BORDERS-0.3.dbf";
+    private static final String STATE_BOUNDS_PATH = "testData/shapefiles/state_bounds.shp";
+
+    /** A query and the equivalent predicate on decoded records. */
+    private abstract static class Case
+    {
+        final DBaseQuery query;
+
+        Case(DBaseQuery query)
+        {
+            this.query = query;
+        }
+
+        abstract boolean matches(DBaseRecord record);
+
+        double number(DBaseRecord record, String name)
+        {
+            Object value = record.getValue(name);
+            return value != null ? ((Number) value).doubleValue() : Double.NaN;
+        }
+
+        String string(DBaseRecord record, String name)
+        {
+            return (String) record.getValue(name);
+        }
+    }
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.tempDir = File.createTempFile("DBaseQueryTest", "");
+        assertTrue(this.tempDir.delete());
+        assertTrue(this.tempDir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        WWIO.deleteDirectory(this.tempDir);
+        this.tempDir.delete();
+    }
+
+    /** Tests that queries evaluated against a table match the records whose decoded values satisfy the query. */
+    @Test
+    public void testQueriesMatchDecodedRecords() throws Exception
+    {
+        DBaseFile dbaseFile = new DBaseFile(new File(WORLD_BORDERS_PATH));
+        List<DBaseRecord> records = readRecords(WORLD_BORDERS_PATH);
+
+        for (Case c : createCases())
+        {
+            assertTrue(Arrays.equals(expectedRecords(c, records), c.query.findRecords(dbaseFile.getTable())));
+        }
+
+        dbaseFile.close();
+    }
+
+    /** Tests that queries evaluated with bitmap indexes match the same records as queries that read every record. */
+    @Test
+    public void testBitmapIndexMatchesScan() throws Exception
+    {
+        File file = this.copyFile(WORLD_BORDERS_PATH);
+        DBaseFile dbaseFile = new DBaseFile(file);
+        List<int[]> expected = new ArrayList<int[]>();
+        for (Case c : createCases())
+        {
+            expected.add(c.query.findRecords(dbaseFile.getTable()));
+        }
+
+        DBaseBitmapIndex regionIndex = dbaseFile.loadBitmapIndex("REGION", DBaseBitmapIndex.DEFAULT_MAX_CARDINALITY);
+        assertNotNull(regionIndex);
+        assertNotNull(dbaseFile.loadBitmapIndex("ISO2", DBaseBitmapIndex.DEFAULT_MAX_CARDINALITY));
+        assertNotNull(dbaseFile.loadBitmapIndex("NAME", DBaseBitmapIndex.DEFAULT_MAX_CARDINALITY));
+        assertSame(regionIndex, dbaseFile.getBitmapIndex("REGION"));
+
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertTrue(Arrays.equals(expected.get(i), createCases().get(i).query.findRecords(dbaseFile.getTable())));
+        }
+
+        // A compiled query of an indexed field uses the index.
+        assertTrue(DBaseQuery.equalTo("REGION", 150).compile(dbaseFile.getTable()).isIndexed());
+        assertFalse(DBaseQuery.isNull("REGION").compile(dbaseFile.getTable()).isIndexed());
+        assertFalse(DBaseQuery.equalTo("POP2005", 0).compile(dbaseFile.getTable()).isIndexed());
+
+        dbaseFile.close();
+    }
+
+    /** Tests that a bitmap index is saved beside its DBase file, and loaded by the next file that reads it. */
+    @Test
+    public void testBitmapIndexSaveAndLoad() throws Exception
+    {
+        File file = this.copyFile(WORLD_BORDERS_PATH);
+        DBaseFile dbaseFile = new DBaseFile(file);
+        DBaseBitmapIndex expected = dbaseFile.loadBitmapIndex("REGION", DBaseBitmapIndex.DEFAULT_MAX_CARDINALITY);
+        dbaseFile.close();
+
+        File indexFile = new File(this.tempDir, "TM_WORLD_BORDERS-0.3.REGION.wwb");
+        assertTrue(indexFile.exists());
+        long lastModified = indexFile.lastModified();
+
+        dbaseFile = new DBaseFile(file);
+        DBaseBitmapIndex actual = dbaseFile.loadBitmapIndex("REGION", DBaseBitmapIndex.DEFAULT_MAX_CARDINALITY);
+
+        assertEquals(lastModified, indexFile.lastModified());
+        assertTrue(actual.matches(dbaseFile.getTable()));
+        assertEquals("REGION", actual.getFieldName());
+        assertEquals(expected.getNumRecords(), actual.getNumRecords());
+        assertEquals(expected.getNumValues(), actual.getNumValues());
+
+        int numIndexed = 0;
+        for (int i = 0; i < actual.getNumValues(); i++)
+        {
+            assertEquals(expected.getValue(i), actual.getValue(i));
+            assertEquals(expected.getRecords(i), actual.getRecords(i));
+
+            BitSet records = actual.getRecords(i);
+            for (int j = records.nextSetBit(0); j >= 0; j = records.nextSetBit(j + 1))
+            {
+                assertEquals(actual.getValue(i), dbaseFile.getTable().getString(j, 7));
+            }
+            numIndexed += records.cardinality();
+        }
+        assertEquals(dbaseFile.getNumberOfRecords(), numIndexed);
+
+        dbaseFile.close();
+    }
+
+    /** Tests that no bitmap index is created for a field with more distinct values than the maximum. */
+    @Test
+    public void testBitmapIndexMaxCardinality() throws Exception
+    {
+        DBaseFile dbaseFile = new DBaseFile(this.copyFile(WORLD_BORDERS_PATH));
+
+        assertNull(dbaseFile.loadBitmapIndex("NAME", 16));
+        assertNull(dbaseFile.getBitmapIndex("NAME"));
+        assertFalse(new File(this.tempDir, "TM_WORLD_BORDERS-0.3.NAME.wwb").exists());
+
+        dbaseFile.close();
+    }
+
+    /** Tests that deleted records never match. */
+    @Test
+    public void testDeletedRecordsDoNotMatch() throws Exception
+    {
+        File file = this.copyFile(WORLD_BORDERS_PATH);
+        DBaseFile dbaseFile = new DBaseFile(file);
+        int headerLength = dbaseFile.getHeaderLength();
+        dbaseFile.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            raf.seek(headerLength);
+            raf.write('*');
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        dbaseFile = new DBaseFile(file);
+        DBaseTable table = dbaseFile.getTable();
+        assertTrue(table.isDeleted(0));
+
+        int[] records = DBaseQuery.and().findRecords(table);
+        assertEquals(table.getNumberOfRecords() - 1, records.length);
+        assertEquals(1, records[0]);
+        assertEquals(0, DBaseQuery.equalTo("ISO3", "ATG").findRecords(table).length);
+        assertEquals(0, DBaseQuery.or().findRecords(table).length);
+
+        dbaseFile.close();
+    }
+
+    /** Tests that queries of unknown fields and values of the wrong type are rejected when they're compiled. */
+    @Test
+    public void testInvalidQueries() throws Exception
+    {
+        DBaseFile dbaseFile = new DBaseFile(new File(WORLD_BORDERS_PATH));
+        DBaseQuery[] queries = {
+            DBaseQuery.equalTo("MISSING", 1),
+            DBaseQuery.lessThan("POP2005", "many"),
+            DBaseQuery.and(DBaseQuery.equalTo("REGION", 2), DBaseQuery.in("AREA", new Date()))};
+
+        for (DBaseQuery query : queries)
+        {
+            try
+            {
+                query.findRecords(dbaseFile.getTable());
+                fail("Expected an exception compiling " + query);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected.
+            }
+        }
+
+        dbaseFile.close();
+    }
+
+    /** Tests that a Shapefile finds the records matching a query, and that a renderable shows only those records. */
+    @Test
+    public void testShapefileRecordsVisibility() throws Exception
+    {
+        Shapefile shapefile = new Shapefile(STATE_BOUNDS_PATH);
+        ShapefileRenderable renderable = new ShapefilePolylines(shapefile);
+        DBaseQuery query = DBaseQuery.lessThan("ID", 500);
+
+        Shapefile other = new Shapefile(STATE_BOUNDS_PATH);
+        int[] ordinals = other.findRecords(query);
+        other.close();
+        assertTrue(ordinals.length > 0);
+        assertTrue(ordinals.length < renderable.getRecordCount());
+        assertEquals(ordinals.length, renderable.setRecordsVisible(query));
+
+        DBaseTable table = renderable.getAttributeTable();
+        int field = table.getFieldIndex("ID");
+        for (ShapefileRenderable.Record record : renderable)
+        {
+            assertEquals(table.getLong(record.getAttributeOrdinal(), field) < 500, record.isVisible());
+            assertEquals(Arrays.binarySearch(ordinals, record.getAttributeOrdinal()) >= 0, record.isVisible());
+        }
+
+        assertEquals(renderable.getRecordCount(), renderable.setRecordsVisible(DBaseQuery.not(DBaseQuery.or())));
+    }
+
+    private static List<Case> createCases()
+    {
+        List<Case> cases = new ArrayList<Case>();
+
+        cases.add(new Case(DBaseQuery.equalTo("REGION", 150))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return number(record, "REGION") == 150;
+            }
+        });
+        cases.add(new Case(DBaseQuery.lessThan("POP2005", 1000000))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return number(record, "POP2005") < 1000000;
+            }
+        });
+        cases.add(new Case(DBaseQuery.between("LAT", -10.5, "10"))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return number(record, "LAT") >= -10.5 && number(record, "LAT") <= 10;
+            }
+        });
+        cases.add(new Case(DBaseQuery.greaterThan("LON", 100.25))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return number(record, "LON") > 100.25;
+            }
+        });
+        cases.add(new Case(DBaseQuery.in("ISO2", "US", "CA", "MX", "XX"))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return Arrays.asList("US", "CA", "MX").contains(string(record, "ISO2"));
+            }
+        });
+        cases.add(new Case(DBaseQuery.in("SUBREGION", 5, 13L, 155.0))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                double d = number(record, "SUBREGION");
+                return d == 5 || d == 13 || d == 155;
+            }
+        });
+        cases.add(new Case(DBaseQuery.startsWith("NAME", "United"))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return string(record, "NAME").startsWith("United");
+            }
+        });
+        cases.add(new Case(DBaseQuery.startsWith("ISO3", "A"))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return string(record, "ISO3").startsWith("A");
+            }
+        });
+        cases.add(new Case(DBaseQuery.greaterThanOrEqualTo("NAME", "S"))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return string(record, "NAME").compareTo("S") >= 0;
+            }
+        });
+        cases.add(new Case(DBaseQuery.lessThanOrEqualTo("ISO3", "CAN"))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return string(record, "ISO3").compareTo("CAN") <= 0;
+            }
+        });
+        cases.add(new Case(DBaseQuery.and(DBaseQuery.in("REGION", 2, 9), DBaseQuery.greaterThan("POP2005", 1e7)))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                double region = number(record, "REGION");
+                return (region == 2 || region == 9) && number(record, "POP2005") > 1e7;
+            }
+        });
+        cases.add(new Case(DBaseQuery.or(DBaseQuery.equalTo("REGION", 19), DBaseQuery.startsWith("NAME", "B")))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return number(record, "REGION") == 19 || string(record, "NAME").startsWith("B");
+            }
+        });
+        cases.add(new Case(DBaseQuery.not(DBaseQuery.equalTo("REGION", 150)))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return number(record, "REGION") != 150;
+            }
+        });
+        cases.add(new Case(DBaseQuery.isNull("NAME"))
+        {
+            boolean matches(DBaseRecord record)
+            {
+                return record.getValue("NAME") == null;
+            }
+        });
+
+        return cases;
+    }
+
+    private static int[] expectedRecords(Case c, List<DBaseRecord> records)
+    {
+        int[] ordinals = new int[records.size()];
+        int count = 0;
+        for (int i = 0; i < records.size(); i++)
+        {
+            if (c.matches(records.get(i)))
+                ordinals[count++] = i;
+        }
+
+        return Arrays.copyOf(ordinals, count);
+    }
+
+    private static List<DBaseRecord> readRecords(String path) throws IOException
+    {
+        List<DBaseRecord> records = new ArrayList<DBaseRecord>();
+        DBaseFile dbaseFile = new DBaseFile(new FileInputStream(path));
+        try
+        {
+            while (dbaseFile.hasNext())
+            {
+                records.add(dbaseFile.nextRecord());
+            }
+        }
+        finally
+        {
+            dbaseFile.close();
+        }
+
+        return records;
+    }
+
+    private File copyFile(String path) throws IOException
+    {
+        File source = new File(path);
+        File destination = new File(this.tempDir, source.getName());
+        WWIO.copyFile(source, destination);
+
+        return destination;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.nio.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DBaseTableTest
+{
+    private static final String[] DBASE_FILES = {
+        "testData/shapefiles/state_bounds.dbf",
+        "testData/shapefiles/SPR_UGB.dbf",
+        "testData/shapefiles/BayArea.dbf"};
+    private static final String STATE_BOUNDS_NAME = "testData/shapefiles/state_bounds";
+
+    /** Field names, types, lengths and decimals of the DBase file written by writeDBaseFile. */
+    private static final Object[][] FIELDS = {
+        {"ID", 'N', 10, 0},
+        {"VALUE", 'N', 14, 4},
+        {"NAME", 'C', 12, 0},
+        {"FLAG", 'L', 1, 0},
+        {"DAY", 'D', 8, 0}};
+    private static final String[][] VALUES = {
+        {"        42", "        3.1416", "Alpha", "T", "20140131"},
+        {"       -17", "      -0.0500", "  Beta  ", "n", "19991231"},
+        {"          ", "              ", "", " ", "        "},
+        {"**********", "     1.25E+03", "Gamma", "y", "20000229"},
+        {"  12345678", "123456789.1234", "Delta", "F", "20101010"}};
+
+    private File tempFile;
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (this.tempFile != null)
+            this.tempFile.delete();
+    }
+
+    /** Tests that the values decoded from a table are the values in the corresponding DBase records. */
+    @Test
+    public void testValuesMatchRecords() throws Exception
+    {
+        for (String path : DBASE_FILES)
+        {
+            DBaseFile dbaseFile = new DBaseFile(new File(path));
+            DBaseTable table = dbaseFile.getTable();
+            assertNotNull(path, table);
+            assertEquals(dbaseFile.getNumberOfRecords(), table.getNumberOfRecords());
+            assertEquals(dbaseFile.getNumberOfFields(), table.getNumberOfFields());
+
+            for (int i = 0; i < table.getNumberOfRecords(); i++)
+            {
+                assertRecordMatches(dbaseFile.nextRecord(), table, i);
+            }
+
+            dbaseFile.close();
+        }
+    }
+
+    /** Tests that numeric, string and boolean values are decoded to primitives like their DBaseRecord values. */
+    @Test
+    public void testPrimitiveValues() throws Exception
+    {
+        DBaseFile dbaseFile = new DBaseFile(this.writeDBaseFile());
+        DBaseTable table = dbaseFile.getTable();
+
+        assertEquals(42, table.getLong(0, 0));
+        assertEquals(3.1416, table.getDouble(0, 1), 0);
+        assertEquals("Alpha", table.getString(0, 2));
+        assertTrue(table.getBoolean(0, 3));
+
+        assertEquals(-17, table.getLong(1, 0));
+        assertEquals(-0.05, table.getDouble(1, 1), 0);
+        assertEquals("Beta", table.getString(1, 2));
+        assertFalse(table.getBoolean(1, 3));
+
+        for (int field = 0; field < FIELDS.length; field++)
+        {
+            assertTrue(table.isNull(2, field));
+            assertNull(table.getValue(2, field));
+        }
+        assertEquals(0, table.getLong(2, 0));
+        assertTrue(Double.isNaN(table.getDouble(2, 1)));
+        assertNull(table.getString(2, 2));
+
+        assertTrue(table.isNull(3, 0));
+        assertEquals(1250, table.getDouble(3, 1), 0);
+        assertEquals(1250, table.getLong(3, 1));
+        assertTrue(table.getBoolean(3, 3));
+
+        assertEquals(12345678, table.getLong(4, 0));
+        assertEquals(123456789.1234, table.getDouble(4, 1), 0);
+        assertEquals(123456789, table.getLong(4, 1));
+
+        for (int i = 0; i < VALUES.length; i++)
+        {
+            assertFalse(table.isDeleted(i));
+            assertRecordMatches(dbaseFile.nextRecord(), table, i);
+        }
+
+        dbaseFile.close();
+    }
+
+    /** Tests that a projection reads the same values as the table it projects. */
+    @Test
+    public void testProjection() throws Exception
+    {
+        DBaseFile dbaseFile = new DBaseFile(this.writeDBaseFile());
+        DBaseTable table = dbaseFile.getTable();
+        DBaseTable projection = table.project("NAME", "ID");
+
+        assertEquals(2, projection.getNumberOfFields());
+        assertEquals(0, projection.getFieldIndex("NAME"));
+        assertEquals(1, projection.getFieldIndex("ID"));
+        assertEquals(-1, projection.getFieldIndex("VALUE"));
+
+        for (int i = 0; i < table.getNumberOfRecords(); i++)
+        {
+            assertEquals(table.getValue(i, 2), projection.getValue(i, 0));
+            assertEquals(table.getValue(i, 0), projection.getValue(i, 1));
+        }
+
+        AVList values = projection.getValues(0, new AVListImpl());
+        assertEquals(2, values.getEntries().size());
+        assertEquals("Alpha", values.getValue("NAME"));
+        assertEquals(42L, values.getValue("ID"));
+
+        try
+        {
+            table.project("MISSING");
+            fail("Expected an exception projecting a missing field");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected.
+        }
+
+        dbaseFile.close();
+    }
+
+    /** Tests that records read from a Shapefile decode their attributes from the table only when requested. */
+    @Test
+    public void testShapefileRecordsReferToTable() throws Exception
+    {
+        Shapefile shapefile = new Shapefile(STATE_BOUNDS_NAME + ".shp");
+        DBaseFile dbaseFile = new DBaseFile(new FileInputStream(STATE_BOUNDS_NAME + ".dbf"));
+        try
+        {
+            DBaseTable table = shapefile.getAttributeTable();
+            assertNotNull(table);
+
+            for (int i = 0; shapefile.hasNext(); i++)
+            {
+                ShapefileRecord record = shapefile.nextRecord();
+                assertSame(table, record.getAttributeTable());
+                assertEquals(i, record.getAttributeOrdinal());
+                assertNull(record.attributes);
+                assertEquals(dbaseFile.nextRecord().getEntries(), record.getAttributes().getEntries());
+            }
+        }
+        finally
+        {
+            shapefile.close();
+            dbaseFile.close();
+        }
+    }
+
+    private static void assertRecordMatches(DBaseRecord expected, DBaseTable table, int ordinal)
+    {
+        assertEquals(expected.isDeleted(), table.isDeleted(ordinal));
+        assertEquals(expected.getEntries(), table.readRecord(ordinal).getEntries());
+
+        for (int field = 0; field < table.getNumberOfFields(); field++)
+        {
+            Object value = expected.getValue(table.getField(field).getName());
+            assertEquals(value, table.getValue(ordinal, field));
+
+            if (value instanceof Double)
+                assertEquals((Double) value, table.getDouble(ordinal, field), 0);
+            else if (value instanceof Long)
+                assertEquals(value, table.getLong(ordinal, field));
+            else if (value instanceof String)
+                assertEquals(value, table.getString(ordinal, field));
+            else if (value instanceof Boolean)
+                assertEquals(value, table.getBoolean(ordinal, field));
+        }
+    }
+
+    private File writeDBaseFile() throws IOException
+    {
+        int recordLength = 1;
+        for (Object[] field : FIELDS)
+        {
+            recordLength += (Integer) field[2];
+        }
+
+        int headerLength = 32 + 32 * FIELDS.length + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + VALUES.length * recordLength + 1);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 3).put((byte) 114).put((byte) 1).put((byte) 1);
+        buffer.putInt(VALUES.length);
+        buffer.putShort((short) headerLength);
+        buffer.putShort((short) recordLength);
+        buffer.position(32);
+
+        for (Object[] field : FIELDS)
+        {
+            int pos = buffer.position();
+            buffer.put(((String) field[0]).getBytes("US-ASCII"));
+            buffer.position(pos + 11);
+            buffer.put((byte) (char) (Character) field[1]);
+            buffer.position(pos + 16);
+            buffer.put((byte) (int) (Integer) field[2]);
+            buffer.put((byte) (int) (Integer) field[3]);
+            buffer.position(pos + 32);
+        }
+        buffer.put((byte) 0x0D);
+
+        for (String[] record : VALUES)
+        {
+            buffer.put((byte) ' ');
+            for (int i = 0; i < FIELDS.length; i++)
+            {
+                int length = (Integer) FIELDS[i][2];
+                StringBuilder sb = new StringBuilder(record[i]);
+                while (sb.length() < length)
+                {
+                    sb.append(' ');
+                }
+                buffer.put(sb.toString().getBytes("US-ASCII"), 0, length);
+            }
+        }
+        buffer.put((byte) 0x1A);
+
+        this.tempFile = File.createTempFile("DBaseTableTest", ".dbf");
+        buffer.flip();
+        WWIO.saveBuffer(buffer, this.tempFile);
+
+        return this.tempFile;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.cache.BasicDataFileStore;
+import gov.nasa.worldwind.util.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.net.URL;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ShapefileGeneralizationTest
+{
+    private static final String STATE_BOUNDS_NAME = "testData/shapefiles/state_bounds";
+    private static final String SPRINGFIELD_URBAN_GROWTH_NAME = "testData/shapefiles/SPR_UGB";
+    private static final String[] SUFFIXES = {".shp", ".shx", ".dbf", ".prj"};
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.tempDir = File.createTempFile("ShapefileGeneralizationTest", "");
+        assertTrue(this.tempDir.delete());
+        assertTrue(this.tempDir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        WWIO.deleteDirectory(this.tempDir);
+        this.tempDir.delete();
+    }
+
+    /** Tests that the generalization holds the effective areas computed by PolylineGeneralizer for every boundary. */
+    @Test
+    public void testEffectiveAreaMatchesGeneralizer() throws Exception
+    {
+        ShapefileRenderable renderable = new ShapefilePolylines(new Shapefile(this.copyShapefile(STATE_BOUNDS_NAME)));
+        ShapefileGeneralization generalization = ShapefileGeneralization.createGeneralization(renderable,
+            renderable.shapefileLength);
+
+        assertEquals(renderable.getRecordCount(), generalization.getNumRecords());
+        assertTrue(generalization.matches(renderable, renderable.shapefileLength));
+
+        PolylineGeneralizer generalizer = new PolylineGeneralizer();
+        double[] coord = new double[2];
+        int numBoundaries = 0;
+        int numPoints = 0;
+
+        for (ShapefileRenderable.Record record : renderable)
+        {
+            for (int i = 0; i < record.getBoundaryCount(); i++)
+            {
+                VecBuffer points = record.getBoundaryPoints(i);
+                generalizer.reset();
+                generalizer.beginPolyline();
+                for (int j = 0; j < points.getSize(); j++)
+                {
+                    points.get(j, coord);
+                    generalizer.addVertex(coord[0], coord[1], 0);
+                }
+                generalizer.endPolyline();
+
+                double[] expected = new double[points.getSize()];
+                generalizer.getVertexEffectiveArea(expected);
+                double[] actual = generalization.getEffectiveArea(record.ordinal, i, null);
+
+                assertEquals(expected.length, actual.length);
+                assertEquals(Double.MAX_VALUE, actual[0], 0);
+                assertEquals(Double.MAX_VALUE, actual[actual.length - 1], 0);
+                for (int j = 1; j < expected.length - 1; j++)
+                {
+                    assertEquals((float) expected[j], actual[j], 0);
+                }
+
+                numBoundaries++;
+                numPoints += expected.length;
+            }
+        }
+
+        assertEquals(numBoundaries, generalization.getNumBoundaries());
+        assertEquals(numPoints, generalization.getNumPoints());
+    }
+
+    /**
+     * Tests that the generalization is saved to the file store rather than beside the Shapefile, and is loaded by the
+     * next renderable displaying it.
+     */
+    @Test
+    public void testSaveAndLoad() throws Exception
+    {
+        File file = this.copyShapefile(STATE_BOUNDS_NAME);
+        BasicDataFileStore fileStore = new BasicDataFileStore(new File(this.tempDir, "cache"));
+
+        ShapefileRenderable renderable = new ShapefilePolylines(new Shapefile(file));
+        renderable.setDataFileStore(fileStore);
+        ShapefileGeneralization expected = renderable.loadGeneralization();
+
+        String cachePath = renderable.getGeneralizationCachePath();
+        assertTrue(cachePath.startsWith(ShapefileRenderable.GENERALIZATION_CACHE_PATH + "/"));
+        URL url = fileStore.findFile(cachePath, false);
+        assertNotNull(url);
+        File generalizationFile = WWIO.convertURLToFile(url);
+        long lastModified = generalizationFile.lastModified();
+        assertFalse(new File(WWIO.replaceSuffix(file.getPath(), ShapefileRenderable.GENERALIZATION_FILE_SUFFIX))
+            .exists());
+
+        renderable = new ShapefilePolylines(new Shapefile(file));
+        renderable.setDataFileStore(fileStore);
+        ShapefileGeneralization actual = renderable.loadGeneralization();
+
+        assertEquals(lastModified, generalizationFile.lastModified());
+        assertTrue(actual.matches(renderable, renderable.shapefileLength));
+        assertEquals(expected.getNumPoints(), actual.getNumPoints());
+
+        for (ShapefileRenderable.Record record : renderable)
+        {
+            for (int i = 0; i < record.getBoundaryCount(); i++)
+            {
+                assertTrue(Arrays.equals(expected.getEffectiveArea(record.ordinal, i, null),
+                    actual.getEffectiveArea(record.ordinal, i, null)));
+                assertEquals(expected.isCrossesAntimeridian(record.ordinal, i),
+                    actual.isCrossesAntimeridian(record.ordinal, i));
+            }
+        }
+    }
+
+    /** Tests that a changed Shapefile is generalized again, and that its earlier generalization is removed. */
+    @Test
+    public void testShapefileChanged() throws Exception
+    {
+        File file = this.copyShapefile(STATE_BOUNDS_NAME);
+        BasicDataFileStore fileStore = new BasicDataFileStore(new File(this.tempDir, "cache"));
+
+        ShapefileRenderable renderable = new ShapefilePolylines(new Shapefile(file));
+        renderable.setDataFileStore(fileStore);
+        renderable.loadGeneralization();
+        String oldPath = renderable.getGeneralizationCachePath();
+        assertNotNull(fileStore.findFile(oldPath, false));
+
+        assertTrue(file.setLastModified(file.lastModified() + 10000));
+        renderable = new ShapefilePolylines(new Shapefile(file));
+        renderable.setDataFileStore(fileStore);
+        renderable.loadGeneralization();
+        String newPath = renderable.getGeneralizationCachePath();
+
+        assertFalse(newPath.equals(oldPath));
+        assertNotNull(fileStore.findFile(newPath, false));
+        assertNull(fileStore.findFile(oldPath, false));
+    }
+
+    /** Tests that a generalization is kept in memory when there is no file store. */
+    @Test
+    public void testNoFileStore() throws Exception
+    {
+        ShapefileRenderable renderable = new ShapefilePolylines(new Shapefile(this.copyShapefile(STATE_BOUNDS_NAME)));
+        renderable.setDataFileStore(null);
+        ShapefileGeneralization generalization = renderable.loadGeneralization();
+
+        assertNotNull(generalization);
+        assertTrue(generalization.matches(renderable, renderable.shapefileLength));
+        assertSame(generalization, renderable.loadGeneralization());
+    }
+
+    /** Tests that a generalization doesn't match a different Shapefile. */
+    @Test
+    public void testDoesNotMatchOtherShapefile() throws Exception
+    {
+        ShapefileRenderable renderable = new ShapefilePolylines(new Shapefile(this.copyShapefile(STATE_BOUNDS_NAME)));
+        ShapefileRenderable other = new ShapefilePolylines(
+            new Shapefile(this.copyShapefile(SPRINGFIELD_URBAN_GROWTH_NAME)));
+        ShapefileGeneralization generalization = ShapefileGeneralization.createGeneralization(renderable,
+            renderable.shapefileLength);
+
+        assertFalse(generalization.matches(other, other.shapefileLength));
+        assertFalse(generalization.matches(renderable, renderable.shapefileLength + 1));
+    }
+
+    private File copyShapefile(String name) throws IOException
+    {
+        File copy = null;
+        for (String suffix : SUFFIXES)
+        {
+            File source = new File(name + suffix);
+            File destination = new File(this.tempDir, source.getName());
+            WWIO.copyFile(source, destination);
+
+            if (suffix.equals(".shp"))
+                copy = destination;
+        }
+
+        return copy;
+    }
+}
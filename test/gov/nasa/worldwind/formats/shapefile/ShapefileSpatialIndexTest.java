@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ShapefileSpatialIndexTest
+{
+    private static final String STATE_BOUNDS_NAME = "testData/shapefiles/state_bounds";
+    private static final String SPRINGFIELD_URBAN_GROWTH_NAME = "testData/shapefiles/SPR_UGB";
+    private static final String[] SUFFIXES = {".shp", ".shx", ".dbf", ".prj"};
+    private static final int NUM_POINTS = 3000;
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.tempDir = File.createTempFile("ShapefileSpatialIndexTest", "");
+        assertTrue(this.tempDir.delete());
+        assertTrue(this.tempDir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        WWIO.deleteDirectory(this.tempDir);
+        this.tempDir.delete();
+    }
+
+    /** Tests that records read in reverse order are the same as the records read sequentially. */
+    @Test
+    public void testReadRecordMatchesNextRecord() throws Exception
+    {
+        File file = this.copyShapefile(STATE_BOUNDS_NAME);
+
+        List<ShapefileRecord> expected = new ArrayList<ShapefileRecord>();
+        Shapefile sequential = new Shapefile(file);
+        while (sequential.hasNext())
+        {
+            expected.add(sequential.nextRecord());
+        }
+
+        Shapefile shapefile = new Shapefile(file);
+        try
+        {
+            assertTrue(shapefile.isRandomAccess());
+
+            for (int i = expected.size() - 1; i >= 0; i--)
+            {
+                assertRecordsEqual(expected.get(i), shapefile.readRecord(i));
+            }
+        }
+        finally
+        {
+            shapefile.close();
+            sequential.close();
+        }
+    }
+
+    /**
+     * Tests that reading a projected record more than once, both randomly and sequentially, doesn't convert its points
+     * to geographic coordinates more than once.
+     */
+    @Test
+    public void testReadProjectedRecordTwice() throws Exception
+    {
+        File file = this.copyShapefile(SPRINGFIELD_URBAN_GROWTH_NAME);
+
+        Shapefile sequential = new Shapefile(file);
+        ShapefileRecord expected = sequential.nextRecord();
+
+        Shapefile shapefile = new Shapefile(file);
+        try
+        {
+            assertRecordsEqual(expected, shapefile.readRecord(0));
+            assertRecordsEqual(expected, shapefile.readRecord(0));
+            assertRecordsEqual(expected, shapefile.nextRecord());
+            assertEquals(1, shapefile.findRecords(Sector.fromDegrees(expected.getBoundingRectangle())).length);
+        }
+        finally
+        {
+            shapefile.close();
+            sequential.close();
+        }
+    }
+
+    /** Tests that the spatial index finds every record within a sector, and only those records. */
+    @Test
+    public void testFindRecords() throws Exception
+    {
+        File file = this.writePointShapefile();
+        Random random = new Random(3);
+
+        Shapefile shapefile = new Shapefile(file);
+        try
+        {
+            assertEquals(NUM_POINTS, shapefile.getSpatialIndex().getNumRecords());
+
+            for (int i = 0; i < 50; i++)
+            {
+                double lat = -60 + 120 * random.nextDouble();
+                double lon = -150 + 300 * random.nextDouble();
+                Sector sector = Sector.fromDegrees(lat, lat + 20 * random.nextDouble(), lon,
+                    lon + 20 * random.nextDouble());
+
+                assertArrayEquals(sector.toString(), findRecords(shapefile, sector), shapefile.findRecords(sector));
+            }
+
+            assertEquals(NUM_POINTS, shapefile.findRecords(Sector.FULL_SPHERE).length);
+            assertEquals(0, shapefile.findRecords(Sector.fromDegrees(80, 85, 0, 10)).length);
+        }
+        finally
+        {
+            shapefile.close();
+        }
+    }
+
+    /** Tests that the spatial index is saved beside the Shapefile, and loaded by the next Shapefile opened. */
+    @Test
+    public void testSaveAndLoad() throws Exception
+    {
+        File file = this.writePointShapefile();
+        File indexFile = new File(WWIO.replaceSuffix(file.getPath(), Shapefile.SPATIAL_INDEX_FILE_SUFFIX));
+        Sector sector = Sector.fromDegrees(-10, 30, -40, 15);
+
+        Shapefile shapefile = new Shapefile(file);
+        int[] expected;
+        try
+        {
+            expected = shapefile.findRecords(sector);
+        }
+        finally
+        {
+            shapefile.close();
+        }
+
+        assertTrue(indexFile.exists());
+        long lastModified = indexFile.lastModified();
+
+        ShapefileSpatialIndex index = ShapefileSpatialIndex.load(indexFile);
+        assertEquals(NUM_POINTS, index.getNumRecords());
+        assertArrayEquals(expected, index.findRecords(sector));
+
+        shapefile = new Shapefile(file);
+        try
+        {
+            assertTrue(shapefile.getSpatialIndex().matches(shapefile));
+            assertArrayEquals(expected, shapefile.findRecords(sector));
+            assertEquals(lastModified, indexFile.lastModified());
+        }
+        finally
+        {
+            shapefile.close();
+        }
+    }
+
+    /** Tests that a point layer loads each point of a cell exactly once. */
+    @Test
+    public void testPointLayerCells() throws Exception
+    {
+        File file = this.writePointShapefile();
+
+        Shapefile shapefile = new Shapefile(file);
+        ShapefilePointLayer layer = new ShapefilePointLayer(shapefile, new ShapefileLayerFactory());
+        try
+        {
+            int numCells = layer.numRows * layer.numCols;
+            assertTrue(numCells > 1);
+            layer.setCellCapacity(numCells);
+
+            int numPoints = 0;
+            for (int index = 0; index < numCells; index++)
+            {
+                layer.loadCell(shapefile, index);
+                numPoints += layer.cells.get(index).renderables.size();
+            }
+
+            assertEquals(numCells, layer.getNumLoadedCells());
+            assertEquals(NUM_POINTS, numPoints);
+        }
+        finally
+        {
+            layer.dispose();
+        }
+
+        assertFalse(shapefile.isRandomAccess());
+    }
+
+    @Test
+    public void testStreamIsNotRandomAccess() throws Exception
+    {
+        InputStream shpStream = new FileInputStream(STATE_BOUNDS_NAME + ".shp");
+        InputStream shxStream = new FileInputStream(STATE_BOUNDS_NAME + ".shx");
+        Shapefile shapefile = new Shapefile(shpStream, shxStream, null);
+        try
+        {
+            assertFalse(shapefile.isRandomAccess());
+            shapefile.readRecord(0);
+            fail("Expected an exception reading a record from a stream");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected.
+        }
+        finally
+        {
+            shapefile.close();
+        }
+    }
+
+    private File copyShapefile(String name) throws IOException
+    {
+        File copy = null;
+        for (String suffix : SUFFIXES)
+        {
+            File source = new File(name + suffix);
+            File destination = new File(this.tempDir, source.getName());
+            WWIO.copyFile(source, destination);
+
+            if (suffix.equals(".shp"))
+                copy = destination;
+        }
+
+        return copy;
+    }
+
+    /** Writes a point Shapefile and its index file. The points are spread randomly over most of the globe. */
+    private File writePointShapefile() throws IOException
+    {
+        Random random = new Random(7);
+        int recordLength = 8 + 20;
+        ByteBuffer shp = ByteBuffer.allocate(100 + NUM_POINTS * recordLength);
+        ByteBuffer shx = ByteBuffer.allocate(100 + NUM_POINTS * 8);
+
+        writeHeader(shp, shp.capacity(), -170, -80, 170, 80);
+        writeHeader(shx, shx.capacity(), -170, -80, 170, 80);
+
+        for (int i = 0; i < NUM_POINTS; i++)
+        {
+            shx.order(ByteOrder.BIG_ENDIAN);
+            shx.putInt(shp.position() / 2);
+            shx.putInt(10);
+
+            shp.order(ByteOrder.BIG_ENDIAN);
+            shp.putInt(i + 1);
+            shp.putInt(10);
+            shp.order(ByteOrder.LITTLE_ENDIAN);
+            shp.putInt(1);
+            shp.putDouble(-170 + 340 * random.nextDouble());
+            shp.putDouble(-80 + 160 * random.nextDouble());
+        }
+
+        File file = new File(this.tempDir, "points.shp");
+        shp.flip();
+        shx.flip();
+        WWIO.saveBuffer(shp, file);
+        WWIO.saveBuffer(shx, new File(this.tempDir, "points.shx"));
+
+        return file;
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int length, double minX, double minY, double maxX, double maxY)
+    {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(9994);
+        buffer.position(24);
+        buffer.putInt(length / 2);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(1000);
+        buffer.putInt(1);
+        buffer.putDouble(minX).putDouble(minY).putDouble(maxX).putDouble(maxY);
+        buffer.position(100);
+    }
+
+    /** Returns the point records within a sector by reading every record. */
+    private static int[] findRecords(Shapefile shapefile, Sector sector)
+    {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < shapefile.getNumberOfRecords(); i++)
+        {
+            double[] point = ((ShapefileRecordPoint) shapefile.readRecord(i)).getPoint();
+            if (sector.contains(LatLon.fromDegrees(point[1], point[0])))
+                list.add(i);
+        }
+
+        int[] ordinals = new int[list.size()];
+        for (int i = 0; i < ordinals.length; i++)
+        {
+            ordinals[i] = list.get(i);
+        }
+
+        return ordinals;
+    }
+
+    private static void assertRecordsEqual(ShapefileRecord expected, ShapefileRecord actual)
+    {
+        assertEquals(expected.getShapeType(), actual.getShapeType());
+        assertEquals(expected.getRecordNumber(), actual.getRecordNumber());
+        assertEquals(expected.getNumberOfParts(), actual.getNumberOfParts());
+        assertEquals(expected.getNumberOfPoints(), actual.getNumberOfPoints());
+        assertTrue(Arrays.equals(expected.getBoundingRectangle(), actual.getBoundingRectangle()));
+
+        for (int part = 0; part < expected.getNumberOfParts(); part++)
+        {
+            Iterator<double[]> actualPoints = actual.getPointBuffer(part).getCoords().iterator();
+            for (double[] point : expected.getPointBuffer(part).getCoords())
+            {
+                assertTrue(Arrays.equals(point, actualPoints.next()));
+            }
+        }
+
+        if (expected.getAttributes() != null)
+        {
+            assertEquals(expected.getAttributes().getEntries(), actual.getAttributes().getEntries());
+        }
+    }
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.tiff;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.geom.Sector;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class GeotiffReaderRegionTest
+{
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 100;
+    private static final Sector SECTOR = Sector.fromDegrees(10, 20, 30, 45);
+
+    private static final int[] COMPRESSIONS = {Tiff.Compression.NONE, Tiff.Compression.LZW, 8};
+
+    private static final Rectangle[] REGIONS = {
+        new Rectangle(0, 0, WIDTH, HEIGHT),
+        new Rectangle(13, 9, 61, 37),
+        new Rectangle(WIDTH - 7, HEIGHT - 5, 7, 5),
+        new Rectangle(31, 0, 1, HEIGHT),
+        new Rectangle(0, 50, WIDTH, 1),
+    };
+
+    private List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() throws Exception
+    {
+        for (File file : this.files)
+        {
+            file.delete();
+        }
+    }
+
+    /** Tests that regions of stripped and tiled elevation images match the source, for each supported compression. */
+    @Test
+    public void testElevationRegions() throws Exception
+    {
+        for (boolean tiled : new boolean[] {false, true})
+        {
+            for (int compression : COMPRESSIONS)
+            {
+                for (boolean predictor : new boolean[] {false, true})
+                {
+                    if (predictor && compression == Tiff.Compression.NONE)
+                        continue;
+
+                    ByteOrder order = predictor ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+                    byte[] pixels = createElevations(order);
+                    File file = this.writeTiff(order, 1, 2, Tiff.SampleFormat.SIGNED, Tiff.Photometric.Grayscale_BlackIsZero,
+                        false, tiled, compression, predictor, pixels);
+                    String name = (tiled ? "tiled" : "stripped") + " compression " + compression
+                        + (predictor ? " predictor" : "");
+
+                    GeotiffReader reader = new GeotiffReader(file);
+                    try
+                    {
+                        assertEquals(name, tiled, reader.isTiled(0));
+                        for (Rectangle region : REGIONS)
+                        {
+                            assertRegionEquals(name, pixels, WIDTH, 2, region, reader.readRegionSamples(0, region));
+                        }
+
+                        DataRaster raster = reader.readDataRaster(0);
+                        assertEquals(name, AVKey.ELEVATION, raster.getValue(AVKey.PIXEL_FORMAT));
+                        assertElevationsEqual(name, pixels, order, new Rectangle(0, 0, WIDTH, HEIGHT),
+                            (ByteBufferRaster) raster);
+                        raster.dispose();
+                    }
+                    finally
+                    {
+                        reader.dispose();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Tests that a region of a planar RGB image is returned with its samples interleaved. */
+    @Test
+    public void testPlanarColorRegions() throws Exception
+    {
+        byte[] pixels = new byte[WIDTH * HEIGHT * 3];
+        for (int i = 0; i < pixels.length; i++)
+        {
+            pixels[i] = (byte) (i * 7 + i / 3);
+        }
+
+        for (int compression : COMPRESSIONS)
+        {
+            File file = this.writeTiff(ByteOrder.BIG_ENDIAN, 3, 1, Tiff.SampleFormat.UNSIGNED, Tiff.Photometric.Color_RGB,
+                true, true, compression, compression != Tiff.Compression.NONE, pixels);
+
+            GeotiffReader reader = new GeotiffReader(file);
+            try
+            {
+                for (Rectangle region : REGIONS)
+                {
+                    assertRegionEquals("compression " + compression, pixels, WIDTH, 3, region,
+                        reader.readRegionSamples(0, region));
+                }
+
+                BufferedImage image = ((BufferedImageRaster) reader.readRegion(0, REGIONS[1])).getBufferedImage();
+                for (int y = 0; y < REGIONS[1].height; y++)
+                {
+                    for (int x = 0; x < REGIONS[1].width; x++)
+                    {
+                        int i = 3 * ((REGIONS[1].y + y) * WIDTH + REGIONS[1].x + x);
+                        int rgb = ((pixels[i] & 0xFF) << 16) | ((pixels[i + 1] & 0xFF) << 8) | (pixels[i + 2] & 0xFF);
+                        assertEquals(rgb, image.getRGB(x, y) & 0xFFFFFF);
+                    }
+                }
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Tests that images compressed by the Java Image I/O TIFF writer are decoded, which checks the decoders against an
+     * independent encoder.
+     */
+    @Test
+    public void testImageIOCompressedImages() throws Exception
+    {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+        Assume.assumeTrue(writers.hasNext());
+        ImageWriter writer = writers.next();
+
+        BufferedImage source = new BufferedImage(97, 61, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < source.getHeight(); y++)
+        {
+            for (int x = 0; x < source.getWidth(); x++)
+            {
+                source.setRGB(x, y, ((x * 5) << 16) | ((y * 3) << 8) | ((x * y) & 0xFF));
+            }
+        }
+
+        for (String compression : new String[] {"LZW", "Deflate", "ZLib", "PackBits"})
+        {
+            for (boolean tiled : new boolean[] {false, true})
+            {
+                File file = this.createTempFile();
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionType(compression);
+                if (tiled)
+                {
+                    param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setTiling(32, 32, 0, 0);
+                }
+
+                ImageOutputStream out = ImageIO.createImageOutputStream(file);
+                try
+                {
+                    writer.setOutput(out);
+                    writer.write(null, new IIOImage(source, null, null), param);
+                }
+                finally
+                {
+                    out.close();
+                }
+
+                GeotiffReader reader = new GeotiffReader(file);
+                try
+                {
+                    Rectangle region = new Rectangle(9, 17, 70, 40);
+                    BufferedImage image = ((BufferedImageRaster) reader.readRegion(0, region)).getBufferedImage();
+                    for (int y = 0; y < region.height; y++)
+                    {
+                        for (int x = 0; x < region.width; x++)
+                        {
+                            assertEquals(compression + (tiled ? " tiled" : ""),
+                                source.getRGB(region.x + x, region.y + y) & 0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF);
+                        }
+                    }
+                }
+                finally
+                {
+                    reader.dispose();
+                }
+            }
+        }
+
+        writer.dispose();
+    }
+
+    /** Tests that a region read by sector covers the pixels that intersect the sector. */
+    @Test
+    public void testRegionBySector() throws Exception
+    {
+        byte[] pixels = createElevations(ByteOrder.LITTLE_ENDIAN);
+        File file = this.writeTiff(ByteOrder.LITTLE_ENDIAN, 1, 2, Tiff.SampleFormat.SIGNED,
+            Tiff.Photometric.Grayscale_BlackIsZero, false, true, Tiff.Compression.LZW, false, pixels);
+
+        GeotiffReader reader = new GeotiffReader(file);
+        try
+        {
+            // Elevation pixels are points, the first and last of which lie on the edges of the image's sector.
+            double dx = SECTOR.getDeltaLonDegrees() / (WIDTH - 1);
+            double dy = SECTOR.getDeltaLatDegrees() / (HEIGHT - 1);
+            Sector sector = Sector.fromDegrees(20 - 79.5 * dy, 20 - 50.5 * dy, 30 + 10.5 * dx, 30 + 39.5 * dx);
+            Rectangle region = reader.computeRegion(0, sector);
+            assertEquals(new Rectangle(10, 50, 31, 31), region);
+            assertNull(reader.computeRegion(0, Sector.fromDegrees(-20, -10, 30, 45)));
+
+            DataRaster raster = reader.readRegion(0, sector);
+            assertEquals(31, raster.getWidth());
+            assertEquals(31, raster.getHeight());
+            assertEquals(20 - 80 * dy, raster.getSector().getMinLatitude().degrees, 1e-9);
+            assertEquals(20 - 50 * dy, raster.getSector().getMaxLatitude().degrees, 1e-9);
+            assertEquals(30 + 10 * dx, raster.getSector().getMinLongitude().degrees, 1e-9);
+            assertEquals(30 + 40 * dx, raster.getSector().getMaxLongitude().degrees, 1e-9);
+            assertElevationsEqual("sector", pixels, ByteOrder.LITTLE_ENDIAN, region, (ByteBufferRaster) raster);
+            raster.dispose();
+        }
+        finally
+        {
+            reader.dispose();
+        }
+    }
+
+    /** Tests that a streaming raster draws the same values as the fully decoded image. */
+    @Test
+    public void testGeotiffDataRasterDrawsLikeDecodedImage() throws Exception
+    {
+        byte[] pixels = createElevations(ByteOrder.LITTLE_ENDIAN);
+        File file = this.writeTiff(ByteOrder.LITTLE_ENDIAN, 1, 2, Tiff.SampleFormat.SIGNED,
+            Tiff.Photometric.Grayscale_BlackIsZero, false, true, 8, true, pixels);
+
+        GeotiffReader decodedReader = new GeotiffReader(file);
+        DataRaster decoded = decodedReader.readDataRaster(0);
+        decodedReader.dispose();
+
+        GeotiffDataRaster streaming = new GeotiffDataRaster(new GeotiffReader(file), 0, null);
+        try
+        {
+            assertEquals(WIDTH, streaming.getWidth());
+            assertEquals(HEIGHT, streaming.getHeight());
+
+            Sector[] sectors = {SECTOR, Sector.fromDegrees(12.3, 15.7, 33.1, 38.9), Sector.fromDegrees(5, 11, 25, 31)};
+            for (Sector sector : sectors)
+            {
+                ByteBufferRaster expected = createCanvas(sector);
+                ByteBufferRaster actual = createCanvas(sector);
+                decoded.drawOnTo(expected);
+                streaming.drawOnTo(actual);
+
+                for (int y = 0; y < expected.getHeight(); y++)
+                {
+                    for (int x = 0; x < expected.getWidth(); x++)
+                    {
+                        assertEquals(sector.toString(), expected.getDoubleAtPosition(y, x),
+                            actual.getDoubleAtPosition(y, x), 1e-3);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            decoded.dispose();
+            streaming.dispose();
+        }
+    }
+
+    private static ByteBufferRaster createCanvas(Sector sector)
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.FLOAT32);
+        params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+        params.setValue(AVKey.MISSING_DATA_REPLACEMENT, -9999d);
+        ByteBufferRaster canvas = new ByteBufferRaster(64, 48, sector, params);
+        canvas.fill(-9999d);
+        return canvas;
+    }
+
+    private static byte[] createElevations(ByteOrder order)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(WIDTH * HEIGHT * 2).order(order);
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                buffer.putShort((short) ((x * 37 + y * 91) % 3000 - 500));
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void assertRegionEquals(String message, byte[] pixels, int width, int pixelSize, Rectangle region,
+        ByteBuffer samples)
+    {
+        assertEquals(message, region.width * region.height * pixelSize, samples.remaining());
+        for (int y = 0; y < region.height; y++)
+        {
+            for (int x = 0; x < region.width * pixelSize; x++)
+            {
+                assertEquals(message + " " + region, pixels[(region.y + y) * width * pixelSize + region.x * pixelSize + x],
+                    samples.get(samples.position() + y * region.width * pixelSize + x));
+            }
+        }
+    }
+
+    private static void assertElevationsEqual(String message, byte[] pixels, ByteOrder order, Rectangle region,
+        ByteBufferRaster raster)
+    {
+        ByteBuffer source = ByteBuffer.wrap(pixels).order(order);
+        assertEquals(message, region.width, raster.getWidth());
+        assertEquals(message, region.height, raster.getHeight());
+        for (int y = 0; y < region.height; y++)
+        {
+            for (int x = 0; x < region.width; x++)
+            {
+                double expected = source.getShort(2 * ((region.y + y) * WIDTH + region.x + x));
+                assertEquals(message, expected, raster.getDoubleAtPosition(y, x), 0d);
+            }
+        }
+    }
+
+    private File createTempFile() throws IOException
+    {
+        File file = File.createTempFile("GeotiffReaderRegionTest", ".tif");
+        this.files.add(file);
+        return file;
+    }
+
+    /**
+     * Writes a geographic GeoTIFF covering {@link #SECTOR}, with strips of 7 rows or tiles of 32 x 16 pixels.
+     *
+     * @param pixels the image's samples, interleaved by pixel and in the file's byte order.
+     */
+    private File writeTiff(ByteOrder order, int samplesPerPixel, int bytesPerSample, int sampleFormat,
+        int photometric, boolean planar, boolean tiled, int compression, boolean predictor, byte[] pixels)
+        throws IOException
+    {
+        int blockWidth = tiled ? 32 : WIDTH;
+        int blockHeight = tiled ? 16 : 7;
+        int blocksAcross = (WIDTH + blockWidth - 1) / blockWidth;
+        int blocksDown = (HEIGHT + blockHeight - 1) / blockHeight;
+        int planes = planar ? samplesPerPixel : 1;
+        int blockSamples = planar ? 1 : samplesPerPixel;
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        long[] offsets = new long[blocksAcross * blocksDown * planes];
+        long[] counts = new long[offsets.length];
+        int index = 0;
+        for (int plane = 0; plane < planes; plane++)
+        {
+            for (int blockRow = 0; blockRow < blocksDown; blockRow++)
+            {
+                for (int blockCol = 0; blockCol < blocksAcross; blockCol++)
+                {
+                    int rows = tiled ? blockHeight : Math.min(blockHeight, HEIGHT - blockRow * blockHeight);
+                    int rowLength = blockWidth * blockSamples * bytesPerSample;
+                    byte[] block = new byte[rows * rowLength];
+                    for (int y = 0; y < rows; y++)
+                    {
+                        int sy = blockRow * blockHeight + y;
+                        for (int x = 0; x < blockWidth; x++)
+                        {
+                            int sx = blockCol * blockWidth + x;
+                            if (sy >= HEIGHT || sx >= WIDTH)
+                                continue;
+
+                            for (int s = 0; s < blockSamples; s++)
+                            {
+                                int sample = planar ? plane : s;
+                                System.arraycopy(pixels,
+                                    ((sy * WIDTH + sx) * samplesPerPixel + sample) * bytesPerSample,
+                                    block, y * rowLength + (x * blockSamples + s) * bytesPerSample, bytesPerSample);
+                            }
+                        }
+                    }
+
+                    if (predictor)
+                        applyHorizontalDifferencing(block, rows, blockWidth, blockSamples, bytesPerSample, order);
+
+                    byte[] encoded = compression == Tiff.Compression.LZW ? lzwEncode(block)
+                        : compression == 8 ? deflate(block) : block;
+
+                    offsets[index] = 8 + data.size();
+                    counts[index] = encoded.length;
+                    data.write(encoded);
+                    index++;
+                }
+            }
+        }
+
+        if (data.size() % 2 != 0)
+            data.write(0);
+
+        int[] bitsPerSample = new int[samplesPerPixel];
+        int[] sampleFormats = new int[samplesPerPixel];
+        Arrays.fill(bitsPerSample, 8 * bytesPerSample);
+        Arrays.fill(sampleFormats, sampleFormat);
+
+        double pixelSizeX = SECTOR.getDeltaLonDegrees() / WIDTH;
+        double pixelSizeY = SECTOR.getDeltaLatDegrees() / HEIGHT;
+
+        IFDWriter ifd = new IFDWriter(order, 8 + data.size());
+        ifd.add(Tiff.Tag.IMAGE_WIDTH, Tiff.Type.LONG, new long[] {WIDTH});
+        ifd.add(Tiff.Tag.IMAGE_LENGTH, Tiff.Type.LONG, new long[] {HEIGHT});
+        ifd.add(Tiff.Tag.BITS_PER_SAMPLE, Tiff.Type.SHORT, toLongs(bitsPerSample));
+        ifd.add(Tiff.Tag.COMPRESSION, Tiff.Type.SHORT, new long[] {compression});
+        ifd.add(Tiff.Tag.PHOTO_INTERPRETATION, Tiff.Type.SHORT, new long[] {photometric});
+        if (!tiled)
+            ifd.add(Tiff.Tag.STRIP_OFFSETS, Tiff.Type.LONG, offsets);
+        ifd.add(Tiff.Tag.SAMPLES_PER_PIXEL, Tiff.Type.SHORT, new long[] {samplesPerPixel});
+        if (!tiled)
+        {
+            ifd.add(Tiff.Tag.ROWS_PER_STRIP, Tiff.Type.LONG, new long[] {blockHeight});
+            ifd.add(Tiff.Tag.STRIP_BYTE_COUNTS, Tiff.Type.LONG, counts);
+        }
+        ifd.add(Tiff.Tag.PLANAR_CONFIGURATION, Tiff.Type.SHORT, new long[] {planar ? 2 : 1});
+        if (predictor)
+            ifd.add(317, Tiff.Type.SHORT, new long[] {2});
+        if (tiled)
+        {
+            ifd.add(Tiff.Tag.TILE_WIDTH, Tiff.Type.LONG, new long[] {blockWidth});
+            ifd.add(Tiff.Tag.TILE_LENGTH, Tiff.Type.LONG, new long[] {blockHeight});
+            ifd.add(Tiff.Tag.TILE_OFFSETS, Tiff.Type.LONG, offsets);
+            ifd.add(Tiff.Tag.TILE_COUNTS, Tiff.Type.LONG, counts);
+        }
+        ifd.add(Tiff.Tag.SAMPLE_FORMAT, Tiff.Type.SHORT, toLongs(sampleFormats));
+        ifd.add(GeoTiff.Tag.MODEL_PIXELSCALE, new double[] {pixelSizeX, pixelSizeY, 0});
+        ifd.add(GeoTiff.Tag.MODEL_TIEPOINT, new double[] {0, 0, 0, SECTOR.getMinLongitude().degrees,
+            SECTOR.getMaxLatitude().degrees, 0});
+        ifd.add(GeoTiff.Tag.GEO_KEY_DIRECTORY, Tiff.Type.SHORT, new long[] {
+            1, 1, 0, 3,
+            1024, 0, 1, 2, // GTModelType: geographic
+            1025, 0, 1, 1, // GTRasterType: pixel is area
+            2048, 0, 1, 4326, // GeographicType: WGS 84
+        });
+
+        File file = this.createTempFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(8).order(order);
+            header.put((byte) (order == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+            header.put((byte) (order == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+            header.putShort((short) 42);
+            header.putInt(8 + data.size());
+            out.write(header.array());
+            data.writeTo(out);
+            out.write(ifd.toByteArray());
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return file;
+    }
+
+    private static long[] toLongs(int[] values)
+    {
+        long[] longs = new long[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            longs[i] = values[i];
+        }
+        return longs;
+    }
+
+    private static void applyHorizontalDifferencing(byte[] block, int rows, int width, int samplesPerPixel,
+        int bytesPerSample, ByteOrder order)
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(block).order(order);
+        int rowSamples = width * samplesPerPixel;
+        for (int y = 0; y < rows; y++)
+        {
+            for (int i = rowSamples - 1; i >= samplesPerPixel; i--)
+            {
+                int pos = (y * rowSamples + i) * bytesPerSample;
+                int prev = pos - samplesPerPixel * bytesPerSample;
+                if (bytesPerSample == 1)
+                    block[pos] = (byte) (block[pos] - block[prev]);
+                else
+                    buffer.putShort(pos, (short) (buffer.getShort(pos) - buffer.getShort(prev)));
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] data)
+    {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished())
+        {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        deflater.end();
+
+        return out.toByteArray();
+    }
+
+    /** Encodes data with TIFF LZW: codes are written most significant bit first, and widen one code early. */
+    private static byte[] lzwEncode(byte[] data)
+    {
+        final int clearCode = 256;
+        final int eoiCode = 257;
+
+        BitWriter out = new BitWriter();
+        Map<Integer, Integer> table = new HashMap<Integer, Integer>();
+        int nextCode = 258;
+        int codeWidth = 9;
+        out.write(clearCode, codeWidth);
+
+        int prefix = -1;
+        for (byte b : data)
+        {
+            int c = b & 0xFF;
+            if (prefix < 0)
+            {
+                prefix = c;
+                continue;
+            }
+
+            Integer code = table.get((prefix << 8) | c);
+            if (code != null)
+            {
+                prefix = code;
+                continue;
+            }
+
+            out.write(prefix, codeWidth);
+            table.put((prefix << 8) | c, nextCode++);
+            if (nextCode == 4094)
+            {
+                out.write(clearCode, codeWidth);
+                table.clear();
+                nextCode = 258;
+                codeWidth = 9;
+            }
+            else if (nextCode == 512 || nextCode == 1024 || nextCode == 2048)
+            {
+                codeWidth++;
+            }
+            prefix = c;
+        }
+
+        if (prefix >= 0)
+        {
+            out.write(prefix, codeWidth);
+            nextCode++;
+            if (nextCode == 512 || nextCode == 1024 || nextCode == 2048)
+                codeWidth++;
+        }
+        out.write(eoiCode, codeWidth);
+
+        return out.toByteArray();
+    }
+
+    private static class BitWriter
+    {
+        private ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private long bits;
+        private int count;
+
+        public void write(int code, int width)
+        {
+            this.bits = (this.bits << width) | code;
+            this.count += width;
+            while (this.count >= 8)
+            {
+                this.out.write((int) (this.bits >>> (this.count - 8)) & 0xFF);
+                this.count -= 8;
+            }
+        }
+
+        public byte[] toByteArray()
+        {
+            if (this.count > 0)
+                this.out.write((int) (this.bits << (8 - this.count)) & 0xFF);
+            this.count = 0;
+            return this.out.toByteArray();
+        }
+    }
+
+    /** Writes an image file directory whose entries are added in tag order, followed by the values that do not fit. */
+    private static class IFDWriter
+    {
+        private final ByteOrder order;
+        private final int offset;
+        private final List<byte[]> entries = new ArrayList<byte[]>();
+        private final List<byte[]> values = new ArrayList<byte[]>();
+
+        public IFDWriter(ByteOrder order, int offset)
+        {
+            this.order = order;
+            this.offset = offset;
+        }
+
+        public void add(int tag, int type, long[] values)
+        {
+            int size = type == Tiff.Type.SHORT ? 2 : 4;
+            ByteBuffer buffer = ByteBuffer.allocate(values.length * size).order(this.order);
+            for (long value : values)
+            {
+                if (type == Tiff.Type.SHORT)
+                    buffer.putShort((short) value);
+                else
+                    buffer.putInt((int) value);
+            }
+            this.add(tag, type, values.length, buffer.array());
+        }
+
+        public void add(int tag, double[] values)
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(values.length * 8).order(this.order);
+            for (double value : values)
+            {
+                buffer.putDouble(value);
+            }
+            this.add(tag, Tiff.Type.DOUBLE, values.length, buffer.array());
+        }
+
+        private void add(int tag, int type, int count, byte[] value)
+        {
+            ByteBuffer entry = ByteBuffer.allocate(12).order(this.order);
+            entry.putShort((short) tag);
+            entry.putShort((short) type);
+            entry.putInt(count);
+            if (value.length <= 4)
+                entry.put(value);
+            else
+                this.values.add(value);
+            this.entries.add(entry.array());
+        }
+
+        public byte[] toByteArray()
+        {
+            int ifdSize = 2 + 12 * this.entries.size() + 4;
+            ByteBuffer buffer = ByteBuffer.allocate(ifdSize + this.valuesSize()).order(this.order);
+            buffer.putShort((short) this.entries.size());
+
+            int valueOffset = this.offset + ifdSize;
+            int valueIndex = 0;
+            for (byte[] entry : this.entries)
+            {
+                ByteBuffer e = ByteBuffer.wrap(entry).order(this.order);
+                int type = e.getShort(2);
+                int count = e.getInt(4);
+                int size = count * (type == Tiff.Type.SHORT ? 2 : type == Tiff.Type.DOUBLE ? 8 : 4);
+                if (size > 4)
+                {
+                    e.putInt(8, valueOffset);
+                    valueOffset += this.values.get(valueIndex++).length;
+                }
+                buffer.put(entry);
+            }
+            buffer.putInt(0);
+
+            for (byte[] value : this.values)
+            {
+                buffer.put(value);
+            }
+
+            return buffer.array();
+        }
+
+        private int valuesSize()
+        {
+            int size = 0;
+            for (byte[] value : this.values)
+            {
+                size += value.length;
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.tiff;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.geom.Sector;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class GeotiffWriterTest
+{
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 100;
+    private static final Sector SECTOR = Sector.fromDegrees(10, 20, 30, 45);
+
+    private static final int[] COMPRESSIONS = {
+        Tiff.Compression.NONE, Tiff.Compression.LZW, Tiff.Compression.DEFLATE, Tiff.Compression.PACKBITS};
+
+    private List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() throws Exception
+    {
+        for (File file : this.files)
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that 16-bit integer and 32-bit floating point elevations are read back exactly, for each compression. The
+     * image is not a multiple of the tile size, so the tiles on the right and bottom edges are padded.
+     */
+    @Test
+    public void testElevations() throws Exception
+    {
+        for (String dataType : new String[] {AVKey.INT16, AVKey.FLOAT32})
+        {
+            BufferWrapperRaster source = createElevations(dataType);
+
+            for (int compression : COMPRESSIONS)
+            {
+                String name = dataType + " compression " + compression;
+                GeotiffWriter writer = this.createWriter();
+                writer.setTileSize(32, 48);
+                writer.setCompression(compression);
+                File file = this.write(writer, source);
+
+                GeotiffReader reader = new GeotiffReader(file);
+                try
+                {
+                    assertTrue(name, reader.isTiled(0));
+                    assertFalse(name, reader.isBigTIFF());
+                    assertElevationsEqual(name, source, (BufferWrapperRaster) reader.readDataRaster(0));
+                }
+                finally
+                {
+                    reader.dispose();
+                }
+            }
+        }
+    }
+
+    /** Tests that the samples of RGB, RGBA and grayscale images are read back exactly, for each compression. */
+    @Test
+    public void testImages() throws Exception
+    {
+        int[] types = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_BYTE_GRAY,
+            BufferedImage.TYPE_USHORT_GRAY};
+
+        for (int type : types)
+        {
+            BufferedImage image = createImage(type);
+            byte[] expected = interleavedSamples(image);
+
+            for (int compression : COMPRESSIONS)
+            {
+                String name = "type " + type + " compression " + compression;
+                GeotiffWriter writer = this.createWriter();
+                writer.setCompression(compression);
+                File file = this.write(writer, createImageRaster(image));
+
+                GeotiffReader reader = new GeotiffReader(file);
+                try
+                {
+                    // Uncompressed images are written in strips unless a tile size is specified.
+                    assertEquals(name, compression != Tiff.Compression.NONE, reader.isTiled(0));
+                    assertSamplesEqual(name, expected, reader);
+                }
+                finally
+                {
+                    reader.dispose();
+                }
+            }
+        }
+    }
+
+    /** Tests that a BigTIFF file is written when requested, and is read back with its georeferencing. */
+    @Test
+    public void testBigTIFF() throws Exception
+    {
+        BufferWrapperRaster source = createElevations(AVKey.INT16);
+
+        GeotiffWriter writer = this.createWriter();
+        writer.setBigTIFF(true);
+        writer.setCompression(Tiff.Compression.LZW);
+        File file = this.write(writer, source);
+
+        GeotiffReader reader = new GeotiffReader(file);
+        try
+        {
+            assertTrue(reader.isBigTIFF());
+            assertTrue(reader.isGeotiff(0));
+
+            DataRaster raster = reader.readDataRaster(0);
+            assertEquals(SECTOR.getMinLatitude().degrees, raster.getSector().getMinLatitude().degrees, 1e-9);
+            assertEquals(SECTOR.getMaxLongitude().degrees, raster.getSector().getMaxLongitude().degrees, 1e-9);
+            assertElevationsEqual("BigTIFF", source, (BufferWrapperRaster) raster);
+        }
+        finally
+        {
+            reader.dispose();
+        }
+    }
+
+    /** Tests that a GeoTIFF raster is copied exactly, a band at a time, without reading the whole image. */
+    @Test
+    public void testStreamGeotiffRaster() throws Exception
+    {
+        BufferWrapperRaster source = createElevations(AVKey.FLOAT32);
+        GeotiffWriter writer = this.createWriter();
+        writer.setTileSize(16, 16);
+        File sourceFile = this.write(writer, source);
+
+        GeotiffReader sourceReader = new GeotiffReader(sourceFile);
+        try
+        {
+            writer = this.createWriter();
+            writer.setCompression(Tiff.Compression.DEFLATE);
+            File file = this.write(writer, new GeotiffDataRaster(sourceReader, 0, null));
+
+            GeotiffReader reader = new GeotiffReader(file);
+            try
+            {
+                assertElevationsEqual("stream", source, (BufferWrapperRaster) reader.readDataRaster(0));
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+        finally
+        {
+            sourceReader.dispose();
+        }
+    }
+
+    /** Tests that encoding tiles on several threads writes the same file as encoding them on one. */
+    @Test
+    public void testParallelEncoding() throws Exception
+    {
+        DataRaster source = createImageRaster(createImage(BufferedImage.TYPE_3BYTE_BGR));
+
+        GeotiffWriter writer = this.createWriter();
+        writer.setTileSize(16, 16);
+        writer.setCompression(Tiff.Compression.LZW);
+        File serial = this.write(writer, source);
+
+        writer = this.createWriter();
+        writer.setTileSize(16, 16);
+        writer.setCompression(Tiff.Compression.LZW);
+        writer.setEncodingThreadCount(3);
+        File parallel = this.write(writer, source);
+
+        assertArrayEquals(readFile(serial), readFile(parallel));
+    }
+
+    @Test
+    public void testInvalidSettings() throws Exception
+    {
+        GeotiffWriter writer = this.createWriter();
+        try
+        {
+            try
+            {
+                writer.setTileSize(20, 32);
+                fail("Expected an exception for a tile width that is not a multiple of 16");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected.
+            }
+
+            try
+            {
+                writer.setCompression(Tiff.Compression.JPEG);
+                fail("Expected an exception for an unsupported compression");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected.
+            }
+
+            try
+            {
+                writer.setEncodingThreadCount(0);
+                fail("Expected an exception for a thread count less than 1");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected.
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private GeotiffWriter createWriter() throws IOException
+    {
+        File file = File.createTempFile("GeotiffWriterTest", ".tif");
+        this.files.add(file);
+
+        return new GeotiffWriter(file);
+    }
+
+    private File write(GeotiffWriter writer, DataRaster raster) throws IOException
+    {
+        try
+        {
+            writer.write(raster);
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        return this.files.get(this.files.size() - 1);
+    }
+
+    private static BufferWrapperRaster createElevations(String dataType)
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+        params.setValue(AVKey.DATA_TYPE, dataType);
+        BufferWrapperRaster raster = new ByteBufferRaster(WIDTH, HEIGHT, SECTOR, params);
+
+        Random random = new Random(11);
+        for (int row = 0; row < HEIGHT; row++)
+        {
+            for (int col = 0; col < WIDTH; col++)
+            {
+                // Smooth terrain with noise, so that the compressors find both runs and repeated strings.
+                double value = 10 * row + col / 3 + random.nextInt(4) - 500;
+                if (AVKey.FLOAT32.equals(dataType))
+                    value += random.nextFloat();
+                raster.setDoubleAtPosition(row, col, value);
+            }
+        }
+
+        return raster;
+    }
+
+    private static BufferedImage createImage(int type)
+    {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        WritableRaster raster = image.getRaster();
+        int max = (type == BufferedImage.TYPE_USHORT_GRAY) ? 65535 : 255;
+
+        Random random = new Random(5);
+        int[] pixel = new int[raster.getNumBands()];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                for (int b = 0; b < pixel.length; b++)
+                {
+                    pixel[b] = (x < WIDTH / 2) ? (x * 3 + y * 5 + b * 40) % (max + 1) : random.nextInt(max + 1);
+                }
+                raster.setPixel(x, y, pixel);
+            }
+        }
+
+        return image;
+    }
+
+    private static DataRaster createImageRaster(BufferedImage image)
+    {
+        DataRaster raster = new BufferedImageRaster(SECTOR, image);
+        raster.setValue(AVKey.PIXEL_FORMAT, AVKey.IMAGE);
+
+        return raster;
+    }
+
+    /** Returns the samples of an image as big-endian samples, pixel interleaved in band order, row by row. */
+    private static byte[] interleavedSamples(BufferedImage image)
+    {
+        Raster raster = image.getRaster();
+        int bytesPerSample = (raster.getSampleModel().getSampleSize(0) > 8) ? 2 : 1;
+        int[] samples = raster.getPixels(0, 0, WIDTH, HEIGHT, (int[]) null);
+
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * bytesPerSample);
+        for (int sample : samples)
+        {
+            if (bytesPerSample == 2)
+                buffer.putShort((short) sample);
+            else
+                buffer.put((byte) sample);
+        }
+
+        return buffer.array();
+    }
+
+    private static void assertSamplesEqual(String name, byte[] expected, GeotiffReader reader) throws IOException
+    {
+        ByteBuffer samples = reader.readRegionSamples(0, new Rectangle(0, 0, WIDTH, HEIGHT));
+        byte[] actual = new byte[samples.remaining()];
+        samples.get(actual);
+
+        assertArrayEquals(name, expected, actual);
+    }
+
+    private static void assertElevationsEqual(String name, BufferWrapperRaster expected, BufferWrapperRaster actual)
+    {
+        assertEquals(name, WIDTH, actual.getWidth());
+        assertEquals(name, HEIGHT, actual.getHeight());
+
+        for (int row = 0; row < HEIGHT; row++)
+        {
+            for (int col = 0; col < WIDTH; col++)
+            {
+                assertEquals(name + " at " + col + ", " + row, expected.getDoubleAtPosition(row, col),
+                    actual.getDoubleAtPosition(row, col), 0);
+            }
+        }
+
+        actual.dispose();
+    }
+
+    private static byte[] readFile(File file) throws IOException
+    {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            in.readFully(bytes);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.vpf;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.cache.BasicDataFileStore;
+import gov.nasa.worldwind.util.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class VPFPrimitiveDataCacheTest
+{
+    private File root;
+    private File edgeTable;
+    private VPFCoverage coverage;
+    private VPFTile tile;
+    private VPFPrimitiveDataCache cache;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.root = File.createTempFile("VPFPrimitiveDataCacheTest", "");
+        assertTrue(this.root.delete());
+        assertTrue(this.root.mkdir());
+
+        VPFDatabase database = new VPFDatabase(new File(this.root, "vmaplv0").getPath());
+        VPFLibrary library = new VPFLibrary(database);
+        library.setValue(AVKey.DISPLAY_NAME, "noamer");
+        this.coverage = new VPFCoverage(library);
+        this.coverage.setValue(AVKey.DISPLAY_NAME, "trans");
+        this.tile = new VPFTile(1, "e" + File.separator + "j", new VPFBoundingBox(-90, 40, -80, 50));
+
+        // Only the primitive tables' lengths and modification times are read by the cache.
+        File tileDir = new File(VPFBasicPrimitiveDataFactory.getPrimitiveTablePath(this.coverage, this.tile, ""));
+        assertTrue(tileDir.mkdirs());
+        this.edgeTable = new File(tileDir, VPFConstants.EDGE_PRIMITIVE_TABLE);
+        writeFile(this.edgeTable, 100);
+        writeFile(new File(tileDir, VPFConstants.TEXT_PRIMITIVE_TABLE), 50);
+
+        this.cache = new VPFPrimitiveDataCache(new BasicDataFileStore(new File(this.root, "cache")));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        WWIO.deleteDirectory(this.root);
+        this.root.delete();
+    }
+
+    /** Tests that cached primitive data matches the primitive data that was cached. */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        VPFPrimitiveData expected = createPrimitiveData();
+        assertNull(this.cache.getPrimitiveData(this.coverage, this.tile));
+        assertFalse(this.cache.isCurrent(this.coverage, this.tile));
+
+        this.cache.putPrimitiveData(this.coverage, this.tile, expected);
+        assertTrue(this.cache.isCurrent(this.coverage, this.tile));
+        assertFalse(this.cache.isCurrent(this.coverage, null));
+
+        VPFPrimitiveData actual = this.cache.getPrimitiveData(this.coverage, this.tile);
+        assertNotNull(actual);
+
+        VPFPrimitiveData.PrimitiveInfo[] edges = actual.getPrimitiveInfo(VPFConstants.EDGE_PRIMITIVE_TABLE);
+        assertTrue(edges instanceof VPFPrimitiveData.EdgeInfo[]);
+        assertEquals(3, edges.length);
+        assertNull(edges[0]);
+        VPFPrimitiveData.EdgeInfo edge = (VPFPrimitiveData.EdgeInfo) edges[2];
+        assertEquals(1, edge.getEdgeType());
+        assertEquals(3, edge.getStartNode());
+        assertEquals(4, edge.getEndNode());
+        assertEquals(2, edge.getLeftFace());
+        assertEquals(1, edge.getRightFace());
+        assertEquals(2, edge.getLeftEdge());
+        assertEquals(1, edge.getRightEdge());
+        assertTrue(edge.isOnTileBoundary());
+        assertBoundsEqual(new VPFBoundingBox(-85, 42, -84, 43.5), edge.getBounds());
+
+        VPFPrimitiveData.PrimitiveInfo[] faces = actual.getPrimitiveInfo(VPFConstants.FACE_PRIMITIVE_TABLE);
+        assertTrue(faces instanceof VPFPrimitiveData.FaceInfo[]);
+        assertNull(faces[0]);
+        VPFPrimitiveData.FaceInfo face = (VPFPrimitiveData.FaceInfo) faces[1];
+        assertEquals(2, face.getOuterRing().getNumEdges());
+        assertEquals(2, face.getOuterRing().getEdgeId(1));
+        assertEquals(-1, face.getOuterRing().getEdgeOrientation(1));
+        assertEquals(1, face.getInnerRings().length);
+        assertEquals(1, face.getInnerRings()[0].getNumEdges());
+        assertBoundsEqual(new VPFBoundingBox(-86, 41, -84, 44), face.getBounds());
+
+        VecBufferSequence expectedCoords = expected.getPrimitiveCoords(VPFConstants.EDGE_PRIMITIVE_TABLE);
+        VecBufferSequence actualCoords = actual.getPrimitiveCoords(VPFConstants.EDGE_PRIMITIVE_TABLE);
+        assertEquals(expectedCoords.size(), actualCoords.size());
+        assertEquals(expectedCoords.getCoordsPerVec(), actualCoords.getCoordsPerVec());
+        for (int i = 0; i < expectedCoords.size(); i++)
+        {
+            assertEquals(expectedCoords.subBufferSize(i), actualCoords.subBufferSize(i));
+            assertTrue(Arrays.equals(toArray(expectedCoords.subBuffer(i)), toArray(actualCoords.subBuffer(i))));
+        }
+        assertTrue(actualCoords.getVecBuffer().getBufferWrapper() instanceof BufferWrapper.FloatBufferWrapper);
+
+        CompoundStringBuilder strings = actual.getPrimitiveStrings(VPFConstants.TEXT_PRIMITIVE_TABLE);
+        assertEquals(3, strings.size());
+        assertEquals("", strings.substring(0));
+        assertEquals("Lake Superior", strings.substring(1));
+        assertEquals("Duluth", strings.substring(2));
+        assertTrue(actual.getPrimitiveInfo(VPFConstants.TEXT_PRIMITIVE_TABLE)[2].getBounds() != null);
+        assertNull(actual.getPrimitiveInfo(VPFConstants.NODE_PRIMITIVE_TABLE));
+    }
+
+    /** Tests that a cache file is not used once a primitive table changes. */
+    @Test
+    public void testChangedTable() throws Exception
+    {
+        this.cache.putPrimitiveData(this.coverage, this.tile, createPrimitiveData());
+        assertNotNull(this.cache.getPrimitiveData(this.coverage, this.tile));
+
+        writeFile(this.edgeTable, 101);
+        assertFalse(this.cache.isCurrent(this.coverage, this.tile));
+        assertNull(this.cache.getPrimitiveData(this.coverage, this.tile));
+
+        this.cache.putPrimitiveData(this.coverage, this.tile, createPrimitiveData());
+        assertTrue(this.cache.isCurrent(this.coverage, this.tile));
+
+        assertTrue(this.edgeTable.setLastModified(this.edgeTable.lastModified() - 60000));
+        assertFalse(this.cache.isCurrent(this.coverage, this.tile));
+    }
+
+    private static VPFPrimitiveData createPrimitiveData()
+    {
+        VPFPrimitiveData primitiveData = new VPFPrimitiveData();
+
+        // Like the tables read by VPFBasicDataBufferFactory, coordinate and string sequences begin with an empty entry
+        // so that entry N corresponds to row id N.
+        VecBufferSequence coords = new VecBufferSequence(new VecBuffer(2,
+            new BufferFactory.FloatBufferFactory().newBuffer(20)), 3);
+        coords.append(VecBuffer.emptyVecBuffer(2));
+        coords.append(createVecBuffer(-86f, 41f, -84f, 44f, -85f, 42f));
+        coords.append(createVecBuffer(-85f, 42f, -84f, 43.5f));
+
+        VPFPrimitiveData.EdgeInfo[] edgeInfo = new VPFPrimitiveData.EdgeInfo[3];
+        edgeInfo[1] = new VPFPrimitiveData.EdgeInfo(1, 1, 2, 2, 1, 2, 2, false,
+            VPFBoundingBox.fromVecBuffer(coords.subBuffer(1)));
+        edgeInfo[2] = new VPFPrimitiveData.EdgeInfo(1, 3, 4, 2, 1, 2, 1, true,
+            VPFBoundingBox.fromVecBuffer(coords.subBuffer(2)));
+        primitiveData.setPrimitiveInfo(VPFConstants.EDGE_PRIMITIVE_TABLE, edgeInfo);
+        primitiveData.setPrimitiveCoords(VPFConstants.EDGE_PRIMITIVE_TABLE, coords);
+
+        VPFPrimitiveData.FaceInfo[] faceInfo = new VPFPrimitiveData.FaceInfo[2];
+        faceInfo[1] = new VPFPrimitiveData.FaceInfo(
+            new VPFPrimitiveData.Ring(2, new int[] {1, 2}, new int[] {1, -1}),
+            new VPFPrimitiveData.Ring[] {new VPFPrimitiveData.Ring(1, new int[] {2}, new int[] {1})},
+            new VPFBoundingBox(-86, 41, -84, 44));
+        primitiveData.setPrimitiveInfo(VPFConstants.FACE_PRIMITIVE_TABLE, faceInfo);
+
+        VecBufferSequence textCoords = new VecBufferSequence(new VecBuffer(2,
+            new BufferFactory.FloatBufferFactory().newBuffer(6)), 3);
+        textCoords.append(VecBuffer.emptyVecBuffer(2));
+        textCoords.append(createVecBuffer(-87f, 47f));
+        textCoords.append(createVecBuffer(-92f, 46.75f));
+        CompoundStringBuilder strings = new CompoundStringBuilder();
+        strings.append("");
+        strings.append("Lake Superior");
+        strings.append("Duluth");
+
+        VPFPrimitiveData.BasicPrimitiveInfo[] textInfo = new VPFPrimitiveData.BasicPrimitiveInfo[3];
+        for (int i = 1; i < textInfo.length; i++)
+        {
+            textInfo[i] = new VPFPrimitiveData.BasicPrimitiveInfo(
+                VPFBoundingBox.fromVecBuffer(textCoords.subBuffer(i)));
+        }
+        primitiveData.setPrimitiveInfo(VPFConstants.TEXT_PRIMITIVE_TABLE, textInfo);
+        primitiveData.setPrimitiveCoords(VPFConstants.TEXT_PRIMITIVE_TABLE, textCoords);
+        primitiveData.setPrimitiveStrings(VPFConstants.TEXT_PRIMITIVE_TABLE, strings);
+
+        return primitiveData;
+    }
+
+    private static VecBuffer createVecBuffer(float... coords)
+    {
+        BufferWrapper buffer = new BufferFactory.FloatBufferFactory().newBuffer(coords.length);
+        buffer.putFloat(0, coords, 0, coords.length);
+        return new VecBuffer(2, buffer);
+    }
+
+    private static double[] toArray(VecBuffer buffer)
+    {
+        double[] array = new double[buffer.getSize() * buffer.getCoordsPerVec()];
+        if (array.length > 0)
+            buffer.getBufferWrapper().getDouble(0, array, 0, array.length);
+        return array;
+    }
+
+    private static void assertBoundsEqual(VPFBoundingBox expected, VPFBoundingBox actual)
+    {
+        assertEquals(expected.getXmin(), actual.getXmin(), 0);
+        assertEquals(expected.getYmin(), actual.getYmin(), 0);
+        assertEquals(expected.getXmax(), actual.getXmax(), 0);
+        assertEquals(expected.getYmax(), actual.getYmax(), 0);
+    }
+
+    private static void writeFile(File file, int length) throws IOException
+    {
+        FileOutputStream stream = new FileOutputStream(file);
+        try
+        {
+            stream.write(new byte[length]);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import com.sun.net.httpserver.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class PrioritizedRetrievalServiceTest
+{
+    private static final long TIMEOUT = 10000; // milliseconds
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    /** The paths requested from the server, in the order the server received them. */
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final Set<Integer> remotePorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private final AtomicInteger numConcurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final CountDownLatch blockReceived = new CountDownLatch(1);
+    private final CountDownLatch blockReleased = new CountDownLatch(1);
+    private PrioritizedRetrievalService service;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        this.server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handleRequest(exchange);
+            }
+        });
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.serverExecutor);
+        this.server.start();
+
+        this.service = new PrioritizedRetrievalService();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.blockReleased.countDown();
+        this.service.shutdown(true);
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    /** Tests that a resource is retrieved and its future completes. */
+    @Test
+    public void testRetrieval() throws Exception
+    {
+        Retriever retriever = this.createRetriever("/a");
+        RetrievalFuture future = this.service.runRetriever(retriever, 0);
+        assertNotNull(future);
+
+        assertSame(retriever, future.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(Retriever.RETRIEVER_STATE_SUCCESSFUL, retriever.getState());
+        assertEquals("/a", new String(retriever.getBuffer().array(), "UTF-8"));
+        assertEquals(Arrays.asList("/a"), this.requests);
+    }
+
+    /** Tests that a request for a resource already pending returns the pending request and is retrieved once. */
+    @Test
+    public void testDuplicateRequest() throws Exception
+    {
+        this.service.setRetrieverPoolSize(1);
+        RetrievalFuture block = this.runBlockingRequest();
+
+        Retriever first = this.createRetriever("/a");
+        Retriever second = this.createRetriever("/a");
+        RetrievalFuture future = this.service.runRetriever(first, 2);
+        assertSame(future, this.service.runRetriever(second, 1));
+        assertTrue(this.service.contains(second));
+        assertEquals(2, this.service.getNumRetrieversPending());
+
+        this.blockReleased.countDown();
+        block.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("/block", "/a"), this.requests);
+    }
+
+    /** Tests that pending requests run in order of priority, including priorities changed while pending. */
+    @Test
+    public void testPriorityOrder() throws Exception
+    {
+        this.service.setRetrieverPoolSize(1);
+        RetrievalFuture block = this.runBlockingRequest();
+
+        Retriever a = this.createRetriever("/a");
+        Retriever b = this.createRetriever("/b");
+        Retriever c = this.createRetriever("/c");
+        Retriever d = this.createRetriever("/d");
+        RetrievalFuture[] futures = new RetrievalFuture[] {
+            this.service.runRetriever(a, 3),
+            this.service.runRetriever(b, 1),
+            this.service.runRetriever(c, 2),
+            this.service.runRetriever(d, 4)};
+        assertTrue(this.service.setPriority(c, 0.5));
+        this.service.runRetriever(this.createRetriever("/d"), 0); // re-request with a higher priority
+
+        this.blockReleased.countDown();
+        block.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        for (RetrievalFuture future : futures)
+        {
+            future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(Arrays.asList("/block", "/d", "/c", "/b", "/a"), this.requests);
+    }
+
+    /** Tests that cancelled pending requests never reach the server. */
+    @Test
+    public void testCancel() throws Exception
+    {
+        this.service.setRetrieverPoolSize(1);
+        RetrievalFuture block = this.runBlockingRequest();
+
+        Retriever a = this.createRetriever("/a");
+        Retriever b = this.createRetriever("/b");
+        final Retriever c = this.createRetriever("/c");
+        RetrievalFuture futureA = this.service.runRetriever(a, 1);
+        RetrievalFuture futureB = this.service.runRetriever(b, 2);
+        RetrievalFuture futureC = this.service.runRetriever(c, 3);
+
+        assertTrue(this.service.cancel(a));
+        assertTrue(futureA.isCancelled());
+        assertFalse(this.service.contains(a));
+        assertEquals(1, this.service.cancelPending(new PrioritizedRetrievalService.RetrieverFilter()
+        {
+            public boolean accept(Retriever retriever)
+            {
+                return retriever.getName().equals(c.getName());
+            }
+        }));
+        assertTrue(futureC.isCancelled());
+        assertEquals(2, this.service.getNumRetrieversPending());
+
+        this.blockReleased.countDown();
+        block.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        futureB.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("/block", "/b"), this.requests);
+    }
+
+    /** Tests that a full queue displaces its least important request for a more important one. */
+    @Test
+    public void testFullQueue() throws Exception
+    {
+        this.service.setRetrieverPoolSize(1);
+        RetrievalFuture block = this.runBlockingRequest();
+        this.service.queueSize = 2;
+
+        RetrievalFuture futureA = this.service.runRetriever(this.createRetriever("/a"), 1);
+        RetrievalFuture futureB = this.service.runRetriever(this.createRetriever("/b"), 2);
+        assertFalse(this.service.isAvailable());
+        assertNull(this.service.runRetriever(this.createRetriever("/c"), 3));
+        RetrievalFuture futureD = this.service.runRetriever(this.createRetriever("/d"), 0);
+        assertNotNull(futureD);
+        assertTrue(futureB.isCancelled());
+
+        this.blockReleased.countDown();
+        block.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        futureA.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        futureD.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("/block", "/d", "/a"), this.requests);
+    }
+
+    /**
+     * Tests that a layer, which checks that the service is available before each request, can still displace less
+     * important requests from a full queue.
+     */
+    @Test
+    public void testLayerRequestsToFullQueue() throws Exception
+    {
+        this.service.setRetrieverPoolSize(1);
+        RetrievalFuture block = this.runBlockingRequest();
+        this.service.queueSize = 2;
+
+        RetrievalFuture futureA = this.requestAsLayer("/a", 1);
+        RetrievalFuture futureB = this.requestAsLayer("/b", 2);
+        assertNotNull(futureA);
+        assertNotNull(futureB);
+
+        assertFalse(this.service.isAvailable());
+        assertFalse(this.service.isAvailable(3));
+        assertTrue(this.service.isAvailable(2));
+        assertNull(this.requestAsLayer("/c", 3));
+
+        RetrievalFuture futureD = this.requestAsLayer("/d", 0);
+        assertNotNull(futureD);
+        assertTrue(futureB.isCancelled());
+
+        this.blockReleased.countDown();
+        block.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        futureA.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        futureD.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("/block", "/d", "/a"), this.requests);
+    }
+
+    /** Tests that no more than the maximum number of requests per host run concurrently. */
+    @Test
+    public void testMaxRequestsPerHost() throws Exception
+    {
+        this.service.setRetrieverPoolSize(6);
+        this.service.setMaxRequestsPerHost(2);
+
+        List<RetrievalFuture> futures = new ArrayList<RetrievalFuture>();
+        for (int i = 0; i < 8; i++)
+        {
+            futures.add(this.service.runRetriever(this.createRetriever("/slow" + i), i));
+        }
+        for (RetrievalFuture future : futures)
+        {
+            future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(8, this.requests.size());
+        assertEquals(2, this.maxConcurrent.get());
+    }
+
+    /** Tests that successive requests to a host reuse a kept-alive connection, including after an error response. */
+    @Test
+    public void testConnectionReuse() throws Exception
+    {
+        String[] paths = new String[] {"/a", "/missing", "/b", "/missing2", "/c"};
+        for (String path : paths)
+        {
+            this.service.runRetriever(this.createRetriever(path), 0).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(paths.length, this.requests.size());
+        assertEquals(1, this.remotePorts.size());
+    }
+
+    /** Submits a request the server holds until the test releases it, and waits until the server receives it. */
+    private RetrievalFuture runBlockingRequest() throws Exception
+    {
+        RetrievalFuture future = this.service.runRetriever(this.createRetriever("/block"), 0);
+        assertTrue(this.blockReceived.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        return future;
+    }
+
+    /** Requests a resource the way the tiled layers do, creating the retriever only if the service is available. */
+    private RetrievalFuture requestAsLayer(String path, double priority) throws Exception
+    {
+        if (!this.service.isAvailable(priority))
+            return null;
+
+        return this.service.runRetriever(this.createRetriever(path), priority);
+    }
+
+    private Retriever createRetriever(String path) throws Exception
+    {
+        URL url = new URL("http", "127.0.0.1", this.server.getAddress().getPort(), path);
+        HTTPRetriever retriever = new HTTPRetriever(url, null);
+        retriever.setConnectTimeout((int) TIMEOUT);
+        retriever.setReadTimeout((int) TIMEOUT);
+        return retriever;
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException
+    {
+        String path = exchange.getRequestURI().getPath();
+        this.requests.add(path);
+        this.remotePorts.add(exchange.getRemoteAddress().getPort());
+
+        int concurrent = this.numConcurrent.incrementAndGet();
+        try
+        {
+            int max;
+            while (concurrent > (max = this.maxConcurrent.get()) && !this.maxConcurrent.compareAndSet(max, concurrent))
+            {
+                // Retry until the maximum is updated.
+            }
+
+            if (path.equals("/block"))
+            {
+                this.blockReceived.countDown();
+                this.blockReleased.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            else if (path.startsWith("/slow"))
+            {
+                Thread.sleep(200);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            this.numConcurrent.decrementAndGet();
+        }
+
+        byte[] body = path.getBytes("UTF-8");
+        exchange.sendResponseHeaders(path.startsWith("/missing") ? HttpURLConnection.HTTP_NOT_FOUND
+            : HttpURLConnection.HTTP_OK, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import com.sun.net.httpserver.*;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.util.PerformanceStatistic;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class RetrievalStatisticsTest
+{
+    private static final int CONTENT_LENGTH = 10000;
+
+    /** Writes the retrieved content to a temporary file. */
+    private static class FilePostProcessor extends AbstractRetrievalPostProcessor
+    {
+        private final File file;
+
+        public FilePostProcessor(AVList avList, File file)
+        {
+            super(avList);
+            this.file = file;
+        }
+
+        @Override
+        protected File doGetOutputFile()
+        {
+            return this.file;
+        }
+
+        @Override
+        protected boolean overwriteExistingFile()
+        {
+            return true;
+        }
+
+        @Override
+        protected java.nio.ByteBuffer handleContent() throws IOException
+        {
+            this.saveBuffer();
+            return this.getRetriever().getBuffer();
+        }
+    }
+
+    private HttpServer server;
+    private File file;
+    private RetrievalStatistics statistics;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        this.server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                boolean found = exchange.getRequestURI().getPath().startsWith("/tile");
+                byte[] body = new byte[found ? CONTENT_LENGTH : 10];
+                exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+                exchange.sendResponseHeaders(found ? HttpURLConnection.HTTP_OK : HttpURLConnection.HTTP_NOT_FOUND,
+                    body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        this.server.start();
+
+        this.file = File.createTempFile("RetrievalStatisticsTest", ".bin");
+        this.statistics = new RetrievalStatistics();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.statistics.unregister();
+        this.server.stop(0);
+        this.file.delete();
+    }
+
+    /** Tests percentile estimates of a histogram. */
+    @Test
+    public void testHistogram()
+    {
+        RetrievalStatistics.Histogram histogram = new RetrievalStatistics.Histogram();
+        assertEquals(0, histogram.getPercentile(0.5), 0);
+
+        for (int i = 1; i <= 100; i++)
+        {
+            histogram.record(i * 1000000L); // 1 to 100 ms
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(100, histogram.getMax(), 1e-9);
+        assertEquals(50, histogram.getPercentile(0.5), 0);
+        assertEquals(100, histogram.getPercentile(0.95), 0);
+        assertEquals(1, histogram.getPercentile(0.01), 0);
+
+        long[] counts = histogram.getBucketCounts();
+        assertEquals(histogram.getBucketBounds().length + 1, counts.length);
+        assertEquals(1, counts[0]); // <= 1 ms
+        assertEquals(1, counts[1]); // <= 2 ms
+        assertEquals(3, counts[2]); // <= 5 ms
+    }
+
+    /** Tests that retrievals are recorded in total and by layer and host. */
+    @Test
+    public void testRecord() throws Exception
+    {
+        AVList layer = new AVListImpl();
+        layer.setValue(AVKey.DISPLAY_NAME, "Test Layer");
+
+        URLRetriever retriever = this.retrieve("/tile", layer);
+        assertEquals(Retriever.RETRIEVER_STATE_SUCCESSFUL, retriever.getState());
+        assertTrue(retriever.getTransferTime() > 0);
+        assertTrue(retriever.getCacheWriteTime() > 0);
+        assertTrue(retriever.getPostProcessingTime() >= retriever.getCacheWriteTime());
+        assertEquals(CONTENT_LENGTH, this.file.length());
+
+        this.retrieve("/missing", layer);
+
+        RetrievalStatistics.Group total = this.statistics.getTotal();
+        assertEquals(2, total.getRequestCount());
+        assertEquals(1, total.getSuccessfulCount());
+        assertEquals(1, total.getErrorCount());
+        assertEquals(CONTENT_LENGTH, total.getBytesTransferred());
+        assertEquals(2, total.getQueueWaitTime().getCount());
+        assertEquals(2, total.getTransferTime().getCount());
+        assertEquals(1, total.getCacheWriteTime().getCount());
+
+        RetrievalStatistics.Group layerGroup = this.statistics.getLayer("Test Layer");
+        assertNotNull(layerGroup);
+        assertEquals(2, layerGroup.getRequestCount());
+
+        RetrievalStatistics.Group hostGroup = this.statistics.getHost(
+            "127.0.0.1:" + this.server.getAddress().getPort());
+        assertNotNull(hostGroup);
+        assertEquals(2, hostGroup.getRequestCount());
+
+        Collection<PerformanceStatistic> stats = this.statistics.getPerformanceStatistics();
+        boolean foundLayer = false;
+        for (PerformanceStatistic stat : stats)
+        {
+            assertEquals(PerformanceStatistic.RETRIEVAL, stat.getKey());
+            if (stat.getDisplayString().endsWith("Test Layer"))
+                foundLayer = true;
+        }
+        assertTrue(foundLayer);
+
+        this.statistics.reset();
+        assertEquals(0, this.statistics.getRequestCount());
+        assertNull(this.statistics.getLayer("Test Layer"));
+    }
+
+    /** Tests that the statistics can be read through the platform MBean server. */
+    @Test
+    public void testMBean() throws Exception
+    {
+        this.retrieve("/tile", null);
+        assertTrue(this.statistics.register());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(RetrievalStatistics.OBJECT_NAME);
+        assertEquals(1L, server.getAttribute(name, "RequestCount"));
+        assertEquals((long) CONTENT_LENGTH, server.getAttribute(name, "BytesTransferred"));
+        assertEquals(1, ((String[]) server.getAttribute(name, "HostStatistics")).length);
+
+        this.statistics.unregister();
+        assertFalse(server.isRegistered(name));
+    }
+
+    private URLRetriever retrieve(String path, AVList layer) throws Exception
+    {
+        URL url = new URL("http", "127.0.0.1", this.server.getAddress().getPort(), path);
+        HTTPRetriever retriever = new HTTPRetriever(url, new FilePostProcessor(layer, this.file));
+
+        retriever.setSubmitTime(System.currentTimeMillis());
+        retriever.setBeginTime(System.currentTimeMillis());
+        try
+        {
+            retriever.call();
+        }
+        finally
+        {
+            this.statistics.record(retriever);
+        }
+
+        return retriever;
+    }
+}
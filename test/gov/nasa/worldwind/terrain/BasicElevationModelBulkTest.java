@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class BasicElevationModelBulkTest
+{
+    private static final Sector SECTOR = Sector.fromDegrees(0, 10, 0, 10);
+    private static final int TILE_SIZE = 16;
+    private static final double MISSING_DATA_SIGNAL = -9999;
+    private static final double TARGET_RESOLUTION = 1e-9;
+
+    /** A model whose tiles are created in memory rather than retrieved. */
+    private static class TestElevationModel extends BasicElevationModel
+    {
+        public TestElevationModel(AVList params)
+        {
+            super(params);
+        }
+
+        @Override
+        protected void requestTile(TileKey key)
+        {
+        }
+
+        public void addTile(int levelNumber, int row, int col)
+        {
+            ElevationTile tile = this.createTile(
+                new TileKey(levelNumber, row, col, this.getLevels().getLevel(levelNumber).getCacheName()));
+
+            ByteBuffer buffer = ByteBuffer.allocate(TILE_SIZE * TILE_SIZE * 2).order(ByteOrder.LITTLE_ENDIAN);
+            BufferWrapper elevations = BufferWrapper.wrap(buffer, AVKey.INT16);
+            for (int i = 0; i < elevations.length(); i++)
+            {
+                // Mark a few posts as missing data so that the missing data rules are exercised.
+                if ((i + row + col) % 37 == 0)
+                    elevations.putShort(i, (short) MISSING_DATA_SIGNAL);
+                else
+                    elevations.putShort(i, (short) (levelNumber * 1000 + row * 100 + col * 10 + i % 97));
+            }
+
+            tile.setElevations(elevations, this);
+            this.addTileToCache(tile, elevations);
+        }
+    }
+
+    private TestElevationModel model;
+    private double[] latitudes;
+    private double[] longitudes;
+    private List<LatLon> locations;
+
+    @Before
+    public void setUp()
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.SECTOR, SECTOR);
+        params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(5, 5));
+        params.setValue(AVKey.NUM_LEVELS, 2);
+        params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+        params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+        params.setValue(AVKey.DATA_CACHE_NAME, "BasicElevationModelBulkTest");
+        params.setValue(AVKey.DATASET_NAME, "BasicElevationModelBulkTest");
+        params.setValue(AVKey.FORMAT_SUFFIX, ".bil");
+        params.setValue(AVKey.NETWORK_RETRIEVAL_ENABLED, false);
+        params.setValue(AVKey.MISSING_DATA_SIGNAL, MISSING_DATA_SIGNAL);
+        params.setValue(AVKey.ELEVATION_MIN, -100d);
+        params.setValue(AVKey.ELEVATION_MAX, 5000d);
+
+        this.model = new TestElevationModel(params);
+
+        // All level 0 tiles, and half of the level 1 tiles so that the others fall back to level 0.
+        for (int row = 0; row < 2; row++)
+        {
+            for (int col = 0; col < 2; col++)
+            {
+                this.model.addTile(0, row, col);
+            }
+        }
+        for (int row = 0; row < 4; row++)
+        {
+            for (int col = 0; col < 4; col++)
+            {
+                if ((row + col) % 2 == 0)
+                    this.model.addTile(1, row, col);
+            }
+        }
+
+        // Random locations inside and around the model's sector, locations on tile edges, and null locations.
+        Random random = new Random(7);
+        int count = 40000;
+        this.latitudes = new double[count];
+        this.longitudes = new double[count];
+        this.locations = new ArrayList<LatLon>(count);
+        for (int i = 0; i < count; i++)
+        {
+            double lat, lon;
+            if (i % 50 == 0)
+            {
+                lat = Double.NaN;
+                lon = Double.NaN;
+            }
+            else if (i % 10 == 0)
+            {
+                lat = 2.5 * random.nextInt(5);
+                lon = 2.5 * random.nextInt(5);
+            }
+            else
+            {
+                lat = -1 + 12 * random.nextDouble();
+                lon = -1 + 12 * random.nextDouble();
+            }
+
+            this.latitudes[i] = lat;
+            this.longitudes[i] = lon;
+            this.locations.add(Double.isNaN(lat) ? null : LatLon.fromDegrees(lat, lon));
+        }
+    }
+
+    /** Tests that bulk elevations are identical to elevations computed for a list of locations. */
+    @Test
+    public void testElevationsMatchListElevations()
+    {
+        this.assertBulkMatchesList(true);
+        this.assertBulkMatchesList(false);
+    }
+
+    /** Tests that bulk elevations divided among threads are identical to elevations computed on a single thread. */
+    @Test
+    public void testParallelElevationsMatchListElevations()
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            this.model.setBulkElevationsPool(pool);
+            this.assertBulkMatchesList(true);
+            this.assertBulkMatchesList(false);
+        }
+        finally
+        {
+            this.model.setBulkElevationsPool(null);
+            pool.shutdown();
+        }
+    }
+
+    /** Tests that the missing data replacement is applied by getElevations but not by getUnmappedElevations. */
+    @Test
+    public void testMissingDataReplacement()
+    {
+        this.model.setMissingDataReplacement(-1);
+        this.assertBulkMatchesList(true);
+        this.assertBulkMatchesList(false);
+    }
+
+    /** Tests that invalid arguments are rejected. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBufferTooSmall()
+    {
+        this.model.getElevations(SECTOR, this.latitudes, this.longitudes, TARGET_RESOLUTION,
+            new double[this.latitudes.length - 1]);
+    }
+
+    private void assertBulkMatchesList(boolean mapped)
+    {
+        double[] expected = new double[this.latitudes.length];
+        double[] actual = new double[this.latitudes.length];
+        Arrays.fill(expected, Double.NEGATIVE_INFINITY);
+        Arrays.fill(actual, Double.NEGATIVE_INFINITY);
+
+        double expectedResolution, actualResolution;
+        if (mapped)
+        {
+            expectedResolution = this.model.getElevations(SECTOR, this.locations, TARGET_RESOLUTION, expected);
+            actualResolution = this.model.getElevations(SECTOR, this.latitudes, this.longitudes, TARGET_RESOLUTION,
+                actual);
+        }
+        else
+        {
+            expectedResolution = this.model.getUnmappedElevations(SECTOR, this.locations, TARGET_RESOLUTION,
+                expected);
+            actualResolution = this.model.getUnmappedElevations(SECTOR, this.latitudes, this.longitudes,
+                TARGET_RESOLUTION, actual);
+        }
+
+        assertEquals(expectedResolution, actualResolution, 0);
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals("Elevation " + i + " at " + this.locations.get(i),
+                Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(actual[i]));
+        }
+    }
+}
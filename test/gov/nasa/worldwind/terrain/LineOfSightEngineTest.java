@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class LineOfSightEngineTest
+{
+    private static final Sector SECTOR = Sector.fromDegrees(0, 0.2, 0, 0.2);
+
+    /** An elevation model of rolling hills, computed rather than retrieved. */
+    private static class HillsElevationModel extends ZeroElevationModel
+    {
+        protected static double elevation(double latDegrees, double lonDegrees)
+        {
+            return 200 + 150 * Math.sin(latDegrees * 200) * Math.cos(lonDegrees * 150);
+        }
+
+        @Override
+        public double getMaxElevation()
+        {
+            return 350;
+        }
+
+        @Override
+        public double[] getExtremeElevations(Angle latitude, Angle longitude)
+        {
+            return new double[] {50, 350};
+        }
+
+        @Override
+        public double[] getExtremeElevations(Sector sector)
+        {
+            return new double[] {50, 350};
+        }
+
+        @Override
+        public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                LatLon ll = latlons.get(i);
+                buffer[i] = elevation(ll.getLatitude().degrees, ll.getLongitude().degrees);
+            }
+
+            return 0;
+        }
+
+        @Override
+        public double getUnmappedElevation(Angle latitude, Angle longitude)
+        {
+            return elevation(latitude.degrees, longitude.degrees);
+        }
+    }
+
+    private HighResolutionTerrain terrain;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        Globe globe = new Earth();
+        globe.setElevationModel(new HillsElevationModel());
+        this.terrain = new HighResolutionTerrain(globe, SECTOR, 20d, null);
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /** Tests that the engine reports the same intersections as intersecting each line individually. */
+    @Test
+    public void testResultsMatchSequentialIntersection() throws Exception
+    {
+        Position origin = Position.fromDegrees(0.1, 0.1, 30);
+        List<Position> targets = createTargets(1000);
+
+        final Intersection[][] results = new Intersection[targets.size()][];
+        final boolean[] reported = new boolean[targets.size()];
+        final AtomicInteger numCompletedCalls = new AtomicInteger();
+
+        LineOfSightEngine engine = new LineOfSightEngine(this.terrain, this.executor);
+        engine.setBatchSize(64);
+        LineOfSightEngine.Job job = engine.intersect(origin, targets, new LineOfSightEngine.ResultListener()
+        {
+            public void result(int index, Position pA, Position pB, Intersection[] intersections)
+            {
+                synchronized (results)
+                {
+                    results[index] = intersections;
+                    reported[index] = true;
+                }
+            }
+
+            public void exception(int index, Position pA, Position pB, Exception exception)
+            {
+                fail(exception.toString());
+            }
+
+            public void completed()
+            {
+                numCompletedCalls.incrementAndGet();
+            }
+        });
+
+        assertTrue(job.await(60, TimeUnit.SECONDS));
+        assertEquals(1, numCompletedCalls.get());
+        assertEquals(targets.size(), job.getNumCompleted());
+
+        int numBlocked = 0;
+        synchronized (results)
+        {
+            for (int i = 0; i < targets.size(); i++)
+            {
+                assertTrue("Line " + i + " not reported", reported[i]);
+
+                Intersection[] expected = this.terrain.intersect(origin, targets.get(i));
+                assertEquals("Line " + i, expected == null, results[i] == null);
+                if (expected == null)
+                    continue;
+
+                numBlocked++;
+                assertEquals("Line " + i, expected.length, results[i].length);
+                for (int k = 0; k < expected.length; k++)
+                {
+                    assertEquals("Line " + i, expected[k].getIntersectionPoint(),
+                        results[i][k].getIntersectionPoint());
+                }
+            }
+        }
+
+        // The terrain should block some lines but not all of them.
+        assertTrue(numBlocked > 0);
+        assertTrue(numBlocked < targets.size());
+    }
+
+    /** Tests that lines given as position pairs are reported with the index of their pair. */
+    @Test
+    public void testPositionPairs() throws Exception
+    {
+        List<Position> targets = createTargets(100);
+        List<Position> positions = new ArrayList<Position>();
+        for (Position target : targets)
+        {
+            positions.add(Position.fromDegrees(0.1, 0.1, 30));
+            positions.add(target);
+        }
+
+        final Position[] reported = new Position[targets.size()];
+        LineOfSightEngine engine = new LineOfSightEngine(this.terrain, this.executor);
+        LineOfSightEngine.Job job = engine.intersect(positions, new LineOfSightEngine.ResultListener()
+        {
+            public void result(int index, Position pA, Position pB, Intersection[] intersections)
+            {
+                synchronized (reported)
+                {
+                    reported[index] = pB;
+                }
+            }
+
+            public void exception(int index, Position pA, Position pB, Exception exception)
+            {
+            }
+
+            public void completed()
+            {
+            }
+        });
+
+        assertTrue(job.await(60, TimeUnit.SECONDS));
+        synchronized (reported)
+        {
+            assertEquals(targets, Arrays.asList(reported));
+        }
+    }
+
+    /** Tests that a cancelled job computes no further lines and still completes. */
+    @Test
+    public void testCancel() throws Exception
+    {
+        // Occupy the only thread so that no batch starts before the job is cancelled.
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        singleThread.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final AtomicInteger numResults = new AtomicInteger();
+        final AtomicInteger numCompletedCalls = new AtomicInteger();
+        LineOfSightEngine engine = new LineOfSightEngine(this.terrain, singleThread);
+        LineOfSightEngine.Job job = engine.intersect(Position.fromDegrees(0.1, 0.1, 30), createTargets(1000),
+            new LineOfSightEngine.ResultListener()
+            {
+                public void result(int index, Position pA, Position pB, Intersection[] intersections)
+                {
+                    numResults.incrementAndGet();
+                }
+
+                public void exception(int index, Position pA, Position pB, Exception exception)
+                {
+                    numResults.incrementAndGet();
+                }
+
+                public void completed()
+                {
+                    numCompletedCalls.incrementAndGet();
+                }
+            });
+
+        job.cancel();
+        release.countDown();
+
+        assertTrue(job.await(60, TimeUnit.SECONDS));
+        assertTrue(job.isDone());
+        assertEquals(0, numResults.get());
+        assertEquals(1, numCompletedCalls.get());
+        singleThread.shutdown();
+    }
+
+    /** Tests that a job whose batches are partly rejected by the executor fails and still completes. */
+    @Test
+    public void testRejectedBatches() throws Exception
+    {
+        // One busy thread and room for one queued batch, so that all batches after the first are rejected.
+        ThreadPoolExecutor boundedExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(1));
+        final CountDownLatch release = new CountDownLatch(1);
+        boundedExecutor.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final AtomicInteger numCompletedCalls = new AtomicInteger();
+        LineOfSightEngine engine = new LineOfSightEngine(this.terrain, boundedExecutor);
+        engine.setBatchSize(10);
+        LineOfSightEngine.Job job = engine.intersect(Position.fromDegrees(0.1, 0.1, 30), createTargets(50),
+            new CompletionCounter(numCompletedCalls));
+
+        assertTrue(job.getException() instanceof RejectedExecutionException);
+        assertTrue(job.isCancelled());
+        release.countDown();
+
+        assertTrue(job.await(60, TimeUnit.SECONDS));
+        assertEquals(1, numCompletedCalls.get());
+        boundedExecutor.shutdown();
+    }
+
+    /** Tests that disposing an engine shuts down the pool it created, and that later jobs fail rather than hang. */
+    @Test
+    public void testDispose() throws Exception
+    {
+        LineOfSightEngine engine = new LineOfSightEngine(this.terrain);
+        engine.dispose();
+        assertTrue(engine.getExecutor().isShutdown());
+
+        final AtomicInteger numCompletedCalls = new AtomicInteger();
+        LineOfSightEngine.Job job = engine.intersect(Position.fromDegrees(0.1, 0.1, 30), createTargets(10),
+            new CompletionCounter(numCompletedCalls));
+
+        assertTrue(job.await(60, TimeUnit.SECONDS));
+        assertTrue(job.getException() instanceof RejectedExecutionException);
+        assertEquals(1, numCompletedCalls.get());
+
+        // An executor passed to the engine is not shut down.
+        new LineOfSightEngine(this.terrain, this.executor).dispose();
+        assertFalse(this.executor.isShutdown());
+    }
+
+    private static class CompletionCounter implements LineOfSightEngine.ResultListener
+    {
+        private final AtomicInteger numCompletedCalls;
+
+        public CompletionCounter(AtomicInteger numCompletedCalls)
+        {
+            this.numCompletedCalls = numCompletedCalls;
+        }
+
+        public void result(int index, Position pA, Position pB, Intersection[] intersections)
+        {
+        }
+
+        public void exception(int index, Position pA, Position pB, Exception exception)
+        {
+        }
+
+        public void completed()
+        {
+            this.numCompletedCalls.incrementAndGet();
+        }
+    }
+
+    private static List<Position> createTargets(int count)
+    {
+        Random random = new Random(3);
+        List<Position> targets = new ArrayList<Position>(count);
+        for (int i = 0; i < count; i++)
+        {
+            targets.add(Position.fromDegrees(0.01 + 0.18 * random.nextDouble(), 0.01 + 0.18 * random.nextDouble(),
+                2));
+        }
+
+        return targets;
+    }
+}
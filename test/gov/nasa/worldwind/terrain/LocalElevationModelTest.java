@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.SegmentedMemoryCache;
+import gov.nasa.worldwind.geom.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class LocalElevationModelTest
+{
+    private static final Sector SECTOR = Sector.fromDegrees(20, 30, -110, -100);
+
+    /** Tests that the tile index answers every query as a linear scan of the tiles, in the order they were added. */
+    @Test
+    public void testIndexMatchesLinearScan()
+    {
+        Random random = new Random(5);
+        LocalElevationModel model = createModel(random, 400);
+
+        assertEquals(linearSector(model), model.getSector());
+        assertEquals(linearBestResolution(model, null), model.getBestResolution(null), 0d);
+
+        for (int n = 0; n < 20000; n++)
+        {
+            LatLon location = randomLocation(random, model);
+            double latRadians = location.getLatitude().radians;
+            double lonRadians = location.getLongitude().radians;
+
+            assertSame(linearFindTile(model, latRadians, lonRadians), model.findTile(latRadians, lonRadians));
+            assertEquals(linearContains(model, location), model.contains(location.getLatitude(),
+                location.getLongitude()));
+            assertDoublesEqual(linearExtremes(model, location), model.getExtremeElevations(location.getLatitude(),
+                location.getLongitude()));
+        }
+
+        for (int n = 0; n < 2000; n++)
+        {
+            LatLon a = randomLocation(random, model);
+            LatLon b = randomLocation(random, model);
+            Sector sector = Sector.boundingSector(a, b);
+
+            assertEquals(linearIntersects(model, sector), model.intersects(sector));
+            assertDoublesEqual(linearExtremes(model, sector), model.getExtremeElevations(sector));
+            assertEquals(linearBestResolution(model, sector), model.getBestResolution(sector), 0d);
+        }
+    }
+
+    /** Tests that the index is rebuilt when tiles are added after it's been used. */
+    @Test
+    public void testIndexUpdatedWhenTilesAdded()
+    {
+        LocalElevationModel model = new LocalElevationModel();
+        model.addElevations(createElevations(8, 8, 100), Sector.fromDegrees(0, 1, 0, 1), 8, 8, createParams());
+        assertFalse(model.contains(Angle.fromDegrees(5.5), Angle.fromDegrees(5.5)));
+
+        model.addElevations(createElevations(8, 8, 200), Sector.fromDegrees(5, 6, 5, 6), 8, 8, createParams());
+        assertTrue(model.contains(Angle.fromDegrees(5.5), Angle.fromDegrees(5.5)));
+        assertEquals(Sector.fromDegrees(0, 6, 0, 6), model.getSector());
+        assertEquals(200, model.getUnmappedElevation(Angle.fromDegrees(6), Angle.fromDegrees(5)), 0d);
+    }
+
+    /** Tests that bulk requests, sequential and parallel, produce the same elevations as list requests. */
+    @Test
+    public void testBulkElevationsMatchListElevations()
+    {
+        Random random = new Random(11);
+        LocalElevationModel model = createModel(random, 200);
+        model.setMissingDataReplacement(-1234);
+
+        int count = LocalElevationModel.BULK_PARALLEL_THRESHOLD + 1000;
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        List<LatLon> locations = new ArrayList<LatLon>(count);
+        for (int i = 0; i < count; i++)
+        {
+            LatLon location = randomLocation(random, model);
+            latitudes[i] = location.getLatitude().degrees;
+            longitudes[i] = location.getLongitude().degrees;
+            locations.add(location);
+        }
+        latitudes[7] = Double.NaN;
+        locations.set(7, null);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            for (boolean mapped : new boolean[] {true, false})
+            {
+                double[] expected = new double[count];
+                double[] sequential = new double[count];
+                double[] parallel = new double[count];
+                Arrays.fill(expected, Double.NaN);
+                Arrays.fill(sequential, Double.NaN);
+                Arrays.fill(parallel, Double.NaN);
+
+                double resolution = mapped ? model.getElevations(SECTOR, locations, 0, expected)
+                    : model.getUnmappedElevations(SECTOR, locations, 0, expected);
+
+                model.setBulkElevationsPool(null);
+                assertEquals(resolution, mapped ? model.getElevations(SECTOR, latitudes, longitudes, 0, sequential)
+                    : model.getUnmappedElevations(SECTOR, latitudes, longitudes, 0, sequential), 0d);
+
+                model.setBulkElevationsPool(pool);
+                assertEquals(resolution, mapped ? model.getElevations(SECTOR, latitudes, longitudes, 0, parallel)
+                    : model.getUnmappedElevations(SECTOR, latitudes, longitudes, 0, parallel), 0d);
+
+                assertDoublesEqual(expected, sequential);
+                assertDoublesEqual(expected, parallel);
+                assertTrue(Double.isNaN(parallel[7]));
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /** Tests that lazily loaded files produce the same elevations as files read when they're added. */
+    @Test
+    public void testLazyLoadingMatchesEagerLoading() throws IOException
+    {
+        Random random = new Random(3);
+        List<File> files = new ArrayList<File>();
+        try
+        {
+            for (int lat = 45; lat < 47; lat++)
+            {
+                for (int lon = 10; lon < 12; lon++)
+                {
+                    File file = File.createTempFile("LocalElevationModelTest", ".dt2");
+                    writeDTED(file, lat, lon, 31, 41, random);
+                    files.add(file);
+                }
+            }
+
+            LocalElevationModel eager = new LocalElevationModel();
+            LocalElevationModel lazy = new LocalElevationModel();
+            lazy.setLazyLoadingEnabled(true);
+            // Hold at most two of the four rasters, so that rasters are evicted and read again.
+            lazy.setRasterCache(new SegmentedMemoryCache(1, 2 * 31 * 41 * 2, 1));
+            for (File file : files)
+            {
+                eager.addElevations(file);
+                lazy.addElevations(file);
+            }
+
+            assertEquals(0, lazy.getRasterCache().getNumObjects());
+            assertEquals(eager.getSector(), lazy.getSector());
+
+            for (int n = 0; n < 2000; n++)
+            {
+                Angle lat = Angle.fromDegrees(45 + 2 * random.nextDouble());
+                Angle lon = Angle.fromDegrees(10 + 2 * random.nextDouble());
+                assertEquals(eager.getUnmappedElevation(lat, lon), lazy.getUnmappedElevation(lat, lon), 0d);
+            }
+
+            assertTrue(lazy.getRasterCache().getNumObjects() > 0);
+            assertTrue(lazy.getRasterCache().getUsedCapacity() <= lazy.getRasterCache().getCapacity());
+        }
+        finally
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Creates a model of random, overlapping tiles. Most tiles are small, a few are large, and several share edges or
+     * duplicate another tile's sector.
+     */
+    private static LocalElevationModel createModel(Random random, int numTiles)
+    {
+        LocalElevationModel model = new LocalElevationModel();
+        List<Sector> sectors = new ArrayList<Sector>();
+        for (int i = 0; i < numTiles; i++)
+        {
+            Sector sector;
+            if (i > 0 && i % 17 == 0)
+            {
+                // Duplicate an earlier sector, or abut it.
+                Sector other = sectors.get(random.nextInt(sectors.size()));
+                sector = (i % 2 == 0) ? other : Sector.fromDegrees(other.getMinLatitude().degrees,
+                    other.getMaxLatitude().degrees, other.getMaxLongitude().degrees,
+                    other.getMaxLongitude().degrees + other.getDeltaLonDegrees());
+            }
+            else
+            {
+                double size = (i % 50 == 0) ? 2 + 4 * random.nextDouble() : 0.05 + 0.3 * random.nextDouble();
+                double minLat = SECTOR.getMinLatitude().degrees + random.nextDouble() * (10 - size);
+                double minLon = SECTOR.getMinLongitude().degrees + random.nextDouble() * (10 - size);
+                sector = Sector.fromDegrees(minLat, minLat + size, minLon, minLon + size * random.nextDouble());
+            }
+            sectors.add(sector);
+
+            int width = 4 + random.nextInt(12);
+            int height = 4 + random.nextInt(12);
+            ByteBuffer elevations = createElevations(width, height, 100 * i);
+            // Mark a few posts as missing data.
+            elevations.putShort(2 * random.nextInt(width * height), (short) -9999);
+
+            AVList params = createParams();
+            params.setValue(AVKey.MISSING_DATA_SIGNAL, -9999d);
+            model.addElevations(elevations, sector, width, height, params);
+        }
+
+        return model;
+    }
+
+    private static AVList createParams()
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+        params.setValue(AVKey.BYTE_ORDER, AVKey.BIG_ENDIAN);
+        return params;
+    }
+
+    private static ByteBuffer createElevations(int width, int height, int base)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * width * height);
+        for (int i = 0; i < width * height; i++)
+        {
+            buffer.putShort((short) (base + i));
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    /** Returns a random location near the model, often on or near a tile's edge. */
+    private static LatLon randomLocation(Random random, LocalElevationModel model)
+    {
+        if (random.nextInt(4) == 0)
+        {
+            Sector sector = model.tiles.get(random.nextInt(model.tiles.size())).sector;
+            double lat = random.nextBoolean() ? sector.getMinLatitude().degrees : sector.getMaxLatitude().degrees;
+            double lon = random.nextBoolean() ? sector.getMinLongitude().degrees : sector.getMaxLongitude().degrees;
+            return LatLon.fromDegrees(lat, random.nextBoolean() ? lon : lon + 1e-12);
+        }
+
+        return LatLon.fromDegrees(SECTOR.getMinLatitude().degrees - 1 + 12 * random.nextDouble(),
+            SECTOR.getMinLongitude().degrees - 1 + 12 * random.nextDouble());
+    }
+
+    private static void assertDoublesEqual(double[] expected, double[] actual)
+    {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals("index " + i, expected[i], actual[i], 0d);
+        }
+    }
+
+    private static LocalElevationModel.LocalTile linearFindTile(LocalElevationModel model, double latRadians,
+        double lonRadians)
+    {
+        for (LocalElevationModel.LocalTile tile : model.tiles)
+        {
+            if (tile.sector.containsRadians(latRadians, lonRadians))
+                return tile;
+        }
+
+        return null;
+    }
+
+    private static boolean linearContains(LocalElevationModel model, LatLon location)
+    {
+        for (LocalElevationModel.LocalTile tile : model.tiles)
+        {
+            if (tile.sector.contains(location.getLatitude(), location.getLongitude()))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static Sector linearSector(LocalElevationModel model)
+    {
+        Sector sector = null;
+        for (LocalElevationModel.LocalTile tile : model.tiles)
+        {
+            sector = sector == null ? tile.sector : sector.union(tile.sector);
+        }
+
+        return sector;
+    }
+
+    private static int linearIntersects(LocalElevationModel model, Sector sector)
+    {
+        boolean intersects = false;
+        for (LocalElevationModel.LocalTile tile : model.tiles)
+        {
+            if (tile.sector.contains(sector))
+                return 0;
+            if (tile.sector.intersects(sector))
+                intersects = true;
+        }
+
+        return intersects ? 1 : -1;
+    }
+
+    private static double[] linearExtremes(LocalElevationModel model, LatLon location)
+    {
+        double min = Double.MAX_VALUE;
+        double max = -min;
+        for (LocalElevationModel.LocalTile tile : model.tiles)
+        {
+            if (tile.sector.contains(location.getLatitude(), location.getLongitude()))
+            {
+                min = Math.min(min, tile.minElevation);
+                max = Math.max(max, tile.maxElevation);
+            }
+        }
+
+        return new double[] {min != Double.MAX_VALUE ? min : model.getMinElevation(),
+            max != -Double.MAX_VALUE ? max : model.getMaxElevation()};
+    }
+
+    private static double[] linearExtremes(LocalElevationModel model, Sector sector)
+    {
+        double min = Double.MAX_VALUE;
+        double max = -min;
+        for (LocalElevationModel.LocalTile tile : model.tiles)
+        {
+            if (tile.sector.intersects(sector))
+            {
+                min = Math.min(min, tile.minElevation);
+                max = Math.max(max, tile.maxElevation);
+            }
+        }
+
+        return new double[] {min != Double.MAX_VALUE ? min : model.getMinElevation(),
+            max != -Double.MAX_VALUE ? max : model.getMaxElevation()};
+    }
+
+    private static double linearBestResolution(LocalElevationModel model, Sector sector)
+    {
+        double res = Double.MAX_VALUE;
+        for (LocalElevationModel.LocalTile tile : model.tiles)
+        {
+            if (sector == null || sector.intersects(tile.sector))
+                res = Math.min(res, tile.sector.getDeltaLatRadians() / tile.tileHeight);
+        }
+
+        return res;
+    }
+
+    /** Writes a minimal DTED file with random signed-magnitude elevations and its origin at the specified location. */
+    private static void writeDTED(File file, int lat, int lon, int width, int height, Random random)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(80 + 648 + 2700 + width * (12 + 2 * height));
+        buffer.put(header(80, String.format("UHL1%03d0000E%03d0000N%-27s%04d%04d", lon, lat, "", width, height)));
+        buffer.put(header(648, String.format("DSIU%-55sDTED2", "")));
+        buffer.put(header(2700, "ACC"));
+
+        for (int x = 0; x < width; x++)
+        {
+            int start = buffer.position();
+            buffer.put((byte) 0xAA).put((byte) 0).putShort((short) x).putShort((short) x).putShort((short) 0);
+            for (int i = 0; i < height; i++)
+            {
+                int value = random.nextInt(3000) - 500;
+                buffer.putShort(value < 0 ? (short) (0x8000 | -value) : (short) value);
+            }
+
+            int chkSum = 0;
+            for (int i = start; i < buffer.position(); i++)
+            {
+                chkSum += 0xFF & buffer.get(i);
+            }
+            buffer.putInt(chkSum);
+        }
+
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(buffer.array());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static byte[] header(int size, String text)
+    {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) ' ');
+        byte[] textBytes = text.getBytes();
+        System.arraycopy(textBytes, 0, bytes, 0, textBytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ViewshedCalculatorTest
+{
+    private static final Sector SECTOR = Sector.fromDegrees(0, 0.2, 0, 0.2);
+    private static final Position OBSERVER = Position.fromDegrees(0.1, 0.1, 30);
+    private static final double RADIUS = 8000;
+    private static final double CELL_SIZE = 200;
+
+    /** An elevation model of rolling hills, computed rather than retrieved. */
+    private static class HillsElevationModel extends ZeroElevationModel
+    {
+        protected static double elevation(double latDegrees, double lonDegrees)
+        {
+            return 200 + 150 * Math.sin(latDegrees * 200) * Math.cos(lonDegrees * 150);
+        }
+
+        @Override
+        public double getMaxElevation()
+        {
+            return 350;
+        }
+
+        @Override
+        public double[] getExtremeElevations(Angle latitude, Angle longitude)
+        {
+            return new double[] {50, 350};
+        }
+
+        @Override
+        public double[] getExtremeElevations(Sector sector)
+        {
+            return new double[] {50, 350};
+        }
+
+        @Override
+        public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                LatLon ll = latlons.get(i);
+                buffer[i] = elevation(ll.getLatitude().degrees, ll.getLongitude().degrees);
+            }
+
+            return 0;
+        }
+
+        @Override
+        public double getUnmappedElevation(Angle latitude, Angle longitude)
+        {
+            return elevation(latitude.degrees, longitude.degrees);
+        }
+    }
+
+    private Globe globe;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        this.globe = new Earth();
+        this.globe.setElevationModel(new HillsElevationModel());
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /** Tests that all terrain within the radius is visible on a globe without elevations. */
+    @Test
+    public void testFlatTerrain() throws Exception
+    {
+        this.globe.setElevationModel(new ZeroElevationModel());
+        HighResolutionTerrain terrain = new HighResolutionTerrain(this.globe, SECTOR, 20d, null);
+        DataRaster raster = new ViewshedCalculator(terrain, this.executor).computeViewshed(OBSERVER, RADIUS,
+            CELL_SIZE);
+
+        assertEquals(81, raster.getWidth());
+        assertEquals(81, raster.getHeight());
+
+        BufferWrapperRaster viewshed = (BufferWrapperRaster) raster;
+        for (int row = 0; row < raster.getHeight(); row++)
+        {
+            for (int col = 0; col < raster.getWidth(); col++)
+            {
+                int dx = col - 40;
+                int dy = row - 40;
+                double expected = (dx * dx + dy * dy) * CELL_SIZE * CELL_SIZE > RADIUS * RADIUS
+                    ? ViewshedCalculator.OUTSIDE_RADIUS : ViewshedCalculator.VISIBLE;
+                assertEquals("Cell " + row + ", " + col, expected, viewshed.getDoubleAtPosition(row, col), 0);
+            }
+        }
+    }
+
+    /** Tests that the viewshed mostly agrees with intersecting a line to each cell. */
+    @Test
+    public void testAgreesWithIntersection() throws Exception
+    {
+        HighResolutionTerrain terrain = new HighResolutionTerrain(this.globe, SECTOR, 20d, null);
+        ViewshedCalculator calculator = new ViewshedCalculator(terrain, this.executor);
+        calculator.setTargetHeight(2);
+        BufferWrapperRaster viewshed = calculator.computeViewshed(OBSERVER, RADIUS, CELL_SIZE);
+
+        Sector sector = viewshed.getSector();
+        double deltaLat = sector.getDeltaLatDegrees() / viewshed.getHeight();
+        double deltaLon = sector.getDeltaLonDegrees() / viewshed.getWidth();
+
+        Random random = new Random(5);
+        int numSamples = 0, numAgreements = 0, numVisible = 0;
+        while (numSamples < 300)
+        {
+            int row = random.nextInt(viewshed.getHeight());
+            int col = random.nextInt(viewshed.getWidth());
+            double value = viewshed.getDoubleAtPosition(row, col);
+            if (value == ViewshedCalculator.OUTSIDE_RADIUS || (row == 40 && col == 40))
+                continue;
+
+            Position target = Position.fromDegrees(sector.getMaxLatitude().degrees - (row + 0.5) * deltaLat,
+                sector.getMinLongitude().degrees + (col + 0.5) * deltaLon, 2);
+            // The terrain may report intersections beyond the target, which do not hide it.
+            Intersection[] intersections = terrain.intersect(OBSERVER, target);
+            Vec4 origin = terrain.getSurfacePoint(OBSERVER);
+            boolean visible = intersections == null || origin.distanceTo3(intersections[0].getIntersectionPoint())
+                >= origin.distanceTo3(terrain.getSurfacePoint(target));
+
+            numSamples++;
+            if (visible == (value == ViewshedCalculator.VISIBLE))
+                numAgreements++;
+            if (visible)
+                numVisible++;
+        }
+
+        // The terrain should hide some cells but not all of them.
+        assertTrue(numVisible > 0);
+        assertTrue(numVisible < numSamples);
+        assertTrue("Agreement " + numAgreements + " of " + numSamples, numAgreements >= 0.98 * numSamples);
+    }
+
+    /** Tests that a viewshed can be written as a GeoTIFF and read back. */
+    @Test
+    public void testGeotiffExport() throws Exception
+    {
+        HighResolutionTerrain terrain = new HighResolutionTerrain(this.globe, SECTOR, 20d, null);
+        BufferWrapperRaster viewshed = new ViewshedCalculator(terrain, this.executor).computeViewshed(OBSERVER,
+            RADIUS, CELL_SIZE);
+
+        File file = File.createTempFile("ViewshedCalculatorTest", ".tif");
+        try
+        {
+            GeotiffRasterWriter writer = new GeotiffRasterWriter();
+            assertTrue(writer.canWrite(viewshed, "tif", file));
+            writer.write(viewshed, "tif", file);
+
+            DataRaster[] rasters = new GeotiffRasterReader().read(file, null);
+            assertEquals(1, rasters.length);
+            assertEquals(viewshed.getWidth(), rasters[0].getWidth());
+            assertEquals(viewshed.getHeight(), rasters[0].getHeight());
+            assertEquals(AVKey.ELEVATION, rasters[0].getValue(AVKey.PIXEL_FORMAT));
+
+            BufferWrapperRaster result = (BufferWrapperRaster) rasters[0];
+            for (int row = 0; row < viewshed.getHeight(); row++)
+            {
+                for (int col = 0; col < viewshed.getWidth(); col++)
+                {
+                    assertEquals(viewshed.getDoubleAtPosition(row, col), result.getDoubleAtPosition(row, col), 0);
+                }
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    /** Tests that disposing a calculator shuts down the pool it created, but not an executor passed to it. */
+    @Test
+    public void testDispose() throws Exception
+    {
+        this.globe.setElevationModel(new ZeroElevationModel());
+        HighResolutionTerrain terrain = new HighResolutionTerrain(this.globe, SECTOR, 20d, null);
+        ViewshedCalculator calculator = new ViewshedCalculator(terrain);
+        assertNotNull(calculator.computeViewshed(OBSERVER, RADIUS, CELL_SIZE));
+
+        calculator.dispose();
+        assertTrue(calculator.getExecutor().isShutdown());
+        try
+        {
+            calculator.computeViewshed(OBSERVER, RADIUS, CELL_SIZE);
+            fail("Expected a RejectedExecutionException");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected.
+        }
+
+        new ViewshedCalculator(terrain, this.executor).dispose();
+        assertFalse(this.executor.isShutdown());
+    }
+}